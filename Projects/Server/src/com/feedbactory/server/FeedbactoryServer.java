@@ -18,6 +18,9 @@ final public class FeedbactoryServer
     * For this reason, don't change the setting here - use the command line.
     *
     * The variable need not be marked as volatile since its final value will be set before subsequent program threads start.
+    *
+    * The standby profile is for a warm standby of the production server, so it uses the production settings throughout. It differs only in that the
+    * server can't be started, nor housekeeping enabled, until the standby has been promoted. See ReplicationManager.
     */
    static private ExecutionProfile executionProfile = ExecutionProfile.Development;
 
@@ -40,7 +43,8 @@ final public class FeedbactoryServer
    {
       Development,
       Test,
-      Production;
+      Production,
+      Standby;
 
 
       static private ExecutionProfile fromValue(final String executionProfileString)
@@ -53,6 +57,8 @@ final public class FeedbactoryServer
                return Test;
             case "production":
                return Production;
+            case "standby":
+               return Standby;
             default:
                throw new IllegalArgumentException("Invalid execution profile value: " + executionProfileString);
          }
@@ -0,0 +1,233 @@
+/* Memos:
+ * - Measures the save and restore of a complete data set through the regular CheckpointManager paths, so that regressions in any of the subsystems'
+ *   checkpoint code show up before release. The data set is any snapshot checkpoint; for a production sized one, generate the synthetic data and save it
+ *   to a snapshot first, eg.
+ *
+ *     account test synthetic 1000000
+ *     feedback 0 test synthetic 5000000 50000000
+ *     save snapshot Synthetic
+ *     benchmark checkpoint Synthetic
+ *
+ *   The synthetic data generation is seeded, so the same data set can be regenerated on any build. Once saved, the snapshot can be reused by later builds
+ *   without having to regenerate it, providing that the checkpoint format hasn't changed.
+ *
+ * - Each round restores the snapshot, then saves it back over itself. Saving over the snapshot that has just been restored rewrites the same data, so
+ *   the following round also confirms that the data survives the round trip. The first restore of the benchmark may be reading a cold file from disk
+ *   while the later ones will mostly be reading from the OS file cache, so run at least two rounds.
+ *
+ * - The peak heap is the sum of the peak usage of each heap memory pool since the start of the phase, which will overstate the true peak a little since
+ *   the pools don't necessarily peak at the same time. The retained heap is the heap used after a full GC at the end of the phase, ie. the cost of holding
+ *   the data set in memory. Run the server with a fixed heap size (-Xms equal to -Xmx) for comparable results between runs.
+ *
+ * - Each result is also appended to a CSV file in the data directory, so that the results of different builds can be compared over time.
+ *
+ * - The restored data is left loaded when the benchmark has finished, attached to the snapshot.
+ */
+
+package com.feedbactory.server.core;
+
+
+import com.feedbactory.server.FeedbactoryServer;
+import com.feedbactory.server.feedback.FeedbackManager;
+import com.feedbactory.server.useraccount.UserAccountManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+final class CheckpointBenchmark
+{
+   static final private Path BenchmarkResultsPath = FeedbactoryServerConstants.BaseDataPath.resolve("CheckpointBenchmarkResults.csv");
+
+   static final private String BenchmarkResultsHeader = "Time,Snapshot,Accounts,Feedback submissions,Phase,Duration (ms),Peak heap (MB),Retained heap (MB)";
+
+   static final private int GarbageCollectionPasses = 3;
+
+   final private FeedbactoryOperationsManager operationsManager;
+   final private String snapshotName;
+
+
+   private CheckpointBenchmark(final FeedbactoryOperationsManager operationsManager, final String snapshotName)
+   {
+      this.operationsManager = operationsManager;
+      this.snapshotName = snapshotName;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class PhaseResult
+   {
+      final private String phase;
+      final private long durationMilliseconds;
+      final private long peakHeapBytes;
+      final private long retainedHeapBytes;
+
+
+      private PhaseResult(final String phase, final long durationMilliseconds, final long peakHeapBytes, final long retainedHeapBytes)
+      {
+         this.phase = phase;
+         this.durationMilliseconds = durationMilliseconds;
+         this.peakHeapBytes = peakHeapBytes;
+         this.retainedHeapBytes = retainedHeapBytes;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void resetPeakHeapUsage()
+   {
+      for (final MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+      {
+         if (memoryPool.getType() == MemoryType.HEAP)
+            memoryPool.resetPeakUsage();
+      }
+   }
+
+
+   static private long getPeakHeapUsage()
+   {
+      long peakHeapBytes = 0;
+
+      for (final MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+      {
+         if (memoryPool.getType() == MemoryType.HEAP)
+            peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+      }
+
+      return peakHeapBytes;
+   }
+
+
+   static private long getRetainedHeapUsage()
+   {
+      // System.gc() is only a request, a few passes gives a more consistent figure.
+      for (int pass = 0; pass < GarbageCollectionPasses; pass ++)
+         System.gc();
+
+      return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private PhaseResult runRestore() throws IOException
+   {
+      // Release the previous copy of the data before the measurement begins, so that it isn't counted against the restore.
+      getRetainedHeapUsage();
+      resetPeakHeapUsage();
+
+      final long startTime = System.currentTimeMillis();
+      operationsManager.loadSnapshotCheckpoint(snapshotName);
+      final long durationMilliseconds = System.currentTimeMillis() - startTime;
+
+      return new PhaseResult("Restore", durationMilliseconds, getPeakHeapUsage(), getRetainedHeapUsage());
+   }
+
+
+   private PhaseResult runSave() throws IOException
+   {
+      getRetainedHeapUsage();
+      resetPeakHeapUsage();
+
+      final long startTime = System.currentTimeMillis();
+      operationsManager.saveSnapshotCheckpoint(snapshotName);
+      final long durationMilliseconds = System.currentTimeMillis() - startTime;
+
+      return new PhaseResult("Save", durationMilliseconds, getPeakHeapUsage(), getRetainedHeapUsage());
+   }
+
+
+   private void reportResult(final PhaseResult result, final BufferedWriter resultsWriter) throws IOException
+   {
+      final UserAccountManager.UserAccountManagerMetrics accountMetrics = operationsManager.getUserAccountManager().getAccountManagerMetrics();
+      final FeedbackManager.FeedbackManagerMetrics feedbackMetrics = operationsManager.getFeedbackManager().getFeedbackManagerMetrics();
+
+      System.out.format("%-20s%,12d ms%,12d MB peak%,12d MB retained%n", result.phase, result.durationMilliseconds, result.peakHeapBytes / 1048576L,
+                        result.retainedHeapBytes / 1048576L);
+
+      resultsWriter.write(String.format("%tFT%<tT,%s,%d,%d,%s,%d,%d,%d", System.currentTimeMillis(), snapshotName,
+                                        accountMetrics.activatedAccounts + accountMetrics.pendingAccounts, feedbackMetrics.feedbackSubmissions, result.phase,
+                                        result.durationMilliseconds, result.peakHeapBytes / 1048576L, result.retainedHeapBytes / 1048576L));
+      resultsWriter.newLine();
+      resultsWriter.flush();
+   }
+
+
+   private void runBenchmark(final int rounds) throws IOException
+   {
+      final boolean isNewResultsFile = Files.notExists(BenchmarkResultsPath);
+
+      try
+      (
+         final BufferedWriter resultsWriter = Files.newBufferedWriter(BenchmarkResultsPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      )
+      {
+         if (isNewResultsFile)
+         {
+            resultsWriter.write(BenchmarkResultsHeader);
+            resultsWriter.newLine();
+         }
+
+         for (int round = 1; round <= rounds; round ++)
+         {
+            System.out.format("Round %d of %d:%n", round, rounds);
+
+            reportResult(runRestore(), resultsWriter);
+
+            reportResult(runSave(), resultsWriter);
+
+            System.out.println();
+         }
+      }
+
+      System.out.println("Results appended to " + BenchmarkResultsPath + '.');
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void handleRunBenchmark(final FeedbactoryOperationsManager operationsManager, final String snapshotName, final int rounds) throws IOException
+   {
+      // Check this to be certain that the benchmark won't be competing with a live server for the disk, or overwriting the live data.
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Benchmark cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if (rounds <= 0)
+         throw new IllegalArgumentException("The number of benchmark rounds must be greater than zero.");
+
+      new CheckpointBenchmark(operationsManager, snapshotName).runBenchmark(rounds);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static void runBenchmark(final FeedbactoryOperationsManager operationsManager, final String snapshotName, final int rounds) throws IOException
+   {
+      handleRunBenchmark(operationsManager, snapshotName, rounds);
+   }
+}
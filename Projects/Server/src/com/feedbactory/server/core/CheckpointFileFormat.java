@@ -0,0 +1,530 @@
+/* Memos:
+ * - The block format wrapped around every checkpoint data file. The subsystems continue to write and read their records through plain DataOutputStream and
+ *   DataInputStream objects, and the streams provided here take care of splitting the data into fixed size blocks, compressing each one and checksumming it.
+ *
+ * - File layout:
+ *   - Header: the magic number, the format version byte, and the uncompressed block size.
+ *   - Zero or more blocks, each being: the uncompressed length (never zero), an encoding byte, the stored length, the CRC32 of the uncompressed data, and the
+ *     stored bytes. If a block doesn't shrink when compressed, it's stored as is rather than paying the inflate cost on restore for nothing.
+ *   - A zero uncompressed length as the terminator. A file lacking the terminator has been truncated, which is reported as a failure rather than an EOF,
+ *     since the subsystems otherwise rely on their own terminators within the data to know when they're done.
+ *
+ * - The JDK's Deflater at its fastest setting is used as the codec, being the fastest option available without pulling in a third party library. Likewise
+ *   the checksum is the plain CRC32 rather than CRC32C, which isn't available in Java 8.
+ *
+ * - Files that don't begin with the magic number are read as raw streams, so that checkpoints saved before the block format was introduced may still be
+ *   restored. The magic number has been chosen so that it can't be mistaken for the leading int of any of the existing raw files, all of which begin
+ *   with either a small count or a user account ID.
+ *
+ * - The journal segments don't use this format, since their records must be individually forced to disk as they're written.
+ */
+
+package com.feedbactory.server.core;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+final public class CheckpointFileFormat
+{
+   // "FBCK"
+   static final private int MagicNumber = 0x4642434B;
+
+   static final private byte FormatVersion = 1;
+
+   static final private int BlockSizeBytes = 64 * 1024;
+   static final private int MaximumBlockSizeBytes = 16 * 1024 * 1024;
+
+   static final private byte StoredBlockEncoding = 0;
+   static final private byte DeflatedBlockEncoding = 1;
+
+   static final private int EndOfBlocksMarker = 0;
+
+
+   private CheckpointFileFormat()
+   {
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class FileVerification
+   {
+      final public String filename;
+      final public boolean isBlockFormat;
+      final public int blockCount;
+      final public long storedBytes;
+      final public long uncompressedBytes;
+
+      // Null if the verification succeeded.
+      final public String failureMessage;
+
+
+      private FileVerification(final String filename, final boolean isBlockFormat, final int blockCount, final long storedBytes, final long uncompressedBytes,
+                               final String failureMessage)
+      {
+         this.filename = filename;
+         this.isBlockFormat = isBlockFormat;
+         this.blockCount = blockCount;
+         this.storedBytes = storedBytes;
+         this.uncompressedBytes = uncompressedBytes;
+         this.failureMessage = failureMessage;
+      }
+
+
+      final public boolean isValid()
+      {
+         return (failureMessage == null);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class BlockOutputStream extends OutputStream
+   {
+      final private DataOutputStream targetStream;
+
+      final private byte[] blockBuffer = new byte[BlockSizeBytes];
+      private int blockBufferLength;
+
+      // Deflate output can slightly exceed its input for incompressible data, however such blocks are stored as is, so there's no need to size for that.
+      final private byte[] deflateBuffer = new byte[BlockSizeBytes];
+      final private Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+      final private CRC32 blockChecksum = new CRC32();
+
+      private boolean isClosed;
+
+
+      private BlockOutputStream(final OutputStream targetStream) throws IOException
+      {
+         this.targetStream = new DataOutputStream(targetStream);
+
+         this.targetStream.writeInt(MagicNumber);
+         this.targetStream.writeByte(FormatVersion);
+         this.targetStream.writeInt(BlockSizeBytes);
+      }
+
+
+      @Override
+      final public void write(final int byteValue) throws IOException
+      {
+         if (blockBufferLength == BlockSizeBytes)
+            writeBlock();
+
+         blockBuffer[blockBufferLength ++] = (byte) byteValue;
+      }
+
+
+      @Override
+      final public void write(final byte[] bytes, final int offset, final int length) throws IOException
+      {
+         int bytesRemaining = length;
+         int nextOffset = offset;
+         int bytesToCopy;
+
+         while (bytesRemaining > 0)
+         {
+            if (blockBufferLength == BlockSizeBytes)
+               writeBlock();
+
+            bytesToCopy = Math.min(bytesRemaining, BlockSizeBytes - blockBufferLength);
+            System.arraycopy(bytes, nextOffset, blockBuffer, blockBufferLength, bytesToCopy);
+
+            blockBufferLength += bytesToCopy;
+            nextOffset += bytesToCopy;
+            bytesRemaining -= bytesToCopy;
+         }
+      }
+
+
+      private void writeBlock() throws IOException
+      {
+         blockChecksum.reset();
+         blockChecksum.update(blockBuffer, 0, blockBufferLength);
+
+         deflater.reset();
+         deflater.setInput(blockBuffer, 0, blockBufferLength);
+         deflater.finish();
+
+         final int deflatedLength = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+
+         targetStream.writeInt(blockBufferLength);
+
+         if (deflater.finished() && (deflatedLength < blockBufferLength))
+         {
+            targetStream.writeByte(DeflatedBlockEncoding);
+            targetStream.writeInt(deflatedLength);
+            targetStream.writeInt((int) blockChecksum.getValue());
+            targetStream.write(deflateBuffer, 0, deflatedLength);
+         }
+         else
+         {
+            targetStream.writeByte(StoredBlockEncoding);
+            targetStream.writeInt(blockBufferLength);
+            targetStream.writeInt((int) blockChecksum.getValue());
+            targetStream.write(blockBuffer, 0, blockBufferLength);
+         }
+
+         blockBufferLength = 0;
+      }
+
+
+      /* Flushing doesn't force out a partial block, since that would only produce poorer compression for no benefit. The callers don't rely on
+       * flushing the checkpoint streams for anything other than the final write, which is handled by close().
+       */
+      @Override
+      final public void flush() throws IOException
+      {
+         targetStream.flush();
+      }
+
+
+      @Override
+      final public void close() throws IOException
+      {
+         if (isClosed)
+            return;
+
+         isClosed = true;
+
+         try
+         {
+            if (blockBufferLength > 0)
+               writeBlock();
+
+            targetStream.writeInt(EndOfBlocksMarker);
+            targetStream.flush();
+         }
+         finally
+         {
+            deflater.end();
+            targetStream.close();
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class BlockInputStream extends InputStream
+   {
+      final private DataInputStream sourceStream;
+
+      final private byte[] blockBuffer;
+      private int blockBufferLength;
+      private int blockBufferPosition;
+
+      final private byte[] storedBuffer;
+      final private Inflater inflater = new Inflater(true);
+      final private CRC32 blockChecksum = new CRC32();
+
+      private int blockCount;
+      private long storedBytes;
+      private long uncompressedBytes;
+
+      private boolean isEndOfBlocks;
+
+
+      // The magic number is assumed to have already been consumed by the caller.
+      private BlockInputStream(final DataInputStream sourceStream) throws IOException
+      {
+         this.sourceStream = sourceStream;
+
+         final byte formatVersion = sourceStream.readByte();
+         final int blockSizeBytes = sourceStream.readInt();
+         validateHeader(formatVersion, blockSizeBytes);
+
+         blockBuffer = new byte[blockSizeBytes];
+         storedBuffer = new byte[blockSizeBytes];
+      }
+
+
+      private boolean readBlock() throws IOException
+      {
+         if (isEndOfBlocks)
+            return false;
+
+         final int uncompressedLength = sourceStream.readInt();
+
+         if (uncompressedLength == EndOfBlocksMarker)
+         {
+            isEndOfBlocks = true;
+            return false;
+         }
+
+         final byte encoding = sourceStream.readByte();
+         final int storedLength = sourceStream.readInt();
+         final int expectedChecksum = sourceStream.readInt();
+
+         validateBlockHeader(uncompressedLength, encoding, storedLength, blockBuffer.length);
+
+         if (encoding == StoredBlockEncoding)
+            sourceStream.readFully(blockBuffer, 0, uncompressedLength);
+         else
+            sourceStream.readFully(storedBuffer, 0, storedLength);
+
+         decodeBlock(encoding, storedBuffer, storedLength, blockBuffer, uncompressedLength, expectedChecksum, inflater, blockChecksum, blockCount);
+
+         blockBufferLength = uncompressedLength;
+         blockBufferPosition = 0;
+
+         blockCount ++;
+         storedBytes += storedLength;
+         uncompressedBytes += uncompressedLength;
+
+         return true;
+      }
+
+
+      @Override
+      final public int read() throws IOException
+      {
+         if ((blockBufferPosition == blockBufferLength) && (! readBlock()))
+            return -1;
+
+         return (blockBuffer[blockBufferPosition ++] & 0xff);
+      }
+
+
+      @Override
+      final public int read(final byte[] bytes, final int offset, final int length) throws IOException
+      {
+         if (length == 0)
+            return 0;
+         else if ((blockBufferPosition == blockBufferLength) && (! readBlock()))
+            return -1;
+
+         final int bytesToCopy = Math.min(length, blockBufferLength - blockBufferPosition);
+         System.arraycopy(blockBuffer, blockBufferPosition, bytes, offset, bytesToCopy);
+         blockBufferPosition += bytesToCopy;
+
+         return bytesToCopy;
+      }
+
+
+      @Override
+      final public int available()
+      {
+         return (blockBufferLength - blockBufferPosition);
+      }
+
+
+      @Override
+      final public void close() throws IOException
+      {
+         inflater.end();
+         sourceStream.close();
+      }
+
+
+      private void readToEnd() throws IOException
+      {
+         while (readBlock())
+            ;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void validateHeader(final byte formatVersion, final int blockSizeBytes) throws IOException
+   {
+      if ((formatVersion <= 0) || (formatVersion > FormatVersion))
+         throw new IOException("Unsupported checkpoint file format version: " + formatVersion);
+      else if ((blockSizeBytes <= 0) || (blockSizeBytes > MaximumBlockSizeBytes))
+         throw new IOException("Invalid checkpoint file block size: " + blockSizeBytes);
+   }
+
+
+   static private void validateBlockHeader(final int uncompressedLength, final byte encoding, final int storedLength, final int blockSizeBytes) throws IOException
+   {
+      if ((uncompressedLength < 0) || (uncompressedLength > blockSizeBytes))
+         throw new IOException("Invalid checkpoint block length: " + uncompressedLength);
+      else if (encoding == StoredBlockEncoding)
+      {
+         if (storedLength != uncompressedLength)
+            throw new IOException("Invalid checkpoint stored block length: " + storedLength);
+      }
+      else if (encoding == DeflatedBlockEncoding)
+      {
+         if ((storedLength <= 0) || (storedLength > blockSizeBytes))
+            throw new IOException("Invalid checkpoint compressed block length: " + storedLength);
+      }
+      else
+         throw new IOException("Invalid checkpoint block encoding: " + encoding);
+   }
+
+
+   /* For a stored block the caller has already placed the data in the block buffer, otherwise the compressed data is in the stored buffer and is inflated
+    * into the block buffer. Either way the block's checksum is then verified.
+    */
+   static private void decodeBlock(final byte encoding, final byte[] storedBuffer, final int storedLength, final byte[] blockBuffer, final int uncompressedLength,
+                                   final int expectedChecksum, final Inflater inflater, final CRC32 blockChecksum, final int blockNumber) throws IOException
+   {
+      if (encoding == DeflatedBlockEncoding)
+      {
+         inflater.reset();
+         inflater.setInput(storedBuffer, 0, storedLength);
+
+         try
+         {
+            final int inflatedLength = inflater.inflate(blockBuffer, 0, uncompressedLength);
+            if ((inflatedLength != uncompressedLength) || (! inflater.finished()))
+               throw new IOException("Checkpoint block inflated length mismatch at block " + blockNumber);
+         }
+         catch (final DataFormatException dataFormatException)
+         {
+            throw new IOException("Corrupt checkpoint block " + blockNumber, dataFormatException);
+         }
+      }
+
+      blockChecksum.reset();
+      blockChecksum.update(blockBuffer, 0, uncompressedLength);
+      if (((int) blockChecksum.getValue()) != expectedChecksum)
+         throw new IOException("Checkpoint block checksum mismatch at block " + blockNumber);
+   }
+
+
+   static private boolean readMagicNumber(final BufferedInputStream bufferedStream) throws IOException
+   {
+      bufferedStream.mark(4);
+
+      final DataInputStream peekStream = new DataInputStream(bufferedStream);
+      final boolean isBlockFormat;
+
+      try
+      {
+         isBlockFormat = (peekStream.readInt() == MagicNumber);
+      }
+      catch (final IOException ioException)
+      {
+         // Too short to hold the magic number; let the raw stream handle the (empty) file as it would have previously.
+         bufferedStream.reset();
+         return false;
+      }
+
+      if (! isBlockFormat)
+         bufferedStream.reset();
+
+      return isBlockFormat;
+   }
+
+
+   static private DataOutputStream handleWrap(final OutputStream outputStream) throws IOException
+   {
+      // The block stream does its own buffering.
+      return new DataOutputStream(new BlockOutputStream(outputStream));
+   }
+
+
+   static private DataInputStream handleWrap(final InputStream inputStream) throws IOException
+   {
+      final BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+
+      if (readMagicNumber(bufferedStream))
+         return new DataInputStream(new BlockInputStream(new DataInputStream(bufferedStream)));
+      else
+         return new DataInputStream(bufferedStream);
+   }
+
+
+   static private FileVerification handleVerify(final File file)
+   {
+      try
+      (
+         final BufferedInputStream bufferedStream = new BufferedInputStream(new FileInputStream(file));
+      )
+      {
+         if (! readMagicNumber(bufferedStream))
+            return new FileVerification(file.getName(), false, 0, file.length(), file.length(), null);
+
+         final BlockInputStream blockStream = new BlockInputStream(new DataInputStream(bufferedStream));
+
+         try
+         {
+            blockStream.readToEnd();
+         }
+         catch (final IOException ioException)
+         {
+            return new FileVerification(file.getName(), true, blockStream.blockCount, blockStream.storedBytes, blockStream.uncompressedBytes, ioException.toString());
+         }
+
+         if (bufferedStream.read() != -1)
+            return new FileVerification(file.getName(), true, blockStream.blockCount, blockStream.storedBytes, blockStream.uncompressedBytes,
+                                        "Unexpected data following the final block.");
+
+         return new FileVerification(file.getName(), true, blockStream.blockCount, blockStream.storedBytes, blockStream.uncompressedBytes, null);
+      }
+      catch (final IOException ioException)
+      {
+         return new FileVerification(file.getName(), false, 0, 0, 0, ioException.toString());
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public DataOutputStream wrap(final OutputStream outputStream) throws IOException
+   {
+      return handleWrap(outputStream);
+   }
+
+
+   static public DataInputStream wrap(final InputStream inputStream) throws IOException
+   {
+      return handleWrap(inputStream);
+   }
+
+
+   static public DataOutputStream openOutput(final File file) throws IOException
+   {
+      return handleWrap(new FileOutputStream(file));
+   }
+
+
+   static public DataInputStream openInput(final File file) throws IOException
+   {
+      return handleWrap(new FileInputStream(file));
+   }
+
+
+   // Reads through every block of the file, checking each one's checksum, without handing the data to any subsystem.
+   static public FileVerification verify(final File file)
+   {
+      return handleVerify(file);
+   }
+}
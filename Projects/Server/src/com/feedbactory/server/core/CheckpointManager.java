@@ -9,24 +9,67 @@
  * - There's no reason to be stingey with the number of autosave checkpoints (before recycling). Ideally there are enough data checkpoints so that if something is corrupted,
  *   the problem will become apparent early enough that there will still be uncorrupted checkpoints to roll back to, or at least to rip data from.
  *
- * - The AutoSaveCheckpointPeriodMinutes value should be large enough that it's safe to assume that autosaves could never overlap, even if the ScheduledExecutor
- *   would allow it (it doesn't).
+ * - The AutoSaveCheckpointPeriodMinutes value should be large enough that it's safe to assume that autosaves could never overlap, even if the
+ *   HousekeepingScheduler would allow it (it doesn't).
+ *
+ * - The autosave is run on its own worker thread, which the housekeeping task starts and then polls until it's finished. So the other housekeeping
+ *   tasks carry on during an autosave, the same as they always have during a manual save.
+ *
+ * - Every checkpoint save of the primary data (primary or autosave) rolls the write-ahead journal onto a new segment before saving, and stamps the checkpoint
+ *   with that segment number once the save has succeeded, which also truncates the journal. Loading the primary checkpoint doesn't necessarily load the data
+ *   from the primary checkpoint directory; following a crash the most recent checkpoint of the primary data may be an autosave, so the checkpoint having the
+ *   latest intact journal tail is used as the base and the tail is replayed over it. Loading an autosave or snapshot checkpoint directly is a deliberate
+ *   rollback to that point in time, so the journal is not replayed in those cases.
+ *
+ * - The first autosave of each session is a full checkpoint, and up to MaximumCheckpointChainLength - 1 autosaves following it are delta checkpoints holding
+ *   only the user accounts and feedback that have changed since the previous autosave, so that the autosave I/O is proportional to the churn rather than to
+ *   the size of the database. Every checkpoint carries a small descriptor identifying it and, for a delta, the checkpoint that it was based on; the
+ *   descriptor is deleted at the start of a save and written once the save has succeeded. Loading any checkpoint walks the descriptors back to the
+ *   full checkpoint at the head of the chain, which is restored first, followed by each delta in turn. The chain is compacted simply by writing the next
+ *   autosave as a full checkpoint once it has reached its maximum length, or following a failed autosave. Primary and snapshot checkpoints are always
+ *   full, and never form part of a chain. The network service data is small and short lived, so it's always saved in full and only the most recent
+ *   checkpoint of the chain is used to restore it.
+ *
+ * - A chain can be broken when the slot of one of its earlier autosaves is recycled; the checkpoint ID stored with each base reference detects this.
+ *   The MaximumCheckpointChainLength must be less than MaximumAutoSavesRetained so that an autosave never overwrites the head of its own chain.
+ *
+ * - A warm standby server is bootstrapped from a full checkpoint saved to its own directory on the primary, which is transferred into the standby's primary
+ *   checkpoint directory and loaded there. The standby's journal is then activated and based on that checkpoint, but the standby isn't attached to the
+ *   primary data until it's been promoted. See ReplicationManager.
+ *
+ * - The full checkpoints of the user account and feedback data are sharded by user account ID and written by a pool of worker threads, see
+ *   ShardedCheckpointFile. The network service data is saved on its own thread at the same time as the feedback data, but the user account data
+ *   is still only saved once both have finished.
  */
 
 package com.feedbactory.server.core;
 
 
 import com.feedbactory.server.FeedbactoryServer;
+import com.feedbactory.server.core.WriteAheadJournal.JournalTail;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.server.feedback.FeedbackManager;
 import com.feedbactory.server.network.application.NetworkServiceManager;
 import com.feedbactory.server.useraccount.UserAccountManager;
 import com.feedbactory.shared.FeedbactoryConstants;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.prefs.Preferences;
 
@@ -36,14 +79,21 @@ final class CheckpointManager
    static final private Path PrimaryCheckpointPath = FeedbactoryServerConstants.BaseDataPath.resolve("PrimaryCheckpoint");
    static final private Path AutoSaveCheckpointsBasePath = FeedbactoryServerConstants.BaseDataPath.resolve("AutoSaveCheckpoints");
    static final private Path SnapshotCheckpointsBasePath = FeedbactoryServerConstants.BaseDataPath.resolve("SnapshotCheckpoints");
+   static final private Path ReplicationCheckpointPath = FeedbactoryServerConstants.BaseDataPath.resolve("ReplicationCheckpoint");
 
    static final private int AutoSaveCheckpointFrequencyMinutes;
 
    static final private int MaximumAutoSavesRetained;
 
+   static final private int MaximumCheckpointChainLength;
+
+   static final private String CheckpointDescriptorFilename = "CheckpointDescriptor" + FeedbactoryServerConstants.DataFileExtension;
+
    final private UserAccountManager userAccountManager;
    final private FeedbackManager feedbackManager;
    final private NetworkServiceManager networkServiceManager;
+   final private WriteAheadJournal journal;
+   final private HousekeepingScheduler housekeepingScheduler;
 
    final private AutoSaveCheckpointingTask autoSaveCheckpointingTask = new AutoSaveCheckpointingTask();
 
@@ -56,28 +106,35 @@ final class CheckpointManager
       {
          AutoSaveCheckpointFrequencyMinutes = 10;
          MaximumAutoSavesRetained = 6;
+         MaximumCheckpointChainLength = 3;
       }
       else if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Test)
       {
          AutoSaveCheckpointFrequencyMinutes = 480;
          MaximumAutoSavesRetained = 6;
+         MaximumCheckpointChainLength = 2;
       }
-      else if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
+      else if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+               (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
       {
-         // 12 x autosaves, every 3 hours, 36 hours coverage.
+         // 12 x autosaves, every 3 hours, 36 hours coverage. A full autosave every 12 hours.
          AutoSaveCheckpointFrequencyMinutes = 180;
          MaximumAutoSavesRetained = 12;
+         MaximumCheckpointChainLength = 4;
       }
       else
          throw new AssertionError("Unknown or misconfigured execution profile.");
    }
 
 
-   CheckpointManager(final UserAccountManager userAccountManager, final FeedbackManager feedbackManager, final NetworkServiceManager networkServiceManager)
+   CheckpointManager(final UserAccountManager userAccountManager, final FeedbackManager feedbackManager, final NetworkServiceManager networkServiceManager,
+                     final WriteAheadJournal journal, final HousekeepingScheduler housekeepingScheduler)
    {
       this.userAccountManager = userAccountManager;
       this.feedbackManager = feedbackManager;
       this.networkServiceManager = networkServiceManager;
+      this.journal = journal;
+      this.housekeepingScheduler = housekeepingScheduler;
    }
 
 
@@ -94,17 +151,24 @@ final class CheckpointManager
       final int autoSaveFrequencyMinutes;
       final int autoSavesThisSession;
       final int lastAutoSaveNumber;
+      final boolean isLastAutoSaveDelta;
+      final int checkpointChainLength;
+      final int maximumCheckpointChainLength;
       final long lastAutoSaveStartTime;
       final long lastAutoSaveFinishTime;
 
 
       private AutoSaveMetrics(final boolean isAutoSaveActive, final int autoSavesThisSession,
-                              final int lastAutoSaveNumber, final long lastAutoSaveStartTime, final long lastAutoSaveFinishTime)
+                              final int lastAutoSaveNumber, final boolean isLastAutoSaveDelta, final int checkpointChainLength,
+                              final long lastAutoSaveStartTime, final long lastAutoSaveFinishTime)
       {
          this.isAutoSaveActive = isAutoSaveActive;
          this.autoSaveFrequencyMinutes = AutoSaveCheckpointFrequencyMinutes;
          this.autoSavesThisSession = autoSavesThisSession;
          this.lastAutoSaveNumber = lastAutoSaveNumber;
+         this.isLastAutoSaveDelta = isLastAutoSaveDelta;
+         this.checkpointChainLength = checkpointChainLength;
+         this.maximumCheckpointChainLength = MaximumCheckpointChainLength;
          this.lastAutoSaveStartTime = lastAutoSaveStartTime;
          this.lastAutoSaveFinishTime = lastAutoSaveFinishTime;
       }
@@ -118,23 +182,64 @@ final class CheckpointManager
     ***************************************************************************/
 
 
-   final private class AutoSaveCheckpointingTask implements Runnable
+   static final private class CheckpointDescriptor
+   {
+      final private long checkpointID;
+      final private Path baseCheckpointPath;
+      final private long baseCheckpointID;
+
+
+      private CheckpointDescriptor(final long checkpointID, final Path baseCheckpointPath, final long baseCheckpointID)
+      {
+         this.checkpointID = checkpointID;
+         this.baseCheckpointPath = baseCheckpointPath;
+         this.baseCheckpointID = baseCheckpointID;
+      }
+
+
+      private boolean isDelta()
+      {
+         return (baseCheckpointPath != null);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class AutoSaveCheckpointingTask implements HousekeepingScheduler.Task
    {
       static final private String LastAutoSaveNumberPreferencesKey = "LastAutoSaveNumber";
 
       /* Calls to isStarted(), start() and shutdown() aren't threadsafe and must be coordinated by the caller
-       * to ensure the visibility and consistent state of the executor.
+       * to ensure the visibility and consistent state of the registration.
        */
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler.Registration registration;
 
       /* A lock is always used to access these metric variables to ensure their consistency as they are
        * written by the task thread and read by the caller as one atomic unit.
        */
       private int autoSavesThisSession;
       private int lastAutoSaveNumber;
+      private boolean isLastAutoSaveDelta;
+
+      /* The number of checkpoints in the chain ending with the last autosave, including the full checkpoint at its head.
+       * Zero if there's no autosave this session that a delta can be based on.
+       */
+      private int checkpointChainLength;
+
       private long lastAutoSaveStartTime = FeedbactoryConstants.NoTime;
       private long lastAutoSaveFinishTime = FeedbactoryConstants.NoTime;
 
+      /* The save started by the current run, if any. Only accessed by the housekeeping thread while the task is registered, and by the caller of
+       * shutdown() once it has been unregistered; the unregistering waits for the slice in progress, which ensures the visibility between the two.
+       */
+      private Future<?> autoSaveResult;
+
 
       private AutoSaveCheckpointingTask()
       {
@@ -154,15 +259,57 @@ final class CheckpointManager
 
 
       @Override
-      final public void run()
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
-         Thread.currentThread().setName("Auto save checkpoint task");
+         /* An autosave can't be split, so rather than holding up the shared housekeeping thread for the length of the save, the first slice of the run
+          * hands the save to a worker thread of its own. Each following slice only checks whether the save has finished.
+          */
+         if (autoSaveResult == null)
+            autoSaveResult = startAutoSave();
+
+         if (! autoSaveResult.isDone())
+            return false;
 
+         autoSaveResult = null;
+
+         return true;
+      }
+
+
+      /* As with the checkpoint shard workers, the thread is created for the save and torn down at the end. Shutting down the executor straight away
+       * allows the submitted save to run to completion, after which the thread exits.
+       */
+      private Future<?> startAutoSave()
+      {
+         final ExecutorService autoSaveExecutor = Executors.newSingleThreadExecutor();
+
+         try
+         {
+            return autoSaveExecutor.submit(new Runnable()
+            {
+               @Override
+               final public void run()
+               {
+                  runAutoSave();
+               }
+            });
+         }
+         finally
+         {
+            autoSaveExecutor.shutdown();
+         }
+      }
+
+
+      private void runAutoSave()
+      {
          int nextAutoSaveNumber = 0;
 
          try
          {
             final Path nextCheckpointPath;
+            final Path baseCheckpointPath;
+            final int nextCheckpointChainLength;
 
             synchronized (this)
             {
@@ -173,30 +320,73 @@ final class CheckpointManager
 
                nextCheckpointPath = AutoSaveCheckpointsBasePath.resolve(Integer.toString(nextAutoSaveNumber));
 
+               if ((checkpointChainLength > 0) && (checkpointChainLength < MaximumCheckpointChainLength))
+               {
+                  baseCheckpointPath = AutoSaveCheckpointsBasePath.resolve(Integer.toString(lastAutoSaveNumber));
+                  nextCheckpointChainLength = checkpointChainLength + 1;
+               }
+               else
+               {
+                  baseCheckpointPath = null;
+                  nextCheckpointChainLength = 1;
+               }
+
+               /* If the save fails, some of the changed records may have been cleared from the dirty sets without being durably written,
+                * so the next autosave must start a new chain.
+                */
+               checkpointChainLength = 0;
+
                // Use the finer grained System.currentTimeMillis rather than the TimeCache for this.
                lastAutoSaveStartTime = System.currentTimeMillis();
             }
 
-            createPathAndSaveCheckpoint(nextCheckpointPath);
+            if (baseCheckpointPath == null)
+            {
+               // The full checkpoint is the new base, so the deltas that follow it need only contain the changes from this point.
+               userAccountManager.resetDeltaTracking();
+               feedbackManager.resetDeltaTracking();
+            }
+
+            createPathAndSaveCheckpoint(nextCheckpointPath, true, baseCheckpointPath);
 
             synchronized (this)
             {
                autoSavesThisSession ++;
                lastAutoSaveNumber = nextAutoSaveNumber;
+               isLastAutoSaveDelta = (baseCheckpointPath != null);
+               checkpointChainLength = nextCheckpointChainLength;
                lastAutoSaveFinishTime = System.currentTimeMillis();
             }
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception (not just IOException), since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
-             */
+            // Exception handling provided for -any- exception (not just IOException), so that the failure is logged against the save number.
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Auto save task failed, save number: " + nextAutoSaveNumber, anyException);
          }
       }
 
 
+      private void awaitAutoSave() throws InterruptedException
+      {
+         if (autoSaveResult == null)
+            return;
+
+         try
+         {
+            autoSaveResult.get();
+         }
+         catch (final ExecutionException executionException)
+         {
+            // Any exception is already logged by runAutoSave(), so this can only be an error.
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Auto save task failed", executionException.getCause());
+         }
+         finally
+         {
+            autoSaveResult = null;
+         }
+      }
+
+
       /****************************************************************************
        *
        ***************************************************************************/
@@ -209,6 +399,12 @@ final class CheckpointManager
       }
 
 
+      synchronized private void resetCheckpointChain()
+      {
+         checkpointChainLength = 0;
+      }
+
+
       synchronized private void saveLastAutoSaveNumber()
       {
          final Preferences feedbactoryCheckpointPreferences = Preferences.userNodeForPackage(CheckpointManager.class);
@@ -218,7 +414,7 @@ final class CheckpointManager
 
       private boolean isStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
@@ -227,28 +423,28 @@ final class CheckpointManager
          if (isStarted())
             throw new IllegalStateException("Auto save task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
-
-         executor.scheduleAtFixedRate(this, AutoSaveCheckpointFrequencyMinutes, AutoSaveCheckpointFrequencyMinutes, TimeUnit.MINUTES);
+         final long autoSaveFrequencyMilliseconds = TimeUnit.MINUTES.toMillis(AutoSaveCheckpointFrequencyMinutes);
+         registration = housekeepingScheduler.register("Auto save checkpoint", this, autoSaveFrequencyMilliseconds, autoSaveFrequencyMilliseconds);
       }
 
 
       synchronized private AutoSaveMetrics getMetrics()
       {
          return new AutoSaveMetrics(isStarted(), autoSavesThisSession,
-                                    lastAutoSaveNumber, lastAutoSaveStartTime, lastAutoSaveFinishTime);
+                                    lastAutoSaveNumber, isLastAutoSaveDelta, checkpointChainLength,
+                                    lastAutoSaveStartTime, lastAutoSaveFinishTime);
       }
 
 
       private void shutdown() throws InterruptedException
       {
-         if (executor != null)
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+
+            // Unregistering abandons the run in progress, but not a save that it has already started.
+            awaitAutoSave();
 
             saveLastAutoSaveNumber();
          }
@@ -263,35 +459,258 @@ final class CheckpointManager
     ***************************************************************************/
 
 
-   private void saveCheckpoint(final Path checkpointPath) throws IOException
+   // A null base checkpoint path indicates a full checkpoint.
+   private void saveCheckpoint(final Path checkpointPath, final boolean isPrimaryDataCheckpoint, final Path baseCheckpointPath) throws IOException
    {
-      networkServiceManager.saveCheckpoint(checkpointPath);
-      feedbackManager.saveCheckpoint(checkpointPath);
+      // Ensure that a partially written checkpoint is never mistaken for a complete one, nor used as the base for a delta.
+      Files.deleteIfExists(checkpointPath.resolve(CheckpointDescriptorFilename));
+
+      final long baseCheckpointID;
+
+      if (baseCheckpointPath != null)
+      {
+         final CheckpointDescriptor baseCheckpointDescriptor = readCheckpointDescriptor(baseCheckpointPath);
+         if (baseCheckpointDescriptor == null)
+            throw new IOException("Missing descriptor for delta base checkpoint: " + baseCheckpointPath);
+
+         baseCheckpointID = baseCheckpointDescriptor.checkpointID;
+      }
+      else
+         baseCheckpointID = FeedbactoryConstants.NoTime;
+
+      final int journalSegmentNumber;
+
+      if (isPrimaryDataCheckpoint && journal.isActive())
+      {
+         // Ensure that a partially written checkpoint is never used as a base for journal replay.
+         journal.clearCheckpointMarker(checkpointPath);
+         journalSegmentNumber = journal.rollSegment();
+      }
+      else
+         journalSegmentNumber = WriteAheadJournal.NoSegmentNumber;
+
+      // The network service data is independent of the feedback data, so the two are saved at the same time.
+      final ExecutorService networkSaveExecutor = Executors.newSingleThreadExecutor();
+
+      try
+      {
+         final Future<Void> networkSaveResult = networkSaveExecutor.submit(new Callable<Void>()
+         {
+            @Override
+            final public Void call() throws IOException
+            {
+               networkServiceManager.saveCheckpoint(checkpointPath);
+               return null;
+            }
+         });
+
+         if (baseCheckpointPath != null)
+            feedbackManager.saveDeltaCheckpoint(checkpointPath);
+         else
+            feedbackManager.saveCheckpoint(checkpointPath);
+
+         awaitNetworkSave(networkSaveResult);
+      }
+      finally
+      {
+         networkSaveExecutor.shutdownNow();
+      }
 
       // The user account data must always be the last data saved, to ensure that all user account ID references persisted in other subsystems are valid.
-      userAccountManager.saveCheckpoint(checkpointPath);
+      if (baseCheckpointPath != null)
+         userAccountManager.saveDeltaCheckpoint(checkpointPath);
+      else
+         userAccountManager.saveCheckpoint(checkpointPath);
+
+      // Use the system time rather than the TimeCache, which is too coarse to reliably distinguish between a checkpoint and one that has since replaced it.
+      writeCheckpointDescriptor(checkpointPath, new CheckpointDescriptor(System.currentTimeMillis(), baseCheckpointPath, baseCheckpointID));
+
+      // Has no effect if the checkpoint is not journalled.
+      journal.markCheckpoint(checkpointPath, journalSegmentNumber);
+   }
+
+
+   private void awaitNetworkSave(final Future<Void> networkSaveResult) throws IOException
+   {
+      try
+      {
+         networkSaveResult.get();
+      }
+      catch (final InterruptedException interruptedException)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while saving the network service data.", interruptedException);
+      }
+      catch (final ExecutionException executionException)
+      {
+         if (executionException.getCause() instanceof IOException)
+            throw (IOException) executionException.getCause();
+         else if (executionException.getCause() instanceof RuntimeException)
+            throw (RuntimeException) executionException.getCause();
+         else
+            throw new IOException("Failed to save the network service data.", executionException.getCause());
+      }
+   }
+
+
+   // Returns null if there is no descriptor, ie. the checkpoint is incomplete, or was saved before the introduction of descriptors.
+   private CheckpointDescriptor readCheckpointDescriptor(final Path checkpointPath) throws IOException
+   {
+      final File descriptorFile = checkpointPath.resolve(CheckpointDescriptorFilename).toFile();
+      if (! descriptorFile.exists())
+         return null;
+
+      try
+      (
+         final DataInputStream descriptorStream = CheckpointFileFormat.openInput(descriptorFile);
+      )
+      {
+         final long checkpointID = descriptorStream.readLong();
+
+         if (descriptorStream.readBoolean())
+         {
+            final Path baseCheckpointPath = Paths.get(descriptorStream.readUTF());
+            final long baseCheckpointID = descriptorStream.readLong();
+
+            return new CheckpointDescriptor(checkpointID, baseCheckpointPath, baseCheckpointID);
+         }
+         else
+            return new CheckpointDescriptor(checkpointID, null, FeedbactoryConstants.NoTime);
+      }
+   }
+
+
+   private void writeCheckpointDescriptor(final Path checkpointPath, final CheckpointDescriptor descriptor) throws IOException
+   {
+      final File descriptorFile = checkpointPath.resolve(CheckpointDescriptorFilename).toFile();
+
+      try
+      (
+         final DataOutputStream descriptorStream = CheckpointFileFormat.openOutput(descriptorFile);
+      )
+      {
+         descriptorStream.writeLong(descriptor.checkpointID);
+
+         if (descriptor.isDelta())
+         {
+            descriptorStream.writeBoolean(true);
+            descriptorStream.writeUTF(descriptor.baseCheckpointPath.toString());
+            descriptorStream.writeLong(descriptor.baseCheckpointID);
+         }
+         else
+            descriptorStream.writeBoolean(false);
+      }
    }
 
 
-   private void loadCheckpoint(final Path checkpointPath) throws IOException
+   /* Returns the checkpoints to be restored in order, beginning with the full checkpoint at the head of the chain. A checkpoint without a descriptor is
+    * treated as a full checkpoint.
+    */
+   private List<Path> getCheckpointChain(final Path checkpointPath) throws IOException
+   {
+      final LinkedList<Path> checkpointChain = new LinkedList<>();
+      checkpointChain.addFirst(checkpointPath);
+
+      CheckpointDescriptor descriptor = readCheckpointDescriptor(checkpointPath);
+      CheckpointDescriptor baseDescriptor;
+
+      while ((descriptor != null) && descriptor.isDelta())
+      {
+         baseDescriptor = readCheckpointDescriptor(descriptor.baseCheckpointPath);
+
+         if ((baseDescriptor == null) || (baseDescriptor.checkpointID != descriptor.baseCheckpointID))
+            throw new IOException("The base checkpoint of delta checkpoint " + checkpointChain.getFirst() + " has since been replaced: " + descriptor.baseCheckpointPath);
+
+         checkpointChain.addFirst(descriptor.baseCheckpointPath);
+         descriptor = baseDescriptor;
+      }
+
+      return checkpointChain;
+   }
+
+
+   private void loadCheckpoint(final Path checkpointPath, final JournalTail journalTail) throws IOException
    {
       if (isAutoSaveStarted())
          throw new IllegalStateException("Cannot load a checkpoint while auto save is active.");
 
+      final List<Path> checkpointChain = getCheckpointChain(checkpointPath);
+
+      // Any journalled changes to the existing data must be flushed before it's overwritten, since they may be a part of the journal tail being loaded.
+      deactivateJournal();
+      activeCheckpointPath = null;
+
+      // The restored data is no longer related to any previous autosave.
+      autoSaveCheckpointingTask.resetCheckpointChain();
+
       // The user account data must always be the first data to be restored, to ensure the validity of user account ID lookups from other subsystems during restoration.
-      userAccountManager.restoreFromCheckpoint(checkpointPath);
+      userAccountManager.restoreFromCheckpoint(checkpointChain, journalTail);
 
-      feedbackManager.restoreFromCheckpoint(checkpointPath);
+      feedbackManager.restoreFromCheckpoint(checkpointChain, journalTail);
       networkServiceManager.restoreFromCheckpoint(checkpointPath);
    }
 
 
-   private void createPathAndSaveCheckpoint(final Path checkpointPath) throws IOException
+   private void createPathAndSaveCheckpoint(final Path checkpointPath, final boolean isPrimaryDataCheckpoint, final Path baseCheckpointPath) throws IOException
    {
       if (Files.notExists(checkpointPath))
          Files.createDirectory(checkpointPath);
 
-      saveCheckpoint(checkpointPath);
+      saveCheckpoint(checkpointPath, isPrimaryDataCheckpoint, baseCheckpointPath);
+   }
+
+
+   private Path getLatestJournalledCheckpointPath() throws IOException
+   {
+      Path latestCheckpointPath = PrimaryCheckpointPath;
+      int latestSegmentNumber = journal.getCheckpointSegmentNumber(PrimaryCheckpointPath);
+
+      Path autoSaveCheckpointPath;
+      int autoSaveSegmentNumber;
+
+      for (int autoSaveNumber = 1; autoSaveNumber <= MaximumAutoSavesRetained; autoSaveNumber ++)
+      {
+         autoSaveCheckpointPath = AutoSaveCheckpointsBasePath.resolve(Integer.toString(autoSaveNumber));
+         autoSaveSegmentNumber = journal.getCheckpointSegmentNumber(autoSaveCheckpointPath);
+
+         if (autoSaveSegmentNumber > latestSegmentNumber)
+         {
+            latestCheckpointPath = autoSaveCheckpointPath;
+            latestSegmentNumber = autoSaveSegmentNumber;
+         }
+      }
+
+      return latestCheckpointPath;
+   }
+
+
+   private void deleteCheckpointFiles(final Path checkpointPath) throws IOException
+   {
+      try
+      (
+         final DirectoryStream<Path> checkpointFiles = Files.newDirectoryStream(checkpointPath);
+      )
+      {
+         for (final Path checkpointFile : checkpointFiles)
+         {
+            if (Files.isRegularFile(checkpointFile))
+               Files.delete(checkpointFile);
+         }
+      }
+   }
+
+
+   private void deactivateJournal() throws IOException
+   {
+      try
+      {
+         journal.deactivate();
+      }
+      catch (final InterruptedException interruptedException)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while deactivating the journal.", interruptedException);
+      }
    }
 
 
@@ -300,12 +719,149 @@ final class CheckpointManager
     ***************************************************************************/
 
 
+   private void handleLoadPrimaryCheckpoint() throws IOException
+   {
+      final Path recoveryCheckpointPath = getLatestJournalledCheckpointPath();
+      if (! recoveryCheckpointPath.equals(PrimaryCheckpointPath))
+         FeedbactoryLogger.logSystemEvent(SystemLogLevel.Warning, getClass(), "Primary data is being recovered from a more recent checkpoint: " + recoveryCheckpointPath);
+
+      loadCheckpoint(recoveryCheckpointPath, journal.getJournalTail(recoveryCheckpointPath));
+      activeCheckpointPath = PrimaryCheckpointPath;
+
+      journal.activate();
+   }
+
+
+   private void handleLoadNonPrimaryCheckpoint(final Path checkpointPath) throws IOException
+   {
+      loadCheckpoint(checkpointPath, JournalTail.None);
+      activeCheckpointPath = checkpointPath;
+   }
+
+
    private void handleSavePrimaryCheckpoint() throws IOException
    {
       if (! isAttachedToPrimaryCheckpoint())
          throw new IllegalStateException("Cannot overwrite primary data checkpoint with non-primary data.");
 
-      saveCheckpoint(PrimaryCheckpointPath);
+      saveCheckpoint(PrimaryCheckpointPath, true, null);
+   }
+
+
+   /* Saves a full checkpoint of the primary data from which a standby can be bootstrapped, returning its files in the order that they should be transferred.
+    * The descriptor is placed last so that a transfer which is cut short leaves the standby's copy without one, ie. incomplete rather than corrupt.
+    * The checkpoint isn't journalled; the changes racing with the save are instead streamed to the standby once the files have been sent.
+    */
+   private List<Path> handleSaveReplicationCheckpoint() throws IOException
+   {
+      if (! isAttachedToPrimaryCheckpoint())
+         throw new IllegalStateException("Cannot bootstrap a standby when not attached to primary data.");
+
+      if (Files.notExists(ReplicationCheckpointPath))
+         Files.createDirectory(ReplicationCheckpointPath);
+      else
+         deleteCheckpointFiles(ReplicationCheckpointPath);
+
+      saveCheckpoint(ReplicationCheckpointPath, false, null);
+
+      final List<Path> checkpointFiles = new ArrayList<>();
+
+      try
+      (
+         final DirectoryStream<Path> checkpointFileStream = Files.newDirectoryStream(ReplicationCheckpointPath);
+      )
+      {
+         for (final Path checkpointFile : checkpointFileStream)
+         {
+            if (Files.isRegularFile(checkpointFile) && (! checkpointFile.getFileName().toString().equals(CheckpointDescriptorFilename)))
+               checkpointFiles.add(checkpointFile);
+         }
+      }
+
+      checkpointFiles.add(ReplicationCheckpointPath.resolve(CheckpointDescriptorFilename));
+
+      return checkpointFiles;
+   }
+
+
+   /* The standby's own primary checkpoint directory is cleared to receive the checkpoint files sent by the primary, and the existing data is detached
+    * from it. The files received are subsequently loaded by loadStandbyCheckpoint().
+    */
+   private Path handlePrepareStandbyCheckpoint() throws IOException
+   {
+      if (isAutoSaveStarted())
+         throw new IllegalStateException("Cannot bootstrap a standby while auto save is active.");
+
+      deactivateJournal();
+      activeCheckpointPath = null;
+
+      if (Files.notExists(PrimaryCheckpointPath))
+         Files.createDirectory(PrimaryCheckpointPath);
+      else
+         deleteCheckpointFiles(PrimaryCheckpointPath);
+
+      return PrimaryCheckpointPath;
+   }
+
+
+   /* Once loaded, the checkpoint is stamped as the base for journal replay and the journal is activated to record the changes streamed from the primary.
+    * If the standby crashes, loading the primary checkpoint as usual will recover all of the changes that it had received. The standby isn't attached to
+    * the primary data until it's promoted, so neither the primary checkpoint nor the autosave can be run against it until then.
+    */
+   private void handleLoadStandbyCheckpoint() throws IOException
+   {
+      if (readCheckpointDescriptor(PrimaryCheckpointPath) == null)
+         throw new IOException("The checkpoint transferred from the primary is incomplete.");
+
+      loadCheckpoint(PrimaryCheckpointPath, JournalTail.None);
+
+      journal.activate();
+      journal.markCheckpoint(PrimaryCheckpointPath, journal.rollSegment());
+   }
+
+
+   private void handlePromoteStandby() throws IOException
+   {
+      if (! journal.isActive())
+         throw new IllegalStateException("Cannot promote a standby that hasn't been bootstrapped, or whose journal has failed.");
+
+      feedbackManager.rebuildFeedbackCategoryData();
+      activeCheckpointPath = PrimaryCheckpointPath;
+   }
+
+
+   /* Verifies the block checksums of every data file within the checkpoint, without restoring any of the data. The files are independent of one another
+    * so they're verified concurrently, which for a sharded checkpoint allows each shard to be verified on its own thread.
+    */
+   private List<CheckpointFileFormat.FileVerification> handleVerifyCheckpoint(final Path checkpointPath) throws IOException
+   {
+      if (Files.notExists(checkpointPath))
+         throw new IOException("Checkpoint does not exist: " + checkpointPath);
+
+      final List<Callable<CheckpointFileFormat.FileVerification>> verificationTasks = new ArrayList<>();
+
+      try
+      (
+         final DirectoryStream<Path> checkpointFiles = Files.newDirectoryStream(checkpointPath, "*" + FeedbactoryServerConstants.DataFileExtension);
+      )
+      {
+         for (final Path checkpointFile : checkpointFiles)
+         {
+            verificationTasks.add(new Callable<CheckpointFileFormat.FileVerification>()
+            {
+               @Override
+               final public CheckpointFileFormat.FileVerification call()
+               {
+                  return CheckpointFileFormat.verify(checkpointFile.toFile());
+               }
+            });
+         }
+      }
+
+      if (verificationTasks.isEmpty())
+         return Collections.emptyList();
+
+      return ShardedCheckpointFile.invokeShardTasks(verificationTasks, "Checkpoint verification");
    }
 
 
@@ -337,8 +893,7 @@ final class CheckpointManager
 
    final void loadPrimaryCheckpoint() throws IOException
    {
-      loadCheckpoint(PrimaryCheckpointPath);
-      activeCheckpointPath = PrimaryCheckpointPath;
+      handleLoadPrimaryCheckpoint();
    }
 
 
@@ -350,9 +905,7 @@ final class CheckpointManager
 
    final void loadAutoSaveCheckpoint(final int checkpointNumber) throws IOException
    {
-      final Path checkpointPath = AutoSaveCheckpointsBasePath.resolve(Integer.toString(checkpointNumber));
-      loadCheckpoint(checkpointPath);
-      activeCheckpointPath = checkpointPath;
+      handleLoadNonPrimaryCheckpoint(AutoSaveCheckpointsBasePath.resolve(Integer.toString(checkpointNumber)));
    }
 
 
@@ -382,14 +935,66 @@ final class CheckpointManager
 
    final void loadSnapshotCheckpoint(final String snapshotName) throws IOException
    {
-      final Path checkpointPath = SnapshotCheckpointsBasePath.resolve(snapshotName);
-      loadCheckpoint(checkpointPath);
-      activeCheckpointPath = checkpointPath;
+      handleLoadNonPrimaryCheckpoint(SnapshotCheckpointsBasePath.resolve(snapshotName));
    }
 
 
    final void saveSnapshotCheckpoint(final String snapshotName) throws IOException
    {
-      createPathAndSaveCheckpoint(SnapshotCheckpointsBasePath.resolve(snapshotName));
+      createPathAndSaveCheckpoint(SnapshotCheckpointsBasePath.resolve(snapshotName), false, null);
+   }
+
+
+   final List<CheckpointFileFormat.FileVerification> verifyPrimaryCheckpoint() throws IOException
+   {
+      return handleVerifyCheckpoint(PrimaryCheckpointPath);
+   }
+
+
+   final List<CheckpointFileFormat.FileVerification> verifyAutoSaveCheckpoint(final int checkpointNumber) throws IOException
+   {
+      return handleVerifyCheckpoint(AutoSaveCheckpointsBasePath.resolve(Integer.toString(checkpointNumber)));
+   }
+
+
+   final List<CheckpointFileFormat.FileVerification> verifySnapshotCheckpoint(final String snapshotName) throws IOException
+   {
+      return handleVerifyCheckpoint(SnapshotCheckpointsBasePath.resolve(snapshotName));
+   }
+
+
+   final List<Path> saveReplicationCheckpoint() throws IOException
+   {
+      return handleSaveReplicationCheckpoint();
+   }
+
+
+   final Path prepareStandbyCheckpoint() throws IOException
+   {
+      return handlePrepareStandbyCheckpoint();
+   }
+
+
+   final void loadStandbyCheckpoint() throws IOException
+   {
+      handleLoadStandbyCheckpoint();
+   }
+
+
+   final void promoteStandby() throws IOException
+   {
+      handlePromoteStandby();
+   }
+
+
+   final WriteAheadJournal.JournalMetrics getJournalMetrics()
+   {
+      return journal.getMetrics();
+   }
+
+
+   final void shutdownJournal() throws InterruptedException, IOException
+   {
+      journal.deactivate();
    }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/* Memos:
+ * - A reusable in-memory staging area for a single checkpoint record, eg. one user account along with its data. The checkpoint writers encode each
+ *   record into the buffer while holding the lock on the account, and only copy it through to the checkpoint file stream once the lock has been released.
+ *   The account lock is then held just long enough to take a frozen copy of the account's data in serialised form, and live requests for the
+ *   account never queue behind a flush of the file stream to disk.
+ *
+ * - The checkpoints were already fuzzy across accounts, ie. each account's record is consistent in itself but the records are captured at different
+ *   moments during the save. Staging the records doesn't change that, since the capture of each record is still performed under the account lock.
+ *
+ * - Not threadsafe; each writer thread (or shard worker) must use its own buffer. The buffer retains its largest capacity between records so that
+ *   there's no reallocation for the typically small and similarly sized records.
+ */
+
+package com.feedbactory.server.core;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+
+final public class CheckpointRecordBuffer
+{
+   static final private int InitialBufferCapacityBytes = 512;
+
+   final private ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(InitialBufferCapacityBytes);
+   final private DataOutputStream recordStream = new DataOutputStream(recordBuffer);
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private DataOutputStream handleStartRecord()
+   {
+      recordBuffer.reset();
+      return recordStream;
+   }
+
+
+   private void handleWriteRecord(final DataOutputStream checkpointStream) throws IOException
+   {
+      recordBuffer.writeTo(checkpointStream);
+      recordBuffer.reset();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // Discards any previously staged record and returns the stream to which the next record should be written.
+   final public DataOutputStream startRecord()
+   {
+      return handleStartRecord();
+   }
+
+
+   // Copies the staged record through to the checkpoint stream. Should be called after the record's lock has been released.
+   final public void writeRecord(final DataOutputStream checkpointStream) throws IOException
+   {
+      handleWriteRecord(checkpointStream);
+   }
+}
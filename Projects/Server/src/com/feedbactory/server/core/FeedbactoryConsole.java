@@ -32,14 +32,18 @@ import com.feedbactory.server.network.application.UserAccountSessionManager.Acco
 import com.feedbactory.server.network.application.UserAccountSessionManager.SessionManagerMetrics;
 import com.feedbactory.server.network.component.IPAddressRequestMonitor;
 import com.feedbactory.server.network.component.IPAddressRequestMonitor.BlockedIPAddressMetrics;
+import com.feedbactory.server.network.component.IPAddressRequestMonitor.BlockedIPAddressPrefixMetrics;
 import com.feedbactory.server.network.component.IPAddressRequestMonitor.IPAddressMetrics;
 import com.feedbactory.server.network.component.IPAddressRequestMonitor.IPMonitorMetrics;
+import com.feedbactory.server.network.component.IPAddressRequestMonitorBenchmark;
+import com.feedbactory.server.useraccount.AccountIDTableBenchmark;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccountTest;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccountView;
+import com.feedbactory.server.useraccount.UserAccountMailer;
 import com.feedbactory.server.useraccount.UserAccountMailer.UserAccountMailerMetrics;
+import com.feedbactory.server.useraccount.UserAccountMailerTest;
 import com.feedbactory.server.useraccount.UserAccountManager.UserAccountManagerMetrics;
 import com.feedbactory.server.useraccount.UserAccountNetworkGateway.EmailBlockedIPAddressMetrics;
-import com.feedbactory.server.useraccount.UserAccountNetworkGateway.EmailFailedAuthenticationMetrics;
 import com.feedbactory.server.useraccount.UserAccountNetworkGateway.IPAddressFailedAuthenticationMetrics;
 import com.feedbactory.server.useraccount.UserAccountNetworkGateway.IPAuthenticationMetrics;
 import com.feedbactory.shared.FeedbactoryConstants;
@@ -78,6 +82,7 @@ final public class FeedbactoryConsole
    static final private String OnCommandSwitch = "on";
    static final private String OffCommandSwitch = "off";
    static final private String TestCommandSwitch = "test";
+   static final private String SyntheticTestCommandSwitch = "synthetic";
    static final private String ResetCommandSwitch = "reset";
 
    static final private String BatchCommand = "batch";
@@ -97,9 +102,26 @@ final public class FeedbactoryConsole
    static final private String AutoSaveCheckpointCommandSwitch = "autosave";
    static final private String SnapshotCheckpointCommandSwitch = "snapshot";
    static final private String AutoSaveCommand = "autosave";
+   static final private String VerifyCommand = "verify";
+   static final private String VerifyCheckpointCommandSwitch = "checkpoint";
+
+   static final private String BenchmarkCommand = "benchmark";
+   static final private String BenchmarkCheckpointCommandSwitch = "checkpoint";
+   static final private int DefaultCheckpointBenchmarkRounds = 2;
+   static final private String BenchmarkIPMonitorCommandSwitch = "ipmonitor";
+   static final private int DefaultIPMonitorBenchmarkAddresses = 100000;
+   static final private int DefaultIPMonitorBenchmarkThreads = 8;
+   static final private String BenchmarkAccountTableCommandSwitch = "accounttable";
+   static final private int DefaultAccountTableBenchmarkAccounts = 1000000;
+   static final private int DefaultAccountTableBenchmarkThreads = 8;
 
    static final private String HousekeepingCommand = "housekeeping";
 
+   static final private String ReplicationCommand = "replication";
+   static final private String ReplicationPrimaryCommandSwitch = "primary";
+   static final private String ReplicationStandbyCommandSwitch = "standby";
+   static final private String ReplicationPromoteCommandSwitch = "promote";
+
    static final private long DefaultServerShutdownTimeoutMilliseconds = TimeUnit.SECONDS.toMillis(10);
    static final private String ServerCommand = "server";
    static final private String ServerBacklogCommandSwitch = "backlog";
@@ -113,6 +135,7 @@ final public class FeedbactoryConsole
    static final private String IPMonitorBlacklistedIPCommandSwitch = "blacklisted";
    static final private String IPMonitorBlacklistIPCommandSwitch = "blacklist";
    static final private String IPMonitorParoleIPCommandSwitch = "parole";
+   static final private String IPMonitorBlockedPrefixesCommandSwitch = "prefixes";
 
    static final private String FeedbactoryAvailableCommand = "feedbactory";
    static final private String RequestCommand = "request";
@@ -133,6 +156,9 @@ final public class FeedbactoryConsole
    static final private String UserAccountMessageCommandSwitch = "message";
 
    static final private String MailerCommand = "mailer";
+   static final private String MailerConnectionsCommandSwitch = "connections";
+   static final private String MailerRestartTestCommandSwitch = "restart";
+   static final private int DefaultMailerTestResponseDelayMilliseconds = 0;
 
    static final private String FeedbackCommand = "feedback";
    static final private String FeedbackCommandAccountSwitch = "account";
@@ -180,6 +206,8 @@ final public class FeedbactoryConsole
 
       initialiseCheckpointCommands();
 
+      initialiseReplicationCommands();
+
       initialiseServerCommands();
 
       initialiseIPMonitorCommands();
@@ -199,6 +227,8 @@ final public class FeedbactoryConsole
       initialiseMailerCommands();
 
       initialiseFeedbackCommands();
+
+      initialiseBenchmarkCommands();
    }
 
 
@@ -256,6 +286,15 @@ final public class FeedbactoryConsole
             processAutoSaveCommand(arguments);
          }
       });
+
+      commandExecutors.put(VerifyCommand, new CommandExecutor()
+      {
+         @Override
+         final public void executeCommand(final String[] arguments) throws IOException
+         {
+            processVerifyCommand(arguments);
+         }
+      });
    }
 
 
@@ -272,6 +311,19 @@ final public class FeedbactoryConsole
    }
 
 
+   private void initialiseReplicationCommands()
+   {
+      commandExecutors.put(ReplicationCommand, new CommandExecutor()
+      {
+         @Override
+         final public void executeCommand(final String[] arguments) throws IOException, InterruptedException
+         {
+            processReplicationCommand(arguments);
+         }
+      });
+   }
+
+
    private void initialiseServerCommands()
    {
       commandExecutors.put(ServerCommand, new CommandExecutor()
@@ -399,7 +451,7 @@ final public class FeedbactoryConsole
       commandExecutors.put(MailerCommand, new CommandExecutor()
       {
          @Override
-         final public void executeCommand(final String[] arguments)
+         final public void executeCommand(final String[] arguments) throws IOException, InterruptedException
          {
             processMailerCommand(arguments);
          }
@@ -420,6 +472,19 @@ final public class FeedbactoryConsole
    }
 
 
+   private void initialiseBenchmarkCommands()
+   {
+      commandExecutors.put(BenchmarkCommand, new CommandExecutor()
+      {
+         @Override
+         final public void executeCommand(final String[] arguments) throws IOException, InterruptedException
+         {
+            processBenchmarkCommand(arguments);
+         }
+      });
+   }
+
+
    private void checkMinimumCompatibleClientVersion()
    {
       /* See the ClientVersionCompatibilityManager class for a detailed rundown of this.
@@ -788,6 +853,8 @@ final public class FeedbactoryConsole
 
       System.out.format(labelValueFormat, "Housekeeping status:", (operationsManager.getHousekeepingManager().isStarted() ? "Enabled" : "Disabled"));
 
+      System.out.format(labelValueFormat, "Replication status:", operationsManager.getReplicationManager().getMetrics().state);
+
       printFormattedServerStatus(labelValueFormat);
 
       System.out.format(labelValueFormat, "Feedbactory status:", (operationsManager.getRequestManager().isApplicationAvailable() ? "Available" : "Not available"));
@@ -1030,6 +1097,11 @@ final public class FeedbactoryConsole
          System.out.println("Cannot load from a checkpoint while the server is active.");
          return false;
       }
+      else if (operationsManager.getReplicationManager().isActive())
+      {
+         System.out.println("Cannot load from a checkpoint while replication is enabled.");
+         return false;
+      }
 
       return true;
    }
@@ -1040,8 +1112,10 @@ final public class FeedbactoryConsole
       if (validateStateForLoading())
       {
          System.out.println("Loading primary checkpoint...");
+         // Use the finer grained System.currentTimeMillis rather than the TimeCache for this.
+         final long loadStartTime = System.currentTimeMillis();
          operationsManager.loadPrimaryCheckpoint();
-         System.out.println("Primary checkpoint loaded.");
+         System.out.format("Primary checkpoint loaded in %,d ms.%n", System.currentTimeMillis() - loadStartTime);
       }
    }
 
@@ -1051,8 +1125,9 @@ final public class FeedbactoryConsole
       if (validateStateForLoading())
       {
          System.out.format("Loading auto save '%d' checkpoint...%n", autoSaveNumber);
+         final long loadStartTime = System.currentTimeMillis();
          operationsManager.loadAutoSaveCheckpoint(autoSaveNumber);
-         System.out.println("Auto save checkpoint loaded.");
+         System.out.format("Auto save checkpoint loaded in %,d ms.%n", System.currentTimeMillis() - loadStartTime);
       }
    }
 
@@ -1062,9 +1137,89 @@ final public class FeedbactoryConsole
       if (validateStateForLoading())
       {
          System.out.format("Loading snapshot '%s' checkpoint...%n", snapshotName);
+         final long loadStartTime = System.currentTimeMillis();
          operationsManager.loadSnapshotCheckpoint(snapshotName);
-         System.out.println("Snapshot checkpoint loaded.");
+         System.out.format("Snapshot checkpoint loaded in %,d ms.%n", System.currentTimeMillis() - loadStartTime);
+      }
+   }
+
+
+   private void processVerifyCommand(final String[] arguments) throws IOException
+   {
+      if ((arguments.length == 2) && arguments[0].equals(VerifyCheckpointCommandSwitch) && arguments[1].equals(PrimaryCheckpointCommandSwitch))
+      {
+         System.out.println("Verifying primary checkpoint...");
+         displayCheckpointVerification(operationsManager.verifyPrimaryCheckpoint());
+      }
+      else if ((arguments.length == 3) && arguments[0].equals(VerifyCheckpointCommandSwitch) && arguments[1].equals(AutoSaveCheckpointCommandSwitch))
+      {
+         final int autoSaveNumber = Integer.parseInt(arguments[2]);
+         System.out.format("Verifying auto save '%d' checkpoint...%n", autoSaveNumber);
+         displayCheckpointVerification(operationsManager.verifyAutoSaveCheckpoint(autoSaveNumber));
+      }
+      else if ((arguments.length == 3) && arguments[0].equals(VerifyCheckpointCommandSwitch) && arguments[1].equals(SnapshotCheckpointCommandSwitch))
+      {
+         System.out.format("Verifying snapshot '%s' checkpoint...%n", arguments[2]);
+         displayCheckpointVerification(operationsManager.verifySnapshotCheckpoint(arguments[2]));
       }
+      else
+         System.out.println("Invalid command switch.");
+   }
+
+
+   private void displayCheckpointVerification(final List<CheckpointFileFormat.FileVerification> fileVerifications)
+   {
+      if (fileVerifications.isEmpty())
+      {
+         System.out.println("The checkpoint contains no data files.");
+         return;
+      }
+
+      int invalidFiles = 0;
+
+      System.out.println();
+      // Provide spacing but don't truncate any of the output fields.
+      final String outputFormat = "%-40s%-10s%-10s%-15s%-15s%s%n";
+      System.out.format(outputFormat, "File", "Format", "Blocks", "Stored bytes", "Data bytes", "Result");
+      System.out.println();
+
+      for (final CheckpointFileFormat.FileVerification fileVerification : fileVerifications)
+      {
+         System.out.format(outputFormat, fileVerification.filename, (fileVerification.isBlockFormat ? "Block" : "Raw"), fileVerification.blockCount,
+                           fileVerification.storedBytes, fileVerification.uncompressedBytes, (fileVerification.isValid() ? "OK" : fileVerification.failureMessage));
+
+         if (! fileVerification.isValid())
+            invalidFiles ++;
+      }
+
+      System.out.println();
+
+      if (invalidFiles == 0)
+         System.out.format("All %d checkpoint files verified.%n", fileVerifications.size());
+      else
+         System.out.format("%d of %d checkpoint files failed verification.%n", invalidFiles, fileVerifications.size());
+   }
+
+
+   private void processBenchmarkCommand(final String[] arguments) throws IOException, InterruptedException
+   {
+      if ((arguments.length >= 2) && (arguments.length <= 3) && arguments[0].equals(BenchmarkCheckpointCommandSwitch))
+      {
+         if (validateStateForLoading())
+            CheckpointBenchmark.runBenchmark(operationsManager, arguments[1], (arguments.length == 3) ? Integer.parseInt(arguments[2]) : DefaultCheckpointBenchmarkRounds);
+      }
+      else if ((arguments.length >= 1) && (arguments.length <= 3) && arguments[0].equals(BenchmarkIPMonitorCommandSwitch))
+      {
+         IPAddressRequestMonitorBenchmark.runBenchmark((arguments.length >= 2) ? Integer.parseInt(arguments[1]) : DefaultIPMonitorBenchmarkAddresses,
+                                                       (arguments.length == 3) ? Integer.parseInt(arguments[2]) : DefaultIPMonitorBenchmarkThreads);
+      }
+      else if ((arguments.length >= 1) && (arguments.length <= 3) && arguments[0].equals(BenchmarkAccountTableCommandSwitch))
+      {
+         AccountIDTableBenchmark.runBenchmark((arguments.length >= 2) ? Integer.parseInt(arguments[1]) : DefaultAccountTableBenchmarkAccounts,
+                                              (arguments.length == 3) ? Integer.parseInt(arguments[2]) : DefaultAccountTableBenchmarkThreads);
+      }
+      else
+         System.out.println("Invalid command switch.");
    }
 
 
@@ -1094,11 +1249,22 @@ final public class FeedbactoryConsole
       System.out.format(labelValue + "%d minute%s%n", "Frequency:", autoSaveMetrics.autoSaveFrequencyMinutes, pluralise(autoSaveMetrics.autoSaveFrequencyMinutes));
       System.out.format(numericLabelValueFormat, "Saves this session:", autoSaveMetrics.autoSavesThisSession);
       System.out.format(numericLabelValueFormat, "Last save number:", autoSaveMetrics.lastAutoSaveNumber);
+      System.out.format(generalLabelValueFormat, "Last save type:", (autoSaveMetrics.isLastAutoSaveDelta ? "Delta" : "Full"));
+      System.out.format(labelValue + "%d of %d%n", "Checkpoint chain length:", autoSaveMetrics.checkpointChainLength, autoSaveMetrics.maximumCheckpointChainLength);
       System.out.format(generalLabelValueFormat, "Last save start time:", getFormattedDateAndTime(autoSaveMetrics.lastAutoSaveStartTime));
 
       if (autoSaveMetrics.lastAutoSaveStartTime != FeedbactoryConstants.NoTime)
          System.out.format(generalLabelValueFormat, "Last save duration:", getFormattedTimeSpan(autoSaveMetrics.lastAutoSaveFinishTime - autoSaveMetrics.lastAutoSaveStartTime));
 
+      final WriteAheadJournal.JournalMetrics journalMetrics = operationsManager.getJournalMetrics();
+
+      System.out.println();
+      System.out.format(generalLabelValueFormat, "Journal status:", (journalMetrics.isActive ? "Active" : "Inactive"));
+      System.out.format(numericLabelValueFormat, "Journal segment:", journalMetrics.activeSegmentNumber);
+      System.out.format(numericLabelValueFormat, "Journal records this session:", journalMetrics.recordsAppendedThisSession);
+      System.out.format(numericLabelValueFormat, "Journal batches this session:", journalMetrics.batchesWrittenThisSession);
+      System.out.format(numericLabelValueFormat, "Journal largest batch (records):", journalMetrics.largestBatchRecords);
+
       System.out.println();
    }
 
@@ -1154,6 +1320,37 @@ final public class FeedbactoryConsole
          System.out.println("Housekeeping is enabled.");
       else
          System.out.println("Housekeeping is disabled.");
+
+      final HousekeepingScheduler.SchedulerMetrics schedulerMetrics = operationsManager.getHousekeepingManager().getSchedulerMetrics();
+
+      final String labelValue = "%-35.35s";
+      final String generalLabelValueFormat = labelValue + "%s%n";
+      final String numericLabelValueFormat = labelValue + "%,d%n";
+
+      System.out.println();
+      System.out.format(generalLabelValueFormat, "Scheduler active:", (schedulerMetrics.isActive ? "Yes" : "No"));
+      System.out.format(generalLabelValueFormat, "CPU budget:", String.format("%,d ms per %,d ms", schedulerMetrics.cpuBudgetPerIntervalMilliseconds,
+                                                                                schedulerMetrics.budgetIntervalMilliseconds));
+      System.out.format(generalLabelValueFormat, "CPU spent this interval:", String.format("%,d ms", schedulerMetrics.cpuSpentThisIntervalMilliseconds));
+      System.out.format(numericLabelValueFormat, "Budget exhausted ticks:", schedulerMetrics.budgetExhaustedTicks);
+      System.out.format(numericLabelValueFormat, "Server busy deferred ticks:", schedulerMetrics.busyDeferredTicks);
+
+      if (schedulerMetrics.taskMetrics.isEmpty())
+         return;
+
+      final String outputFormat = "%-30.30s%-12.12s%-10.10s%-30.30s%-15.15s%-12.12s%-10.10s%s%n";
+
+      System.out.println();
+      System.out.format(outputFormat, "Task", "Period", "Runs", "Last run", "Duration (ms)", "CPU (ms)", "Slices", "Total CPU (ms)");
+      System.out.println();
+
+      for (final HousekeepingScheduler.TaskMetrics taskMetrics : schedulerMetrics.taskMetrics)
+      {
+         System.out.format(outputFormat, taskMetrics.taskName, String.format("%,d min", TimeUnit.MILLISECONDS.toMinutes(taskMetrics.periodMilliseconds)), String.format("%,d", taskMetrics.completedRuns),
+                           getFormattedDateAndTime(taskMetrics.lastRunStartTime), String.format("%,d", taskMetrics.lastRunDurationMilliseconds),
+                           String.format("%,d", taskMetrics.lastRunCPUMilliseconds), String.format("%,d", taskMetrics.lastRunSlices),
+                           String.format("%,d", taskMetrics.totalCPUMilliseconds));
+      }
    }
 
 
@@ -1161,6 +1358,8 @@ final public class FeedbactoryConsole
    {
       if (operationsManager.getHousekeepingManager().isStarted())
          System.out.println("Housekeeping is already enabled.");
+      else if (operationsManager.getReplicationManager().isAwaitingPromotion())
+         System.out.println("Housekeeping cannot be enabled on a standby until it has been promoted.");
       else
       {
          System.out.println("Starting housekeeping...");
@@ -1182,6 +1381,124 @@ final public class FeedbactoryConsole
    }
 
 
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void processReplicationCommand(final String[] arguments) throws IOException, InterruptedException
+   {
+      if (arguments.length == 0)
+         displayReplicationMetrics();
+      else if ((arguments.length <= 2) && arguments[0].equals(ReplicationPrimaryCommandSwitch))
+         startReplicationPrimary((arguments.length == 2) ? Integer.parseInt(arguments[1]) : ReplicationManager.DefaultReplicationPortNumber);
+      else if ((arguments.length <= 2) && arguments[0].equals(ReplicationStandbyCommandSwitch))
+         startReplicationStandby((arguments.length == 2) ? Integer.parseInt(arguments[1]) : ReplicationManager.DefaultReplicationPortNumber);
+      else if ((arguments.length == 1) && arguments[0].equals(ReplicationPromoteCommandSwitch))
+         promoteStandby();
+      else if ((arguments.length == 1) && arguments[0].equals(OffCommandSwitch))
+         disableReplication();
+      else
+         System.out.println("Invalid command switch.");
+   }
+
+
+   private void displayReplicationMetrics()
+   {
+      final ReplicationManager.ReplicationMetrics replicationMetrics = operationsManager.getReplicationManager().getMetrics();
+
+      final String labelValue = "%-35.35s";
+      final String generalLabelValueFormat = labelValue + "%s%n";
+      final String numericLabelValueFormat = labelValue + "%,d%n";
+
+      System.out.println();
+      System.out.format(generalLabelValueFormat, "Replication status:", replicationMetrics.state);
+      System.out.format(generalLabelValueFormat, "Connected to:", ((replicationMetrics.peerAddress != null) ? replicationMetrics.peerAddress : "None"));
+      System.out.format(generalLabelValueFormat, "Connection time:", getFormattedDateAndTime(replicationMetrics.connectedTime));
+      System.out.format(generalLabelValueFormat, "Last message time:", getFormattedDateAndTime(replicationMetrics.lastMessageTime));
+      System.out.format(numericLabelValueFormat, "Batches this connection:", replicationMetrics.batchesThisConnection);
+      System.out.format(numericLabelValueFormat, "Records this connection:", replicationMetrics.recordsThisConnection);
+      System.out.format(numericLabelValueFormat, "Bytes this connection:", replicationMetrics.bytesThisConnection);
+      System.out.format(numericLabelValueFormat, "Bytes pending for standby:", replicationMetrics.pendingBatchBytes);
+      System.out.println();
+   }
+
+
+   private boolean validateReplicationPortNumber(final int portNumber)
+   {
+      if ((portNumber < 0) || (portNumber > 65535))
+      {
+         System.out.println("Replication port number must be between 0 and 65535.");
+         return false;
+      }
+
+      return true;
+   }
+
+
+   private void startReplicationPrimary(final int portNumber) throws IOException
+   {
+      if (! validateReplicationPortNumber(portNumber))
+         return;
+      else if (operationsManager.getReplicationManager().isActive())
+         System.out.println("Replication is already enabled.");
+      else if (! operationsManager.isAttachedToPrimaryCheckpoint())
+         System.out.println("Replication to a standby can only be enabled when the primary checkpoint is loaded.");
+      else
+      {
+         operationsManager.getReplicationManager().startPrimary(portNumber);
+         System.out.println("Listening for a standby on local port " + portNumber + '.');
+      }
+   }
+
+
+   private void startReplicationStandby(final int primaryPortNumber)
+   {
+      if (! validateReplicationPortNumber(primaryPortNumber))
+         return;
+      else if (FeedbactoryServer.getExecutionProfile() != FeedbactoryServer.ExecutionProfile.Standby)
+         System.out.println("Replication from a primary can only be enabled under the standby execution profile.");
+      else if (operationsManager.getReplicationManager().isActive())
+         System.out.println("Replication is already enabled.");
+      else if (! operationsManager.getReplicationManager().isAwaitingPromotion())
+         System.out.println("The standby has already been promoted.");
+      else if (operationsManager.isAutoSaveStarted() || operationsManager.getHousekeepingManager().isStarted() ||
+               operationsManager.getServerController().isServerStarted())
+         System.out.println("Auto save, housekeeping, and the server must be disabled before enabling replication from a primary.");
+      else
+      {
+         operationsManager.getReplicationManager().startStandby(primaryPortNumber);
+         System.out.println("Connecting to the primary on local port " + primaryPortNumber + "...");
+      }
+   }
+
+
+   private void promoteStandby() throws IOException, InterruptedException
+   {
+      if (! operationsManager.getReplicationManager().isAwaitingPromotion())
+         System.out.println("Only a standby which has not yet been promoted can be promoted.");
+      else
+      {
+         System.out.println("Promoting standby...");
+         final long startTime = System.currentTimeMillis();
+         operationsManager.getReplicationManager().promote();
+         System.out.println("Standby promoted in " + getFormattedTimeSpan(System.currentTimeMillis() - startTime) + ". The server may now be started.");
+      }
+   }
+
+
+   private void disableReplication() throws IOException, InterruptedException
+   {
+      if (operationsManager.getReplicationManager().isActive())
+      {
+         System.out.println("Shutting down replication...");
+         operationsManager.getReplicationManager().stop();
+      }
+
+      System.out.println("Replication disabled.");
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -1363,7 +1680,9 @@ final public class FeedbactoryConsole
          return;
       }
 
-      if (! operationsManager.getServerController().isServerStarted())
+      if (operationsManager.getReplicationManager().isAwaitingPromotion())
+         System.out.println("The server cannot be started on a standby until it has been promoted.");
+      else if (! operationsManager.getServerController().isServerStarted())
       {
          System.out.println("Starting server...");
          operationsManager.getServerController().startServer(portNumber);
@@ -1429,6 +1748,10 @@ final public class FeedbactoryConsole
                processParoleIPAddressCommand(trimmedArguments);
                break;
 
+            case IPMonitorBlockedPrefixesCommandSwitch:
+               processBlockedIPAddressPrefixesCommand(trimmedArguments);
+               break;
+
             default:
                displayIPAddressMonitorMetrics(InetAddress.getByName(arguments[0]));
          }
@@ -1475,6 +1798,10 @@ final public class FeedbactoryConsole
       System.out.format(numericLabelValueFormat, "New IP addresses this period:", ipMonitorMetrics.newIPAddressesThisMonitorPeriod);
       System.out.format(numericLabelValueFormat, "Temporarily blocked:", ipMonitorMetrics.temporarilyBlockedIPAddresses);
       System.out.format(numericLabelValueFormat, "Blacklisted:", ipMonitorMetrics.blacklistedIPAddresses);
+      System.out.format(numericLabelValueFormat, "Blocked IP address ranges:", ipMonitorMetrics.blockedIPAddressPrefixes);
+      System.out.format(numericLabelValueFormat, "Connections rejected by range:", ipMonitorMetrics.connectionsRejectedByPrefix);
+      System.out.format(labelFormat + "%d IP address%s, %d KB%n", "Standing filter:", ipMonitorMetrics.standingFilterAddedIPAddresses,
+                        (ipMonitorMetrics.standingFilterAddedIPAddresses == 1) ? "" : "es", ipMonitorMetrics.standingFilterSizeBytes / 1024);
       System.out.println();
       System.out.format(numericLabelValueFormat, "Total requests this period:", totalRequestsThisMonitorPeriod);
       System.out.format(numericLabelValueFormat, "Legitimate requests:", ipMonitorMetrics.totalLegitimateRequestsThisMonitorPeriod);
@@ -1578,7 +1905,9 @@ final public class FeedbactoryConsole
 
    private void processBlacklistIPAddressCommand(final String[] arguments) throws UnknownHostException
    {
-      if (arguments.length == 1)
+      if ((arguments.length == 1) && isIPAddressPrefix(arguments[0]))
+         blacklistIPAddressPrefix(getPrefixNetworkAddress(arguments[0]), getPrefixLength(arguments[0]));
+      else if (arguments.length == 1)
          blacklistIPAddress(InetAddress.getByName(arguments[0]));
       else
          System.out.println("Invalid command arguments.");
@@ -1601,7 +1930,9 @@ final public class FeedbactoryConsole
 
    private void processParoleIPAddressCommand(final String[] arguments) throws UnknownHostException
    {
-      if (arguments.length == 1)
+      if ((arguments.length == 1) && isIPAddressPrefix(arguments[0]))
+         paroleIPAddressPrefix(getPrefixNetworkAddress(arguments[0]), getPrefixLength(arguments[0]));
+      else if (arguments.length == 1)
          paroleIPAddress(InetAddress.getByName(arguments[0]));
       else
          System.out.println("Invalid command arguments.");
@@ -1631,6 +1962,92 @@ final public class FeedbactoryConsole
    }
 
 
+   // An IP address range in CIDR form, eg. 203.0.113.0/24.
+   private boolean isIPAddressPrefix(final String argument)
+   {
+      return (argument.indexOf('/') != -1);
+   }
+
+
+   private InetAddress getPrefixNetworkAddress(final String prefixArgument) throws UnknownHostException
+   {
+      return InetAddress.getByName(prefixArgument.substring(0, prefixArgument.indexOf('/')));
+   }
+
+
+   private int getPrefixLength(final String prefixArgument)
+   {
+      return Integer.parseInt(prefixArgument.substring(prefixArgument.indexOf('/') + 1));
+   }
+
+
+   private void blacklistIPAddressPrefix(final InetAddress networkAddress, final int prefixLength)
+   {
+      operationsManager.getRequestMonitor().setIPAddressPrefixBlacklisted(networkAddress, prefixLength);
+      System.out.println("The IP address range has been blacklisted.");
+   }
+
+
+   private void paroleIPAddressPrefix(final InetAddress networkAddress, final int prefixLength)
+   {
+      final IPAddressStanding previousStanding = operationsManager.getRequestMonitor().setIPAddressPrefixParoled(networkAddress, prefixLength);
+
+      if (previousStanding != null)
+         System.out.println("The IP address range has been paroled.");
+      else
+         System.out.println("The IP address range is not blocked.");
+   }
+
+
+   private void processBlockedIPAddressPrefixesCommand(final String[] arguments)
+   {
+      if (arguments.length == 0)
+         displayBlockedIPAddressPrefixes();
+      else
+         System.out.println("Invalid command arguments.");
+   }
+
+
+   private void displayBlockedIPAddressPrefixes()
+   {
+      final List<BlockedIPAddressPrefixMetrics> blockedPrefixMetricsList = operationsManager.getRequestMonitor().getBlockedPrefixMetrics();
+
+      if (blockedPrefixMetricsList.isEmpty())
+      {
+         System.out.println("No blocked IP address ranges.");
+         return;
+      }
+
+      final Comparator<BlockedIPAddressPrefixMetrics> lastUpdatedComparator = new Comparator<BlockedIPAddressPrefixMetrics>()
+      {
+         @Override
+         final public int compare(final BlockedIPAddressPrefixMetrics prefixOne, final BlockedIPAddressPrefixMetrics prefixTwo)
+         {
+            if (prefixOne.prefixStandingLastUpdated < prefixTwo.prefixStandingLastUpdated)
+               return -1;
+            else if (prefixOne.prefixStandingLastUpdated > prefixTwo.prefixStandingLastUpdated)
+               return 1;
+            else
+               return 0;
+         }
+      };
+
+      Collections.sort(blockedPrefixMetricsList, lastUpdatedComparator);
+
+      final String outputFormat = "%-45.45s%-40.40s%s%n";
+
+      System.out.println();
+      System.out.format(outputFormat, "IP address range", "Blocked time", "Standing");
+      System.out.println();
+
+      for (final BlockedIPAddressPrefixMetrics blockedPrefixMetrics : blockedPrefixMetricsList)
+         System.out.format(outputFormat, blockedPrefixMetrics.prefix, getFormattedDateAndTime(blockedPrefixMetrics.prefixStandingLastUpdated), blockedPrefixMetrics.prefixStanding);
+
+      System.out.println();
+      System.out.format("%d blocked IP address range%s.%n%n", blockedPrefixMetricsList.size(), (blockedPrefixMetricsList.size() > 1) ? "s" : "");
+   }
+
+
    private void displayIPAddressMonitorMetrics(final InetAddress ipAddress)
    {
       final IPAddressMetrics ipAddressMetrics = operationsManager.getRequestMonitor().getIPAddressMetrics(ipAddress);
@@ -1945,6 +2362,14 @@ final public class FeedbactoryConsole
       System.out.format(numericLabelValueFormat, "Number of sessions:", sessionMetrics.numberOfSessions);
       System.out.format(numericLabelValueFormat, "Spread of accounts:", sessionMetrics.spreadOfAccounts);
       System.out.println();
+      System.out.format(numericLabelValueFormat, "Session store shards:", sessionMetrics.sessionStoreShards);
+      System.out.format(numericLabelValueFormat, "Session record capacity:", sessionMetrics.sessionRecordCapacity);
+      System.out.format(labelFormat + "%d (%.1f%% occupied)%n", "Session index slots:", sessionMetrics.sessionIndexCapacity,
+                        (sessionMetrics.sessionIndexCapacity > 0) ? ((100f * sessionMetrics.numberOfSessions) / sessionMetrics.sessionIndexCapacity) : 0f);
+      System.out.format(labelFormat + "%d per shard, %d minute%s each%n", "Session expiry buckets:", sessionMetrics.expiryBucketsPerShard,
+                        sessionMetrics.expiryBucketMinutes, pluralise(sessionMetrics.expiryBucketMinutes));
+      System.out.format(labelFormat + "%.1f MB%n", "Session store memory (approx.):", sessionMetrics.estimatedSessionStoreMemoryBytes / (1024d * 1024d));
+      System.out.println();
       System.out.format(labelFormat + "%d minute%s%n", "Encryption nonce duration:", sessionMetrics.nonceEncryptionExpiryTimeMinutes,
                         pluralise(sessionMetrics.nonceEncryptionExpiryTimeMinutes));
       System.out.format(numericLabelValueFormat, "Number of nonces held:", sessionMetrics.numberOfEncryptionNonces);
@@ -2008,13 +2433,11 @@ final public class FeedbactoryConsole
       final String generalLabelValueFormat = labelFormat + "%s%n";
       final String numericLabelValueFormat = labelFormat + "%d%n";
 
-      System.out.println();
-      System.out.format(generalLabelValueFormat, "IP authentication housekeeping status:", (failedAuthenticationMetrics.isHousekeepingEnabled ? "Enabled" : "Disabled"));
-      System.out.format(labelFormat + "%d minute%s%n", "Frequency:", failedAuthenticationMetrics.housekeepingFrequencyMinutes,
-                        pluralise(failedAuthenticationMetrics.housekeepingFrequencyMinutes));
-      System.out.format(generalLabelValueFormat, "Last run time:", getFormattedDateAndTime(failedAuthenticationMetrics.housekeepingLastRunStartTime));
       System.out.println();
       System.out.format(numericLabelValueFormat, "IP addresses tracking:", failedAuthenticationMetrics.numberOfIPAddressesTracking);
+      System.out.format(numericLabelValueFormat, "Emails tracking:", failedAuthenticationMetrics.numberOfEmailsTracking);
+      System.out.format(numericLabelValueFormat, "Tracker capacity:", failedAuthenticationMetrics.trackerCapacity);
+      System.out.format(numericLabelValueFormat, "Tracker evictions:", failedAuthenticationMetrics.trackerEvictions);
       System.out.println();
       System.out.format(generalLabelValueFormat, "Email lockout threshold:", failedAuthenticationMetrics.emailLockoutThreshold);
       System.out.format(labelFormat + "%d minute%s%n", "Email lockout period:", failedAuthenticationMetrics.emailLockoutPeriodMinutes,
@@ -2022,6 +2445,8 @@ final public class FeedbactoryConsole
       System.out.format(numericLabelValueFormat, "Email lockouts:", failedAuthenticationMetrics.numberOfEmailLockouts);
       System.out.println();
       System.out.format(generalLabelValueFormat, "IP address lockout threshold:", failedAuthenticationMetrics.ipAddressLockoutThreshold);
+      System.out.format(labelFormat + "%d minute%s%n", "IP address monitor period:", failedAuthenticationMetrics.ipAddressMonitorPeriodMinutes,
+                        pluralise(failedAuthenticationMetrics.ipAddressMonitorPeriodMinutes));
       System.out.format(labelFormat + "%d minute%s%n", "IP address lockout period:", failedAuthenticationMetrics.ipAddressLockoutPeriodMinutes,
                         pluralise(failedAuthenticationMetrics.ipAddressLockoutPeriodMinutes));
       System.out.format(numericLabelValueFormat, "IP address lockouts:", failedAuthenticationMetrics.numberOfIPAddressLockouts);
@@ -2063,33 +2488,9 @@ final public class FeedbactoryConsole
       System.out.println();
       System.out.format(generalLabelValueFormat, "IP address authentication status:", (failedAuthenticationMetrics.isIPAddressLockedOut ? "Locked out" : "OK"));
       System.out.format(generalLabelValueFormat, "Last locked out:", getFormattedDateAndTime(failedAuthenticationMetrics.lastLockoutTime));
-      System.out.println();
-
-      if (failedAuthenticationMetrics.emailFailedAuthentications.isEmpty())
-         System.out.println("No failed authentications.");
-      else
-      {
-         final String headingOutputFormat = "%-50.50s%-20.20s%s%n";
-         final String rowOutputFormat = "%-50.50s%-20d%s%n";
-
-         System.out.format(headingOutputFormat, "Email", "Failed attempts", "Last failed attempt");
-         System.out.println();
-
-         int failedAuthentications = 0;
-
-         for (final EmailFailedAuthenticationMetrics emailFailedAuthentication : failedAuthenticationMetrics.emailFailedAuthentications)
-         {
-            failedAuthentications += emailFailedAuthentication.failedAuthentications;
-
-            System.out.format(rowOutputFormat, emailFailedAuthentication.email, emailFailedAuthentication.failedAuthentications,
-                              getFormattedDateAndTime(emailFailedAuthentication.lastFailedAuthenticationTime));
-         }
-
-         System.out.println();
-         System.out.format("%d failed authentication%s for %d email%s.%n", failedAuthentications, pluralise(failedAuthentications),
-                           failedAuthenticationMetrics.emailFailedAuthentications.size(), pluralise(failedAuthenticationMetrics.emailFailedAuthentications.size()));
-      }
-
+      System.out.format(labelFormat + "%d%n", "Recent failed authentications:", failedAuthenticationMetrics.failedAuthentications);
+      System.out.format(labelFormat + "%d%n", "Emails tracking:", failedAuthenticationMetrics.numberOfEmailsTracking);
+      System.out.format(labelFormat + "%d%n", "Email lockouts:", failedAuthenticationMetrics.numberOfEmailLockouts);
       System.out.println();
    }
 
@@ -2106,7 +2507,7 @@ final public class FeedbactoryConsole
       else if (arguments[0].equals(UserAccountMessageCommandSwitch))
          processUserAccountMessageCommandSwitch(trimArguments(arguments));
       else if (arguments[0].equals(TestCommandSwitch))
-         processUserAccountTestCommand();
+         processUserAccountTestCommand(trimArguments(arguments));
       else if (arguments.length == 1)
          displayUserAccount(arguments[0]);
       else
@@ -2124,9 +2525,13 @@ final public class FeedbactoryConsole
 
       System.out.println();
       System.out.format(generalLabelValueFormat, "User account housekeeping status:", (accountManagerMetrics.isHousekeepingEnabled ? "Enabled" : "Disabled"));
-      System.out.format(labelFormat + "%d day%s%n", "Frequency:", accountManagerMetrics.housekeepingFrequencyDays,
-                        pluralise(accountManagerMetrics.housekeepingFrequencyDays));
+      System.out.format(labelFormat + "%d minute%s%n", "Frequency:", accountManagerMetrics.housekeepingFrequencyMinutes,
+                        pluralise(accountManagerMetrics.housekeepingFrequencyMinutes));
       System.out.format(generalLabelValueFormat, "Last run time:", getFormattedDateAndTime(accountManagerMetrics.housekeepingLastRunStartTime));
+      System.out.format(numericLabelValueFormat, "Indexed expiries:", accountManagerMetrics.indexedExpiries);
+      System.out.format(labelFormat + "%d segment%s, %d slots, %d released%n", "Account ID table:", accountManagerMetrics.accountTableSegments,
+                        pluralise(accountManagerMetrics.accountTableSegments), accountManagerMetrics.accountTableSlotCapacity,
+                        accountManagerMetrics.accountTableReleasedSegments);
       System.out.println();
       System.out.format(numericLabelValueFormat, "Total accounts:", accountManagerMetrics.activatedAccounts + accountManagerMetrics.pendingAccounts);
       System.out.format(numericLabelValueFormat, "Activated accounts:", accountManagerMetrics.activatedAccounts);
@@ -2208,12 +2613,19 @@ final public class FeedbactoryConsole
    }
 
 
-   private void processUserAccountTestCommand() throws IOException
+   private void processUserAccountTestCommand(final String[] arguments) throws IOException
    {
-      if (FeedbactoryServer.getExecutionProfile() != FeedbactoryServer.ExecutionProfile.Production)
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         System.out.println("Test cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if (arguments.length == 0)
          FeedbactoryUserAccountTest.createTestUserAccounts(operationsManager.getUserAccountManager());
+      else if ((arguments.length == 2) && arguments[0].equals(SyntheticTestCommandSwitch))
+         FeedbactoryUserAccountTest.createSyntheticUserAccounts(operationsManager.getUserAccountManager(), Integer.parseInt(arguments[1]));
+      else if ((arguments.length == 3) && arguments[0].equals(SyntheticTestCommandSwitch))
+         FeedbactoryUserAccountTest.createSyntheticUserAccounts(operationsManager.getUserAccountManager(), Integer.parseInt(arguments[1]), Long.parseLong(arguments[2]));
       else
-         System.out.println("Test cannot be performed when Feedbactory server is using the production profile.");
+         System.out.println("Invalid command switch.");
    }
 
 
@@ -2270,15 +2682,45 @@ final public class FeedbactoryConsole
     ***************************************************************************/
 
 
-   private void processMailerCommand(final String[] arguments)
+   private void processMailerCommand(final String[] arguments) throws IOException, InterruptedException
    {
       if (arguments.length == 0)
          displayUserAccountMailerMetrics();
+      else if (arguments[0].equals(MailerConnectionsCommandSwitch))
+         processMailerConnectionsCommandSwitch(trimArguments(arguments));
+      else if ((arguments.length == 3) && arguments[0].equals(TestCommandSwitch) && arguments[1].equals(MailerRestartTestCommandSwitch))
+         UserAccountMailerTest.runSpoolRestartTest(Integer.parseInt(arguments[2]));
+      else if ((arguments.length >= 2) && (arguments.length <= 3) && arguments[0].equals(TestCommandSwitch))
+         UserAccountMailerTest.runLocalSMTPTest(Integer.parseInt(arguments[1]), (arguments.length == 3) ? Integer.parseInt(arguments[2]) : DefaultMailerTestResponseDelayMilliseconds);
+      else
+         System.out.println("Invalid command switch.");
+   }
+
+
+   private void processMailerConnectionsCommandSwitch(final String[] arguments)
+   {
+      if (arguments.length == 0)
+         System.out.format("Mailer connection pool size: %d%n", operationsManager.getUserAccountManager().getAccountMailerMetrics().connectionPoolSize);
+      else if (arguments.length == 1)
+         setMailerConnectionPoolSize(Integer.parseInt(arguments[0]));
       else
          System.out.println("Invalid command switch.");
    }
 
 
+   private void setMailerConnectionPoolSize(final int connectionPoolSize)
+   {
+      if ((connectionPoolSize < UserAccountMailer.MinimumConnectionPoolSize) || (connectionPoolSize > UserAccountMailer.MaximumConnectionPoolSize))
+         System.out.format("Mailer connection pool size must be between %d and %d connections.%n", UserAccountMailer.MinimumConnectionPoolSize,
+                           UserAccountMailer.MaximumConnectionPoolSize);
+      else
+      {
+         operationsManager.getUserAccountManager().setMailerConnectionPoolSize(connectionPoolSize);
+         System.out.println("Mailer connection pool size changed.");
+      }
+   }
+
+
    private void displayUserAccountMailerMetrics()
    {
       final UserAccountMailerMetrics mailerMetrics = operationsManager.getUserAccountManager().getAccountMailerMetrics();
@@ -2287,8 +2729,20 @@ final public class FeedbactoryConsole
       final String numericLabelValueFormat = labelFormat + "%d%n";
 
       System.out.println();
-      System.out.format(numericLabelValueFormat, "Mailer thread queue size:", mailerMetrics.mailerThreadPoolQueueSize);
-      System.out.format(numericLabelValueFormat, "Mailer thread tasks completed:", mailerMetrics.mailerThreadPoolTasksCompleted);
+      System.out.format(numericLabelValueFormat, "Mailer connection pool size:", mailerMetrics.connectionPoolSize);
+      System.out.format(numericLabelValueFormat, "Open connections:", mailerMetrics.openConnections);
+      System.out.println();
+      System.out.format(labelFormat + "%d of %d%n", "Queue size:", mailerMetrics.queueSize, mailerMetrics.queueCapacity);
+      System.out.format(numericLabelValueFormat, "Spooled emails:", mailerMetrics.spooledEmails);
+      System.out.println();
+      System.out.format(numericLabelValueFormat, "Emails sent:", mailerMetrics.emailsSent);
+      System.out.format(numericLabelValueFormat, "Emails failed:", mailerMetrics.emailsFailed);
+      System.out.format(numericLabelValueFormat, "Emails spooled:", mailerMetrics.emailsSpooled);
+      System.out.format(numericLabelValueFormat, "Batches sent:", mailerMetrics.batchesSent);
+      System.out.println();
+      System.out.format(labelFormat + "%d ms%n", "Average queue latency:", mailerMetrics.averageQueueLatencyMilliseconds);
+      System.out.format(labelFormat + "%d ms%n", "Maximum queue latency:", mailerMetrics.maximumQueueLatencyMilliseconds);
+      System.out.format(labelFormat + "%d ms%n", "Average send time:", mailerMetrics.averageSendTimeMilliseconds);
       System.out.println();
    }
 
@@ -2329,6 +2783,8 @@ final public class FeedbactoryConsole
       System.out.format(labelFormat + "%d minute%s%n", "Frequency:", feedbackManagerMetrics.housekeepingFrequencyMinutes,
                         pluralise(feedbackManagerMetrics.housekeepingFrequencyMinutes));
       System.out.format(generalLabelValueFormat, "Last run time:", getFormattedDateAndTime(feedbackManagerMetrics.housekeepingLastRunStartTime));
+      System.out.format(numericLabelValueFormat, "Last run examined items:", feedbackManagerMetrics.housekeepingLastRunExaminedItems);
+      System.out.format(numericLabelValueFormat, "Pending dirty items:", feedbackManagerMetrics.dirtyItems);
       System.out.println();
       System.out.format(numericLabelValueFormat, "Feedback submissions:", feedbackManagerMetrics.feedbackSubmissions);
       System.out.format(numericLabelValueFormat, "Spread of items:", feedbackManagerMetrics.spreadOfItems);
@@ -2454,13 +2910,19 @@ final public class FeedbactoryConsole
          System.out.println("Auto save must be disabled before exiting.");
          return false;
       }
+      else if (operationsManager.getReplicationManager().isActive())
+      {
+         System.out.println("Replication must be disabled before exiting.");
+         return false;
+      }
 
       return true;
    }
 
 
-   private void processApplicationShutdown() throws InterruptedException
+   private void processApplicationShutdown() throws InterruptedException, IOException
    {
+      operationsManager.shutdownJournal();
       operationsManager.getUserAccountManager().shutdown();
       operationsManager.getLoggerManager().shutdown();
    }
@@ -17,6 +17,7 @@ import com.feedbactory.server.network.component.IPAddressRequestMonitor;
 import com.feedbactory.server.useraccount.UserAccountManager;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Locale;
 
 
@@ -24,13 +25,18 @@ final public class FeedbactoryOperationsManager
 {
    final private LoggerManager loggerManager = new LoggerManager(this);
 
-   final private UserAccountManager userAccountManager= new UserAccountManager();
-   final private FeedbackManager feedbackManager = new FeedbackManager(userAccountManager);
+   final private WriteAheadJournal journal = new WriteAheadJournal();
+
+   final private UserAccountManager userAccountManager= new UserAccountManager(journal);
+   final private FeedbackManager feedbackManager = new FeedbackManager(userAccountManager, journal);
 
    final private NetworkServiceManager networkServiceManager;
 
+   final private HousekeepingScheduler housekeepingScheduler;
+
    final private CheckpointManager checkpointManager;
    final private HousekeepingManager housekeepingManager;
+   final private ReplicationManager replicationManager;
 
 
    static
@@ -48,8 +54,11 @@ final public class FeedbactoryOperationsManager
    FeedbactoryOperationsManager() throws IOException
    {
       networkServiceManager = new NetworkServiceManager(this, userAccountManager, feedbackManager);
-      checkpointManager = new CheckpointManager(userAccountManager, feedbackManager, networkServiceManager);
-      housekeepingManager = new HousekeepingManager(userAccountManager, networkServiceManager, feedbackManager);
+      housekeepingScheduler = new HousekeepingScheduler(networkServiceManager.getServerController());
+
+      checkpointManager = new CheckpointManager(userAccountManager, feedbackManager, networkServiceManager, journal, housekeepingScheduler);
+      housekeepingManager = new HousekeepingManager(userAccountManager, networkServiceManager, feedbackManager, housekeepingScheduler);
+      replicationManager = new ReplicationManager(checkpointManager, journal, userAccountManager, feedbackManager);
 
       initialise();
    }
@@ -98,6 +107,8 @@ final public class FeedbactoryOperationsManager
          throw new IllegalStateException("Checkpoint restoration cannot be performed while the server is active.");
       else if (housekeepingManager.isStarted())
          throw new IllegalStateException("Checkpoint restoration cannot be performed while housekeeping is active.");
+      else if (replicationManager.isActive())
+         throw new IllegalStateException("Checkpoint restoration cannot be performed while replication is active.");
    }
 
 
@@ -193,12 +204,48 @@ final public class FeedbactoryOperationsManager
    }
 
 
+   final List<CheckpointFileFormat.FileVerification> verifyPrimaryCheckpoint() throws IOException
+   {
+      return checkpointManager.verifyPrimaryCheckpoint();
+   }
+
+
+   final List<CheckpointFileFormat.FileVerification> verifyAutoSaveCheckpoint(final int checkpointNumber) throws IOException
+   {
+      return checkpointManager.verifyAutoSaveCheckpoint(checkpointNumber);
+   }
+
+
+   final List<CheckpointFileFormat.FileVerification> verifySnapshotCheckpoint(final String checkpointName) throws IOException
+   {
+      return checkpointManager.verifySnapshotCheckpoint(checkpointName);
+   }
+
+
+   final WriteAheadJournal.JournalMetrics getJournalMetrics()
+   {
+      return checkpointManager.getJournalMetrics();
+   }
+
+
+   final void shutdownJournal() throws InterruptedException, IOException
+   {
+      checkpointManager.shutdownJournal();
+   }
+
+
    final HousekeepingManager getHousekeepingManager()
    {
       return housekeepingManager;
    }
 
 
+   final ReplicationManager getReplicationManager()
+   {
+      return replicationManager;
+   }
+
+
    final ApplicationServerController getServerController()
    {
       return networkServiceManager.getServerController();
@@ -12,15 +12,18 @@ final class HousekeepingManager
    final private UserAccountManager userAccountManager;
    final private NetworkServiceManager networkServiceManager;
    final private FeedbackManager feedbackManager;
+   final private HousekeepingScheduler housekeepingScheduler;
 
    private boolean isActive;
 
 
-   HousekeepingManager(final UserAccountManager userAccountManager, final NetworkServiceManager networkServiceManager, final FeedbackManager feedbackManager)
+   HousekeepingManager(final UserAccountManager userAccountManager, final NetworkServiceManager networkServiceManager, final FeedbackManager feedbackManager,
+                       final HousekeepingScheduler housekeepingScheduler)
    {
       this.userAccountManager = userAccountManager;
       this.networkServiceManager = networkServiceManager;
       this.feedbackManager = feedbackManager;
+      this.housekeepingScheduler = housekeepingScheduler;
    }
 
 
@@ -34,9 +37,9 @@ final class HousekeepingManager
       if (isActive)
          throw new IllegalStateException("Housekeeping is already active.");
 
-      userAccountManager.startHousekeeping();
-      networkServiceManager.startHousekeeping();
-      feedbackManager.startHousekeeping();
+      userAccountManager.startHousekeeping(housekeepingScheduler);
+      networkServiceManager.startHousekeeping(housekeepingScheduler);
+      feedbackManager.startHousekeeping(housekeepingScheduler);
 
       isActive = true;
    }
@@ -66,6 +69,12 @@ final class HousekeepingManager
    }
 
 
+   final HousekeepingScheduler.SchedulerMetrics getSchedulerMetrics()
+   {
+      return housekeepingScheduler.getMetrics();
+   }
+
+
    final void start()
    {
       handleStart();
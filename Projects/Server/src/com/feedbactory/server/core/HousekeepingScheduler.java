@@ -0,0 +1,540 @@
+/* Memos:
+ * - A single housekeeping thread shared by every manager, in place of each manager running its own scheduled executor. Left to themselves the separate
+ *   executors would happily all fire at once, and at the same moment as a traffic peak. Managers register a task along with its period when their
+ *   housekeeping is started, and unregister it when it's shut down.
+ *
+ * - The scheduler ticks every TickMilliseconds, and on each tick runs slices of whichever tasks are due, earliest due first. A task is handed a deadline
+ *   for each slice; a task that can resume its sweep does a chunk of work, and returns false until its run has finished. Tasks that are cheap enough
+ *   not to be split simply do the whole run and return true. A lengthy task that can't be split, eg. the autosave, instead hands its run to a thread of
+ *   its own and returns false until that has finished, rather than holding up the housekeeping thread. A run that's in progress keeps its place in the
+ *   queue, so it's resumed ahead of any runs that have fallen due since. Each task is run for at most one slice per tick, otherwise a task that's only
+ *   polling for the completion of its own thread would be picked again and again for the whole tick, and the other due tasks with it.
+ *
+ * - The housekeeping thread's CPU time is metered against a budget for each BudgetIntervalMilliseconds. Once the budget is spent no more slices are run
+ *   until the next interval. A slice that overruns is charged in full and the overrun carries forward as a debt against the following intervals, so
+ *   that it's followed by a quiet spell rather than by another burst of housekeeping.
+ *
+ * - While the server controller reports that it's busy, due slices are deferred - both new runs and the remainder of runs in progress - until the
+ *   busy spell passes or a run has been held back for MaximumBusyDeferralMilliseconds. After that it's allowed to proceed, still within the CPU
+ *   budget, so that a server which is busy for hours at a time still has its sessions purged, its accounts expired, etc. A deferred task doesn't hold up
+ *   the tasks behind it, and a task whose timing matters more than its cost, eg. the IP address monitor's period rollover which sets the length of its
+ *   rate limiting window, can be registered as exempt from the deferral altogether.
+ *
+ * - Runs follow a fixed rate, but don't catch up on the runs that have been missed after being held back for more than a whole period.
+ *
+ * - Registering and unregistering are threadsafe. Unregistering waits for a slice of the task that's already underway, but not for the rest of its run:
+ *   a run in progress is abandoned, and the task's next run after it's registered again begins afresh. Once the last task has been unregistered, the
+ *   housekeeping thread is shut down. If the last task is unregistered by a task running on the housekeeping thread itself, the thread can't be waited
+ *   upon, so it's only told to shut down once the current tick has finished.
+ *
+ * - Each registered task has its own lock for running slices, and another (the registration itself) for its metrics, so that reading the metrics
+ *   never has to wait for a slow slice.
+ */
+
+package com.feedbactory.server.core;
+
+
+import com.feedbactory.server.core.log.FeedbactoryLogger;
+import com.feedbactory.server.core.log.SystemLogLevel;
+import com.feedbactory.server.network.application.ApplicationServerController;
+import com.feedbactory.shared.FeedbactoryConstants;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+final public class HousekeepingScheduler
+{
+   static final private long TickMilliseconds = 100;
+
+   static final private long BudgetIntervalMilliseconds = 1000;
+   static final private long CPUBudgetPerIntervalNanoseconds = TimeUnit.MILLISECONDS.toNanos(100);
+
+   static final private long SliceNanoseconds = TimeUnit.MILLISECONDS.toNanos(20);
+   static final private long MaximumTickWorkNanoseconds = TimeUnit.MILLISECONDS.toNanos(40);
+
+   static final private long MaximumBusyDeferralMilliseconds = TimeUnit.MINUTES.toMillis(1);
+
+   final private ApplicationServerController serverController;
+
+   final private ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+   final private List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+   final private Object lifecycleLock = new Object();
+   private ScheduledThreadPoolExecutor executor;
+   volatile private Thread schedulerThread;
+
+   final private SchedulerTask schedulerTask = new SchedulerTask();
+
+
+   HousekeepingScheduler(final ApplicationServerController serverController)
+   {
+      this.serverController = serverController;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static public interface Task
+   {
+      /* Perform the next slice of the task's run, stopping at or soon after the deadline (in System.nanoTime() terms) if the work can be resumed.
+       * Return true once the run has finished.
+       */
+      public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime);
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class Registration
+   {
+      final private String taskName;
+      final private Task task;
+      final private long periodMilliseconds;
+      final private boolean isDeferredWhenBusy;
+
+      // Held while a slice is being run, so that unregistering can wait for it.
+      final private Object runLock = new Object();
+      private boolean isCancelled;
+
+      // Confined to the scheduler thread.
+      private long nextRunTime;
+      private boolean isRunInProgress;
+
+      // Guarded by the registration.
+      private int completedRuns;
+      private long runStartTime = FeedbactoryConstants.NoTime;
+      private long runCPUNanoseconds;
+      private int runSlices;
+      private long lastRunStartTime = FeedbactoryConstants.NoTime;
+      private long lastRunDurationMilliseconds;
+      private long lastRunCPUNanoseconds;
+      private int lastRunSlices;
+      private long totalCPUNanoseconds;
+
+
+      private Registration(final String taskName, final Task task, final long initialDelayMilliseconds, final long periodMilliseconds,
+                           final boolean isDeferredWhenBusy)
+      {
+         this.taskName = taskName;
+         this.task = task;
+         this.periodMilliseconds = periodMilliseconds;
+         this.isDeferredWhenBusy = isDeferredWhenBusy;
+
+         nextRunTime = System.currentTimeMillis() + initialDelayMilliseconds;
+      }
+
+
+      synchronized private void reportSlice(final boolean isNewRun, final long sliceStartTime, final boolean isRunFinished, final long sliceCPUNanoseconds)
+      {
+         if (isNewRun)
+         {
+            runStartTime = sliceStartTime;
+            runCPUNanoseconds = 0;
+            runSlices = 0;
+         }
+
+         runCPUNanoseconds += sliceCPUNanoseconds;
+         runSlices ++;
+         totalCPUNanoseconds += sliceCPUNanoseconds;
+
+         if (isRunFinished)
+         {
+            completedRuns ++;
+            lastRunStartTime = runStartTime;
+            lastRunDurationMilliseconds = System.currentTimeMillis() - runStartTime;
+            lastRunCPUNanoseconds = runCPUNanoseconds;
+            lastRunSlices = runSlices;
+         }
+      }
+
+
+      synchronized private TaskMetrics getMetrics()
+      {
+         return new TaskMetrics(taskName, periodMilliseconds, completedRuns, lastRunStartTime, lastRunDurationMilliseconds,
+                                TimeUnit.NANOSECONDS.toMillis(lastRunCPUNanoseconds), lastRunSlices, TimeUnit.NANOSECONDS.toMillis(totalCPUNanoseconds));
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class TaskMetrics
+   {
+      final public String taskName;
+      final public long periodMilliseconds;
+      final public int completedRuns;
+      final public long lastRunStartTime;
+      final public long lastRunDurationMilliseconds;
+      final public long lastRunCPUMilliseconds;
+      final public int lastRunSlices;
+      final public long totalCPUMilliseconds;
+
+
+      private TaskMetrics(final String taskName, final long periodMilliseconds, final int completedRuns, final long lastRunStartTime,
+                          final long lastRunDurationMilliseconds, final long lastRunCPUMilliseconds, final int lastRunSlices, final long totalCPUMilliseconds)
+      {
+         this.taskName = taskName;
+         this.periodMilliseconds = periodMilliseconds;
+         this.completedRuns = completedRuns;
+         this.lastRunStartTime = lastRunStartTime;
+         this.lastRunDurationMilliseconds = lastRunDurationMilliseconds;
+         this.lastRunCPUMilliseconds = lastRunCPUMilliseconds;
+         this.lastRunSlices = lastRunSlices;
+         this.totalCPUMilliseconds = totalCPUMilliseconds;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class SchedulerMetrics
+   {
+      final public boolean isActive;
+      final public long budgetIntervalMilliseconds;
+      final public long cpuBudgetPerIntervalMilliseconds;
+      final public long cpuSpentThisIntervalMilliseconds;
+      final public long budgetExhaustedTicks;
+      final public long busyDeferredTicks;
+      final public List<TaskMetrics> taskMetrics;
+
+
+      private SchedulerMetrics(final boolean isActive, final long cpuSpentThisIntervalMilliseconds, final long budgetExhaustedTicks, final long busyDeferredTicks,
+                               final List<TaskMetrics> taskMetrics)
+      {
+         this.isActive = isActive;
+         this.budgetIntervalMilliseconds = BudgetIntervalMilliseconds;
+         this.cpuBudgetPerIntervalMilliseconds = TimeUnit.NANOSECONDS.toMillis(CPUBudgetPerIntervalNanoseconds);
+         this.cpuSpentThisIntervalMilliseconds = cpuSpentThisIntervalMilliseconds;
+         this.budgetExhaustedTicks = budgetExhaustedTicks;
+         this.busyDeferredTicks = busyDeferredTicks;
+         this.taskMetrics = taskMetrics;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class SchedulerTask implements Runnable, ThreadFactory
+   {
+      // Written by the scheduler thread only; the metrics are read under the lock.
+      private long budgetIntervalStartTime = System.currentTimeMillis();
+      private long cpuSpentThisIntervalNanoseconds;
+      private long budgetExhaustedTicks;
+      private long busyDeferredTicks;
+
+
+      @Override
+      final public Thread newThread(final Runnable runnable)
+      {
+         final Thread thread = new Thread(runnable, "Housekeeping scheduler");
+         thread.setDaemon(true);
+         schedulerThread = thread;
+         return thread;
+      }
+
+
+      @Override
+      final public void run()
+      {
+         try
+         {
+            tick();
+         }
+         catch (final Exception anyException)
+         {
+            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
+             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleWithFixedDelay().
+             * Unhandled exceptions would also prevent further scheduleWithFixedDelay() invocations from running.
+             */
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Housekeeping scheduler tick failed", anyException);
+         }
+      }
+
+
+      private void tick()
+      {
+         final long tickStartNanoTime = System.nanoTime();
+         final boolean isServerBusy = serverController.isRequestExecutorBusy();
+         // The registrations that have already been sliced or deferred during this tick.
+         final List<Registration> passedRegistrations = new ArrayList<>(registrations.size());
+         boolean isDeferred = false;
+         Registration registration;
+
+         renewBudgetInterval();
+
+         while ((System.nanoTime() - tickStartNanoTime) < MaximumTickWorkNanoseconds)
+         {
+            if (isBudgetExhausted())
+            {
+               incrementBudgetExhaustedTicks();
+               break;
+            }
+
+            registration = getEarliestDueRegistration(System.currentTimeMillis(), passedRegistrations);
+            if (registration == null)
+               break;
+
+            if (isServerBusy && registration.isDeferredWhenBusy && ((System.currentTimeMillis() - registration.nextRunTime) < MaximumBusyDeferralMilliseconds))
+               isDeferred = true;
+            else
+               runSlice(registration);
+
+            passedRegistrations.add(registration);
+         }
+
+         if (isDeferred)
+            incrementBusyDeferredTicks();
+      }
+
+
+      synchronized private void renewBudgetInterval()
+      {
+         final long currentTime = System.currentTimeMillis();
+         final long elapsedIntervals = (currentTime - budgetIntervalStartTime) / BudgetIntervalMilliseconds;
+
+         if (elapsedIntervals > 0)
+         {
+            // Any overrun is carried forward as a debt against the following intervals.
+            cpuSpentThisIntervalNanoseconds = Math.max(cpuSpentThisIntervalNanoseconds - (elapsedIntervals * CPUBudgetPerIntervalNanoseconds), 0);
+            budgetIntervalStartTime += (elapsedIntervals * BudgetIntervalMilliseconds);
+         }
+      }
+
+
+      synchronized private boolean isBudgetExhausted()
+      {
+         return (cpuSpentThisIntervalNanoseconds >= CPUBudgetPerIntervalNanoseconds);
+      }
+
+
+      synchronized private long getRemainingBudgetNanoseconds()
+      {
+         return Math.max(CPUBudgetPerIntervalNanoseconds - cpuSpentThisIntervalNanoseconds, 0);
+      }
+
+
+      synchronized private void chargeBudget(final long cpuNanoseconds)
+      {
+         cpuSpentThisIntervalNanoseconds += cpuNanoseconds;
+      }
+
+
+      synchronized private void incrementBudgetExhaustedTicks()
+      {
+         budgetExhaustedTicks ++;
+      }
+
+
+      synchronized private void incrementBusyDeferredTicks()
+      {
+         busyDeferredTicks ++;
+      }
+
+
+      private Registration getEarliestDueRegistration(final long currentTime, final List<Registration> passedRegistrations)
+      {
+         Registration earliestDueRegistration = null;
+
+         for (final Registration registration : registrations)
+         {
+            if ((registration.nextRunTime <= currentTime) && (! passedRegistrations.contains(registration)) &&
+                ((earliestDueRegistration == null) || (registration.nextRunTime < earliestDueRegistration.nextRunTime)))
+               earliestDueRegistration = registration;
+         }
+
+         return earliestDueRegistration;
+      }
+
+
+      private void runSlice(final Registration registration)
+      {
+         final boolean isNewRun = (! registration.isRunInProgress);
+         final long sliceStartTime = System.currentTimeMillis();
+         final long sliceDeadlineNanoTime = System.nanoTime() + Math.min(SliceNanoseconds, getRemainingBudgetNanoseconds());
+         final long sliceStartCPUTime = getCurrentThreadCPUTime();
+         boolean isRunFinished = true;
+
+         synchronized (registration.runLock)
+         {
+            if (registration.isCancelled)
+               return;
+
+            try
+            {
+               isRunFinished = registration.task.runSlice(isNewRun, sliceDeadlineNanoTime);
+            }
+            catch (final Exception anyException)
+            {
+               // Abandon the run; the task will start afresh at its next scheduled time.
+               FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Housekeeping task failed: " + registration.taskName, anyException);
+            }
+         }
+
+         final long sliceCPUNanoseconds = getCurrentThreadCPUTime() - sliceStartCPUTime;
+
+         chargeBudget(sliceCPUNanoseconds);
+         registration.reportSlice(isNewRun, sliceStartTime, isRunFinished, sliceCPUNanoseconds);
+
+         if (isRunFinished)
+         {
+            registration.isRunInProgress = false;
+
+            // Fixed rate, but without catching up on any runs that have been missed.
+            registration.nextRunTime += registration.periodMilliseconds;
+            if (registration.nextRunTime <= System.currentTimeMillis())
+               registration.nextRunTime = System.currentTimeMillis() + registration.periodMilliseconds;
+         }
+         else
+            registration.isRunInProgress = true;
+      }
+
+
+      private long getCurrentThreadCPUTime()
+      {
+         // Fall back to the elapsed time if the JVM can't measure the thread's CPU time.
+         if (threadMXBean.isCurrentThreadCpuTimeSupported())
+            return threadMXBean.getCurrentThreadCpuTime();
+         else
+            return System.nanoTime();
+      }
+
+
+      synchronized private SchedulerMetrics getMetrics(final boolean isActive)
+      {
+         final List<TaskMetrics> taskMetrics = new ArrayList<>(registrations.size());
+         for (final Registration registration : registrations)
+            taskMetrics.add(registration.getMetrics());
+
+         return new SchedulerMetrics(isActive, TimeUnit.NANOSECONDS.toMillis(cpuSpentThisIntervalNanoseconds), budgetExhaustedTicks, busyDeferredTicks, taskMetrics);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private Registration handleRegister(final String taskName, final Task task, final long initialDelayMilliseconds, final long periodMilliseconds,
+                                       final boolean isDeferredWhenBusy)
+   {
+      if (periodMilliseconds <= 0)
+         throw new IllegalArgumentException("Housekeeping task period must be greater than zero.");
+
+      final Registration registration = new Registration(taskName, task, initialDelayMilliseconds, periodMilliseconds, isDeferredWhenBusy);
+
+      synchronized (lifecycleLock)
+      {
+         registrations.add(registration);
+
+         if (executor == null)
+         {
+            executor = new ScheduledThreadPoolExecutor(1, schedulerTask);
+            executor.scheduleWithFixedDelay(schedulerTask, TickMilliseconds, TickMilliseconds, TimeUnit.MILLISECONDS);
+         }
+      }
+
+      return registration;
+   }
+
+
+   private void handleUnregister(final Registration registration) throws InterruptedException
+   {
+      // Wait for any slice that's underway.
+      synchronized (registration.runLock)
+      {
+         registration.isCancelled = true;
+      }
+
+      synchronized (lifecycleLock)
+      {
+         registrations.remove(registration);
+
+         if (registrations.isEmpty() && (executor != null))
+         {
+            executor.shutdown();
+
+            // Awaiting the termination from the scheduler thread would deadlock, since the thread can't terminate until this tick has returned.
+            if (Thread.currentThread() != schedulerThread)
+               executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            executor = null;
+         }
+      }
+   }
+
+
+   private SchedulerMetrics handleGetMetrics()
+   {
+      final boolean isActive;
+
+      synchronized (lifecycleLock)
+      {
+         isActive = (executor != null);
+      }
+
+      return schedulerTask.getMetrics(isActive);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final public Registration register(final String taskName, final Task task, final long initialDelayMilliseconds, final long periodMilliseconds)
+   {
+      return handleRegister(taskName, task, initialDelayMilliseconds, periodMilliseconds, true);
+   }
+
+
+   final public Registration register(final String taskName, final Task task, final long initialDelayMilliseconds, final long periodMilliseconds,
+                                      final boolean isDeferredWhenBusy)
+   {
+      return handleRegister(taskName, task, initialDelayMilliseconds, periodMilliseconds, isDeferredWhenBusy);
+   }
+
+
+   final public void unregister(final Registration registration) throws InterruptedException
+   {
+      handleUnregister(registration);
+   }
+
+
+   final public SchedulerMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+}
\ No newline at end of file
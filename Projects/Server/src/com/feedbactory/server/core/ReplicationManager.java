@@ -0,0 +1,750 @@
+/* Memos:
+ * - Warm standby replication. A primary server streams its write-ahead journal to a standby server, started under the standby execution profile, which
+ *   applies the changes as they arrive and can be promoted from the console to take over from the primary. Failover then only needs the standby to be
+ *   promoted and its server started, rather than a fresh process restoring the last checkpoint and losing everything since.
+ *
+ * - When a standby connects, the primary first registers a batch listener on its journal and then saves a full checkpoint to a replication directory,
+ *   which is sent over the connection. Every change made during the checkpoint save is either captured by the checkpoint or streamed afterwards; the
+ *   journal records are all full snapshots or idempotent adds & removes, so any overlap converges on the same state as for a regular journal replay. From
+ *   then on each journal batch is forwarded to the standby once it's durable on the primary, so the standby is never ahead of the primary. The replication
+ *   is asynchronous; requests on the primary never wait for the standby, so the standby may trail the primary by the batches still in flight.
+ *
+ * - The standby writes the checkpoint files into its own primary checkpoint directory and loads them, then bases its own journal on that checkpoint.
+ *   Each batch received is applied to the user account and feedback parent records, and appended to the standby's journal. A standby that crashes can
+ *   therefore recover all of the changes that it had received by loading its primary checkpoint as usual.
+ *
+ * - As for a regular journal replay, the streamed feedback records are only applied to the parent records. Promotion rebuilds the feedback category data
+ *   from the parent records and attaches the standby to the primary data, after which the server can be started, and auto save & housekeeping enabled.
+ *   The network service data such as the user sessions is only as recent as the bootstrap checkpoint, so some users may need to sign in again.
+ *
+ * - The primary queues the batches for the standby in memory. If the standby falls more than MaximumPendingBatchBytes behind, or the primary's journal
+ *   fails, the primary drops the connection and the standby must be bootstrapped again from scratch. Likewise if the primary stops sending for longer
+ *   than StandbyReadTimeoutMilliseconds the standby treats the primary as lost, stops, and keeps its data ready for promotion. The primary sends a
+ *   heartbeat whenever there's been no batch for HeartbeatIntervalMilliseconds.
+ *
+ * - There's no authentication or encryption on the replication connection, which carries the entire database including password hashes. So the primary
+ *   listens on the loopback address only and the standby connects to the loopback address only. A standby on another host must be connected
+ *   via an SSH tunnel or similar.
+ *
+ * - The standby must be run from its own working directory, since it writes to the same relative data paths as the primary.
+ *
+ * - The primary serves one standby at a time. A second standby connecting while the first is active waits in the connection backlog.
+ *
+ * - Calls to start, stop and promote aren't threadsafe and must be coordinated by the caller, as for the other operations manager services. The console
+ *   must not load a checkpoint while replication is active, since the replication thread may itself be saving or loading a checkpoint.
+ */
+
+package com.feedbactory.server.core;
+
+
+import com.feedbactory.server.FeedbactoryServer;
+import com.feedbactory.server.core.log.FeedbactoryLogger;
+import com.feedbactory.server.core.log.SystemLogLevel;
+import com.feedbactory.server.feedback.FeedbackManager;
+import com.feedbactory.server.useraccount.UserAccountManager;
+import com.feedbactory.shared.FeedbactoryConstants;
+import com.feedbactory.shared.network.FeedbactoryNetworkConstants;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+final class ReplicationManager
+{
+   static final int DefaultReplicationPortNumber = FeedbactoryNetworkConstants.DefaultPortNumber + 1;
+
+   static final private int ProtocolMagicNumber = 0x46425250;
+   static final private byte ProtocolVersion = 1;
+
+   static final private byte BatchMessageType = 0;
+   static final private byte HeartbeatMessageType = 1;
+
+   static final private long HeartbeatIntervalMilliseconds = 2000;
+   static final private int StandbyReadTimeoutMilliseconds = 10000;
+   static final private int StandbyConnectTimeoutMilliseconds = 10000;
+
+   static final private long MaximumPendingBatchBytes = 256L * 1048576L;
+   static final private int MaximumBatchLengthBytes = 256 * 1048576;
+
+   static final private int TransferBufferLengthBytes = 65536;
+
+   final private CheckpointManager checkpointManager;
+   final private WriteAheadJournal journal;
+   final private UserAccountManager userAccountManager;
+   final private FeedbackManager feedbackManager;
+
+   private Thread replicationThread;
+
+   // Guarded by this object's monitor, which is only ever held briefly.
+   private ReplicationState state = ReplicationState.Inactive;
+   private boolean isStopping;
+   private ServerSocket listenerSocket;
+   private Socket activeSocket;
+   private SocketAddress peerAddress;
+   private long connectedTime = FeedbactoryConstants.NoTime;
+   private long lastMessageTime = FeedbactoryConstants.NoTime;
+   private long batchesThisConnection;
+   private long recordsThisConnection;
+   private long bytesThisConnection;
+   private StandbyFeed activeStandbyFeed;
+
+
+   ReplicationManager(final CheckpointManager checkpointManager, final WriteAheadJournal journal, final UserAccountManager userAccountManager,
+                      final FeedbackManager feedbackManager)
+   {
+      this.checkpointManager = checkpointManager;
+      this.journal = journal;
+      this.userAccountManager = userAccountManager;
+      this.feedbackManager = feedbackManager;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static enum ReplicationState
+   {
+      Inactive,
+      Listening,
+      Connecting,
+      Bootstrapping,
+      Streaming,
+      Disconnected,
+      Promoted;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class ReplicationMetrics
+   {
+      final ReplicationState state;
+      final SocketAddress peerAddress;
+      final long connectedTime;
+      final long lastMessageTime;
+      final long batchesThisConnection;
+      final long recordsThisConnection;
+      final long bytesThisConnection;
+      final long pendingBatchBytes;
+
+
+      private ReplicationMetrics(final ReplicationState state, final SocketAddress peerAddress, final long connectedTime, final long lastMessageTime,
+                                 final long batchesThisConnection, final long recordsThisConnection, final long bytesThisConnection, final long pendingBatchBytes)
+      {
+         this.state = state;
+         this.peerAddress = peerAddress;
+         this.connectedTime = connectedTime;
+         this.lastMessageTime = lastMessageTime;
+         this.batchesThisConnection = batchesThisConnection;
+         this.recordsThisConnection = recordsThisConnection;
+         this.bytesThisConnection = bytesThisConnection;
+         this.pendingBatchBytes = pendingBatchBytes;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // The primary's queue of durable journal batches waiting to be sent to the standby.
+   static final private class StandbyFeed implements WriteAheadJournal.BatchListener
+   {
+      final private LinkedBlockingQueue<byte[]> pendingBatches = new LinkedBlockingQueue<>();
+      final private AtomicLong pendingBatchBytes = new AtomicLong();
+      private volatile boolean isOverflowed;
+
+
+      @Override
+      final public void batchDurable(final byte[] batch)
+      {
+         if (isOverflowed)
+            return;
+         else if (pendingBatchBytes.addAndGet(batch.length) > MaximumPendingBatchBytes)
+         {
+            // The batches are no longer being queued, so the standby can't continue from this point.
+            isOverflowed = true;
+            pendingBatches.clear();
+         }
+         else
+            pendingBatches.add(batch);
+      }
+
+
+      private byte[] pollBatch() throws InterruptedException
+      {
+         final byte[] batch = pendingBatches.poll(HeartbeatIntervalMilliseconds, TimeUnit.MILLISECONDS);
+         if (batch != null)
+            pendingBatchBytes.addAndGet(-batch.length);
+
+         return batch;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class PrimaryReplicationTask implements Runnable
+   {
+      @Override
+      final public void run()
+      {
+         for (;;)
+         {
+            final ServerSocket serverSocket;
+
+            synchronized (ReplicationManager.this)
+            {
+               if (isStopping)
+                  return;
+
+               serverSocket = listenerSocket;
+            }
+
+            try
+            (
+               final Socket standbySocket = serverSocket.accept();
+            )
+            {
+               if (! startConnection(standbySocket, ReplicationState.Bootstrapping))
+                  return;
+
+               streamToStandby(standbySocket);
+            }
+            catch (final InterruptedException interruptedException)
+            {
+               return;
+            }
+            catch (final Exception anyException)
+            {
+               if (! isStopping())
+                  FeedbactoryLogger.logSystemEvent(SystemLogLevel.Warning, getClass(), "Replication to the standby has stopped.", anyException);
+            }
+            finally
+            {
+               journal.setBatchListener(null);
+               endConnection(ReplicationState.Listening);
+            }
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class StandbyReplicationTask implements Runnable
+   {
+      final private int primaryPortNumber;
+
+
+      private StandbyReplicationTask(final int primaryPortNumber)
+      {
+         this.primaryPortNumber = primaryPortNumber;
+      }
+
+
+      @Override
+      final public void run()
+      {
+         try
+         (
+            final Socket primarySocket = new Socket();
+         )
+         {
+            if (! startConnection(primarySocket, ReplicationState.Connecting))
+               return;
+
+            primarySocket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), primaryPortNumber), StandbyConnectTimeoutMilliseconds);
+            receiveFromPrimary(primarySocket);
+         }
+         catch (final Exception anyException)
+         {
+            if (! isStopping())
+               FeedbactoryLogger.logSystemEvent(SystemLogLevel.Warning, getClass(), "Replication from the primary has stopped.", anyException);
+         }
+         finally
+         {
+            endConnection(ReplicationState.Disconnected);
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // Returns false if the replication is being stopped, in which case the connection should be abandoned.
+   synchronized private boolean startConnection(final Socket socket, final ReplicationState connectionState)
+   {
+      if (isStopping)
+         return false;
+
+      activeSocket = socket;
+      peerAddress = socket.getRemoteSocketAddress();
+      state = connectionState;
+      connectedTime = System.currentTimeMillis();
+      lastMessageTime = FeedbactoryConstants.NoTime;
+      batchesThisConnection = 0;
+      recordsThisConnection = 0;
+      bytesThisConnection = 0;
+
+      return true;
+   }
+
+
+   synchronized private void setConnectionState(final ReplicationState connectionState, final SocketAddress connectionPeerAddress)
+   {
+      state = connectionState;
+      peerAddress = connectionPeerAddress;
+   }
+
+
+   synchronized private void recordMessage(final int batchRecords, final int batchLengthBytes)
+   {
+      lastMessageTime = System.currentTimeMillis();
+
+      if (batchLengthBytes > 0)
+      {
+         batchesThisConnection ++;
+         recordsThisConnection += batchRecords;
+         bytesThisConnection += batchLengthBytes;
+      }
+   }
+
+
+   synchronized private void endConnection(final ReplicationState endState)
+   {
+      activeSocket = null;
+      activeStandbyFeed = null;
+
+      // A standby which had been bootstrapped retains its data, ready for promotion.
+      if ((endState == ReplicationState.Disconnected) && (state != ReplicationState.Streaming))
+         state = ReplicationState.Inactive;
+      else
+         state = endState;
+   }
+
+
+   synchronized private boolean isStopping()
+   {
+      return isStopping;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void streamToStandby(final Socket standbySocket) throws IOException, InterruptedException
+   {
+      final DataInputStream standbyInputStream = new DataInputStream(new BufferedInputStream(standbySocket.getInputStream()));
+      final DataOutputStream standbyOutputStream = new DataOutputStream(new BufferedOutputStream(standbySocket.getOutputStream(), TransferBufferLengthBytes));
+
+      if ((standbyInputStream.readInt() != ProtocolMagicNumber) || (standbyInputStream.readByte() != ProtocolVersion))
+         throw new IOException("Invalid replication handshake from: " + standbySocket.getRemoteSocketAddress());
+
+      final StandbyFeed standbyFeed = new StandbyFeed();
+
+      synchronized (this)
+      {
+         activeStandbyFeed = standbyFeed;
+      }
+
+      // The feed must be in place before the checkpoint is started, so that every change that the checkpoint may miss is streamed afterwards.
+      journal.setBatchListener(standbyFeed);
+
+      sendCheckpointFiles(checkpointManager.saveReplicationCheckpoint(), standbyOutputStream);
+
+      setConnectionState(ReplicationState.Streaming, standbySocket.getRemoteSocketAddress());
+
+      byte[] batch;
+
+      for (;;)
+      {
+         if (standbyFeed.isOverflowed)
+            throw new IOException("The standby has fallen too far behind the primary.");
+         else if (! journal.isActive())
+            throw new IOException("The primary journal is no longer active.");
+
+         batch = standbyFeed.pollBatch();
+
+         if (batch != null)
+         {
+            standbyOutputStream.writeByte(BatchMessageType);
+            standbyOutputStream.writeInt(batch.length);
+            standbyOutputStream.write(batch);
+
+            // The number of records isn't tracked on this side, there's no need to decode the batch.
+            recordMessage(0, batch.length);
+         }
+         else
+         {
+            standbyOutputStream.writeByte(HeartbeatMessageType);
+            recordMessage(0, 0);
+         }
+
+         // Hold off on flushing while there are more batches waiting, so that a backlog is sent in as few writes as possible.
+         if (standbyFeed.pendingBatches.isEmpty())
+            standbyOutputStream.flush();
+      }
+   }
+
+
+   private void sendCheckpointFiles(final List<Path> checkpointFiles, final DataOutputStream standbyOutputStream) throws IOException
+   {
+      standbyOutputStream.writeInt(checkpointFiles.size());
+
+      for (final Path checkpointFile : checkpointFiles)
+      {
+         standbyOutputStream.writeUTF(checkpointFile.getFileName().toString());
+         standbyOutputStream.writeLong(Files.size(checkpointFile));
+         Files.copy(checkpointFile, standbyOutputStream);
+      }
+
+      standbyOutputStream.flush();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void receiveFromPrimary(final Socket primarySocket) throws IOException
+   {
+      final DataInputStream primaryInputStream = new DataInputStream(new BufferedInputStream(primarySocket.getInputStream(), TransferBufferLengthBytes));
+      final DataOutputStream primaryOutputStream = new DataOutputStream(new BufferedOutputStream(primarySocket.getOutputStream()));
+
+      primaryOutputStream.writeInt(ProtocolMagicNumber);
+      primaryOutputStream.writeByte(ProtocolVersion);
+      primaryOutputStream.flush();
+
+      setConnectionState(ReplicationState.Bootstrapping, primarySocket.getRemoteSocketAddress());
+
+      // No read timeout is applied until the bootstrap has been received, since the primary sends nothing while it's saving the checkpoint.
+      receiveCheckpointFiles(primaryInputStream, checkpointManager.prepareStandbyCheckpoint());
+      checkpointManager.loadStandbyCheckpoint();
+
+      setConnectionState(ReplicationState.Streaming, primarySocket.getRemoteSocketAddress());
+
+      primarySocket.setSoTimeout(StandbyReadTimeoutMilliseconds);
+
+      byte messageType;
+      int batchLength;
+      byte[] batch;
+
+      for (;;)
+      {
+         messageType = primaryInputStream.readByte();
+
+         if (messageType == BatchMessageType)
+         {
+            batchLength = primaryInputStream.readInt();
+            if ((batchLength <= 0) || (batchLength > MaximumBatchLengthBytes))
+               throw new IOException("Invalid replication batch length: " + batchLength);
+
+            batch = new byte[batchLength];
+            primaryInputStream.readFully(batch);
+
+            recordMessage(applyBatch(batch), batchLength);
+         }
+         else if (messageType == HeartbeatMessageType)
+            recordMessage(0, 0);
+         else
+            throw new IOException("Invalid replication message type: " + messageType);
+      }
+   }
+
+
+   private void receiveCheckpointFiles(final DataInputStream primaryInputStream, final Path checkpointPath) throws IOException
+   {
+      final int numberOfFiles = primaryInputStream.readInt();
+      final byte[] transferBuffer = new byte[TransferBufferLengthBytes];
+
+      String filename;
+      long fileLength;
+      int bytesToRead;
+
+      for (int fileNumber = 0; fileNumber < numberOfFiles; fileNumber ++)
+      {
+         filename = primaryInputStream.readUTF();
+
+         // The files must only ever be written into the checkpoint directory.
+         final Path checkpointFile = checkpointPath.resolve(filename).normalize();
+         if ((! checkpointFile.getParent().equals(checkpointPath.normalize())) || (checkpointFile.getFileName().toString().startsWith(".")))
+            throw new IOException("Invalid replication checkpoint filename: " + filename);
+
+         fileLength = primaryInputStream.readLong();
+
+         try
+         (
+            final OutputStream fileOutputStream = Files.newOutputStream(checkpointFile);
+         )
+         {
+            while (fileLength > 0)
+            {
+               bytesToRead = (int) Math.min(fileLength, transferBuffer.length);
+               primaryInputStream.readFully(transferBuffer, 0, bytesToRead);
+               fileOutputStream.write(transferBuffer, 0, bytesToRead);
+               fileLength -= bytesToRead;
+            }
+         }
+      }
+   }
+
+
+   // Returns the number of records applied.
+   private int applyBatch(final byte[] batch) throws IOException
+   {
+      final List<WriteAheadJournal.JournalRecord> records = WriteAheadJournal.readBatch(batch);
+      long sequenceNumber = WriteAheadJournal.NoSequenceNumber;
+      WriteAheadJournal.RecordSource recordSource;
+
+      for (final WriteAheadJournal.JournalRecord record : records)
+      {
+         recordSource = WriteAheadJournal.RecordSource.fromValue(record.recordSourceValue);
+
+         if (recordSource == WriteAheadJournal.RecordSource.UserAccount)
+            userAccountManager.replayJournalRecord(record.getPayloadStream());
+         else if (recordSource == WriteAheadJournal.RecordSource.Feedback)
+            feedbackManager.replayJournalRecord(record.getPayloadStream());
+         else
+            throw new IOException("Invalid journal record source value: " + record.recordSourceValue);
+
+         sequenceNumber = journal.append(recordSource, record.payload);
+      }
+
+      // Acknowledging the primary isn't necessary, but the standby shouldn't run ahead of its own journal.
+      try
+      {
+         journal.awaitDurable(sequenceNumber);
+      }
+      catch (final WriteAheadJournal.JournalFailedException journalFailedException)
+      {
+         throw new IOException("The standby's journal failed while applying a replication batch.", journalFailedException);
+      }
+
+      return records.size();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void handleStartPrimary(final int portNumber) throws IOException
+   {
+      if (replicationThread != null)
+         throw new IllegalStateException("Replication is already active.");
+      else if (! checkpointManager.isAttachedToPrimaryCheckpoint())
+         throw new IllegalStateException("Replication to a standby can only be started when attached to the primary data.");
+
+      final ServerSocket serverSocket = new ServerSocket();
+
+      try
+      {
+         serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), portNumber));
+      }
+      catch (final IOException ioException)
+      {
+         serverSocket.close();
+         throw ioException;
+      }
+
+      synchronized (this)
+      {
+         isStopping = false;
+         listenerSocket = serverSocket;
+         peerAddress = null;
+         state = ReplicationState.Listening;
+      }
+
+      replicationThread = new Thread(new PrimaryReplicationTask(), "Replication primary");
+      replicationThread.setDaemon(true);
+      replicationThread.start();
+   }
+
+
+   private void handleStartStandby(final int primaryPortNumber)
+   {
+      if (replicationThread != null)
+         throw new IllegalStateException("Replication is already active.");
+      else if (FeedbactoryServer.getExecutionProfile() != FeedbactoryServer.ExecutionProfile.Standby)
+         throw new IllegalStateException("Replication from a primary can only be started under the standby execution profile.");
+      else if (isPromoted())
+         throw new IllegalStateException("The standby has already been promoted.");
+
+      synchronized (this)
+      {
+         isStopping = false;
+         peerAddress = null;
+         state = ReplicationState.Connecting;
+      }
+
+      replicationThread = new Thread(new StandbyReplicationTask(primaryPortNumber), "Replication standby");
+      replicationThread.setDaemon(true);
+      replicationThread.start();
+   }
+
+
+   private void handleStop() throws InterruptedException, IOException
+   {
+      if (replicationThread == null)
+         return;
+
+      final ServerSocket serverSocket;
+      final Socket socket;
+
+      synchronized (this)
+      {
+         isStopping = true;
+         serverSocket = listenerSocket;
+         socket = activeSocket;
+         listenerSocket = null;
+      }
+
+      // Closing the sockets will unblock the replication thread from any network I/O, and interrupting it will unblock it from waiting on the feed.
+      if (serverSocket != null)
+         serverSocket.close();
+
+      if (socket != null)
+         socket.close();
+
+      replicationThread.interrupt();
+      replicationThread.join();
+      replicationThread = null;
+
+      synchronized (this)
+      {
+         // A bootstrapped standby retains its data, ready for promotion.
+         if (state != ReplicationState.Disconnected)
+            state = ReplicationState.Inactive;
+      }
+   }
+
+
+   private void handlePromote() throws InterruptedException, IOException
+   {
+      if (FeedbactoryServer.getExecutionProfile() != FeedbactoryServer.ExecutionProfile.Standby)
+         throw new IllegalStateException("Only a standby can be promoted.");
+
+      // Bring the standby to a halt; no further changes from the primary can be applied once promoted.
+      handleStop();
+
+      synchronized (this)
+      {
+         if (state != ReplicationState.Disconnected)
+            throw new IllegalStateException("The standby has not been bootstrapped from a primary.");
+      }
+
+      checkpointManager.promoteStandby();
+
+      synchronized (this)
+      {
+         state = ReplicationState.Promoted;
+      }
+   }
+
+
+   synchronized private boolean isPromoted()
+   {
+      return (state == ReplicationState.Promoted);
+   }
+
+
+   synchronized private ReplicationMetrics handleGetMetrics()
+   {
+      final long pendingBatchBytes = (activeStandbyFeed != null) ? activeStandbyFeed.pendingBatchBytes.get() : 0;
+
+      return new ReplicationMetrics(state, peerAddress, connectedTime, lastMessageTime, batchesThisConnection, recordsThisConnection, bytesThisConnection,
+                                    pendingBatchBytes);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final boolean isActive()
+   {
+      return (replicationThread != null);
+   }
+
+
+   // Under the standby profile, the server must not go live until the standby has been promoted.
+   final boolean isAwaitingPromotion()
+   {
+      return (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby) && (! isPromoted());
+   }
+
+
+   final void startPrimary(final int portNumber) throws IOException
+   {
+      handleStartPrimary(portNumber);
+   }
+
+
+   final void startStandby(final int primaryPortNumber)
+   {
+      handleStartStandby(primaryPortNumber);
+   }
+
+
+   final void stop() throws InterruptedException, IOException
+   {
+      handleStop();
+   }
+
+
+   final void promote() throws InterruptedException, IOException
+   {
+      handlePromote();
+   }
+
+
+   final ReplicationMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+}
@@ -0,0 +1,393 @@
+/* Memos:
+ * - Splits a checkpoint data file into a number of shard files so that the shards can be serialised concurrently by a pool of worker threads, rather than
+ *   the entire data set being funnelled through a single DataOutputStream on one thread. The owning subsystem decides which records belong to which shard,
+ *   by user account ID for the current callers, and owns the format of the records within each shard; this class only handles the shard files, the
+ *   worker threads and the manifest.
+ *
+ * - Each shard file is terminated independently by its owner, so a shard can be read back on its own. The shard files are named as for the journal
+ *   segments, with the shard number appended to the base filename.
+ *
+ * - Once every shard has been written the manifest is written, recording the shard count along with the size and CRC32 of each shard file. The manifest
+ *   is deleted at the start of a save, so that a partially written set of shards is never mistaken for a complete one. On reading, each shard's size is
+ *   checked before it's handed to the owner, and its checksum once the owner has finished with it; any mismatch fails the restore. The size and checksum are of each shard file as stored, ie. in the block format of CheckpointFileFormat, which also
+ *   checksums each of its blocks.
+ *
+ * - If there's no manifest but there is an unsharded file having the base filename, it's read as a single shard. This allows checkpoints saved before the
+ *   introduction of the sharding to be restored.
+ *
+ * - The shards are also read back concurrently, one worker per shard, so the ShardReader must be threadsafe across shards. Since every shard is independent,
+ *   the owner is free to decode each one into its own staging collections before merging into its shared collections.
+ *
+ * - The worker pool is created for each save or restore and torn down at the end. Checkpoints are written infrequently enough that there's no point keeping
+ *   the threads around in between.
+ */
+
+package com.feedbactory.server.core;
+
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+
+final public class ShardedCheckpointFile
+{
+   static final public int DefaultShardCount = Runtime.getRuntime().availableProcessors();
+
+   static final private String ManifestFilenameSuffix = "Manifest";
+
+   static final private int ChecksumBufferLengthBytes = 8192;
+
+   final private Path checkpointPath;
+   final private String baseFilename;
+
+
+   public ShardedCheckpointFile(final Path checkpointPath, final String baseFilename)
+   {
+      this.checkpointPath = checkpointPath;
+      this.baseFilename = baseFilename;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static public interface ShardWriter
+   {
+      public void writeShard(final int shardNumber, final DataOutputStream shardStream) throws IOException;
+   }
+
+
+   static public interface ShardReader
+   {
+      public void readShard(final int shardNumber, final DataInput shardStream) throws IOException;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class ShardDetails
+   {
+      final private long sizeBytes;
+      final private long checksum;
+
+
+      private ShardDetails(final long sizeBytes, final long checksum)
+      {
+         this.sizeBytes = sizeBytes;
+         this.checksum = checksum;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class ShardWorkerThreadFactory implements ThreadFactory
+   {
+      final private AtomicInteger threadNumber = new AtomicInteger();
+      final private String taskDescription;
+
+
+      private ShardWorkerThreadFactory(final String taskDescription)
+      {
+         this.taskDescription = taskDescription;
+      }
+
+
+      @Override
+      final public Thread newThread(final Runnable runnable)
+      {
+         final Thread thread = new Thread(runnable, "Checkpoint shard worker (" + taskDescription + ") " + threadNumber.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public int getShardNumber(final int accountID, final int shardCount)
+   {
+      // The account ID's are handed out sequentially from zero, so a plain modulus spreads them evenly.
+      return (accountID % shardCount);
+   }
+
+
+   /* Runs the tasks on a temporary pool of worker threads, returning their results in order. Also available to the owners of the sharded data for any
+    * other per-shard processing during a save or restore. The first task failure is rethrown once all of the tasks have completed.
+    */
+   static public <V> List<V> invokeShardTasks(final List<Callable<V>> shardTasks, final String taskDescription) throws IOException
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(shardTasks.size(), DefaultShardCount), new ShardWorkerThreadFactory(taskDescription));
+
+      try
+      {
+         final List<Future<V>> shardResults = executor.invokeAll(shardTasks);
+         final List<V> results = new ArrayList<>(shardResults.size());
+
+         for (final Future<V> shardResult : shardResults)
+            results.add(shardResult.get());
+
+         return results;
+      }
+      catch (final InterruptedException interruptedException)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while processing checkpoint shards: " + taskDescription, interruptedException);
+      }
+      catch (final ExecutionException executionException)
+      {
+         if (executionException.getCause() instanceof IOException)
+            throw (IOException) executionException.getCause();
+         else if (executionException.getCause() instanceof RuntimeException)
+            throw (RuntimeException) executionException.getCause();
+         else
+            throw new IOException("Failed to process checkpoint shards: " + taskDescription, executionException.getCause());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private File getShardFile(final int shardNumber)
+   {
+      return checkpointPath.resolve(baseFilename + shardNumber + FeedbactoryServerConstants.DataFileExtension).toFile();
+   }
+
+
+   private File getManifestFile()
+   {
+      return checkpointPath.resolve(baseFilename + ManifestFilenameSuffix + FeedbactoryServerConstants.DataFileExtension).toFile();
+   }
+
+
+   private File getUnshardedFile()
+   {
+      return checkpointPath.resolve(baseFilename + FeedbactoryServerConstants.DataFileExtension).toFile();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void handleWrite(final int shardCount, final ShardWriter shardWriter) throws IOException
+   {
+      Files.deleteIfExists(getManifestFile().toPath());
+
+      final List<Callable<ShardDetails>> shardTasks = new ArrayList<>(shardCount);
+
+      for (int shardNumber = 0; shardNumber < shardCount; shardNumber ++)
+      {
+         final int taskShardNumber = shardNumber;
+
+         shardTasks.add(new Callable<ShardDetails>()
+         {
+            @Override
+            final public ShardDetails call() throws IOException
+            {
+               return writeShard(taskShardNumber, shardWriter);
+            }
+         });
+      }
+
+      final List<ShardDetails> shardDetails = invokeShardTasks(shardTasks, baseFilename);
+
+      writeManifest(shardDetails);
+   }
+
+
+   private ShardDetails writeShard(final int shardNumber, final ShardWriter shardWriter) throws IOException
+   {
+      final File shardFile = getShardFile(shardNumber);
+      final CRC32 shardChecksum = new CRC32();
+
+      try
+      (
+         final DataOutputStream shardStream = CheckpointFileFormat.wrap(new CheckedOutputStream(new FileOutputStream(shardFile), shardChecksum));
+      )
+      {
+         shardWriter.writeShard(shardNumber, shardStream);
+      }
+
+      return new ShardDetails(shardFile.length(), shardChecksum.getValue());
+   }
+
+
+   private void writeManifest(final List<ShardDetails> shardDetails) throws IOException
+   {
+      try
+      (
+         final DataOutputStream manifestStream = CheckpointFileFormat.openOutput(getManifestFile());
+      )
+      {
+         manifestStream.writeInt(shardDetails.size());
+
+         for (final ShardDetails shard : shardDetails)
+         {
+            manifestStream.writeLong(shard.sizeBytes);
+            manifestStream.writeLong(shard.checksum);
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private List<ShardDetails> readManifest() throws IOException
+   {
+      final File manifestFile = getManifestFile();
+      if (! manifestFile.exists())
+         return null;
+
+      try
+      (
+         final DataInputStream manifestStream = CheckpointFileFormat.openInput(manifestFile);
+      )
+      {
+         final int shardCount = manifestStream.readInt();
+         if (shardCount <= 0)
+            throw new IOException("Invalid checkpoint shard count for " + baseFilename + ": " + shardCount);
+
+         final List<ShardDetails> shardDetails = new ArrayList<>(shardCount);
+
+         for (int shardNumber = 0; shardNumber < shardCount; shardNumber ++)
+            shardDetails.add(new ShardDetails(manifestStream.readLong(), manifestStream.readLong()));
+
+         return shardDetails;
+      }
+   }
+
+
+   private void handleRead(final ShardReader shardReader) throws IOException
+   {
+      final List<ShardDetails> shardDetails = readManifest();
+
+      if (shardDetails == null)
+      {
+         final File unshardedFile = getUnshardedFile();
+         if (! unshardedFile.exists())
+            throw new IOException("Missing checkpoint manifest: " + getManifestFile());
+
+         try
+         (
+            final DataInputStream shardStream = CheckpointFileFormat.openInput(unshardedFile);
+         )
+         {
+            shardReader.readShard(0, shardStream);
+         }
+
+         return;
+      }
+
+      final List<Callable<Void>> shardTasks = new ArrayList<>(shardDetails.size());
+
+      for (int shardNumber = 0; shardNumber < shardDetails.size(); shardNumber ++)
+      {
+         final int taskShardNumber = shardNumber;
+
+         shardTasks.add(new Callable<Void>()
+         {
+            @Override
+            final public Void call() throws IOException
+            {
+               readShard(taskShardNumber, shardDetails.get(taskShardNumber), shardReader);
+               return null;
+            }
+         });
+      }
+
+      invokeShardTasks(shardTasks, baseFilename);
+   }
+
+
+   private void readShard(final int shardNumber, final ShardDetails shardDetails, final ShardReader shardReader) throws IOException
+   {
+      final File shardFile = getShardFile(shardNumber);
+      if (shardFile.length() != shardDetails.sizeBytes)
+         throw new IOException("Checkpoint shard size mismatch: " + shardFile);
+
+      final CRC32 shardChecksum = new CRC32();
+
+      try
+      (
+         final DataInputStream shardStream = CheckpointFileFormat.wrap(new CheckedInputStream(new FileInputStream(shardFile), shardChecksum));
+      )
+      {
+         shardReader.readShard(shardNumber, shardStream);
+
+         /* Run the checksum over any bytes following the shard's own terminator, which should be none. The buffered stream will otherwise
+          * have only pulled an arbitrary portion of the trailing bytes through the checksum.
+          */
+         final byte[] drainBuffer = new byte[ChecksumBufferLengthBytes];
+         while (shardStream.read(drainBuffer) != -1)
+            ;
+      }
+
+      if (shardChecksum.getValue() != shardDetails.checksum)
+         throw new IOException("Checkpoint shard checksum mismatch: " + shardFile);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final public void write(final int shardCount, final ShardWriter shardWriter) throws IOException
+   {
+      handleWrite(shardCount, shardWriter);
+   }
+
+
+   final public void read(final ShardReader shardReader) throws IOException
+   {
+      handleRead(shardReader);
+   }
+}
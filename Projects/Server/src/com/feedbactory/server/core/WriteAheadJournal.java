@@ -0,0 +1,990 @@
+/* Memos:
+ * - An append-only journal of the feedback and user account mutations made since the most recent checkpoint of the primary data. Without it a crash loses
+ *   everything since the last autosave, which under the production profile is up to three hours' worth of feedback submissions, sign ups and password changes.
+ *
+ * - Group commit: callers append their records to an in-memory batch and then block in awaitDurable() until a dedicated writer thread has written and forced
+ *   the batch containing their record to disk. The writer swaps out the entire pending batch on each pass, so however many requests arrive during one fsync
+ *   are all covered by the next one, and the cost of the fsync is spread across them. Callers must not send their response until awaitDurable() has returned.
+ *
+ * - Records are framed as: int payload length, byte record source, payload, int CRC32 of the source & payload. The journal only frames, persists and hands back
+ *   the payloads; each record source owns its payload format and its replay. Replay of a segment stops at the first short or corrupt record, which is the
+ *   expected outcome for a record torn by a crash part way through a write. Since the journal always opens a fresh segment when it's activated, a torn record
+ *   can only ever be at the end of a segment, and replay continues with the next segment.
+ *
+ * - The journal is split into numbered segments. A new segment is rolled at the start of every checkpoint save of the primary data, and once the checkpoint
+ *   has been successfully written its directory is stamped with a marker file holding the number of that segment. All records in the earlier segments are
+ *   covered by the checkpoint so those segments are then deleted, which is the journal truncation. Records appended while the checkpoint save is in progress
+ *   may or may not also be captured by the checkpoint, but each record is either a full snapshot or an idempotent add or remove, so replaying them over the
+ *   checkpoint converges on the same state.
+ *
+ * - The marker file is deleted at the start of a checkpoint save, so that a checkpoint which is only partially written (eg. due to a crash) is never
+ *   considered as a base for replay.
+ *
+ * - Replay is driven by the subsystems' checkpoint restore methods via a JournalTail, so that each subsystem can apply its records at the appropriate point
+ *   of its own restoration. Records are replayed per record source rather than in their global order, so the user account records are all applied before
+ *   the feedback records. This is fine since the only dependency between the two is the existence of the user account.
+ *
+ * - The journal is only active while attached to the primary data, the same condition as for autosave. Appends while inactive are discarded and awaitDurable()
+ *   returns immediately for them. Deactivating the journal stops any further appends, and then waits for the writer thread to write and force the records
+ *   already appended before releasing their callers, so that a shutdown or checkpoint load never acknowledges a record that isn't on disk. Calls to activate() and deactivate() aren't threadsafe and must be coordinated by the caller, as for the other checkpointing operations.
+ *
+ * - A batch listener may be registered to receive each batch of framed records once it's durable, which is how the records are streamed to a warm
+ *   standby server; see ReplicationManager. The standby in turn decodes each batch, applies the records, and appends them to its own journal. This is
+ *   the one case where the journal is active without being attached to the primary data, since the standby's journal must cover its replicated
+ *   changes from the moment that it's bootstrapped until it's promoted.
+ *
+ * - If a journal write fails, the error is logged and the journal is deactivated. Callers waiting on a record that was never forced to disk are released
+ *   with a JournalFailedException rather than returning as if the record were durable, so that they don't acknowledge it; the request fails without a
+ *   response. The in-memory state can't be rolled back so beyond that the only sensible option is to keep serving requests and alert the operator, who
+ *   should save a primary checkpoint as soon as possible.
+ */
+
+package com.feedbactory.server.core;
+
+
+import com.feedbactory.server.core.log.FeedbactoryLogger;
+import com.feedbactory.server.core.log.SystemLogLevel;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+
+final public class WriteAheadJournal
+{
+   static final public long NoSequenceNumber = 0;
+
+   static final int NoSegmentNumber = -1;
+
+   static final private Path JournalPath = FeedbactoryServerConstants.BaseDataPath.resolve("Journal");
+   static final private String SegmentFilenamePrefix = "Journal";
+   static final private String CheckpointMarkerFilename = "JournalMarker" + FeedbactoryServerConstants.DataFileExtension;
+
+   static final private int RecordHeaderLengthBytes = 5;
+   static final private int RecordTrailerLengthBytes = 4;
+   static final private int MaximumRecordPayloadLengthBytes = 1048576;
+
+   static final private int PendingBatchInitialCapacityBytes = 65536;
+
+   /* Lock ordering is always segmentLock before batchLock.
+    * The segment lock is held while writing to or switching the active segment file, and the batch lock guards the pending batch & sequence numbers.
+    * Appending records only ever needs the batch lock, so callers are never held up by an fsync that's in progress.
+    */
+   final private ReentrantLock segmentLock = new ReentrantLock();
+   final private ReentrantLock batchLock = new ReentrantLock();
+   final private Condition batchAvailable = batchLock.newCondition();
+   final private Condition batchDurable = batchLock.newCondition();
+
+   // Guarded by batchLock.
+   final private ByteArrayOutputStream pendingBatch = new ByteArrayOutputStream(PendingBatchInitialCapacityBytes);
+   private boolean isActive;
+   private boolean isFailed;
+   private long lastAppendedSequenceNumber;
+   private long lastDurableSequenceNumber;
+   private int pendingBatchRecords;
+   private long recordsAppendedThisSession;
+   private long batchesWrittenThisSession;
+   private int largestBatchRecords;
+
+   // Guarded by segmentLock.
+   private FileChannel segmentChannel;
+   private int activeSegmentNumber = NoSegmentNumber;
+
+   private Thread writerThread;
+
+   private volatile BatchListener batchListener;
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static public enum RecordSource
+   {
+      UserAccount((byte) 0),
+      Feedback((byte) 1);
+
+      final public byte value;
+
+
+      private RecordSource(final byte value)
+      {
+         this.value = value;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      static public RecordSource fromValue(final byte value)
+      {
+         switch (value)
+         {
+            case 0:
+               return UserAccount;
+            case 1:
+               return Feedback;
+
+            // No exception thrown here - let the caller decide how to react to a null value.
+            default:
+               return null;
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static public interface JournalRecordReplayer
+   {
+      public void replayRecord(final DataInputStream recordStream) throws IOException;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // Thrown to a caller of awaitDurable() whose record was lost to a journal failure.
+   static final public class JournalFailedException extends RuntimeException
+   {
+      private JournalFailedException()
+      {
+         super("The journal failed before the record could be made durable.");
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   /* Receives each batch of records once it has been made durable, in the order that the batches were written. The listener is called by the journal
+    * writer thread while holding the segment lock, so it must hand the batch off rather than perform any blocking work.
+    */
+   static interface BatchListener
+   {
+      public void batchDurable(final byte[] batch);
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class JournalRecord
+   {
+      final byte recordSourceValue;
+      final byte[] payload;
+
+
+      private JournalRecord(final byte recordSourceValue, final byte[] payload)
+      {
+         this.recordSourceValue = recordSourceValue;
+         this.payload = payload;
+      }
+
+
+      final DataInputStream getPayloadStream()
+      {
+         return new DataInputStream(new ByteArrayInputStream(payload));
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class JournalTail
+   {
+      static final public JournalTail None = new JournalTail(Collections.<Path>emptyList());
+
+      final private List<Path> segmentPaths;
+
+
+      private JournalTail(final List<Path> segmentPaths)
+      {
+         this.segmentPaths = segmentPaths;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      private int handleReplay(final RecordSource recordSource, final JournalRecordReplayer replayer) throws IOException
+      {
+         int recordsReplayed = 0;
+
+         for (final Path segmentPath : segmentPaths)
+            recordsReplayed += replaySegment(segmentPath, recordSource, replayer);
+
+         return recordsReplayed;
+      }
+
+
+      private int replaySegment(final Path segmentPath, final RecordSource recordSource, final JournalRecordReplayer replayer) throws IOException
+      {
+         int recordsReplayed = 0;
+
+         try
+         (
+            final DataInputStream segmentStream = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentPath.toFile())));
+         )
+         {
+            final CRC32 recordChecksum = new CRC32();
+            JournalRecord record;
+
+            for (;;)
+            {
+               try
+               {
+                  record = readRecord(segmentStream, recordChecksum);
+               }
+               catch (final IOException ioException)
+               {
+                  final String message = "Journal segment replay stopped at a torn or corrupt record: " + segmentPath.getFileName();
+                  FeedbactoryLogger.logSystemEvent(SystemLogLevel.Warning, getClass(), message, ioException);
+                  break;
+               }
+
+               // The regular case - the end of the segment falls cleanly on a record boundary.
+               if (record == null)
+                  break;
+
+               if (record.recordSourceValue == recordSource.value)
+               {
+                  replayer.replayRecord(record.getPayloadStream());
+                  recordsReplayed ++;
+               }
+            }
+         }
+
+         return recordsReplayed;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      final public boolean isEmpty()
+      {
+         return segmentPaths.isEmpty();
+      }
+
+
+      final public int replay(final RecordSource recordSource, final JournalRecordReplayer replayer) throws IOException
+      {
+         return handleReplay(recordSource, replayer);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class JournalMetrics
+   {
+      final boolean isActive;
+      final int activeSegmentNumber;
+      final long recordsAppendedThisSession;
+      final long batchesWrittenThisSession;
+      final int largestBatchRecords;
+
+
+      private JournalMetrics(final boolean isActive, final int activeSegmentNumber, final long recordsAppendedThisSession, final long batchesWrittenThisSession,
+                             final int largestBatchRecords)
+      {
+         this.isActive = isActive;
+         this.activeSegmentNumber = activeSegmentNumber;
+         this.recordsAppendedThisSession = recordsAppendedThisSession;
+         this.batchesWrittenThisSession = batchesWrittenThisSession;
+         this.largestBatchRecords = largestBatchRecords;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class JournalWriterTask implements Runnable
+   {
+      @Override
+      final public void run()
+      {
+         try
+         {
+            while (awaitPendingBatch())
+               writePendingBatch();
+         }
+         catch (final Exception anyException)
+         {
+            handleJournalFailure(anyException);
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private Path getSegmentPath(final int segmentNumber)
+   {
+      return JournalPath.resolve(SegmentFilenamePrefix + segmentNumber + FeedbactoryServerConstants.DataFileExtension);
+   }
+
+
+   static private int getLatestSegmentNumber() throws IOException
+   {
+      int latestSegmentNumber = NoSegmentNumber;
+
+      for (final int segmentNumber : getSegmentNumbers())
+      {
+         if (segmentNumber > latestSegmentNumber)
+            latestSegmentNumber = segmentNumber;
+      }
+
+      return latestSegmentNumber;
+   }
+
+
+   static private List<Integer> getSegmentNumbers() throws IOException
+   {
+      final List<Integer> segmentNumbers = new ArrayList<>();
+
+      if (Files.notExists(JournalPath))
+         return segmentNumbers;
+
+      try
+      (
+         final DirectoryStream<Path> segmentPaths = Files.newDirectoryStream(JournalPath, SegmentFilenamePrefix + "*" + FeedbactoryServerConstants.DataFileExtension);
+      )
+      {
+         String segmentFilename;
+
+         for (final Path segmentPath : segmentPaths)
+         {
+            segmentFilename = segmentPath.getFileName().toString();
+            segmentFilename = segmentFilename.substring(SegmentFilenamePrefix.length(), segmentFilename.length() - FeedbactoryServerConstants.DataFileExtension.length());
+
+            try
+            {
+               segmentNumbers.add(Integer.parseInt(segmentFilename));
+            }
+            catch (final NumberFormatException numberFormatException)
+            {
+               // Not a journal segment, ignore.
+            }
+         }
+      }
+
+      return segmentNumbers;
+   }
+
+
+   // Returns null if the stream ends cleanly on a record boundary, otherwise throws an IOException for a short or corrupt record.
+   static private JournalRecord readRecord(final DataInputStream recordStream, final CRC32 recordChecksum) throws IOException
+   {
+      final int payloadLength;
+
+      try
+      {
+         payloadLength = recordStream.readInt();
+      }
+      catch (final EOFException eofException)
+      {
+         return null;
+      }
+
+      if ((payloadLength < 0) || (payloadLength > MaximumRecordPayloadLengthBytes))
+         throw new IOException("Invalid journal record length: " + payloadLength);
+
+      final byte recordSourceValue = recordStream.readByte();
+      final byte[] payload = new byte[payloadLength];
+      recordStream.readFully(payload);
+
+      recordChecksum.reset();
+      recordChecksum.update(recordSourceValue);
+      recordChecksum.update(payload);
+
+      if (recordStream.readInt() != (int) recordChecksum.getValue())
+         throw new IOException("Journal record checksum mismatch.");
+
+      return new JournalRecord(recordSourceValue, payload);
+   }
+
+
+   static private List<JournalRecord> handleReadBatch(final byte[] batch) throws IOException
+   {
+      final DataInputStream batchStream = new DataInputStream(new ByteArrayInputStream(batch));
+      final CRC32 recordChecksum = new CRC32();
+      final List<JournalRecord> records = new ArrayList<>();
+      JournalRecord record;
+
+      // Unlike a segment, a batch is never torn so any short or corrupt record is an error.
+      while ((record = readRecord(batchStream, recordChecksum)) != null)
+         records.add(record);
+
+      return records;
+   }
+
+
+   static private int readCheckpointMarker(final Path checkpointPath) throws IOException
+   {
+      final File markerFile = checkpointPath.resolve(CheckpointMarkerFilename).toFile();
+
+      if (! markerFile.exists())
+         return NoSegmentNumber;
+
+      try
+      (
+         final DataInputStream markerStream = CheckpointFileFormat.openInput(markerFile);
+      )
+      {
+         return markerStream.readInt();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private long handleAppend(final RecordSource recordSource, final byte[] payload)
+   {
+      if (payload.length > MaximumRecordPayloadLengthBytes)
+         throw new IllegalArgumentException("Journal record payload exceeds maximum length: " + payload.length);
+
+      final CRC32 recordChecksum = new CRC32();
+      recordChecksum.update(recordSource.value);
+      recordChecksum.update(payload);
+
+      final ByteBuffer recordBuffer = ByteBuffer.allocate(RecordHeaderLengthBytes + payload.length + RecordTrailerLengthBytes);
+      recordBuffer.putInt(payload.length);
+      recordBuffer.put(recordSource.value);
+      recordBuffer.put(payload);
+      recordBuffer.putInt((int) recordChecksum.getValue());
+
+      try
+      {
+         batchLock.lock();
+
+         if (! isActive)
+            return NoSequenceNumber;
+
+         pendingBatch.write(recordBuffer.array(), 0, recordBuffer.capacity());
+         pendingBatchRecords ++;
+         recordsAppendedThisSession ++;
+         lastAppendedSequenceNumber ++;
+
+         batchAvailable.signal();
+
+         return lastAppendedSequenceNumber;
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+   }
+
+
+   private void handleAwaitDurable(final long sequenceNumber)
+   {
+      if (sequenceNumber == NoSequenceNumber)
+         return;
+
+      try
+      {
+         batchLock.lock();
+
+         // Deactivation only releases the waiting threads once their records have been forced, so only a journal failure will cut the wait short.
+         while ((! isFailed) && (lastDurableSequenceNumber < sequenceNumber))
+            batchDurable.awaitUninterruptibly();
+
+         if (lastDurableSequenceNumber < sequenceNumber)
+            throw new JournalFailedException();
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+   }
+
+
+   private boolean awaitPendingBatch()
+   {
+      try
+      {
+         batchLock.lock();
+
+         while (isActive && (pendingBatch.size() == 0))
+            batchAvailable.awaitUninterruptibly();
+
+         // When the journal is deactivated, the writer thread drains any remaining records before exiting.
+         return (pendingBatch.size() > 0);
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+   }
+
+
+   private void writePendingBatch() throws IOException
+   {
+      try
+      {
+         segmentLock.lock();
+         flushPendingBatch();
+      }
+      finally
+      {
+         segmentLock.unlock();
+      }
+   }
+
+
+   // Caller must hold the segment lock.
+   private void flushPendingBatch() throws IOException
+   {
+      final byte[] batch;
+      final long batchSequenceNumber;
+
+      try
+      {
+         batchLock.lock();
+
+         // The batch may have already been flushed by a segment roll.
+         if (pendingBatch.size() == 0)
+            return;
+
+         batch = pendingBatch.toByteArray();
+         pendingBatch.reset();
+         batchSequenceNumber = lastAppendedSequenceNumber;
+
+         batchesWrittenThisSession ++;
+         if (pendingBatchRecords > largestBatchRecords)
+            largestBatchRecords = pendingBatchRecords;
+
+         pendingBatchRecords = 0;
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+
+      final ByteBuffer batchBuffer = ByteBuffer.wrap(batch);
+      while (batchBuffer.hasRemaining())
+         segmentChannel.write(batchBuffer);
+
+      segmentChannel.force(false);
+
+      try
+      {
+         batchLock.lock();
+
+         lastDurableSequenceNumber = batchSequenceNumber;
+         batchDurable.signalAll();
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+
+      // Still holding the segment lock, so the listener receives the batches in the order that they were written.
+      final BatchListener listener = batchListener;
+      if (listener != null)
+         listener.batchDurable(batch);
+   }
+
+
+   private void handleJournalFailure(final Exception exception)
+   {
+      FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Journal write failed, the journal has been deactivated. A primary checkpoint should be saved.", exception);
+
+      try
+      {
+         batchLock.lock();
+
+         // The durable sequence number is left as it is, so that the callers waiting on the discarded records are failed rather than released.
+         isActive = false;
+         isFailed = true;
+         pendingBatch.reset();
+         pendingBatchRecords = 0;
+
+         batchAvailable.signalAll();
+         batchDurable.signalAll();
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+   }
+
+
+   // Caller must hold the segment lock.
+   private void openSegment(final int segmentNumber) throws IOException
+   {
+      segmentChannel = FileChannel.open(getSegmentPath(segmentNumber), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      activeSegmentNumber = segmentNumber;
+   }
+
+
+   // Caller must hold the segment lock.
+   private void closeSegment() throws IOException
+   {
+      if (segmentChannel != null)
+      {
+         segmentChannel.close();
+         segmentChannel = null;
+         activeSegmentNumber = NoSegmentNumber;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private boolean handleIsActive()
+   {
+      try
+      {
+         batchLock.lock();
+         return isActive;
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+   }
+
+
+   private void handleActivate() throws IOException
+   {
+      if (writerThread != null)
+         throw new IllegalStateException("The journal has already been activated.");
+
+      if (Files.notExists(JournalPath))
+         Files.createDirectory(JournalPath);
+
+      try
+      {
+         segmentLock.lock();
+         openSegment(getLatestSegmentNumber() + 1);
+      }
+      finally
+      {
+         segmentLock.unlock();
+      }
+
+      try
+      {
+         batchLock.lock();
+         isActive = true;
+         isFailed = false;
+         lastDurableSequenceNumber = lastAppendedSequenceNumber;
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+
+      writerThread = new Thread(new JournalWriterTask(), "Journal writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+
+   private void handleDeactivate() throws InterruptedException, IOException
+   {
+      if (writerThread == null)
+         return;
+
+      try
+      {
+         batchLock.lock();
+         isActive = false;
+         batchAvailable.signalAll();
+      }
+      finally
+      {
+         batchLock.unlock();
+      }
+
+      /* New appends are now refused, and the writer thread drains the pending batch before exiting. Each forced batch releases its own waiting
+       * threads, and a failure part way through the drain fails the remainder, so there's no need to release anyone here.
+       */
+      writerThread.join();
+      writerThread = null;
+
+      try
+      {
+         segmentLock.lock();
+         closeSegment();
+      }
+      finally
+      {
+         segmentLock.unlock();
+      }
+   }
+
+
+   private int handleRollSegment()
+   {
+      try
+      {
+         segmentLock.lock();
+
+         if ((! isActive()) || (segmentChannel == null))
+            return NoSegmentNumber;
+
+         // Records appended before the roll must land in the old segment, since they may not be captured by the checkpoint that's about to start.
+         flushPendingBatch();
+
+         final int nextSegmentNumber = activeSegmentNumber + 1;
+         closeSegment();
+         openSegment(nextSegmentNumber);
+
+         return nextSegmentNumber;
+      }
+      catch (final IOException ioException)
+      {
+         // Don't fail the checkpoint itself; it will simply not be stamped as a base for journal replay.
+         handleJournalFailure(ioException);
+         return NoSegmentNumber;
+      }
+      finally
+      {
+         segmentLock.unlock();
+      }
+   }
+
+
+   private void handleClearCheckpointMarker(final Path checkpointPath) throws IOException
+   {
+      Files.deleteIfExists(checkpointPath.resolve(CheckpointMarkerFilename));
+   }
+
+
+   private void handleMarkCheckpoint(final Path checkpointPath, final int segmentNumber) throws IOException
+   {
+      if (segmentNumber == NoSegmentNumber)
+         return;
+
+      final File markerFile = checkpointPath.resolve(CheckpointMarkerFilename).toFile();
+
+      try
+      (
+         final DataOutputStream markerStream = CheckpointFileFormat.openOutput(markerFile);
+      )
+      {
+         markerStream.writeInt(segmentNumber);
+      }
+
+      // Truncate the journal - every record in the earlier segments is now covered by the checkpoint.
+      for (final int existingSegmentNumber : getSegmentNumbers())
+      {
+         if (existingSegmentNumber < segmentNumber)
+            Files.deleteIfExists(getSegmentPath(existingSegmentNumber));
+      }
+   }
+
+
+   private int handleGetCheckpointSegmentNumber(final Path checkpointPath) throws IOException
+   {
+      final int segmentNumber = readCheckpointMarker(checkpointPath);
+
+      // The checkpoint can only be used as a base for replay if its starting segment hasn't been truncated by a later checkpoint.
+      if ((segmentNumber != NoSegmentNumber) && Files.exists(getSegmentPath(segmentNumber)))
+         return segmentNumber;
+      else
+         return NoSegmentNumber;
+   }
+
+
+   private JournalTail handleGetJournalTail(final Path checkpointPath) throws IOException
+   {
+      final int startSegmentNumber = getCheckpointSegmentNumber(checkpointPath);
+
+      if (startSegmentNumber == NoSegmentNumber)
+         return JournalTail.None;
+
+      final List<Integer> segmentNumbers = getSegmentNumbers();
+      Collections.sort(segmentNumbers);
+
+      final List<Path> tailSegmentPaths = new ArrayList<>();
+      int expectedSegmentNumber = startSegmentNumber;
+
+      for (final int segmentNumber : segmentNumbers)
+      {
+         if (segmentNumber < startSegmentNumber)
+            continue;
+         else if (segmentNumber != expectedSegmentNumber)
+         {
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Journal replay stopped at missing segment number: " + expectedSegmentNumber);
+            break;
+         }
+
+         tailSegmentPaths.add(getSegmentPath(segmentNumber));
+         expectedSegmentNumber ++;
+      }
+
+      return new JournalTail(tailSegmentPaths);
+   }
+
+
+   private JournalMetrics handleGetMetrics()
+   {
+      try
+      {
+         segmentLock.lock();
+         batchLock.lock();
+
+         return new JournalMetrics(isActive, activeSegmentNumber, recordsAppendedThisSession, batchesWrittenThisSession, largestBatchRecords);
+      }
+      finally
+      {
+         batchLock.unlock();
+         segmentLock.unlock();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final boolean isActive()
+   {
+      return handleIsActive();
+   }
+
+
+   final void activate() throws IOException
+   {
+      handleActivate();
+   }
+
+
+   final void deactivate() throws InterruptedException, IOException
+   {
+      handleDeactivate();
+   }
+
+
+   final int rollSegment()
+   {
+      return handleRollSegment();
+   }
+
+
+   final void clearCheckpointMarker(final Path checkpointPath) throws IOException
+   {
+      handleClearCheckpointMarker(checkpointPath);
+   }
+
+
+   final void markCheckpoint(final Path checkpointPath, final int segmentNumber) throws IOException
+   {
+      handleMarkCheckpoint(checkpointPath, segmentNumber);
+   }
+
+
+   final int getCheckpointSegmentNumber(final Path checkpointPath) throws IOException
+   {
+      return handleGetCheckpointSegmentNumber(checkpointPath);
+   }
+
+
+   final JournalTail getJournalTail(final Path checkpointPath) throws IOException
+   {
+      return handleGetJournalTail(checkpointPath);
+   }
+
+
+   final JournalMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+
+
+   final void setBatchListener(final BatchListener batchListener)
+   {
+      this.batchListener = batchListener;
+   }
+
+
+   static List<JournalRecord> readBatch(final byte[] batch) throws IOException
+   {
+      return handleReadBatch(batch);
+   }
+
+
+   final public long append(final RecordSource recordSource, final byte[] payload)
+   {
+      return handleAppend(recordSource, payload);
+   }
+
+
+   final public void awaitDurable(final long sequenceNumber)
+   {
+      handleAwaitDurable(sequenceNumber);
+   }
+}
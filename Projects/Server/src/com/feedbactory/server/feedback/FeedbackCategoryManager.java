@@ -2,11 +2,12 @@
 package com.feedbactory.server.feedback;
 
 
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccount;
 import com.feedbactory.shared.feedback.FeedbackSubmission;
 import com.feedbactory.shared.feedback.FeedbackItem;
 import com.feedbactory.shared.feedback.FeedbackItemProfile;
-import java.io.DataInputStream;
+import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -22,21 +23,24 @@ public interface FeedbackCategoryManager
    public Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> getItemFeedbackSubmissions(final FeedbackItem item);
    public ItemProfileFeedbackSubmission replaceItemProfile(final FeedbactoryUserAccount account, final FeedbackItemProfile itemProfile);
 
-   public FeedbackItem readFeedbackItem(final DataInputStream dataInputStream) throws IOException;
+   public FeedbackItem readFeedbackItem(final DataInput dataInputStream) throws IOException;
    public void writeFeedbackItem(final FeedbackItem item, final DataOutputStream dataOutputStream) throws IOException;
-   public FeedbackItemProfile readFeedbackItemProfile(final DataInputStream dataInputStream) throws IOException;
+   public FeedbackItemProfile readFeedbackItemProfile(final DataInput dataInputStream) throws IOException;
    public void writeFeedbackItemProfile(final FeedbackItemProfile itemProfile, final DataOutputStream dataOutputStream) throws IOException;
-   public FeedbackSubmission readFeedbackSubmission(final FeedbackItem item, final DataInputStream dataInputStream) throws IOException;
+   public FeedbackSubmission readFeedbackSubmission(final FeedbackItem item, final DataInput dataInputStream) throws IOException;
    public void writeFeedbackSubmission(final FeedbackSubmission feedbackSubmission, final DataOutputStream dataOutputStream) throws IOException;
 
    public void clearItemFeedbackSubmissions();
    public void preCheckpointRestore(final Path checkpointPath) throws IOException;
-   public void restoreItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final ItemProfileFeedbackSubmission restoredItemProfileFeedbackSubmission);
+   // May be called concurrently for different items.
+   public void restoreItemFeedbackSubmissions(final FeedbackItem item, final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> restoredItemFeedbackSubmissions);
+   // Called for each replayed journal record which changes the parent records, whether during a checkpoint restore or on a standby server.
+   public void replayFeedbackSubmissionChange(final FeedbackItem item, final ItemProfileFeedbackSubmission previousSubmission, final ItemProfileFeedbackSubmission newSubmission);
    public void postCheckpointRestore(final Path checkpointPath) throws IOException;
 
    public void preCheckpointSave(final Path checkpointPath) throws IOException;
    public void postCheckpointSave(final Path checkpointPath) throws IOException;
 
-   public void startHousekeeping();
+   public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler);
    public void shutdownHousekeeping() throws InterruptedException;
 }
\ No newline at end of file
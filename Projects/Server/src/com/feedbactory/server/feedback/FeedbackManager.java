@@ -26,7 +26,49 @@
  *   are set high enough. The drawback of setting these parameters too high is that the merge task becomes too conservative and will not update items having a small
  *   amount of feedback or where there hasn't been much feedback since an item profile has been updated on a website.
  *
- * - As a final part of its process the housekeeping task also cleans out unused item profiles from the cache.
+ * - The housekeeping merge only examines items that have been marked as dirty, ie. that have had a feedback submission added or removed since the
+ *   item was last examined, since the outcome for any other item can't have changed. This keeps the cost of the housekeeping run proportional to the write
+ *   activity since the previous run rather than to the size of the feedback database. Items are removed from the dirty set just before being examined, so
+ *   any submission arriving during the examination will queue the item again for the next run. The one input that isn't tracked is a change to the
+ *   last authenticated IP address of a submitting account, which may very occasionally alter the IP-filtered sample; the next submission for the item
+ *   will pick that up. All restored items are marked as dirty following a checkpoint restore.
+ *
+ * - Cached item profiles are reference counted, one reference per feedback submission attached to the profile. The counts are adjusted under the user account lock
+ *   as submissions are added, replaced (including by the housekeeping merge) or removed, and a profile leaves the cache as soon as its count drops to zero.
+ *   This replaces an earlier scheme where the housekeeping task would periodically rebuild a set of every live item profile and sweep the cache against it;
+ *   aside from being an O(all submissions) pass with a transient set as large as the cache itself, the unused profiles would linger for up to a full housekeeping
+ *   period. Acquiring a cached profile uses the same loop & retry approach as PersonalFeedbackManager's handleAddItemFeedbackSubmission(), to handle the case
+ *   where another thread drops the last reference between the lookup and the lock.
+ *
+ * - Feedback submissions and removals are journalled to the write-ahead journal while holding the user account lock. The journal sequence number is
+ *   handed back to the caller within the FeedbackSubmissionUpdate, and the caller must pass it to awaitDurable() once it has released the account lock
+ *   and any locks of its own, but before sending its response. Waiting for the group commit while holding the account lock would stall every checkpoint,
+ *   housekeeping or session task needing the same account for the duration of an fsync. On restoration the journal tail is replayed into the parent records following the checkpoint data,
+ *   and only then are the feedback category managers handed the restored submissions, so they only ever see the final state. The housekeeping merge of
+ *   item profiles isn't journalled since all restored items are marked dirty and will be merged again by the next housekeeping run. Category data which
+ *   is built incrementally from the live submissions rather than from the parent records, eg. the personal feedback rating rollups, is instead passed
+ *   each replayed change which alters the parent records. A replayed add matching the restored submission is skipped, since the checkpoint is fuzzy and may
+ *   already include the latest journal records.
+ *
+ * - Each user account whose feedback submissions are added, removed or switched to a dominant item profile by the housekeeping merge is flagged as dirty,
+ *   and a delta checkpoint writes the complete current submissions for only those accounts; an account having no submissions left is written with a
+ *   count of zero as its tombstone. Restoring a delta replaces the account's submissions wholesale, moving the cache references from the old profiles
+ *   to the restored ones. The feedback category managers still save their own data in full for every checkpoint, delta or otherwise, so they are
+ *   restored from the most recent checkpoint in the chain.
+ *
+ * - Once the feedback data has been restored, the submissions are grouped by item and each item's submissions are handed to its feedback category manager
+ *   in one call, so that the category managers can build their per-item records in a single step. The items are spread across a pool of worker threads
+ *   for this, so the category managers must allow concurrent restores of different items. The delta checkpoints and journal tail are still applied
+ *   sequentially beforehand, since their order matters.
+ *
+ * - A full checkpoint writes each distinct item profile once to a profile table, and the submission records refer to their profiles by table ID. On restore
+ *   the table is read first and its profiles placed directly into the cache, so each submission costs an array lookup rather than decoding and hashing
+ *   its own copy of the profile. The delta checkpoints and journal still write the profiles inline; they hold only the recently changed accounts.
+ *   A full checkpoint lacking the table is assumed to be of the older inline format.
+ *
+ * - A warm standby server applies the journal records streamed from the primary to the parent records, the same as for a journal replay. The
+ *   feedback category managers are rebuilt from the parent records when the standby is promoted, which costs about the same as the final stage of a
+ *   checkpoint restore. Their incrementally built data is updated as each record arrives, and so is kept as-is on promotion.
  *
  * - The cache is a cache and should not be used by any part of the server to assume that it is providing the 'authoritative' or canonical copy of a FeedbackItem,
  *   perhaps on which parts of the app might wish to synchronize, ie. much like what can be done with FeedbactoryUserAccount when using getAccountByID.
@@ -36,9 +78,15 @@
 package com.feedbactory.server.feedback;
 
 
+import com.feedbactory.server.core.CheckpointFileFormat;
+import com.feedbactory.server.core.CheckpointRecordBuffer;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.core.MutableInteger;
+import com.feedbactory.server.core.ShardedCheckpointFile;
 import com.feedbactory.server.core.TimeCache;
+import com.feedbactory.server.core.WriteAheadJournal;
+import com.feedbactory.server.core.WriteAheadJournal.JournalTail;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccount;
@@ -49,13 +97,12 @@ import com.feedbactory.shared.feedback.FeedbackCategory;
 import com.feedbactory.shared.feedback.FeedbackItem;
 import com.feedbactory.shared.feedback.FeedbackItemProfile;
 import com.feedbactory.shared.feedback.FeedbackSubmission;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import com.feedbactory.shared.feedback.FeedbackWebsite;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.file.Path;
@@ -70,17 +117,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 final public class FeedbackManager
 {
    static final private int CachedItemProfileMapInitialCapacity = 10000;
 
-   static final private String FeedbackDataFilename = "FeedbackData" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String FeedbackDataBaseFilename = "FeedbackData";
+   static final private String FeedbackDataDeltaFilename = "FeedbackDataDelta" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String FeedbackItemProfileTableFilename = "FeedbackItemProfiles" + FeedbactoryServerConstants.DataFileExtension;
 
    static final private int MaximumFeedbackSubmissionsPerUserAccount = 2283;
 
@@ -89,19 +139,28 @@ final public class FeedbackManager
 
    static final private long HousekeepingTaskFrequencyMilliseconds = TimeUnit.MINUTES.toMillis(68);
 
+   static final private byte AddSubmissionJournalRecordType = 0;
+   static final private byte RemoveSubmissionJournalRecordType = 1;
+
    final private UserAccountManager userAccountManager;
+   final private WriteAheadJournal journal;
    final private FeedbackCategoryRegistry feedbackCategoryRegistry;
 
    final private Map<FeedbactoryUserAccount, Map<FeedbackItem, ItemProfileFeedbackSubmission>> feedbackByUserAccount = new ConcurrentHashMap<>(UserAccountManager.AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
 
    final private ConcurrentHashMap<FeedbackItemProfile, CachedFeedbackItemProfile> cachedFeedbackItemProfiles = new ConcurrentHashMap<>(CachedItemProfileMapInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
 
+   final private Set<FeedbackItem> dirtyFeedbackItems = Collections.newSetFromMap(new ConcurrentHashMap<FeedbackItem, Boolean>(CachedItemProfileMapInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency));
+
+   final private Set<FeedbactoryUserAccount> dirtyFeedbackAccounts = Collections.newSetFromMap(new ConcurrentHashMap<FeedbactoryUserAccount, Boolean>(UserAccountManager.AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency));
+
    final private HousekeepingTask housekeepingTask = new HousekeepingTask();
 
 
-   public FeedbackManager(final UserAccountManager userAccountManager)
+   public FeedbackManager(final UserAccountManager userAccountManager, final WriteAheadJournal journal)
    {
       this.userAccountManager = userAccountManager;
+      this.journal = journal;
       feedbackCategoryRegistry = new FeedbackCategoryRegistry(this, userAccountManager);
    }
 
@@ -124,13 +183,15 @@ final public class FeedbackManager
       final public int spreadOfAccounts;
 
       final public int cachedItemProfiles;
+      final public int dirtyItems;
+      final public int housekeepingLastRunExaminedItems;
 
       final public List<FeedbackCategory> registeredFeedbackCategories;
 
 
       private FeedbackManagerMetrics(final boolean isHousekeepingEnabled, final long housekeepingLastRunStartTime,
                                      final int feedbackSubmissions, final int spreadOfItems, final int spreadOfAccounts, final int cachedItemProfiles,
-                                     final List<FeedbackCategory> registeredFeedbackCategories)
+                                     final int dirtyItems, final int housekeepingLastRunExaminedItems, final List<FeedbackCategory> registeredFeedbackCategories)
       {
          this.isHousekeepingEnabled = isHousekeepingEnabled;
          this.housekeepingFrequencyMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(HousekeepingTaskFrequencyMilliseconds);
@@ -141,6 +202,8 @@ final public class FeedbackManager
          this.spreadOfAccounts = spreadOfAccounts;
 
          this.cachedItemProfiles = cachedItemProfiles;
+         this.dirtyItems = dirtyItems;
+         this.housekeepingLastRunExaminedItems = housekeepingLastRunExaminedItems;
 
          this.registeredFeedbackCategories = registeredFeedbackCategories;
       }
@@ -157,13 +220,15 @@ final public class FeedbackManager
    static final private class CachedFeedbackItemProfile
    {
       final private FeedbackItemProfile itemProfile;
-      final private long creationTime;
+
+      // Guarded by this object's monitor.
+      private int referenceCount;
+      private boolean isRemoved;
 
 
-      private CachedFeedbackItemProfile(final FeedbackItemProfile itemProfile, final long creationTime)
+      private CachedFeedbackItemProfile(final FeedbackItemProfile itemProfile)
       {
          this.itemProfile = itemProfile;
-         this.creationTime = creationTime;
       }
    }
 
@@ -175,123 +240,173 @@ final public class FeedbackManager
     ***************************************************************************/
 
 
-   final private class HousekeepingTask implements Runnable, ThreadFactory
+   /* Assigns the IDs by which the submission records of a full checkpoint refer to their item profiles. The shard workers request IDs concurrently;
+    * a worker which loses the race to assign an ID to a profile discards its own, so the IDs may contain gaps.
+    */
+   static final private class ItemProfileTableWriter
+   {
+      final private ConcurrentHashMap<FeedbackItemProfile, Integer> itemProfileIDs;
+      final private AtomicInteger nextItemProfileID = new AtomicInteger();
+
+
+      private ItemProfileTableWriter(final int initialCapacity)
+      {
+         itemProfileIDs = new ConcurrentHashMap<>(initialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+      }
+
+
+      private int getItemProfileID(final FeedbackItemProfile itemProfile)
+      {
+         Integer itemProfileID = itemProfileIDs.get(itemProfile);
+
+         if (itemProfileID == null)
+         {
+            final Integer newItemProfileID = nextItemProfileID.getAndIncrement();
+
+            itemProfileID = itemProfileIDs.putIfAbsent(itemProfile, newItemProfileID);
+            if (itemProfileID == null)
+               itemProfileID = newItemProfileID;
+         }
+
+         return itemProfileID.intValue();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   /* The item profile table as restored from a full checkpoint, with each profile already placed in the cache. The shard workers tally the profile
+    * references concurrently, and the tallies become the cache reference counts once every shard has been read.
+    */
+   static final private class ItemProfileTableReader
+   {
+      final private CachedFeedbackItemProfile[] cachedItemProfiles;
+      final private AtomicIntegerArray referenceCounts;
+
+
+      private ItemProfileTableReader(final int tableLength)
+      {
+         cachedItemProfiles = new CachedFeedbackItemProfile[tableLength];
+         referenceCounts = new AtomicIntegerArray(tableLength);
+      }
+
+
+      private FeedbackItemProfile acquireItemProfile(final int itemProfileID)
+      {
+         if ((itemProfileID < 0) || (itemProfileID >= cachedItemProfiles.length) || (cachedItemProfiles[itemProfileID] == null))
+            throw new IllegalArgumentException("Invalid feedback item profile ID: " + itemProfileID);
+
+         referenceCounts.incrementAndGet(itemProfileID);
+
+         return cachedItemProfiles[itemProfileID].itemProfile;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class HousekeepingTask implements HousekeepingScheduler.Task
    {
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler housekeepingScheduler;
+      private HousekeepingScheduler.Registration registration;
 
       /* This variable is written by the housekeeping thread, and read by the owner thread of the account manager.
        * At the moment there are no other metrics variables with which the housekeeping start time needs to be written atomically,
        * so marking it as volatile rather than using locking is fine.
        */
       volatile private long lastRunStartTime = FeedbactoryConstants.NoTime;
+      volatile private int lastRunExaminedItems;
 
 
       @Override
-      final public Thread newThread(final Runnable runnable)
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
-         final Thread thread = new Thread(runnable, "Feedback manager housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
-
-
-      @Override
-      final public void run()
-      {
-         lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
+         if (isNewRun)
+         {
+            lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
+            lastRunExaminedItems = 0;
+         }
 
          try
          {
-            mergeFragmentedItemProfiles();
+            return mergeFragmentedItemProfiles(sliceDeadlineNanoTime);
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
+            /* Exception handling provided for -any- exception, so that the failure is logged against this task.
+             * The run is treated as finished; any items still marked as dirty will be examined on the next run.
              */
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Feedback manager housekeeping task failed", anyException);
+            return true;
          }
       }
 
 
-      private void mergeFragmentedItemProfiles()
+      private boolean mergeFragmentedItemProfiles(final long sliceDeadlineNanoTime)
       {
-         for (final FeedbackCategoryHandler feedbackCategoryHandler : feedbackCategoryRegistry.getRegisteredHandlers())
-            mergeFragmentedItemProfiles(feedbackCategoryHandler);
-      }
+         /* Examined items are removed from the dirty set, so a fresh iterator for each slice naturally resumes where the previous slice left off.
+          * Items marked as dirty after the run has started may also be picked up by a later slice of the same run, which does no harm.
+          */
+         final Iterator<FeedbackItem> dirtyFeedbackItemsIterator = dirtyFeedbackItems.iterator();
+         FeedbackItem feedbackItem;
+         FeedbackCategoryManager feedbackCategoryManager;
+         int examinedItems = 0;
 
+         try
+         {
+            while (dirtyFeedbackItemsIterator.hasNext())
+            {
+               feedbackItem = dirtyFeedbackItemsIterator.next();
 
-      private void mergeFragmentedItemProfiles(final FeedbackCategoryHandler feedbackCategoryHandler)
-      {
-         final FeedbackCategoryManager feedbackCategoryManager = feedbackCategoryHandler.getCategoryManager();
-         final Set<FeedbackItemProfile> feedbackCategoryItemProfiles = new HashSet<>(cachedFeedbackItemProfiles.size());
+               // Remove the item before examining it, so that any submission arriving from this point will queue it again for the next run.
+               dirtyFeedbackItemsIterator.remove();
 
-         /* Capture the time immediately prior to taking the snapshot of the feedback category's submissions.
-          * This timestamp guards against the possibility of new submission profiles received during the housekeeping process
-          * from being removed from the cache, as described before the final process below.
-          * I could also use the volatile lastRunStartTime but it would be a hacky overload of its intended purpose (admin console metrics).
-          */
-         final long snapshotCreationTime = TimeCache.getCurrentTimeMilliseconds();
+               feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackItem.getFeedbackCategory()).getCategoryManager();
+               mergeFragmentedItemProfiles(feedbackCategoryManager, feedbackItem);
 
-         Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemFeedbackSubmissions;
-         Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> mostRecentItemSubmissions;
+               examinedItems ++;
 
-         for (final FeedbackItem feedbackItem : feedbackCategoryManager.getFeedbackItems())
+               if (System.nanoTime() >= sliceDeadlineNanoTime)
+                  return (! dirtyFeedbackItemsIterator.hasNext());
+            }
+
+            return true;
+         }
+         finally
          {
-            // Get a snapshot of all of the feedbackCategoryManager's feedback submissions for the item.
-            itemFeedbackSubmissions = feedbackCategoryManager.getItemFeedbackSubmissions(feedbackItem);
+            lastRunExaminedItems += examinedItems;
+         }
+      }
 
-            /* Set aside a sample of the most recent feedback submissions.
-             * The attached user account information is used to prevent a sample containing more than one
-             * submission for any IP address, effectively making it more difficult for a malicious party
-             * to flood an item with erroneous item profiles from different user accounts in an attempt
-             * to force it to adopt some item profile.
-             */
-            mostRecentItemSubmissions = getMostRecentNItemSubmissions(itemFeedbackSubmissions);
-            if (mostRecentItemSubmissions.size() >= ItemProfileFeedbackDefragmentationSampleSize)
-            {
-               final FeedbackItemProfile dominantItemProfile = getMostRecentDominantItemProfile(mostRecentItemSubmissions.values());
-               if (dominantItemProfile != null)
-               {
-                  /* Update both the live feedback database AND the snapshot collection with the dominant item profile.
-                   * Updating the snapshot collection is for the benefit of the cache cleaner task, which runs at the end
-                   * of this process.
-                   */
-                  updateToMostRecentDominantItemProfile(feedbackCategoryManager, itemFeedbackSubmissions, dominantItemProfile);
-               }
-            }
 
-            for (final ItemProfileFeedbackSubmission itemFeedbackSubmissionProfile : itemFeedbackSubmissions.values())
-               feedbackCategoryItemProfiles.add(itemFeedbackSubmissionProfile.getItemProfile());
-         }
-
-         /* This task is useful for cleaning out the cache, which can otherwise accumulate item profiles that no longer have feedback attached.
-          * In theory a malicious party could progressively flood the server cache with different item profile submissions over time,
-          * so this is a handy task to have.
-          * 
-          * If not for the safeguard timestamp above taken at the time prior to extracting the feedback category snapshot, it would be possible due to
-          * concurrency issues that this method would actually remove an active feedback profile, under these conditions:
-          * 1. The housekeeping task starts and a snapshot of all feedback for a category is obtained (above) from the feedback category manager.
-          * 2. A user submits feedback for an item which previously had no feedback attached, ie. no existing item profile for it at the
-          *    time of the previous step.
-          * 3. Since the item is new and has only one feedback submission it remains unaffected by the merge item profiles task, ie. the
-          *    snapshot remains as it was at the time.
-          * 4. This final housekeeping task runs and finds no record of the cached item profile in the snapshot of the data gathered previously,
-          *    so the item profile is removed from the cache.
-          *
-          * If another user then submits feedback for the same item with the same item profile (as expected), the profile will then be recreated
-          * in the cache but it will not of course be a memory duplicate of the item profile attached to the feedback from step 2.
-          *
-          * This would not be much of a problem since a) the housekeeping task should not run frequently, so the expected number of affected cases
-          * would be very small if any, and b) future runs of the housekeeping task would merge item profile objects once there is enough feedback
-          * for the item ID to detect a dominant item profile.
-          *
-          * Still, the item may never receive enough submissions to reach the merge threshold. Also it's easy enough to guard against the above scenario
-          * by providing a safeguard timestamp and ensuring that the process below does not remove any cached item profiles that have been created
-          * since the housekeeping snapshot has been taken.
+      private void mergeFragmentedItemProfiles(final FeedbackCategoryManager feedbackCategoryManager, final FeedbackItem feedbackItem)
+      {
+         // Get a snapshot of all of the feedbackCategoryManager's feedback submissions for the item.
+         final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemFeedbackSubmissions = feedbackCategoryManager.getItemFeedbackSubmissions(feedbackItem);
+
+         /* Set aside a sample of the most recent feedback submissions.
+          * The attached user account information is used to prevent a sample containing more than one
+          * submission for any IP address, effectively making it more difficult for a malicious party
+          * to flood an item with erroneous item profiles from different user accounts in an attempt
+          * to force it to adopt some item profile.
           */
-         removeUnusedCachedItemProfiles(feedbackCategoryHandler.getCategory(), snapshotCreationTime, feedbackCategoryItemProfiles);
+         final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> mostRecentItemSubmissions = getMostRecentNItemSubmissions(itemFeedbackSubmissions);
+         if (mostRecentItemSubmissions.size() >= ItemProfileFeedbackDefragmentationSampleSize)
+         {
+            final FeedbackItemProfile dominantItemProfile = getMostRecentDominantItemProfile(mostRecentItemSubmissions.values());
+            if (dominantItemProfile != null)
+               updateToMostRecentDominantItemProfile(feedbackCategoryManager, itemFeedbackSubmissions, dominantItemProfile);
+         }
       }
 
 
@@ -383,19 +498,15 @@ final public class FeedbackManager
                                                          final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemFeedbackSubmissions,
                                                          final FeedbackItemProfile dominantItemProfile)
       {
-         final Iterator<Entry<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>> itemFeedbackSubmissionIterator = itemFeedbackSubmissions.entrySet().iterator();
-         Entry<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemFeedbackSubmissionsEntry;
-
          FeedbactoryUserAccount account;
          ItemProfileFeedbackSubmission snapshotFeedbackSubmission;
          Map<FeedbackItem, ItemProfileFeedbackSubmission> currentAccountFeedbackSubmissions;
          ItemProfileFeedbackSubmission currentFeedbackSubmission;
+         FeedbackItemProfile cachedDominantItemProfile;
          ItemProfileFeedbackSubmission updatedFeedbackSubmission;
 
-         while (itemFeedbackSubmissionIterator.hasNext())
+         for (final Entry<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemFeedbackSubmissionsEntry : itemFeedbackSubmissions.entrySet())
          {
-            itemFeedbackSubmissionsEntry = itemFeedbackSubmissionIterator.next();
-
             account = itemFeedbackSubmissionsEntry.getKey();
             snapshotFeedbackSubmission = itemFeedbackSubmissionsEntry.getValue();
 
@@ -427,8 +538,7 @@ final public class FeedbackManager
              *   The incentive to apply this lazier policy is to avoid the hit of unconditionally re-grabbing the lock for EVERY user account feedback submission
              *   in the entire database - as the database grows much larger it would be a huge amount of needless locking.
              *
-             * - Finally, this method also mutates the snapshot collection as feedback submission profiles are updated, in preparation for the
-             *   cache cleaner task which will run immediately afterwards.
+             * - Finally, each submission that is switched over to the dominant item profile moves its cache reference from the old profile to the dominant one.
              */
 
             /* Without this first check, the process would still work correctly and possibly catch more cases that need to be updated eventually,
@@ -455,51 +565,39 @@ final public class FeedbackManager
                          * For case 3, the feedback category manager will not update the object and the live ItemProfileFeedbackSubmission returned
                          * will already be reference equal to the object stored in this parent feedback manager's database - no work to be done.
                          */
-                        updatedFeedbackSubmission = feedbackCategoryManager.replaceItemProfile(account, dominantItemProfile);
+                        /* Take the reference on the dominant profile before handing it over. In the very unlikely event that every other reference to it has
+                         * since been dropped, the acquired instance will be a freshly cached copy rather than the snapshot's.
+                         */
+                        cachedDominantItemProfile = acquireCachedFeedbackItemProfile(dominantItemProfile);
+                        updatedFeedbackSubmission = feedbackCategoryManager.replaceItemProfile(account, cachedDominantItemProfile);
 
                         /* While a lock on the user account is being held, it should not be possible for a feedback submission
-                         * to be recorded here in the parent feedback manager and not within the feedbackCategoryManager.
-                         * It would indicate a corrupted feedback database.
+                         * to be recorded here in the parent feedback manager and not within the feedbackCategoryManager, unless the category manager
+                         * has deliberately dropped its copy of the item's feedback, eg. for a website that has been disabled. In that case the
+                         * submission is left as it is; the category manager will rebuild its copy from these records if and when required.
                          */
-                        assert (updatedFeedbackSubmission != null);
+                        if (updatedFeedbackSubmission == null)
+                           releaseCachedFeedbackItemProfile(cachedDominantItemProfile);
 
                         /* Avoid extra work for case 3: everything's already up to date, the submission profile here does not need to be updated.
                          * Note the reference equality check, which can apply since item profiles are cached as they are submitted or restored.
                          */
-                        if (currentFeedbackSubmission != updatedFeedbackSubmission)
+                        else if (currentFeedbackSubmission != updatedFeedbackSubmission)
+                        {
                            currentAccountFeedbackSubmissions.put(dominantItemProfile.getItem(), updatedFeedbackSubmission);
-
-                        // Need to update the snapshot item profile, as it will be checked later by the cache cleaner.
-                        itemFeedbackSubmissionsEntry.setValue(updatedFeedbackSubmission);
+                           releaseCachedFeedbackItemProfile(currentFeedbackSubmission.getItemProfile());
+                           dirtyFeedbackAccounts.add(account);
+                        }
+                        else
+                           releaseCachedFeedbackItemProfile(cachedDominantItemProfile);
                      }
-                     else // Remove the submission from the snapshot, as it will be checked later by the cache cleaner.
-                        itemFeedbackSubmissionIterator.remove();
                   }
-                  else // Remove the submission from the snapshot, as it will be checked later by the cache cleaner.
-                     itemFeedbackSubmissionIterator.remove();
                }
             }
          }
       }
 
 
-      private void removeUnusedCachedItemProfiles(final FeedbackCategory feedbackCategory, final long snapshotCreationTime, final Set<FeedbackItemProfile> feedbackCategoryItemProfiles)
-      {
-         final Iterator<Entry<FeedbackItemProfile, CachedFeedbackItemProfile>> cachedFeedbackItemProfilesIterator = cachedFeedbackItemProfiles.entrySet().iterator();
-         Entry<FeedbackItemProfile, CachedFeedbackItemProfile> cachedFeedbackItemProfileEntry;
-
-         while (cachedFeedbackItemProfilesIterator.hasNext())
-         {
-            cachedFeedbackItemProfileEntry = cachedFeedbackItemProfilesIterator.next();
-
-            if ((cachedFeedbackItemProfileEntry.getKey().getFeedbackCategory() == feedbackCategory) &&
-                (cachedFeedbackItemProfileEntry.getValue().creationTime < snapshotCreationTime) &&
-                (! feedbackCategoryItemProfiles.contains(cachedFeedbackItemProfileEntry.getKey())))
-               cachedFeedbackItemProfilesIterator.remove();
-         }
-      }
-
-
       /****************************************************************************
        *
        ***************************************************************************/
@@ -507,30 +605,27 @@ final public class FeedbackManager
 
       private boolean isHousekeepingStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
-      private void start()
+      private void start(final HousekeepingScheduler housekeepingScheduler)
       {
          if (isHousekeepingStarted())
             throw new IllegalStateException("Housekeeping task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
-
-         executor.scheduleAtFixedRate(this, 0, HousekeepingTaskFrequencyMilliseconds, TimeUnit.MILLISECONDS);
+         this.housekeepingScheduler = housekeepingScheduler;
+         registration = housekeepingScheduler.register("Feedback item profile merging", this, 0, HousekeepingTaskFrequencyMilliseconds);
       }
 
 
       private void shutdown() throws InterruptedException
       {
-         if (executor != null)
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+            housekeepingScheduler = null;
          }
       }
    }
@@ -543,19 +638,51 @@ final public class FeedbackManager
     ***************************************************************************/
 
 
-   private FeedbackItemProfile cacheFeedbackItemProfile(final FeedbackItemProfile feedbackItemProfile)
+   private FeedbackItemProfile acquireCachedFeedbackItemProfile(final FeedbackItemProfile feedbackItemProfile)
    {
-      CachedFeedbackItemProfile cachedFeedbackItemProfile = cachedFeedbackItemProfiles.get(feedbackItemProfile);
-
-      if (cachedFeedbackItemProfile == null)
+      for (;;)
       {
-         cachedFeedbackItemProfile = new CachedFeedbackItemProfile(feedbackItemProfile, TimeCache.getCurrentTimeMilliseconds());
-         final CachedFeedbackItemProfile existingFeedbackItemProfile = cachedFeedbackItemProfiles.putIfAbsent(feedbackItemProfile, cachedFeedbackItemProfile);
-         if (existingFeedbackItemProfile != null)
-            cachedFeedbackItemProfile = existingFeedbackItemProfile;
+         CachedFeedbackItemProfile cachedFeedbackItemProfile = cachedFeedbackItemProfiles.get(feedbackItemProfile);
+
+         if (cachedFeedbackItemProfile == null)
+         {
+            cachedFeedbackItemProfile = new CachedFeedbackItemProfile(feedbackItemProfile);
+
+            // No need to place a synchronized block here to initialise the new object's non-final fields; their default values are as they need to be.
+
+            final CachedFeedbackItemProfile existingFeedbackItemProfile = cachedFeedbackItemProfiles.putIfAbsent(feedbackItemProfile, cachedFeedbackItemProfile);
+            if (existingFeedbackItemProfile != null)
+               cachedFeedbackItemProfile = existingFeedbackItemProfile;
+         }
+
+         synchronized (cachedFeedbackItemProfile)
+         {
+            // If the last reference was dropped between the lookup and grabbing the lock, the entry has been ditched so try again.
+            if (! cachedFeedbackItemProfile.isRemoved)
+            {
+               cachedFeedbackItemProfile.referenceCount ++;
+               return cachedFeedbackItemProfile.itemProfile;
+            }
+         }
       }
+   }
+
 
-      return cachedFeedbackItemProfile.itemProfile;
+   private void releaseCachedFeedbackItemProfile(final FeedbackItemProfile cachedItemProfile)
+   {
+      // The profile must be the cached instance previously returned by acquireCachedFeedbackItemProfile(), so its entry must still be present.
+      final CachedFeedbackItemProfile cachedFeedbackItemProfile = cachedFeedbackItemProfiles.get(cachedItemProfile);
+
+      synchronized (cachedFeedbackItemProfile)
+      {
+         cachedFeedbackItemProfile.referenceCount --;
+
+         if (cachedFeedbackItemProfile.referenceCount == 0)
+         {
+            cachedFeedbackItemProfile.isRemoved = true;
+            cachedFeedbackItemProfiles.remove(cachedItemProfile, cachedFeedbackItemProfile);
+         }
+      }
    }
 
 
@@ -564,7 +691,7 @@ final public class FeedbackManager
     ***************************************************************************/
 
 
-   private ItemProfileFeedbackSubmission handleAddFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItemProfile itemProfile, final FeedbackSubmission feedbackSubmission)
+   private FeedbackSubmissionUpdate handleAddFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItemProfile itemProfile, final FeedbackSubmission feedbackSubmission)
    {
       synchronized (userAccount)
       {
@@ -581,14 +708,21 @@ final public class FeedbackManager
          else if ((userFeedbackSubmissions.size() >= MaximumFeedbackSubmissionsPerUserAccount) && (! userFeedbackSubmissions.containsKey(itemProfile.getItem())))
             return null;
 
-         final FeedbackItemProfile cachedFeedbackItemProfile = cacheFeedbackItemProfile(itemProfile);
+         final FeedbackItemProfile cachedFeedbackItemProfile = acquireCachedFeedbackItemProfile(itemProfile);
          final FeedbackItem cachedFeedbackItem = cachedFeedbackItemProfile.getItem();
 
          final FeedbackCategoryManager categoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(cachedFeedbackItem.getFeedbackCategory()).getCategoryManager();
          final ItemProfileFeedbackSubmission newSubmission = categoryManager.createItemProfileFeedbackSubmission(cachedFeedbackItemProfile, feedbackSubmission, TimeCache.getCurrentTimeMilliseconds());
-         userFeedbackSubmissions.put(cachedFeedbackItem, newSubmission);
+         final ItemProfileFeedbackSubmission previousSubmission = userFeedbackSubmissions.put(cachedFeedbackItem, newSubmission);
+
+         dirtyFeedbackItems.add(cachedFeedbackItem);
+         dirtyFeedbackAccounts.add(userAccount);
 
-         return newSubmission;
+         // The new profile reference has already been taken, so releasing the previous one can't needlessly evict a profile that's being resubmitted.
+         if (previousSubmission != null)
+            releaseCachedFeedbackItemProfile(previousSubmission.getItemProfile());
+
+         return new FeedbackSubmissionUpdate(previousSubmission, newSubmission, journalAddFeedbackSubmission(userAccount, categoryManager, newSubmission));
       }
    }
 
@@ -612,7 +746,7 @@ final public class FeedbackManager
    }
 
 
-   private boolean handleRemoveFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItem item)
+   private FeedbackSubmissionUpdate handleRemoveFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItem item)
    {
       synchronized (userAccount)
       {
@@ -620,16 +754,22 @@ final public class FeedbackManager
 
          if (userFeedbackSubmissions != null)
          {
-            if (userFeedbackSubmissions.remove(item) != null)
+            final ItemProfileFeedbackSubmission removedSubmission = userFeedbackSubmissions.remove(item);
+
+            if (removedSubmission != null)
             {
+               releaseCachedFeedbackItemProfile(removedSubmission.getItemProfile());
+               dirtyFeedbackItems.add(item);
+               dirtyFeedbackAccounts.add(userAccount);
+
                if (userFeedbackSubmissions.isEmpty())
                   feedbackByUserAccount.remove(userAccount);
 
-               return true;
+               return new FeedbackSubmissionUpdate(removedSubmission, null, journalRemoveFeedbackSubmission(userAccount, item));
             }
          }
 
-         return false;
+         return null;
       }
    }
 
@@ -648,6 +788,155 @@ final public class FeedbackManager
    }
 
 
+   private void handleVisitWebsiteFeedbackSubmissions(final FeedbackWebsite website, final ItemProfileFeedbackSubmissionVisitor visitor)
+   {
+      /* Each user account is locked in turn while its submissions are visited, so that the visitor sees each account's submissions in a state that's
+       * consistent with the feedback category manager's records.
+       * Submissions added for other accounts while the visit is in progress may or may not be visited; it's up to the caller to account for this.
+       */
+      for (final Entry<FeedbactoryUserAccount, Map<FeedbackItem, ItemProfileFeedbackSubmission>> accountFeedbackEntry : feedbackByUserAccount.entrySet())
+      {
+         final FeedbactoryUserAccount account = accountFeedbackEntry.getKey();
+
+         synchronized (account)
+         {
+            for (final ItemProfileFeedbackSubmission feedbackSubmission : accountFeedbackEntry.getValue().values())
+            {
+               if (feedbackSubmission.getItemProfile().getItem().getWebsite() == website)
+                  visitor.visit(account, feedbackSubmission);
+            }
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // Caller must be sync'd on the user account.
+   private long journalAddFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackCategoryManager categoryManager,
+                                             final ItemProfileFeedbackSubmission submission)
+   {
+      final ByteArrayOutputStream recordByteStream = new ByteArrayOutputStream(256);
+      final DataOutputStream recordStream = new DataOutputStream(recordByteStream);
+
+      try
+      {
+         recordStream.writeByte(AddSubmissionJournalRecordType);
+         recordStream.writeInt(userAccount.getID().intValue());
+         recordStream.writeShort(submission.getItemProfile().getFeedbackCategory().value);
+
+         categoryManager.writeFeedbackItemProfile(submission.getItemProfile(), recordStream);
+         categoryManager.writeFeedbackSubmission(submission.getFeedbackSubmission(), recordStream);
+         recordStream.writeLong(submission.getSubmissionTime());
+      }
+      catch (final IOException ioException)
+      {
+         // Not possible when writing to an in-memory stream.
+         throw new RuntimeException(ioException);
+      }
+
+      return journal.append(WriteAheadJournal.RecordSource.Feedback, recordByteStream.toByteArray());
+   }
+
+
+   // Caller must be sync'd on the user account.
+   private long journalRemoveFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItem item)
+   {
+      final ByteArrayOutputStream recordByteStream = new ByteArrayOutputStream(128);
+      final DataOutputStream recordStream = new DataOutputStream(recordByteStream);
+
+      try
+      {
+         recordStream.writeByte(RemoveSubmissionJournalRecordType);
+         recordStream.writeInt(userAccount.getID().intValue());
+         recordStream.writeShort(item.getFeedbackCategory().value);
+
+         feedbackCategoryRegistry.getFeedbackCategoryHandler(item.getFeedbackCategory()).getCategoryManager().writeFeedbackItem(item, recordStream);
+      }
+      catch (final IOException ioException)
+      {
+         // Not possible when writing to an in-memory stream.
+         throw new RuntimeException(ioException);
+      }
+
+      return journal.append(WriteAheadJournal.RecordSource.Feedback, recordByteStream.toByteArray());
+   }
+
+
+   private void replayJournalledFeedback(final DataInputStream recordStream) throws IOException
+   {
+      final byte recordType = recordStream.readByte();
+      final int userAccountID = recordStream.readInt();
+
+      final short feedbackCategoryValue = recordStream.readShort();
+      final FeedbackCategory feedbackCategory = FeedbackCategory.fromValue(feedbackCategoryValue);
+      if (feedbackCategory == null)
+         throw new IllegalArgumentException("Invalid feedback category value: " + feedbackCategoryValue);
+
+      final FeedbackCategoryManager feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackCategory).getCategoryManager();
+
+      // The account may have since been expired by the housekeeping, in which case its feedback is no longer relevant.
+      final FeedbactoryUserAccount userAccount = userAccountManager.getAccountByID(userAccountID);
+      if (userAccount == null)
+         return;
+
+      synchronized (userAccount)
+      {
+         Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback = feedbackByUserAccount.get(userAccount);
+
+         if (recordType == AddSubmissionJournalRecordType)
+         {
+            final FeedbackItemProfile itemProfile = acquireCachedFeedbackItemProfile(feedbackCategoryManager.readFeedbackItemProfile(recordStream));
+            final FeedbackSubmission feedbackSubmission = feedbackCategoryManager.readFeedbackSubmission(itemProfile.getItem(), recordStream);
+            final long submissionTime = recordStream.readLong();
+
+            if (userAccountFeedback == null)
+            {
+               userAccountFeedback = new HashMap<>(1);
+               feedbackByUserAccount.put(userAccount, userAccountFeedback);
+            }
+
+            final ItemProfileFeedbackSubmission replayedSubmission = feedbackCategoryManager.createItemProfileFeedbackSubmission(itemProfile, feedbackSubmission, submissionTime);
+            final ItemProfileFeedbackSubmission previousSubmission = userAccountFeedback.put(itemProfile.getItem(), replayedSubmission);
+
+            if (previousSubmission != null)
+               releaseCachedFeedbackItemProfile(previousSubmission.getItemProfile());
+
+            dirtyFeedbackItems.add(itemProfile.getItem());
+
+            // A record written while the checkpoint was being saved may already be reflected by the restored submission.
+            if ((previousSubmission == null) || (previousSubmission.getSubmissionTime() != submissionTime) || (! previousSubmission.getFeedbackSubmission().equals(feedbackSubmission)))
+               feedbackCategoryManager.replayFeedbackSubmissionChange(itemProfile.getItem(), previousSubmission, replayedSubmission);
+         }
+         else if (recordType == RemoveSubmissionJournalRecordType)
+         {
+            final FeedbackItem item = feedbackCategoryManager.readFeedbackItem(recordStream);
+
+            if (userAccountFeedback != null)
+            {
+               final ItemProfileFeedbackSubmission removedSubmission = userAccountFeedback.remove(item);
+
+               if (removedSubmission != null)
+               {
+                  releaseCachedFeedbackItemProfile(removedSubmission.getItemProfile());
+                  dirtyFeedbackItems.add(item);
+
+                  if (userAccountFeedback.isEmpty())
+                     feedbackByUserAccount.remove(userAccount);
+
+                  feedbackCategoryManager.replayFeedbackSubmissionChange(item, removedSubmission, null);
+               }
+            }
+         }
+         else
+            throw new IllegalArgumentException("Invalid feedback journal record type: " + recordType);
+      }
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -676,6 +965,17 @@ final public class FeedbackManager
    }
 
 
+   // The feedback category managers have no notion of a delta checkpoint, and will save their data in full.
+   private void handleSaveDeltaCheckpoint(final Path checkpointPath) throws IOException
+   {
+      feedbackCategoryPreCheckpointSave(checkpointPath);
+
+      saveFeedbackManagerDeltaCheckpointData(checkpointPath);
+
+      feedbackCategoryPostCheckpointSave(checkpointPath);
+   }
+
+
    private void feedbackCategoryPreCheckpointSave(final Path checkpointPath) throws IOException
    {
       for (final FeedbackCategoryHandler handler : feedbackCategoryRegistry.getRegisteredHandlers())
@@ -683,43 +983,162 @@ final public class FeedbackManager
    }
 
 
+   /* The feedback is sharded by user account ID and each shard is serialised on its own worker thread. The accounts are partitioned up front so that each
+    * worker has only its own accounts to iterate over.
+    *
+    * Each submission refers to its item profile by an ID rather than having the profile written inline, and the profiles are written once each to a
+    * separate table after the shards. A popular item's profile is otherwise written out again for every one of its submissions.
+    */
    private void saveFeedbackManagerCheckpointData(final Path checkpointPath) throws IOException
    {
-      final File feedbackDataFile = checkpointPath.resolve(FeedbackDataFilename).toFile();
+      final int shardCount = ShardedCheckpointFile.DefaultShardCount;
+      final ItemProfileTableWriter itemProfileTable = new ItemProfileTableWriter(cachedFeedbackItemProfiles.size());
+
+      final List<List<FeedbactoryUserAccount>> userAccountShards = new ArrayList<>(shardCount);
+      for (int shardNumber = 0; shardNumber < shardCount; shardNumber ++)
+         userAccountShards.add(new ArrayList<FeedbactoryUserAccount>(feedbackByUserAccount.size() / shardCount));
+
+      for (final FeedbactoryUserAccount userAccount : feedbackByUserAccount.keySet())
+         userAccountShards.get(ShardedCheckpointFile.getShardNumber(userAccount.getID().intValue(), shardCount)).add(userAccount);
+
+      new ShardedCheckpointFile(checkpointPath, FeedbackDataBaseFilename).write(shardCount, new ShardedCheckpointFile.ShardWriter()
+      {
+         @Override
+         final public void writeShard(final int shardNumber, final DataOutputStream feedbackDataStream) throws IOException
+         {
+            final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+            DataOutputStream recordStream;
+            Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback;
+
+            for (final FeedbactoryUserAccount userAccount : userAccountShards.get(shardNumber))
+            {
+               synchronized (userAccount)
+               {
+                  // The account's feedback may have all been removed since the partitioning.
+                  userAccountFeedback = feedbackByUserAccount.get(userAccount);
+                  if (userAccountFeedback == null)
+                     continue;
+
+                  recordStream = recordBuffer.startRecord();
+                  recordStream.writeInt(userAccount.getID().intValue());
+                  writeUserAccountFeedback(userAccountFeedback, itemProfileTable, recordStream);
+               }
+
+               recordBuffer.writeRecord(feedbackDataStream);
+            }
+
+            // Finalise the output with a -1 for the EOF, which is an invalid user account ID.
+            feedbackDataStream.writeInt(-1);
+         }
+      });
+
+      saveFeedbackItemProfileTable(checkpointPath, itemProfileTable);
+   }
+
+
+   /* The table is written once the shards are complete, since the IDs are only assigned as the shards are written. The table length is written first
+    * so that the restore can allocate its lookup array up front.
+    */
+   private void saveFeedbackItemProfileTable(final Path checkpointPath, final ItemProfileTableWriter itemProfileTable) throws IOException
+   {
+      final File itemProfileTableFile = checkpointPath.resolve(FeedbackItemProfileTableFilename).toFile();
 
       try
       (
-         final DataOutputStream feedbackDataStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(feedbackDataFile)));
+         final DataOutputStream itemProfileTableStream = CheckpointFileFormat.openOutput(itemProfileTableFile);
       )
       {
-         Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback;
-         FeedbackCategory targetServiceCategory;
-         FeedbackCategoryManager targetServiceCategoryManager;
+         FeedbackCategory feedbackCategory;
+
+         itemProfileTableStream.writeInt(itemProfileTable.nextItemProfileID.get());
 
-         for (final Entry<FeedbactoryUserAccount, Map<FeedbackItem, ItemProfileFeedbackSubmission>> feedbackByUserAccountEntry : feedbackByUserAccount.entrySet())
+         for (final Entry<FeedbackItemProfile, Integer> itemProfileEntry : itemProfileTable.itemProfileIDs.entrySet())
          {
-            synchronized (feedbackByUserAccountEntry.getKey())
-            {
-               userAccountFeedback = feedbackByUserAccountEntry.getValue();
+            itemProfileTableStream.writeInt(itemProfileEntry.getValue().intValue());
 
-               feedbackDataStream.writeInt(feedbackByUserAccountEntry.getKey().getID().intValue());
-               feedbackDataStream.writeInt(userAccountFeedback.size());
+            feedbackCategory = itemProfileEntry.getKey().getFeedbackCategory();
+            itemProfileTableStream.writeShort(feedbackCategory.value);
+            feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackCategory).getCategoryManager().writeFeedbackItemProfile(itemProfileEntry.getKey(), itemProfileTableStream);
+         }
 
-               for (final ItemProfileFeedbackSubmission userAccountFeedbackSubmission : userAccountFeedback.values())
-               {
-                  targetServiceCategory = userAccountFeedbackSubmission.getItemProfile().getFeedbackCategory();
-                  feedbackDataStream.writeShort(targetServiceCategory.value);
+         // Finalise the output with a -1 for the EOF, which is an invalid item profile ID.
+         itemProfileTableStream.writeInt(-1);
+      }
+   }
 
-                  targetServiceCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(targetServiceCategory).getCategoryManager();
 
-                  targetServiceCategoryManager.writeFeedbackItemProfile(userAccountFeedbackSubmission.getItemProfile(), feedbackDataStream);
-                  targetServiceCategoryManager.writeFeedbackSubmission(userAccountFeedbackSubmission.getFeedbackSubmission(), feedbackDataStream);
-                  feedbackDataStream.writeLong(userAccountFeedbackSubmission.getSubmissionTime());
-               }
+   /* Caller must be sync'd on the user account.
+    * The item profiles are written inline when no profile table is supplied, as for the delta checkpoints.
+    */
+   private void writeUserAccountFeedback(final Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback, final ItemProfileTableWriter itemProfileTable,
+                                         final DataOutputStream feedbackDataStream) throws IOException
+   {
+      FeedbackCategory targetServiceCategory;
+      FeedbackCategoryManager targetServiceCategoryManager;
+
+      feedbackDataStream.writeInt(userAccountFeedback.size());
+
+      for (final ItemProfileFeedbackSubmission userAccountFeedbackSubmission : userAccountFeedback.values())
+      {
+         targetServiceCategory = userAccountFeedbackSubmission.getItemProfile().getFeedbackCategory();
+         targetServiceCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(targetServiceCategory).getCategoryManager();
+
+         // The profile's category implies the category of the submission, so it doesn't need to be written separately when referring to the table.
+         if (itemProfileTable != null)
+            feedbackDataStream.writeInt(itemProfileTable.getItemProfileID(userAccountFeedbackSubmission.getItemProfile()));
+         else
+         {
+            feedbackDataStream.writeShort(targetServiceCategory.value);
+            targetServiceCategoryManager.writeFeedbackItemProfile(userAccountFeedbackSubmission.getItemProfile(), feedbackDataStream);
+         }
+
+         targetServiceCategoryManager.writeFeedbackSubmission(userAccountFeedbackSubmission.getFeedbackSubmission(), feedbackDataStream);
+         feedbackDataStream.writeLong(userAccountFeedbackSubmission.getSubmissionTime());
+      }
+   }
+
+
+   /* Each account is removed from the dirty set just before it's locked & written, so any change racing with this process will either be written here
+    * or leave the account flagged for the next delta.
+    */
+   private void saveFeedbackManagerDeltaCheckpointData(final Path checkpointPath) throws IOException
+   {
+      final File feedbackDataDeltaFile = checkpointPath.resolve(FeedbackDataDeltaFilename).toFile();
+
+      try
+      (
+         final DataOutputStream feedbackDataStream = CheckpointFileFormat.openOutput(feedbackDataDeltaFile);
+      )
+      {
+         final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+         DataOutputStream recordStream;
+
+         final Iterator<FeedbactoryUserAccount> dirtyFeedbackAccountsIterator = dirtyFeedbackAccounts.iterator();
+         FeedbactoryUserAccount userAccount;
+         Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback;
+
+         while (dirtyFeedbackAccountsIterator.hasNext())
+         {
+            userAccount = dirtyFeedbackAccountsIterator.next();
+            dirtyFeedbackAccountsIterator.remove();
+
+            synchronized (userAccount)
+            {
+               recordStream = recordBuffer.startRecord();
+               recordStream.writeInt(userAccount.getID().intValue());
+
+               userAccountFeedback = feedbackByUserAccount.get(userAccount);
+
+               // A count of zero submissions is the tombstone for an account whose feedback has all been removed.
+               if (userAccountFeedback != null)
+                  writeUserAccountFeedback(userAccountFeedback, null, recordStream);
+               else
+                  recordStream.writeInt(0);
             }
+
+            recordBuffer.writeRecord(feedbackDataStream);
          }
 
-         // Finalise the output with a -1 for the EOF, which is an invalid user account ID.
          feedbackDataStream.writeInt(-1);
       }
    }
@@ -732,15 +1151,46 @@ final public class FeedbackManager
    }
 
 
-   private void handleRestoreFromCheckpoint(final Path checkpointPath) throws IOException
+   /* The first element of the checkpoint chain is a full checkpoint and any following elements are delta checkpoints, in the order that they were saved.
+    * The feedback category managers save their data in full for every checkpoint, so are restored from the most recent.
+    */
+   private void handleRestoreFromCheckpoint(final List<Path> checkpointChain, final JournalTail journalTail) throws IOException
    {
+      final Path latestCheckpointPath = checkpointChain.get(checkpointChain.size() - 1);
+
       clearFeedbackCategoryCheckpointData();
 
-      feedbackCategoryPreCheckpointRestore(checkpointPath);
+      feedbackCategoryPreCheckpointRestore(latestCheckpointPath);
+
+      restoreFeedbackManagerCheckpointData(checkpointChain.get(0));
+
+      for (final Path deltaCheckpointPath : checkpointChain.subList(1, checkpointChain.size()))
+         restoreFeedbackManagerDeltaCheckpointData(deltaCheckpointPath);
 
-      restoreFeedbackManagerCheckpointData(checkpointPath);
+      journalTail.replay(WriteAheadJournal.RecordSource.Feedback, new WriteAheadJournal.JournalRecordReplayer()
+      {
+         @Override
+         final public void replayRecord(final DataInputStream recordStream) throws IOException
+         {
+            replayJournalledFeedback(recordStream);
+         }
+      });
 
-      feedbackCategoryPostCheckpointRestore(checkpointPath);
+      restoreFeedbackCategorySubmissions();
+
+      feedbackCategoryPostCheckpointRestore(latestCheckpointPath);
+   }
+
+
+   /* Hands the current parent records to the feedback category managers afresh, as per the final steps of a checkpoint restore. This is used when a standby
+    * server is promoted, since the journal records streamed to the standby are only applied to the parent records. The category managers' own checkpoint
+    * data isn't reloaded, since it was restored when the standby was bootstrapped and has since been kept up to date via replayFeedbackSubmissionChange().
+    */
+   private void handleRebuildFeedbackCategoryData() throws IOException
+   {
+      clearFeedbackCategoryCheckpointData();
+
+      restoreFeedbackCategorySubmissions();
    }
 
 
@@ -762,62 +1212,281 @@ final public class FeedbackManager
    {
       feedbackByUserAccount.clear();
       cachedFeedbackItemProfiles.clear();
+      dirtyFeedbackItems.clear();
+      dirtyFeedbackAccounts.clear();
+
+      // Checkpoints saved before the item profile table was introduced have each submission's item profile written inline.
+      final File itemProfileTableFile = checkpointPath.resolve(FeedbackItemProfileTableFilename).toFile();
+      final ItemProfileTableReader itemProfileTable = itemProfileTableFile.exists() ? restoreFeedbackItemProfileTable(itemProfileTableFile) : null;
+
+      /* The shards are decoded concurrently. Each user account's feedback is within the one shard, and both the profile cache and the dirty items set are
+       * safe for concurrent access, so each shard worker can merge its accounts' feedback straight into the shared collection.
+       */
+      new ShardedCheckpointFile(checkpointPath, FeedbackDataBaseFilename).read(new ShardedCheckpointFile.ShardReader()
+      {
+         @Override
+         final public void readShard(final int shardNumber, final DataInput feedbackDataStream) throws IOException
+         {
+            int userAccountID;
+            FeedbactoryUserAccount userAccount;
+            Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback;
 
-      final File feedbackDataFile = checkpointPath.resolve(FeedbackDataFilename).toFile();
+            while ((userAccountID = feedbackDataStream.readInt()) != -1)
+            {
+               userAccount = userAccountManager.getAccountByID(userAccountID);
+
+               // Ensure the visibility of the feedback data to subsequent threads. Also will throw an exception if there is no such user account.
+               synchronized (userAccount)
+               {
+                  userAccountFeedback = readUserAccountFeedback(feedbackDataStream, itemProfileTable);
+               }
+
+               feedbackByUserAccount.put(userAccount, userAccountFeedback);
+            }
+         }
+      });
 
+      if (itemProfileTable != null)
+         applyFeedbackItemProfileTableReferenceCounts(itemProfileTable);
+   }
+
+
+   /* The profiles are placed straight into the emptied cache, each being distinct from the others in the table. Their reference counts are left at
+    * zero until the shards have been read.
+    */
+   private ItemProfileTableReader restoreFeedbackItemProfileTable(final File itemProfileTableFile) throws IOException
+   {
       try
       (
-         final DataInputStream feedbackDataStream = new DataInputStream(new BufferedInputStream(new FileInputStream(feedbackDataFile)));
+         final DataInputStream itemProfileTableStream = CheckpointFileFormat.openInput(itemProfileTableFile);
       )
       {
-         int userAccountID;
-         FeedbactoryUserAccount userAccount;
-         int numberOfUserAccountSubmissions;
-         Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback;
+         final ItemProfileTableReader itemProfileTable = new ItemProfileTableReader(itemProfileTableStream.readInt());
+
+         int itemProfileID;
          short feedbackCategoryValue;
          FeedbackCategory feedbackCategory;
-         FeedbackCategoryManager feedbackCategoryManager;
          FeedbackItemProfile itemProfile;
-         FeedbackSubmission feedbackSubmission;
-         long submissionTime;
-         ItemProfileFeedbackSubmission restoredItemProfileFeedbackSubmission;
+         CachedFeedbackItemProfile cachedFeedbackItemProfile;
+
+         while ((itemProfileID = itemProfileTableStream.readInt()) != -1)
+         {
+            if ((itemProfileID < 0) || (itemProfileID >= itemProfileTable.cachedItemProfiles.length))
+               throw new IllegalArgumentException("Invalid feedback item profile ID: " + itemProfileID);
+
+            feedbackCategoryValue = itemProfileTableStream.readShort();
+            feedbackCategory = FeedbackCategory.fromValue(feedbackCategoryValue);
+            if (feedbackCategory == null)
+               throw new IllegalArgumentException("Invalid feedback category value: " + feedbackCategoryValue);
+
+            itemProfile = feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackCategory).getCategoryManager().readFeedbackItemProfile(itemProfileTableStream);
+
+            cachedFeedbackItemProfile = new CachedFeedbackItemProfile(itemProfile);
+            cachedFeedbackItemProfiles.put(itemProfile, cachedFeedbackItemProfile);
+            itemProfileTable.cachedItemProfiles[itemProfileID] = cachedFeedbackItemProfile;
+         }
+
+         return itemProfileTable;
+      }
+   }
+
+
+   private void applyFeedbackItemProfileTableReferenceCounts(final ItemProfileTableReader itemProfileTable)
+   {
+      CachedFeedbackItemProfile cachedFeedbackItemProfile;
+
+      for (int itemProfileID = 0; itemProfileID < itemProfileTable.cachedItemProfiles.length; itemProfileID ++)
+      {
+         cachedFeedbackItemProfile = itemProfileTable.cachedItemProfiles[itemProfileID];
+         if (cachedFeedbackItemProfile == null)
+            continue;
+
+         synchronized (cachedFeedbackItemProfile)
+         {
+            cachedFeedbackItemProfile.referenceCount = itemProfileTable.referenceCounts.get(itemProfileID);
+
+            // Shouldn't happen since the save only assigns IDs to referenced profiles, but an unreferenced profile mustn't be left stranded in the cache.
+            if (cachedFeedbackItemProfile.referenceCount == 0)
+            {
+               cachedFeedbackItemProfile.isRemoved = true;
+               cachedFeedbackItemProfiles.remove(cachedFeedbackItemProfile.itemProfile, cachedFeedbackItemProfile);
+            }
+         }
+      }
+   }
+
+
+   /* The item profiles of the returned submissions have been acquired from the cache, and their items marked as dirty.
+    * The item profiles are read inline when no profile table is supplied, as for the delta checkpoints.
+    */
+   private Map<FeedbackItem, ItemProfileFeedbackSubmission> readUserAccountFeedback(final DataInput feedbackDataStream, final ItemProfileTableReader itemProfileTable) throws IOException
+   {
+      final int numberOfUserAccountSubmissions = feedbackDataStream.readInt();
+      final Map<FeedbackItem, ItemProfileFeedbackSubmission> userAccountFeedback = new HashMap<>(numberOfUserAccountSubmissions);
+
+      short feedbackCategoryValue;
+      FeedbackCategory feedbackCategory;
+      FeedbackCategoryManager feedbackCategoryManager;
+      FeedbackItemProfile itemProfile;
+      FeedbackSubmission feedbackSubmission;
+      long submissionTime;
+      ItemProfileFeedbackSubmission restoredItemProfileFeedbackSubmission;
+
+      for (int submissionIndex = 0; submissionIndex < numberOfUserAccountSubmissions; submissionIndex ++)
+      {
+         if (itemProfileTable != null)
+         {
+            itemProfile = itemProfileTable.acquireItemProfile(feedbackDataStream.readInt());
+            feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(itemProfile.getFeedbackCategory()).getCategoryManager();
+         }
+         else
+         {
+            feedbackCategoryValue = feedbackDataStream.readShort();
+            feedbackCategory = FeedbackCategory.fromValue(feedbackCategoryValue);
+            if (feedbackCategory == null)
+               throw new IllegalArgumentException("Invalid feedback category value: " + feedbackCategoryValue);
+
+            feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackCategory).getCategoryManager();
+
+            itemProfile = feedbackCategoryManager.readFeedbackItemProfile(feedbackDataStream);
+            itemProfile = acquireCachedFeedbackItemProfile(itemProfile);
+         }
+
+         feedbackSubmission = feedbackCategoryManager.readFeedbackSubmission(itemProfile.getItem(), feedbackDataStream);
+         submissionTime = feedbackDataStream.readLong();
+
+         restoredItemProfileFeedbackSubmission = feedbackCategoryManager.createItemProfileFeedbackSubmission(itemProfile, feedbackSubmission, submissionTime);
+
+         userAccountFeedback.put(itemProfile.getItem(), restoredItemProfileFeedbackSubmission);
+         dirtyFeedbackItems.add(itemProfile.getItem());
+      }
+
+      return userAccountFeedback;
+   }
+
+
+   private void restoreFeedbackManagerDeltaCheckpointData(final Path checkpointPath) throws IOException
+   {
+      final File feedbackDataDeltaFile = checkpointPath.resolve(FeedbackDataDeltaFilename).toFile();
+
+      try
+      (
+         final DataInputStream feedbackDataStream = CheckpointFileFormat.openInput(feedbackDataDeltaFile);
+      )
+      {
+         int userAccountID;
+         FeedbactoryUserAccount userAccount;
+         Map<FeedbackItem, ItemProfileFeedbackSubmission> restoredUserAccountFeedback;
+         Map<FeedbackItem, ItemProfileFeedbackSubmission> previousUserAccountFeedback;
 
          while ((userAccountID = feedbackDataStream.readInt()) != -1)
          {
             userAccount = userAccountManager.getAccountByID(userAccountID);
 
-            // Ensure the visibility of the feedback data to subsequent threads. Also will throw an exception if there is no such user account.
+            if (userAccount == null)
+            {
+               // The account may have been expired by a later account delta; its feedback must still be read past, and the profile references dropped.
+               for (final ItemProfileFeedbackSubmission orphanedSubmission : readUserAccountFeedback(feedbackDataStream, null).values())
+                  releaseCachedFeedbackItemProfile(orphanedSubmission.getItemProfile());
+
+               continue;
+            }
+
             synchronized (userAccount)
             {
-               numberOfUserAccountSubmissions = feedbackDataStream.readInt();
-               userAccountFeedback = new HashMap<>(numberOfUserAccountSubmissions);
+               // The restored profiles are acquired before the previous ones are released, so that profiles common to both are never evicted.
+               restoredUserAccountFeedback = readUserAccountFeedback(feedbackDataStream, null);
+               previousUserAccountFeedback = feedbackByUserAccount.get(userAccount);
 
-               for (int submissionIndex = 0; submissionIndex < numberOfUserAccountSubmissions; submissionIndex ++)
+               if (previousUserAccountFeedback != null)
                {
-                  feedbackCategoryValue = feedbackDataStream.readShort();
-                  feedbackCategory = FeedbackCategory.fromValue(feedbackCategoryValue);
-                  if (feedbackCategory == null)
-                     throw new IllegalArgumentException("Invalid feedback category value: " + feedbackCategoryValue);
+                  for (final ItemProfileFeedbackSubmission previousSubmission : previousUserAccountFeedback.values())
+                  {
+                     releaseCachedFeedbackItemProfile(previousSubmission.getItemProfile());
+                     dirtyFeedbackItems.add(previousSubmission.getItemProfile().getItem());
+                  }
+               }
 
-                  feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(feedbackCategory).getCategoryManager();
+               if (restoredUserAccountFeedback.isEmpty())
+                  feedbackByUserAccount.remove(userAccount);
+               else
+                  feedbackByUserAccount.put(userAccount, restoredUserAccountFeedback);
+            }
+         }
+      }
+   }
 
-                  itemProfile = feedbackCategoryManager.readFeedbackItemProfile(feedbackDataStream);
-                  itemProfile = cacheFeedbackItemProfile(itemProfile);
 
-                  feedbackSubmission = feedbackCategoryManager.readFeedbackSubmission(itemProfile.getItem(), feedbackDataStream);
-                  submissionTime = feedbackDataStream.readLong();
+   /* Rather than handing each restored submission to the feedback category managers one at a time, the submissions are first grouped by item so that
+    * each category manager can build its record & summary for an item in one go. The items are then split into groups which are handed to the
+    * category managers concurrently; each item is only ever handed over once.
+    */
+   private void restoreFeedbackCategorySubmissions() throws IOException
+   {
+      final Map<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>> restoredSubmissionsByItem = new HashMap<>(cachedFeedbackItemProfiles.size());
 
-                  restoredItemProfileFeedbackSubmission = feedbackCategoryManager.createItemProfileFeedbackSubmission(itemProfile, feedbackSubmission, submissionTime);
+      FeedbactoryUserAccount userAccount;
+      FeedbackItem item;
+      Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> itemSubmissions;
 
-                  userAccountFeedback.put(itemProfile.getItem(), restoredItemProfileFeedbackSubmission);
+      for (final Entry<FeedbactoryUserAccount, Map<FeedbackItem, ItemProfileFeedbackSubmission>> feedbackByUserAccountEntry : feedbackByUserAccount.entrySet())
+      {
+         userAccount = feedbackByUserAccountEntry.getKey();
 
-                  feedbackCategoryManager.restoreItemFeedbackSubmission(userAccount, restoredItemProfileFeedbackSubmission);
+         synchronized (userAccount)
+         {
+            for (final ItemProfileFeedbackSubmission restoredItemProfileFeedbackSubmission : feedbackByUserAccountEntry.getValue().values())
+            {
+               item = restoredItemProfileFeedbackSubmission.getItemProfile().getItem();
+               itemSubmissions = restoredSubmissionsByItem.get(item);
+
+               if (itemSubmissions == null)
+               {
+                  itemSubmissions = new HashMap<>();
+                  restoredSubmissionsByItem.put(item, itemSubmissions);
                }
-            }
 
-            feedbackByUserAccount.put(userAccount, userAccountFeedback);
+               itemSubmissions.put(userAccount, restoredItemProfileFeedbackSubmission);
+            }
          }
       }
+
+      final int taskCount = ShardedCheckpointFile.DefaultShardCount;
+
+      final List<List<Entry<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>>>> itemGroups = new ArrayList<>(taskCount);
+      for (int taskNumber = 0; taskNumber < taskCount; taskNumber ++)
+         itemGroups.add(new ArrayList<Entry<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>>>(restoredSubmissionsByItem.size() / taskCount));
+
+      int itemIndex = 0;
+      for (final Entry<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>> restoredItemSubmissions : restoredSubmissionsByItem.entrySet())
+      {
+         itemGroups.get(itemIndex % taskCount).add(restoredItemSubmissions);
+         itemIndex ++;
+      }
+
+      final List<Callable<Void>> restoreTasks = new ArrayList<>(taskCount);
+
+      for (final List<Entry<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>>> itemGroup : itemGroups)
+      {
+         restoreTasks.add(new Callable<Void>()
+         {
+            @Override
+            final public Void call()
+            {
+               FeedbackCategoryManager feedbackCategoryManager;
+
+               for (final Entry<FeedbackItem, Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission>> restoredItemSubmissions : itemGroup)
+               {
+                  feedbackCategoryManager = feedbackCategoryRegistry.getFeedbackCategoryHandler(restoredItemSubmissions.getKey().getFeedbackCategory()).getCategoryManager();
+                  feedbackCategoryManager.restoreItemFeedbackSubmissions(restoredItemSubmissions.getKey(), restoredItemSubmissions.getValue());
+               }
+
+               return null;
+            }
+         });
+      }
+
+      ShardedCheckpointFile.invokeShardTasks(restoreTasks, "Feedback category restore");
    }
 
 
@@ -828,12 +1497,12 @@ final public class FeedbackManager
    }
 
 
-   private void handleStartHousekeeping()
+   private void handleStartHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      housekeepingTask.start();
+      housekeepingTask.start(housekeepingScheduler);
 
       for (final FeedbackCategoryHandler handler : feedbackCategoryRegistry.getRegisteredHandlers())
-         handler.getCategoryManager().startHousekeeping();
+         handler.getCategoryManager().startHousekeeping(housekeepingScheduler);
    }
 
 
@@ -879,7 +1548,8 @@ final public class FeedbackManager
          registeredFeedbackCategories.add(handler.getCategory());
 
       return new FeedbackManagerMetrics(housekeepingTask.isHousekeepingStarted(), housekeepingTask.lastRunStartTime,
-                                        feedbackSubmissions, spreadOfItems.size(), spreadOfAccounts, numberOfCachedFeedbackItemProfiles, registeredFeedbackCategories);
+                                        feedbackSubmissions, spreadOfItems.size(), spreadOfAccounts, numberOfCachedFeedbackItemProfiles,
+                                        dirtyFeedbackItems.size(), housekeepingTask.lastRunExaminedItems, registeredFeedbackCategories);
    }
 
 
@@ -921,7 +1591,7 @@ final public class FeedbackManager
     ***************************************************************************/
 
 
-   final public ItemProfileFeedbackSubmission addFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItemProfile itemProfile, final FeedbackSubmission feedbackSubmission)
+   final public FeedbackSubmissionUpdate addFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItemProfile itemProfile, final FeedbackSubmission feedbackSubmission)
    {
       return handleAddFeedbackSubmission(userAccount, itemProfile, feedbackSubmission);
    }
@@ -933,12 +1603,24 @@ final public class FeedbackManager
    }
 
 
-   final public boolean removeFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItem item)
+   final public FeedbackSubmissionUpdate removeFeedbackSubmission(final FeedbactoryUserAccount userAccount, final FeedbackItem item)
    {
       return handleRemoveFeedbackSubmission(userAccount, item);
    }
 
 
+   final public void awaitDurable(final FeedbackSubmissionUpdate submissionUpdate)
+   {
+      journal.awaitDurable(submissionUpdate.journalSequenceNumber);
+   }
+
+
+   final public void visitWebsiteFeedbackSubmissions(final FeedbackWebsite website, final ItemProfileFeedbackSubmissionVisitor visitor)
+   {
+      handleVisitWebsiteFeedbackSubmissions(website, visitor);
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -950,15 +1632,40 @@ final public class FeedbackManager
    }
 
 
-   final public void restoreFromCheckpoint(final Path checkpointPath) throws IOException
+   final public void saveDeltaCheckpoint(final Path checkpointPath) throws IOException
+   {
+      handleSaveDeltaCheckpoint(checkpointPath);
+   }
+
+
+   final public void resetDeltaTracking()
+   {
+      dirtyFeedbackAccounts.clear();
+   }
+
+
+   final public void restoreFromCheckpoint(final List<Path> checkpointChain, final JournalTail journalTail) throws IOException
+   {
+      handleRestoreFromCheckpoint(checkpointChain, journalTail);
+   }
+
+
+   // Applies a journal record streamed from the primary server to a standby. Only the parent records are updated, see rebuildFeedbackCategoryData().
+   final public void replayJournalRecord(final DataInputStream recordStream) throws IOException
+   {
+      replayJournalledFeedback(recordStream);
+   }
+
+
+   final public void rebuildFeedbackCategoryData() throws IOException
    {
-      handleRestoreFromCheckpoint(checkpointPath);
+      handleRebuildFeedbackCategoryData();
    }
 
 
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      handleStartHousekeeping();
+      handleStartHousekeeping(housekeepingScheduler);
    }
 
 
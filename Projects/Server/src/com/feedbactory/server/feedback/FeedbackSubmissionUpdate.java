@@ -0,0 +1,19 @@
+package com.feedbactory.server.feedback;
+
+
+final public class FeedbackSubmissionUpdate
+{
+   // The submission replaced or removed by the update, if any.
+   final public ItemProfileFeedbackSubmission previousSubmission;
+   // The newly added submission, or null for a removal.
+   final public ItemProfileFeedbackSubmission newSubmission;
+   final long journalSequenceNumber;
+
+
+   FeedbackSubmissionUpdate(final ItemProfileFeedbackSubmission previousSubmission, final ItemProfileFeedbackSubmission newSubmission, final long journalSequenceNumber)
+   {
+      this.previousSubmission = previousSubmission;
+      this.newSubmission = newSubmission;
+      this.journalSequenceNumber = journalSequenceNumber;
+   }
+}
@@ -0,0 +1,10 @@
+package com.feedbactory.server.feedback;
+
+
+import com.feedbactory.server.useraccount.FeedbactoryUserAccount;
+
+
+public interface ItemProfileFeedbackSubmissionVisitor
+{
+   public void visit(final FeedbactoryUserAccount userAccount, final ItemProfileFeedbackSubmission feedbackSubmission);
+}
@@ -9,6 +9,16 @@
  *   any criteria is less than the visibility threshold, so there's no getting out of calculating that much at least. The good news is that if the average criteria
  *   rating is below the visibility threshold, neither server nor client need calculate anything further.
  *
+ * - The feedback is partitioned by criteria type and then by website, each partition having its own map. This allows the housekeeping and any website-scoped
+ *   operations to touch only the partitions that they need to, and allows the feedback for a disabled website to be dropped from memory entirely and later rebuilt
+ *   from the parent feedback manager's records when the website is re-enabled. Nothing else is lost by dropping a partition since the network gateway refuses
+ *   every type of request for items of a disabled website.
+ *
+ *   Each partition has a read-write lock, which is held for reading by the operations that modify the partition's feedback, and for writing while the partition
+ *   is being dropped or its rebuild is being started. Those modifying operations are always called while holding a lock on the user account, so the partition lock
+ *   must always be acquired after the user account lock. For this reason a rebuild doesn't hold the partition write lock while it replays the parent feedback
+ *   manager's records; the replay instead takes each user account lock and then the partition read lock in turn, the same as any other submission.
+ *
  * - As with the user account manager, validation on feedback ops are performed by the public accessor methods, however none are performed during the restoration process.
  *   This is a tricky decision to make since depending on how you look at things pulling data from disk could be put in the same boat as an untrusted caller. But I think
  *   that the resulting validation would be quite unwiedly and unnecessary; if the persisted data on the server is compromised and changed, validation of individual
@@ -19,12 +29,15 @@ package com.feedbactory.server.feedback.personal;
 
 
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.core.MutableInteger;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.server.feedback.FeedbackCategoryManager;
 import com.feedbactory.server.feedback.FeedbackManager;
+import com.feedbactory.server.feedback.FeedbackSubmissionUpdate;
 import com.feedbactory.server.feedback.ItemProfileFeedbackSubmission;
+import com.feedbactory.server.feedback.ItemProfileFeedbackSubmissionVisitor;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccount;
 import com.feedbactory.server.useraccount.UserAccountManager;
 import com.feedbactory.shared.FeedbactoryConstants;
@@ -42,15 +55,17 @@ import com.feedbactory.shared.feedback.personal.PersonalFeedbackDetailedSummary;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackFeaturedPerson;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackPerson;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackPersonProfile;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackRatingTrendGranularity;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmission;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmissionScaleKeyValue;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmissionScaleProfile;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackWebsite;
-import java.io.DataInputStream;
+import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
@@ -62,8 +77,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -72,22 +85,28 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 final class PersonalFeedbackManager implements FeedbackCategoryManager
 {
    static final private int PersonalFeedbackPersonMapInitialCapacity = 10000;
+   static final private int PersonalFeedbackPartitionMinimumInitialCapacity = 100;
 
    static final private int FeaturedFeedbackMaximumSampleSize = 50;
    static final private PersonalFeedbackFeaturedPerson FeaturedItemsEndOfDataMarker = new PersonalFeedbackFeaturedPerson(FeedbactoryConstants.EndOfDataLong);
+   static final private int[] NoTagIDs = {};
 
    static final private long HousekeepingFeaturedItemsTaskFrequencyMinutes = 5;
 
    final private FeedbackManager feedbackManager;
    final private UserAccountManager userAccountManager;
 
-   final private ConcurrentHashMap<PersonalFeedbackPerson, PersonalFeedbackNode> personalFeedback = new ConcurrentHashMap<>(PersonalFeedbackPersonMapInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+   final private Map<PersonalFeedbackCriteriaType, Map<PersonalFeedbackWebsite, PersonalFeedbackPartition>> personalFeedback = new EnumMap<>(PersonalFeedbackCriteriaType.class);
 
    final private Map<PersonalFeedbackCriteriaType, CriteriaTypeFeaturedPeopleNode> criteriaTypeNewFeedback = new EnumMap<>(PersonalFeedbackCriteriaType.class);
    final private Map<PersonalFeedbackCriteriaType, CriteriaTypeFeaturedPeopleNode> criteriaTypeHotFeedback = new EnumMap<>(PersonalFeedbackCriteriaType.class);
    final private FeaturedPersonComparator featuredPersonComparator = new FeaturedPersonComparator();
    final private FeaturedItemsSearchListComparator featuredItemsSearchListComparator = new FeaturedItemsSearchListComparator();
 
+   final private PersonalFeedbackTagDictionary tagDictionary = new PersonalFeedbackTagDictionary();
+
+   final private PersonalFeedbackRatingRollups ratingRollups = new PersonalFeedbackRatingRollups(this);
+
    final private HousekeepingTask housekeepingTask = new HousekeepingTask();
 
 
@@ -102,10 +121,36 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private void initialise()
    {
+      initialisePersonalFeedbackPartitions();
       initialiseCriteriaTypeFeaturedFeedback();
    }
 
 
+   private void initialisePersonalFeedbackPartitions()
+   {
+      int numberOfPartitions = 0;
+      for (final PersonalFeedbackCriteriaType criteriaType : PersonalFeedbackCriteriaType.values())
+         numberOfPartitions += PersonalFeedbackWebsite.getWebsites(criteriaType).size();
+
+      // Spread the overall initial capacity evenly between the partitions, within reason.
+      final int partitionInitialCapacity = Math.max(PersonalFeedbackPartitionMinimumInitialCapacity, PersonalFeedbackPersonMapInitialCapacity / Math.max(numberOfPartitions, 1));
+
+      Map<PersonalFeedbackWebsite, PersonalFeedbackPartition> criteriaTypePartitions;
+      Set<PersonalFeedbackWebsite> criteriaTypeWebsites;
+
+      for (final PersonalFeedbackCriteriaType criteriaType : PersonalFeedbackCriteriaType.values())
+      {
+         criteriaTypeWebsites = PersonalFeedbackWebsite.getWebsites(criteriaType);
+         criteriaTypePartitions = new HashMap<>(criteriaTypeWebsites.size());
+
+         for (final PersonalFeedbackWebsite website : criteriaTypeWebsites)
+            criteriaTypePartitions.put(website, new PersonalFeedbackPartition(criteriaType, website, partitionInitialCapacity));
+
+         personalFeedback.put(criteriaType, criteriaTypePartitions);
+      }
+   }
+
+
    private void initialiseCriteriaTypeFeaturedFeedback()
    {
       for (final PersonalFeedbackCriteriaType criteriaType : PersonalFeedbackCriteriaType.values())
@@ -140,7 +185,13 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
       private PersonalFeedbackNode(final PersonalFeedbackCriteriaAttributes<?> criteriaAttributes, final long creationTime)
       {
-         submissions = new HashMap<>(1);
+         this(criteriaAttributes, creationTime, 1);
+      }
+
+
+      private PersonalFeedbackNode(final PersonalFeedbackCriteriaAttributes<?> criteriaAttributes, final long creationTime, final int submissionsCapacity)
+      {
+         submissions = new HashMap<>(submissionsCapacity);
          criteriaFeedback = initialiseCriteriaFeedback(criteriaAttributes);
          this.creationTime = creationTime;
       }
@@ -157,7 +208,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
        ***************************************************************************/
 
 
-      private void handleAddFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission newSubmission)
+      private PersonProfileFeedbackSubmission handleAddFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission newSubmission)
       {
          final PersonProfileFeedbackSubmission previousSubmission = submissions.put(userAccount, newSubmission);
 
@@ -179,6 +230,8 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
          cumulativeOverallRating += feedbackSubmission.overallFeedbackRating;
          ratingDistribution[Math.round(feedbackSubmission.overallFeedbackRating / 10f)] ++;
+
+         return previousSubmission;
       }
 
 
@@ -204,7 +257,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       }
 
 
-      private void handleRemoveFeedbackSubmission(final FeedbactoryUserAccount userAccount)
+      private PersonalFeedbackSubmission handleRemoveFeedbackSubmission(final FeedbactoryUserAccount userAccount)
       {
          // Can assume from this trusted code path that the result will not be null.
          final PersonalFeedbackSubmission previousSubmission = submissions.remove(userAccount).feedbackSubmission;
@@ -214,6 +267,8 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
          cumulativeOverallRating -= previousSubmission.overallFeedbackRating;
          ratingDistribution[Math.round(previousSubmission.overallFeedbackRating / 10f)] --;
+
+         return previousSubmission;
       }
 
 
@@ -391,15 +446,16 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       }
 
 
-      private void addFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission newSubmission)
+      // Returns the user's previous submission for the item, or null if there was none.
+      private PersonProfileFeedbackSubmission addFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission newSubmission)
       {
-         handleAddFeedbackSubmission(userAccount, newSubmission);
+         return handleAddFeedbackSubmission(userAccount, newSubmission);
       }
 
 
-      private void removeFeedbackSubmission(final FeedbactoryUserAccount userAccount)
+      private PersonalFeedbackSubmission removeFeedbackSubmission(final FeedbactoryUserAccount userAccount)
       {
-         handleRemoveFeedbackSubmission(userAccount);
+         return handleRemoveFeedbackSubmission(userAccount);
       }
 
 
@@ -434,6 +490,61 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   /* The outcome of adding or removing a submission. The caller must pass it to awaitDurable() once it has released the user account lock, and before
+    * responding to the request. The submission update is null when a removal found no existing submission; the feedback node may be null if there are no
+    * submissions for the item following a removal.
+    */
+   static final class PersonalFeedbackSubmissionResult
+   {
+      final PersonalFeedbackNode feedbackNode;
+      final private FeedbackSubmissionUpdate submissionUpdate;
+
+
+      private PersonalFeedbackSubmissionResult(final PersonalFeedbackNode feedbackNode, final FeedbackSubmissionUpdate submissionUpdate)
+      {
+         this.feedbackNode = feedbackNode;
+         this.submissionUpdate = submissionUpdate;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class PersonalFeedbackPartition
+   {
+      final private PersonalFeedbackCriteriaType criteriaType;
+      final private PersonalFeedbackWebsite website;
+
+      final private ConcurrentHashMap<PersonalFeedbackPerson, PersonalFeedbackNode> feedback;
+
+      final private ReadWriteLock partitionLock = new ReentrantReadWriteLock();
+
+      // Written while holding the partition write lock, but volatile so that it may also be read by the (uncontended) checkpoint restore.
+      volatile private boolean isDropped;
+
+
+      private PersonalFeedbackPartition(final PersonalFeedbackCriteriaType criteriaType, final PersonalFeedbackWebsite website, final int initialCapacity)
+      {
+         this.criteriaType = criteriaType;
+         this.website = website;
+
+         feedback = new ConcurrentHashMap<>(initialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+      }
+   }
+
+
    /****************************************************************************
     *
     *
@@ -623,8 +734,8 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    static final private class FeaturedItemsFeedbackNode
    {
       // The lists should be randomly accessible, as binary search will be used on them.
-      final private List<PersonalFeedbackFeaturedPerson> feedback = new ArrayList<>();
-      final private Map<String, List<PersonalFeedbackFeaturedPerson>> feedbackByTag = new HashMap<>();
+      final private List<FeaturedPersonNode> feedback = new ArrayList<>();
+      final private Map<Integer, List<FeaturedPersonNode>> feedbackByTag = new HashMap<>();
    }
 
 
@@ -635,11 +746,50 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
     ***************************************************************************/
 
 
-   static final private class FeaturedPersonComparator implements Comparator<PersonalFeedbackFeaturedPerson>
+   static final private class FeaturedPersonNode
+   {
+      final private PersonalFeedbackFeaturedPerson featuredPerson;
+
+      /* Sorted IDs of both the explicit item profile tags and those implied by the item's display name, each holding a reference on the tag dictionary.
+       * Having these on hand means that tag filter matching is a binary search on ints, rather than reparsing the item's display name for every candidate.
+       */
+      final private int[] tagIDs;
+
+
+      private FeaturedPersonNode(final PersonalFeedbackFeaturedPerson featuredPerson, final int[] tagIDs)
+      {
+         this.featuredPerson = featuredPerson;
+         this.tagIDs = tagIDs;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      private boolean hasTag(final int tagID)
+      {
+         return (Arrays.binarySearch(tagIDs, tagID) >= 0);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class FeaturedPersonComparator implements Comparator<FeaturedPersonNode>
    {
       @Override
-      final public int compare(final PersonalFeedbackFeaturedPerson personOne, final PersonalFeedbackFeaturedPerson personTwo)
+      final public int compare(final FeaturedPersonNode personNodeOne, final FeaturedPersonNode personNodeTwo)
       {
+         final PersonalFeedbackFeaturedPerson personOne = personNodeOne.featuredPerson;
+         final PersonalFeedbackFeaturedPerson personTwo = personNodeTwo.featuredPerson;
+
          // There's no need to compare criteria type, as the featured items are already grouped by that.
          if (personOne.sortValue < personTwo.sortValue)
             return -1;
@@ -664,15 +814,15 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private class FeaturedItemsSearchList
    {
-      final private List<PersonalFeedbackFeaturedPerson> searchList;
-      final private String sourceTag;
+      final private List<FeaturedPersonNode> searchList;
+      final private int sourceTagID;
       private int activeSearchIndex;
 
 
-      private FeaturedItemsSearchList(final List<PersonalFeedbackFeaturedPerson> searchList, final String sourceTag, final int activeSearchIndex)
+      private FeaturedItemsSearchList(final List<FeaturedPersonNode> searchList, final int sourceTagID, final int activeSearchIndex)
       {
          this.searchList = searchList;
-         this.sourceTag = sourceTag;
+         this.sourceTagID = sourceTagID;
          this.activeSearchIndex = activeSearchIndex;
       }
 
@@ -713,39 +863,64 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
     ***************************************************************************/
 
 
-   final private class HousekeepingTask implements Runnable, ThreadFactory
+   final private class HousekeepingTask implements HousekeepingScheduler.Task
    {
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler housekeepingScheduler;
+      private HousekeepingScheduler.Registration registration;
+
+      /* A run is broken into steps: the new feedback lists for each criteria type, the hot feedback lists for each criteria type, and finally the
+       * sweep of the tag dictionary and rating rollups. Each step is brief compared to a scheduler slice, so a run that is paused at the end of
+       * a slice simply resumes from the next step. Only the scheduler thread touches this variable.
+       */
+      private int nextRunStep;
 
 
       @Override
-      final public Thread newThread(final Runnable runnable)
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
-         final Thread thread = new Thread(runnable, "Personal feedback housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
+         if (isNewRun)
+            nextRunStep = 0;
 
+         final PersonalFeedbackCriteriaType[] criteriaTypes = PersonalFeedbackCriteriaType.values();
+         PersonalFeedbackCriteriaType criteriaType;
 
-      @Override
-      final public void run()
-      {
          try
          {
-            for (final Entry<PersonalFeedbackCriteriaType, CriteriaTypeFeaturedPeopleNode> criteriaTypeFeaturedFeedbackNodeEntry : criteriaTypeNewFeedback.entrySet())
-               updateCriteriaTypeNewFeedback(criteriaTypeFeaturedFeedbackNodeEntry.getKey(), criteriaTypeFeaturedFeedbackNodeEntry.getValue());
+            while (nextRunStep <= (criteriaTypes.length * 2))
+            {
+               if (nextRunStep < criteriaTypes.length)
+               {
+                  criteriaType = criteriaTypes[nextRunStep];
+                  updateCriteriaTypeNewFeedback(criteriaType, criteriaTypeNewFeedback.get(criteriaType));
+               }
+               else if (nextRunStep < (criteriaTypes.length * 2))
+               {
+                  criteriaType = criteriaTypes[nextRunStep - criteriaTypes.length];
+                  updateCriteriaTypeHotFeedback(criteriaType, criteriaTypeHotFeedback.get(criteriaType));
+               }
+               else
+               {
+                  // Now that every featured items index has been rebuilt, sweep the tags that are no longer referenced by any of them.
+                  tagDictionary.compact();
+
+                  ratingRollups.prune();
+               }
+
+               nextRunStep ++;
 
-            for (final Entry<PersonalFeedbackCriteriaType, CriteriaTypeFeaturedPeopleNode> criteriaTypeFeaturedFeedbackNodeEntry : criteriaTypeHotFeedback.entrySet())
-               updateCriteriaTypeHotFeedback(criteriaTypeFeaturedFeedbackNodeEntry.getKey(), criteriaTypeFeaturedFeedbackNodeEntry.getValue());
+               if (System.nanoTime() >= sliceDeadlineNanoTime)
+                  return (nextRunStep > (criteriaTypes.length * 2));
+            }
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
+            /* Exception handling provided for -any- exception, so that the failure is logged against this task.
+             * The remainder of the run is abandoned, and the featured items will be rebuilt in full on the next run.
              */
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Personal feedback manager housekeeping task failed", anyException);
          }
+
+         return true;
       }
 
 
@@ -775,28 +950,33 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
       private void hollowOutFeaturedItemsFeedbackNode(final FeaturedItemsFeedbackNode feedbackNode)
       {
+         // Every featured item appears exactly once in the main list, so that's the place to release its references on the tag dictionary.
+         releaseFeaturedPersonTags(feedbackNode.feedback);
+
          feedbackNode.feedback.clear();
 
          // Clear the featured items by tag lists before the rebuilding; don't remove these lists just yet as most will probably need to be recreated immediately.
-         for (final List<PersonalFeedbackFeaturedPerson> feedbackByTagList : feedbackNode.feedbackByTag.values())
+         for (final List<FeaturedPersonNode> feedbackByTagList : feedbackNode.feedbackByTag.values())
             feedbackByTagList.clear();
       }
 
 
       private void generateNewFeedbackList(final PersonalFeedbackCriteriaType criteriaType, final CriteriaTypeFeaturedPeopleNode newFeedbackNode)
       {
-         PersonalFeedbackNode personalFeedbackNode;
+         for (final PersonalFeedbackPartition partition : personalFeedback.get(criteriaType).values())
+            generateNewFeedbackList(partition, newFeedbackNode.feedbackByWebsite.get(partition.website));
+      }
+
+
+      private void generateNewFeedbackList(final PersonalFeedbackPartition partition, final FeaturedItemsFeedbackNode websiteNode)
+      {
          PersonalFeedbackPersonProfile canonicalPersonProfile;
          PersonalFeedbackBasicSummary feedbackSummary;
-         PersonalFeedbackFeaturedPerson featuredItem;
-         FeaturedItemsFeedbackNode websiteNode;
+         FeaturedPersonNode featuredItem;
 
-         for (final Entry<PersonalFeedbackPerson, PersonalFeedbackNode> personalFeedbackEntry : personalFeedback.entrySet())
+         // A dropped partition will simply be empty.
+         for (final PersonalFeedbackNode personalFeedbackNode : partition.feedback.values())
          {
-            if (personalFeedbackEntry.getKey().getCriteriaType() != criteriaType)
-               continue;
-
-            personalFeedbackNode = personalFeedbackEntry.getValue();
 
             synchronized (personalFeedbackNode)
             {
@@ -806,8 +986,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
                // Cannot be null, since there must be at least one entry if the node is not marked as deleted.
                canonicalPersonProfile = getCanonicalPersonProfile(personalFeedbackNode);
                feedbackSummary = personalFeedbackNode.getFeedbackSummary(canonicalPersonProfile.getWebsite().showFeedbackLessThanMinimumThreshold());
-               featuredItem = new PersonalFeedbackFeaturedPerson(canonicalPersonProfile, feedbackSummary, personalFeedbackNode.creationTime, personalFeedbackNode.creationTime);
-               websiteNode = newFeedbackNode.feedbackByWebsite.get(canonicalPersonProfile.getWebsite());
+               featuredItem = createFeaturedPersonNode(canonicalPersonProfile, feedbackSummary, personalFeedbackNode.creationTime, personalFeedbackNode.creationTime);
 
                addFeaturedPersonToList(websiteNode.feedback, featuredItem);
                addFeaturedPersonTags(websiteNode.feedbackByTag, featuredItem);
@@ -858,7 +1037,51 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       }
 
 
-      private void addFeaturedPersonToList(final List<PersonalFeedbackFeaturedPerson> keywordFeedbackPeople, final PersonalFeedbackFeaturedPerson newFeaturedFeedbackPerson)
+      private FeaturedPersonNode createFeaturedPersonNode(final PersonalFeedbackPersonProfile personProfile, final PersonalFeedbackBasicSummary feedbackSummary,
+                                                          final long creationTime, final long sortValue)
+      {
+         final PersonalFeedbackFeaturedPerson featuredPerson = new PersonalFeedbackFeaturedPerson(personProfile, feedbackSummary, creationTime, sortValue);
+         return new FeaturedPersonNode(featuredPerson, acquireFeaturedPersonTags(personProfile));
+      }
+
+
+      private int[] acquireFeaturedPersonTags(final PersonalFeedbackPersonProfile personProfile)
+      {
+         // First gather the implicit keywords from the item profile's display name (lowercased).
+         final Set<String> allKeywords = getItemDisplayNameTags(personProfile.getFullName());
+
+         // Add to that set the explicit item profile keywords.
+         allKeywords.addAll(personProfile.getTags());
+
+         if (allKeywords.isEmpty())
+            return NoTagIDs;
+
+         final int[] tagIDs = new int[allKeywords.size()];
+         int tagIndex = 0;
+
+         for (final String keyword : allKeywords)
+         {
+            tagIDs[tagIndex] = tagDictionary.acquireTag(keyword);
+            tagIndex ++;
+         }
+
+         Arrays.sort(tagIDs);
+
+         return tagIDs;
+      }
+
+
+      private void releaseFeaturedPersonTags(final List<FeaturedPersonNode> featuredPeople)
+      {
+         for (final FeaturedPersonNode featuredPerson : featuredPeople)
+         {
+            for (final int tagID : featuredPerson.tagIDs)
+               tagDictionary.releaseTag(tagID);
+         }
+      }
+
+
+      private void addFeaturedPersonToList(final List<FeaturedPersonNode> keywordFeedbackPeople, final FeaturedPersonNode newFeaturedFeedbackPerson)
       {
          int insertionPoint = Collections.binarySearch(keywordFeedbackPeople, newFeaturedFeedbackPerson, featuredPersonComparator);
 
@@ -868,25 +1091,19 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       }
 
 
-      private void addFeaturedPersonTags(final Map<String, List<PersonalFeedbackFeaturedPerson>> feedbackByTag, final PersonalFeedbackFeaturedPerson newFeaturedFeedbackPerson)
+      private void addFeaturedPersonTags(final Map<Integer, List<FeaturedPersonNode>> feedbackByTag, final FeaturedPersonNode newFeaturedFeedbackPerson)
       {
-         // First gather the implicit keywords from the item profile's display name (lowercased).
-         final Set<String> allKeywords = getItemDisplayNameTags(newFeaturedFeedbackPerson.personProfile.getFullName());
-
-         // Add to that set the explicit item profile keywords.
-         allKeywords.addAll(newFeaturedFeedbackPerson.personProfile.getTags());
-
-         List<PersonalFeedbackFeaturedPerson> keywordFeedbackList;
+         List<FeaturedPersonNode> keywordFeedbackList;
 
-         for (final String personKeyword : allKeywords)
+         for (final int personKeywordID : newFeaturedFeedbackPerson.tagIDs)
          {
-            keywordFeedbackList = feedbackByTag.get(personKeyword);
+            keywordFeedbackList = feedbackByTag.get(personKeywordID);
             if (keywordFeedbackList == null)
             {
                // The list should be randomly accessible, as binary search will be used on it.
                keywordFeedbackList = new ArrayList<>(1);
                keywordFeedbackList.add(newFeaturedFeedbackPerson);
-               feedbackByTag.put(personKeyword, keywordFeedbackList);
+               feedbackByTag.put(personKeywordID, keywordFeedbackList);
             }
             else
                addFeaturedPersonToList(keywordFeedbackList, newFeaturedFeedbackPerson);
@@ -904,7 +1121,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       private void removeEmptyFeedbackByTagMapEntries(final FeaturedItemsFeedbackNode feedbackNode)
       {
          // After the featured items lists have been rebuilt, remove the tag entries that no longer have featured items attached.
-         Iterator<List<PersonalFeedbackFeaturedPerson>> feedbackByKeywordIterator = feedbackNode.feedbackByTag.values().iterator();
+         Iterator<List<FeaturedPersonNode>> feedbackByKeywordIterator = feedbackNode.feedbackByTag.values().iterator();
          while (feedbackByKeywordIterator.hasNext())
          {
             if (feedbackByKeywordIterator.next().isEmpty())
@@ -932,19 +1149,20 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
       private void generateHotFeedbackList(final PersonalFeedbackCriteriaType criteriaType, final CriteriaTypeFeaturedPeopleNode hotFeedbackNode)
       {
-         PersonalFeedbackNode personalFeedbackNode;
+         for (final PersonalFeedbackPartition partition : personalFeedback.get(criteriaType).values())
+            generateHotFeedbackList(partition, hotFeedbackNode.feedbackByWebsite.get(partition.website));
+      }
+
+
+      private void generateHotFeedbackList(final PersonalFeedbackPartition partition, final FeaturedItemsFeedbackNode websiteNode)
+      {
          long hotRating;
          PersonalFeedbackPersonProfile canonicalPersonProfile;
          PersonalFeedbackBasicSummary feedbackSummary;
-         PersonalFeedbackFeaturedPerson featuredItem;
-         FeaturedItemsFeedbackNode websiteNode;
+         FeaturedPersonNode featuredItem;
 
-         for (final Entry<PersonalFeedbackPerson, PersonalFeedbackNode> personalFeedbackEntry : personalFeedback.entrySet())
+         for (final PersonalFeedbackNode personalFeedbackNode : partition.feedback.values())
          {
-            if (personalFeedbackEntry.getKey().getCriteriaType() != criteriaType)
-               continue;
-
-            personalFeedbackNode = personalFeedbackEntry.getValue();
 
             synchronized (personalFeedbackNode)
             {
@@ -960,8 +1178,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
                   // Cannot be null, since there must be at least one entry in the node is not marked as deleted.
                   canonicalPersonProfile = getCanonicalPersonProfile(personalFeedbackNode);
                   feedbackSummary = personalFeedbackNode.getFeedbackSummary(canonicalPersonProfile.getWebsite().showFeedbackLessThanMinimumThreshold());
-                  featuredItem = new PersonalFeedbackFeaturedPerson(canonicalPersonProfile, feedbackSummary, personalFeedbackNode.creationTime, hotRating);
-                  websiteNode = hotFeedbackNode.feedbackByWebsite.get(canonicalPersonProfile.getWebsite());
+                  featuredItem = createFeaturedPersonNode(canonicalPersonProfile, feedbackSummary, personalFeedbackNode.creationTime, hotRating);
 
                   addFeaturedPersonToList(websiteNode.feedback, featuredItem);
                   addFeaturedPersonTags(websiteNode.feedbackByTag, featuredItem);
@@ -1031,30 +1248,27 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
       private boolean isHousekeepingStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
-      private void start()
+      private void start(final HousekeepingScheduler housekeepingScheduler)
       {
          if (isHousekeepingStarted())
             throw new IllegalStateException("Housekeeping task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
-
-         executor.scheduleAtFixedRate(this, 0, HousekeepingFeaturedItemsTaskFrequencyMinutes, TimeUnit.MINUTES);
+         this.housekeepingScheduler = housekeepingScheduler;
+         registration = housekeepingScheduler.register("Personal featured feedback", this, 0, TimeUnit.MINUTES.toMillis(HousekeepingFeaturedItemsTaskFrequencyMinutes));
       }
 
 
       private void shutdown() throws InterruptedException
       {
-         if (isHousekeepingStarted())
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+            housekeepingScheduler = null;
          }
       }
    }
@@ -1173,10 +1387,10 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
          /* As with the lowercase processing of the explicit item tags (see PersonalFeedbackNetworkGateway),
           * there is the assumption that the locale has been set elsewhere in the server, to ensure consistent results.
           *
-          * Also as with the explicit item tags, the tags here should be intern()'d for the same reasons (saving memory,
-          * with the side benefit that string comparisons against the index will be faster).
+          * Unlike the explicit item tags, there's no need to canonicalise the tags here since they are transient; when building the featured items index
+          * they are immediately resolved to their tag dictionary IDs.
           */
-         final String tagWord = rawTagString.substring(startIndex, adjustedEndIndex).toLowerCase().intern();
+         final String tagWord = rawTagString.substring(startIndex, adjustedEndIndex).toLowerCase();
 
          if (! PersonalFeedbackServerConstants.FeaturedItemsExcludedTags.contains(tagWord))
             tags.add(tagWord);
@@ -1200,7 +1414,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private PersonalFeedbackBasicSummary handleGetPersonalFeedbackBasicSummary(final PersonalFeedbackPerson person)
    {
-      final PersonalFeedbackNode allFeedbackForPerson = personalFeedback.get(person);
+      final PersonalFeedbackNode allFeedbackForPerson = getPartition(person).feedback.get(person);
 
       if (allFeedbackForPerson != null)
          return getPersonalFeedbackBasicSummary(allFeedbackForPerson, person.getWebsite().showFeedbackLessThanMinimumThreshold());
@@ -1211,7 +1425,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private PersonalFeedbackDetailedSummary handleGetPersonalFeedbackDetailedSummary(final PersonalFeedbackPerson person)
    {
-      final PersonalFeedbackNode allFeedbackForPerson = personalFeedback.get(person);
+      final PersonalFeedbackNode allFeedbackForPerson = getPartition(person).feedback.get(person);
 
       if (allFeedbackForPerson != null)
       {
@@ -1225,8 +1439,8 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private PersonalFeedbackNode handleAddItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPersonProfile personalFeedbackProfile,
-                                                                final PersonalFeedbackSubmission feedbackSubmission)
+   private PersonalFeedbackSubmissionResult handleAddItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPersonProfile personalFeedbackProfile,
+                                                                            final PersonalFeedbackSubmission feedbackSubmission)
    {
       /* There's no validation performed here for the profile or submission, since this is a trusted method call; any validation must have already been performed
        * by the caller. This saves unnecessarily doubling up on the same validation.
@@ -1236,65 +1450,89 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       // Locking on the user account, and then the feedback node.
       synchronized (userAccount)
       {
-         // The parent feedback manager will return null if the submission is rejected.
-         final PersonProfileFeedbackSubmission submissionResult = (PersonProfileFeedbackSubmission) feedbackManager.addFeedbackSubmission(userAccount, personalFeedbackProfile, feedbackSubmission);
-         if (submissionResult != null)
+         final PersonalFeedbackPartition partition = getPartition(personalFeedbackProfile.person);
+
+         try
          {
-            final PersonalFeedbackPerson person = submissionResult.personProfile.person;
-
-            /* This loop & retry approach looks a bit dodgy but it follows the same pattern used in the Java Concurrency in Practice book
-             * (ref: section 5.19, cache memoization).
-             * The reason that the loop is needed is to correctly handle the case where the feedback submissions collection for a person have been removed by another
-             * thread which has just removed the last submission for the person. In practice it would be incredibly rare for the concurrent situation to happen even
-             * once, meaning that the loop will likewise rarely if ever come into play. In essence it's the same pattern as AtomicInteger's getAndIncrement(), which will
-             * loop until the increment is equal to an expected value.
-             * If I later relax the requirement for empty feedback nodes to be removed, I can ditch the loop and of course the isDelected check.
-             *
-             * Alternative implementations:
-             *
-             * - Maintain a separate collection of 'canonical' person ID's, similar to String's intern(). This method (and others) could then safely lock on the canonical
-             *   object. The problem is that in a way it would just be shifting the issue to other code since there would still be the accumulation of unused ID's
-             *   (although there'd be no need to maintain them between restarts). This approach is still worth keeping in mind though because it has the potential
-             *   to solve other related problems where I might need to lock on a definitive object for a particular ID. The FeedbackManager actually generates something
-             *   similar to canonical feedback item IDs - a cache of IDs, to help prevent memory bloat - but they aren't safe to be used for locking in their current form.
-             *
-             * - Use a background task and a ReentrantReadWriteLock to periodically clean up the empty feedback nodes. The big drawback is that this would periodically
-             *   impose a complete lockdown on new submissions, albeit for an instant.
-             *
-             * - Just allow the empty feedback nodes to accumulate, but don't persist them. They won't be present on restart.
+            partition.partitionLock.readLock().lock();
+
+            /* Submissions for a website whose partition has been dropped are rejected outright; the network gateway will have already refused the request
+             * unless it was in flight at the moment that the website was disabled.
              */
-            for (;;)
+            if (partition.isDropped)
+               return null;
+
+            // The parent feedback manager will return null if the submission is rejected.
+            final FeedbackSubmissionUpdate submissionUpdate = feedbackManager.addFeedbackSubmission(userAccount, personalFeedbackProfile, feedbackSubmission);
+            if (submissionUpdate != null)
             {
-               PersonalFeedbackNode feedbackForPerson = personalFeedback.get(person);
+               final PersonProfileFeedbackSubmission submissionResult = (PersonProfileFeedbackSubmission) submissionUpdate.newSubmission;
+               final PersonalFeedbackPerson person = submissionResult.personProfile.person;
 
-               if (feedbackForPerson == null)
+               /* The rollups follow the parent's records rather than the feedback node's, since the node of a partition that's in the middle of being
+                * rebuilt may not yet hold the user's previous submission.
+                */
+               recordRatingChange(person, submissionUpdate);
+
+               /* This loop & retry approach looks a bit dodgy but it follows the same pattern used in the Java Concurrency in Practice book
+                * (ref: section 5.19, cache memoization).
+                * The reason that the loop is needed is to correctly handle the case where the feedback submissions collection for a person have been removed by another
+                * thread which has just removed the last submission for the person. In practice it would be incredibly rare for the concurrent situation to happen even
+                * once, meaning that the loop will likewise rarely if ever come into play. In essence it's the same pattern as AtomicInteger's getAndIncrement(), which will
+                * loop until the increment is equal to an expected value.
+                * If I later relax the requirement for empty feedback nodes to be removed, I can ditch the loop and of course the isDelected check.
+                *
+                * Alternative implementations:
+                *
+                * - Maintain a separate collection of 'canonical' person ID's, similar to String's intern(). This method (and others) could then safely lock on the canonical
+                *   object. The problem is that in a way it would just be shifting the issue to other code since there would still be the accumulation of unused ID's
+                *   (although there'd be no need to maintain them between restarts). This approach is still worth keeping in mind though because it has the potential
+                *   to solve other related problems where I might need to lock on a definitive object for a particular ID. The FeedbackManager actually generates something
+                *   similar to canonical feedback item IDs - a cache of IDs, to help prevent memory bloat - but they aren't safe to be used for locking in their current form.
+                *
+                * - Use a background task and a ReentrantReadWriteLock to periodically clean up the empty feedback nodes. The big drawback is that this would periodically
+                *   impose a complete lockdown on new submissions, albeit for an instant.
+                *
+                * - Just allow the empty feedback nodes to accumulate, but don't persist them. They won't be present on restart.
+                */
+               for (;;)
                {
-                  feedbackForPerson = new PersonalFeedbackNode(personalFeedbackProfile.person.getCriteriaType().attributes, submissionResult.submissionTime);
+                  PersonalFeedbackNode feedbackForPerson = partition.feedback.get(person);
+
+                  if (feedbackForPerson == null)
+                  {
+                     feedbackForPerson = new PersonalFeedbackNode(personalFeedbackProfile.person.getCriteriaType().attributes, submissionResult.submissionTime);
 
-                  // No need to place a synchronized block here to initialise the new object's non-final fields; their default values are as they need to be.
+                     // No need to place a synchronized block here to initialise the new object's non-final fields; their default values are as they need to be.
 
-                  final PersonalFeedbackNode existingEntry = personalFeedback.putIfAbsent(person, feedbackForPerson);
+                     final PersonalFeedbackNode existingEntry = partition.feedback.putIfAbsent(person, feedbackForPerson);
 
-                  if (existingEntry != null)
-                     feedbackForPerson = existingEntry;
-               }
+                     if (existingEntry != null)
+                        feedbackForPerson = existingEntry;
+                  }
 
-               synchronized (feedbackForPerson)
-               {
-                  /* If between the time of checking the collection and grabbing the lock the feedback node has been marked and ditched,
-                   * the procedure needs to bail out and try again. Note that as unlikely or even impossible as the case may be within the
-                   * constraints of the application, this also covers the case where the node that has just been added is immediately removed by another thread.
-                   */
-                  if (! feedbackForPerson.isDeleted)
+                  synchronized (feedbackForPerson)
                   {
-                     feedbackForPerson.addFeedbackSubmission(userAccount, submissionResult);
-                     return feedbackForPerson;
+                     /* If between the time of checking the collection and grabbing the lock the feedback node has been marked and ditched,
+                      * the procedure needs to bail out and try again. Note that as unlikely or even impossible as the case may be within the
+                      * constraints of the application, this also covers the case where the node that has just been added is immediately removed by another thread.
+                      */
+                     if (! feedbackForPerson.isDeleted)
+                     {
+                        feedbackForPerson.addFeedbackSubmission(userAccount, submissionResult);
+
+                        return new PersonalFeedbackSubmissionResult(feedbackForPerson, submissionUpdate);
+                     }
                   }
                }
             }
+            else
+               return null;
+         }
+         finally
+         {
+            partition.partitionLock.readLock().unlock();
          }
-         else
-            return null;
       }
    }
 
@@ -1308,43 +1546,77 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private PersonalFeedbackNode handleRemovePersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPerson person)
+   private PersonalFeedbackSubmissionResult handleRemovePersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPerson person)
    {
       // Locking on the user account, and then the feedback node.
       synchronized (userAccount)
       {
-         /* Refer to addItemFeedbackSubmission() comments.
-          *
-          * We don't need the loop and isDeleted check, since a) we have a lock on the user account while making the call to
-          * the parent feedback manager to remove the user's feedback for the item, and b) if that call is true, and assuming the data isn't corrupted, we
-          * know that the feedback node for the item here must not yet be empty/deleted since at the very least it must contain the feedback submission that we have
-          * just removed from the parent feedback manager (and are about to remove here).
-          *
-          * Regardless of the outcome of a), we will be returning the feedback node containing all of its current submissions to the caller. If there is no feedback
-          * submission to remove here, the node may be null.
-          */
-         final PersonalFeedbackNode feedbackForPerson = personalFeedback.get(person);
+         final PersonalFeedbackPartition partition = getPartition(person);
 
-         // The parent feedback manager will return true if there was an existing submission by the Feedbactory user account for the browsed user.
-         if (feedbackManager.removeFeedbackSubmission(userAccount, person))
+         try
          {
-            synchronized (feedbackForPerson)
-            {
-               feedbackForPerson.removeFeedbackSubmission(userAccount);
+            partition.partitionLock.readLock().lock();
+
+            /* Refer to addItemFeedbackSubmission() comments.
+             *
+             * We don't need the loop and isDeleted check, since a) we have a lock on the user account while making the call to
+             * the parent feedback manager to remove the user's feedback for the item, and b) if that call is true, and assuming the data isn't corrupted, we
+             * know that the feedback node for the item here must not yet be empty/deleted since at the very least it must contain the feedback submission that we have
+             * just removed from the parent feedback manager (and are about to remove here).
+             *
+             * The exception to b) is when the item's partition has been dropped, or is in the middle of being rebuilt and has not yet replayed this user
+             * account's submissions. The submission is always removed from the parent's records, but here there may be no node, or a node not yet
+             * containing the user's submission.
+             *
+             * Regardless of the outcome of a), we will be returning the feedback node containing all of its current submissions to the caller. If there is no feedback
+             * submission to remove here, the node may be null.
+             */
+            final PersonalFeedbackNode feedbackForPerson = partition.feedback.get(person);
+
+            // The parent feedback manager will return non-null if there was an existing submission by the Feedbactory user account for the browsed user.
+            final FeedbackSubmissionUpdate submissionUpdate = feedbackManager.removeFeedbackSubmission(userAccount, person);
+
+            // As for adding a submission, the rollups follow the parent's records whether or not the submission is present here.
+            if (submissionUpdate != null)
+               recordRatingChange(person, submissionUpdate);
 
-               if (feedbackForPerson.isEmpty())
+            if ((submissionUpdate != null) && (feedbackForPerson != null))
+            {
+               synchronized (feedbackForPerson)
                {
-                  feedbackForPerson.markAsDeleted();
-                  personalFeedback.remove(person);
+                  if (feedbackForPerson.submissions.containsKey(userAccount))
+                  {
+                     feedbackForPerson.removeFeedbackSubmission(userAccount);
+
+                     if (feedbackForPerson.isEmpty())
+                     {
+                        feedbackForPerson.markAsDeleted();
+                        partition.feedback.remove(person);
+                     }
+                  }
                }
             }
-         }
 
-         return feedbackForPerson;
+            return new PersonalFeedbackSubmissionResult(feedbackForPerson, submissionUpdate);
+         }
+         finally
+         {
+            partition.partitionLock.readLock().unlock();
+         }
       }
    }
 
 
+   private void recordRatingChange(final PersonalFeedbackPerson person, final FeedbackSubmissionUpdate submissionUpdate)
+   {
+      final PersonProfileFeedbackSubmission previousSubmission = (PersonProfileFeedbackSubmission) submissionUpdate.previousSubmission;
+      final PersonProfileFeedbackSubmission newSubmission = (PersonProfileFeedbackSubmission) submissionUpdate.newSubmission;
+
+      ratingRollups.recordRatingChange(person, (previousSubmission != null) ? previousSubmission.feedbackSubmission : null,
+                                       (newSubmission != null) ? newSubmission.feedbackSubmission : null);
+   }
+
+
    private List<PersonalFeedbackFeaturedPerson> handleGetNextNewItemsSample(final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
    {
       final CriteriaTypeFeaturedPeopleNode newFeedbackNode = criteriaTypeNewFeedback.get(featuredItemsFilter.criteriaType);
@@ -1377,8 +1649,17 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
           * Once the pointer for a search list reaches the zero index, that list has been exhausted and can be removed from contention when attempting to
           * retrieve further featured items.
           */
-         final List<FeaturedItemsSearchList> featuredItemsSearchListGroup = getFeaturedItemsSearchListGroup(featuredFeedbackNode, featuredItemsFilter);
-         return getFeaturedItemsSample(featuredItemsSearchListGroup, featuredItemsFilter.filterTags);
+         final int[] filterTagIDs = getFilterTagIDs(featuredItemsFilter.filterTags);
+         if (filterTagIDs == null)
+         {
+            // An easy case to handle - one of the requested tags isn't known to the tag dictionary, therefore it appears nowhere in any featured item.
+            final List<PersonalFeedbackFeaturedPerson> featuredFeedbackSample = new ArrayList<>(1);
+            featuredFeedbackSample.add(FeaturedItemsEndOfDataMarker);
+            return featuredFeedbackSample;
+         }
+
+         final List<FeaturedItemsSearchList> featuredItemsSearchListGroup = getFeaturedItemsSearchListGroup(featuredFeedbackNode, featuredItemsFilter, filterTagIDs);
+         return getFeaturedItemsSample(featuredItemsSearchListGroup, filterTagIDs);
       }
       finally
       {
@@ -1387,15 +1668,39 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
+   private int[] getFilterTagIDs(final Set<String> filterTags)
+   {
+      /* Must be called while holding the featured items index read lock, to ensure that none of the resolved tag IDs can be compacted and reassigned
+       * to a different tag by the housekeeping task before the search has completed.
+       */
+      if (filterTags.isEmpty())
+         return NoTagIDs;
+
+      final int[] filterTagIDs = new int[filterTags.size()];
+      int tagIndex = 0;
+
+      for (final String filterTag : filterTags)
+      {
+         filterTagIDs[tagIndex] = tagDictionary.getTagID(filterTag);
+         if (filterTagIDs[tagIndex] == PersonalFeedbackTagDictionary.NoTagID)
+            return null;
+
+         tagIndex ++;
+      }
+
+      return filterTagIDs;
+   }
+
+
    private List<FeaturedItemsSearchList> getFeaturedItemsSearchListGroup(final CriteriaTypeFeaturedPeopleNode featuredFeedbackNode,
-                                                                         final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
+                                                                         final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter, final int[] filterTagIDs)
    {
       final List<FeaturedItemsSearchList> featuredItemsSearchListGroup = new ArrayList<>(featuredItemsFilter.filterWebsites.size());
       FeaturedItemsSearchList featuredItemsSearchList;
 
       for (final PersonalFeedbackWebsite website : featuredItemsFilter.filterWebsites)
       {
-         featuredItemsSearchList = getFeaturedItemsSearchListGroup(featuredFeedbackNode.feedbackByWebsite.get(website), featuredItemsFilter);
+         featuredItemsSearchList = getFeaturedItemsSearchListGroup(featuredFeedbackNode.feedbackByWebsite.get(website), featuredItemsFilter, filterTagIDs);
          if (featuredItemsSearchList != null)
             featuredItemsSearchListGroup.add(featuredItemsSearchList);
       }
@@ -1405,22 +1710,22 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
 
    private FeaturedItemsSearchList getFeaturedItemsSearchListGroup(final FeaturedItemsFeedbackNode featuredFeedbackNode,
-                                                                   final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
+                                                                   final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter, final int[] filterTagIDs)
    {
-      if (featuredItemsFilter.filterTags.isEmpty())
-         return getInitialisedSearchFeaturedItemsList(featuredFeedbackNode.feedback, null, featuredItemsFilter);
+      if (filterTagIDs.length == 0)
+         return getInitialisedSearchFeaturedItemsList(featuredFeedbackNode.feedback, PersonalFeedbackTagDictionary.NoTagID, featuredItemsFilter);
       else
-         return getTagFilteredFeaturedItemsSearchListGroup(featuredFeedbackNode.feedbackByTag, featuredItemsFilter);
+         return getTagFilteredFeaturedItemsSearchListGroup(featuredFeedbackNode.feedbackByTag, featuredItemsFilter, filterTagIDs);
    }
 
 
-   private FeaturedItemsSearchList getInitialisedSearchFeaturedItemsList(final List<PersonalFeedbackFeaturedPerson> feedback, final String feedbackSourceTag,
+   private FeaturedItemsSearchList getInitialisedSearchFeaturedItemsList(final List<FeaturedPersonNode> feedback, final int feedbackSourceTagID,
                                                                          final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
    {
       if (feedback.isEmpty())
          return null;
       else if (featuredItemsFilter.lastRetrievedSortValue == FeedbactoryConstants.NoTime)
-         return new FeaturedItemsSearchList(feedback, feedbackSourceTag, feedback.size() - 1);
+         return new FeaturedItemsSearchList(feedback, feedbackSourceTagID, feedback.size() - 1);
       else
       {
          /* Initialise the search start index of the user's next batch of featured items to retrieve, assuming progressively descending movement through the list,
@@ -1432,7 +1737,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
           * item would be present.
           */
          final PersonalFeedbackPersonProfile personProfile = new PersonalFeedbackPersonProfile(featuredItemsFilter.lastRetrievedItem);
-         final PersonalFeedbackFeaturedPerson searchPerson = new PersonalFeedbackFeaturedPerson(personProfile, featuredItemsFilter.lastRetrievedSortValue);
+         final FeaturedPersonNode searchPerson = new FeaturedPersonNode(new PersonalFeedbackFeaturedPerson(personProfile, featuredItemsFilter.lastRetrievedSortValue), NoTagIDs);
 
          int searchStartIndex = Collections.binarySearch(feedback, searchPerson, featuredPersonComparator);
 
@@ -1469,24 +1774,24 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
             }
          }
 
-         return new FeaturedItemsSearchList(feedback, feedbackSourceTag, searchStartIndex);
+         return new FeaturedItemsSearchList(feedback, feedbackSourceTagID, searchStartIndex);
       }
    }
 
 
-   private FeaturedItemsSearchList getTagFilteredFeaturedItemsSearchListGroup(final Map<String, List<PersonalFeedbackFeaturedPerson>> feedbackByTag,
-                                                                              final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
+   private FeaturedItemsSearchList getTagFilteredFeaturedItemsSearchListGroup(final Map<Integer, List<FeaturedPersonNode>> feedbackByTag,
+                                                                              final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter, final int[] filterTagIDs)
    {
       /* If there are one or more filter tags, all of them must exist against an item profile to constitute a successful match.
        * Try to reduce the upcoming workload by selecting the shortest of the candidate tag lists to examine.
        */
-      List<PersonalFeedbackFeaturedPerson> shortestFeaturedItemsList = null;
-      String shortestFeaturedItemsListTag = null;
-      List<PersonalFeedbackFeaturedPerson> tagFeaturedItemsList;
+      List<FeaturedPersonNode> shortestFeaturedItemsList = null;
+      int shortestFeaturedItemsListTagID = PersonalFeedbackTagDictionary.NoTagID;
+      List<FeaturedPersonNode> tagFeaturedItemsList;
 
-      for (final String tag : featuredItemsFilter.filterTags)
+      for (final int tagID : filterTagIDs)
       {
-         tagFeaturedItemsList = feedbackByTag.get(tag);
+         tagFeaturedItemsList = feedbackByTag.get(tagID);
 
          if (tagFeaturedItemsList == null)
          {
@@ -1496,20 +1801,20 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
          else if ((shortestFeaturedItemsList == null) || (tagFeaturedItemsList.size() < shortestFeaturedItemsList.size()))
          {
             shortestFeaturedItemsList = tagFeaturedItemsList;
-            shortestFeaturedItemsListTag = tag;
+            shortestFeaturedItemsListTagID = tagID;
          }
       }
 
-      return getInitialisedSearchFeaturedItemsList(shortestFeaturedItemsList, shortestFeaturedItemsListTag, featuredItemsFilter);
+      return getInitialisedSearchFeaturedItemsList(shortestFeaturedItemsList, shortestFeaturedItemsListTagID, featuredItemsFilter);
    }
 
 
-   private List<PersonalFeedbackFeaturedPerson> getFeaturedItemsSample(final List<FeaturedItemsSearchList> featuredItemsSearchListGroup, final Set<String> filterTags)
+   private List<PersonalFeedbackFeaturedPerson> getFeaturedItemsSample(final List<FeaturedItemsSearchList> featuredItemsSearchListGroup, final int[] filterTagIDs)
    {
       final List<PersonalFeedbackFeaturedPerson> featuredFeedbackSample = new ArrayList<>(FeaturedFeedbackMaximumSampleSize);
 
-      if (! filterTags.isEmpty())
-         initialiseTagFilteredSearchListGroup(featuredItemsSearchListGroup, filterTags);
+      if (filterTagIDs.length > 0)
+         initialiseTagFilteredSearchListGroup(featuredItemsSearchListGroup, filterTagIDs);
 
       /* All sorted search lists within the group have now been initialised so that they are pointing to the next featured item that matches all filter criteria.
        * From here it's a matter of retrieving the top-ranked FeaturedFeedbackMaximumSampleSize items from across the lists.
@@ -1529,12 +1834,12 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
          if (! featuredItemsSearchListGroup.isEmpty())
          {
             nextFeaturedItemList = featuredItemsSearchListGroup.get(featuredItemsSearchListGroup.size() - 1);
-            featuredFeedbackSample.add(nextFeaturedItemList.searchList.get(nextFeaturedItemList.activeSearchIndex));
+            featuredFeedbackSample.add(nextFeaturedItemList.searchList.get(nextFeaturedItemList.activeSearchIndex).featuredPerson);
             nextFeaturedItemList.decrementFeedbackSearchIndex();
 
             featuredItemsSearchListGroup.remove(featuredItemsSearchListGroup.size() - 1);
 
-            if (getNextFeaturedItem(nextFeaturedItemList, filterTags) != null)
+            if (getNextFeaturedItem(nextFeaturedItemList, filterTagIDs) != null)
             {
                // The list still has items to offer, so reinsert it into the group at its new sorted position.
                sortedIndex = Collections.binarySearch(featuredItemsSearchListGroup, nextFeaturedItemList, featuredItemsSearchListComparator);
@@ -1553,7 +1858,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private void initialiseTagFilteredSearchListGroup(final List<FeaturedItemsSearchList> featuredItemsSearchListGroup, final Set<String> filterTags)
+   private void initialiseTagFilteredSearchListGroup(final List<FeaturedItemsSearchList> featuredItemsSearchListGroup, final int[] filterTagIDs)
    {
       /* When a tag filter has been specified, ensure that all of the search lists are initialised such that their data index points to the first
        * featured item that matches the tag filter.
@@ -1564,21 +1869,21 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
       while (searchListIterator.hasNext())
       {
          searchList = searchListIterator.next();
-         if (getNextFeaturedItem(searchList, filterTags) == null)
+         if (getNextFeaturedItem(searchList, filterTagIDs) == null)
             searchListIterator.remove();
       }
    }
 
 
-   private PersonalFeedbackFeaturedPerson getNextFeaturedItem(final FeaturedItemsSearchList featuredItemsSearchList, final Set<String> filterTags)
+   private FeaturedPersonNode getNextFeaturedItem(final FeaturedItemsSearchList featuredItemsSearchList, final int[] filterTagIDs)
    {
-      PersonalFeedbackFeaturedPerson nextFeaturedPerson;
+      FeaturedPersonNode nextFeaturedPerson;
 
       while (featuredItemsSearchList.activeSearchIndex >= 0)
       {
          nextFeaturedPerson = featuredItemsSearchList.searchList.get(featuredItemsSearchList.activeSearchIndex);
 
-         if (filterTags.isEmpty() || matchesTagFilter(nextFeaturedPerson, filterTags, featuredItemsSearchList.sourceTag))
+         if ((filterTagIDs.length == 0) || matchesTagFilter(nextFeaturedPerson, filterTagIDs, featuredItemsSearchList.sourceTagID))
             return nextFeaturedPerson;
 
          featuredItemsSearchList.decrementFeedbackSearchIndex();
@@ -1588,23 +1893,20 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private boolean matchesTagFilter(final PersonalFeedbackFeaturedPerson featuredItem, final Set<String> filterTags, final String excludeTag)
+   private boolean matchesTagFilter(final FeaturedPersonNode featuredItem, final int[] filterTagIDs, final int excludeTagID)
    {
-      final Set<String> displayNameTags = getItemDisplayNameTags(featuredItem.personProfile.getFullName());
-
       /* Attempt to find every tag in each candidate feedback item; bail out of processing the item if
-       * a tag isn't found in either the item's explicit tags or those implied by the item's display name.
+       * a tag isn't found in the item's combined explicit and display name tag IDs.
        */
-      for (final String tag : filterTags)
+      for (final int tagID : filterTagIDs)
       {
          /* Don't recheck for the presence of the tag that was used to obtain the feedback list,
           * since it's already known to be a match.
-          * Equals() will always check for reference equality first, so this is not needlessly expensive.
           */
-         if (tag.equals(excludeTag))
+         if (tagID == excludeTagID)
             continue;
 
-         if ((! featuredItem.personProfile.hasTag(tag)) && (! displayNameTags.contains(tag)))
+         if (! featuredItem.hasTag(tagID))
             return false;
       }
 
@@ -1619,7 +1921,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> handleGetItemFeedbackSubmissions(final PersonalFeedbackPerson person)
    {
-      final PersonalFeedbackNode feedbackForPerson = personalFeedback.get(person);
+      final PersonalFeedbackNode feedbackForPerson = getPartition(person).feedback.get(person);
       if (feedbackForPerson != null)
       {
          synchronized (feedbackForPerson)
@@ -1637,16 +1939,29 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private ItemProfileFeedbackSubmission handleReplaceItemProfile(final FeedbactoryUserAccount account, final PersonalFeedbackPersonProfile personProfile)
    {
-      final PersonalFeedbackNode feedbackForPerson = personalFeedback.get(personProfile.person);
-      if (feedbackForPerson != null)
+      // The caller holds the lock on the user account.
+      final PersonalFeedbackPartition partition = getPartition(personProfile.person);
+
+      try
       {
-         synchronized (feedbackForPerson)
+         partition.partitionLock.readLock().lock();
+
+         // The parent feedback manager will leave the submission untouched if the partition has been dropped.
+         final PersonalFeedbackNode feedbackForPerson = partition.feedback.get(personProfile.person);
+         if (feedbackForPerson != null)
          {
-            return feedbackForPerson.replacePersonProfile(account, personProfile);
+            synchronized (feedbackForPerson)
+            {
+               return feedbackForPerson.replacePersonProfile(account, personProfile);
+            }
          }
-      }
 
-      return null;
+         return null;
+      }
+      finally
+      {
+         partition.partitionLock.readLock().unlock();
+      }
    }
 
 
@@ -1665,7 +1980,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private String readNullableString(final DataInputStream dataInputStream) throws IOException
+   private String readNullableString(final DataInput dataInputStream) throws IOException
    {
       return dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
    }
@@ -1683,7 +1998,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private PersonalFeedbackPerson handleReadPersonalFeedbackPerson(final DataInputStream dataInputStream) throws IOException
+   private PersonalFeedbackPerson handleReadPersonalFeedbackPerson(final DataInput dataInputStream) throws IOException
    {
       final short websiteValue = dataInputStream.readShort();
       final PersonalFeedbackWebsite website = PersonalFeedbackWebsite.fromValue(websiteValue);
@@ -1713,7 +2028,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private PersonalFeedbackPersonProfile handleReadPersonalFeedbackPersonProfile(final DataInputStream dataInputStream) throws IOException
+   private PersonalFeedbackPersonProfile handleReadPersonalFeedbackPersonProfile(final DataInput dataInputStream) throws IOException
    {
       final PersonalFeedbackPerson person = readFeedbackItem(dataInputStream);
 
@@ -1732,7 +2047,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private Set<String> readPersonProfileKeywords(final DataInputStream dataInputStream) throws IOException
+   private Set<String> readPersonProfileKeywords(final DataInput dataInputStream) throws IOException
    {
       final byte numberOfKeywords = dataInputStream.readByte();
       if (numberOfKeywords == 0)
@@ -1753,8 +2068,8 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
          else if (keywords.contains(keyword))
             throw new IllegalArgumentException("Duplicate item profile keyword: " + keyword);
 
-         // Many keywords will be heavily duplicated across item profiles and other requests, so intern() them here to save memory.
-         keywords.add(keyword.toLowerCase().intern());
+         // Many keywords will be heavily duplicated across item profiles, so share the tag dictionary's instance to save memory.
+         keywords.add(tagDictionary.canonicaliseTag(keyword.toLowerCase()));
       }
 
       return keywords;
@@ -1783,7 +2098,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   private PersonalFeedbackSubmission handleReadFeedbackSubmission(final PersonalFeedbackPerson item, final DataInputStream dataInputStream) throws IOException
+   private PersonalFeedbackSubmission handleReadFeedbackSubmission(final PersonalFeedbackPerson item, final DataInput dataInputStream) throws IOException
    {
       final byte overallFeedbackRating;
       final byte numberOfFeedbackCriteria = dataInputStream.readByte();
@@ -1809,7 +2124,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private <E extends Enum<E> & PersonalFeedbackCriteria> PersonalFeedbackSubmission readProfileCriteriaFeedbackSubmission(final int numberOfFeedbackCriteria,
                                                                                                                            final PersonalFeedbackCriteriaAttributes<E> criteriaAttributes,
-                                                                                                                           final DataInputStream dataInputStream) throws IOException
+                                                                                                                           final DataInput dataInputStream) throws IOException
    {
       final PersonalFeedbackSubmissionScaleProfile submissionScaleProfile = criteriaAttributes.getSubmissionScaleProfile();
       final EnumMap<E, PersonalFeedbackSubmissionScaleKeyValue> criteriaFeedback = new EnumMap<>(criteriaAttributes.getCriteriaClass());
@@ -1876,13 +2191,22 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
    private void handleClearItemFeedbackSubmissions()
    {
-      personalFeedback.clear();
+      for (final Map<PersonalFeedbackWebsite, PersonalFeedbackPartition> criteriaTypePartitions : personalFeedback.values())
+      {
+         for (final PersonalFeedbackPartition partition : criteriaTypePartitions.values())
+            partition.feedback.clear();
+      }
 
       for (final CriteriaTypeFeaturedPeopleNode featuredPeopleNode : criteriaTypeNewFeedback.values())
          clearFeaturedItemFeedback(featuredPeopleNode);
 
       for (final CriteriaTypeFeaturedPeopleNode featuredPeopleNode : criteriaTypeHotFeedback.values())
          clearFeaturedItemFeedback(featuredPeopleNode);
+
+      // With the featured items indexes emptied there are no remaining references on the tag dictionary.
+      tagDictionary.clear();
+
+      // The rating rollups aren't built from the submissions, so are left intact; they're replaced by restoreFromCheckpoint().
    }
 
 
@@ -1906,58 +2230,200 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   /* This method is performing the same work as addPersonalFeedbackSubmission() except that there's no add to the parent feedback manager (this is to be taken care of
-    * by the caller), and this method can also assume that there's no thread contention for the person feedback collection and that the necessary locking on the user account is
-    * already taken care of by the caller.
+   /* This method is performing the same work as addPersonalFeedbackSubmission() for all of an item's submissions at once, except that there's no add to the
+    * parent feedback manager (this is to be taken care of by the caller), and there's no locking on the user accounts since there can be no other activity
+    * on them during the restore. The parent feedback manager hands over each item's submissions exactly once, but may do so for different items
+    * concurrently, hence the concurrent put to the partition.
     *
-    * Also note that the creation time is progressively reset to the earliest submission time. It's unfortunate that this field cannot be made final and
-    * initialised in a more efficient way, but there are a few issues that make this a tricky (and/or expensive) goal:
-    * 
-    * - This method must assume that calls are made to it from the parent feedback manager in no particular order, and furthermore it wouldn't make sense for the parent to
-    *   change this behaviour, eg. ordered by feedback item and by created time.
-    * - Even if the creation time was saved & later restored, and reconciled to each PersonalFeedbackNode where possible, placing a new put() call to the
-    *   personalFeedback collection must be done with care otherwise the key - a PersonalFeedbackPerson object - will no longer be a shared cached object; this will be
-    *   the case if for example the PersonalFeedbackPerson is reconstituted from a data file rather than received from the parent as it is here.
-    * - Re: the previous point, it would probably be unreasonable to expect the parent feedback manager to also maintain and provide cached copies of the
-    *   FeedbackItem's, since it has no use for that collection itself. It would also make no sense for this class to maintain such a collection, since it would only be
-    *   used once for the restoration operation.
-    * - Likewise providing an intern() method to cache the object on a hidden static map stored within the FeedbackItem itself isn't such a good option,
-    *   since it would have to be a concurrent collection and this would be totally wasted on the client, which also uses the FeedbackItem object.
-    * - The creation time could be restored via a post-checkpoint-restore method that reads this information from a file, but even aside from the above caching issue to
-    *   contend with, there is the problem of dealing with the concurrency: feedback items may be added or removed between the time that the parent feedback manager
-    *   persists its data, and then invokes the post-checkpoint-save methods on this class. This is actually not so difficult to deal with but again some extra work:
-    *   if a creation time is stored for a feedback item that no longer exists according to the parent feedback manager, the creation time is simply discarded;
-    *   in the reverse case, there will be no creation time persisted by this class but any of the item's feedback submission times may be used as a fallback since
-    *   it must have been created in response to a feedback submission received at the very moment between the parent persisting its data, and the post-checkpoint-save
-    *   being called on this class.
+    * Since all of the item's submissions are available up front, the submissions collection can be sized to fit and the node's creation time - which isn't
+    * persisted - can be set directly to the earliest submission time, rather than being progressively reset as each submission is restored.
     */
-   private void handleRestoreItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission feedbackSubmission)
+   private void handleRestoreItemFeedbackSubmissions(final PersonalFeedbackPerson person, final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> restoredFeedbackSubmissions)
    {
-      final PersonalFeedbackPerson person = feedbackSubmission.personProfile.person;
-      final long submissionTime = feedbackSubmission.submissionTime;
+      final PersonalFeedbackPartition partition = getPartition(person);
 
-      boolean setCreationTime = false;
-      PersonalFeedbackNode feedbackForPerson = personalFeedback.get(person);
+      // The feedback for a dropped partition will be rebuilt from the parent feedback manager's records if the website is re-enabled.
+      if (partition.isDropped || restoredFeedbackSubmissions.isEmpty())
+         return;
 
-      if (feedbackForPerson == null)
+      long earliestSubmissionTime = Long.MAX_VALUE;
+      for (final ItemProfileFeedbackSubmission feedbackSubmission : restoredFeedbackSubmissions.values())
+         earliestSubmissionTime = Math.min(earliestSubmissionTime, ((PersonProfileFeedbackSubmission) feedbackSubmission).submissionTime);
+
+      final PersonalFeedbackNode feedbackForPerson = new PersonalFeedbackNode(person.getCriteriaType().attributes, earliestSubmissionTime,
+                                                                              (int) (restoredFeedbackSubmissions.size() / 0.75f) + 1);
+
+      // Ensure the visibility of the non-final feedback fields to subsequent threads.
+      synchronized (feedbackForPerson)
       {
-         feedbackForPerson = new PersonalFeedbackNode(person.getCriteriaType().attributes, submissionTime);
-         personalFeedback.put(person, feedbackForPerson);
+         for (final Entry<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> submissionEntry : restoredFeedbackSubmissions.entrySet())
+            feedbackForPerson.addFeedbackSubmission(submissionEntry.getKey(), (PersonProfileFeedbackSubmission) submissionEntry.getValue());
       }
-      else if (submissionTime < feedbackForPerson.creationTime)
-         setCreationTime = true;
 
-      // Ensure the visibility of the updated non-final feedback fields to subsequent threads.
-      synchronized (feedbackForPerson)
+      partition.feedback.put(person, feedbackForPerson);
+   }
+
+
+   /* The journal replay is applied to the parent feedback manager's records only, and the feedback nodes are later built from those in one step by
+    * restoreItemFeedbackSubmissions(), or when a standby server is promoted. The rating rollups can't be derived from the final submissions though, so the
+    * replayed changes are recorded here as they're applied, against the rollups restored by preCheckpointRestore().
+    */
+   private void handleReplayFeedbackSubmissionChange(final PersonalFeedbackPerson person, final PersonProfileFeedbackSubmission previousSubmission,
+                                                     final PersonProfileFeedbackSubmission newSubmission)
+   {
+      ratingRollups.recordRatingChange(person, (previousSubmission != null) ? previousSubmission.feedbackSubmission : null,
+                                       (newSubmission != null) ? newSubmission.feedbackSubmission : null);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private PersonalFeedbackPartition getPartition(final PersonalFeedbackPerson person)
+   {
+      return personalFeedback.get(person.getCriteriaType()).get(person.getWebsite());
+   }
+
+
+   private void handleDropWebsiteFeedback(final PersonalFeedbackWebsite website)
+   {
+      PersonalFeedbackPartition partition;
+
+      for (final PersonalFeedbackCriteriaType criteriaType : website.getCriteriaTypes())
+      {
+         partition = personalFeedback.get(criteriaType).get(website);
+
+         try
+         {
+            partition.partitionLock.writeLock().lock();
+
+            partition.isDropped = true;
+            clearPartition(partition);
+         }
+         finally
+         {
+            partition.partitionLock.writeLock().unlock();
+         }
+      }
+   }
+
+
+   private void clearPartition(final PersonalFeedbackPartition partition)
+   {
+      // Any thread that has fetched a node from the partition but not yet locked it will see the deleted flag and retry.
+      for (final PersonalFeedbackNode feedbackNode : partition.feedback.values())
+      {
+         synchronized (feedbackNode)
+         {
+            feedbackNode.markAsDeleted();
+         }
+      }
+
+      partition.feedback.clear();
+   }
+
+
+   private void handleRebuildWebsiteFeedback(final PersonalFeedbackWebsite website)
+   {
+      PersonalFeedbackPartition partition;
+
+      for (final PersonalFeedbackCriteriaType criteriaType : website.getCriteriaTypes())
+      {
+         partition = personalFeedback.get(criteriaType).get(website);
+
+         try
+         {
+            partition.partitionLock.writeLock().lock();
+
+            // The rebuild always starts from an empty partition, whether or not it was previously dropped.
+            clearPartition(partition);
+            partition.isDropped = false;
+         }
+         finally
+         {
+            partition.partitionLock.writeLock().unlock();
+         }
+      }
+
+      /* The partitions are now live, so any submissions arriving from this point on (from requests that were in flight when the website was disabled) are recorded
+       * as normal. The replay visits each user account under its lock, so a submission that is added or removed while the replay is in progress will either be
+       * reflected in the records visited, or will be applied after that account has already been replayed.
+       */
+      feedbackManager.visitWebsiteFeedbackSubmissions(website, new ItemProfileFeedbackSubmissionVisitor()
+      {
+         @Override
+         final public void visit(final FeedbactoryUserAccount userAccount, final ItemProfileFeedbackSubmission feedbackSubmission)
+         {
+            rebuildItemFeedbackSubmission(userAccount, (PersonProfileFeedbackSubmission) feedbackSubmission);
+         }
+      });
+   }
+
+
+   /* Performs the same work as restoreItemFeedbackSubmissions() for a single submission, except that the partition may be concurrently accessed, so the loop & retry approach
+    * of addItemFeedbackSubmission() is used. The caller holds the lock on the user account.
+    */
+   private void rebuildItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonProfileFeedbackSubmission feedbackSubmission)
+   {
+      final PersonalFeedbackPerson person = feedbackSubmission.personProfile.person;
+      final PersonalFeedbackPartition partition = getPartition(person);
+
+      try
       {
-         feedbackForPerson.addFeedbackSubmission(userAccount, feedbackSubmission);
+         partition.partitionLock.readLock().lock();
+
+         // The website may have already been disabled again.
+         if (partition.isDropped)
+            return;
+
+         for (;;)
+         {
+            PersonalFeedbackNode feedbackForPerson = partition.feedback.get(person);
+
+            if (feedbackForPerson == null)
+            {
+               feedbackForPerson = new PersonalFeedbackNode(person.getCriteriaType().attributes, feedbackSubmission.submissionTime);
+
+               final PersonalFeedbackNode existingEntry = partition.feedback.putIfAbsent(person, feedbackForPerson);
 
-         if (setCreationTime)
-            feedbackForPerson.setCreationTime(submissionTime);
+               if (existingEntry != null)
+                  feedbackForPerson = existingEntry;
+            }
+
+            synchronized (feedbackForPerson)
+            {
+               if (! feedbackForPerson.isDeleted)
+               {
+                  feedbackForPerson.addFeedbackSubmission(userAccount, feedbackSubmission);
+
+                  if (feedbackSubmission.submissionTime < feedbackForPerson.creationTime)
+                     feedbackForPerson.setCreationTime(feedbackSubmission.submissionTime);
+
+                  return;
+               }
+            }
+         }
+      }
+      finally
+      {
+         partition.partitionLock.readLock().unlock();
       }
    }
 
 
+   private int handleGetWebsiteItemCount(final PersonalFeedbackWebsite website)
+   {
+      int itemCount = 0;
+
+      for (final PersonalFeedbackCriteriaType criteriaType : website.getCriteriaTypes())
+         itemCount += personalFeedback.get(criteriaType).get(website).feedback.size();
+
+      return itemCount;
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -1981,7 +2447,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   final PersonalFeedbackNode addPersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPersonProfile personProfile, final PersonalFeedbackSubmission feedbackSubmission)
+   final PersonalFeedbackSubmissionResult addPersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPersonProfile personProfile, final PersonalFeedbackSubmission feedbackSubmission)
    {
       return handleAddItemFeedbackSubmission(userAccount, personProfile, feedbackSubmission);
    }
@@ -1993,12 +2459,19 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
-   final PersonalFeedbackNode removePersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPerson person)
+   final PersonalFeedbackSubmissionResult removePersonalFeedbackSubmission(final FeedbactoryUserAccount userAccount, final PersonalFeedbackPerson person)
    {
       return handleRemovePersonalFeedbackSubmission(userAccount, person);
    }
 
 
+   final void awaitDurable(final PersonalFeedbackSubmissionResult submissionResult)
+   {
+      if (submissionResult.submissionUpdate != null)
+         feedbackManager.awaitDurable(submissionResult.submissionUpdate);
+   }
+
+
    final List<PersonalFeedbackFeaturedPerson> getNextNewItemsSample(final CriteriaFeedbackFeaturedItemsFilter featuredItemsFilter)
    {
       return handleGetNextNewItemsSample(featuredItemsFilter);
@@ -2011,6 +2484,62 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    }
 
 
+   final String getCanonicalTag(final String tag)
+   {
+      return tagDictionary.getCanonicalTag(tag);
+   }
+
+
+   final String canonicaliseTag(final String tag)
+   {
+      return tagDictionary.canonicaliseTag(tag);
+   }
+
+
+   final PersonalFeedbackTagDictionary.TagDictionaryMetrics getTagDictionaryMetrics()
+   {
+      return tagDictionary.getMetrics();
+   }
+
+
+   final List<PersonalFeedbackRatingRollups.RatingTrendBucket> getItemRatingTrend(final PersonalFeedbackPerson person, final PersonalFeedbackRatingTrendGranularity granularity,
+                                                                                  final int numberOfBuckets)
+   {
+      return ratingRollups.getItemRatingTrend(person, granularity, numberOfBuckets);
+   }
+
+
+   final List<PersonalFeedbackRatingRollups.RatingTrendBucket> getWebsiteRatingTrend(final PersonalFeedbackCriteriaType criteriaType, final PersonalFeedbackWebsite website,
+                                                                                     final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets)
+   {
+      return ratingRollups.getWebsiteRatingTrend(criteriaType, website, granularity, numberOfBuckets);
+   }
+
+
+   final int getNumberOfRatingRollupItems()
+   {
+      return ratingRollups.getNumberOfItemSeries();
+   }
+
+
+   final void dropWebsiteFeedback(final PersonalFeedbackWebsite website)
+   {
+      handleDropWebsiteFeedback(website);
+   }
+
+
+   final void rebuildWebsiteFeedback(final PersonalFeedbackWebsite website)
+   {
+      handleRebuildWebsiteFeedback(website);
+   }
+
+
+   final int getWebsiteItemCount(final PersonalFeedbackWebsite website)
+   {
+      return handleGetWebsiteItemCount(website);
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -2027,7 +2556,15 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    @Override
    final public Set<FeedbackItem> getFeedbackItems()
    {
-      return new HashSet<FeedbackItem>(personalFeedback.keySet());
+      final Set<FeedbackItem> feedbackItems = new HashSet<>();
+
+      for (final Map<PersonalFeedbackWebsite, PersonalFeedbackPartition> criteriaTypePartitions : personalFeedback.values())
+      {
+         for (final PersonalFeedbackPartition partition : criteriaTypePartitions.values())
+            feedbackItems.addAll(partition.feedback.keySet());
+      }
+
+      return feedbackItems;
    }
 
 
@@ -2046,7 +2583,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
 
    @Override
-   final public PersonalFeedbackPerson readFeedbackItem(final DataInputStream dataInputStream) throws IOException
+   final public PersonalFeedbackPerson readFeedbackItem(final DataInput dataInputStream) throws IOException
    {
       return handleReadPersonalFeedbackPerson(dataInputStream);
    }
@@ -2060,7 +2597,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
 
    @Override
-   final public PersonalFeedbackPersonProfile readFeedbackItemProfile(final DataInputStream dataInputStream) throws IOException
+   final public PersonalFeedbackPersonProfile readFeedbackItemProfile(final DataInput dataInputStream) throws IOException
    {
       return handleReadPersonalFeedbackPersonProfile(dataInputStream);
    }
@@ -2074,7 +2611,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
 
    @Override
-   final public PersonalFeedbackSubmission readFeedbackSubmission(final FeedbackItem item, final DataInputStream dataInputStream) throws IOException
+   final public PersonalFeedbackSubmission readFeedbackSubmission(final FeedbackItem item, final DataInput dataInputStream) throws IOException
    {
       return handleReadFeedbackSubmission((PersonalFeedbackPerson) item, dataInputStream);
    }
@@ -2097,7 +2634,7 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    @Override
    final public void postCheckpointSave(final Path checkpointPath) throws IOException
    {
-      // NOP for this category manager.
+      ratingRollups.saveCheckpoint(checkpointPath);
    }
 
 
@@ -2111,14 +2648,22 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
    @Override
    final public void preCheckpointRestore(final Path checkpointPath) throws IOException
    {
-      // NOP for this category manager.
+      // Restored ahead of the journal replay, so that the replayed changes are recorded on top.
+      ratingRollups.restoreFromCheckpoint(checkpointPath);
+   }
+
+
+   @Override
+   final public void restoreItemFeedbackSubmissions(final FeedbackItem item, final Map<FeedbactoryUserAccount, ItemProfileFeedbackSubmission> restoredItemFeedbackSubmissions)
+   {
+      handleRestoreItemFeedbackSubmissions((PersonalFeedbackPerson) item, restoredItemFeedbackSubmissions);
    }
 
 
    @Override
-   final public void restoreItemFeedbackSubmission(final FeedbactoryUserAccount userAccount, final ItemProfileFeedbackSubmission restoredItemProfileFeedbackSubmission)
+   final public void replayFeedbackSubmissionChange(final FeedbackItem item, final ItemProfileFeedbackSubmission previousSubmission, final ItemProfileFeedbackSubmission newSubmission)
    {
-      handleRestoreItemFeedbackSubmission(userAccount, (PersonProfileFeedbackSubmission) restoredItemProfileFeedbackSubmission);
+      handleReplayFeedbackSubmissionChange((PersonalFeedbackPerson) item, (PersonProfileFeedbackSubmission) previousSubmission, (PersonProfileFeedbackSubmission) newSubmission);
    }
 
 
@@ -2130,9 +2675,9 @@ final class PersonalFeedbackManager implements FeedbackCategoryManager
 
 
    @Override
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      housekeepingTask.start();
+      housekeepingTask.start(housekeepingScheduler);
    }
 
 
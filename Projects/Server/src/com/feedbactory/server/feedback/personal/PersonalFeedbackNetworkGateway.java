@@ -6,7 +6,7 @@ import com.feedbactory.server.core.FeedbactorySecurityException;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SecurityLogLevel;
 import com.feedbactory.server.feedback.FeedbackCategoryNetworkGateway;
-import com.feedbactory.server.feedback.personal.PersonalFeedbackManager.PersonalFeedbackNode;
+import com.feedbactory.server.feedback.personal.PersonalFeedbackManager.PersonalFeedbackSubmissionResult;
 import com.feedbactory.server.network.application.ProcessedOperationStatus;
 import com.feedbactory.server.network.application.RequestUserSession;
 import com.feedbactory.server.network.component.buffer.ReadableByteBuffer;
@@ -27,6 +27,7 @@ import com.feedbactory.shared.feedback.personal.PersonalFeedbackDetailedSummary;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackFeaturedPerson;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackPerson;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackPersonProfile;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackRatingTrendGranularity;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackRequestType;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmission;
 import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmissionScaleKeyValue;
@@ -50,6 +51,8 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
 {
    static final private String WebsiteFeedbackOnCommandSwitch = "on";
    static final private String WebsiteFeedbackOffCommandSwitch = "off";
+   static final private String TagDictionaryCommandSwitch = "tags";
+   static final private String RatingRollupsCommandSwitch = "rollups";
 
    final private PersonalFeedbackManager personalFeedbackManager;
 
@@ -228,7 +231,7 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
       final String displayName = requestBuffer.getUTF8EncodedString();
       final String photoURL = requestBuffer.getUTF8EncodedString();
       final String url = requestBuffer.getUTF8EncodedString();
-      final Set<String> tags = readItemTags(requestBuffer, PersonalFeedbackConstants.MaximumPersonProfileTags);
+      final Set<String> tags = readItemTags(requestBuffer, PersonalFeedbackConstants.MaximumPersonProfileTags, true);
 
       if (! validateFieldLength(userID, PersonalFeedbackConstants.MaximumPersonProfileUserIDLength))
          throw new FeedbactorySecurityException(getClass(), generateFailedValidationMessage("user ID", userID));
@@ -253,7 +256,7 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
    }
 
 
-   private Set<String> readItemTags(final ReadableByteBuffer requestBuffer, final int maximumAllowableTags)
+   private Set<String> readItemTags(final ReadableByteBuffer requestBuffer, final int maximumAllowableTags, final boolean isProfileTags)
    {
       final byte numberOfTags = requestBuffer.get();
       if (numberOfTags == 0)
@@ -291,16 +294,12 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
             throw new FeedbactorySecurityException(getClass(), messageBuilder.toString());
          }
 
-         /* Many keywords will be heavily duplicated across item profiles and other requests, so intern() them here to save memory.
-          * When this method is reading tags as part of a filter, this has the added benefit that those tags will be reference-equal
-          * to the tags stored against the item profiles.
-          * As of JDK 7 & 8 intern()ed strings are placed in the heap so they are eligible for garbage collection, hence there is no
-          * concern of a deluge of otherwise unused filter tags being read in and retained in memory forever; if the string isn't referenced elsewhere,
-          * it can be garbage collected as with any other object.
-          *
-          * For the intern() collection to stay efficient as the number of items (and keywords) grows, it's probably worthwhile to use
-          * the -XX:StringTableSize=n JVM switch, where n is a large prime number. Use -XX:+PrintStringTableStatistics to output
-          * the usage stats of the String intern table, or the jmap command utility: 'jmap -heap <java process ID>'.
+         /* Many keywords will be heavily duplicated across item profiles and other requests, so share the instance held by the personal feedback
+          * tag dictionary to save memory. This previously used String.intern(), but the JVM string table is a shared resource whose efficiency
+          * depends on the -XX:StringTableSize switch being tuned in advance. Profile tags are added to the dictionary if they're not already there,
+          * so that each distinct tag is held once however many profiles carry it. Filter tags are only looked up, never added, so there is no concern
+          * of a deluge of otherwise unused filter tags being read in and retained in memory; they are resolved against the dictionary separately by the
+          * personal feedback manager.
           *
           * Also note that the toLowerCase() assumes that the server locale has already been set to a specific value, which is the same
           * locale value that will be used when clients apply toLowerCase() to tags that will be sent to the server and ultimately processed
@@ -309,7 +308,8 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
           * produce a dotless 'ı', and re-lowercasing that here is no good since it again produces 'ı'. The English lowercasing has to be
           * done from the client end using toLowerCase(Locale.ENGLISH).
           */
-         tag = tag.toLowerCase().intern();
+         tag = tag.toLowerCase();
+         tag = isProfileTags ? personalFeedbackManager.canonicaliseTag(tag) : personalFeedbackManager.getCanonicalTag(tag);
 
          if (tags.contains(tag))
             throw new FeedbactorySecurityException(getClass(), "Duplicate tag supplied for item profile or filter: " + tag);
@@ -538,7 +538,7 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
          throw new FeedbactorySecurityException(getClass(), "Invalid personal feedback criteria type value: " + criteriaTypeValue);
 
       final Set<PersonalFeedbackWebsite> filterWebsites = readFilterWebsites(criteriaType, requestBuffer);
-      final Set<String> filterTags = readItemTags(requestBuffer, PersonalFeedbackConstants.MaximumPersonProfileSearchableTags);
+      final Set<String> filterTags = readItemTags(requestBuffer, PersonalFeedbackConstants.MaximumPersonProfileSearchableTags, false);
       final long lastRetrievedSortValue = requestBuffer.getLong();
       final PersonalFeedbackPerson lastRetrievedItem;
       if (lastRetrievedSortValue != FeedbactoryConstants.NoTime)
@@ -645,20 +645,29 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
           * changing between the submission and the subsequent calculation of the basic summary. Meanwhile feedback submissions from other Feedbactory user accounts for
           * the person are unaffected, and any that occur may or may not be reflected in the returned feedback summary.
           */
+         final PersonalFeedbackSubmissionResult submissionResult;
+         final PersonalFeedbackBasicSummary feedbackBasicSummary;
+
          synchronized (userSession.account)
          {
-            final PersonalFeedbackNode personFeedbackNode = personalFeedbackManager.addPersonalFeedbackSubmission(userSession.account, personProfile, feedbackSubmission);
-
-            if (personFeedbackNode != null)
-            {
-               writeFeedbackSubmissionStatus(FeedbackSubmissionStatus.OK, userSession.responseBuffer);
-               final PersonalFeedbackBasicSummary feedbackBasicSummary = personalFeedbackManager.getPersonalFeedbackBasicSummary(personFeedbackNode, personProfile.person.getWebsite().showFeedbackLessThanMinimumThreshold());
+            submissionResult = personalFeedbackManager.addPersonalFeedbackSubmission(userSession.account, personProfile, feedbackSubmission);
 
-               writePersonalFeedbackBasicSummary(feedbackBasicSummary, userSession.responseBuffer);
-            }
+            if (submissionResult != null)
+               feedbackBasicSummary = personalFeedbackManager.getPersonalFeedbackBasicSummary(submissionResult.feedbackNode, personProfile.person.getWebsite().showFeedbackLessThanMinimumThreshold());
             else
-               writeFeedbackSubmissionStatus(FeedbackSubmissionStatus.FailedTooManySubmissions, userSession.responseBuffer);
+               feedbackBasicSummary = null;
          }
+
+         if (submissionResult != null)
+         {
+            // Wait for the journalled submission to be durable only after releasing the account lock, but before responding.
+            personalFeedbackManager.awaitDurable(submissionResult);
+
+            writeFeedbackSubmissionStatus(FeedbackSubmissionStatus.OK, userSession.responseBuffer);
+            writePersonalFeedbackBasicSummary(feedbackBasicSummary, userSession.responseBuffer);
+         }
+         else
+            writeFeedbackSubmissionStatus(FeedbackSubmissionStatus.FailedTooManySubmissions, userSession.responseBuffer);
       }
       else
          writeFeedbackSubmissionStatus(FeedbackSubmissionStatus.FailedWebsiteNotEnabled, userSession.responseBuffer);
@@ -673,25 +682,28 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
 
       if (isWebsiteEnabled(person.getWebsite()))
       {
-         writeBasicOperationStatus(BasicOperationStatus.OK, userSession.responseBuffer);
-
          /* Get a lock on the submitting user account here, to prevent the state of the feedback submissions from the Feedbactory user account for this user from possibly
           * changing between the submission removal and the subsequent calculation of the basic summary. Meanwhile feedback submissions from other Feedbactory user accounts
           * for the person are unaffected, and any that occur may or may not be reflected in the returned feedback summary.
           */
+         final PersonalFeedbackSubmissionResult submissionResult;
+         final PersonalFeedbackBasicSummary feedbackBasicSummary;
+
          synchronized (userSession.account)
          {
-            final PersonalFeedbackNode personFeedbackNode = personalFeedbackManager.removePersonalFeedbackSubmission(userSession.account, person);
-
-            final PersonalFeedbackBasicSummary feedbackBasicSummary;
+            submissionResult = personalFeedbackManager.removePersonalFeedbackSubmission(userSession.account, person);
 
-            if (personFeedbackNode != null)
-               feedbackBasicSummary = personalFeedbackManager.getPersonalFeedbackBasicSummary(personFeedbackNode, person.getWebsite().showFeedbackLessThanMinimumThreshold());
+            if (submissionResult.feedbackNode != null)
+               feedbackBasicSummary = personalFeedbackManager.getPersonalFeedbackBasicSummary(submissionResult.feedbackNode, person.getWebsite().showFeedbackLessThanMinimumThreshold());
             else
                feedbackBasicSummary = PersonalFeedbackBasicSummary.EmptyFeedbackBasicSummary;
-
-            writePersonalFeedbackBasicSummary(feedbackBasicSummary, userSession.responseBuffer);
          }
+
+         // Wait for the journalled removal to be durable only after releasing the account lock, but before responding.
+         personalFeedbackManager.awaitDurable(submissionResult);
+
+         writeBasicOperationStatus(BasicOperationStatus.OK, userSession.responseBuffer);
+         writePersonalFeedbackBasicSummary(feedbackBasicSummary, userSession.responseBuffer);
       }
       else
          writeBasicOperationStatus(BasicOperationStatus.Failed, userSession.responseBuffer);
@@ -719,6 +731,8 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
          case GetNewFeedbackItemsSample:
          case GetHotFeedbackItemsSample:
             return processGetFeaturedFeedbackItemsSample(requestType, userSession);
+         case GetPersonRatingTrend:
+            return processGetPersonRatingTrend(userSession);
 
          default:
             throw new AssertionError("Unhandled personal feedback request type: " + requestType);
@@ -778,10 +792,69 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
    }
 
 
+   private ProcessedOperationStatus processGetPersonRatingTrend(final RequestUserSession userSession)
+   {
+      if (userSession.sessionRequestType == SessionRequestType.EncryptedSessionRequest)
+      {
+         final String message = "Encrypted session used for get personal feedback rating trend request";
+         FeedbactoryLogger.logSecurityEvent(SecurityLogLevel.Medium, getClass(), message, userSession);
+
+         return ProcessedOperationStatus.ErroneousRequest;
+      }
+
+      final PersonalFeedbackPerson person = readPersonalFeedbackPerson(userSession.requestBuffer);
+
+      final byte granularityValue = userSession.requestBuffer.get();
+      final PersonalFeedbackRatingTrendGranularity granularity = PersonalFeedbackRatingTrendGranularity.fromValue(granularityValue);
+      if (granularity == null)
+         throw new FeedbactorySecurityException(getClass(), "Invalid personal feedback rating trend granularity value: " + granularityValue);
+
+      final short numberOfBuckets = userSession.requestBuffer.getShort();
+      if ((numberOfBuckets < 1) || (numberOfBuckets > granularity.maximumBuckets))
+         throw new FeedbactorySecurityException(getClass(), "Invalid number of personal feedback rating trend buckets: " + numberOfBuckets + " for granularity: " + granularity);
+
+      if (isWebsiteEnabled(person.getWebsite()))
+      {
+         writeBasicOperationStatus(BasicOperationStatus.OK, userSession.responseBuffer);
+
+         final List<PersonalFeedbackRatingRollups.RatingTrendBucket> ratingTrend = personalFeedbackManager.getItemRatingTrend(person, granularity, numberOfBuckets);
+         writeRatingTrend(ratingTrend, userSession.responseBuffer);
+      }
+      else
+         writeBasicOperationStatus(BasicOperationStatus.Failed, userSession.responseBuffer);
+
+      return ProcessedOperationStatus.OK;
+   }
+
+
+   private void writeRatingTrend(final List<PersonalFeedbackRatingRollups.RatingTrendBucket> ratingTrend, final WritableByteBuffer responseBuffer)
+   {
+      // Only the buckets having a non-zero change are included; the number of criteria for each bucket is implied by the item's criteria type.
+      responseBuffer.putShort((short) ratingTrend.size());
+
+      for (final PersonalFeedbackRatingRollups.RatingTrendBucket bucket : ratingTrend)
+      {
+         responseBuffer.putLong(bucket.bucketStartTime);
+         responseBuffer.putInteger(bucket.numberOfRatings);
+         responseBuffer.putLong(bucket.overallRatingSum);
+
+         for (int criteriaIndex = 0; criteriaIndex < bucket.criteriaNumberOfRatings.length; criteriaIndex ++)
+         {
+            responseBuffer.putInteger(bucket.criteriaNumberOfRatings[criteriaIndex]);
+            responseBuffer.putLong(bucket.criteriaRatingSums[criteriaIndex]);
+         }
+      }
+   }
+
+
    private String handleProcessConsoleCommand(final String[] arguments)
    {
       if (arguments.length == 0)
          return processDisplayWebsiteValues();
+      else if ((arguments.length == 1) && arguments[0].equals(TagDictionaryCommandSwitch))
+         return processDisplayTagDictionaryMetrics();
+      else if ((arguments.length >= 4) && arguments[0].equals(RatingRollupsCommandSwitch))
+         return processDisplayRatingTrend(arguments);
       else
       {
          final short websiteValue = Short.parseShort(arguments[0]);
@@ -817,10 +890,80 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
    }
 
 
+   private String processDisplayTagDictionaryMetrics()
+   {
+      final PersonalFeedbackTagDictionary.TagDictionaryMetrics tagDictionaryMetrics = personalFeedbackManager.getTagDictionaryMetrics();
+
+      final Formatter formatter = new Formatter();
+      final String outputFormat = "%-35s%d%n";
+
+      formatter.format("%s%n%n", "Tag dictionary:");
+
+      formatter.format(outputFormat, "Tags:", tagDictionaryMetrics.numberOfTags);
+      formatter.format(outputFormat, "Tag ID capacity:", tagDictionaryMetrics.tagIDCapacity);
+      formatter.format(outputFormat, "Free tag IDs:", tagDictionaryMetrics.numberOfFreeTagIDs);
+      formatter.format(outputFormat, "Tags removed at last compaction:", tagDictionaryMetrics.lastCompactionRemovedTags);
+
+      return formatter.toString();
+   }
+
+
+   private String processDisplayRatingTrend(final String[] arguments)
+   {
+      final short websiteValue = Short.parseShort(arguments[1]);
+      final PersonalFeedbackWebsite website = PersonalFeedbackWebsite.fromValue(websiteValue);
+      if (website == null)
+         throw new IllegalArgumentException("Invalid personal feedback website value: " + websiteValue);
+
+      final byte criteriaTypeValue = Byte.parseByte(arguments[2]);
+      final PersonalFeedbackCriteriaType criteriaType = PersonalFeedbackCriteriaType.fromValue(criteriaTypeValue);
+      if (criteriaType == null)
+         throw new IllegalArgumentException("Invalid personal feedback criteria type value: " + criteriaTypeValue);
+      else if (! website.getCriteriaTypes().contains(criteriaType))
+         throw new IllegalArgumentException("Website " + website.getName() + " does not support criteria feedback type: " + criteriaType);
+
+      final PersonalFeedbackRatingTrendGranularity granularity;
+      if (arguments[3].equalsIgnoreCase(PersonalFeedbackRatingTrendGranularity.Hourly.name()))
+         granularity = PersonalFeedbackRatingTrendGranularity.Hourly;
+      else if (arguments[3].equalsIgnoreCase(PersonalFeedbackRatingTrendGranularity.Daily.name()))
+         granularity = PersonalFeedbackRatingTrendGranularity.Daily;
+      else
+         return "Invalid rating trend granularity, must be one of hourly or daily.";
+
+      final List<PersonalFeedbackRatingRollups.RatingTrendBucket> ratingTrend;
+      final String trendSubject;
+
+      if (arguments.length == 4)
+      {
+         ratingTrend = personalFeedbackManager.getWebsiteRatingTrend(criteriaType, website, granularity, granularity.maximumBuckets);
+         trendSubject = website.getName() + " (" + criteriaType.displayName + ")";
+      }
+      else if (arguments.length == 5)
+      {
+         final PersonalFeedbackPerson person = new PersonalFeedbackPerson(website, arguments[4], criteriaType);
+         ratingTrend = personalFeedbackManager.getItemRatingTrend(person, granularity, granularity.maximumBuckets);
+         trendSubject = website.getName() + " item " + arguments[4];
+      }
+      else
+         return "Invalid command switch.";
+
+      final Formatter formatter = new Formatter();
+      final String headerOutputFormat = "%-30s%-15s%s%n%n";
+
+      formatter.format("%s rating trend for %s, items tracked: %d%n%n", granularity.name(), trendSubject, personalFeedbackManager.getNumberOfRatingRollupItems());
+      formatter.format(headerOutputFormat, "Period starting", "Ratings", "Rating sum");
+
+      for (final PersonalFeedbackRatingRollups.RatingTrendBucket bucket : ratingTrend)
+         formatter.format("%-30s%-+15d%+d%n", String.format("%td/%<tm/%<tY %<tH:%<tM", bucket.bucketStartTime), bucket.numberOfRatings, bucket.overallRatingSum);
+
+      return formatter.toString();
+   }
+
+
    private String processDisplayWebsiteFeedbackStatus(final PersonalFeedbackWebsite website)
    {
       if (isWebsiteEnabled(website))
-         return website.getName() + " is enabled for feedback.";
+         return website.getName() + " is enabled for feedback, items: " + personalFeedbackManager.getWebsiteItemCount(website);
       else
          return website.getName() + " has been disabled for feedback.";
    }
@@ -828,12 +971,16 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
 
    private String processEnableWebsiteForFeedback(final PersonalFeedbackWebsite website)
    {
-      final boolean wasAdded = setWebsiteEnabled(website, true);
-
-      if (wasAdded)
-         return website.getName() + " has been enabled for feedback.";
-      else
+      /* The website's feedback was dropped from memory when it was disabled, so it must be rebuilt before the website is re-enabled.
+       * The console commands are processed one at a time, so there's no race between the check and the rebuild.
+       */
+      if (isWebsiteEnabled(website))
          return website.getName() + " is already enabled for feedback.";
+
+      personalFeedbackManager.rebuildWebsiteFeedback(website);
+      setWebsiteEnabled(website, true);
+
+      return website.getName() + " has been enabled for feedback, items: " + personalFeedbackManager.getWebsiteItemCount(website);
    }
 
 
@@ -842,7 +989,11 @@ final class PersonalFeedbackNetworkGateway implements FeedbackCategoryNetworkGat
       final boolean wasRemoved = setWebsiteEnabled(website, false);
 
       if (wasRemoved)
+      {
+         // Requests for the website will now be refused, so its feedback can be dropped from memory.
+         personalFeedbackManager.dropWebsiteFeedback(website);
          return website.getName() + " has been disabled for feedback.";
+      }
       else
          return website.getName() + " has already been disabled for feedback.";
    }
@@ -0,0 +1,669 @@
+/* Memos:
+ * - Pre-aggregated rating time series for each item and for each website & criteria type pairing, so that trend queries can be answered by touching
+ *   only the time buckets in the requested range rather than every feedback submission.
+ *
+ * - Each bucket records the net change in ratings that occurred during its time period: a new submission adds one rating and its values, a removed
+ *   submission subtracts them, and an updated submission subtracts the old values and adds the new ones. So the buckets describe how the ratings moved
+ *   rather than the state of the ratings at any point; this is also why the rollups must be persisted with each checkpoint, since unlike the feedback
+ *   summaries they can't be regenerated from the current set of submissions. A trend can be turned back into a series of absolute values by working
+ *   backwards from the item's current feedback summary.
+ *
+ * - The changes are bucketed by the time that they were recorded here, not by the submission time of the feedback, since the submission time of a
+ *   removed submission is not when the rating moved.
+ *
+ * - Bucket maps are sparse; a bucket is only present if there was at least one change during its period, and is discarded if a later change in the same period
+ *   cancels it out. Buckets older than the maximum range of each granularity are pruned by the personal feedback manager's housekeeping task, and series
+ *   left with no buckets at all are removed. This removal uses the same loop & retry approach as the personal feedback manager's handling of feedback nodes,
+ *   for the same reasons.
+ *
+ * - Changes are recorded from the parent feedback manager's records of the previous & new submissions, not from the personal feedback nodes, so that
+ *   a removal for an item whose partition has been dropped or is being rebuilt still reaches the rollups. For the same reason the rollups aren't updated
+ *   when a website's feedback is rebuilt after being re-enabled, or when the feedback nodes are rebuilt on promoting a standby server; neither is a
+ *   movement of the ratings.
+ *
+ * - The rollups are restored from the checkpoint before the journal tail is replayed, and each replayed change to the parent records is then recorded
+ *   against them, as are the changes streamed to a standby server. The replayed changes are bucketed by the time of the replay rather than by the time of
+ *   the original change, since a removal record carries no time. The rollups are saved after the parent records, so a change made to an account after its
+ *   records have been written but before the rollups are saved will be counted twice following a restore. The window spans only the checkpoint
+ *   save, and the error is confined to the trend buckets covering the restore.
+ */
+
+package com.feedbactory.server.feedback.personal;
+
+
+import com.feedbactory.server.core.CheckpointFileFormat;
+import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.TimeCache;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackCriteria;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackCriteriaType;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackPerson;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackRatingTrendGranularity;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmission;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmissionScaleKeyValue;
+import com.feedbactory.shared.feedback.personal.PersonalFeedbackWebsite;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+final class PersonalFeedbackRatingRollups
+{
+   static final private String RatingRollupsDataFilename = "PersonalFeedbackRatingRollups" + FeedbactoryServerConstants.DataFileExtension;
+
+   static final private int ItemRollupsInitialCapacity = 10000;
+
+   final private PersonalFeedbackManager feedbackManager;
+
+   final private ConcurrentHashMap<PersonalFeedbackPerson, RollupSeries> itemRollups = new ConcurrentHashMap<>(ItemRollupsInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+
+   // Populated on construction and never structurally modified afterwards; the series are never removed.
+   final private Map<PersonalFeedbackCriteriaType, Map<PersonalFeedbackWebsite, RollupSeries>> websiteRollups = new EnumMap<>(PersonalFeedbackCriteriaType.class);
+
+
+   PersonalFeedbackRatingRollups(final PersonalFeedbackManager feedbackManager)
+   {
+      this.feedbackManager = feedbackManager;
+
+      initialise();
+   }
+
+
+   private void initialise()
+   {
+      Map<PersonalFeedbackWebsite, RollupSeries> criteriaTypeWebsiteRollups;
+
+      for (final PersonalFeedbackCriteriaType criteriaType : PersonalFeedbackCriteriaType.values())
+      {
+         criteriaTypeWebsiteRollups = new HashMap<>();
+
+         for (final PersonalFeedbackWebsite website : PersonalFeedbackWebsite.getWebsites(criteriaType))
+            criteriaTypeWebsiteRollups.put(website, new RollupSeries(criteriaType));
+
+         websiteRollups.put(criteriaType, criteriaTypeWebsiteRollups);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class RatingTrendBucket
+   {
+      final long bucketStartTime;
+      final int numberOfRatings;
+      final long overallRatingSum;
+
+      // Indexed by criteria ordinal.
+      final int[] criteriaNumberOfRatings;
+      final long[] criteriaRatingSums;
+
+
+      private RatingTrendBucket(final long bucketStartTime, final int numberOfRatings, final long overallRatingSum,
+                                final int[] criteriaNumberOfRatings, final long[] criteriaRatingSums)
+      {
+         this.bucketStartTime = bucketStartTime;
+         this.numberOfRatings = numberOfRatings;
+         this.overallRatingSum = overallRatingSum;
+         this.criteriaNumberOfRatings = criteriaNumberOfRatings;
+         this.criteriaRatingSums = criteriaRatingSums;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class RollupBucket
+   {
+      private int numberOfRatings;
+      private long overallRatingSum;
+
+      final private int[] criteriaNumberOfRatings;
+      final private long[] criteriaRatingSums;
+
+
+      private RollupBucket(final int numberOfCriteria)
+      {
+         criteriaNumberOfRatings = new int[numberOfCriteria];
+         criteriaRatingSums = new long[numberOfCriteria];
+      }
+
+
+      private boolean isEmpty()
+      {
+         if ((numberOfRatings != 0) || (overallRatingSum != 0))
+            return false;
+
+         for (int criteriaIndex = 0; criteriaIndex < criteriaNumberOfRatings.length; criteriaIndex ++)
+         {
+            if ((criteriaNumberOfRatings[criteriaIndex] != 0) || (criteriaRatingSums[criteriaIndex] != 0))
+               return false;
+         }
+
+         return true;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class RollupSeries
+   {
+      final private int numberOfCriteria;
+
+      // Keyed by bucket index, ie. the bucket's start time divided by its duration.
+      final private Map<PersonalFeedbackRatingTrendGranularity, TreeMap<Long, RollupBucket>> bucketsByGranularity = new EnumMap<>(PersonalFeedbackRatingTrendGranularity.class);
+
+      private boolean isRemoved;
+
+
+      private RollupSeries(final PersonalFeedbackCriteriaType criteriaType)
+      {
+         numberOfCriteria = criteriaType.attributes.getCriteriaSet().length;
+
+         for (final PersonalFeedbackRatingTrendGranularity granularity : PersonalFeedbackRatingTrendGranularity.values())
+            bucketsByGranularity.put(granularity, new TreeMap<Long, RollupBucket>());
+      }
+
+
+      private void applyRatingChange(final long changeTime, final PersonalFeedbackSubmission feedbackSubmission, final int sign)
+      {
+         TreeMap<Long, RollupBucket> buckets;
+         Long bucketIndex;
+         RollupBucket bucket;
+
+         for (final PersonalFeedbackRatingTrendGranularity granularity : PersonalFeedbackRatingTrendGranularity.values())
+         {
+            buckets = bucketsByGranularity.get(granularity);
+            bucketIndex = changeTime / granularity.bucketDurationMilliseconds;
+            bucket = buckets.get(bucketIndex);
+
+            if (bucket == null)
+            {
+               bucket = new RollupBucket(numberOfCriteria);
+               buckets.put(bucketIndex, bucket);
+            }
+
+            applyRatingChange(bucket, feedbackSubmission, sign);
+
+            // A later change in the same period may have exactly cancelled out an earlier one.
+            if (bucket.isEmpty())
+               buckets.remove(bucketIndex);
+         }
+      }
+
+
+      private void applyRatingChange(final RollupBucket bucket, final PersonalFeedbackSubmission feedbackSubmission, final int sign)
+      {
+         bucket.numberOfRatings += sign;
+         bucket.overallRatingSum += (sign * feedbackSubmission.overallFeedbackRating);
+
+         int criteriaIndex;
+
+         for (final Entry<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> criteriaEntry : feedbackSubmission.criteriaSubmissions.entrySet())
+         {
+            // Unrated criteria don't contribute to the rollups, the same as for the criteria feedback distributions.
+            if (criteriaEntry.getValue().value < 0)
+               continue;
+
+            criteriaIndex = ((Enum<?>) criteriaEntry.getKey()).ordinal();
+            bucket.criteriaNumberOfRatings[criteriaIndex] += sign;
+            bucket.criteriaRatingSums[criteriaIndex] += (sign * criteriaEntry.getValue().value);
+         }
+      }
+
+
+      private List<RatingTrendBucket> getRatingTrend(final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets, final long currentTime)
+      {
+         final long lastBucketIndex = currentTime / granularity.bucketDurationMilliseconds;
+         final long firstBucketIndex = lastBucketIndex - numberOfBuckets + 1;
+
+         final Map<Long, RollupBucket> bucketRange = bucketsByGranularity.get(granularity).subMap(firstBucketIndex, true, lastBucketIndex, true);
+         final List<RatingTrendBucket> ratingTrend = new ArrayList<>(bucketRange.size());
+
+         RollupBucket bucket;
+
+         for (final Entry<Long, RollupBucket> bucketEntry : bucketRange.entrySet())
+         {
+            bucket = bucketEntry.getValue();
+            ratingTrend.add(new RatingTrendBucket(bucketEntry.getKey() * granularity.bucketDurationMilliseconds, bucket.numberOfRatings, bucket.overallRatingSum,
+                                                  bucket.criteriaNumberOfRatings.clone(), bucket.criteriaRatingSums.clone()));
+         }
+
+         return ratingTrend;
+      }
+
+
+      private void prune(final long currentTime)
+      {
+         long oldestBucketIndex;
+
+         for (final PersonalFeedbackRatingTrendGranularity granularity : PersonalFeedbackRatingTrendGranularity.values())
+         {
+            oldestBucketIndex = (currentTime / granularity.bucketDurationMilliseconds) - granularity.maximumBuckets + 1;
+            bucketsByGranularity.get(granularity).headMap(oldestBucketIndex).clear();
+         }
+      }
+
+
+      private boolean isEmpty()
+      {
+         for (final TreeMap<Long, RollupBucket> buckets : bucketsByGranularity.values())
+         {
+            if (! buckets.isEmpty())
+               return false;
+         }
+
+         return true;
+      }
+
+
+      private void clear()
+      {
+         for (final TreeMap<Long, RollupBucket> buckets : bucketsByGranularity.values())
+            buckets.clear();
+      }
+
+
+      private void writeBuckets(final DataOutputStream dataOutputStream) throws IOException
+      {
+         TreeMap<Long, RollupBucket> buckets;
+         RollupBucket bucket;
+
+         for (final PersonalFeedbackRatingTrendGranularity granularity : PersonalFeedbackRatingTrendGranularity.values())
+         {
+            buckets = bucketsByGranularity.get(granularity);
+
+            dataOutputStream.writeByte(granularity.value);
+            dataOutputStream.writeInt(buckets.size());
+
+            for (final Entry<Long, RollupBucket> bucketEntry : buckets.entrySet())
+            {
+               bucket = bucketEntry.getValue();
+
+               dataOutputStream.writeLong(bucketEntry.getKey());
+               dataOutputStream.writeInt(bucket.numberOfRatings);
+               dataOutputStream.writeLong(bucket.overallRatingSum);
+
+               for (int criteriaIndex = 0; criteriaIndex < numberOfCriteria; criteriaIndex ++)
+               {
+                  dataOutputStream.writeInt(bucket.criteriaNumberOfRatings[criteriaIndex]);
+                  dataOutputStream.writeLong(bucket.criteriaRatingSums[criteriaIndex]);
+               }
+            }
+         }
+
+         // Terminate with an invalid granularity value.
+         dataOutputStream.writeByte(-1);
+      }
+
+
+      private void readBuckets(final DataInputStream dataInputStream) throws IOException
+      {
+         byte granularityValue;
+         PersonalFeedbackRatingTrendGranularity granularity;
+         TreeMap<Long, RollupBucket> buckets;
+         int numberOfBuckets;
+         RollupBucket bucket;
+
+         while ((granularityValue = dataInputStream.readByte()) != -1)
+         {
+            granularity = PersonalFeedbackRatingTrendGranularity.fromValue(granularityValue);
+            if (granularity == null)
+               throw new IllegalArgumentException("Invalid personal feedback rating trend granularity value: " + granularityValue);
+
+            buckets = bucketsByGranularity.get(granularity);
+            numberOfBuckets = dataInputStream.readInt();
+
+            for (int bucketNumber = 0; bucketNumber < numberOfBuckets; bucketNumber ++)
+            {
+               bucket = new RollupBucket(numberOfCriteria);
+               buckets.put(dataInputStream.readLong(), bucket);
+
+               bucket.numberOfRatings = dataInputStream.readInt();
+               bucket.overallRatingSum = dataInputStream.readLong();
+
+               for (int criteriaIndex = 0; criteriaIndex < numberOfCriteria; criteriaIndex ++)
+               {
+                  bucket.criteriaNumberOfRatings[criteriaIndex] = dataInputStream.readInt();
+                  bucket.criteriaRatingSums[criteriaIndex] = dataInputStream.readLong();
+               }
+            }
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void handleRecordRatingChange(final PersonalFeedbackPerson person, final PersonalFeedbackSubmission previousSubmission, final PersonalFeedbackSubmission newSubmission)
+   {
+      final long changeTime = TimeCache.getCurrentTimeMilliseconds();
+
+      recordItemRatingChange(person, previousSubmission, newSubmission, changeTime);
+
+      final RollupSeries websiteSeries = websiteRollups.get(person.getCriteriaType()).get(person.getWebsite());
+
+      synchronized (websiteSeries)
+      {
+         applyRatingChange(websiteSeries, previousSubmission, newSubmission, changeTime);
+      }
+   }
+
+
+   private void recordItemRatingChange(final PersonalFeedbackPerson person, final PersonalFeedbackSubmission previousSubmission, final PersonalFeedbackSubmission newSubmission,
+                                       final long changeTime)
+   {
+      // Refer to the personal feedback manager's addItemFeedbackSubmission() for the rationale of this loop & retry approach.
+      for (;;)
+      {
+         RollupSeries itemSeries = itemRollups.get(person);
+
+         if (itemSeries == null)
+         {
+            itemSeries = new RollupSeries(person.getCriteriaType());
+
+            final RollupSeries existingEntry = itemRollups.putIfAbsent(person, itemSeries);
+
+            if (existingEntry != null)
+               itemSeries = existingEntry;
+         }
+
+         synchronized (itemSeries)
+         {
+            if (! itemSeries.isRemoved)
+            {
+               applyRatingChange(itemSeries, previousSubmission, newSubmission, changeTime);
+               return;
+            }
+         }
+      }
+   }
+
+
+   private void applyRatingChange(final RollupSeries series, final PersonalFeedbackSubmission previousSubmission, final PersonalFeedbackSubmission newSubmission,
+                                  final long changeTime)
+   {
+      if (previousSubmission != null)
+         series.applyRatingChange(changeTime, previousSubmission, -1);
+
+      if (newSubmission != null)
+         series.applyRatingChange(changeTime, newSubmission, 1);
+   }
+
+
+   private List<RatingTrendBucket> handleGetItemRatingTrend(final PersonalFeedbackPerson person, final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets)
+   {
+      final RollupSeries itemSeries = itemRollups.get(person);
+
+      if (itemSeries != null)
+      {
+         synchronized (itemSeries)
+         {
+            // A removed series will have no buckets left, so there's no need to check the flag.
+            return itemSeries.getRatingTrend(granularity, numberOfBuckets, TimeCache.getCurrentTimeMilliseconds());
+         }
+      }
+
+      return Collections.emptyList();
+   }
+
+
+   private List<RatingTrendBucket> handleGetWebsiteRatingTrend(final PersonalFeedbackCriteriaType criteriaType, final PersonalFeedbackWebsite website,
+                                                               final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets)
+   {
+      final RollupSeries websiteSeries = websiteRollups.get(criteriaType).get(website);
+
+      synchronized (websiteSeries)
+      {
+         return websiteSeries.getRatingTrend(granularity, numberOfBuckets, TimeCache.getCurrentTimeMilliseconds());
+      }
+   }
+
+
+   private void handlePrune()
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+
+      RollupSeries itemSeries;
+
+      final Iterator<RollupSeries> itemSeriesIterator = itemRollups.values().iterator();
+      while (itemSeriesIterator.hasNext())
+      {
+         itemSeries = itemSeriesIterator.next();
+
+         synchronized (itemSeries)
+         {
+            itemSeries.prune(currentTime);
+
+            if (itemSeries.isEmpty())
+            {
+               itemSeries.isRemoved = true;
+               itemSeriesIterator.remove();
+            }
+         }
+      }
+
+      for (final Map<PersonalFeedbackWebsite, RollupSeries> criteriaTypeWebsiteRollups : websiteRollups.values())
+      {
+         for (final RollupSeries websiteSeries : criteriaTypeWebsiteRollups.values())
+         {
+            synchronized (websiteSeries)
+            {
+               websiteSeries.prune(currentTime);
+            }
+         }
+      }
+   }
+
+
+   private int handleGetNumberOfItemSeries()
+   {
+      return itemRollups.size();
+   }
+
+
+   private void handleClear()
+   {
+      for (final RollupSeries itemSeries : itemRollups.values())
+      {
+         synchronized (itemSeries)
+         {
+            itemSeries.isRemoved = true;
+         }
+      }
+
+      itemRollups.clear();
+
+      for (final Map<PersonalFeedbackWebsite, RollupSeries> criteriaTypeWebsiteRollups : websiteRollups.values())
+      {
+         for (final RollupSeries websiteSeries : criteriaTypeWebsiteRollups.values())
+         {
+            synchronized (websiteSeries)
+            {
+               websiteSeries.clear();
+            }
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void handleSaveCheckpoint(final Path checkpointPath) throws IOException
+   {
+      final File rollupsDataFile = checkpointPath.resolve(RatingRollupsDataFilename).toFile();
+
+      try
+      (
+         final DataOutputStream rollupsDataStream = CheckpointFileFormat.openOutput(rollupsDataFile);
+      )
+      {
+         for (final Map<PersonalFeedbackWebsite, RollupSeries> criteriaTypeWebsiteRollups : websiteRollups.values())
+         {
+            for (final Entry<PersonalFeedbackWebsite, RollupSeries> websiteSeriesEntry : criteriaTypeWebsiteRollups.entrySet())
+            {
+               synchronized (websiteSeriesEntry.getValue())
+               {
+                  rollupsDataStream.writeShort(websiteSeriesEntry.getKey().getID());
+                  websiteSeriesEntry.getValue().writeBuckets(rollupsDataStream);
+               }
+            }
+
+            // Mark the end of the criteria type's websites with an invalid website value.
+            rollupsDataStream.writeShort(-1);
+         }
+
+         for (final Entry<PersonalFeedbackPerson, RollupSeries> itemSeriesEntry : itemRollups.entrySet())
+         {
+            synchronized (itemSeriesEntry.getValue())
+            {
+               if (itemSeriesEntry.getValue().isRemoved)
+                  continue;
+
+               rollupsDataStream.writeBoolean(true);
+               feedbackManager.writeFeedbackItem(itemSeriesEntry.getKey(), rollupsDataStream);
+               itemSeriesEntry.getValue().writeBuckets(rollupsDataStream);
+            }
+         }
+
+         rollupsDataStream.writeBoolean(false);
+      }
+   }
+
+
+   private void handleRestoreFromCheckpoint(final Path checkpointPath) throws IOException
+   {
+      handleClear();
+
+      final File rollupsDataFile = checkpointPath.resolve(RatingRollupsDataFilename).toFile();
+
+      // Checkpoints saved before the rollups were introduced will have no rollups data.
+      if (! rollupsDataFile.exists())
+         return;
+
+      try
+      (
+         final DataInputStream rollupsDataStream = CheckpointFileFormat.openInput(rollupsDataFile);
+      )
+      {
+         short websiteValue;
+         PersonalFeedbackWebsite website;
+         RollupSeries series;
+
+         for (final Entry<PersonalFeedbackCriteriaType, Map<PersonalFeedbackWebsite, RollupSeries>> criteriaTypeWebsiteRollups : websiteRollups.entrySet())
+         {
+            while ((websiteValue = rollupsDataStream.readShort()) != -1)
+            {
+               website = PersonalFeedbackWebsite.fromValue(websiteValue);
+               if (website == null)
+                  throw new IllegalArgumentException("Invalid personal feedback website value: " + websiteValue);
+
+               series = criteriaTypeWebsiteRollups.getValue().get(website);
+               if (series == null)
+                  throw new IllegalArgumentException("Website " + website.getName() + " does not support criteria feedback type: " + criteriaTypeWebsiteRollups.getKey());
+
+               // Ensure the visibility of the restored buckets to subsequent threads.
+               synchronized (series)
+               {
+                  series.readBuckets(rollupsDataStream);
+               }
+            }
+         }
+
+         PersonalFeedbackPerson person;
+
+         while (rollupsDataStream.readBoolean())
+         {
+            person = feedbackManager.readFeedbackItem(rollupsDataStream);
+            series = new RollupSeries(person.getCriteriaType());
+
+            synchronized (series)
+            {
+               series.readBuckets(rollupsDataStream);
+            }
+
+            itemRollups.put(person, series);
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final void recordRatingChange(final PersonalFeedbackPerson person, final PersonalFeedbackSubmission previousSubmission, final PersonalFeedbackSubmission newSubmission)
+   {
+      handleRecordRatingChange(person, previousSubmission, newSubmission);
+   }
+
+
+   final List<RatingTrendBucket> getItemRatingTrend(final PersonalFeedbackPerson person, final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets)
+   {
+      return handleGetItemRatingTrend(person, granularity, numberOfBuckets);
+   }
+
+
+   final List<RatingTrendBucket> getWebsiteRatingTrend(final PersonalFeedbackCriteriaType criteriaType, final PersonalFeedbackWebsite website,
+                                                       final PersonalFeedbackRatingTrendGranularity granularity, final int numberOfBuckets)
+   {
+      return handleGetWebsiteRatingTrend(criteriaType, website, granularity, numberOfBuckets);
+   }
+
+
+   final int getNumberOfItemSeries()
+   {
+      return handleGetNumberOfItemSeries();
+   }
+
+
+   final void prune()
+   {
+      handlePrune();
+   }
+
+
+   final void saveCheckpoint(final Path checkpointPath) throws IOException
+   {
+      handleSaveCheckpoint(checkpointPath);
+   }
+
+
+   final void restoreFromCheckpoint(final Path checkpointPath) throws IOException
+   {
+      handleRestoreFromCheckpoint(checkpointPath);
+   }
+}
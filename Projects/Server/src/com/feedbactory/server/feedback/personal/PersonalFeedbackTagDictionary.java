@@ -0,0 +1,342 @@
+/* Memos:
+ * - A server-side replacement for String.intern() for item profile and filter tags. The JVM string table is a shared global resource whose performance
+ *   depends on -XX:StringTableSize being tuned ahead of time, and its costs are unpredictable when a flood of distinct (possibly junk) filter tags arrives
+ *   from clients. Here the tags are mapped to dense integer IDs instead, so that the featured items index can be keyed on ints, and filter matching reduces
+ *   to integer comparisons against a sorted tag ID array held per featured item.
+ *
+ * - The tag strings held by the shared PersonalFeedbackPersonProfile class are not replaced by the integer IDs, since that class is also used by the client
+ *   which has no use for (or access to) the dictionary. Instead the profiles hold the canonical tag string instances provided by canonicaliseTag(), which
+ *   adds an unreferenced entry for a tag not yet in the dictionary so that every profile holding the same tag shares the one instance. Transient filter tags
+ *   go through getCanonicalTag() instead, which never adds to the dictionary.
+ *
+ * - Entries are reference counted. The references are held by the featured items index, which is rebuilt by the personal feedback manager's housekeeping
+ *   task, and which covers every live item. Entries whose count has dropped to zero are not removed immediately but are swept by compact(), which is run by
+ *   the same housekeeping task once the index has been rebuilt. This avoids churning entries for the many tags that are released and immediately
+ *   reacquired during each rebuild. The unreferenced entries added by canonicaliseTag() are picked up by the next rebuild if their profile is stored,
+ *   otherwise they are swept along with the rest.
+ *
+ * - Tag IDs are recycled once their entries have been compacted. This is safe because an entry can only be compacted once no featured items index
+ *   holds a reference to it, so there are no stale copies of the ID that could later be confused with a new tag having the same ID. Callers that
+ *   resolve filter tags to IDs must do so while holding the read lock of the index that they are searching, for the same reason.
+ *
+ * - Acquiring an entry uses the same loop & retry approach as the personal feedback manager's handleAddItemFeedbackSubmission(), to cover the case
+ *   where an entry is compacted between being looked up and being locked.
+ */
+
+package com.feedbactory.server.feedback.personal;
+
+
+import com.feedbactory.server.core.FeedbactoryServerConstants;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+final class PersonalFeedbackTagDictionary
+{
+   static final int NoTagID = -1;
+
+   static final private int TagDictionaryInitialCapacity = 10000;
+
+   final private ConcurrentHashMap<String, TagEntry> tagsByString = new ConcurrentHashMap<>(TagDictionaryInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+
+   // Guarded by this object's monitor.
+   private TagEntry[] tagsByID = new TagEntry[TagDictionaryInitialCapacity];
+   private int[] freeTagIDs = new int[0];
+   private int numberOfFreeTagIDs;
+   private int nextUnusedTagID;
+
+   private int lastCompactionRemovedTags;
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class TagEntry
+   {
+      final private String tag;
+      final private int tagID;
+
+      // Guarded by this object's monitor.
+      private int referenceCount;
+      private boolean isRemoved;
+
+
+      private TagEntry(final String tag, final int tagID)
+      {
+         this.tag = tag;
+         this.tagID = tagID;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class TagDictionaryMetrics
+   {
+      final int numberOfTags;
+      final int tagIDCapacity;
+      final int numberOfFreeTagIDs;
+      final int lastCompactionRemovedTags;
+
+
+      private TagDictionaryMetrics(final int numberOfTags, final int tagIDCapacity, final int numberOfFreeTagIDs, final int lastCompactionRemovedTags)
+      {
+         this.numberOfTags = numberOfTags;
+         this.tagIDCapacity = tagIDCapacity;
+         this.numberOfFreeTagIDs = numberOfFreeTagIDs;
+         this.lastCompactionRemovedTags = lastCompactionRemovedTags;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private String handleGetCanonicalTag(final String tag)
+   {
+      final TagEntry tagEntry = tagsByString.get(tag);
+      return (tagEntry != null) ? tagEntry.tag : tag;
+   }
+
+
+   private String handleCanonicaliseTag(final String tag)
+   {
+      TagEntry tagEntry = tagsByString.get(tag);
+
+      if (tagEntry == null)
+      {
+         final TagEntry newTagEntry = registerNewTagEntry(tag);
+         tagEntry = tagsByString.putIfAbsent(tag, newTagEntry);
+
+         if (tagEntry == null)
+            return newTagEntry.tag;
+
+         releaseTagID(newTagEntry.tagID);
+      }
+
+      /* There's no need to retry if the entry is compacted in the meantime as there is for handleAcquireTag(), since only the string instance is used.
+       * The profile's instance will become the canonical one when the next index rebuild acquires the tag.
+       */
+      return tagEntry.tag;
+   }
+
+
+   private int handleGetTagID(final String tag)
+   {
+      final TagEntry tagEntry = tagsByString.get(tag);
+      return (tagEntry != null) ? tagEntry.tagID : NoTagID;
+   }
+
+
+   private int handleAcquireTag(final String tag)
+   {
+      for (;;)
+      {
+         TagEntry tagEntry = tagsByString.get(tag);
+
+         if (tagEntry == null)
+         {
+            final TagEntry newTagEntry = registerNewTagEntry(tag);
+            tagEntry = tagsByString.putIfAbsent(tag, newTagEntry);
+
+            if (tagEntry == null)
+               tagEntry = newTagEntry;
+            else
+            {
+               // Another thread won the race to add the tag; the new ID has never been published so it's safe to hand back immediately.
+               releaseTagID(newTagEntry.tagID);
+            }
+         }
+
+         synchronized (tagEntry)
+         {
+            if (! tagEntry.isRemoved)
+            {
+               tagEntry.referenceCount ++;
+               return tagEntry.tagID;
+            }
+         }
+      }
+   }
+
+
+   synchronized private TagEntry registerNewTagEntry(final String tag)
+   {
+      final int tagID;
+
+      if (numberOfFreeTagIDs > 0)
+      {
+         numberOfFreeTagIDs --;
+         tagID = freeTagIDs[numberOfFreeTagIDs];
+      }
+      else
+      {
+         if (nextUnusedTagID == tagsByID.length)
+            tagsByID = Arrays.copyOf(tagsByID, tagsByID.length * 2);
+
+         tagID = nextUnusedTagID;
+         nextUnusedTagID ++;
+      }
+
+      final TagEntry tagEntry = new TagEntry(tag, tagID);
+      tagsByID[tagID] = tagEntry;
+
+      return tagEntry;
+   }
+
+
+   synchronized private void releaseTagID(final int tagID)
+   {
+      tagsByID[tagID] = null;
+
+      if (numberOfFreeTagIDs == freeTagIDs.length)
+         freeTagIDs = Arrays.copyOf(freeTagIDs, Math.max(16, freeTagIDs.length * 2));
+
+      freeTagIDs[numberOfFreeTagIDs] = tagID;
+      numberOfFreeTagIDs ++;
+   }
+
+
+   synchronized private TagEntry getTagEntry(final int tagID)
+   {
+      return tagsByID[tagID];
+   }
+
+
+   private void handleReleaseTag(final int tagID)
+   {
+      final TagEntry tagEntry = getTagEntry(tagID);
+
+      synchronized (tagEntry)
+      {
+         if (tagEntry.referenceCount <= 0)
+            throw new IllegalStateException("Tag dictionary reference count underflow for tag: " + tagEntry.tag);
+
+         // Unreferenced entries are left in place until the next compaction.
+         tagEntry.referenceCount --;
+      }
+   }
+
+
+   private void handleCompact()
+   {
+      int removedTags = 0;
+      TagEntry tagEntry;
+
+      final Iterator<TagEntry> tagEntryIterator = tagsByString.values().iterator();
+      while (tagEntryIterator.hasNext())
+      {
+         tagEntry = tagEntryIterator.next();
+
+         synchronized (tagEntry)
+         {
+            if (tagEntry.referenceCount == 0)
+            {
+               tagEntry.isRemoved = true;
+               tagEntryIterator.remove();
+               releaseTagID(tagEntry.tagID);
+               removedTags ++;
+            }
+         }
+      }
+
+      synchronized (this)
+      {
+         lastCompactionRemovedTags = removedTags;
+      }
+   }
+
+
+   private void handleClear()
+   {
+      for (final TagEntry tagEntry : tagsByString.values())
+      {
+         synchronized (tagEntry)
+         {
+            tagEntry.isRemoved = true;
+         }
+      }
+
+      tagsByString.clear();
+
+      synchronized (this)
+      {
+         tagsByID = new TagEntry[TagDictionaryInitialCapacity];
+         freeTagIDs = new int[0];
+         numberOfFreeTagIDs = 0;
+         nextUnusedTagID = 0;
+         lastCompactionRemovedTags = 0;
+      }
+   }
+
+
+   synchronized private TagDictionaryMetrics handleGetMetrics()
+   {
+      return new TagDictionaryMetrics(tagsByString.size(), tagsByID.length, numberOfFreeTagIDs, lastCompactionRemovedTags);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final String getCanonicalTag(final String tag)
+   {
+      return handleGetCanonicalTag(tag);
+   }
+
+
+   final String canonicaliseTag(final String tag)
+   {
+      return handleCanonicaliseTag(tag);
+   }
+
+
+   final int getTagID(final String tag)
+   {
+      return handleGetTagID(tag);
+   }
+
+
+   final int acquireTag(final String tag)
+   {
+      return handleAcquireTag(tag);
+   }
+
+
+   final void releaseTag(final int tagID)
+   {
+      handleReleaseTag(tagID);
+   }
+
+
+   final void compact()
+   {
+      handleCompact();
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+
+
+   final TagDictionaryMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+}
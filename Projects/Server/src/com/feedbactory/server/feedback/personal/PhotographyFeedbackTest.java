@@ -2,14 +2,21 @@
  * - From the console, try 'account test' to load the 20000 accounts, followed by 'feedback 0 test multiple 10000 500',
  *   which will generate up to 500 ratings spread across 10000 photographs.
  *
- * - Useful command line switches for controlling & gauging the performance of String.intern():
- *   -XX:StringTableSize=n (should be a large prime)
- *   -XX:+PrintStringTableStatistics
+ * - Tags are no longer intern()'d by the server, so there's no need to tune -XX:StringTableSize for these tests. Use 'feedback 0 tags' from the console
+ *   to display the size of the personal feedback tag dictionary once the featured items housekeeping has run.
  *
- * - The jmap utility will also display a summary of the number of interned strings: 'jmap -heap <java process ID>'.
+ * - This class will provide a gross overestimation of tag dictionary usage per feedback count due to the fact that it is generating randomised strings for photo tags.
+ *   A more genuine test might be to pull words from a dictionary based on their frequency in real world use, which is what the synthetic data set does.
  *
- * - This class will provide a gross overestimation of string intern usage per feedback count due to the fact that it is generating randomised strings for photo tags.
- *   A more genuine test might be to pull words from a dictionary based on their frequency in real world use.
+ * - For a production sized data set, try 'account test synthetic 1000000' followed by 'feedback 0 test synthetic 5000000 50000000', which will generate
+ *   roughly 50 million ratings across the most popular of 5 million photographs. The popularity of the photographs follows a Zipf distribution, so a
+ *   handful of photographs collect a large share of the ratings while most of the long tail collects none at all and is never created. The ratings for a
+ *   photograph are capped at one per account. The tags are drawn from a fixed vocabulary also following a Zipf distribution, the same shape as word
+ *   frequencies in real world use. If a Test/TagWords.txt file exists, its words are used as the vocabulary with the most frequent word first, otherwise
+ *   a vocabulary of made up words is generated.
+ *
+ * - The synthetic data is generated from a seeded generator on a single thread, so the same seed, account count and photograph count will always generate
+ *   the same data set. An optional seed can be appended to the command. Save the data to a snapshot to run CheckpointBenchmark against it.
  */
 
 package com.feedbactory.server.feedback.personal;
@@ -33,38 +40,95 @@ import com.feedbactory.shared.feedback.personal.PersonalFeedbackSubmissionScaleK
 import com.feedbactory.shared.feedback.personal.PhotographyCriteria;
 import com.feedbactory.shared.feedback.personal.service.FiveHundredPX;
 import com.feedbactory.shared.feedback.personal.service.SmugMug;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Formatter;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 
 final public class PhotographyFeedbackTest
 {
+   static final private long DefaultSyntheticDataSeed = 1L;
+
+   static final private double SyntheticZipfExponent = 1.0;
+
+   static final private Path SyntheticTagWordsFilename = Paths.get("Test", "TagWords.txt");
+   static final private int SyntheticTagVocabularySize = 20000;
+   static final private String SyntheticTagConsonants = "bcdfghjklmnprstvwz";
+   static final private String SyntheticTagVowels = "aeiou";
+
+   static final private long SyntheticProgressReportRatings = 5000000L;
+
+
    private PhotographyFeedbackTest()
    {
    }
 
 
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class ZipfDistribution
+   {
+      final private double[] cumulativeWeights;
+
+
+      private ZipfDistribution(final int numberOfRanks, final double exponent)
+      {
+         cumulativeWeights = new double[numberOfRanks];
+
+         double cumulativeWeight = 0;
+         for (int rank = 0; rank < numberOfRanks; rank ++)
+         {
+            cumulativeWeight += Math.pow(rank + 1, -exponent);
+            cumulativeWeights[rank] = cumulativeWeight;
+         }
+      }
+
+
+      // Returns a rank from zero, being the most frequent, to numberOfRanks - 1.
+      private int sample(final Random random)
+      {
+         final double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+         final int searchIndex = Arrays.binarySearch(cumulativeWeights, target);
+
+         return (searchIndex >= 0) ? searchIndex : Math.min(-searchIndex - 1, cumulativeWeights.length - 1);
+      }
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
 
 
-   static private InetAddress createRandomIPAddress()
+   static private InetAddress createRandomIPAddress(final Random random)
    {
       try
       {
          final byte[] ip4Address = new byte[4];
-         ThreadLocalRandom.current().nextBytes(ip4Address);
+         random.nextBytes(ip4Address);
          return InetAddress.getByAddress(ip4Address);
       }
       catch (final UnknownHostException unknownHostException)
@@ -74,28 +138,28 @@ final public class PhotographyFeedbackTest
    }
 
 
-   static private PersonalFeedbackPerson createRandomPhotograph()
+   static private PersonalFeedbackPerson createRandomPhotograph(final Random random)
    {
-      final String photographID = TestUtilities.createRandomAlphanumericString(10);
+      final String photographID = TestUtilities.createRandomAlphanumericString(random, 10);
       return new PersonalFeedbackPerson(FiveHundredPX.instance, photographID, PersonalFeedbackCriteriaType.Photography);
    }
 
 
-   static private PersonalFeedbackPersonProfile createRandomPhotographProfile()
+   static private PersonalFeedbackPersonProfile createRandomPhotographProfile(final Random random, final Set<String> keywords)
    {
-      final String userID = TestUtilities.createRandomAlphanumericString(8, 20);
-      final String photographTitle = TestUtilities.createRandomAlphanumericString(10, 50);
-      final String photographerName = TestUtilities.createRandomAlphanumericString(10, 30);
+      final String userID = TestUtilities.createRandomAlphanumericString(random, 8, 20);
+      final String photographTitle = TestUtilities.createRandomAlphanumericString(random, 10, 50);
+      final String photographerName = TestUtilities.createRandomAlphanumericString(random, 10, 30);
       final String photographName = photographTitle + '\0' + photographerName;
-      final String thumbnailURL = TestUtilities.createRandomAlphanumericString(40);
+      final String thumbnailURL = TestUtilities.createRandomAlphanumericString(random, 40);
 
-      return new PersonalFeedbackPersonProfile(createRandomPhotograph(), userID, photographName, thumbnailURL, null, createRandomPhotographKeywords());
+      return new PersonalFeedbackPersonProfile(createRandomPhotograph(random), userID, photographName, thumbnailURL, null, keywords);
    }
 
 
-   static private Set<String> createRandomPhotographKeywords()
+   static private Set<String> createRandomPhotographKeywords(final Random random)
    {
-      final int numberOfKeywords = ThreadLocalRandom.current().nextInt(PersonalFeedbackConstants.MaximumPersonProfileTags + 1);
+      final int numberOfKeywords = random.nextInt(PersonalFeedbackConstants.MaximumPersonProfileTags + 1);
 
       if (numberOfKeywords == 0)
          return Collections.emptySet();
@@ -104,21 +168,21 @@ final public class PhotographyFeedbackTest
       String keyword;
       for (int keywordNumber = 0; keywordNumber < numberOfKeywords; keywordNumber ++)
       {
-         keyword = TestUtilities.createRandomAlphanumericString(PersonalFeedbackConstants.MinimumPersonProfileTagLength, PersonalFeedbackConstants.MaximumPersonProfileTagLength).toLowerCase();
-         keywords.add(keyword.intern());
+         keyword = TestUtilities.createRandomAlphanumericString(random, PersonalFeedbackConstants.MinimumPersonProfileTagLength, PersonalFeedbackConstants.MaximumPersonProfileTagLength).toLowerCase();
+         keywords.add(keyword);
       }
 
       return keywords;
    }
 
 
-   static private byte createRandomFeedbackAnchorValue()
+   static private byte createRandomFeedbackAnchorValue(final Random random)
    {
-      return (byte) ThreadLocalRandom.current().nextInt(101);
+      return (byte) random.nextInt(101);
    }
 
 
-   static private byte generateRandomDeviationFromAnchorValue(final byte anchorValue, final byte increment)
+   static private byte generateRandomDeviationFromAnchorValue(final Random random, final byte anchorValue, final byte increment)
    {
       byte result;
       int selectorValue;
@@ -130,7 +194,7 @@ final public class PhotographyFeedbackTest
 
          for (;;)
          {
-            selectorValue = ThreadLocalRandom.current().nextInt(200);
+            selectorValue = random.nextInt(200);
 
             if (selectorValue >= 100)
                break;
@@ -153,14 +217,14 @@ final public class PhotographyFeedbackTest
    }
 
 
-   static private Map<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> createRandomPhotographyCriteriaFeedbackAnchor(final byte criteriaFeedbackAnchor)
+   static private Map<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> createRandomPhotographyCriteriaFeedbackAnchor(final Random random, final byte criteriaFeedbackAnchor)
    {
       final Map<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> criteriaFeedback = new EnumMap<>(PhotographyCriteria.class);
       PersonalFeedbackSubmissionScaleKeyValue submissionScaleValue;
 
       for (final PhotographyCriteria photographyCriteria : PhotographyCriteria.values())
       {
-         submissionScaleValue = createRandomSubmissionScaleValue(criteriaFeedbackAnchor);
+         submissionScaleValue = createRandomSubmissionScaleValue(random, criteriaFeedbackAnchor);
          criteriaFeedback.put(photographyCriteria, submissionScaleValue);
       }
 
@@ -168,9 +232,9 @@ final public class PhotographyFeedbackTest
    }
 
 
-   static private PersonalFeedbackSubmissionScaleKeyValue createRandomSubmissionScaleValue(final byte criteriaFeedbackAnchor)
+   static private PersonalFeedbackSubmissionScaleKeyValue createRandomSubmissionScaleValue(final Random random, final byte criteriaFeedbackAnchor)
    {
-      final int randomSubmissionScaleValue = generateRandomDeviationFromAnchorValue(criteriaFeedbackAnchor, (byte) 25);
+      final int randomSubmissionScaleValue = generateRandomDeviationFromAnchorValue(random, criteriaFeedbackAnchor, (byte) 25);
 
       int floorSubmissionValue = (randomSubmissionScaleValue / 25) * 25;
       int floorSubmissionRemainder = randomSubmissionScaleValue - floorSubmissionValue;
@@ -184,18 +248,18 @@ final public class PhotographyFeedbackTest
    }
 
 
-   static private Map<PhotographyCriteria, Integer> createPhotographyCriteriaProbabilityMap()
+   static private Map<PhotographyCriteria, Integer> createPhotographyCriteriaProbabilityMap(final Random random)
    {
       final Map<PhotographyCriteria, Integer> feedbackProbabilityMap = new EnumMap<>(PhotographyCriteria.class);
 
       for (final PhotographyCriteria photographyCriteria : PhotographyCriteria.values())
-         feedbackProbabilityMap.put(photographyCriteria, ThreadLocalRandom.current().nextInt(10));
+         feedbackProbabilityMap.put(photographyCriteria, random.nextInt(10));
 
       return feedbackProbabilityMap;
    }
 
 
-   static private PersonalFeedbackSubmission createRandomPhotographyFeedbackSubmission(final byte anchorRating, final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorCriteriaRatings,
+   static private PersonalFeedbackSubmission createRandomPhotographyFeedbackSubmission(final Random random, final byte anchorRating, final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorCriteriaRatings,
                                                                                        final Map<PhotographyCriteria, Integer> criteriaFeedbackProbabilityMap)
    {
       /* The anchorRating and anchorCriteriaRatings are necessarily separated rather than thrown together into one PersonalFeedbackSubmission object,
@@ -203,14 +267,14 @@ final public class PhotographyFeedbackTest
        * For testing it's important to have the flexibility to provide any anchor rating, eg. one that is not calculated but has been provided by an existing
        * overall feedback rating for an item - see processCreateSpreadFeedbackFromSourceItems().
        */
-      if (ThreadLocalRandom.current().nextInt(5) == 0)
-         return new PersonalFeedbackSubmission(createRandomFeedbackSummary(anchorRating));
-      else if (ThreadLocalRandom.current().nextBoolean())
-         return new PersonalFeedbackSubmission(createRandomFeedbackSummary(anchorRating),
-                                               createRandomPhotographyCriteriaFeedback(anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
+      if (random.nextInt(5) == 0)
+         return new PersonalFeedbackSubmission(createRandomFeedbackSummary(random, anchorRating));
+      else if (random.nextBoolean())
+         return new PersonalFeedbackSubmission(createRandomFeedbackSummary(random, anchorRating),
+                                               createRandomPhotographyCriteriaFeedback(random, anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
       else
       {
-         final PersonalFeedbackSubmission submission = new PersonalFeedbackSubmission(createRandomPhotographyCriteriaFeedback(anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
+         final PersonalFeedbackSubmission submission = new PersonalFeedbackSubmission(createRandomPhotographyCriteriaFeedback(random, anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
 
          /* This case is attempting to generate a feedback submission where the isOverallRatingCalculatedFromCriteriaFeedback flag is set, ie. feedback criteria
           * without any explicit overall feedback rating supplied.
@@ -221,15 +285,15 @@ final public class PhotographyFeedbackTest
          if (submission.hasAtLeastOneCriteriaRating())
             return submission;
          else
-            return new PersonalFeedbackSubmission(createRandomFeedbackSummary(anchorRating),
-                                                  createRandomPhotographyCriteriaFeedback(anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
+            return new PersonalFeedbackSubmission(createRandomFeedbackSummary(random, anchorRating),
+                                                  createRandomPhotographyCriteriaFeedback(random, anchorCriteriaRatings, criteriaFeedbackProbabilityMap));
       }
    }
 
 
-   static private byte createRandomFeedbackSummary(final byte anchorValue)
+   static private byte createRandomFeedbackSummary(final Random random, final byte anchorValue)
    {
-      final int feedbackSummary = generateRandomDeviationFromAnchorValue(anchorValue, (byte) 10);
+      final int feedbackSummary = generateRandomDeviationFromAnchorValue(random, anchorValue, (byte) 10);
 
       int floorSubmissionValue = (feedbackSummary / 10) * 10;
       int floorSubmissionRemainder = feedbackSummary - floorSubmissionValue;
@@ -240,7 +304,7 @@ final public class PhotographyFeedbackTest
    }
 
 
-   static private EnumMap<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> createRandomPhotographyCriteriaFeedback(final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorValues,
+   static private EnumMap<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> createRandomPhotographyCriteriaFeedback(final Random random, final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorValues,
                                                                                                                                 final Map<PhotographyCriteria, Integer> criteriaFeedbackProbabilityMap)
    {
       final EnumMap<PhotographyCriteria, PersonalFeedbackSubmissionScaleKeyValue> criteriaFeedback = new EnumMap<>(PhotographyCriteria.class);
@@ -248,8 +312,8 @@ final public class PhotographyFeedbackTest
       for (final Entry<PhotographyCriteria, Integer> criteriaProbabilityEntry : criteriaFeedbackProbabilityMap.entrySet())
       {
          // The use of <= ensures that the criteria feedback has at least a 10% chance of being generated when the probability map contains 0 for that criteria.
-         if (ThreadLocalRandom.current().nextInt(10) <= criteriaProbabilityEntry.getValue())
-            criteriaFeedback.put(criteriaProbabilityEntry.getKey(), createRandomSubmissionScaleValue(anchorValues.get(criteriaProbabilityEntry.getKey()).value));
+         if (random.nextInt(10) <= criteriaProbabilityEntry.getValue())
+            criteriaFeedback.put(criteriaProbabilityEntry.getKey(), createRandomSubmissionScaleValue(random, anchorValues.get(criteriaProbabilityEntry.getKey()).value));
       }
 
       // The returned map may be empty;
@@ -257,6 +321,81 @@ final public class PhotographyFeedbackTest
    }
 
 
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private List<String> getSyntheticTagVocabulary(final Random random)
+   {
+      final Set<String> vocabulary = new LinkedHashSet<>(SyntheticTagVocabularySize);
+
+      if (Files.exists(SyntheticTagWordsFilename))
+      {
+         try
+         (
+            final BufferedReader reader = Files.newBufferedReader(SyntheticTagWordsFilename, StandardCharsets.UTF_8);
+         )
+         {
+            String word;
+
+            while ((word = reader.readLine()) != null)
+            {
+               word = word.trim().toLowerCase();
+               if ((word.length() >= PersonalFeedbackConstants.MinimumPersonProfileTagLength) && (word.length() <= PersonalFeedbackConstants.MaximumPersonProfileTagLength))
+                  vocabulary.add(word);
+            }
+         }
+         catch (final IOException ioException)
+         {
+            throw new RuntimeException(ioException);
+         }
+
+         if (vocabulary.isEmpty())
+            throw new IllegalStateException("The tag words file contains no usable words: " + SyntheticTagWordsFilename);
+      }
+      else
+      {
+         while (vocabulary.size() < SyntheticTagVocabularySize)
+            vocabulary.add(createPronounceableWord(random, PersonalFeedbackConstants.MinimumPersonProfileTagLength + random.nextInt(8)));
+      }
+
+      return new ArrayList<>(vocabulary);
+   }
+
+
+   static private String createPronounceableWord(final Random random, final int length)
+   {
+      final char[] word = new char[length];
+
+      for (int charIndex = 0; charIndex < length; charIndex ++)
+      {
+         if ((charIndex % 2) == 0)
+            word[charIndex] = SyntheticTagConsonants.charAt(random.nextInt(SyntheticTagConsonants.length()));
+         else
+            word[charIndex] = SyntheticTagVowels.charAt(random.nextInt(SyntheticTagVowels.length()));
+      }
+
+      return new String(word);
+   }
+
+
+   static private Set<String> createSyntheticPhotographKeywords(final Random random, final List<String> tagVocabulary, final ZipfDistribution tagDistribution)
+   {
+      final int numberOfKeywords = random.nextInt(PersonalFeedbackConstants.MaximumPersonProfileTags + 1);
+
+      if (numberOfKeywords == 0)
+         return Collections.emptySet();
+
+      // Duplicate picks of the popular words are simply dropped, as they would be by a user tagging a photograph.
+      final Set<String> keywords = new HashSet<>(numberOfKeywords);
+      for (int keywordNumber = 0; keywordNumber < numberOfKeywords; keywordNumber ++)
+         keywords.add(tagVocabulary.get(tagDistribution.sample(random)));
+
+      return keywords;
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -271,6 +410,9 @@ final public class PhotographyFeedbackTest
          return processCreateSpreadFeedbackForMultiplePhotographs(personalFeedbackManager, userAccountManager, Integer.parseInt(command[1]), Integer.parseInt(command[2]));
       else if ((command.length == 2) && command[0].equals("existing"))
          return processCreateSpreadFeedbackFromSourceItems(feedbackManager, personalFeedbackManager, userAccountManager, Integer.parseInt(command[1]));
+      else if ((command.length >= 3) && (command.length <= 4) && command[0].equals("synthetic"))
+         return processCreateSyntheticFeedback(personalFeedbackManager, userAccountManager, Integer.parseInt(command[1]), Long.parseLong(command[2]),
+                                               (command.length == 4) ? Long.parseLong(command[3]) : DefaultSyntheticDataSeed);
       else if ((command.length == 1) && command[0].equals("fragment"))
          return processCreateFragmentedPhotographProfiles(personalFeedbackManager, userAccountManager);
       else
@@ -282,21 +424,23 @@ final public class PhotographyFeedbackTest
                                                                final int numberOfRatings)
    {
       // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
-      if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
-         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production profile.");
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
 
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
       final UserAccountManager.UserAccountManagerMetrics accountManagerMetrics = userAccountManager.getAccountManagerMetrics();
-      final PersonalFeedbackPersonProfile photographProfile = createRandomPhotographProfile();
+      final PersonalFeedbackPersonProfile photographProfile = createRandomPhotographProfile(random, createRandomPhotographKeywords(random));
       FeedbactoryUserAccount ratingUserAccount;
-      final byte anchorRating = createRandomFeedbackAnchorValue();
-      final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(anchorRating);
-      final Map<PhotographyCriteria, Integer> criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap();
+      final byte anchorRating = createRandomFeedbackAnchorValue(random);
+      final Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(random, anchorRating);
+      final Map<PhotographyCriteria, Integer> criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap(random);
       PersonalFeedbackSubmission feedbackSubmission;
 
       for (int ratingNumber = 0; ratingNumber < numberOfRatings; ratingNumber ++)
       {
-         ratingUserAccount = userAccountManager.getAccountByID(ThreadLocalRandom.current().nextInt(accountManagerMetrics.activatedAccounts));
-         feedbackSubmission = createRandomPhotographyFeedbackSubmission(anchorRating, anchorCriteriaRatings, criteriaProbabilityMap);
+         ratingUserAccount = userAccountManager.getAccountByID(random.nextInt(accountManagerMetrics.activatedAccounts));
+         feedbackSubmission = createRandomPhotographyFeedbackSubmission(random, anchorRating, anchorCriteriaRatings, criteriaProbabilityMap);
          personalFeedbackManager.addPersonalFeedbackSubmission(ratingUserAccount, photographProfile, feedbackSubmission);
       }
 
@@ -310,9 +454,11 @@ final public class PhotographyFeedbackTest
                                                                            final int numberOfPhotographs, final int maximumNumberOfRatingsPerPhotograph)
    {
       // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
-      if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
-         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production profile.");
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
 
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
       final UserAccountManager.UserAccountManagerMetrics accountManagerMetrics = userAccountManager.getAccountManagerMetrics();
       int totalNumberOfRatings = 0;
       PersonalFeedbackPersonProfile photographProfile;
@@ -325,18 +471,18 @@ final public class PhotographyFeedbackTest
 
       for (int photographNumber = 0; photographNumber < numberOfPhotographs; photographNumber ++)
       {
-         photographProfile = createRandomPhotographProfile();
+         photographProfile = createRandomPhotographProfile(random, createRandomPhotographKeywords(random));
 
-         numberOfPhotographRatings = ThreadLocalRandom.current().nextInt(1, maximumNumberOfRatingsPerPhotograph + 1);
+         numberOfPhotographRatings = random.nextInt(1, maximumNumberOfRatingsPerPhotograph + 1);
 
-         anchorRating = createRandomFeedbackAnchorValue();
-         anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(anchorRating);
-         criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap();
+         anchorRating = createRandomFeedbackAnchorValue(random);
+         anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(random, anchorRating);
+         criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap(random);
 
          for (int ratingNumber = 0; ratingNumber < numberOfPhotographRatings; ratingNumber ++)
          {
-            ratingUserAccount = userAccountManager.getAccountByID(ThreadLocalRandom.current().nextInt(accountManagerMetrics.activatedAccounts));
-            feedbackSubmission = createRandomPhotographyFeedbackSubmission(anchorRating, anchorCriteriaRatings, criteriaProbabilityMap);
+            ratingUserAccount = userAccountManager.getAccountByID(random.nextInt(accountManagerMetrics.activatedAccounts));
+            feedbackSubmission = createRandomPhotographyFeedbackSubmission(random, anchorRating, anchorCriteriaRatings, criteriaProbabilityMap);
             personalFeedbackManager.addPersonalFeedbackSubmission(ratingUserAccount, photographProfile, feedbackSubmission);
          }
 
@@ -353,9 +499,11 @@ final public class PhotographyFeedbackTest
                                                                     final UserAccountManager userAccountManager, final int maximumNumberOfRatingsPerPhotograph)
    {
       // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
-      if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
-         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production profile.");
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
 
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
       final FeedbactoryUserAccount sourceAccount = userAccountManager.getAccountByID(0);
       final FeedbactoryUserAccountView sourceAccountView = userAccountManager.getAccountView(sourceAccount);
       final List<PersonProfileFeedbackSubmission> sourceFeedback;
@@ -382,15 +530,15 @@ final public class PhotographyFeedbackTest
 
       for (final PersonProfileFeedbackSubmission sourceItemProfileFeedbackSubmission : sourceFeedback)
       {
-         numberOfPhotographRatings = ThreadLocalRandom.current().nextInt(1, maximumNumberOfRatingsPerPhotograph + 1);
-         anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(sourceItemProfileFeedbackSubmission.feedbackSubmission.overallFeedbackRating);
-         criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap();
+         numberOfPhotographRatings = random.nextInt(1, maximumNumberOfRatingsPerPhotograph + 1);
+         anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(random, sourceItemProfileFeedbackSubmission.feedbackSubmission.overallFeedbackRating);
+         criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap(random);
 
          for (int ratingNumber = 0; ratingNumber < numberOfPhotographRatings; ratingNumber ++)
          {
             // Ensure that the root account already containing the source feedback (0) is not selected.
-            ratingUserAccount = userAccountManager.getAccountByID(ThreadLocalRandom.current().nextInt(accountManagerMetrics.activatedAccounts - 1) + 1);
-            feedbackSubmission = createRandomPhotographyFeedbackSubmission(sourceItemProfileFeedbackSubmission.feedbackSubmission.overallFeedbackRating, anchorCriteriaRatings, criteriaProbabilityMap);
+            ratingUserAccount = userAccountManager.getAccountByID(random.nextInt(accountManagerMetrics.activatedAccounts - 1) + 1);
+            feedbackSubmission = createRandomPhotographyFeedbackSubmission(random, sourceItemProfileFeedbackSubmission.feedbackSubmission.overallFeedbackRating, anchorCriteriaRatings, criteriaProbabilityMap);
             personalFeedbackManager.addPersonalFeedbackSubmission(ratingUserAccount, sourceItemProfileFeedbackSubmission.personProfile, feedbackSubmission);
          }
 
@@ -404,11 +552,100 @@ final public class PhotographyFeedbackTest
    }
 
 
+   static private String processCreateSyntheticFeedback(final PersonalFeedbackManager personalFeedbackManager, final UserAccountManager userAccountManager,
+                                                        final int numberOfPhotographs, final long numberOfRatings, final long seed)
+   {
+      // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if ((numberOfPhotographs <= 0) || (numberOfRatings <= 0))
+         throw new IllegalArgumentException("The number of photographs and ratings must be greater than zero.");
+
+      final int numberOfAccounts = userAccountManager.getAccountManagerMetrics().activatedAccounts;
+      if (numberOfAccounts == 0)
+         return "The test or synthetic accounts must be loaded first.";
+
+      final Random random = new Random(seed);
+      final List<String> tagVocabulary = getSyntheticTagVocabulary(random);
+      final ZipfDistribution tagDistribution = new ZipfDistribution(tagVocabulary.size(), SyntheticZipfExponent);
+
+      double totalPopularityWeight = 0;
+      for (int photographNumber = 0; photographNumber < numberOfPhotographs; photographNumber ++)
+         totalPopularityWeight += Math.pow(photographNumber + 1, -SyntheticZipfExponent);
+
+      final long startTime = System.currentTimeMillis();
+      double cumulativePopularityWeight = 0;
+      long cumulativeRatings;
+      long previousCumulativeRatings = 0;
+      long nextProgressReportRatings = SyntheticProgressReportRatings;
+      int photographRatings;
+      int firstAccountID;
+      PersonalFeedbackPersonProfile photographProfile;
+      FeedbactoryUserAccount ratingUserAccount;
+      byte anchorRating;
+      Map<? extends PersonalFeedbackCriteria, PersonalFeedbackSubmissionScaleKeyValue> anchorCriteriaRatings;
+      Map<PhotographyCriteria, Integer> criteriaProbabilityMap;
+      PersonalFeedbackSubmission feedbackSubmission;
+
+      int photographsRated = 0;
+      long ratingsAdded = 0;
+
+      System.out.format("Generating synthetic feedback for %,d accounts using seed %d...%n", numberOfAccounts, seed);
+
+      for (int photographNumber = 0; photographNumber < numberOfPhotographs; photographNumber ++)
+      {
+         /* Each photograph is allotted its share of the ratings according to its popularity rank. Working from the cumulative total rather than rounding
+          * each share individually ensures that the shares add up to the requested number of ratings.
+          */
+         cumulativePopularityWeight += Math.pow(photographNumber + 1, -SyntheticZipfExponent);
+         cumulativeRatings = (long) (numberOfRatings * (cumulativePopularityWeight / totalPopularityWeight));
+         photographRatings = (int) Math.min(cumulativeRatings - previousCumulativeRatings, numberOfAccounts);
+         previousCumulativeRatings = cumulativeRatings;
+
+         if (photographRatings == 0)
+            continue;
+
+         photographProfile = createRandomPhotographProfile(random, createSyntheticPhotographKeywords(random, tagVocabulary, tagDistribution));
+         anchorRating = createRandomFeedbackAnchorValue(random);
+         anchorCriteriaRatings = createRandomPhotographyCriteriaFeedbackAnchor(random, anchorRating);
+         criteriaProbabilityMap = createPhotographyCriteriaProbabilityMap(random);
+
+         // A run of consecutive account IDs from a random starting point ensures that no account rates the photograph twice.
+         firstAccountID = random.nextInt(numberOfAccounts);
+
+         for (int ratingNumber = 0; ratingNumber < photographRatings; ratingNumber ++)
+         {
+            ratingUserAccount = userAccountManager.getAccountByID((firstAccountID + ratingNumber) % numberOfAccounts);
+            feedbackSubmission = createRandomPhotographyFeedbackSubmission(random, anchorRating, anchorCriteriaRatings, criteriaProbabilityMap);
+
+            if ((ratingUserAccount != null) && (personalFeedbackManager.addPersonalFeedbackSubmission(ratingUserAccount, photographProfile, feedbackSubmission) != null))
+               ratingsAdded ++;
+         }
+
+         photographsRated ++;
+
+         if (ratingsAdded >= nextProgressReportRatings)
+         {
+            System.out.format("Generated %,d ratings...%n", ratingsAdded);
+            nextProgressReportRatings += SyntheticProgressReportRatings;
+         }
+      }
+
+      final Formatter formatter = new Formatter();
+      formatter.format("%,d synthetic ratings added, spread across %,d new photographs in %,d ms.", ratingsAdded, photographsRated, System.currentTimeMillis() - startTime);
+      return formatter.toString();
+   }
+
+
    static private String processCreateFragmentedPhotographProfiles(final PersonalFeedbackManager personalFeedbackManager, final UserAccountManager userAccountManager)
    {
       // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
-      if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
-         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production profile.");
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
+
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
 
       /* This is the base code for a bunch of variations, testing the behaviour of the parent feedback manager's (FeedbackManager) housekeeping
        * task which tries to identify and propagate dominant item profiles (mergeFragmentedItemProfiles), and also clean the item profile cache.
@@ -427,7 +664,7 @@ final public class PhotographyFeedbackTest
       final PersonalFeedbackPersonProfile dominantProfile = new PersonalFeedbackPersonProfile(photographID, "userID", "Dominant photo profile", "test\0smugmug\0url", null);
 
       final PersonalFeedbackPersonProfile fragmentedProfile = new PersonalFeedbackPersonProfile(photographID, "userID", "Fragmented photo profile", "test\0smugmug\0url", null);
-      final PersonalFeedbackSubmission dummySubmission = new PersonalFeedbackSubmission(createRandomFeedbackAnchorValue());
+      final PersonalFeedbackSubmission dummySubmission = new PersonalFeedbackSubmission(createRandomFeedbackAnchorValue(random));
 
       FeedbactoryUserAccount account;
 
@@ -457,7 +694,7 @@ final public class PhotographyFeedbackTest
              * Comment it out to simulate the feedback submissions originating from the same IP address, to ensure that
              * a dominant item profile won't be picked up!
              */
-            //account.setLastAuthenticatedIPAddress(createRandomIPAddress());
+            //account.setLastAuthenticatedIPAddress(createRandomIPAddress(random));
          }
 
          personalFeedbackManager.addPersonalFeedbackSubmission(account, dominantProfile, dummySubmission);
@@ -32,6 +32,7 @@ import static com.feedbactory.server.network.component.AsynchronousNetworkServer
 import com.feedbactory.server.network.component.NetworkServerController;
 import com.feedbactory.shared.FeedbactoryConstants;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -189,6 +190,13 @@ final public class ApplicationServerController
       }
 
 
+      @Override
+      final public boolean isConnectionBlocked(final InetAddress clientAddress)
+      {
+         return networkServiceManager.getRequestMonitor().isIPAddressPrefixBlocked(clientAddress);
+      }
+
+
       @Override
       final public void incrementActiveConnections()
       {
@@ -467,6 +475,19 @@ final public class ApplicationServerController
    }
 
 
+   /****************************************************************************
+    * 
+    ***************************************************************************/
+
+
+   private boolean handleIsRequestExecutorBusy()
+   {
+      // The IO pool only queues work when every one of its threads is already occupied.
+      final ThreadPoolExecutor currentIOHandlerThreadPool = ioHandlerThreadPool;
+      return isBusy() || ((currentIOHandlerThreadPool != null) && (! currentIOHandlerThreadPool.getQueue().isEmpty()));
+   }
+
+
    /****************************************************************************
     * 
     ***************************************************************************/
@@ -531,6 +552,13 @@ final public class ApplicationServerController
    }
 
 
+   // Used by the housekeeping scheduler to hold back its work during busy spells.
+   final public boolean isRequestExecutorBusy()
+   {
+      return handleIsRequestExecutorBusy();
+   }
+
+
    final public boolean isServerStarted()
    {
       return (isServerCreated() && networkServer.isBound());
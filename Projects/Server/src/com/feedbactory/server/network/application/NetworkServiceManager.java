@@ -14,6 +14,7 @@ import com.feedbactory.server.core.FeedbactoryOperationsManager;
 import com.feedbactory.server.feedback.FeedbackManager;
 import com.feedbactory.server.network.component.buffer.WritableByteBuffer;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.useraccount.UserAccountManager;
 import java.io.IOException;
 import java.nio.channels.AsynchronousSocketChannel;
@@ -27,13 +28,17 @@ final public class NetworkServiceManager
    static final private int IPMonitorSpamRequestsBlockThreshold = 5129;
    static final private int IPMonitorErroneousRequestsBlockThreshold = 47;
 
+   // The number of temporarily blocked IP addresses within a /24 or /64 (or blocked /24s within a /16, etc) at which the whole range is blocked.
+   static final private int IPMonitorPrefixPromotionThreshold = 16;
+
    static final private int IPMonitorInitialIPAddressCapacity = 10000;
 
    final private FeedbactoryOperationsManager operationsManager;
 
    final private ApplicationServerController applicationServerController;
    final private IPAddressRequestMonitor ipRequestMonitor = new IPAddressRequestMonitor(IPMonitorFrequencyMinutes, IPMonitorSpamRequestsBlockThreshold,
-                                                                                        IPMonitorErroneousRequestsBlockThreshold, IPMonitorInitialIPAddressCapacity,
+                                                                                        IPMonitorErroneousRequestsBlockThreshold, IPMonitorPrefixPromotionThreshold,
+                                                                                        IPMonitorInitialIPAddressCapacity,
                                                                                         FeedbactoryServerConstants.ServerConcurrency);
    final private ApplicationRequestManager requestManager;
    final private NetworkToApplicationGateway networkToApplicationGateway;
@@ -127,11 +132,11 @@ final public class NetworkServiceManager
    }
 
 
-   private void handleStartHousekeeping()
+   private void handleStartHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
       // Will throw an exception if the housekeeping has already been started.
-      ipRequestMonitor.startHousekeeping();
-      networkToApplicationGateway.startHousekeeping();
+      ipRequestMonitor.startHousekeeping(housekeepingScheduler);
+      networkToApplicationGateway.startHousekeeping(housekeepingScheduler);
    }
 
 
@@ -159,9 +164,9 @@ final public class NetworkServiceManager
    }
 
 
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      handleStartHousekeeping();
+      handleStartHousekeeping(housekeepingScheduler);
    }
 
 
@@ -4,6 +4,7 @@ package com.feedbactory.server.network.application;
 
 import com.feedbactory.server.network.component.ClientIO;
 import com.feedbactory.server.network.component.EntityID;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.core.TimestampedMessage;
 import com.feedbactory.server.useraccount.UserAccountNetworkGateway;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
@@ -305,18 +306,16 @@ final public class NetworkToApplicationGateway
    }
 
 
-   private void handleStartHousekeeping()
+   private void handleStartHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
       // Will bail out with an exception if already started.
-      sessionManager.startHousekeeping();
-      accountNetworkGateway.startHousekeeping();
+      sessionManager.startHousekeeping(housekeepingScheduler);
    }
 
 
    private void handleShutdownHousekeeping() throws InterruptedException
    {
       sessionManager.shutdownHousekeeping();
-      accountNetworkGateway.shutdownHousekeeping();
    }
 
 
@@ -355,9 +354,9 @@ final public class NetworkToApplicationGateway
    }
 
 
-   final void startHousekeeping()
+   final void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      handleStartHousekeeping();
+      handleStartHousekeeping(housekeepingScheduler);
    }
 
 
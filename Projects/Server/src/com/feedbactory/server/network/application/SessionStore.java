@@ -0,0 +1,816 @@
+/* Memos:
+ * - The store of live user account sessions. Each session is held as a fixed width record spread over primitive arrays - the session ID and the encryption key
+ *   packed into longs, the account reference, the timestamps and the encrypted request count - rather than as a session object with its own session ID,
+ *   byte arrays and secret key spec objects, plus a map node. At around a hundred bytes per session including its index slot and the spare capacity left
+ *   by growth, five million sessions fit within about half a gigabyte of heap, roughly a third of that taken by the equivalent objects.
+ *
+ * - The sessions are split into shards by their session ID, each shard guarded by its own lock. Within a shard the records are allocated from a dense array and
+ *   recycled via a free list, so a record's index never changes while it's live. A session is referred to outside of the store by a handle combining its shard
+ *   and record index. The session IDs are looked up via an open addressed index of the record numbers, and removals shift the following index entries back
+ *   rather than leaving tombstones. The record arrays and the index each grow by half when they fill; they never shrink.
+ *
+ * - The session IDs are generated by the server using a SecureRandom, so their leading bytes are used as the hash directly. A client may present any session ID
+ *   for lookup, but it can't influence where the genuine sessions are placed.
+ *
+ * - Dormant sessions are expired via per-shard expiry buckets rather than by sweeping every session. Each record is linked into the bucket covering its last
+ *   resumed time, and moved to the current bucket when resumed. The buckets form a ring spanning twice the dormant expiry period, and each shard keeps its
+ *   position in the sweep, so each housekeeping run only visits the buckets which have fallen due since the previous run. The cost of a run is therefore
+ *   proportional to the number of sessions expiring rather than the number of live sessions. A bucket may also hold a session whose time is a full ring
+ *   more recent, eg. one restored from an old checkpoint after a long outage, so each session's time is still checked before it's reported as expired.
+ *
+ * - The store doesn't know about the relationship between accounts and their sessions, that's tracked by the session manager. Callers must hold the
+ *   account's lock when adding or removing a session, or when relying on a handle remaining valid across calls; the store only locks its shards. The lock
+ *   ordering is always account before shard.
+ */
+
+package com.feedbactory.server.network.application;
+
+
+import com.feedbactory.server.useraccount.FeedbactoryUserAccount;
+import com.feedbactory.shared.network.FeedbactorySessionConstants;
+import java.util.Arrays;
+
+
+final class SessionStore
+{
+   static final long NoSession = -1L;
+
+   static final private int SessionIDWords = FeedbactorySessionConstants.SessionIDLengthBytes / 8;
+   static final private int EncryptionKeyWords = FeedbactorySessionConstants.SecretKeyEncryptionKeyLengthBytes / 8;
+
+   static final private int MinimumShardCapacity = 16;
+   static final private float IndexLoadFactor = 0.75f;
+
+   static final private int NoRecord = -1;
+   static final private long Unswept = Long.MIN_VALUE;
+
+   /* The approximate memory used per record and per index slot, assuming compressed object references. The account objects themselves are held
+    * elsewhere and aren't included.
+    */
+   static final private int RecordSizeBytes = ((SessionIDWords + EncryptionKeyWords) * 8) + 4 + 8 + 8 + 4 + 4 + 4;
+   static final private int IndexSlotSizeBytes = 4;
+   static final private int BucketSizeBytes = 4;
+
+   final private long dormantExpiryMilliseconds;
+   final private long expiryBucketMilliseconds;
+   final private int expiryBucketCount;
+
+   final private int initialShardCapacity;
+   final private SessionShard[] shards;
+
+
+   SessionStore(final int initialSessionCapacity, final int concurrency, final long dormantExpiryMilliseconds, final long expiryBucketMilliseconds)
+   {
+      this.dormantExpiryMilliseconds = dormantExpiryMilliseconds;
+      this.expiryBucketMilliseconds = expiryBucketMilliseconds;
+      expiryBucketCount = (int) (((2 * dormantExpiryMilliseconds) / expiryBucketMilliseconds) + 1);
+
+      // Rounded up to a power of two, so that a shard can be selected by masking the session ID hash.
+      final int shardCount = Math.max(Integer.highestOneBit(Math.max(concurrency, 1) - 1) << 1, 1);
+      initialShardCapacity = Math.max(initialSessionCapacity / shardCount, MinimumShardCapacity);
+
+      shards = new SessionShard[shardCount];
+      for (int shardIndex = 0; shardIndex < shardCount; shardIndex ++)
+         shards[shardIndex] = new SessionShard(initialShardCapacity);
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class SessionStoreMetrics
+   {
+      final int shards;
+      final int sessions;
+      final int recordCapacity;
+      final int indexCapacity;
+      final int expiryBucketsPerShard;
+      final long expiryBucketMinutes;
+      final long estimatedMemoryBytes;
+
+
+      private SessionStoreMetrics(final int shards, final int sessions, final int recordCapacity, final int indexCapacity,
+                                  final int expiryBucketsPerShard, final long expiryBucketMinutes, final long estimatedMemoryBytes)
+      {
+         this.shards = shards;
+         this.sessions = sessions;
+         this.recordCapacity = recordCapacity;
+         this.indexCapacity = indexCapacity;
+         this.expiryBucketsPerShard = expiryBucketsPerShard;
+         this.expiryBucketMinutes = expiryBucketMinutes;
+         this.estimatedMemoryBytes = estimatedMemoryBytes;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // Caller must be sync'd on the shard for all of its operations. A record having a null account is free.
+   final private class SessionShard
+   {
+      private long[] sessionIDWords;
+      private long[] encryptionKeyWords;
+      private FeedbactoryUserAccount[] accounts;
+      private long[] creationTimes;
+      private long[] lastResumedTimes;
+      private int[] encryptedRequestCounts;
+
+      // The links of each live record within its expiry bucket, or for a free record the next free record.
+      private int[] previousRecords;
+      private int[] nextRecords;
+
+      private int allocatedRecords;
+      private int freeRecord = NoRecord;
+      private int liveRecords;
+
+      // Each slot holds a record index plus one, zero marking an empty slot.
+      private int[] indexSlots;
+
+      final private int[] expiryBuckets = new int[expiryBucketCount];
+      private long nextSweepBucketNumber = Unswept;
+
+
+      private SessionShard(final int capacity)
+      {
+         allocate(capacity);
+      }
+
+
+      private void allocate(final int capacity)
+      {
+         sessionIDWords = new long[capacity * SessionIDWords];
+         encryptionKeyWords = new long[capacity * EncryptionKeyWords];
+         accounts = new FeedbactoryUserAccount[capacity];
+         creationTimes = new long[capacity];
+         lastResumedTimes = new long[capacity];
+         encryptedRequestCounts = new int[capacity];
+         previousRecords = new int[capacity];
+         nextRecords = new int[capacity];
+
+         allocatedRecords = 0;
+         freeRecord = NoRecord;
+         liveRecords = 0;
+
+         indexSlots = new int[(int) Math.ceil(capacity / IndexLoadFactor)];
+
+         for (int bucket = 0; bucket < expiryBuckets.length; bucket ++)
+            expiryBuckets[bucket] = NoRecord;
+
+         nextSweepBucketNumber = Unswept;
+      }
+
+
+      private int getRecordCapacity()
+      {
+         return accounts.length;
+      }
+
+
+      private void growRecords()
+      {
+         final int capacity = getRecordCapacity() + (getRecordCapacity() / 2);
+
+         sessionIDWords = Arrays.copyOf(sessionIDWords, capacity * SessionIDWords);
+         encryptionKeyWords = Arrays.copyOf(encryptionKeyWords, capacity * EncryptionKeyWords);
+         accounts = Arrays.copyOf(accounts, capacity);
+         creationTimes = Arrays.copyOf(creationTimes, capacity);
+         lastResumedTimes = Arrays.copyOf(lastResumedTimes, capacity);
+         encryptedRequestCounts = Arrays.copyOf(encryptedRequestCounts, capacity);
+         previousRecords = Arrays.copyOf(previousRecords, capacity);
+         nextRecords = Arrays.copyOf(nextRecords, capacity);
+      }
+
+
+      private int allocateRecord()
+      {
+         final int record;
+
+         if (freeRecord != NoRecord)
+         {
+            record = freeRecord;
+            freeRecord = nextRecords[record];
+         }
+         else
+         {
+            if (allocatedRecords == getRecordCapacity())
+               growRecords();
+
+            record = allocatedRecords ++;
+         }
+
+         liveRecords ++;
+
+         return record;
+      }
+
+
+      private void releaseRecord(final int record)
+      {
+         accounts[record] = null;
+         nextRecords[record] = freeRecord;
+         freeRecord = record;
+
+         liveRecords --;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      private int getIndexCapacity()
+      {
+         return indexSlots.length;
+      }
+
+
+      // The capacity isn't restricted to powers of two, so the first slot is taken from the hash by multiplication rather than masking.
+      private int getFirstSlot(final long sessionIDHash)
+      {
+         return (int) (((sessionIDHash & 0xFFFFFFFFL) * getIndexCapacity()) >>> 32);
+      }
+
+
+      private int getNextSlot(final int slot)
+      {
+         return ((slot + 1) < getIndexCapacity()) ? (slot + 1) : 0;
+      }
+
+
+      private boolean isSessionID(final int record, final long[] sessionID)
+      {
+         final int wordOffset = record * SessionIDWords;
+
+         for (int word = 0; word < SessionIDWords; word ++)
+         {
+            if (sessionIDWords[wordOffset + word] != sessionID[word])
+               return false;
+         }
+
+         return true;
+      }
+
+
+      private int findSlot(final long[] sessionID)
+      {
+         int slot = getFirstSlot(sessionID[0]);
+         int record;
+
+         while ((record = indexSlots[slot] - 1) != NoRecord)
+         {
+            if (isSessionID(record, sessionID))
+               return slot;
+
+            slot = getNextSlot(slot);
+         }
+
+         return -1;
+      }
+
+
+      private void indexRecord(final int record)
+      {
+         int slot = getFirstSlot(sessionIDWords[record * SessionIDWords]);
+         while (indexSlots[slot] != 0)
+            slot = getNextSlot(slot);
+
+         indexSlots[slot] = record + 1;
+      }
+
+
+      private void growIndex()
+      {
+         indexSlots = new int[getIndexCapacity() + (getIndexCapacity() / 2)];
+
+         for (int record = 0; record < allocatedRecords; record ++)
+         {
+            if (accounts[record] != null)
+               indexRecord(record);
+         }
+      }
+
+
+      /* Vacate the slot, shifting back any following entries of the probe run that would otherwise no longer be reachable from their first slot.
+       * An entry can fill the hole unless its first slot lies cyclically within (hole, slot], ie. the entry is already as close to its first slot as the hole.
+       */
+      private void removeSlot(final int removedSlot)
+      {
+         int holeSlot = removedSlot;
+         int slot = getNextSlot(removedSlot);
+         int firstSlot;
+
+         while (indexSlots[slot] != 0)
+         {
+            firstSlot = getFirstSlot(sessionIDWords[(indexSlots[slot] - 1) * SessionIDWords]);
+
+            if ((holeSlot <= slot) ? ((firstSlot <= holeSlot) || (firstSlot > slot)) : ((firstSlot <= holeSlot) && (firstSlot > slot)))
+            {
+               indexSlots[holeSlot] = indexSlots[slot];
+               holeSlot = slot;
+            }
+
+            slot = getNextSlot(slot);
+         }
+
+         indexSlots[holeSlot] = 0;
+      }
+
+
+      /****************************************************************************
+       *
+       ***************************************************************************/
+
+
+      private long getExpiryBucketNumber(final long lastResumedTime)
+      {
+         return (Math.max(lastResumedTime, 0L) / expiryBucketMilliseconds);
+      }
+
+
+      private int getExpiryBucket(final long lastResumedTime)
+      {
+         return (int) (getExpiryBucketNumber(lastResumedTime) % expiryBucketCount);
+      }
+
+
+      private void linkExpiry(final int record)
+      {
+         final long bucketNumber = getExpiryBucketNumber(lastResumedTimes[record]);
+         final int bucket = (int) (bucketNumber % expiryBucketCount);
+
+         // A session given a time which the sweep has already passed, eg. restored from an older checkpoint, winds the sweep back to reach it.
+         if ((nextSweepBucketNumber != Unswept) && (bucketNumber < nextSweepBucketNumber))
+            nextSweepBucketNumber = bucketNumber;
+
+         previousRecords[record] = NoRecord;
+         nextRecords[record] = expiryBuckets[bucket];
+
+         if (expiryBuckets[bucket] != NoRecord)
+            previousRecords[expiryBuckets[bucket]] = record;
+
+         expiryBuckets[bucket] = record;
+      }
+
+
+      private void unlinkExpiry(final int record)
+      {
+         if (previousRecords[record] != NoRecord)
+            nextRecords[previousRecords[record]] = nextRecords[record];
+         else
+            expiryBuckets[getExpiryBucket(lastResumedTimes[record])] = nextRecords[record];
+
+         if (nextRecords[record] != NoRecord)
+            previousRecords[nextRecords[record]] = previousRecords[record];
+      }
+
+
+      private boolean isDormant(final int record, final long currentTime)
+      {
+         return ((currentTime - lastResumedTimes[record]) > dormantExpiryMilliseconds);
+      }
+
+
+      /* Return a dormant record from the earliest bucket which has fallen due, advancing the sweep past each bucket once it holds no dormant records.
+       * A bucket has fallen due once the whole of its time span is beyond the dormant expiry, so a dormant session may linger for up to one bucket's
+       * span past its expiry. The sweep never looks back more than the length of the ring, so following a clear or restore its first pass visits every bucket.
+       */
+      private int pollDormantRecord(final long currentTime)
+      {
+         final long lastDueBucketNumber = ((currentTime - dormantExpiryMilliseconds) / expiryBucketMilliseconds) - 1;
+
+         if ((nextSweepBucketNumber == Unswept) || (nextSweepBucketNumber <= (lastDueBucketNumber - expiryBucketCount)))
+            nextSweepBucketNumber = lastDueBucketNumber - expiryBucketCount + 1;
+
+         int record;
+
+         while (nextSweepBucketNumber <= lastDueBucketNumber)
+         {
+            record = expiryBuckets[(int) (Math.max(nextSweepBucketNumber, 0L) % expiryBucketCount)];
+
+            while (record != NoRecord)
+            {
+               if (isDormant(record, currentTime))
+                  return record;
+
+               record = nextRecords[record];
+            }
+
+            nextSweepBucketNumber ++;
+         }
+
+         return NoRecord;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void packBytes(final byte[] bytes, final long[] words)
+   {
+      for (int word = 0; word < words.length; word ++)
+      {
+         long value = 0L;
+         for (int byteIndex = word * 8; byteIndex < ((word + 1) * 8); byteIndex ++)
+            value = (value << 8) | (bytes[byteIndex] & 0xff);
+
+         words[word] = value;
+      }
+   }
+
+
+   static private void unpackBytes(final long[] words, final int wordOffset, final byte[] bytes)
+   {
+      for (int byteIndex = 0; byteIndex < bytes.length; byteIndex ++)
+         bytes[byteIndex] = (byte) (words[wordOffset + (byteIndex / 8)] >>> ((7 - (byteIndex % 8)) * 8));
+   }
+
+
+   static private long getHandle(final int shardIndex, final int record)
+   {
+      return (((long) shardIndex) << 32) | record;
+   }
+
+
+   static private int getShardIndex(final long sessionHandle)
+   {
+      return (int) (sessionHandle >>> 32);
+   }
+
+
+   static private int getRecord(final long sessionHandle)
+   {
+      return (int) sessionHandle;
+   }
+
+
+   private int getShardIndex(final long[] sessionID)
+   {
+      return ((int) (sessionID[0] >>> 32)) & (shards.length - 1);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private long handleFindSession(final byte[] sessionIDBytes)
+   {
+      final long[] sessionID = new long[SessionIDWords];
+      packBytes(sessionIDBytes, sessionID);
+
+      final int shardIndex = getShardIndex(sessionID);
+      final SessionShard shard = shards[shardIndex];
+
+      synchronized (shard)
+      {
+         final int slot = shard.findSlot(sessionID);
+         return (slot != -1) ? getHandle(shardIndex, shard.indexSlots[slot] - 1) : NoSession;
+      }
+   }
+
+
+   private long handleAddSession(final FeedbactoryUserAccount account, final byte[] sessionIDBytes, final byte[] encryptionKeyBytes,
+                                 final long creationTime, final long lastResumedTime, final int encryptedRequestCount)
+   {
+      final long[] sessionID = new long[SessionIDWords];
+      packBytes(sessionIDBytes, sessionID);
+
+      final long[] encryptionKey = new long[EncryptionKeyWords];
+      packBytes(encryptionKeyBytes, encryptionKey);
+
+      final int shardIndex = getShardIndex(sessionID);
+      final SessionShard shard = shards[shardIndex];
+
+      synchronized (shard)
+      {
+         if (shard.findSlot(sessionID) != -1)
+            throw new IllegalArgumentException("Duplicate session ID.");
+
+         if ((shard.liveRecords + 1) > (shard.getIndexCapacity() * IndexLoadFactor))
+            shard.growIndex();
+
+         final int record = shard.allocateRecord();
+
+         System.arraycopy(sessionID, 0, shard.sessionIDWords, record * SessionIDWords, SessionIDWords);
+         System.arraycopy(encryptionKey, 0, shard.encryptionKeyWords, record * EncryptionKeyWords, EncryptionKeyWords);
+         shard.accounts[record] = account;
+         shard.creationTimes[record] = creationTime;
+         shard.lastResumedTimes[record] = lastResumedTime;
+         shard.encryptedRequestCounts[record] = encryptedRequestCount;
+
+         shard.indexRecord(record);
+         shard.linkExpiry(record);
+
+         return getHandle(shardIndex, record);
+      }
+   }
+
+
+   private void handleRemoveSession(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+      final int record = getRecord(sessionHandle);
+
+      synchronized (shard)
+      {
+         if (shard.accounts[record] == null)
+            return;
+
+         final long[] sessionID = new long[SessionIDWords];
+         System.arraycopy(shard.sessionIDWords, record * SessionIDWords, sessionID, 0, SessionIDWords);
+
+         shard.removeSlot(shard.findSlot(sessionID));
+         shard.unlinkExpiry(record);
+         shard.releaseRecord(record);
+      }
+   }
+
+
+   private FeedbactoryUserAccount handleGetAccount(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         return shard.accounts[getRecord(sessionHandle)];
+      }
+   }
+
+
+   private void handleGetSessionID(final long sessionHandle, final byte[] sessionIDBytes)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         unpackBytes(shard.sessionIDWords, getRecord(sessionHandle) * SessionIDWords, sessionIDBytes);
+      }
+   }
+
+
+   private void handleGetEncryptionKey(final long sessionHandle, final byte[] encryptionKeyBytes)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         unpackBytes(shard.encryptionKeyWords, getRecord(sessionHandle) * EncryptionKeyWords, encryptionKeyBytes);
+      }
+   }
+
+
+   private long handleGetCreationTime(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         return shard.creationTimes[getRecord(sessionHandle)];
+      }
+   }
+
+
+   private long handleGetLastResumedTime(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         return shard.lastResumedTimes[getRecord(sessionHandle)];
+      }
+   }
+
+
+   private void handleMarkResumed(final long sessionHandle, final long resumedTime)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+      final int record = getRecord(sessionHandle);
+
+      synchronized (shard)
+      {
+         shard.unlinkExpiry(record);
+         shard.lastResumedTimes[record] = resumedTime;
+         shard.linkExpiry(record);
+      }
+   }
+
+
+   private int handleGetEncryptedRequestCount(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         return shard.encryptedRequestCounts[getRecord(sessionHandle)];
+      }
+   }
+
+
+   private int handleIncrementEncryptedRequestCount(final long sessionHandle)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+
+      synchronized (shard)
+      {
+         return ++ shard.encryptedRequestCounts[getRecord(sessionHandle)];
+      }
+   }
+
+
+   private boolean handleIsSessionDormant(final long sessionHandle, final long currentTime)
+   {
+      final SessionShard shard = shards[getShardIndex(sessionHandle)];
+      final int record = getRecord(sessionHandle);
+
+      synchronized (shard)
+      {
+         return (shard.accounts[record] != null) && shard.isDormant(record, currentTime);
+      }
+   }
+
+
+   private long handlePollDormantSession(final int shardIndex, final long currentTime)
+   {
+      final SessionShard shard = shards[shardIndex];
+
+      synchronized (shard)
+      {
+         final int record = shard.pollDormantRecord(currentTime);
+         return (record != NoRecord) ? getHandle(shardIndex, record) : NoSession;
+      }
+   }
+
+
+   private int handleSize()
+   {
+      int size = 0;
+
+      for (final SessionShard shard : shards)
+      {
+         synchronized (shard)
+         {
+            size += shard.liveRecords;
+         }
+      }
+
+      return size;
+   }
+
+
+   private void handleClear()
+   {
+      for (final SessionShard shard : shards)
+      {
+         synchronized (shard)
+         {
+            shard.allocate(initialShardCapacity);
+         }
+      }
+   }
+
+
+   private SessionStoreMetrics handleGetMetrics()
+   {
+      int sessions = 0;
+      int recordCapacity = 0;
+      int indexCapacity = 0;
+
+      for (final SessionShard shard : shards)
+      {
+         synchronized (shard)
+         {
+            sessions += shard.liveRecords;
+            recordCapacity += shard.getRecordCapacity();
+            indexCapacity += shard.getIndexCapacity();
+         }
+      }
+
+      final long estimatedMemoryBytes = (((long) recordCapacity) * RecordSizeBytes) + (((long) indexCapacity) * IndexSlotSizeBytes) +
+                                        (((long) shards.length) * expiryBucketCount * BucketSizeBytes);
+
+      return new SessionStoreMetrics(shards.length, sessions, recordCapacity, indexCapacity, expiryBucketCount, expiryBucketMilliseconds / 60000L,
+                                     estimatedMemoryBytes);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final long findSession(final byte[] sessionIDBytes)
+   {
+      return handleFindSession(sessionIDBytes);
+   }
+
+
+   final long addSession(final FeedbactoryUserAccount account, final byte[] sessionIDBytes, final byte[] encryptionKeyBytes,
+                         final long creationTime, final long lastResumedTime, final int encryptedRequestCount)
+   {
+      return handleAddSession(account, sessionIDBytes, encryptionKeyBytes, creationTime, lastResumedTime, encryptedRequestCount);
+   }
+
+
+   final void removeSession(final long sessionHandle)
+   {
+      handleRemoveSession(sessionHandle);
+   }
+
+
+   final FeedbactoryUserAccount getAccount(final long sessionHandle)
+   {
+      return handleGetAccount(sessionHandle);
+   }
+
+
+   final void getSessionID(final long sessionHandle, final byte[] sessionIDBytes)
+   {
+      handleGetSessionID(sessionHandle, sessionIDBytes);
+   }
+
+
+   final void getEncryptionKey(final long sessionHandle, final byte[] encryptionKeyBytes)
+   {
+      handleGetEncryptionKey(sessionHandle, encryptionKeyBytes);
+   }
+
+
+   final long getCreationTime(final long sessionHandle)
+   {
+      return handleGetCreationTime(sessionHandle);
+   }
+
+
+   final long getLastResumedTime(final long sessionHandle)
+   {
+      return handleGetLastResumedTime(sessionHandle);
+   }
+
+
+   final void markResumed(final long sessionHandle, final long resumedTime)
+   {
+      handleMarkResumed(sessionHandle, resumedTime);
+   }
+
+
+   final int getEncryptedRequestCount(final long sessionHandle)
+   {
+      return handleGetEncryptedRequestCount(sessionHandle);
+   }
+
+
+   final int incrementEncryptedRequestCount(final long sessionHandle)
+   {
+      return handleIncrementEncryptedRequestCount(sessionHandle);
+   }
+
+
+   final boolean isSessionDormant(final long sessionHandle, final long currentTime)
+   {
+      return handleIsSessionDormant(sessionHandle, currentTime);
+   }
+
+
+   final int getShardCount()
+   {
+      return shards.length;
+   }
+
+
+   final long pollDormantSession(final int shardIndex, final long currentTime)
+   {
+      return handlePollDormantSession(shardIndex, currentTime);
+   }
+
+
+   final int size()
+   {
+      return handleSize();
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+
+
+   final SessionStoreMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+}
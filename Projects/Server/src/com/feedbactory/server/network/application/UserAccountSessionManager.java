@@ -33,6 +33,10 @@
  *
  *   b) Allow any encrypted session request, not just ResumeSession, to automatically reset the time out clock.
  *
+ * - The sessions themselves are held as compact records in the SessionStore, which also takes care of finding the dormant sessions without sweeping all of them.
+ *   This class keeps only a small array of session handles per account, which is replaced as a whole while holding the account's lock. A handle is only
+ *   guaranteed to refer to the same session while the account's lock is held, so a session looked up by its ID is looked up again once the lock is taken.
+ *
  * - The public checkpointing and housekeeping management methods aren't threadsafe, the caller must carefully coordinate calls to them. For example it's
  *   unsafe to overlap calls to startHousekeeping() and shutdownHousekeeping(), or startHousekeeping() and restoreFromCheckpoint().
  *   It's OK though for a checkpoint to be saved (NOT restored), either periodically or manually, while a housekeeping run is active.
@@ -42,8 +46,11 @@
 package com.feedbactory.server.network.application;
 
 
+import com.feedbactory.server.core.CheckpointFileFormat;
+import com.feedbactory.server.core.CheckpointRecordBuffer;
 import com.feedbactory.server.core.FeedbactorySecurityException;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.core.TimeCache;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SecurityLogLevel;
@@ -61,13 +68,10 @@ import com.feedbactory.shared.network.AuthenticationStatus;
 import com.feedbactory.shared.network.FeedbactorySessionConstants;
 import com.feedbactory.shared.network.SessionInitiationType;
 import com.feedbactory.shared.network.SessionRequestType;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Path;
@@ -77,14 +81,13 @@ import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -98,7 +101,7 @@ final public class UserAccountSessionManager
 
    static final private String FeedbactoryEncryptionKeyPairSerializedFilename = "FeedbactoryEncryptionKeyPair.ser";
 
-   static final private int InitialSessionIDMapCapacity = 10000;
+   static final private int InitialSessionCapacity = 10000;
    static final private int InitialNonceMapCapacity = 10000;
 
    static final private long DormantSessionExpiryTimeMilliseconds = TimeUnit.DAYS.toMillis(8);
@@ -127,8 +130,11 @@ final public class UserAccountSessionManager
 
    final private KeyPair feedbactoryEncryptionKeyPair = restoreFeedbactoryEncryptionKeyPair();
 
-   final private Map<EntityID, Session> accountsBySessionID = new ConcurrentHashMap<>(InitialSessionIDMapCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
-   final private Map<FeedbactoryUserAccount, List<Session>> sessionIDsByAccount = new ConcurrentHashMap<>(InitialSessionIDMapCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+   final private SessionStore sessionStore = new SessionStore(InitialSessionCapacity, FeedbactoryServerConstants.ServerConcurrency, DormantSessionExpiryTimeMilliseconds,
+                                                              TimeUnit.MINUTES.toMillis(HousekeepingTaskFrequencyMinutes));
+
+   // The handles of each account's sessions within the session store. An account's array is only ever replaced as a whole, while holding the account's lock.
+   final private Map<FeedbactoryUserAccount, long[]> sessionsByAccount = new ConcurrentHashMap<>(InitialSessionCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
 
    final private ConcurrentHashMap<EntityID, Long> nonceExpiryTimes = new ConcurrentHashMap<>(InitialNonceMapCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
 
@@ -195,12 +201,19 @@ final public class UserAccountSessionManager
       final public int numberOfSessions;
       final public int spreadOfAccounts;
 
+      final public int sessionStoreShards;
+      final public int sessionRecordCapacity;
+      final public int sessionIndexCapacity;
+      final public int expiryBucketsPerShard;
+      final public int expiryBucketMinutes;
+      final public long estimatedSessionStoreMemoryBytes;
+
       final public int nonceEncryptionExpiryTimeMinutes;
       final public int numberOfEncryptionNonces;
 
 
       private SessionManagerMetrics(final boolean isHousekeepingEnabled, final long housekeepingLastRunStartTime,
-                                    final int numberOfSessions, final int spreadOfAccounts,
+                                    final SessionStore.SessionStoreMetrics sessionStoreMetrics, final int spreadOfAccounts,
                                     final int numberOfEncryptionNonces)
       {
          this.isHousekeepingEnabled = isHousekeepingEnabled;
@@ -209,9 +222,16 @@ final public class UserAccountSessionManager
 
          this.dormantSessionExpiryTimeDays = (int) TimeUnit.MILLISECONDS.toDays(DormantSessionExpiryTimeMilliseconds);
          this.sessionsPermittedPerAccount = SessionsPermittedPerAccount;
-         this.numberOfSessions = numberOfSessions;
+         this.numberOfSessions = sessionStoreMetrics.sessions;
          this.spreadOfAccounts = spreadOfAccounts;
 
+         this.sessionStoreShards = sessionStoreMetrics.shards;
+         this.sessionRecordCapacity = sessionStoreMetrics.recordCapacity;
+         this.sessionIndexCapacity = sessionStoreMetrics.indexCapacity;
+         this.expiryBucketsPerShard = sessionStoreMetrics.expiryBucketsPerShard;
+         this.expiryBucketMinutes = (int) sessionStoreMetrics.expiryBucketMinutes;
+         this.estimatedSessionStoreMemoryBytes = sessionStoreMetrics.estimatedMemoryBytes;
+
          this.nonceEncryptionExpiryTimeMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(RequestTimeLeniencyMilliseconds);
          this.numberOfEncryptionNonces = numberOfEncryptionNonces;
       }
@@ -246,71 +266,10 @@ final public class UserAccountSessionManager
     ***************************************************************************/
 
 
-   static final private class Session
+   final private class HousekeepingTask implements HousekeepingScheduler.Task
    {
-      final private FeedbactoryUserAccount account;
-      final private EntityID sessionID;
-      final private SecretKeySpec encryptionSecretKeySpec;
-      final private long sessionCreationTime;
-
-      private long sessionLastResumedTime;
-      private int encryptedRequestCount;
-      private boolean hasExpired;
-
-
-      // Restore from storage constructor.
-      private Session(final FeedbactoryUserAccount account, final EntityID sessionID, final SecretKeySpec encryptionSecretKeySpec,
-                      final long sessionCreationTime, final long sessionLastResumedTime, final int encryptedRequestCount)
-      {
-         this.account = account;
-         this.sessionID = sessionID;
-         this.encryptionSecretKeySpec = encryptionSecretKeySpec;
-         this.sessionCreationTime = sessionCreationTime;
-         this.sessionLastResumedTime = sessionLastResumedTime;
-         this.encryptedRequestCount = encryptedRequestCount;
-      }
-
-
-      // Operational constructor.
-      private Session(final FeedbactoryUserAccount account, final EntityID sessionID, final SecretKeySpec encryptionSecretKeySpec)
-      {
-         this.account = account;
-         this.sessionID = sessionID;
-         this.encryptionSecretKeySpec = encryptionSecretKeySpec;
-
-         sessionLastResumedTime = sessionCreationTime = TimeCache.getCurrentTimeMilliseconds();
-      }
-
-
-      private void markLastResumedTime()
-      {
-         sessionLastResumedTime = TimeCache.getCurrentTimeMilliseconds();
-      }
-
-
-      private void incrementEncryptedRequestCount()
-      {
-         encryptedRequestCount ++;
-      }
-
-
-      private void expire()
-      {
-         hasExpired = true;
-      }
-   }
-
-
-   /****************************************************************************
-    * 
-    * 
-    * 
-    ***************************************************************************/
-
-
-   final private class HousekeepingTask implements Runnable, ThreadFactory
-   {
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler housekeepingScheduler;
+      private HousekeepingScheduler.Registration registration;
 
       /* This variable is written by the housekeeping thread, and read by the owner thread of the session manager.
        * At the moment there are no other metrics variables with which the housekeeping start time needs to be written atomically,
@@ -318,74 +277,89 @@ final public class UserAccountSessionManager
        */
       volatile private long lastRunStartTime = FeedbactoryConstants.NoTime;
 
-
-      @Override
-      final public Thread newThread(final Runnable runnable)
-      {
-         final Thread thread = new Thread(runnable, "User account session manager housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
+      /* The position of the run within the session store shards and the nonces is held between the slices of a run, so that a paused run resumes
+       * from where it left off. Each shard of the session store also keeps its own position within its expiry buckets, see SessionStore.
+       * The nonce collection is a concurrent map whose iterator is weakly consistent, so holding it across slices is safe; entries added in the
+       * meantime may or may not be visited by the current run, which doesn't matter since they can't yet have expired.
+       * Only the scheduler thread touches these variables.
+       */
+      private int sessionShardIndex;
+      private Iterator<Entry<EntityID, Long>> nonceIterator;
 
 
       @Override
-      final public void run()
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
          try
          {
-            lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
+            if (isNewRun)
+            {
+               lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
 
-            purgeExpiredSessions();
-            purgeExpiredNonces();
+               sessionShardIndex = 0;
+               nonceIterator = nonceExpiryTimes.entrySet().iterator();
+            }
+
+            if (purgeExpiredSessions(sliceDeadlineNanoTime) && purgeExpiredNonces(sliceDeadlineNanoTime))
+            {
+               nonceIterator = null;
+               return true;
+            }
+            else
+               return false;
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
+            /* Exception handling provided for -any- exception, so that the failure is logged against this task.
+             * The run is treated as finished, and any remaining expired sessions or nonces will be purged by the next run.
              */
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "User account session manager housekeeping task failed", anyException);
+
+            nonceIterator = null;
+            return true;
          }
       }
 
 
-      private void purgeExpiredSessions()
+      /* The session store reports the dormant sessions one at a time from each shard. The account's lock must be taken before a session is removed, so
+       * the session is checked again once it's held; the session may have been resumed or ended in the meantime, in which case it's no longer reported.
+       * The dormancy is judged as of the start of the run, so a session that was reported is still dormant when checked unless it has been resumed.
+       */
+      private boolean purgeExpiredSessions(final long sliceDeadlineNanoTime)
       {
-         final Iterator<Entry<FeedbactoryUserAccount, List<Session>>> accountSessionsIterator = sessionIDsByAccount.entrySet().iterator();
-         Entry<FeedbactoryUserAccount, List<Session>> accountSessionsEntry;
+         long sessionHandle;
+         FeedbactoryUserAccount account;
 
-         while (accountSessionsIterator.hasNext())
+         while (sessionShardIndex < sessionStore.getShardCount())
          {
-            accountSessionsEntry = accountSessionsIterator.next();
+            sessionHandle = sessionStore.pollDormantSession(sessionShardIndex, lastRunStartTime);
 
-            synchronized (accountSessionsEntry.getKey())
+            if (sessionHandle != SessionStore.NoSession)
             {
-               final Iterator<Session> sessionsIterator = accountSessionsEntry.getValue().iterator();
-               Session session;
+               account = sessionStore.getAccount(sessionHandle);
 
-               while (sessionsIterator.hasNext())
+               if (account != null)
                {
-                  session = sessionsIterator.next();
-
-                  if ((TimeCache.getCurrentTimeMilliseconds() - session.sessionLastResumedTime) > DormantSessionExpiryTimeMilliseconds)
+                  synchronized (account)
                   {
-                     session.expire();
-                     accountsBySessionID.remove(session.sessionID);
-                     sessionsIterator.remove();
+                     if ((sessionStore.getAccount(sessionHandle) == account) && sessionStore.isSessionDormant(sessionHandle, lastRunStartTime))
+                        removeAccountSession(account, sessionHandle);
                   }
                }
-
-               // If all sessions for a user account have expired, remove the list from the sessionIDsByUserAccount collection.
-               if (accountSessionsEntry.getValue().isEmpty())
-                  accountSessionsIterator.remove();
             }
+            else
+               sessionShardIndex ++;
+
+            if (System.nanoTime() >= sliceDeadlineNanoTime)
+               return false;
          }
+
+         return true;
       }
 
 
-      private void purgeExpiredNonces()
+      private boolean purgeExpiredNonces(final long sliceDeadlineNanoTime)
       {
-         final Iterator<Entry<EntityID, Long>> nonceIterator = nonceExpiryTimes.entrySet().iterator();
          Entry<EntityID, Long> nonceEntry;
 
          while (nonceIterator.hasNext())
@@ -394,7 +368,12 @@ final public class UserAccountSessionManager
 
             if ((TimeCache.getCurrentTimeMilliseconds() - nonceEntry.getValue().longValue()) > RequestTimeLeniencyMilliseconds)
                nonceIterator.remove();
+
+            if (System.nanoTime() >= sliceDeadlineNanoTime)
+               return false;
          }
+
+         return true;
       }
 
 
@@ -405,33 +384,31 @@ final public class UserAccountSessionManager
 
       private boolean isStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
-      private void start()
+      private void start(final HousekeepingScheduler housekeepingScheduler)
       {
          if (isStarted())
             throw new IllegalStateException("Housekeeping task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
+         this.housekeepingScheduler = housekeepingScheduler;
 
          /* Kicking off the task immediately ensures that any items persisted between separate runs of the server can be immediately cleaned up
           * if enough time has elapsed in between.
           */
-         executor.scheduleAtFixedRate(this, 0, HousekeepingTaskFrequencyMinutes, TimeUnit.MINUTES);
+         registration = housekeepingScheduler.register("Session & nonce expiries", this, 0, TimeUnit.MINUTES.toMillis(HousekeepingTaskFrequencyMinutes));
       }
 
 
       private void shutdown() throws InterruptedException
       {
-         if (executor != null)
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+            housekeepingScheduler = null;
          }
       }
    }
@@ -658,17 +635,13 @@ final public class UserAccountSessionManager
        * I think the best bet is to lock on the user account itself, while utilising concurrent maps which will then support operations concurrently for different users.
        * In any case we would have to lock on -something- for each user, since we need to update their sessions/check that they don't have too many active sessions.
        * So the interesting outcome is that here we are using concurrent hash maps, without utilising the putIfAbsent method..
+       * The same applies to the session store, which only locks its own shards; adding or removing an account's sessions is always done while holding the account's lock.
        */
       synchronized (sessionAuthentication.account)
       {
-         List<Session> accountSessions = sessionIDsByAccount.get(sessionAuthentication.account);
+         long[] accountSessions = sessionsByAccount.get(sessionAuthentication.account);
 
-         if (accountSessions == null)
-         {
-            accountSessions = new ArrayList<>(1);
-            sessionIDsByAccount.put(sessionAuthentication.account, accountSessions);
-         }
-         else if (accountSessions.size() >= SessionsPermittedPerAccount)
+         if ((accountSessions != null) && (accountSessions.length >= SessionsPermittedPerAccount))
          {
             final String message = "User ID has exceeded the maximum concurrent sessions: " + sessionAuthentication.account.getID().toString();
             FeedbactoryLogger.logSecurityEvent(SecurityLogLevel.Low, getClass(), message, clientIO);
@@ -678,6 +651,7 @@ final public class UserAccountSessionManager
              * of a user having too many sessions?
              */
             handleClearAccountSessions(accountSessions);
+            accountSessions = null;
          }
 
          final SecureRandom secureRandom = new SecureRandom();
@@ -686,16 +660,17 @@ final public class UserAccountSessionManager
 
          sessionEncryption.toBeEncryptedResponseBuffer.put(sessionIDBytes);
 
-         final Session session = new Session(sessionAuthentication.account, new EntityID(sessionIDBytes), sessionEncryption.secretKeySpec);
-         accountSessions.add(session);
+         final long creationTime = TimeCache.getCurrentTimeMilliseconds();
+         final long sessionHandle = sessionStore.addSession(sessionAuthentication.account, sessionIDBytes, sessionEncryption.secretKeySpec.getEncoded(),
+                                                            creationTime, creationTime, 0);
 
-         accountsBySessionID.put(session.sessionID, session);
+         sessionsByAccount.put(sessionAuthentication.account, addSessionHandle(accountSessions, sessionHandle));
 
          // These methods lock on the user account.
          accountNetworkGateway.flushAccountMessagesToBuffer(sessionAuthentication.account, sessionEncryption.toBeEncryptedResponseBuffer);
          accountNetworkGateway.populateBufferWithAccountDetails(sessionAuthentication.account, sessionEncryption.toBeEncryptedResponseBuffer);
 
-         return new RequestSessionResult(SessionRequestType.InitiateSession, sessionAuthentication, sessionEncryption, session.sessionID);
+         return new RequestSessionResult(SessionRequestType.InitiateSession, sessionAuthentication, sessionEncryption, new EntityID(sessionIDBytes));
       }
    }
 
@@ -704,32 +679,37 @@ final public class UserAccountSessionManager
    {
       final byte[] sessionIDBytes = new byte[FeedbactorySessionConstants.SessionIDLengthBytes];
       clientIO.requestBuffer.get(sessionIDBytes);
-      final EntityID sessionID = new EntityID(sessionIDBytes);
 
-      final Session session = accountsBySessionID.get(sessionID);
+      final long unlockedSessionHandle = sessionStore.findSession(sessionIDBytes);
+      final FeedbactoryUserAccount account = (unlockedSessionHandle != SessionStore.NoSession) ? sessionStore.getAccount(unlockedSessionHandle) : null;
 
-      if (session != null)
+      if (account != null)
       {
-         synchronized (session.account)
+         synchronized (account)
          {
             /* If the housekeeping task discards the session in between our retrieval op above and our sync block, we have just missed the boat and
-             * should treat the session request attempt as failed.
+             * should treat the session request attempt as failed. The session's record may even have been reused for another session since then,
+             * so the session is looked up afresh; while the account's lock is held, the handle remains valid.
              */
-            if (session.hasExpired)
+            final long sessionHandle = sessionStore.findSession(sessionIDBytes);
+
+            if ((sessionHandle == SessionStore.NoSession) || (sessionStore.getAccount(sessionHandle) != account))
             {
                clientIO.responseBuffer.put(AuthenticationStatus.FailedAuthentication.value);
                return resultOnFailureForRequestType(sessionRequestType);
             }
 
+            final EntityID sessionID = new EntityID(sessionIDBytes);
+
             switch (sessionRequestType)
             {
                case RegularSessionRequest:
-                  return handleProcessRegularSessionRequest(clientIO, session);
+                  return handleProcessRegularSessionRequest(clientIO, account, sessionID);
 
                case ResumeSession:
                case EncryptedSessionRequest:
                case EndSession:
-                  return handleProcessEncryptedSessionRequest(clientIO, session, sessionRequestType);
+                  return handleProcessEncryptedSessionRequest(clientIO, account, sessionHandle, sessionID, sessionRequestType);
                default:
                   throw new AssertionError("Invalid session request type for session handler: " + sessionRequestType);
             }
@@ -760,18 +740,31 @@ final public class UserAccountSessionManager
    }
 
 
-   private RequestSessionResult handleProcessRegularSessionRequest(final ClientIO clientIO, final Session session)
+   private RequestSessionResult handleProcessRegularSessionRequest(final ClientIO clientIO, final FeedbactoryUserAccount account, final EntityID sessionID)
    {
       clientIO.responseBuffer.put(AuthenticationStatus.Success.value);
-      accountNetworkGateway.flushAccountMessagesToBuffer(session.account, clientIO.responseBuffer);
+      accountNetworkGateway.flushAccountMessagesToBuffer(account, clientIO.responseBuffer);
 
-      final SessionAuthentication sessionAuthentication = new SessionAuthentication(AuthenticationStatus.Success, session.account);
-      return new RequestSessionResult(SessionRequestType.RegularSessionRequest, sessionAuthentication, null, session.sessionID);
+      final SessionAuthentication sessionAuthentication = new SessionAuthentication(AuthenticationStatus.Success, account);
+      return new RequestSessionResult(SessionRequestType.RegularSessionRequest, sessionAuthentication, null, sessionID);
    }
 
 
-   private RequestSessionResult handleProcessEncryptedSessionRequest(final ClientIO clientIO, final Session session, final SessionRequestType sessionRequestType)
+   // Caller must be sync'd on the account.
+   private SecretKeySpec getEncryptionSecretKeySpec(final long sessionHandle)
    {
+      final byte[] encryptionKeyBytes = new byte[FeedbactorySessionConstants.SecretKeyEncryptionKeyLengthBytes];
+      sessionStore.getEncryptionKey(sessionHandle, encryptionKeyBytes);
+
+      return new SecretKeySpec(encryptionKeyBytes, FeedbactorySessionConstants.SecretKeyEncryptionType);
+   }
+
+
+   private RequestSessionResult handleProcessEncryptedSessionRequest(final ClientIO clientIO, final FeedbactoryUserAccount account, final long sessionHandle,
+                                                                     final EntityID sessionID, final SessionRequestType sessionRequestType)
+   {
+      final SecretKeySpec encryptionSecretKeySpec = getEncryptionSecretKeySpec(sessionHandle);
+
       WritableByteBuffer decryptedDataWriteBuffer = null;
       WritableByteBuffer toBeEncryptedResponseBuffer = null;
       RequestSessionResult result = null;
@@ -791,7 +784,7 @@ final public class UserAccountSessionManager
          // Prepare the secret key encrypted data for decryption.
          final Cipher cipher = Cipher.getInstance(FeedbactorySessionConstants.SecretKeyEncryptionAlgorithm);
 
-         cipher.init(Cipher.DECRYPT_MODE, session.encryptionSecretKeySpec, requestInitializationVector);
+         cipher.init(Cipher.DECRYPT_MODE, encryptionSecretKeySpec, requestInitializationVector);
 
          /* The remainder of the request data is encrypted using the secret key. Allocate a new byte buffer, ensuring that it
           * has enough capacity to contain the unencrypted contents.
@@ -807,24 +800,24 @@ final public class UserAccountSessionManager
 
          // The client's reported value for the encrypted session counter. If it doesn't match our version, it needs to be treated as a replayed (invalid) message.
          final int clientReportedEncryptedSessionCounter = decryptedDataReadBuffer.getInteger();
+         final int encryptedRequestCount = sessionStore.getEncryptedRequestCount(sessionHandle);
 
-         if (clientReportedEncryptedSessionCounter == session.encryptedRequestCount)
+         if (clientReportedEncryptedSessionCounter == encryptedRequestCount)
          {
             clientIO.responseBuffer.put(AuthenticationStatus.Success.value);
 
             toBeEncryptedResponseBuffer = bufferProvider.allocateByteBuffer();
 
             // Increment the encryption counter once for our response..
-            session.incrementEncryptedRequestCount();
-            toBeEncryptedResponseBuffer.putInteger(session.encryptedRequestCount);
+            toBeEncryptedResponseBuffer.putInteger(sessionStore.incrementEncryptedRequestCount(sessionHandle));
             // .. and once more to match up with the next valid request.
-            session.incrementEncryptedRequestCount();
+            sessionStore.incrementEncryptedRequestCount(sessionHandle);
 
             switch (sessionRequestType)
             {
                case ResumeSession:
-                  accountNetworkGateway.flushAccountMessagesToBuffer(session.account, toBeEncryptedResponseBuffer);
-                  processResumeSession(session, toBeEncryptedResponseBuffer);
+                  accountNetworkGateway.flushAccountMessagesToBuffer(account, toBeEncryptedResponseBuffer);
+                  processResumeSession(account, sessionHandle, toBeEncryptedResponseBuffer);
                   break;
 
                case EndSession:
@@ -832,22 +825,22 @@ final public class UserAccountSessionManager
                    * to read any messages incoming at the last moment; defer them until the next opportunity.
                    */
                   accountNetworkGateway.writeNoAccountMessagesToBuffer(toBeEncryptedResponseBuffer);
-                  processEndSession(session);
+                  processEndSession(account, sessionHandle);
                   break;
 
                case EncryptedSessionRequest:
-                  accountNetworkGateway.flushAccountMessagesToBuffer(session.account, toBeEncryptedResponseBuffer);
+                  accountNetworkGateway.flushAccountMessagesToBuffer(account, toBeEncryptedResponseBuffer);
                   break;
 
                default:
                   throw new AssertionError("Invalid session request type for encrypted session request handler: " + sessionRequestType);
             }
 
-            final SessionAuthentication sessionAuthentication = new SessionAuthentication(AuthenticationStatus.Success, session.account);
-            final SessionEncryption sessionEncryption = new SessionEncryption(session.encryptionSecretKeySpec, decryptedDataReadBuffer, responseInitialisationVector,
+            final SessionAuthentication sessionAuthentication = new SessionAuthentication(AuthenticationStatus.Success, account);
+            final SessionEncryption sessionEncryption = new SessionEncryption(encryptionSecretKeySpec, decryptedDataReadBuffer, responseInitialisationVector,
                                                                               toBeEncryptedResponseBuffer);
 
-            result = new RequestSessionResult(sessionRequestType, sessionAuthentication, sessionEncryption, session.sessionID);
+            result = new RequestSessionResult(sessionRequestType, sessionAuthentication, sessionEncryption, sessionID);
          }
          else
          {
@@ -860,13 +853,13 @@ final public class UserAccountSessionManager
             {
                final StringBuilder messageBuilder = new StringBuilder(100);
                messageBuilder.append("Incorrect encrypted session request counter. Expected: ");
-               messageBuilder.append(session.encryptedRequestCount);
+               messageBuilder.append(encryptedRequestCount);
                messageBuilder.append(", received: ");
                messageBuilder.append(clientReportedEncryptedSessionCounter);
                messageBuilder.append(", requesting account ID: ");
-               messageBuilder.append(session.account.getID().toString());
+               messageBuilder.append(account.getID().toString());
                messageBuilder.append(", session creation time: ");
-               messageBuilder.append(session.sessionCreationTime);
+               messageBuilder.append(sessionStore.getCreationTime(sessionHandle));
 
                FeedbactoryLogger.logSecurityEvent(SecurityLogLevel.High, getClass(), messageBuilder.toString(), clientIO);
             }
@@ -883,7 +876,7 @@ final public class UserAccountSessionManager
             // A GeneralSecurityException is directly related to the decryption process, so only attach the session data necessary to replicate and diagnose that operation.
             final SystemEvent event = new SystemEvent(SystemLogLevel.ErroneousClientRequest, getClass(), "Exception while decrypting request", generalSecurityException);
             event.setClientIO(clientIO);
-            event.setSecretKeySpec(session.encryptionSecretKeySpec);
+            event.setSecretKeySpec(encryptionSecretKeySpec);
             FeedbactoryLogger.logSystemEvent(event);
          }
       }
@@ -906,58 +899,76 @@ final public class UserAccountSessionManager
    }
 
 
-   private void processResumeSession(final Session session, final WritableByteBuffer responseBuffer)
+   private void processResumeSession(final FeedbactoryUserAccount account, final long sessionHandle, final WritableByteBuffer responseBuffer)
    {
-      session.markLastResumedTime();
+      sessionStore.markResumed(sessionHandle, TimeCache.getCurrentTimeMilliseconds());
 
-      accountNetworkGateway.populateBufferWithAccountDetails(session.account, responseBuffer);
+      accountNetworkGateway.populateBufferWithAccountDetails(account, responseBuffer);
    }
 
 
-   private void processEndSession(final Session session)
+   private void processEndSession(final FeedbactoryUserAccount account, final long sessionHandle)
    {
-      session.expire();
+      removeAccountSession(account, sessionHandle);
+   }
 
-      accountsBySessionID.remove(session.sessionID);
 
-      final List<Session> accountSessions = sessionIDsByAccount.get(session.account);
-      accountSessions.remove(session);
-      if (accountSessions.isEmpty())
-         sessionIDsByAccount.remove(session.account);
+   // Caller must be sync'd on the account. The existing array may be null.
+   static private long[] addSessionHandle(final long[] accountSessions, final long sessionHandle)
+   {
+      if (accountSessions == null)
+         return new long[] {sessionHandle};
+
+      final long[] updatedAccountSessions = Arrays.copyOf(accountSessions, accountSessions.length + 1);
+      updatedAccountSessions[accountSessions.length] = sessionHandle;
+
+      return updatedAccountSessions;
    }
 
 
-   private void handleClearAccountSessions(final FeedbactoryUserAccount account)
+   // Caller must be sync'd on the account.
+   private void removeAccountSession(final FeedbactoryUserAccount account, final long sessionHandle)
    {
-      synchronized (account)
+      sessionStore.removeSession(sessionHandle);
+
+      final long[] accountSessions = sessionsByAccount.get(account);
+
+      if (accountSessions != null)
       {
-         final List<Session> accountSessions = sessionIDsByAccount.get(account);
+         final long[] updatedAccountSessions = new long[accountSessions.length];
+         int updatedAccountSessionCount = 0;
 
-         if (accountSessions != null)
+         for (final long accountSessionHandle : accountSessions)
          {
-            handleClearAccountSessions(accountSessions);
-            sessionIDsByAccount.remove(account);
+            if (accountSessionHandle != sessionHandle)
+               updatedAccountSessions[updatedAccountSessionCount ++] = accountSessionHandle;
          }
+
+         if (updatedAccountSessionCount == 0)
+            sessionsByAccount.remove(account);
+         else if (updatedAccountSessionCount < accountSessions.length)
+            sessionsByAccount.put(account, Arrays.copyOf(updatedAccountSessions, updatedAccountSessionCount));
       }
    }
 
 
-   private void handleClearAccountSessions(final List<Session> accountSessions)
+   private void handleClearAccountSessions(final FeedbactoryUserAccount account)
    {
-      for (final Session session : accountSessions)
+      synchronized (account)
       {
-         session.expire();
-         accountsBySessionID.remove(session.sessionID);
+         final long[] accountSessions = sessionsByAccount.remove(account);
+
+         if (accountSessions != null)
+            handleClearAccountSessions(accountSessions);
       }
+   }
 
-      accountSessions.clear();
 
-      /* This method stops short of removing the (now empty) list of sessions from the sessionIDsByUserAccount collection.
-       * One of the callers is handleSuccessfulSessionInitiation, which happens to place a fresh session in the list
-       * immediately, and it'd be a needless op to remove and then immediately replace the list in the sessionIDsByUserAccount collection.
-       * It's not an elegant solution, I may wish to change this if I decide to change the policy of how to treat excess
-       * sessions per user.
-       */
+   // Caller must be sync'd on the account, and is responsible for updating the account's entry in sessionsByAccount.
+   private void handleClearAccountSessions(final long[] accountSessions)
+   {
+      for (final long sessionHandle : accountSessions)
+         sessionStore.removeSession(sessionHandle);
    }
 
 
@@ -965,23 +976,16 @@ final public class UserAccountSessionManager
    {
       synchronized (account)
       {
-         final List<Session> accountSessions = sessionIDsByAccount.get(account);
+         final long[] accountSessions = sessionsByAccount.get(account);
 
          if (accountSessions != null)
          {
-            final Iterator<Session> sessionsIterator = accountSessions.iterator();
-            Session nextSession;
+            final long exceptedSessionHandle = sessionStore.findSession(exceptedSessionID.asByteArray());
 
-            while (sessionsIterator.hasNext())
+            for (final long sessionHandle : accountSessions)
             {
-               nextSession = sessionsIterator.next();
-
-               if (! nextSession.sessionID.equals(exceptedSessionID))
-               {
-                  nextSession.expire();
-                  accountsBySessionID.remove(nextSession.sessionID);
-                  sessionsIterator.remove();
-               }
+               if (sessionHandle != exceptedSessionHandle)
+                  removeAccountSession(account, sessionHandle);
             }
          }
       }
@@ -1006,28 +1010,47 @@ final public class UserAccountSessionManager
 
       try
       (
-         final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         final DataOutputStream dataOutputStream = CheckpointFileFormat.openOutput(file);
       )
       {
-         for (final Entry<FeedbactoryUserAccount, List<Session>> accountSessionsEntry : sessionIDsByAccount.entrySet())
+         // Each account's sessions are staged in memory while holding the account lock, and only written to the file once the lock has been released.
+         final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+         DataOutputStream recordStream;
+         long[] accountSessions;
+         final byte[] sessionIDBytes = new byte[FeedbactorySessionConstants.SessionIDLengthBytes];
+         final byte[] encryptionKeyBytes = new byte[FeedbactorySessionConstants.SecretKeyEncryptionKeyLengthBytes];
+
+         for (final FeedbactoryUserAccount account : sessionsByAccount.keySet())
          {
-            synchronized (accountSessionsEntry.getKey())
+            synchronized (account)
             {
+               // The account's sessions may have all been removed since the iterator produced it.
+               accountSessions = sessionsByAccount.get(account);
+               if (accountSessions == null)
+                  continue;
+
+               recordStream = recordBuffer.startRecord();
+
                // The user account ID.
-               dataOutputStream.writeInt(accountSessionsEntry.getKey().getID().intValue());
+               recordStream.writeInt(account.getID().intValue());
 
                // The number of sessions attached to the user account.
-               dataOutputStream.writeInt(accountSessionsEntry.getValue().size());
+               recordStream.writeInt(accountSessions.length);
 
-               for (final Session accountSession : accountSessionsEntry.getValue())
+               for (final long sessionHandle : accountSessions)
                {
-                  dataOutputStream.write(accountSession.sessionID.asByteArray());
-                  dataOutputStream.write(accountSession.encryptionSecretKeySpec.getEncoded());
-                  dataOutputStream.writeLong(accountSession.sessionCreationTime);
-                  dataOutputStream.writeLong(accountSession.sessionLastResumedTime);
-                  dataOutputStream.writeInt(accountSession.encryptedRequestCount);
+                  sessionStore.getSessionID(sessionHandle, sessionIDBytes);
+                  sessionStore.getEncryptionKey(sessionHandle, encryptionKeyBytes);
+
+                  recordStream.write(sessionIDBytes);
+                  recordStream.write(encryptionKeyBytes);
+                  recordStream.writeLong(sessionStore.getCreationTime(sessionHandle));
+                  recordStream.writeLong(sessionStore.getLastResumedTime(sessionHandle));
+                  recordStream.writeInt(sessionStore.getEncryptedRequestCount(sessionHandle));
                }
             }
+
+            recordBuffer.writeRecord(dataOutputStream);
          }
 
          // Finalise the output with a -1 for the EOF, which is not a possible user account ID.
@@ -1042,7 +1065,7 @@ final public class UserAccountSessionManager
 
       try
       (
-         final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         final DataOutputStream dataOutputStream = CheckpointFileFormat.openOutput(file);
       )
       {
          for (final Entry<EntityID, Long> nonceEntry : nonceExpiryTimes.entrySet())
@@ -1069,28 +1092,26 @@ final public class UserAccountSessionManager
 
    private void restoreSessionState(final Path checkpointPath) throws IOException
    {
-      accountsBySessionID.clear();
-      sessionIDsByAccount.clear();
+      sessionStore.clear();
+      sessionsByAccount.clear();
 
       final File file = checkpointPath.resolve(AccountSessionStateFilename).toFile();
 
       try
       (
-         final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+         final DataInputStream dataInputStream = CheckpointFileFormat.openInput(file);
       )
       {
          int accountID;
          FeedbactoryUserAccount account;
          int numberOfAccountSessions;
          final byte[] sessionIDBytes = new byte[FeedbactorySessionConstants.SessionIDLengthBytes];
-         EntityID sessionID;
          final byte[] encryptionSecretKey = new byte[FeedbactorySessionConstants.SecretKeyEncryptionKeyLengthBytes];
          long sessionCreationTime;
          long sessionLastResumedTime;
          int encryptedRequestCount;
 
-         Session accountSession;
-         List<Session> accountSessionsList;
+         long[] accountSessions;
 
          while ((accountID = dataInputStream.readInt()) != -1)
          {
@@ -1105,7 +1126,7 @@ final public class UserAccountSessionManager
             synchronized (account)
             {
                numberOfAccountSessions = dataInputStream.readInt();
-               accountSessionsList = new ArrayList<>(numberOfAccountSessions);
+               accountSessions = new long[numberOfAccountSessions];
 
                for (int sessionNumber = 0; sessionNumber < numberOfAccountSessions; sessionNumber ++)
                {
@@ -1115,18 +1136,12 @@ final public class UserAccountSessionManager
                   sessionLastResumedTime = dataInputStream.readLong();
                   encryptedRequestCount = dataInputStream.readInt();
 
-                  sessionID = new EntityID(sessionIDBytes);
-
-                  accountSession = new Session(account, sessionID, new SecretKeySpec(encryptionSecretKey, FeedbactorySessionConstants.SecretKeyEncryptionType),
-                                               sessionCreationTime, sessionLastResumedTime, encryptedRequestCount);
-
-                  accountSessionsList.add(accountSession);
-
-                  accountsBySessionID.put(sessionID, accountSession);
+                  accountSessions[sessionNumber] = sessionStore.addSession(account, sessionIDBytes, encryptionSecretKey,
+                                                                           sessionCreationTime, sessionLastResumedTime, encryptedRequestCount);
                }
-            }
 
-            sessionIDsByAccount.put(account, accountSessionsList);
+               sessionsByAccount.put(account, accountSessions);
+            }
          }
       }
    }
@@ -1140,7 +1155,7 @@ final public class UserAccountSessionManager
 
       try
       (
-         final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+         final DataInputStream dataInputStream = CheckpointFileFormat.openInput(file);
       )
       {
          byte[] nonce = new byte[FeedbactorySessionConstants.SecretKeyEncryptionNonceLengthBytes];
@@ -1164,26 +1179,13 @@ final public class UserAccountSessionManager
 
    private SessionManagerMetrics handleGetMetrics()
    {
-      /* Manually count the number of user accounts rather than simply call sessionIDsByUserAccount.size() will ensure that when calculating the average
-       * sessions per user account, I'm dividing the numberOfUserAccountSessions by the right number of user accounts; sessionIDsByUserAccount.size()
-       * is at the mercy of sessions constantly being added and expired by incoming user requests, not to mention the housekeeping.
+      /* The session count and the spread of accounts are taken separately, and the sessions are constantly being added and expired by incoming user
+       * requests, not to mention the housekeeping, so the two may be slightly out of step. Walking the accounts to keep them in step isn't worth it
+       * when there are millions of sessions.
        */
-      int numberOfAccountSessions = 0;
-      int spreadOfAccounts = 0;
-
-      for (final Entry<FeedbactoryUserAccount, List<Session>> accountSessions : sessionIDsByAccount.entrySet())
-      {
-         spreadOfAccounts ++;
-
-         synchronized (accountSessions.getKey())
-         {
-            numberOfAccountSessions += accountSessions.getValue().size();
-         }
-      }
-
       return new SessionManagerMetrics(isHousekeepingStarted(), housekeepingTask.lastRunStartTime,
-                                numberOfAccountSessions, spreadOfAccounts,
-                                nonceExpiryTimes.size());
+                                       sessionStore.getMetrics(), sessionsByAccount.size(),
+                                       nonceExpiryTimes.size());
    }
 
 
@@ -1191,14 +1193,14 @@ final public class UserAccountSessionManager
    {
       synchronized (account)
       {
-         final List<Session> sessions = sessionIDsByAccount.get(account);
+         final long[] sessions = sessionsByAccount.get(account);
 
          if (sessions != null)
          {
-            final List<AccountSessionMetrics> accountSessions = new ArrayList<>(sessions.size());
+            final List<AccountSessionMetrics> accountSessions = new ArrayList<>(sessions.length);
 
-            for (final Session session : sessions)
-               accountSessions.add(new AccountSessionMetrics(session.sessionCreationTime, session.sessionLastResumedTime));
+            for (final long sessionHandle : sessions)
+               accountSessions.add(new AccountSessionMetrics(sessionStore.getCreationTime(sessionHandle), sessionStore.getLastResumedTime(sessionHandle)));
 
             return accountSessions;
          }
@@ -1254,9 +1256,9 @@ final public class UserAccountSessionManager
    }
 
 
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      housekeepingTask.start();
+      housekeepingTask.start(housekeepingScheduler);
    }
 
 
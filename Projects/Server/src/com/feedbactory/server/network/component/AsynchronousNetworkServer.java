@@ -21,6 +21,10 @@
  *   there's no way for either server controller or this class to know whether that rejected task was for an accept or a read or write. This would potentially throw out
  *   the usefulness of the isAccepting flag, since in the event of a RejectecExecutionException being thrown during an attempted accept(), the completion handler will
  *   not be called and the flag won't be reset; yet the server will still be flagged as being in the accept state, without actually having an accept pending.
+ *
+ * - The server controller is asked whether each newly accepted connection is blocked, eg. from a blacklisted address range, before the connection is counted
+ *   or handed over. A blocked connection is closed on the spot by the accepting thread, so it never costs a read buffer, a connection slot, or any further
+ *   work on the IO pool. The check must be cheap and non-blocking since it sits directly on the accept path.
  */
 
 package com.feedbactory.server.network.component;
@@ -29,6 +33,7 @@ package com.feedbactory.server.network.component;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousServerSocketChannel;
@@ -121,6 +126,13 @@ final public class AsynchronousNetworkServer
       {
          isAccepting.set(false);
 
+         if (isConnectionBlocked(channel))
+         {
+            renewAccept();
+            closeBlockedConnection(channel);
+            return;
+         }
+
          serverController.incrementActiveConnections();
 
          // Kick off the async accept() renewal before allowing the server controller to process the new connection.
@@ -153,6 +165,35 @@ final public class AsynchronousNetworkServer
     ***************************************************************************/
 
 
+   private boolean isConnectionBlocked(final AsynchronousSocketChannel channel)
+   {
+      try
+      {
+         final SocketAddress remoteAddress = channel.getRemoteAddress();
+
+         return (remoteAddress instanceof InetSocketAddress) && serverController.isConnectionBlocked(((InetSocketAddress) remoteAddress).getAddress());
+      }
+      catch (final IOException ioException)
+      {
+         // Leave the failure to be dealt with by the regular connection handling, which will encounter the same problem.
+         return false;
+      }
+   }
+
+
+   private void closeBlockedConnection(final AsynchronousSocketChannel channel)
+   {
+      try
+      {
+         channel.close();
+      }
+      catch (final IOException ioException)
+      {
+         serverController.reportNetworkServerEvent(SystemLogLevel.ClientStateError, "Error closing blocked client channel: " + ioException.getMessage());
+      }
+   }
+
+
    private void handleStartServer(final int portNumber) throws IOException
    {
       if (! isInitialised())
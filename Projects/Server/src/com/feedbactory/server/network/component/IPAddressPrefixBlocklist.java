@@ -0,0 +1,608 @@
+/* Memos:
+ * - A blocklist of IP address ranges in CIDR form, eg. 203.0.113.0/24 or 2001:db8::/48, consulted by the network server as soon as a connection has been
+ *   accepted. Connections from a blocked range are dropped there and then; they're never counted as active connections, given a pooled buffer, or handed
+ *   to the request manager. Individual IP addresses are still blocked by the request monitor, which is also where the blocklist is fed from.
+ *
+ * - Ranges are either blacklisted, manually by the administrator, or temporarily blocked, by automatic promotion. During each monitor period the request
+ *   monitor reports every IP address that it temporarily blocks, and once the promotion threshold of blocked IP addresses is reached within the same /24
+ *   (IPv4) or /64 (IPv6), that range is itself temporarily blocked. Promoted ranges are counted in turn towards their enclosing /16 or /48, so a botnet
+ *   spread across a larger block is caught with a handful of entries rather than tens of thousands of individual IP addresses.
+ *
+ * - A temporarily blocked range remains blocked for the rest of the monitor period in which it was promoted and for the whole of the following one. Unlike
+ *   an individual IP address it can't be kept blocked for continuing to spam, since its connections never get as far as being counted; if it's still
+ *   misbehaving once released it will quickly be promoted again. Likewise the clients within a blocked range don't receive the temporarily blocked
+ *   response that an individual IP address does, the connection is simply closed.
+ *
+ * - Lookups are on the accept path of every connection so they take no locks. The ranges are held in a binary trie packed into primitive arrays, which is
+ *   rebuilt from the master map and republished via a volatile field whenever a range is added or removed. Changes are rare - a promotion, a console
+ *   command, or a period rollover - and the trie for even a few thousand ranges takes a fraction of a millisecond to build. IPv4 and IPv6 ranges have their
+ *   own roots, so an IPv4 lookup walks at most 32 levels. The longest matching range that's still in effect determines the standing.
+ *
+ * - All methods other than the lookup and the rejected connection count are synchronized on the instance. The request monitor calls in while holding its
+ *   housekeeping lock but never a segment lock, and the blocklist never calls back out, so there's no lock ordering to worry about.
+ */
+
+package com.feedbactory.server.network.component;
+
+
+import com.feedbactory.shared.network.IPAddressStanding;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+final class IPAddressPrefixBlocklist
+{
+   static final private int IPv4AddressBits = 32;
+   static final private int IPv6AddressBits = 128;
+
+   static final private int[] IPv4PromotionPrefixLengths = {24, 16};
+   static final private int[] IPv6PromotionPrefixLengths = {64, 48};
+
+   final private int promotionThreshold;
+
+   final private Map<IPAddressPrefix, BlockedPrefix> blockedPrefixes = new HashMap<>();
+
+   final private Map<IPAddressPrefix, Integer> promotionCounts = new HashMap<>();
+   private int promotionCountsPeriodNumber;
+
+   volatile private PrefixTrie prefixTrie = PrefixTrie.Empty;
+
+   final private AtomicLong rejectedConnections = new AtomicLong();
+
+
+   IPAddressPrefixBlocklist(final int promotionThreshold)
+   {
+      this.promotionThreshold = promotionThreshold;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class IPAddressPrefix
+   {
+      final boolean isIPv6;
+      final int prefixLength;
+
+      // The address bits are left aligned, so that bit zero is always the most significant bit of the high value regardless of the address family.
+      final private long bitsHigh;
+      final private long bitsLow;
+
+
+      IPAddressPrefix(final InetAddress ipAddress, final int prefixLength)
+      {
+         this(ipAddress.getAddress(), prefixLength);
+      }
+
+
+      private IPAddressPrefix(final byte[] addressBytes, final int prefixLength)
+      {
+         validate(addressBytes, prefixLength);
+
+         isIPv6 = (addressBytes.length == 16);
+         this.prefixLength = prefixLength;
+
+         // Any host bits are masked off, so that eg. 203.0.113.7/24 is the same range as 203.0.113.0/24.
+         bitsHigh = getLong(addressBytes, 0) & getMask(prefixLength);
+         bitsLow = getLong(addressBytes, 8) & getMask(prefixLength - 64);
+      }
+
+
+      private void validate(final byte[] addressBytes, final int prefixLength)
+      {
+         final int addressBits = (addressBytes.length == 16) ? IPv6AddressBits : IPv4AddressBits;
+
+         if ((prefixLength < 1) || (prefixLength > addressBits))
+            throw new IllegalArgumentException("Invalid prefix length for the IP address: " + prefixLength);
+      }
+
+
+      static private long getLong(final byte[] bytes, final int offset)
+      {
+         long value = 0L;
+
+         for (int byteIndex = 0; byteIndex < 8; byteIndex ++)
+            value = (value << 8) | (((offset + byteIndex) < bytes.length) ? (bytes[offset + byteIndex] & 0xff) : 0);
+
+         return value;
+      }
+
+
+      static private long getMask(final int prefixBits)
+      {
+         if (prefixBits <= 0)
+            return 0L;
+         else if (prefixBits >= 64)
+            return -1L;
+         else
+            return -1L << (64 - prefixBits);
+      }
+
+
+      private IPAddressPrefix(final IPAddressPrefix prefix, final int prefixLength)
+      {
+         isIPv6 = prefix.isIPv6;
+         this.prefixLength = prefixLength;
+
+         bitsHigh = prefix.bitsHigh & getMask(prefixLength);
+         bitsLow = prefix.bitsLow & getMask(prefixLength - 64);
+      }
+
+
+      private int getBit(final int bitIndex)
+      {
+         if (bitIndex < 64)
+            return (int) (bitsHigh >>> (63 - bitIndex)) & 1;
+         else
+            return (int) (bitsLow >>> (127 - bitIndex)) & 1;
+      }
+
+
+      final InetAddress getNetworkAddress()
+      {
+         final byte[] addressBytes = new byte[isIPv6 ? 16 : 4];
+
+         for (int byteIndex = 0; byteIndex < addressBytes.length; byteIndex ++)
+            addressBytes[byteIndex] = (byte) ((byteIndex < 8) ? (bitsHigh >>> ((7 - byteIndex) * 8)) : (bitsLow >>> ((15 - byteIndex) * 8)));
+
+         try
+         {
+            return InetAddress.getByAddress(addressBytes);
+         }
+         catch (final UnknownHostException unknownHostException)
+         {
+            // Not possible when supplying a four or sixteen byte address.
+            throw new RuntimeException(unknownHostException);
+         }
+      }
+
+
+      @Override
+      final public boolean equals(final Object otherObject)
+      {
+         if (! (otherObject instanceof IPAddressPrefix))
+            return false;
+
+         final IPAddressPrefix otherPrefix = (IPAddressPrefix) otherObject;
+         return (isIPv6 == otherPrefix.isIPv6) && (prefixLength == otherPrefix.prefixLength) &&
+                (bitsHigh == otherPrefix.bitsHigh) && (bitsLow == otherPrefix.bitsLow);
+      }
+
+
+      @Override
+      final public int hashCode()
+      {
+         int result = 38;
+         result = (31 * result) + (isIPv6 ? 1 : 0);
+         result = (31 * result) + prefixLength;
+         result = (31 * result) + (int) (bitsHigh ^ (bitsHigh >>> 32));
+         result = (31 * result) + (int) (bitsLow ^ (bitsLow >>> 32));
+
+         return result;
+      }
+
+
+      @Override
+      final public String toString()
+      {
+         return getNetworkAddress().getHostAddress() + '/' + prefixLength;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class BlockedPrefix
+   {
+      final IPAddressPrefix prefix;
+      final IPAddressStanding standing;
+      final long standingLastUpdated;
+
+      // Only meaningful for a temporarily blocked range; the monitor period during which it was promoted.
+      final private int periodNumber;
+
+
+      private BlockedPrefix(final IPAddressPrefix prefix, final IPAddressStanding standing, final long standingLastUpdated, final int periodNumber)
+      {
+         this.prefix = prefix;
+         this.standing = standing;
+         this.standingLastUpdated = standingLastUpdated;
+         this.periodNumber = periodNumber;
+      }
+
+
+      private boolean isInEffect(final int currentPeriodNumber)
+      {
+         return (standing == IPAddressStanding.Blacklisted) || (currentPeriodNumber <= (periodNumber + 1));
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // Immutable once built. Node zero is unused so that a zero child index can mean no child, leaving the freshly allocated arrays as an empty trie.
+   static final private class PrefixTrie
+   {
+      static final private PrefixTrie Empty = new PrefixTrie(0);
+
+      final private int[] zeroChildren;
+      final private int[] oneChildren;
+      final private BlockedPrefix[] nodePrefixes;
+
+      private int ipv4Root;
+      private int ipv6Root;
+      private int nodeCount = 1;
+
+
+      private PrefixTrie(final int maximumNodes)
+      {
+         zeroChildren = new int[maximumNodes + 1];
+         oneChildren = new int[maximumNodes + 1];
+         nodePrefixes = new BlockedPrefix[maximumNodes + 1];
+      }
+
+
+      static private PrefixTrie build(final Iterable<BlockedPrefix> blockedPrefixes, final int blockedPrefixCount)
+      {
+         if (blockedPrefixCount == 0)
+            return Empty;
+
+         // Each range needs at most one node per prefix bit, plus the two roots.
+         int maximumNodes = 2;
+         for (final BlockedPrefix blockedPrefix : blockedPrefixes)
+            maximumNodes += blockedPrefix.prefix.prefixLength;
+
+         final PrefixTrie prefixTrie = new PrefixTrie(maximumNodes);
+         prefixTrie.ipv4Root = prefixTrie.nodeCount ++;
+         prefixTrie.ipv6Root = prefixTrie.nodeCount ++;
+
+         for (final BlockedPrefix blockedPrefix : blockedPrefixes)
+            prefixTrie.insert(blockedPrefix);
+
+         return prefixTrie;
+      }
+
+
+      private void insert(final BlockedPrefix blockedPrefix)
+      {
+         final IPAddressPrefix prefix = blockedPrefix.prefix;
+         int node = prefix.isIPv6 ? ipv6Root : ipv4Root;
+         int[] children;
+
+         for (int bitIndex = 0; bitIndex < prefix.prefixLength; bitIndex ++)
+         {
+            children = (prefix.getBit(bitIndex) == 0) ? zeroChildren : oneChildren;
+
+            if (children[node] == 0)
+               children[node] = nodeCount ++;
+
+            node = children[node];
+         }
+
+         nodePrefixes[node] = blockedPrefix;
+      }
+
+
+      private IPAddressStanding find(final byte[] addressBytes, final int currentPeriodNumber)
+      {
+         final boolean isIPv6 = (addressBytes.length == 16);
+         final long bitsHigh = IPAddressPrefix.getLong(addressBytes, 0);
+         final long bitsLow = isIPv6 ? IPAddressPrefix.getLong(addressBytes, 8) : 0L;
+         final int addressBits = isIPv6 ? IPv6AddressBits : IPv4AddressBits;
+
+         IPAddressStanding longestMatchStanding = null;
+         int node = isIPv6 ? ipv6Root : ipv4Root;
+         int bit;
+
+         for (int bitIndex = 0; bitIndex < addressBits; bitIndex ++)
+         {
+            bit = (bitIndex < 64) ? (int) (bitsHigh >>> (63 - bitIndex)) & 1 : (int) (bitsLow >>> (127 - bitIndex)) & 1;
+            node = (bit == 0) ? zeroChildren[node] : oneChildren[node];
+
+            if (node == 0)
+               break;
+            else if ((nodePrefixes[node] != null) && nodePrefixes[node].isInEffect(currentPeriodNumber))
+               longestMatchStanding = nodePrefixes[node].standing;
+         }
+
+         return longestMatchStanding;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void rebuildPrefixTrie()
+   {
+      prefixTrie = PrefixTrie.build(blockedPrefixes.values(), blockedPrefixes.size());
+   }
+
+
+   private boolean isBlocked(final IPAddressPrefix prefix, final int currentPeriodNumber)
+   {
+      final BlockedPrefix blockedPrefix = blockedPrefixes.get(prefix);
+      return (blockedPrefix != null) && blockedPrefix.isInEffect(currentPeriodNumber);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private IPAddressStanding handleGetBlockingStanding(final byte[] addressBytes, final int currentPeriodNumber)
+   {
+      final PrefixTrie currentPrefixTrie = prefixTrie;
+
+      if (currentPrefixTrie == PrefixTrie.Empty)
+         return null;
+      else
+         return currentPrefixTrie.find(addressBytes, currentPeriodNumber);
+   }
+
+
+   synchronized private void handleReportBlockedIPAddress(final byte[] addressBytes, final long blockedTime, final int currentPeriodNumber)
+   {
+      if (promotionCountsPeriodNumber != currentPeriodNumber)
+      {
+         promotionCounts.clear();
+         promotionCountsPeriodNumber = currentPeriodNumber;
+      }
+
+      final int[] promotionPrefixLengths = (addressBytes.length == 16) ? IPv6PromotionPrefixLengths : IPv4PromotionPrefixLengths;
+      boolean isPrefixPromoted = false;
+      IPAddressPrefix prefix;
+      Integer promotionCount;
+
+      // The blocked IP address counts towards its narrowest range, and each promoted range then counts towards the next widest.
+      for (final int prefixLength : promotionPrefixLengths)
+      {
+         prefix = new IPAddressPrefix(addressBytes, prefixLength);
+
+         if (isBlocked(prefix, currentPeriodNumber))
+            break;
+
+         promotionCount = promotionCounts.get(prefix);
+         promotionCount = (promotionCount != null) ? (promotionCount + 1) : 1;
+
+         if (promotionCount < promotionThreshold)
+         {
+            promotionCounts.put(prefix, promotionCount);
+            break;
+         }
+
+         promotionCounts.remove(prefix);
+         blockedPrefixes.put(prefix, new BlockedPrefix(prefix, IPAddressStanding.TemporarilyBlocked, blockedTime, currentPeriodNumber));
+         isPrefixPromoted = true;
+      }
+
+      if (isPrefixPromoted)
+         rebuildPrefixTrie();
+   }
+
+
+   synchronized private void handleSetBlacklisted(final IPAddressPrefix prefix, final long blacklistedTime)
+   {
+      blockedPrefixes.put(prefix, new BlockedPrefix(prefix, IPAddressStanding.Blacklisted, blacklistedTime, 0));
+      rebuildPrefixTrie();
+   }
+
+
+   synchronized private IPAddressStanding handleSetParoled(final IPAddressPrefix prefix, final int currentPeriodNumber)
+   {
+      final BlockedPrefix blockedPrefix = blockedPrefixes.remove(prefix);
+
+      if (blockedPrefix == null)
+         return null;
+
+      rebuildPrefixTrie();
+
+      return blockedPrefix.isInEffect(currentPeriodNumber) ? blockedPrefix.standing : null;
+   }
+
+
+   synchronized private void handleRemoveExpired(final int currentPeriodNumber)
+   {
+      boolean isPrefixRemoved = false;
+
+      final Iterator<BlockedPrefix> blockedPrefixIterator = blockedPrefixes.values().iterator();
+      while (blockedPrefixIterator.hasNext())
+      {
+         if (! blockedPrefixIterator.next().isInEffect(currentPeriodNumber))
+         {
+            blockedPrefixIterator.remove();
+            isPrefixRemoved = true;
+         }
+      }
+
+      if (isPrefixRemoved)
+         rebuildPrefixTrie();
+   }
+
+
+   synchronized private List<BlockedPrefix> handleGetBlockedPrefixes(final int currentPeriodNumber)
+   {
+      final List<BlockedPrefix> blockedPrefixList = new ArrayList<>(blockedPrefixes.size());
+
+      for (final BlockedPrefix blockedPrefix : blockedPrefixes.values())
+      {
+         if (blockedPrefix.isInEffect(currentPeriodNumber))
+            blockedPrefixList.add(blockedPrefix);
+      }
+
+      return blockedPrefixList;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   synchronized private void handleSaveCheckpoint(final DataOutputStream dataOutputStream, final int currentPeriodNumber) throws IOException
+   {
+      byte[] networkAddress;
+
+      for (final BlockedPrefix blockedPrefix : blockedPrefixes.values())
+      {
+         if (! blockedPrefix.isInEffect(currentPeriodNumber))
+            continue;
+
+         networkAddress = blockedPrefix.prefix.getNetworkAddress().getAddress();
+
+         dataOutputStream.writeByte(networkAddress.length);
+         dataOutputStream.write(networkAddress);
+         dataOutputStream.writeByte(blockedPrefix.prefix.prefixLength);
+         dataOutputStream.writeByte(blockedPrefix.standing.value);
+         dataOutputStream.writeLong(blockedPrefix.standingLastUpdated);
+      }
+
+      // Write EOF marker.
+      dataOutputStream.writeByte(-1);
+   }
+
+
+   synchronized private void handleRestoreFromCheckpoint(final DataInputStream dataInputStream, final int currentPeriodNumber) throws IOException
+   {
+      handleClear();
+
+      byte networkAddressLength;
+      byte[] networkAddress;
+      int prefixLength;
+      byte standingValue;
+      IPAddressStanding standing;
+      long standingLastUpdated;
+      IPAddressPrefix prefix;
+
+      while ((networkAddressLength = dataInputStream.readByte()) != -1)
+      {
+         networkAddress = new byte[networkAddressLength];
+         dataInputStream.readFully(networkAddress);
+
+         prefixLength = dataInputStream.readUnsignedByte();
+
+         standingValue = dataInputStream.readByte();
+         standing = IPAddressStanding.fromValue(standingValue);
+         if ((standing == null) || (standing == IPAddressStanding.OK))
+            throw new IllegalArgumentException("Invalid IP address prefix standing value: " + standingValue);
+
+         standingLastUpdated = dataInputStream.readLong();
+
+         /* As with the individual IP addresses, temporarily blocked ranges are restored to their last known state for at least the first monitor period,
+          * regardless of how long the server has been down.
+          */
+         prefix = new IPAddressPrefix(networkAddress, prefixLength);
+         blockedPrefixes.put(prefix, new BlockedPrefix(prefix, standing, standingLastUpdated, currentPeriodNumber));
+      }
+
+      rebuildPrefixTrie();
+   }
+
+
+   synchronized private void handleClear()
+   {
+      blockedPrefixes.clear();
+      promotionCounts.clear();
+      rebuildPrefixTrie();
+      rejectedConnections.set(0);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // Returns null if the IP address isn't within any range that's in effect.
+   final IPAddressStanding getBlockingStanding(final InetAddress inetAddress, final int currentPeriodNumber)
+   {
+      return handleGetBlockingStanding(inetAddress.getAddress(), currentPeriodNumber);
+   }
+
+
+   final void reportRejectedConnection()
+   {
+      rejectedConnections.incrementAndGet();
+   }
+
+
+   final long getRejectedConnections()
+   {
+      return rejectedConnections.get();
+   }
+
+
+   final void reportBlockedIPAddress(final InetAddress inetAddress, final long blockedTime, final int currentPeriodNumber)
+   {
+      handleReportBlockedIPAddress(inetAddress.getAddress(), blockedTime, currentPeriodNumber);
+   }
+
+
+   final void setBlacklisted(final IPAddressPrefix prefix, final long blacklistedTime)
+   {
+      handleSetBlacklisted(prefix, blacklistedTime);
+   }
+
+
+   // Returns the standing that the range had before being removed, or null if it wasn't blocked.
+   final IPAddressStanding setParoled(final IPAddressPrefix prefix, final int currentPeriodNumber)
+   {
+      return handleSetParoled(prefix, currentPeriodNumber);
+   }
+
+
+   final void removeExpired(final int currentPeriodNumber)
+   {
+      handleRemoveExpired(currentPeriodNumber);
+   }
+
+
+   final List<BlockedPrefix> getBlockedPrefixes(final int currentPeriodNumber)
+   {
+      return handleGetBlockedPrefixes(currentPeriodNumber);
+   }
+
+
+   final void saveCheckpoint(final DataOutputStream dataOutputStream, final int currentPeriodNumber) throws IOException
+   {
+      handleSaveCheckpoint(dataOutputStream, currentPeriodNumber);
+   }
+
+
+   final void restoreFromCheckpoint(final DataInputStream dataInputStream, final int currentPeriodNumber) throws IOException
+   {
+      handleRestoreFromCheckpoint(dataInputStream, currentPeriodNumber);
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+}
\ No newline at end of file
@@ -5,14 +5,37 @@
  *   the client standing of an IP address being set to 'temporarily blocked'. Further requests from IPs in that state ('denied' requests) can result in them effectively
  *   being blocked for a longer period of time, essentially for as long as they continue to spam.
  *
- * - Core to the monitor operations is a housekeeping task whose job it is to periodically purge the tracked IP addresses (where there are no further incoming requests),
- *   reinstate temporarily blocked IP's, and reset the request counts for every kept IP address. The length of time that IP's are blocked are effectively at the mercy of
- *   how often the housekeeping task runs. If I wanted I could change this by making the housekeeping task run a lot more often (eg. every 5 mins), and
- *   reinstating/paroling IP's based on the timestamp that is attached to them when they are temporarily blocked. This would involve introducing a fixed time length
- *   for enforcing the temp blocking.
+ * - The requests are counted per monitor period, and the housekeeping task does nothing more than start the next period. Each tracked IP address is stamped with
+ *   the number of the period in which its counts were recorded, and is brought up to date - its counts reset, and its standing reinstated if it's eligible - the next
+ *   time that it's touched, or treated as though it had been when it's read. An IP address which hasn't been seen since before the previous period and isn't blocked
+ *   is no longer tracked, and its slot is free to be reused by the next new IP address. So the cost of a period rollover no longer grows with the number of IP
+ *   addresses, and there's no sweep locking every one of them in turn while requests are arriving.
+ *
+ *   The length of time that IP's are blocked are effectively at the mercy of how often the housekeeping task runs. If I wanted I could change this by making the
+ *   housekeeping task run a lot more often (eg. every 5 mins), and reinstating/paroling IP's based on the timestamp that is attached to them when they are temporarily
+ *   blocked. This would involve introducing a fixed time length for enforcing the temp blocking.
+ *
+ * - The tracked IP addresses are held in an open addressed table of primitive arrays rather than a map of node objects, so reporting a request allocates nothing
+ *   beyond the address bytes. The table is split into segments, each guarded by its own lock, so concurrent requests only contend when they hash to the same
+ *   segment. Each address is keyed by its 128 bits (IPv4 addresses in their IPv4-mapped IPv6 form) packed into two longs. A segment grows when it fills, and
+ *   compacts itself in place instead if enough of its slots are held by addresses that are no longer tracked; it never shrinks.
+ *
+ * - An IP address that's reinstated when it's brought up to date has its standing recorded as being updated at the start of the current monitor period. This is
+ *   exact for an IP address that made requests during the previous period, and a little late for one that's been quiet for longer.
+ *
+ * - Checking the standing of an IP address is on the path of every request, and almost every IP address is in good standing. So the standing check first
+ *   consults a bloom filter of the IP addresses which aren't in good standing, and only if the IP address might be present does it lock the segment to look
+ *   up its actual standing. Each IP address is added to the current filter within the same segment lock that blocks or blacklists it. The filter can't
+ *   remove IP addresses once they're reinstated, so at the start of each monitor period the housekeeping task builds a fresh filter from the effective
+ *   standings, a segment at a time, and atomically publishes it in place of the old one. Any IP address blocked while the fresh filter is being built is
+ *   added to both. See IPAddressStandingFilter.
  *
  * - There is a manual 'blacklist IP' service available; IP's marked with this are not eligible for reinstatement until manually unblocked by the caller.
  *
+ * - Whole ranges of IP addresses can also be blocked, either manually or by automatic promotion once enough of the IP addresses within a range have been
+ *   temporarily blocked; see IPAddressPrefixBlocklist. The ranges are checked by the network server when a connection is accepted rather than by
+ *   getIPAddressStanding(), so that a blocked connection is dropped before it costs anything more. The blocklist is saved to its own checkpoint file.
+ *
  * - The request counts per IP address are used to determine the client standing but they can also be used to calculate overall metrics for the monitor for the most
  *   recent monitor period. I think this will greatly help in determining what numbers are reasonable for temp blocking, both for single IP's as well as shared NAT IP's.
  *   See the getMetrics() method.
@@ -44,28 +67,22 @@
 package com.feedbactory.server.network.component;
 
 
+import com.feedbactory.server.core.CheckpointFileFormat;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
 import com.feedbactory.server.core.TimeCache;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.shared.network.IPAddressStanding;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -73,24 +90,51 @@ import java.util.concurrent.atomic.AtomicInteger;
 final public class IPAddressRequestMonitor
 {
    static final private String IPAddressRequestMonitorFilename = "IPAddressRequestMonitor" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String IPAddressPrefixBlocklistFilename = "IPAddressPrefixBlocklist" + FeedbactoryServerConstants.DataFileExtension;
+
+   static final private int MinimumSegmentCapacity = 16;
+   static final private float SegmentLoadFactor = 0.75f;
+
+   // The upper half of the low key for an IPv4 address, ie. the ::ffff:0:0/96 prefix of its IPv4-mapped IPv6 form.
+   static final private long IPv4MappedKeyPrefix = 0xFFFFL << 32;
 
    final private int monitorFrequencyMinutes;
 
    final private int spamRequestsBlockThreshold;
    final private int erroneousRequestsBlockThreshold;
 
-   final private ConcurrentHashMap<InetAddress, IPAddressRequestNode> requestsByIPAddress;
+   final private int initialSegmentCapacity;
+   final private RequestSegment[] segments;
+
+   final private IPAddressPrefixBlocklist prefixBlocklist;
+
+   /* The published filter is only ever replaced, never cleared. The filter under construction is non-null only while the housekeeping task is rebuilding it.
+    * Both are written while holding a segment lock or before the monitor is in use, see addToStandingFilter().
+    */
+   volatile private IPAddressStandingFilter standingFilter = new IPAddressStandingFilter(0);
+   volatile private IPAddressStandingFilter rebuildingStandingFilter;
 
    final private HousekeepingTask housekeepingTask = new HousekeepingTask();
 
 
    public IPAddressRequestMonitor(final int monitorFrequencyMinutes, final int spamRequestsBlockThreshold, final int erroneousRequestsBlockThreshold,
-                                  final int initialIPAddressCapacity, final int concurrency)
+                                  final int prefixPromotionThreshold, final int initialIPAddressCapacity, final int concurrency)
    {
       this.monitorFrequencyMinutes = monitorFrequencyMinutes;
       this.spamRequestsBlockThreshold = spamRequestsBlockThreshold;
       this.erroneousRequestsBlockThreshold = erroneousRequestsBlockThreshold;
-      requestsByIPAddress = new ConcurrentHashMap<>(initialIPAddressCapacity, 0.75f, concurrency);
+
+      prefixBlocklist = new IPAddressPrefixBlocklist(prefixPromotionThreshold);
+
+      // Rounded up to a power of two, so that a segment can be selected by masking the placement hash.
+      final int segmentCount = Math.max(Integer.highestOneBit(Math.max(concurrency, 1) - 1) << 1, 1);
+
+      final int segmentIPAddressCapacity = (int) Math.ceil(initialIPAddressCapacity / (segmentCount * SegmentLoadFactor));
+      initialSegmentCapacity = Math.max(segmentIPAddressCapacity, MinimumSegmentCapacity);
+
+      segments = new RequestSegment[segmentCount];
+      for (int segmentIndex = 0; segmentIndex < segmentCount; segmentIndex ++)
+         segments[segmentIndex] = new RequestSegment(initialSegmentCapacity);
    }
 
 
@@ -120,6 +164,12 @@ final public class IPAddressRequestMonitor
       final public int temporarilyBlockedIPAddresses;
       final public int blacklistedIPAddresses;
 
+      final public int blockedIPAddressPrefixes;
+      final public long connectionsRejectedByPrefix;
+
+      final public int standingFilterAddedIPAddresses;
+      final public int standingFilterSizeBytes;
+
       final public int totalLegitimateRequestsThisMonitorPeriod;
       final public int totalErroneousRequestsThisMonitorPeriod;
       final public int totalDeniedRequestsThisMonitorPeriod;
@@ -132,6 +182,8 @@ final public class IPAddressRequestMonitor
                                final int spamRequestsBlockThreshold, final int erroneousRequestsBlockThreshold,
                                final int totalIPAddressesTracking, final int newIPAddressesThisMonitorPeriod,
                                final int temporarilyBlockedIPAddresses, final int administratorBlacklistedIPAddresses,
+                               final int blockedIPAddressPrefixes, final long connectionsRejectedByPrefix,
+                               final int standingFilterAddedIPAddresses, final int standingFilterSizeBytes,
                                final int totalLegitimateRequestsThisMonitorPeriod, final int totalErroneousRequestsThisMonitorPeriod,
                                final int totalDeniedRequestsThisMonitorPeriod,
                                final InetAddress busiestIPAddressThisMonitorPeriod, final int busiestIPAddressRequestsThisMonitorPeriod)
@@ -148,6 +200,12 @@ final public class IPAddressRequestMonitor
          this.temporarilyBlockedIPAddresses = temporarilyBlockedIPAddresses;
          this.blacklistedIPAddresses = administratorBlacklistedIPAddresses;
 
+         this.blockedIPAddressPrefixes = blockedIPAddressPrefixes;
+         this.connectionsRejectedByPrefix = connectionsRejectedByPrefix;
+
+         this.standingFilterAddedIPAddresses = standingFilterAddedIPAddresses;
+         this.standingFilterSizeBytes = standingFilterSizeBytes;
+
          this.totalLegitimateRequestsThisMonitorPeriod = totalLegitimateRequestsThisMonitorPeriod;
          this.totalErroneousRequestsThisMonitorPeriod = totalErroneousRequestsThisMonitorPeriod;
          this.totalDeniedRequestsThisMonitorPeriod = totalDeniedRequestsThisMonitorPeriod;
@@ -211,6 +269,48 @@ final public class IPAddressRequestMonitor
    }
 
 
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final public class BlockedIPAddressPrefixMetrics
+   {
+      final public String prefix;
+      final public IPAddressStanding prefixStanding;
+      final public long prefixStandingLastUpdated;
+
+
+      private BlockedIPAddressPrefixMetrics(final String prefix, final IPAddressStanding prefixStanding, final long prefixStandingLastUpdated)
+      {
+         this.prefix = prefix;
+         this.prefixStanding = prefixStanding;
+         this.prefixStandingLastUpdated = prefixStandingLastUpdated;
+      }
+   }
+
+
+   /****************************************************************************
+    * 
+    * 
+    * 
+    ***************************************************************************/
+   static final private class MonitorPeriod
+   {
+      final private int periodNumber;
+      final private long startTime;
+
+
+      private MonitorPeriod(final int periodNumber, final long startTime)
+      {
+         this.periodNumber = periodNumber;
+         this.startTime = startTime;
+      }
+   }
+
+
    /****************************************************************************
     * 
     * 
@@ -218,68 +318,237 @@ final public class IPAddressRequestMonitor
     ***************************************************************************/
 
 
-   static final private class IPAddressRequestNode
+   // Caller must be sync'd on the segment for all of the slot operations. A slot having a null standing is empty.
+   final private class RequestSegment
    {
-      private int legitimateRequestsThisMonitorPeriod;
-      private int erroneousRequestsThisMonitorPeriod;
-      private int deniedRequestsThisMonitorPeriod;
+      private long[] keyHighs;
+      private long[] keyLows;
 
-      /* Maintain a client standing rather than just derive it from the above requests counts. This saves repeated calculations when checking the IP's
+      /* Maintain a client standing rather than just derive it from the request counts. This saves repeated calculations when checking the IP's
        * standing, while also making it possible to reset and track the IP's request counts during each monitor period.
        */
-      private IPAddressStanding ipAddressStanding;
-      private long ipAddressStandingLastUpdated;
-      private boolean isDeleted;
+      private IPAddressStanding[] ipAddressStandings;
+      private long[] ipAddressStandingLastUpdatedTimes;
 
+      private int[] periodNumbers;
+      private int[] legitimateRequests;
+      private int[] erroneousRequests;
+      private int[] deniedRequests;
 
-      private void incrementLegitimateRequests()
+      private int occupiedSlots;
+
+
+      private RequestSegment(final int capacity)
       {
-         legitimateRequestsThisMonitorPeriod ++;
+         allocate(capacity);
       }
 
 
-      private void incrementErroneousRequests()
+      private void allocate(final int capacity)
       {
-         erroneousRequestsThisMonitorPeriod ++;
+         keyHighs = new long[capacity];
+         keyLows = new long[capacity];
+         ipAddressStandings = new IPAddressStanding[capacity];
+         ipAddressStandingLastUpdatedTimes = new long[capacity];
+         periodNumbers = new int[capacity];
+         legitimateRequests = new int[capacity];
+         erroneousRequests = new int[capacity];
+         deniedRequests = new int[capacity];
+
+         occupiedSlots = 0;
       }
 
 
-      private void incrementDeniedRequests()
+      private int getCapacity()
       {
-         deniedRequestsThisMonitorPeriod ++;
+         return keyHighs.length;
       }
 
 
-      private int totalRequestsThisMonitorPeriod()
+      // The capacity isn't restricted to powers of two, so the first slot is taken from the hash by multiplication rather than masking.
+      private int getFirstSlot(final long placementHash)
       {
-         return (legitimateRequestsThisMonitorPeriod + erroneousRequestsThisMonitorPeriod + deniedRequestsThisMonitorPeriod);
+         return (int) (((placementHash & 0xFFFFFFFFL) * getCapacity()) >>> 32);
       }
 
 
-      private void resetRequestCounts()
+      private int getNextSlot(final int slot)
       {
-         legitimateRequestsThisMonitorPeriod = 0;
-         erroneousRequestsThisMonitorPeriod = 0;
-         deniedRequestsThisMonitorPeriod = 0;
+         return ((slot + 1) < getCapacity()) ? (slot + 1) : 0;
       }
 
 
-      private void setStanding(final IPAddressStanding clientStanding)
+      private int findSlot(final long keyHigh, final long keyLow, final long placementHash)
       {
-         setStanding(clientStanding, TimeCache.getCurrentTimeMilliseconds());
+         int slot = getFirstSlot(placementHash);
+
+         while (ipAddressStandings[slot] != null)
+         {
+            if ((keyLows[slot] == keyLow) && (keyHighs[slot] == keyHigh))
+               return slot;
+
+            slot = getNextSlot(slot);
+         }
+
+         return -1;
       }
 
 
-      private void setStanding(final IPAddressStanding clientStanding, final long ipAddressStandingLastUpdated)
+      private int claimSlot(final long keyHigh, final long keyLow, final long placementHash, final MonitorPeriod currentPeriod)
       {
-         this.ipAddressStanding = clientStanding;
-         this.ipAddressStandingLastUpdated = ipAddressStandingLastUpdated;
+         if ((occupiedSlots + 1) > (getCapacity() * SegmentLoadFactor))
+            rehash(currentPeriod);
+
+         int slot = getFirstSlot(placementHash);
+         int reusableSlot = -1;
+
+         // The whole probe run must be searched for the key before an untracked slot along the way can be reused.
+         while (ipAddressStandings[slot] != null)
+         {
+            if ((keyLows[slot] == keyLow) && (keyHighs[slot] == keyHigh))
+            {
+               if (! isTracked(slot, currentPeriod.periodNumber))
+                  housekeepingTask.reportNewIPAddress();
+
+               rollOver(slot, currentPeriod);
+               return slot;
+            }
+            else if ((reusableSlot == -1) && (! isTracked(slot, currentPeriod.periodNumber)))
+               reusableSlot = slot;
+
+            slot = getNextSlot(slot);
+         }
+
+         if (reusableSlot != -1)
+            slot = reusableSlot;
+         else
+            occupiedSlots ++;
+
+         keyHighs[slot] = keyHigh;
+         keyLows[slot] = keyLow;
+         initialiseSlot(slot, IPAddressStanding.OK, TimeCache.getCurrentTimeMilliseconds(), currentPeriod.periodNumber);
+
+         housekeepingTask.reportNewIPAddress();
+
+         return slot;
       }
 
 
-      private void markAsDeleted()
+      private void initialiseSlot(final int slot, final IPAddressStanding ipAddressStanding, final long ipAddressStandingLastUpdated, final int periodNumber)
       {
-         isDeleted = true;
+         ipAddressStandings[slot] = ipAddressStanding;
+         ipAddressStandingLastUpdatedTimes[slot] = ipAddressStandingLastUpdated;
+         periodNumbers[slot] = periodNumber;
+         legitimateRequests[slot] = 0;
+         erroneousRequests[slot] = 0;
+         deniedRequests[slot] = 0;
+      }
+
+
+      /* Grow the segment by half, or if at least half of the occupied slots are held by IP addresses that are no longer tracked, rebuild it at the same size
+       * without them. Either way the probe runs are rebuilt from the tracked IP addresses only.
+       */
+      private void rehash(final MonitorPeriod currentPeriod)
+      {
+         final long[] oldKeyHighs = keyHighs;
+         final long[] oldKeyLows = keyLows;
+         final IPAddressStanding[] oldIPAddressStandings = ipAddressStandings;
+         final long[] oldIPAddressStandingLastUpdatedTimes = ipAddressStandingLastUpdatedTimes;
+         final int[] oldPeriodNumbers = periodNumbers;
+         final int[] oldLegitimateRequests = legitimateRequests;
+         final int[] oldErroneousRequests = erroneousRequests;
+         final int[] oldDeniedRequests = deniedRequests;
+
+         int trackedSlots = 0;
+         for (int slot = 0; slot < oldKeyHighs.length; slot ++)
+         {
+            if ((oldIPAddressStandings[slot] != null) && isTracked(slot, currentPeriod.periodNumber))
+               trackedSlots ++;
+         }
+
+         allocate((trackedSlots < (occupiedSlots / 2)) ? oldKeyHighs.length : (oldKeyHighs.length + (oldKeyHighs.length / 2)));
+
+         int newSlot;
+
+         for (int slot = 0; slot < oldKeyHighs.length; slot ++)
+         {
+            if (oldIPAddressStandings[slot] == null)
+               continue;
+
+            // The segment's own arrays have already been replaced, so the tracked test must be applied to the old values directly.
+            if (! IPAddressRequestMonitor.this.isTracked(oldIPAddressStandings[slot], oldPeriodNumbers[slot],
+                                                         oldLegitimateRequests[slot] + oldErroneousRequests[slot] + oldDeniedRequests[slot],
+                                                         currentPeriod.periodNumber))
+               continue;
+
+            newSlot = getFirstSlot(getPlacementHash(oldKeyHighs[slot], oldKeyLows[slot]));
+            while (ipAddressStandings[newSlot] != null)
+               newSlot = getNextSlot(newSlot);
+
+            keyHighs[newSlot] = oldKeyHighs[slot];
+            keyLows[newSlot] = oldKeyLows[slot];
+            ipAddressStandings[newSlot] = oldIPAddressStandings[slot];
+            ipAddressStandingLastUpdatedTimes[newSlot] = oldIPAddressStandingLastUpdatedTimes[slot];
+            periodNumbers[newSlot] = oldPeriodNumbers[slot];
+            legitimateRequests[newSlot] = oldLegitimateRequests[slot];
+            erroneousRequests[newSlot] = oldErroneousRequests[slot];
+            deniedRequests[newSlot] = oldDeniedRequests[slot];
+
+            occupiedSlots ++;
+         }
+      }
+
+
+      private int getTotalRequests(final int slot)
+      {
+         return (legitimateRequests[slot] + erroneousRequests[slot] + deniedRequests[slot]);
+      }
+
+
+      private IPAddressStanding getEffectiveStanding(final int slot, final int currentPeriodNumber)
+      {
+         return IPAddressRequestMonitor.this.getEffectiveStanding(ipAddressStandings[slot], periodNumbers[slot], getTotalRequests(slot), currentPeriodNumber);
+      }
+
+
+      private long getEffectiveStandingLastUpdated(final int slot, final MonitorPeriod currentPeriod)
+      {
+         if (getEffectiveStanding(slot, currentPeriod.periodNumber) != ipAddressStandings[slot])
+            return currentPeriod.startTime;
+         else
+            return ipAddressStandingLastUpdatedTimes[slot];
+      }
+
+
+      private boolean isTracked(final int slot, final int currentPeriodNumber)
+      {
+         return IPAddressRequestMonitor.this.isTracked(ipAddressStandings[slot], periodNumbers[slot], getTotalRequests(slot), currentPeriodNumber);
+      }
+
+
+      // Bring the slot up to date with the current monitor period. See the class memos.
+      private void rollOver(final int slot, final MonitorPeriod currentPeriod)
+      {
+         if (periodNumbers[slot] != currentPeriod.periodNumber)
+         {
+            final IPAddressStanding effectiveStanding = getEffectiveStanding(slot, currentPeriod.periodNumber);
+            final long effectiveStandingLastUpdated = getEffectiveStandingLastUpdated(slot, currentPeriod);
+
+            initialiseSlot(slot, effectiveStanding, effectiveStandingLastUpdated, currentPeriod.periodNumber);
+         }
+      }
+
+
+      private void setStanding(final int slot, final IPAddressStanding ipAddressStanding)
+      {
+         ipAddressStandings[slot] = ipAddressStanding;
+         ipAddressStandingLastUpdatedTimes[slot] = TimeCache.getCurrentTimeMilliseconds();
+      }
+
+
+      private void clear()
+      {
+         allocate(initialSegmentCapacity);
       }
    }
 
@@ -291,24 +560,20 @@ final public class IPAddressRequestMonitor
     ***************************************************************************/
 
 
-   final private class HousekeepingTask implements Runnable, ThreadFactory
+   final private class HousekeepingTask implements HousekeepingScheduler.Task
    {
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler housekeepingScheduler;
+      private HousekeepingScheduler.Registration registration;
 
       final private AtomicInteger newIPAddressesThisMonitorPeriod = new AtomicInteger();
-      private long currentMonitorPeriodStartTime;
 
+      // Replaced rather than updated, so that the request threads always see a consistent period number and start time without locking.
+      volatile private MonitorPeriod currentMonitorPeriod = new MonitorPeriod(0, TimeCache.getCurrentTimeMilliseconds());
 
-      private HousekeepingTask()
-      {
-         initialise();
-      }
-
-
-      private void initialise()
-      {
-         resetMonitorPeriod();
-      }
+      /* The progress of the standing filter rebuild through the segments, held between slices. Only the scheduler thread touches this variable,
+       * aside from a checkpoint restore, which can't overlap with the housekeeping.
+       */
+      private int rebuildSegmentIndex;
 
 
       /****************************************************************************
@@ -316,89 +581,91 @@ final public class IPAddressRequestMonitor
        ***************************************************************************/
 
 
+      /* Rolling over the monitor period is a constant time operation aside from pruning the prefix blocklist, so it's done in the first slice. The rebuild
+       * of the standing filter which follows it visits every tracked IP address, so it may be spread across several slices; the previous filter remains
+       * published and correct in the meantime, since it can only hold more IP addresses than necessary.
+       */
       @Override
-      final public Thread newThread(final Runnable runnable)
-      {
-         final Thread thread = new Thread(runnable, "IP address request monitor housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
-
-
-      @Override
-      final public void run()
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
          try
          {
-            updateIPAddressStatuses();
+            if (isNewRun)
+            {
+               startNextMonitorPeriod();
+               startStandingFilterRebuild();
+            }
+
+            return rebuildStandingFilter(sliceDeadlineNanoTime);
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
-             */
+            // Exception handling provided for -any- exception, so that the failure is logged against this task.
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "IP address request monitor housekeeping task failed", anyException);
+
+            // The published filter is still complete, the next run will try the rebuild again.
+            rebuildingStandingFilter = null;
+            return true;
          }
       }
 
 
-      synchronized final public void updateIPAddressStatuses()
+      synchronized private void startNextMonitorPeriod()
       {
          /* Lock on the housekeeping instance for the sake of ensuring consistent reporting metrics (see the method for generating that below).
           * The metrics will always be out of date when there are new connections incoming even as they are being generated, but I can at least
-          * ensure that the metrics appear consistent within the context of the outdated snapshot. To that end I can prevent the metrics
-          * generator from encountering the set of IPAddressRequestNode's just as the housekeeping task has, for example, reset the counts on half of them.
-          * Or from encountering a zero or low count for newIPAddressesThisMonitorPeriod when the lastRunTime hasn't yet been set for the current run.
+          * ensure that the metrics don't straddle two monitor periods, or encounter a zero or low count for newIPAddressesThisMonitorPeriod
+          * belonging to a period other than the one being reported.
           *
-          * It's a small performance hit - the extra locking on the housekeeping task is not required for the other regular operational methods.
+          * The IP addresses themselves are brought up to date lazily, see the class memos.
           */
-         final Iterator<IPAddressRequestNode> ipAddressRequestsIterator = requestsByIPAddress.values().iterator();
-         IPAddressRequestNode ipAddressRequests;
-         boolean removeRequestNode;
+         currentMonitorPeriod = new MonitorPeriod(currentMonitorPeriod.periodNumber + 1, TimeCache.getCurrentTimeMilliseconds());
+         newIPAddressesThisMonitorPeriod.set(0);
 
-         while (ipAddressRequestsIterator.hasNext())
+         prefixBlocklist.removeExpired(currentMonitorPeriod.periodNumber);
+      }
+
+
+      private void startStandingFilterRebuild()
+      {
+         /* Size the fresh filter for the IP addresses added to the current one, which is an overestimate of those that will be carried over.
+          * Doubling it leaves room for the IP addresses that will be blocked during the coming period.
+          */
+         rebuildingStandingFilter = new IPAddressStandingFilter(standingFilter.getAddedIPAddresses() * 2);
+         rebuildSegmentIndex = 0;
+      }
+
+
+      private boolean rebuildStandingFilter(final long sliceDeadlineNanoTime)
+      {
+         final IPAddressStandingFilter rebuiltStandingFilter = rebuildingStandingFilter;
+         final int currentPeriodNumber = currentMonitorPeriod.periodNumber;
+         RequestSegment segment;
+
+         while (rebuildSegmentIndex < segments.length)
          {
-            ipAddressRequests = ipAddressRequestsIterator.next();
-            removeRequestNode = false;
+            segment = segments[rebuildSegmentIndex];
 
-            synchronized (ipAddressRequests)
+            synchronized (segment)
             {
-               switch (ipAddressRequests.ipAddressStanding)
+               for (int slot = 0; slot < segment.getCapacity(); slot ++)
                {
-                  case OK:
-                     removeRequestNode = ((ipAddressRequests.legitimateRequestsThisMonitorPeriod == 0) &&
-                                          (ipAddressRequests.erroneousRequestsThisMonitorPeriod == 0));
-                     break;
-
-                  case TemporarilyBlocked:
-                     /* Need to count ALL requests not just denied requests, since the IP node may have been set to temporarily blocked
-                      * just before the housekeeping run.
-                      * Also the IP may be sending erroneous requests once blocked, these should be counted too.
-                      */
-                     if (ipAddressRequests.totalRequestsThisMonitorPeriod() < spamRequestsBlockThreshold)
-                        ipAddressRequests.setStanding(IPAddressStanding.OK);
-
-                     break;
-
-                  case Blacklisted:
-                     break;
-
-                  default:
-                     throw new AssertionError("Unhandled IP address standing: " + ipAddressRequests.ipAddressStanding);
+                  if ((segment.ipAddressStandings[slot] != null) && (segment.getEffectiveStanding(slot, currentPeriodNumber) != IPAddressStanding.OK))
+                     rebuiltStandingFilter.add(getPlacementHash(segment.keyHighs[slot], segment.keyLows[slot]));
                }
-
-               if (removeRequestNode)
-               {
-                  ipAddressRequestsIterator.remove();
-                  ipAddressRequests.markAsDeleted();
-               }
-               else
-                  ipAddressRequests.resetRequestCounts();
             }
+
+            rebuildSegmentIndex ++;
+
+            if ((rebuildSegmentIndex < segments.length) && (System.nanoTime() >= sliceDeadlineNanoTime))
+               return false;
          }
 
-         resetMonitorPeriod();
+         // The order of these writes matters, see addToStandingFilter().
+         standingFilter = rebuiltStandingFilter;
+         rebuildingStandingFilter = null;
+
+         return true;
       }
 
 
@@ -407,33 +674,31 @@ final public class IPAddressRequestMonitor
        ***************************************************************************/
 
 
-      synchronized private long getMonitorPeriodStartTime()
+      private MonitorPeriod getCurrentMonitorPeriod()
       {
-         return currentMonitorPeriodStartTime;
+         return currentMonitorPeriod;
       }
 
 
       synchronized private void resetMonitorPeriod()
       {
-         currentMonitorPeriodStartTime = TimeCache.getCurrentTimeMilliseconds();
+         currentMonitorPeriod = new MonitorPeriod(0, TimeCache.getCurrentTimeMilliseconds());
          newIPAddressesThisMonitorPeriod.set(0);
       }
 
 
       private boolean isStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
-      private void start()
+      private void start(final HousekeepingScheduler housekeepingScheduler)
       {
          if (isStarted())
             throw new IllegalStateException("Housekeeping task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
+         this.housekeepingScheduler = housekeepingScheduler;
 
          /* Unlike other housekeeping tasks which should probably be run immediately on startup, I don't necessarily want to wipe the slate clean
           * for the 'spam' status of IP addresses at startup, particularly for momentary downtime. So, at the request to start the housekeeping,
@@ -443,15 +708,20 @@ final public class IPAddressRequestMonitor
           * temp blocked IP addresses if the server has been down for long enough, even if those IP's have been spamming in the meantime. The safest
           * approach on restoration/restart is to reset them to their last known state - temporarily blocked - and see how they behave for the first
           * monitor period.
+          *
+          * The task is exempt from the scheduler's busy deferral, since holding it back under load would stretch the monitor period and with it the
+          * window that the request limits are counted over, just when the limits matter most. The rollover itself is cheap, and the filter rebuild that
+          * follows it is sliced and still metered against the scheduler's CPU budget.
           */
-         executor.scheduleAtFixedRate(this, monitorFrequencyMinutes, monitorFrequencyMinutes, TimeUnit.MINUTES);
+         final long monitorFrequencyMilliseconds = TimeUnit.MINUTES.toMillis(monitorFrequencyMinutes);
+         registration = housekeepingScheduler.register("IP address monitor period", this, monitorFrequencyMilliseconds, monitorFrequencyMilliseconds, false);
       }
 
 
       private void reportNewIPAddress()
       {
          /* Re: reporting, it's no problem at all if this counter is incremented at any time during housekeeping or reporting,
-          * as long as the reporting of it in the metrics is consistent with the last run time. See the note above.
+          * as long as the reporting of it in the metrics is consistent with the current monitor period. See the note above.
           */
          newIPAddressesThisMonitorPeriod.incrementAndGet();
       }
@@ -459,11 +729,11 @@ final public class IPAddressRequestMonitor
 
       private void shutdown() throws InterruptedException
       {
-         if (executor != null)
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+            housekeepingScheduler = null;
          }
       }
    }
@@ -476,165 +746,317 @@ final public class IPAddressRequestMonitor
     ***************************************************************************/
 
 
-   private IPAddressRequestNode putIfAbsentIPAddressRequestNode(final InetAddress inetAddress)
+   // The 64-bit finaliser from MurmurHash3, to spread the keys evenly across the segments and slots.
+   static private long mix(long value)
    {
-      IPAddressRequestNode ipAddressRequestSummary = requestsByIPAddress.get(inetAddress);
+      value ^= (value >>> 33);
+      value *= 0xff51afd7ed558ccdL;
+      value ^= (value >>> 33);
+      value *= 0xc4ceb9fe1a85ec53L;
+      value ^= (value >>> 33);
 
-      if (ipAddressRequestSummary == null)
-      {
-         ipAddressRequestSummary = new IPAddressRequestNode();
+      return value;
+   }
 
-         // Ensure the visibility of the monitor data to subsequent threads.
-         synchronized (ipAddressRequestSummary)
-         {
-            ipAddressRequestSummary.setStanding(IPAddressStanding.OK);
-         }
 
-         final IPAddressRequestNode existingClientRequestSummary = requestsByIPAddress.putIfAbsent(inetAddress, ipAddressRequestSummary);
+   static private long getPlacementHash(final long keyHigh, final long keyLow)
+   {
+      return mix(keyHigh ^ mix(keyLow));
+   }
 
-         if (existingClientRequestSummary != null)
-            return existingClientRequestSummary;
-         else
-         {
-            /* If this method is called more than once as part of a concurrency loop, it will be due to the housekeeping task removing
-             * IP address nodes simultaneously as the calling method is having to retry an add into the requestsByIPAddress collection.
-             * Because the running of the housekeeping task also signals the start of the next monitoring period, it's fair enough to
-             * consider the removed & immediately re-added IP address a 'new' one for the next monitoring period, ie. as opposed to
-             * using a flag in each loop in the caller to ensure that reportNewIPAddress here is only called the once.
-             */
-            housekeepingTask.reportNewIPAddress();
-         }
-      }
 
-      return ipAddressRequestSummary;
+   static private long getKeyHigh(final byte[] addressBytes)
+   {
+      return (addressBytes.length == 4) ? 0L : getLong(addressBytes, 0);
    }
 
 
-   private IPAddressStanding handleGetIPAddressStanding(final InetAddress inetAddress)
+   static private long getKeyLow(final byte[] addressBytes)
+   {
+      if (addressBytes.length == 4)
+         return IPv4MappedKeyPrefix | (getLong(addressBytes, 0) >>> 32);
+      else
+         return getLong(addressBytes, 8);
+   }
+
+
+   static private long getLong(final byte[] bytes, final int offset)
    {
-      final IPAddressRequestNode ipAddressRequestSummary = requestsByIPAddress.get(inetAddress);
+      long value = 0L;
 
-      if (ipAddressRequestSummary == null)
-         return IPAddressStanding.OK;
+      for (int byteIndex = offset; byteIndex < Math.min(offset + 8, bytes.length); byteIndex ++)
+         value = (value << 8) | (bytes[byteIndex] & 0xff);
+
+      // Left align any partial value, ie. for the four bytes of an IPv4 address.
+      return value << (8 * Math.max((offset + 8) - bytes.length, 0));
+   }
+
+
+   static private InetAddress getIPAddress(final long keyHigh, final long keyLow)
+   {
+      final byte[] addressBytes;
+
+      if ((keyHigh == 0L) && ((keyLow & (0xFFFFFFFFL << 32)) == IPv4MappedKeyPrefix))
+         addressBytes = new byte[] {(byte) (keyLow >>> 24), (byte) (keyLow >>> 16), (byte) (keyLow >>> 8), (byte) keyLow};
       else
       {
-         synchronized (ipAddressRequestSummary)
+         addressBytes = new byte[16];
+
+         for (int byteIndex = 0; byteIndex < 8; byteIndex ++)
          {
-            return ipAddressRequestSummary.ipAddressStanding;
+            addressBytes[byteIndex] = (byte) (keyHigh >>> ((7 - byteIndex) * 8));
+            addressBytes[byteIndex + 8] = (byte) (keyLow >>> ((7 - byteIndex) * 8));
          }
       }
+
+      try
+      {
+         return InetAddress.getByAddress(addressBytes);
+      }
+      catch (final UnknownHostException unknownHostException)
+      {
+         // Not possible when supplying a four or sixteen byte address.
+         throw new RuntimeException(unknownHostException);
+      }
    }
 
 
-   private void handleReportLegitimateClientRequest(final InetAddress inetAddress)
+   private RequestSegment getSegment(final long placementHash)
+   {
+      return segments[((int) (placementHash >>> 32)) & (segments.length - 1)];
+   }
+
+
+   /****************************************************************************
+    * 
+    ***************************************************************************/
+
+
+   private IPAddressStanding getEffectiveStanding(final IPAddressStanding ipAddressStanding, final int periodNumber, final int totalRequests,
+                                                  final int currentPeriodNumber)
    {
-      /* Loop to handle the very unlikely but possible case where the housekeeping task has marked the IPAddressRequestNode object as deleted
-       * between this method retrieving (or creating) the object and grabbing the lock on it.
-       * This ensures for example that an IP address can't get away with flooding the server with a huge number of invalid requests just as the
-       * housekeeping task has marked their IP address for deletion from the tracking collection. If not for the isDeleted check and the retry loop,
-       * the flood of invalid requests and recording of a temporarily barred IP address would occur on an IPAddressRequestNode that has just been
-       * removed by the housekeeper, rendering it lost from the records.
+      if ((ipAddressStanding != IPAddressStanding.TemporarilyBlocked) || (periodNumber == currentPeriodNumber))
+         return ipAddressStanding;
+
+      /* Need to count ALL requests not just denied requests, since the IP may have been set to temporarily blocked just before the end of its period.
+       * Also the IP may be sending erroneous requests once blocked, these should be counted too.
+       * A temporarily blocked IP address is reinstated at the end of its recorded period unless it was spamming during it, and at the end of the
+       * following period regardless, since it made no requests during that one.
        */
-      for (;;)
-      {
-         final IPAddressRequestNode ipAddressRequestSummary = putIfAbsentIPAddressRequestNode(inetAddress);
+      if ((periodNumber == (currentPeriodNumber - 1)) && (totalRequests >= spamRequestsBlockThreshold))
+         return IPAddressStanding.TemporarilyBlocked;
+      else
+         return IPAddressStanding.OK;
+   }
 
-         synchronized (ipAddressRequestSummary)
-         {
-            if (ipAddressRequestSummary.isDeleted)
-               continue;
 
-            ipAddressRequestSummary.incrementLegitimateRequests();
+   private boolean isTracked(final IPAddressStanding ipAddressStanding, final int periodNumber, final int totalRequests, final int currentPeriodNumber)
+   {
+      /* An IP address in good standing which hasn't made any requests during the current period is indistinguishable from one that has never been seen,
+       * so its slot is free to be reused.
+       */
+      return (periodNumber == currentPeriodNumber) ||
+             (getEffectiveStanding(ipAddressStanding, periodNumber, totalRequests, currentPeriodNumber) != IPAddressStanding.OK);
+   }
 
-            if ((ipAddressRequestSummary.ipAddressStanding == IPAddressStanding.OK) && (ipAddressRequestSummary.legitimateRequestsThisMonitorPeriod >= spamRequestsBlockThreshold))
-               ipAddressRequestSummary.setStanding(IPAddressStanding.TemporarilyBlocked);
 
-            break;
-         }
+   /****************************************************************************
+    * 
+    ***************************************************************************/
+
+
+   /* Caller must be sync'd on the IP address's segment. Holding the lock guarantees that a standing filter rebuild either scans the segment after the
+    * IP address has been blocked, or had already started before then, in which case the filter under construction is visible here.
+    *
+    * The rebuilding filter must be read before the published one. The rebuild publishes its filter before clearing rebuildingStandingFilter, and
+    * neither write is made under a segment lock, so reading the published filter first could see the old filter and then no rebuild in progress,
+    * leaving the IP address in neither filter once the rebuilt one is published. Reading in this order, a null rebuilding filter means that either
+    * no rebuild has scanned this segment yet, or the rebuilt filter has already been published and will be the one read next.
+    */
+   private void addToStandingFilter(final long placementHash)
+   {
+      final IPAddressStandingFilter rebuiltStandingFilter = rebuildingStandingFilter;
+      final IPAddressStandingFilter publishedStandingFilter = standingFilter;
+
+      publishedStandingFilter.add(placementHash);
+
+      if ((rebuiltStandingFilter != null) && (rebuiltStandingFilter != publishedStandingFilter))
+         rebuiltStandingFilter.add(placementHash);
+   }
+
+
+   private IPAddressStanding handleGetIPAddressStanding(final InetAddress inetAddress)
+   {
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+
+      // The fast path for the IP addresses in good standing, see the class memos.
+      if (! standingFilter.mightContain(placementHash))
+         return IPAddressStanding.OK;
+
+      final RequestSegment segment = getSegment(placementHash);
+
+      synchronized (segment)
+      {
+         final int slot = segment.findSlot(keyHigh, keyLow, placementHash);
+
+         if (slot == -1)
+            return IPAddressStanding.OK;
+         else
+            return segment.getEffectiveStanding(slot, housekeepingTask.getCurrentMonitorPeriod().periodNumber);
       }
    }
 
 
-   private void handleReportDeniedClientRequest(final InetAddress inetAddress)
+   private void handleReportLegitimateClientRequest(final InetAddress inetAddress)
    {
-      for (;;)
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
+      final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
+      boolean isNewlyBlocked = false;
+
+      synchronized (segment)
       {
-         final IPAddressRequestNode ipAddressRequestSummary = putIfAbsentIPAddressRequestNode(inetAddress);
+         final int slot = segment.claimSlot(keyHigh, keyLow, placementHash, currentPeriod);
 
-         synchronized (ipAddressRequestSummary)
-         {
-            if (ipAddressRequestSummary.isDeleted)
-               continue;
+         segment.legitimateRequests[slot] ++;
 
-            ipAddressRequestSummary.incrementDeniedRequests();
-            break;
+         if ((segment.ipAddressStandings[slot] == IPAddressStanding.OK) && (segment.legitimateRequests[slot] >= spamRequestsBlockThreshold))
+         {
+            segment.setStanding(slot, IPAddressStanding.TemporarilyBlocked);
+            addToStandingFilter(placementHash);
+            isNewlyBlocked = true;
          }
       }
+
+      if (isNewlyBlocked)
+         prefixBlocklist.reportBlockedIPAddress(inetAddress, TimeCache.getCurrentTimeMilliseconds(), currentPeriod.periodNumber);
    }
 
 
-   private void handleReportErroneousClientRequest(final InetAddress inetAddress)
+   private void handleReportDeniedClientRequest(final InetAddress inetAddress)
    {
-      for (;;)
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
+
+      synchronized (segment)
       {
-         final IPAddressRequestNode ipAddressRequestSummary = putIfAbsentIPAddressRequestNode(inetAddress);
+         final int slot = segment.claimSlot(keyHigh, keyLow, placementHash, housekeepingTask.getCurrentMonitorPeriod());
 
-         synchronized (ipAddressRequestSummary)
-         {
-            if (ipAddressRequestSummary.isDeleted)
-               continue;
+         segment.deniedRequests[slot] ++;
+      }
+   }
 
-            ipAddressRequestSummary.incrementErroneousRequests();
 
-            if ((ipAddressRequestSummary.ipAddressStanding == IPAddressStanding.OK) && (ipAddressRequestSummary.erroneousRequestsThisMonitorPeriod >= erroneousRequestsBlockThreshold))
-               ipAddressRequestSummary.setStanding(IPAddressStanding.TemporarilyBlocked);
+   private void handleReportErroneousClientRequest(final InetAddress inetAddress)
+   {
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
+      final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
+      boolean isNewlyBlocked = false;
+
+      synchronized (segment)
+      {
+         final int slot = segment.claimSlot(keyHigh, keyLow, placementHash, currentPeriod);
+
+         segment.erroneousRequests[slot] ++;
 
-            break;
+         if ((segment.ipAddressStandings[slot] == IPAddressStanding.OK) && (segment.erroneousRequests[slot] >= erroneousRequestsBlockThreshold))
+         {
+            segment.setStanding(slot, IPAddressStanding.TemporarilyBlocked);
+            addToStandingFilter(placementHash);
+            isNewlyBlocked = true;
          }
       }
+
+      if (isNewlyBlocked)
+         prefixBlocklist.reportBlockedIPAddress(inetAddress, TimeCache.getCurrentTimeMilliseconds(), currentPeriod.periodNumber);
    }
 
 
    private void handleSetBlacklisted(final InetAddress inetAddress)
    {
-      for (;;)
-      {
-         final IPAddressRequestNode ipAddressRequestSummary = putIfAbsentIPAddressRequestNode(inetAddress);
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
 
-         synchronized (ipAddressRequestSummary)
-         {
-            if (ipAddressRequestSummary.isDeleted)
-               continue;
+      synchronized (segment)
+      {
+         final int slot = segment.claimSlot(keyHigh, keyLow, placementHash, housekeepingTask.getCurrentMonitorPeriod());
 
-            ipAddressRequestSummary.setStanding(IPAddressStanding.Blacklisted);
-            break;
-         }
+         segment.setStanding(slot, IPAddressStanding.Blacklisted);
+         addToStandingFilter(placementHash);
       }
    }
 
 
    private IPAddressStanding handleSetParoled(final InetAddress inetAddress)
    {
-      final IPAddressRequestNode ipAddressRequestSummary = requestsByIPAddress.get(inetAddress);
+      final byte[] addressBytes = inetAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
 
-      if (ipAddressRequestSummary != null)
+      synchronized (segment)
       {
-         synchronized (ipAddressRequestSummary)
+         final int slot = segment.findSlot(keyHigh, keyLow, placementHash);
+
+         if (slot == -1)
+            return null;
+
+         /* Not much point in checking whether the IP address is still being tracked. If it isn't, it's because it has been inactive,
+          * and the effective IPAddressStanding will be the same as that determined below: OK.
+          */
+         segment.rollOver(slot, housekeepingTask.getCurrentMonitorPeriod());
+
+         if (segment.getTotalRequests(slot) >= spamRequestsBlockThreshold)
          {
-            /* Not much point in checking the isDeleted status. If it is marked as deleted,
-             * it's because the housekeeping task has seen that the IP address has been inactive and can be removed from tracking.
-             * If that's the case, the effective IPAddressStanding will be the same as that determined below: OK.
-             */
-            if (ipAddressRequestSummary.totalRequestsThisMonitorPeriod() >= spamRequestsBlockThreshold)
-               ipAddressRequestSummary.setStanding(IPAddressStanding.TemporarilyBlocked);
-            else
-               ipAddressRequestSummary.setStanding(IPAddressStanding.OK);
-
-            return ipAddressRequestSummary.ipAddressStanding;
+            segment.setStanding(slot, IPAddressStanding.TemporarilyBlocked);
+            addToStandingFilter(placementHash);
          }
+         else
+            segment.setStanding(slot, IPAddressStanding.OK);
+
+         return segment.ipAddressStandings[slot];
+      }
+   }
+
+
+   private boolean handleIsIPAddressPrefixBlocked(final InetAddress inetAddress)
+   {
+      if (prefixBlocklist.getBlockingStanding(inetAddress, housekeepingTask.getCurrentMonitorPeriod().periodNumber) != null)
+      {
+         prefixBlocklist.reportRejectedConnection();
+         return true;
       }
       else
-         return null;
+         return false;
+   }
+
+
+   private List<BlockedIPAddressPrefixMetrics> handleGetBlockedPrefixMetrics()
+   {
+      final List<BlockedIPAddressPrefixMetrics> blockedPrefixMetrics = new LinkedList<>();
+
+      for (final IPAddressPrefixBlocklist.BlockedPrefix blockedPrefix : prefixBlocklist.getBlockedPrefixes(housekeepingTask.getCurrentMonitorPeriod().periodNumber))
+         blockedPrefixMetrics.add(new BlockedIPAddressPrefixMetrics(blockedPrefix.prefix.toString(), blockedPrefix.standing, blockedPrefix.standingLastUpdated));
+
+      // Return a mutable list, to allow the caller to sort the collection if desired.
+      return blockedPrefixMetrics;
    }
 
 
@@ -649,30 +1071,34 @@ final public class IPAddressRequestMonitor
 
       try
       (
-         final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         final DataOutputStream dataOutputStream = CheckpointFileFormat.openOutput(file);
       )
       {
-         IPAddressRequestNode ipAddressRequestNode;
+         final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
+         IPAddressStanding ipAddressStanding;
          byte[] ipAddress;
 
-         for (final Entry<InetAddress, IPAddressRequestNode> ipAddressRequests : requestsByIPAddress.entrySet())
+         for (final RequestSegment segment : segments)
          {
-            ipAddressRequestNode = ipAddressRequests.getValue();
-
-            synchronized (ipAddressRequestNode)
+            synchronized (segment)
             {
-               /* - Only save temp blocked and blacklisted IP addresses for now.
-                * - These will never be marked as deleted by the housekeeping task.
-                */
-               if ((ipAddressRequestNode.ipAddressStanding == IPAddressStanding.Blacklisted) ||
-                   (ipAddressRequestNode.ipAddressStanding == IPAddressStanding.TemporarilyBlocked))
+               for (int slot = 0; slot < segment.getCapacity(); slot ++)
                {
-                  ipAddress = ipAddressRequests.getKey().getAddress();
+                  if (segment.ipAddressStandings[slot] == null)
+                     continue;
+
+                  ipAddressStanding = segment.getEffectiveStanding(slot, currentPeriod.periodNumber);
+
+                  // Only save temp blocked and blacklisted IP addresses for now.
+                  if ((ipAddressStanding == IPAddressStanding.Blacklisted) || (ipAddressStanding == IPAddressStanding.TemporarilyBlocked))
+                  {
+                     ipAddress = getIPAddress(segment.keyHighs[slot], segment.keyLows[slot]).getAddress();
 
-                  dataOutputStream.writeByte(ipAddress.length);
-                  dataOutputStream.write(ipAddress);
-                  dataOutputStream.writeByte(ipAddressRequestNode.ipAddressStanding.value);
-                  dataOutputStream.writeLong(ipAddressRequestNode.ipAddressStandingLastUpdated);
+                     dataOutputStream.writeByte(ipAddress.length);
+                     dataOutputStream.write(ipAddress);
+                     dataOutputStream.writeByte(ipAddressStanding.value);
+                     dataOutputStream.writeLong(segment.getEffectiveStandingLastUpdated(slot, currentPeriod));
+                  }
                }
             }
          }
@@ -680,6 +1106,16 @@ final public class IPAddressRequestMonitor
          // Write EOF marker.
          dataOutputStream.writeByte(-1);
       }
+
+      final File prefixBlocklistFile = checkpointPath.resolve(IPAddressPrefixBlocklistFilename).toFile();
+
+      try
+      (
+         final DataOutputStream dataOutputStream = CheckpointFileFormat.openOutput(prefixBlocklistFile);
+      )
+      {
+         prefixBlocklist.saveCheckpoint(dataOutputStream, housekeepingTask.getCurrentMonitorPeriod().periodNumber);
+      }
    }
 
 
@@ -688,14 +1124,25 @@ final public class IPAddressRequestMonitor
       if (isHousekeepingStarted())
          throw new IllegalStateException("Cannot restore from checkpoint while housekeeping task is active.");
 
-      requestsByIPAddress.clear();
+      for (final RequestSegment segment : segments)
+      {
+         synchronized (segment)
+         {
+            segment.clear();
+         }
+      }
+
+      standingFilter = new IPAddressStandingFilter(0);
+      rebuildingStandingFilter = null;
+
       housekeepingTask.resetMonitorPeriod();
 
+      final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
       final File file = checkpointPath.resolve(IPAddressRequestMonitorFilename).toFile();
 
       try
       (
-         final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+         final DataInputStream dataInputStream = CheckpointFileFormat.openInput(file);
       )
       {
          byte ipAddressLength;
@@ -703,7 +1150,12 @@ final public class IPAddressRequestMonitor
          byte ipAddressStandingValue;
          IPAddressStanding ipAddressStanding;
          long ipAddressStandingUpdated;
-         IPAddressRequestNode ipAddressRequestSummary;
+
+         long keyHigh;
+         long keyLow;
+         long placementHash;
+         RequestSegment segment;
+         int slot;
 
          while ((ipAddressLength = dataInputStream.readByte()) != -1)
          {
@@ -717,17 +1169,51 @@ final public class IPAddressRequestMonitor
 
             ipAddressStandingUpdated = dataInputStream.readLong();
 
-            ipAddressRequestSummary = new IPAddressRequestNode();
+            keyHigh = getKeyHigh(ipAddress);
+            keyLow = getKeyLow(ipAddress);
+            placementHash = getPlacementHash(keyHigh, keyLow);
+            segment = getSegment(placementHash);
 
-            // Ensure the visibility of the monitor data to subsequent thread accessors.
-            synchronized (ipAddressRequestSummary)
+            synchronized (segment)
             {
-               ipAddressRequestSummary.setStanding(ipAddressStanding, ipAddressStandingUpdated);
-            }
+               slot = segment.claimSlot(keyHigh, keyLow, placementHash, currentPeriod);
+               segment.initialiseSlot(slot, ipAddressStanding, ipAddressStandingUpdated, currentPeriod.periodNumber);
 
-            requestsByIPAddress.put(InetAddress.getByAddress(ipAddress), ipAddressRequestSummary);
+               if (ipAddressStanding != IPAddressStanding.OK)
+                  addToStandingFilter(placementHash);
+            }
          }
       }
+
+      // The restored IP addresses shouldn't be counted as new arrivals for the first monitor period.
+      housekeepingTask.resetMonitorPeriod();
+
+      // The filter populated during the restoration was created before the number of blocked IP addresses was known, so rebuild it at the right size.
+      housekeepingTask.startStandingFilterRebuild();
+      housekeepingTask.rebuildStandingFilter(Long.MAX_VALUE);
+
+      restorePrefixBlocklist(checkpointPath);
+   }
+
+
+   private void restorePrefixBlocklist(final Path checkpointPath) throws IOException
+   {
+      final File prefixBlocklistFile = checkpointPath.resolve(IPAddressPrefixBlocklistFilename).toFile();
+
+      // Checkpoints saved before the blocklist was introduced won't have the file.
+      if (! prefixBlocklistFile.exists())
+      {
+         prefixBlocklist.clear();
+         return;
+      }
+
+      try
+      (
+         final DataInputStream dataInputStream = CheckpointFileFormat.openInput(prefixBlocklistFile);
+      )
+      {
+         prefixBlocklist.restoreFromCheckpoint(dataInputStream, housekeepingTask.getCurrentMonitorPeriod().periodNumber);
+      }
    }
 
 
@@ -738,6 +1224,8 @@ final public class IPAddressRequestMonitor
 
    private IPMonitorMetrics handleGetMetrics()
    {
+      int totalIPAddressesTracking = 0;
+
       int totalLegalRequestsThisMonitorPeriod = 0;
       int totalErroneousRequestsThisMonitorPeriod = 0;
       int totalDeniedRequestsThisMonitorPeriod = 0;
@@ -745,56 +1233,75 @@ final public class IPAddressRequestMonitor
       int temporarilyBlockedIPAddresses = 0;
       int administratorBlacklistedIPAddresses = 0;
 
-      InetAddress busiestIPAddressThisMonitorPeriod = null;
+      long busiestIPAddressKeyHigh = 0L;
+      long busiestIPAddressKeyLow = 0L;
       int busiestIPAddressRequestsThisMonitorPeriod = 0;
 
-      IPAddressRequestNode ipAddressRequests;
       int ipAddressTotalRequestsThisMonitorPeriod;
 
       // For details on the locking here, refer to the comments at the housekeeping section.
       synchronized (housekeepingTask)
       {
-         for (final Entry<InetAddress, IPAddressRequestNode> ipAddressRequestsEntry : requestsByIPAddress.entrySet())
-         {
-            ipAddressRequests = ipAddressRequestsEntry.getValue();
+         final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
 
-            synchronized (ipAddressRequests)
+         for (final RequestSegment segment : segments)
+         {
+            synchronized (segment)
             {
-               ipAddressTotalRequestsThisMonitorPeriod = ipAddressRequests.totalRequestsThisMonitorPeriod();
-
-               if (ipAddressTotalRequestsThisMonitorPeriod > busiestIPAddressRequestsThisMonitorPeriod)
+               for (int slot = 0; slot < segment.getCapacity(); slot ++)
                {
-                  busiestIPAddressRequestsThisMonitorPeriod = ipAddressTotalRequestsThisMonitorPeriod;
-                  busiestIPAddressThisMonitorPeriod = ipAddressRequestsEntry.getKey();
-               }
+                  if ((segment.ipAddressStandings[slot] == null) || (! segment.isTracked(slot, currentPeriod.periodNumber)))
+                     continue;
 
-               totalLegalRequestsThisMonitorPeriod += ipAddressRequests.legitimateRequestsThisMonitorPeriod;
-               totalErroneousRequestsThisMonitorPeriod += ipAddressRequests.erroneousRequestsThisMonitorPeriod;
-               totalDeniedRequestsThisMonitorPeriod += ipAddressRequests.deniedRequestsThisMonitorPeriod;
+                  totalIPAddressesTracking ++;
 
-               switch (ipAddressRequests.ipAddressStanding)
-               {
-                  case OK:
-                     break;
+                  if (segment.periodNumbers[slot] == currentPeriod.periodNumber)
+                  {
+                     ipAddressTotalRequestsThisMonitorPeriod = segment.getTotalRequests(slot);
+
+                     if (ipAddressTotalRequestsThisMonitorPeriod > busiestIPAddressRequestsThisMonitorPeriod)
+                     {
+                        busiestIPAddressRequestsThisMonitorPeriod = ipAddressTotalRequestsThisMonitorPeriod;
+                        busiestIPAddressKeyHigh = segment.keyHighs[slot];
+                        busiestIPAddressKeyLow = segment.keyLows[slot];
+                     }
+
+                     totalLegalRequestsThisMonitorPeriod += segment.legitimateRequests[slot];
+                     totalErroneousRequestsThisMonitorPeriod += segment.erroneousRequests[slot];
+                     totalDeniedRequestsThisMonitorPeriod += segment.deniedRequests[slot];
+                  }
+
+                  final IPAddressStanding ipAddressStanding = segment.getEffectiveStanding(slot, currentPeriod.periodNumber);
 
-                  case TemporarilyBlocked:
-                     temporarilyBlockedIPAddresses ++;
-                     break;
+                  switch (ipAddressStanding)
+                  {
+                     case OK:
+                        break;
 
-                  case Blacklisted:
-                     administratorBlacklistedIPAddresses ++;
-                     break;
+                     case TemporarilyBlocked:
+                        temporarilyBlockedIPAddresses ++;
+                        break;
 
-                  default:
-                     throw new AssertionError("Unhandled client standing: " + ipAddressRequests.ipAddressStanding);
+                     case Blacklisted:
+                        administratorBlacklistedIPAddresses ++;
+                        break;
+
+                     default:
+                        throw new AssertionError("Unhandled client standing: " + ipAddressStanding);
+                  }
                }
             }
          }
 
-         return new IPMonitorMetrics(isHousekeepingStarted(), monitorFrequencyMinutes, housekeepingTask.getMonitorPeriodStartTime(),
+         final InetAddress busiestIPAddressThisMonitorPeriod = (busiestIPAddressRequestsThisMonitorPeriod > 0) ?
+                                                               getIPAddress(busiestIPAddressKeyHigh, busiestIPAddressKeyLow) : null;
+
+         return new IPMonitorMetrics(isHousekeepingStarted(), monitorFrequencyMinutes, currentPeriod.startTime,
                                      spamRequestsBlockThreshold, erroneousRequestsBlockThreshold,
-                                     requestsByIPAddress.size(), housekeepingTask.newIPAddressesThisMonitorPeriod.get(),
+                                     totalIPAddressesTracking, housekeepingTask.newIPAddressesThisMonitorPeriod.get(),
                                      temporarilyBlockedIPAddresses, administratorBlacklistedIPAddresses,
+                                     prefixBlocklist.getBlockedPrefixes(currentPeriod.periodNumber).size(), prefixBlocklist.getRejectedConnections(),
+                                     standingFilter.getAddedIPAddresses(), standingFilter.getSizeBytes(),
                                      totalLegalRequestsThisMonitorPeriod, totalErroneousRequestsThisMonitorPeriod, totalDeniedRequestsThisMonitorPeriod,
                                      busiestIPAddressThisMonitorPeriod, busiestIPAddressRequestsThisMonitorPeriod);
       }
@@ -804,21 +1311,22 @@ final public class IPAddressRequestMonitor
    private List<BlockedIPAddressMetrics> handleGetBlockedMetrics(final IPAddressStanding targetIPAddressStanding)
    {
       final List<BlockedIPAddressMetrics> blockedIPAddresses = new LinkedList<>();
+      final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
 
-      IPAddressRequestNode ipAddressRequests;
-
-      for (final Entry<InetAddress, IPAddressRequestNode> ipAddressRequestsEntry : requestsByIPAddress.entrySet())
+      for (final RequestSegment segment : segments)
       {
-         ipAddressRequests = ipAddressRequestsEntry.getValue();
-
-         synchronized (ipAddressRequests)
+         synchronized (segment)
          {
-            if (ipAddressRequests.ipAddressStanding == targetIPAddressStanding)
+            for (int slot = 0; slot < segment.getCapacity(); slot ++)
             {
-               final BlockedIPAddressMetrics blockedIPAddressMetrics = new BlockedIPAddressMetrics(ipAddressRequestsEntry.getKey(),
-                                                                                                   ipAddressRequests.ipAddressStandingLastUpdated,
-                                                                                                   ipAddressRequests.deniedRequestsThisMonitorPeriod);
-               blockedIPAddresses.add(blockedIPAddressMetrics);
+               if ((segment.ipAddressStandings[slot] != null) && (segment.getEffectiveStanding(slot, currentPeriod.periodNumber) == targetIPAddressStanding))
+               {
+                  final BlockedIPAddressMetrics blockedIPAddressMetrics = new BlockedIPAddressMetrics(getIPAddress(segment.keyHighs[slot], segment.keyLows[slot]),
+                                                                                                      segment.getEffectiveStandingLastUpdated(slot, currentPeriod),
+                                                                                                      (segment.periodNumbers[slot] == currentPeriod.periodNumber) ?
+                                                                                                      segment.deniedRequests[slot] : 0);
+                  blockedIPAddresses.add(blockedIPAddressMetrics);
+               }
             }
          }
       }
@@ -830,16 +1338,25 @@ final public class IPAddressRequestMonitor
 
    private IPAddressMetrics handleGetIPAddressMetrics(final InetAddress ipAddress)
    {
-      final IPAddressRequestNode ipAddressRequests = requestsByIPAddress.get(ipAddress);
-
-      if (ipAddressRequests == null)
-         return null;
-
-      synchronized (ipAddressRequests)
+      final byte[] addressBytes = ipAddress.getAddress();
+      final long keyHigh = getKeyHigh(addressBytes);
+      final long keyLow = getKeyLow(addressBytes);
+      final long placementHash = getPlacementHash(keyHigh, keyLow);
+      final RequestSegment segment = getSegment(placementHash);
+      final MonitorPeriod currentPeriod = housekeepingTask.getCurrentMonitorPeriod();
+
+      synchronized (segment)
       {
-         return new IPAddressMetrics(ipAddressRequests.ipAddressStanding, ipAddressRequests.ipAddressStandingLastUpdated,
-                                     ipAddressRequests.legitimateRequestsThisMonitorPeriod, ipAddressRequests.erroneousRequestsThisMonitorPeriod,
-                                     ipAddressRequests.deniedRequestsThisMonitorPeriod);
+         final int slot = segment.findSlot(keyHigh, keyLow, placementHash);
+
+         if ((slot == -1) || (! segment.isTracked(slot, currentPeriod.periodNumber)))
+            return null;
+         else if (segment.periodNumbers[slot] == currentPeriod.periodNumber)
+            return new IPAddressMetrics(segment.ipAddressStandings[slot], segment.ipAddressStandingLastUpdatedTimes[slot],
+                                        segment.legitimateRequests[slot], segment.erroneousRequests[slot], segment.deniedRequests[slot]);
+         else
+            return new IPAddressMetrics(segment.getEffectiveStanding(slot, currentPeriod.periodNumber), segment.getEffectiveStandingLastUpdated(slot, currentPeriod),
+                                        0, 0, 0);
       }
    }
 
@@ -885,6 +1402,27 @@ final public class IPAddressRequestMonitor
    }
 
 
+   // Counts the connection as rejected if the IP address is within a blocked range.
+   final public boolean isIPAddressPrefixBlocked(final InetAddress inetAddress)
+   {
+      return handleIsIPAddressPrefixBlocked(inetAddress);
+   }
+
+
+   final public void setIPAddressPrefixBlacklisted(final InetAddress networkAddress, final int prefixLength)
+   {
+      prefixBlocklist.setBlacklisted(new IPAddressPrefixBlocklist.IPAddressPrefix(networkAddress, prefixLength), TimeCache.getCurrentTimeMilliseconds());
+   }
+
+
+   // Returns the standing that the range had before being paroled, or null if it wasn't blocked.
+   final public IPAddressStanding setIPAddressPrefixParoled(final InetAddress networkAddress, final int prefixLength)
+   {
+      return prefixBlocklist.setParoled(new IPAddressPrefixBlocklist.IPAddressPrefix(networkAddress, prefixLength),
+                                        housekeepingTask.getCurrentMonitorPeriod().periodNumber);
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -904,7 +1442,7 @@ final public class IPAddressRequestMonitor
 
    final public long getMonitorPeriodStartTime()
    {
-      return housekeepingTask.getMonitorPeriodStartTime();
+      return housekeepingTask.getCurrentMonitorPeriod().startTime;
    }
 
 
@@ -914,9 +1452,9 @@ final public class IPAddressRequestMonitor
    }
 
 
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      housekeepingTask.start();
+      housekeepingTask.start(housekeepingScheduler);
    }
 
 
@@ -953,4 +1491,10 @@ final public class IPAddressRequestMonitor
    {
       return handleGetIPAddressMetrics(ipAddress);
    }
+
+
+   final public List<BlockedIPAddressPrefixMetrics> getBlockedPrefixMetrics()
+   {
+      return handleGetBlockedPrefixMetrics();
+   }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+/* Memos:
+ * - From the console, try 'benchmark ipmonitor 100000 8' to drive a separate IP address request monitor with 100,000 distinct addresses from 8 threads. The
+ *   live monitor is unaffected.
+ *
+ * - Each simulated request follows the path taken by a real one: a standing check, followed by the report of a legitimate request. One in every
+ *   ErroneousRequestInterval requests is instead reported as erroneous. The block thresholds are set high enough that none of the addresses are blocked
+ *   during the run, so that the figures aren't skewed by the mix of standings.
+ *
+ * - The standing checks are also timed on their own, since with no addresses blocked they're answered by the standing filter without any locking.
+ *
+ * - A fifth of the addresses are IPv6. The addresses are created up front so that their allocation isn't counted against the monitor, and the threads pick
+ *   them at random so that the monitor sees the spread of a busy server rather than repeated hits on a handful of addresses.
+ *
+ * - The retained heap is the difference in heap usage after a full GC between the empty monitor and the monitor tracking every address, ie. the cost of
+ *   tracking the addresses. As with the checkpoint benchmark, run the server with a fixed heap size for comparable results between runs.
+ */
+
+package com.feedbactory.server.network.component;
+
+
+import com.feedbactory.server.FeedbactoryServer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+final public class IPAddressRequestMonitorBenchmark
+{
+   static final private long AddressGenerationSeed = 0x1f2e3d4c5b6a7988L;
+
+   static final private int IPv6AddressInterval = 5;
+   static final private int ErroneousRequestInterval = 100;
+
+   static final private int RequestsPerAddress = 20;
+   static final private int Rounds = 3;
+
+   static final private int GarbageCollectionPasses = 3;
+
+   final private InetAddress[] addresses;
+   final private int threads;
+
+   // Held in a field rather than a local, so that it can't be collected before the heap is measured.
+   private IPAddressRequestMonitor monitor;
+
+
+   private IPAddressRequestMonitorBenchmark(final int addressCount, final int threads) throws UnknownHostException
+   {
+      this.addresses = generateAddresses(addressCount);
+      this.threads = threads;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private InetAddress[] generateAddresses(final int addressCount) throws UnknownHostException
+   {
+      final Random random = new Random(AddressGenerationSeed);
+      final InetAddress[] addresses = new InetAddress[addressCount];
+
+      // A sequence within each address family guarantees that the addresses are distinct, the random prefix spreads them across the address space.
+      final int ipv4Prefix = random.nextInt();
+      final long ipv6Prefix = random.nextLong();
+
+      for (int addressIndex = 0; addressIndex < addressCount; addressIndex ++)
+      {
+         final byte[] addressBytes;
+
+         if ((addressIndex % IPv6AddressInterval) == 0)
+         {
+            addressBytes = new byte[16];
+            random.nextBytes(addressBytes);
+
+            for (int byteIndex = 0; byteIndex < 8; byteIndex ++)
+               addressBytes[byteIndex] = (byte) (ipv6Prefix >>> ((7 - byteIndex) * 8));
+
+            for (int byteIndex = 12; byteIndex < 16; byteIndex ++)
+               addressBytes[byteIndex] = (byte) (addressIndex >>> ((15 - byteIndex) * 8));
+         }
+         else
+         {
+            final int addressBits = ipv4Prefix ^ (addressIndex * 0x9e3779b1);
+
+            addressBytes = new byte[] {(byte) (addressBits >>> 24), (byte) (addressBits >>> 16), (byte) (addressBits >>> 8), (byte) addressBits};
+         }
+
+         addresses[addressIndex] = InetAddress.getByAddress(addressBytes);
+      }
+
+      return addresses;
+   }
+
+
+   static private long getRetainedHeapUsage()
+   {
+      for (int pass = 0; pass < GarbageCollectionPasses; pass ++)
+         System.gc();
+
+      return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private Callable<Void> createRequestTask(final int requests)
+   {
+      return new Callable<Void>()
+      {
+         @Override
+         final public Void call()
+         {
+            final IPAddressRequestMonitor monitor = IPAddressRequestMonitorBenchmark.this.monitor;
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            InetAddress address;
+
+            for (int requestNumber = 1; requestNumber <= requests; requestNumber ++)
+            {
+               address = addresses[random.nextInt(addresses.length)];
+
+               monitor.getIPAddressStanding(address);
+
+               if ((requestNumber % ErroneousRequestInterval) == 0)
+                  monitor.reportErroneousClientRequest(address);
+               else
+                  monitor.reportLegitimateClientRequest(address);
+            }
+
+            return null;
+         }
+      };
+   }
+
+
+   private Callable<Void> createStandingCheckTask(final int requests)
+   {
+      return new Callable<Void>()
+      {
+         @Override
+         final public Void call()
+         {
+            final IPAddressRequestMonitor monitor = IPAddressRequestMonitorBenchmark.this.monitor;
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            for (int requestNumber = 1; requestNumber <= requests; requestNumber ++)
+               monitor.getIPAddressStanding(addresses[random.nextInt(addresses.length)]);
+
+            return null;
+         }
+      };
+   }
+
+
+   private long runRequests(final int totalRequests, final boolean isStandingCheckOnly) throws InterruptedException
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+      try
+      {
+         final List<Callable<Void>> tasks = new ArrayList<>(threads);
+         for (int threadNumber = 0; threadNumber < threads; threadNumber ++)
+            tasks.add(isStandingCheckOnly ? createStandingCheckTask(totalRequests / threads) : createRequestTask(totalRequests / threads));
+
+         final long startTime = System.nanoTime();
+
+         for (final Future<Void> task : executor.invokeAll(tasks))
+            task.get();
+
+         return (System.nanoTime() - startTime);
+      }
+      catch (final ExecutionException executionException)
+      {
+         // The request tasks don't throw any checked exceptions.
+         throw new RuntimeException(executionException.getCause());
+      }
+      finally
+      {
+         executor.shutdown();
+         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+   }
+
+
+   private void runBenchmark() throws InterruptedException
+   {
+      final int totalRequests = addresses.length * RequestsPerAddress;
+
+      monitor = new IPAddressRequestMonitor(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, addresses.length / 10, threads);
+
+      // Populate the monitor with every address, and give the JIT a chance to settle before the timed rounds.
+      for (final InetAddress address : addresses)
+         monitor.reportLegitimateClientRequest(address);
+
+      runRequests(totalRequests, false);
+
+      System.out.format("%,d addresses, %,d requests per round, %d thread%s.%n%n", addresses.length, totalRequests, threads, (threads == 1) ? "" : "s");
+
+      for (int round = 1; round <= Rounds; round ++)
+      {
+         final long durationNanoseconds = runRequests(totalRequests, false);
+
+         System.out.format("Round %d:%,12d ms%,14d requests per second%,10d ns per request%n", round, TimeUnit.NANOSECONDS.toMillis(durationNanoseconds),
+                           (long) (totalRequests / (durationNanoseconds / 1e9d)), (durationNanoseconds * threads) / totalRequests);
+      }
+
+      final long standingCheckDurationNanoseconds = runRequests(totalRequests, true);
+
+      System.out.format("Standing checks:%,8d ms%,14d checks per second%,12d ns per check%n", TimeUnit.NANOSECONDS.toMillis(standingCheckDurationNanoseconds),
+                        (long) (totalRequests / (standingCheckDurationNanoseconds / 1e9d)), (standingCheckDurationNanoseconds * threads) / totalRequests);
+
+      final long metricsStartTime = System.nanoTime();
+      final IPAddressRequestMonitor.IPMonitorMetrics metrics = monitor.getMetrics();
+      final long metricsDurationNanoseconds = System.nanoTime() - metricsStartTime;
+
+      /* Measure the heap with and without the populated monitor, rather than before and after populating it; the first measurement of a benchmark is
+       * skewed by whatever garbage the JVM has been accumulating since startup.
+       */
+      final long populatedHeapBytes = getRetainedHeapUsage();
+      monitor = null;
+      final long retainedHeapBytes = populatedHeapBytes - getRetainedHeapUsage();
+
+      System.out.println();
+      System.out.format("%-35.35s%,d%n", "IP addresses tracking:", metrics.totalIPAddressesTracking);
+      System.out.format("%-35.35s%,d ms%n", "Metrics scan:", TimeUnit.NANOSECONDS.toMillis(metricsDurationNanoseconds));
+      System.out.format("%-35.35s%,d KB (%,d bytes per address)%n", "Retained heap:", retainedHeapBytes / 1024L, retainedHeapBytes / addresses.length);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void handleRunBenchmark(final int addressCount, final int threads) throws IOException, InterruptedException
+   {
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Benchmark cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if (addressCount <= 0)
+         throw new IllegalArgumentException("The number of benchmark addresses must be greater than zero.");
+      else if (threads <= 0)
+         throw new IllegalArgumentException("The number of benchmark threads must be greater than zero.");
+
+      new IPAddressRequestMonitorBenchmark(addressCount, threads).runBenchmark();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public void runBenchmark(final int addressCount, final int threads) throws IOException, InterruptedException
+   {
+      handleRunBenchmark(addressCount, threads);
+   }
+}
@@ -0,0 +1,135 @@
+/* Memos:
+ * - A bloom filter of the IP addresses which aren't in good standing, consulted by the request monitor before it looks up an IP address's standing. Almost
+ *   every IP address is in good standing, and for those the filter can answer on its own, without the monitor locking the IP address's segment. An IP address
+ *   that the filter might contain is looked up as before, so a false positive costs no more than the lookup did previously.
+ *
+ * - The filter must never miss an IP address which isn't in good standing. IP addresses are only ever added: by the monitor, while holding the segment lock,
+ *   at the moment it sets a blocked or blacklisted standing. An IP address which is later reinstated stays in the filter until the monitor builds a fresh
+ *   filter from the current standings and publishes it in place of this one; see IPAddressRequestMonitor.
+ *
+ * - The bits are held in an AtomicLongArray so that lookups are plain volatile reads and additions are lock free. Each IP address sets ProbesPerAddress bits,
+ *   taken from the monitor's placement hash of the address by double hashing. A filter is sized when it's created for the number of IP addresses it's expected
+ *   to hold; if more are added than expected, the false positive rate rises until the next rebuild but the filter is otherwise unaffected.
+ */
+
+package com.feedbactory.server.network.component;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+final class IPAddressStandingFilter
+{
+   // Roughly a 1% false positive rate for the expected number of IP addresses.
+   static final private int BitsPerAddress = 10;
+   static final private int ProbesPerAddress = 5;
+
+   static final private int MinimumCapacityBits = 1 << 14;
+
+   final private AtomicLongArray bits;
+   final private int bitMask;
+
+   final private AtomicInteger addedIPAddresses = new AtomicInteger();
+
+
+   IPAddressStandingFilter(final int expectedIPAddresses)
+   {
+      // Rounded up to a power of two, so that a probe can be placed by masking.
+      final long requiredBits = Math.max(((long) expectedIPAddresses) * BitsPerAddress, MinimumCapacityBits);
+      final int capacityBits = (int) Math.min(Long.highestOneBit(requiredBits - 1) << 1, 1 << 30);
+
+      bits = new AtomicLongArray(capacityBits / 64);
+      bitMask = capacityBits - 1;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // The placement hash is already well mixed, but a further multiplication decorrelates the probes from the segment and slot placement.
+   static private long getFilterHash(final long placementHash)
+   {
+      return placementHash * 0x9e3779b97f4a7c15L;
+   }
+
+
+   private void handleAdd(final long placementHash)
+   {
+      final long filterHash = getFilterHash(placementHash);
+      final int firstProbe = (int) (filterHash >>> 32);
+      final int probeStep = ((int) filterHash) | 1;
+
+      int bit;
+      int wordIndex;
+      long bitValue;
+      long word;
+
+      for (int probe = 0; probe < ProbesPerAddress; probe ++)
+      {
+         bit = (firstProbe + (probe * probeStep)) & bitMask;
+         wordIndex = bit >>> 6;
+         bitValue = 1L << (bit & 63);
+
+         do
+         {
+            word = bits.get(wordIndex);
+         }
+         while (((word & bitValue) == 0L) && (! bits.compareAndSet(wordIndex, word, word | bitValue)));
+      }
+
+      addedIPAddresses.incrementAndGet();
+   }
+
+
+   private boolean handleMightContain(final long placementHash)
+   {
+      final long filterHash = getFilterHash(placementHash);
+      final int firstProbe = (int) (filterHash >>> 32);
+      final int probeStep = ((int) filterHash) | 1;
+
+      int bit;
+
+      for (int probe = 0; probe < ProbesPerAddress; probe ++)
+      {
+         bit = (firstProbe + (probe * probeStep)) & bitMask;
+
+         if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0L)
+            return false;
+      }
+
+      return true;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final void add(final long placementHash)
+   {
+      handleAdd(placementHash);
+   }
+
+
+   final boolean mightContain(final long placementHash)
+   {
+      return handleMightContain(placementHash);
+   }
+
+
+   // The number of additions, which may count an IP address more than once if it has been blocked more than once since the filter was built.
+   final int getAddedIPAddresses()
+   {
+      return addedIPAddresses.get();
+   }
+
+
+   final int getSizeBytes()
+   {
+      return bits.length() * 8;
+   }
+}
@@ -3,6 +3,7 @@ package com.feedbactory.server.network.component;
 
 
 import com.feedbactory.server.core.log.SystemLogLevel;
+import java.net.InetAddress;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.util.concurrent.ExecutorService;
 
@@ -14,6 +15,7 @@ public interface NetworkServerController
    public int getBacklogSize();
    public void incrementActiveConnections();
    public boolean canAcceptNewConnection();
+   public boolean isConnectionBlocked(final InetAddress clientAddress);
    public void newConnectionAccepted(final AsynchronousSocketChannel clientChannel);
    public void reportNetworkServerEvent(final SystemLogLevel logLevel, final String eventMessage);
    public void reportNetworkServerException(final Throwable throwable);
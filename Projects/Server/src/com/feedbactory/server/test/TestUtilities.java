@@ -2,6 +2,7 @@
 package com.feedbactory.server.test;
 
 
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 
@@ -36,11 +37,11 @@ final public class TestUtilities
     ***************************************************************************/
 
 
-   static private String handleCreateRandomAlphanumericString(final int size)
+   static private String handleCreateRandomAlphanumericString(final Random random, final int size)
    {
       final char[] charArray = new char[size];
       for (int charIndex = 0; charIndex < charArray.length; charIndex ++)
-         charArray[charIndex] = symbols[ThreadLocalRandom.current().nextInt(symbols.length)];
+         charArray[charIndex] = symbols[random.nextInt(symbols.length)];
 
       return new String(charArray);
    }
@@ -53,12 +54,25 @@ final public class TestUtilities
 
    static public String createRandomAlphanumericString(final int size)
    {
-      return handleCreateRandomAlphanumericString(size);
+      return handleCreateRandomAlphanumericString(ThreadLocalRandom.current(), size);
    }
 
 
    static public String createRandomAlphanumericString(final int minimumSize, final int maximumSize)
    {
-      return handleCreateRandomAlphanumericString(ThreadLocalRandom.current().nextInt(minimumSize, maximumSize));
+      return handleCreateRandomAlphanumericString(ThreadLocalRandom.current(), ThreadLocalRandom.current().nextInt(minimumSize, maximumSize));
+   }
+
+
+   // For repeatable test data, the caller supplies a seeded generator.
+   static public String createRandomAlphanumericString(final Random random, final int size)
+   {
+      return handleCreateRandomAlphanumericString(random, size);
+   }
+
+
+   static public String createRandomAlphanumericString(final Random random, final int minimumSize, final int maximumSize)
+   {
+      return handleCreateRandomAlphanumericString(random, minimumSize + random.nextInt(maximumSize - minimumSize));
    }
 }
\ No newline at end of file
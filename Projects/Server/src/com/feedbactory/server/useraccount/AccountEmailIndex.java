@@ -0,0 +1,418 @@
+/* Memos:
+ * - The index of accounts by email: active emails, previously confirmed emails, and pending emails. It replaces a map keyed by the normalised (lower cased)
+ *   email strings, which needed a freshly lower cased copy of the email for every lookup, and after a checkpoint restore held a second copy of every email
+ *   string alongside the one already held by its account.
+ *
+ * - Emails are keyed by a 64-bit hash of their normalised form, computed a character at a time from the email as supplied so that a lookup allocates
+ *   nothing. A matching hash is always verified by comparing the supplied email against the stored email, again a character at a time, so a hash
+ *   collision can never resolve to the wrong account. See UserAccountUtilities.isEquivalentEmail().
+ *
+ * - The stored email for an entry is the account's own active or pending email string where it matches, rather than the key that the caller supplied; only the
+ *   keys for previously confirmed emails need their own copy. The account's email may later change case via an email update, but the stored copy remains
+ *   equivalent and it's only ever used for verification.
+ *
+ * - As for the IP address request monitor, the entries are held in an open addressed table of primitive arrays split into segments, each guarded by its own
+ *   lock. Removals shift the following entries of the probe run back into the vacated slot rather than leaving tombstones, so lookup performance doesn't
+ *   degrade over time as pending emails come and go. A segment grows when it fills; it never shrinks.
+ *
+ * - The operations mirror those of the ConcurrentHashMap previously used, including the conditional removal, so the account manager's reasoning regarding
+ *   its concurrency is unchanged.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+
+final class AccountEmailIndex
+{
+   static final private int MinimumSegmentCapacity = 16;
+   static final private float SegmentLoadFactor = 0.75f;
+
+   final private int initialSegmentCapacity;
+   final private EmailSegment[] segments;
+
+
+   AccountEmailIndex(final int initialEmailCapacity, final int concurrency)
+   {
+      // Rounded up to a power of two, so that a segment can be selected by masking the email hash.
+      final int segmentCount = Math.max(Integer.highestOneBit(Math.max(concurrency, 1) - 1) << 1, 1);
+
+      final int segmentEmailCapacity = (int) Math.ceil(initialEmailCapacity / (segmentCount * SegmentLoadFactor));
+      initialSegmentCapacity = Math.max(segmentEmailCapacity, MinimumSegmentCapacity);
+
+      segments = new EmailSegment[segmentCount];
+      for (int segmentIndex = 0; segmentIndex < segmentCount; segmentIndex ++)
+         segments[segmentIndex] = new EmailSegment(initialSegmentCapacity);
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // Caller must be sync'd on the segment for all of the slot operations. A slot having a null account is empty.
+   final private class EmailSegment
+   {
+      private long[] emailHashes;
+      private String[] emails;
+      private FeedbactoryUserAccount[] accounts;
+
+      private int occupiedSlots;
+
+
+      private EmailSegment(final int capacity)
+      {
+         allocate(capacity);
+      }
+
+
+      private void allocate(final int capacity)
+      {
+         emailHashes = new long[capacity];
+         emails = new String[capacity];
+         accounts = new FeedbactoryUserAccount[capacity];
+
+         occupiedSlots = 0;
+      }
+
+
+      private int getCapacity()
+      {
+         return emailHashes.length;
+      }
+
+
+      // The capacity isn't restricted to powers of two, so the first slot is taken from the hash by multiplication rather than masking.
+      private int getFirstSlot(final long emailHash)
+      {
+         return (int) (((emailHash & 0xFFFFFFFFL) * getCapacity()) >>> 32);
+      }
+
+
+      private int getNextSlot(final int slot)
+      {
+         return ((slot + 1) < getCapacity()) ? (slot + 1) : 0;
+      }
+
+
+      private int findSlot(final String email, final long emailHash)
+      {
+         int slot = getFirstSlot(emailHash);
+
+         while (accounts[slot] != null)
+         {
+            if ((emailHashes[slot] == emailHash) && UserAccountUtilities.isEquivalentEmail(emails[slot], email))
+               return slot;
+
+            slot = getNextSlot(slot);
+         }
+
+         return -1;
+      }
+
+
+      private void insert(final long emailHash, final String storedEmail, final FeedbactoryUserAccount account)
+      {
+         if ((occupiedSlots + 1) > (getCapacity() * SegmentLoadFactor))
+            rehash();
+
+         int slot = getFirstSlot(emailHash);
+         while (accounts[slot] != null)
+            slot = getNextSlot(slot);
+
+         emailHashes[slot] = emailHash;
+         emails[slot] = storedEmail;
+         accounts[slot] = account;
+
+         occupiedSlots ++;
+      }
+
+
+      private void rehash()
+      {
+         final long[] oldEmailHashes = emailHashes;
+         final String[] oldEmails = emails;
+         final FeedbactoryUserAccount[] oldAccounts = accounts;
+
+         allocate(oldEmailHashes.length + (oldEmailHashes.length / 2));
+
+         int newSlot;
+
+         for (int slot = 0; slot < oldEmailHashes.length; slot ++)
+         {
+            if (oldAccounts[slot] == null)
+               continue;
+
+            newSlot = getFirstSlot(oldEmailHashes[slot]);
+            while (accounts[newSlot] != null)
+               newSlot = getNextSlot(newSlot);
+
+            emailHashes[newSlot] = oldEmailHashes[slot];
+            emails[newSlot] = oldEmails[slot];
+            accounts[newSlot] = oldAccounts[slot];
+
+            occupiedSlots ++;
+         }
+      }
+
+
+      /* Vacate the slot, shifting back any following entries of the probe run that would otherwise no longer be reachable from their first slot.
+       * An entry can fill the hole unless its first slot lies cyclically within (hole, slot], ie. the entry is already as close to its first slot as the hole.
+       */
+      private void removeSlot(final int removedSlot)
+      {
+         int holeSlot = removedSlot;
+         int slot = getNextSlot(removedSlot);
+         int firstSlot;
+
+         while (accounts[slot] != null)
+         {
+            firstSlot = getFirstSlot(emailHashes[slot]);
+
+            if ((holeSlot <= slot) ? ((firstSlot <= holeSlot) || (firstSlot > slot)) : ((firstSlot <= holeSlot) && (firstSlot > slot)))
+            {
+               emailHashes[holeSlot] = emailHashes[slot];
+               emails[holeSlot] = emails[slot];
+               accounts[holeSlot] = accounts[slot];
+
+               holeSlot = slot;
+            }
+
+            slot = getNextSlot(slot);
+         }
+
+         emailHashes[holeSlot] = 0L;
+         emails[holeSlot] = null;
+         accounts[holeSlot] = null;
+
+         occupiedSlots --;
+      }
+
+
+      private void clear()
+      {
+         allocate(initialSegmentCapacity);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // See the class memos. The caller must be sync'd on the account, or otherwise ensure the visibility of its email fields.
+   static private String getStoredEmail(final String email, final FeedbactoryUserAccount account)
+   {
+      if ((account.getEmail() != null) && UserAccountUtilities.isEquivalentEmail(account.getEmail(), email))
+         return account.getEmail();
+      else if ((account.getPendingEmail() != null) && UserAccountUtilities.isEquivalentEmail(account.getPendingEmail(), email))
+         return account.getPendingEmail();
+      else
+         return email;
+   }
+
+
+   static private long getEmailHash(final String email)
+   {
+      // FNV-1a over the normalised characters, followed by a 64-bit finaliser to spread the bits used for the segment and slot placement.
+      long emailHash = 0xcbf29ce484222325L;
+
+      for (int charIndex = 0; charIndex < email.length(); charIndex ++)
+      {
+         emailHash ^= UserAccountUtilities.getNormalisedEmailCharacter(email.charAt(charIndex));
+         emailHash *= 0x100000001b3L;
+      }
+
+      emailHash ^= (emailHash >>> 33);
+      emailHash *= 0xff51afd7ed558ccdL;
+      emailHash ^= (emailHash >>> 33);
+      emailHash *= 0xc4ceb9fe1a85ec53L;
+      emailHash ^= (emailHash >>> 33);
+
+      return emailHash;
+   }
+
+
+   private EmailSegment getSegment(final long emailHash)
+   {
+      return segments[((int) (emailHash >>> 32)) & (segments.length - 1)];
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private FeedbactoryUserAccount handleGet(final String email)
+   {
+      final long emailHash = getEmailHash(email);
+      final EmailSegment segment = getSegment(emailHash);
+
+      synchronized (segment)
+      {
+         final int slot = segment.findSlot(email, emailHash);
+         return (slot != -1) ? segment.accounts[slot] : null;
+      }
+   }
+
+
+   private FeedbactoryUserAccount handlePut(final String email, final FeedbactoryUserAccount account, final boolean onlyIfAbsent)
+   {
+      final long emailHash = getEmailHash(email);
+      final EmailSegment segment = getSegment(emailHash);
+      final String storedEmail = getStoredEmail(email, account);
+
+      synchronized (segment)
+      {
+         final int slot = segment.findSlot(email, emailHash);
+
+         if (slot == -1)
+         {
+            segment.insert(emailHash, storedEmail, account);
+            return null;
+         }
+
+         final FeedbactoryUserAccount existingAccount = segment.accounts[slot];
+
+         if (! onlyIfAbsent)
+         {
+            segment.emails[slot] = storedEmail;
+            segment.accounts[slot] = account;
+         }
+
+         return existingAccount;
+      }
+   }
+
+
+   private boolean handleRemove(final String email, final FeedbactoryUserAccount account)
+   {
+      final long emailHash = getEmailHash(email);
+      final EmailSegment segment = getSegment(emailHash);
+
+      synchronized (segment)
+      {
+         final int slot = segment.findSlot(email, emailHash);
+
+         if ((slot == -1) || ((account != null) && (segment.accounts[slot] != account)))
+            return false;
+
+         segment.removeSlot(slot);
+         return true;
+      }
+   }
+
+
+   private int handleSize()
+   {
+      int size = 0;
+
+      for (final EmailSegment segment : segments)
+      {
+         synchronized (segment)
+         {
+            size += segment.occupiedSlots;
+         }
+      }
+
+      return size;
+   }
+
+
+   /* The entries are keyed by the stored email, which isn't necessarily normalised. Each segment is copied under its lock, but as for the iterator of a
+    * ConcurrentHashMap, the snapshot as a whole isn't atomic.
+    */
+   private List<Entry<String, FeedbactoryUserAccount>> handleGetEntries()
+   {
+      final List<Entry<String, FeedbactoryUserAccount>> entries = new ArrayList<>(handleSize());
+
+      for (final EmailSegment segment : segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < segment.getCapacity(); slot ++)
+            {
+               if (segment.accounts[slot] != null)
+                  entries.add(new AbstractMap.SimpleImmutableEntry<>(segment.emails[slot], segment.accounts[slot]));
+            }
+         }
+      }
+
+      return entries;
+   }
+
+
+   private void handleClear()
+   {
+      for (final EmailSegment segment : segments)
+      {
+         synchronized (segment)
+         {
+            segment.clear();
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final FeedbactoryUserAccount get(final String email)
+   {
+      return handleGet(email);
+   }
+
+
+   final FeedbactoryUserAccount put(final String email, final FeedbactoryUserAccount account)
+   {
+      return handlePut(email, account, false);
+   }
+
+
+   final FeedbactoryUserAccount putIfAbsent(final String email, final FeedbactoryUserAccount account)
+   {
+      return handlePut(email, account, true);
+   }
+
+
+   final boolean remove(final String email)
+   {
+      return handleRemove(email, null);
+   }
+
+
+   final boolean remove(final String email, final FeedbactoryUserAccount account)
+   {
+      return handleRemove(email, account);
+   }
+
+
+   final int size()
+   {
+      return handleSize();
+   }
+
+
+   final List<Entry<String, FeedbactoryUserAccount>> getEntries()
+   {
+      return handleGetEntries();
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+}
@@ -0,0 +1,102 @@
+/* Memos:
+ * - A time ordered index of the account expiries that the housekeeping task must eventually act upon, so that each run only needs to visit the entries
+ *   that have fallen due rather than every account.
+ *
+ * - Entries are only ever added by the account manager, never removed when a code is cleared or reissued. The housekeeping task rechecks the account
+ *   state under the account lock when an entry falls due, and simply discards the entry if the expiry no longer applies. Reissuing a code produces a new
+ *   entry having the later expiry time, which will be acted upon in its own turn.
+ *
+ * - The set ordering doubles as the identity of the entries, so adding the same expiry for an account more than once is harmless. This allows the account
+ *   manager to index an account's outstanding expiries after every change without having to track which of them have already been indexed.
+ *
+ * - Only the housekeeping thread removes entries, so there's no race between taking the first entry and putting it back if it turns out not to be due.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+
+final class AccountExpiryIndex
+{
+   static enum ExpiryType
+   {
+      PendingAccount,
+      PendingEmail,
+      PasswordResetCode;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static final class ExpiryEntry implements Comparable<ExpiryEntry>
+   {
+      final long expiryTime;
+      final int accountID;
+      final ExpiryType expiryType;
+
+
+      private ExpiryEntry(final long expiryTime, final int accountID, final ExpiryType expiryType)
+      {
+         this.expiryTime = expiryTime;
+         this.accountID = accountID;
+         this.expiryType = expiryType;
+      }
+
+
+      @Override
+      final public int compareTo(final ExpiryEntry otherEntry)
+      {
+         if (expiryTime != otherEntry.expiryTime)
+            return (expiryTime < otherEntry.expiryTime) ? -1 : 1;
+         else if (accountID != otherEntry.accountID)
+            return (accountID < otherEntry.accountID) ? -1 : 1;
+         else
+            return expiryType.compareTo(otherEntry.expiryType);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final private ConcurrentSkipListSet<ExpiryEntry> entries = new ConcurrentSkipListSet<>();
+
+
+   final void addExpiry(final int accountID, final ExpiryType expiryType, final long expiryTime)
+   {
+      entries.add(new ExpiryEntry(expiryTime, accountID, expiryType));
+   }
+
+
+   // Housekeeping thread only.
+   final ExpiryEntry pollDueExpiry(final long currentTime)
+   {
+      final ExpiryEntry firstEntry = entries.pollFirst();
+
+      if ((firstEntry == null) || (firstEntry.expiryTime <= currentTime))
+         return firstEntry;
+
+      entries.add(firstEntry);
+      return null;
+   }
+
+
+   // Unlike size() for most collections, this is a traversal of the index.
+   final int getIndexedExpiries()
+   {
+      return entries.size();
+   }
+
+
+   final void clear()
+   {
+      entries.clear();
+   }
+}
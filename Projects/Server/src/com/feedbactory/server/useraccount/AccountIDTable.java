@@ -0,0 +1,366 @@
+/* Memos:
+ * - The table of accounts by ID. Account IDs are handed out in sequence by the account manager's counter and never reused, so rather than boxing each ID
+ *   and hashing it into a ConcurrentHashMap, the account is held at its ID's position in a table of fixed size array segments. A lookup is a shift and a
+ *   mask, and each account costs a single array slot rather than a map node and a boxed Integer key.
+ *
+ * - Lookups take no locks. The segments are AtomicReferenceArrays, so a slot read is a volatile read, and the directory of segments is copied whenever a
+ *   segment is allocated or released and republished via a volatile field, so a lookup always sees fully constructed segments. Updates are rare next to
+ *   lookups - sign ups, expiries, and checkpoint restoration - and they are serialised on a single lock, which also guards the live account counts.
+ *
+ * - A removed account leaves an empty slot behind as a tombstone. Since IDs aren't reused, the slot will only ever be filled again by the restoration of that
+ *   same account, so nothing needs to be shifted or rehashed. Each segment counts its live accounts, and compaction releases the segments whose accounts
+ *   have all been removed, eg. a run of sign ups which were never activated. The segment at the end of the directory is kept, since new IDs are still being
+ *   assigned within it. A segment having only a few live accounts is kept whole, as it has to be for the accounts to remain indexed by their ID.
+ *
+ * - The operations mirror those of the ConcurrentHashMap previously used, including the conditional removal and the weakly consistent iteration, so the
+ *   account manager's reasoning regarding its concurrency is unchanged.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+final class AccountIDTable
+{
+   static final private int SegmentShift = 12;
+   static final private int SegmentCapacity = 1 << SegmentShift;
+   static final private int SegmentMask = SegmentCapacity - 1;
+
+   static final private AccountSegment[] EmptyDirectory = new AccountSegment[0];
+
+   final private Object updateLock = new Object();
+
+   volatile private AccountSegment[] directory = EmptyDirectory;
+
+   // Written under the update lock, read by the size and metrics methods without it.
+   volatile private int size;
+   volatile private int releasedSegments;
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class AccountSegment
+   {
+      final private AtomicReferenceArray<FeedbactoryUserAccount> accounts = new AtomicReferenceArray<>(SegmentCapacity);
+
+      // Guarded by the update lock.
+      private int liveAccounts;
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class AccountIterator implements Iterator<FeedbactoryUserAccount>
+   {
+      final private AccountSegment[] iterationDirectory = directory;
+
+      private int segmentIndex;
+      private int slot = -1;
+      private FeedbactoryUserAccount nextAccount;
+
+
+      private AccountIterator()
+      {
+         advance();
+      }
+
+
+      private void advance()
+      {
+         AccountSegment segment;
+
+         for (; segmentIndex < iterationDirectory.length; segmentIndex ++, slot = -1)
+         {
+            segment = iterationDirectory[segmentIndex];
+
+            if (segment == null)
+               continue;
+
+            while ((++ slot) < SegmentCapacity)
+            {
+               nextAccount = segment.accounts.get(slot);
+
+               if (nextAccount != null)
+                  return;
+            }
+         }
+
+         nextAccount = null;
+      }
+
+
+      @Override
+      final public boolean hasNext()
+      {
+         return (nextAccount != null);
+      }
+
+
+      @Override
+      final public FeedbactoryUserAccount next()
+      {
+         if (nextAccount == null)
+            throw new NoSuchElementException();
+
+         final FeedbactoryUserAccount account = nextAccount;
+         advance();
+
+         return account;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private int getSegmentIndex(final int accountID)
+   {
+      return (accountID >>> SegmentShift);
+   }
+
+
+   // Caller must hold the update lock.
+   private AccountSegment getOrAllocateSegment(final int accountID)
+   {
+      final int segmentIndex = getSegmentIndex(accountID);
+      AccountSegment[] updatedDirectory = directory;
+
+      if ((segmentIndex < updatedDirectory.length) && (updatedDirectory[segmentIndex] != null))
+         return updatedDirectory[segmentIndex];
+
+      updatedDirectory = copyDirectory(updatedDirectory, Math.max(segmentIndex + 1, updatedDirectory.length));
+
+      final AccountSegment segment = new AccountSegment();
+      updatedDirectory[segmentIndex] = segment;
+      directory = updatedDirectory;
+
+      return segment;
+   }
+
+
+   static private AccountSegment[] copyDirectory(final AccountSegment[] sourceDirectory, final int length)
+   {
+      final AccountSegment[] copiedDirectory = new AccountSegment[length];
+      System.arraycopy(sourceDirectory, 0, copiedDirectory, 0, Math.min(sourceDirectory.length, length));
+
+      return copiedDirectory;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private FeedbactoryUserAccount handleGet(final int accountID)
+   {
+      final AccountSegment[] lookupDirectory = directory;
+      final int segmentIndex = getSegmentIndex(accountID);
+
+      // The unsigned shift places any negative ID beyond the end of the directory.
+      if (segmentIndex >= lookupDirectory.length)
+         return null;
+
+      final AccountSegment segment = lookupDirectory[segmentIndex];
+      return (segment != null) ? segment.accounts.get(accountID & SegmentMask) : null;
+   }
+
+
+   private FeedbactoryUserAccount handlePut(final int accountID, final FeedbactoryUserAccount account)
+   {
+      if (accountID < 0)
+         throw new IllegalArgumentException("Invalid account ID: " + accountID);
+
+      synchronized (updateLock)
+      {
+         final AccountSegment segment = getOrAllocateSegment(accountID);
+         final FeedbactoryUserAccount existingAccount = segment.accounts.getAndSet(accountID & SegmentMask, account);
+
+         if (existingAccount == null)
+         {
+            segment.liveAccounts ++;
+            size ++;
+         }
+
+         return existingAccount;
+      }
+   }
+
+
+   private FeedbactoryUserAccount handleRemove(final int accountID, final FeedbactoryUserAccount account)
+   {
+      synchronized (updateLock)
+      {
+         final AccountSegment[] updatedDirectory = directory;
+         final int segmentIndex = getSegmentIndex(accountID);
+
+         if ((segmentIndex >= updatedDirectory.length) || (updatedDirectory[segmentIndex] == null))
+            return null;
+
+         final AccountSegment segment = updatedDirectory[segmentIndex];
+         final int slot = accountID & SegmentMask;
+         final FeedbactoryUserAccount existingAccount = segment.accounts.get(slot);
+
+         if ((existingAccount == null) || ((account != null) && (existingAccount != account)))
+            return null;
+
+         segment.accounts.set(slot, null);
+         segment.liveAccounts --;
+         size --;
+
+         return existingAccount;
+      }
+   }
+
+
+   private int handleCompact()
+   {
+      synchronized (updateLock)
+      {
+         final AccountSegment[] existingDirectory = directory;
+         AccountSegment[] updatedDirectory = null;
+
+         // The last segment is left in place, see the class memos.
+         for (int segmentIndex = 0; segmentIndex < (existingDirectory.length - 1); segmentIndex ++)
+         {
+            if ((existingDirectory[segmentIndex] != null) && (existingDirectory[segmentIndex].liveAccounts == 0))
+            {
+               if (updatedDirectory == null)
+                  updatedDirectory = copyDirectory(existingDirectory, existingDirectory.length);
+
+               updatedDirectory[segmentIndex] = null;
+            }
+         }
+
+         if (updatedDirectory == null)
+            return 0;
+
+         final int compactedSegments = getAllocatedSegments(existingDirectory) - getAllocatedSegments(updatedDirectory);
+
+         directory = updatedDirectory;
+         releasedSegments += compactedSegments;
+
+         return compactedSegments;
+      }
+   }
+
+
+   static private int getAllocatedSegments(final AccountSegment[] segmentDirectory)
+   {
+      int allocatedSegments = 0;
+
+      for (final AccountSegment segment : segmentDirectory)
+      {
+         if (segment != null)
+            allocatedSegments ++;
+      }
+
+      return allocatedSegments;
+   }
+
+
+   private void handleClear()
+   {
+      synchronized (updateLock)
+      {
+         directory = EmptyDirectory;
+         size = 0;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final FeedbactoryUserAccount get(final int accountID)
+   {
+      return handleGet(accountID);
+   }
+
+
+   final FeedbactoryUserAccount put(final int accountID, final FeedbactoryUserAccount account)
+   {
+      return handlePut(accountID, account);
+   }
+
+
+   final FeedbactoryUserAccount remove(final int accountID)
+   {
+      return handleRemove(accountID, null);
+   }
+
+
+   final boolean remove(final int accountID, final FeedbactoryUserAccount account)
+   {
+      return (handleRemove(accountID, account) != null);
+   }
+
+
+   final int size()
+   {
+      return size;
+   }
+
+
+   // As for the values of a ConcurrentHashMap, the iteration is weakly consistent: it reflects the segments as they were when it started.
+   final Iterable<FeedbactoryUserAccount> values()
+   {
+      return new Iterable<FeedbactoryUserAccount>()
+      {
+         @Override
+         final public Iterator<FeedbactoryUserAccount> iterator()
+         {
+            return new AccountIterator();
+         }
+      };
+   }
+
+
+   // Returns the number of segments released.
+   final int compact()
+   {
+      return handleCompact();
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+
+
+   final int getAllocatedSegments()
+   {
+      return getAllocatedSegments(directory);
+   }
+
+
+   final int getReleasedSegments()
+   {
+      return releasedSegments;
+   }
+
+
+   final int getSlotCapacity()
+   {
+      return getAllocatedSegments() * SegmentCapacity;
+   }
+}
@@ -0,0 +1,231 @@
+/* Memos:
+ * - From the console, try 'benchmark accounttable 1000000 8' to compare lookups by account ID on the account ID table against the ConcurrentHashMap that it
+ *   replaced, for 1,000,000 accounts from 8 threads. The live account manager is unaffected.
+ *
+ * - Both collections are populated with the same account objects, and one in every ExpiredAccountInterval accounts is then removed from each, as for a
+ *   sign up which was never activated, so that the table's lookups run over its tombstones. The lookups pick IDs at random across the whole range of
+ *   assigned IDs, as the session and feedback request paths would, so a share of them land on removed accounts.
+ *
+ * - The accounts are held by the benchmark for the whole run, so the retained heap figure for each collection is only the cost of indexing the accounts, ie.
+ *   the map nodes and boxed keys, or the table segments. As with the other benchmarks, run the server with a fixed heap size for comparable results between runs.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import com.feedbactory.server.FeedbactoryServer;
+import com.feedbactory.server.core.FeedbactoryServerConstants;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+final public class AccountIDTableBenchmark
+{
+   static final private int ExpiredAccountInterval = 10;
+
+   static final private int LookupsPerAccount = 20;
+   static final private int Rounds = 3;
+
+   static final private int GarbageCollectionPasses = 3;
+
+   final private FeedbactoryUserAccount[] accounts;
+   final private int threads;
+
+   // Held in fields rather than locals, so that they can't be collected before the heap is measured.
+   private ConcurrentHashMap<Integer, FeedbactoryUserAccount> accountsMap;
+   private AccountIDTable accountsTable;
+
+
+   private AccountIDTableBenchmark(final int accountCount, final int threads)
+   {
+      accounts = new FeedbactoryUserAccount[accountCount];
+      for (int accountID = 0; accountID < accountCount; accountID ++)
+         accounts[accountID] = new FeedbactoryUserAccount(accountID, 0L);
+
+      this.threads = threads;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private long getRetainedHeapUsage()
+   {
+      for (int pass = 0; pass < GarbageCollectionPasses; pass ++)
+         System.gc();
+
+      return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // The found accounts are counted and returned so that the JIT can't discard the lookups.
+   private Callable<Integer> createLookupTask(final int lookups, final boolean useTable)
+   {
+      return new Callable<Integer>()
+      {
+         @Override
+         final public Integer call()
+         {
+            final ConcurrentHashMap<Integer, FeedbactoryUserAccount> accountsMap = AccountIDTableBenchmark.this.accountsMap;
+            final AccountIDTable accountsTable = AccountIDTableBenchmark.this.accountsTable;
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            int foundAccounts = 0;
+
+            if (useTable)
+            {
+               for (int lookupNumber = 0; lookupNumber < lookups; lookupNumber ++)
+               {
+                  if (accountsTable.get(random.nextInt(accounts.length)) != null)
+                     foundAccounts ++;
+               }
+            }
+            else
+            {
+               for (int lookupNumber = 0; lookupNumber < lookups; lookupNumber ++)
+               {
+                  if (accountsMap.get(random.nextInt(accounts.length)) != null)
+                     foundAccounts ++;
+               }
+            }
+
+            return foundAccounts;
+         }
+      };
+   }
+
+
+   private long runLookups(final int totalLookups, final boolean useTable) throws InterruptedException
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+      try
+      {
+         final List<Callable<Integer>> tasks = new ArrayList<>(threads);
+         for (int threadNumber = 0; threadNumber < threads; threadNumber ++)
+            tasks.add(createLookupTask(totalLookups / threads, useTable));
+
+         final long startTime = System.nanoTime();
+
+         for (final Future<Integer> task : executor.invokeAll(tasks))
+            task.get();
+
+         return (System.nanoTime() - startTime);
+      }
+      catch (final ExecutionException executionException)
+      {
+         // The lookup tasks don't throw any checked exceptions.
+         throw new RuntimeException(executionException.getCause());
+      }
+      finally
+      {
+         executor.shutdown();
+         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+   }
+
+
+   private void printLookupRound(final String label, final int totalLookups, final long durationNanoseconds)
+   {
+      System.out.format("%-14.14s%,10d ms%,14d lookups per second%,8d ns per lookup%n", label, TimeUnit.NANOSECONDS.toMillis(durationNanoseconds),
+                        (long) (totalLookups / (durationNanoseconds / 1e9d)), (durationNanoseconds * threads) / totalLookups);
+   }
+
+
+   private void runBenchmark() throws InterruptedException
+   {
+      final int totalLookups = accounts.length * LookupsPerAccount;
+
+      accountsMap = new ConcurrentHashMap<>(UserAccountManager.AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+      accountsTable = new AccountIDTable();
+
+      for (final FeedbactoryUserAccount account : accounts)
+      {
+         accountsMap.put(account.getID(), account);
+         accountsTable.put(account.getID(), account);
+      }
+
+      for (int accountID = 0; accountID < accounts.length; accountID += ExpiredAccountInterval)
+      {
+         accountsMap.remove(accountID);
+         accountsTable.remove(accountID);
+      }
+
+      accountsTable.compact();
+
+      // Give the JIT a chance to settle before the timed rounds.
+      runLookups(totalLookups, false);
+      runLookups(totalLookups, true);
+
+      System.out.format("%,d accounts (%,d removed), %,d lookups per round, %d thread%s.%n%n", accounts.length, accounts.length - accountsTable.size(),
+                        totalLookups, threads, (threads == 1) ? "" : "s");
+
+      for (int round = 1; round <= Rounds; round ++)
+      {
+         printLookupRound("Round " + round + " map:", totalLookups, runLookups(totalLookups, false));
+         printLookupRound("Round " + round + " table:", totalLookups, runLookups(totalLookups, true));
+      }
+
+      // As for the IP address monitor benchmark, measure the heap with and without each populated collection.
+      final long populatedHeapBytes = getRetainedHeapUsage();
+      accountsTable = null;
+      final long mapHeapBytes = getRetainedHeapUsage();
+      accountsMap = null;
+      final long emptyHeapBytes = getRetainedHeapUsage();
+
+      final long tableRetainedHeapBytes = populatedHeapBytes - mapHeapBytes;
+      final long mapRetainedHeapBytes = mapHeapBytes - emptyHeapBytes;
+      final int liveAccounts = accounts.length - ((accounts.length + ExpiredAccountInterval - 1) / ExpiredAccountInterval);
+
+      System.out.println();
+      System.out.format("%-35.35s%,d KB (%,d bytes per account)%n", "Map retained heap:", mapRetainedHeapBytes / 1024L,
+                        mapRetainedHeapBytes / Math.max(liveAccounts, 1));
+      System.out.format("%-35.35s%,d KB (%,d bytes per account)%n", "Table retained heap:", tableRetainedHeapBytes / 1024L,
+                        tableRetainedHeapBytes / Math.max(liveAccounts, 1));
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void handleRunBenchmark(final int accountCount, final int threads) throws InterruptedException
+   {
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Benchmark cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if (accountCount <= 0)
+         throw new IllegalArgumentException("The number of benchmark accounts must be greater than zero.");
+      else if (threads <= 0)
+         throw new IllegalArgumentException("The number of benchmark threads must be greater than zero.");
+
+      new AccountIDTableBenchmark(accountCount, threads).runBenchmark();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public void runBenchmark(final int accountCount, final int threads) throws InterruptedException
+   {
+      handleRunBenchmark(accountCount, threads);
+   }
+}
@@ -0,0 +1,921 @@
+/* Memos:
+ * - A fixed memory replacement for the map of per IP address objects (each holding a map of per email objects) that was previously used to track failed
+ *   authentications. During a credential stuffing attack that collection would grow into millions of small objects at exactly the time when the server
+ *   could least afford it, and needed a periodic housekeeping sweep over every entry to age them out.
+ *
+ * - Two open addressed tables of primitive arrays are allocated up front: one keyed by IP address, and one keyed by a hash of the IP address and
+ *   normalised email. Each table is split into segments which are individually locked, and a key is only ever probed for within a short run of slots in
+ *   its segment, so every lookup and update is O(1) and holds one segment lock for a handful of array reads.
+ *
+ * - IPv4 addresses are packed into the key as is. IPv6 addresses are keyed by their /64 prefix, since a single subscriber is commonly allocated an entire
+ *   /64 and could otherwise sidestep the lockout by cycling through its addresses. The email keys are 64-bit hashes, so the tracker never holds the emails
+ *   themselves; the hash seed is random per instance (and persisted with the checkpoint) so that emails can't be crafted offline to collide in the tables.
+ *
+ * - Each slot counts the failed authentications in a sliding window, approximated by the counts of the current and the previous fixed windows with the
+ *   previous count weighted by how much of it still overlaps the sliding window. It's a well known approximation which never needs more than two counters,
+ *   and since the window numbers are derived from the clock the counts age out on their own. A slot whose counts have aged out (and whose IP address
+ *   lockout, if any, has expired) is simply reused by the next key that probes into it; there's no housekeeping sweep.
+ *
+ * - If every slot in a key's probe run is live, the least recently active slot is evicted, preferring one that isn't locked out. The evictions are counted
+ *   in the metrics; a steadily climbing count means that the tables should be made larger.
+ *
+ * - The lockout check and the recording of a failed authentication are separate operations, so unlike the previous per IP address lock, concurrent
+ *   requests from the same IP address aren't serialised through the whole authentication. A burst of parallel requests may overshoot the thresholds by a few
+ *   attempts before the lockout registers, which is a fair trade for not holding a lock across the account authentication.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import com.feedbactory.server.core.TimeCache;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+final class FailedAuthenticationTracker
+{
+   static final private int SegmentCount = 64;
+   static final private int SegmentIndexShift = Long.SIZE - Integer.numberOfTrailingZeros(SegmentCount);
+
+   static final private int IPAddressSlotsPerSegment = 1024;
+   static final private int EmailSlotsPerSegment = 4096;
+
+   static final private int MaximumProbeLength = 8;
+
+   static final private long NoKey = 0L;
+   static final private long IPv4KeyMarker = 0xFFFFL << 32;
+   static final private long IPv6ZeroPrefixKey = 1L;
+
+   final private long ipAddressMonitorPeriodMilliseconds;
+   final private int ipAddressLockoutThreshold;
+   final private long ipAddressLockoutPeriodMilliseconds;
+
+   final private long emailMonitorPeriodMilliseconds;
+   final private int emailLockoutThreshold;
+
+   final private CounterTable ipAddressTable;
+   final private CounterTable emailTable;
+
+   volatile private long hashSeed = new SecureRandom().nextLong();
+
+
+   FailedAuthenticationTracker(final long ipAddressMonitorPeriodMilliseconds, final int ipAddressLockoutThreshold, final long ipAddressLockoutPeriodMilliseconds,
+                               final long emailMonitorPeriodMilliseconds, final int emailLockoutThreshold)
+   {
+      this.ipAddressMonitorPeriodMilliseconds = ipAddressMonitorPeriodMilliseconds;
+      this.ipAddressLockoutThreshold = ipAddressLockoutThreshold;
+      this.ipAddressLockoutPeriodMilliseconds = ipAddressLockoutPeriodMilliseconds;
+
+      this.emailMonitorPeriodMilliseconds = emailMonitorPeriodMilliseconds;
+      this.emailLockoutThreshold = emailLockoutThreshold;
+
+      ipAddressTable = new CounterTable(IPAddressSlotsPerSegment, ipAddressMonitorPeriodMilliseconds, true);
+      emailTable = new CounterTable(EmailSlotsPerSegment, emailMonitorPeriodMilliseconds, false);
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final class TrackerMetrics
+   {
+      final int trackedIPAddresses;
+      final int lockedOutIPAddresses;
+      final int trackedEmails;
+      final int lockedOutEmails;
+      final int slotCapacity;
+      final long evictions;
+
+
+      private TrackerMetrics(final int trackedIPAddresses, final int lockedOutIPAddresses, final int trackedEmails, final int lockedOutEmails,
+                             final int slotCapacity, final long evictions)
+      {
+         this.trackedIPAddresses = trackedIPAddresses;
+         this.lockedOutIPAddresses = lockedOutIPAddresses;
+         this.trackedEmails = trackedEmails;
+         this.lockedOutEmails = lockedOutEmails;
+         this.slotCapacity = slotCapacity;
+         this.evictions = evictions;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static final class IPAddressStanding
+   {
+      final InetAddress ipAddress;
+      final int failedAuthentications;
+      final long lastLockoutTime;
+      final boolean isLockedOut;
+      final int trackedEmails;
+      final int lockedOutEmails;
+
+
+      private IPAddressStanding(final InetAddress ipAddress, final int failedAuthentications, final long lastLockoutTime, final boolean isLockedOut,
+                                final int trackedEmails, final int lockedOutEmails)
+      {
+         this.ipAddress = ipAddress;
+         this.failedAuthentications = failedAuthentications;
+         this.lastLockoutTime = lastLockoutTime;
+         this.isLockedOut = isLockedOut;
+         this.trackedEmails = trackedEmails;
+         this.lockedOutEmails = lockedOutEmails;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   // Caller must be sync'd on the segment for all of the slot operations.
+   static final private class CounterSegment
+   {
+      final private long[] keys;
+      final private int[] windowNumbers;
+      final private int[] currentCounts;
+      final private int[] previousCounts;
+      final private long[] lastEventTimes;
+
+      // Only allocated for the IP address table.
+      final private long[] lockoutTimes;
+
+      // Only allocated for the email table, to link each email back to the IP address from which the attempts were made.
+      final private long[] ipAddressKeys;
+
+
+      private CounterSegment(final int slotCount, final boolean isIPAddressSegment)
+      {
+         keys = new long[slotCount];
+         windowNumbers = new int[slotCount];
+         currentCounts = new int[slotCount];
+         previousCounts = new int[slotCount];
+         lastEventTimes = new long[slotCount];
+         lockoutTimes = isIPAddressSegment ? new long[slotCount] : null;
+         ipAddressKeys = isIPAddressSegment ? null : new long[slotCount];
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final private class CounterTable
+   {
+      final private int slotsPerSegment;
+      final private long windowLengthMilliseconds;
+      final private CounterSegment[] segments = new CounterSegment[SegmentCount];
+      final private AtomicLong evictions = new AtomicLong();
+
+
+      private CounterTable(final int slotsPerSegment, final long windowLengthMilliseconds, final boolean isIPAddressTable)
+      {
+         this.slotsPerSegment = slotsPerSegment;
+         this.windowLengthMilliseconds = windowLengthMilliseconds;
+
+         for (int segmentIndex = 0; segmentIndex < SegmentCount; segmentIndex ++)
+            segments[segmentIndex] = new CounterSegment(slotsPerSegment, isIPAddressTable);
+      }
+
+
+      private long getPlacementHash(final long key)
+      {
+         return mix(key ^ hashSeed);
+      }
+
+
+      private CounterSegment getSegment(final long placementHash)
+      {
+         return segments[(int) (placementHash >>> SegmentIndexShift)];
+      }
+
+
+      private int getFirstProbeSlot(final long placementHash)
+      {
+         return ((int) placementHash) & (slotsPerSegment - 1);
+      }
+
+
+      private int findSlot(final CounterSegment segment, final long key, final int firstProbeSlot)
+      {
+         int slot = firstProbeSlot;
+
+         for (int probe = 0; probe < MaximumProbeLength; probe ++)
+         {
+            if (segment.keys[slot] == key)
+               return slot;
+
+            slot = (slot + 1) & (slotsPerSegment - 1);
+         }
+
+         return -1;
+      }
+
+
+      private int claimSlot(final CounterSegment segment, final long key, final int firstProbeSlot, final long currentTime)
+      {
+         final int existingSlot = findSlot(segment, key, firstProbeSlot);
+         if (existingSlot != -1)
+            return existingSlot;
+
+         int slot = firstProbeSlot;
+         int victimSlot = -1;
+         boolean isVictimLockedOut = true;
+
+         for (int probe = 0; probe < MaximumProbeLength; probe ++)
+         {
+            if ((segment.keys[slot] == NoKey) || isExpired(segment, slot, currentTime))
+            {
+               victimSlot = slot;
+               break;
+            }
+
+            final boolean isSlotLockedOut = isLockedOut(segment, slot, currentTime);
+
+            if ((victimSlot == -1) || (isVictimLockedOut && (! isSlotLockedOut)) ||
+                ((isVictimLockedOut == isSlotLockedOut) && (segment.lastEventTimes[slot] < segment.lastEventTimes[victimSlot])))
+            {
+               victimSlot = slot;
+               isVictimLockedOut = isSlotLockedOut;
+            }
+
+            slot = (slot + 1) & (slotsPerSegment - 1);
+         }
+
+         if ((segment.keys[victimSlot] != NoKey) && (! isExpired(segment, victimSlot, currentTime)))
+            evictions.incrementAndGet();
+
+         segment.keys[victimSlot] = key;
+         segment.windowNumbers[victimSlot] = getWindowNumber(currentTime);
+         segment.currentCounts[victimSlot] = 0;
+         segment.previousCounts[victimSlot] = 0;
+         segment.lastEventTimes[victimSlot] = currentTime;
+
+         if (segment.lockoutTimes != null)
+            segment.lockoutTimes[victimSlot] = 0L;
+
+         if (segment.ipAddressKeys != null)
+            segment.ipAddressKeys[victimSlot] = NoKey;
+
+         return victimSlot;
+      }
+
+
+      private void releaseSlot(final CounterSegment segment, final int slot)
+      {
+         segment.keys[slot] = NoKey;
+      }
+
+
+      private int getWindowNumber(final long time)
+      {
+         return (int) (time / windowLengthMilliseconds);
+      }
+
+
+      /* Returns the sliding window count multiplied by the window length, to keep the weighting of the previous window in integer arithmetic.
+       * Compare the result against a threshold which has also been multiplied by the window length.
+       */
+      private long getScaledCount(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         final int currentWindowNumber = getWindowNumber(currentTime);
+         final long remainingOverlapMilliseconds = windowLengthMilliseconds - (currentTime % windowLengthMilliseconds);
+
+         if (segment.windowNumbers[slot] == currentWindowNumber)
+            return (segment.previousCounts[slot] * remainingOverlapMilliseconds) + (segment.currentCounts[slot] * windowLengthMilliseconds);
+         else if (segment.windowNumbers[slot] == (currentWindowNumber - 1))
+            return segment.currentCounts[slot] * remainingOverlapMilliseconds;
+         else
+            return 0L;
+      }
+
+
+      private boolean hasReachedThreshold(final CounterSegment segment, final int slot, final int threshold, final long currentTime)
+      {
+         return getScaledCount(segment, slot, currentTime) >= (threshold * windowLengthMilliseconds);
+      }
+
+
+      private int getCount(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         return (int) (getScaledCount(segment, slot, currentTime) / windowLengthMilliseconds);
+      }
+
+
+      private void incrementCount(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         final int currentWindowNumber = getWindowNumber(currentTime);
+
+         if (segment.windowNumbers[slot] == (currentWindowNumber - 1))
+         {
+            segment.previousCounts[slot] = segment.currentCounts[slot];
+            segment.currentCounts[slot] = 0;
+         }
+         else if (segment.windowNumbers[slot] != currentWindowNumber)
+         {
+            segment.previousCounts[slot] = 0;
+            segment.currentCounts[slot] = 0;
+         }
+
+         segment.windowNumbers[slot] = currentWindowNumber;
+         segment.currentCounts[slot] ++;
+         segment.lastEventTimes[slot] = currentTime;
+      }
+
+
+      private boolean isLockedOut(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         if (segment.lockoutTimes != null)
+            return (segment.lockoutTimes[slot] != 0L) && ((currentTime - segment.lockoutTimes[slot]) < ipAddressLockoutPeriodMilliseconds);
+         else
+            return hasReachedThreshold(segment, slot, emailLockoutThreshold, currentTime);
+      }
+
+
+      private boolean isExpired(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         return (getWindowNumber(currentTime) > (segment.windowNumbers[slot] + 1)) && (! isLockedOut(segment, slot, currentTime));
+      }
+
+
+      private boolean isLive(final CounterSegment segment, final int slot, final long currentTime)
+      {
+         return (segment.keys[slot] != NoKey) && (! isExpired(segment, slot, currentTime));
+      }
+
+
+      private int getCapacity()
+      {
+         return SegmentCount * slotsPerSegment;
+      }
+
+
+      private void clear()
+      {
+         for (final CounterSegment segment : segments)
+         {
+            synchronized (segment)
+            {
+               for (int slot = 0; slot < slotsPerSegment; slot ++)
+                  releaseSlot(segment, slot);
+            }
+         }
+
+         evictions.set(0);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // The 64-bit finaliser from MurmurHash3, to spread the keys evenly across the segments and slots.
+   static private long mix(long value)
+   {
+      value ^= (value >>> 33);
+      value *= 0xff51afd7ed558ccdL;
+      value ^= (value >>> 33);
+      value *= 0xc4ceb9fe1a85ec53L;
+      value ^= (value >>> 33);
+
+      return value;
+   }
+
+
+   static private long getIPAddressKey(final InetAddress ipAddress)
+   {
+      final byte[] addressBytes = ipAddress.getAddress();
+      long key = 0L;
+
+      if (addressBytes.length == 4)
+      {
+         for (final byte addressByte : addressBytes)
+            key = (key << 8) | (addressByte & 0xff);
+
+         return IPv4KeyMarker | key;
+      }
+      else
+      {
+         for (int byteIndex = 0; byteIndex < 8; byteIndex ++)
+            key = (key << 8) | (addressBytes[byteIndex] & 0xff);
+
+         // The ::/64 prefix (eg. the loopback address) would otherwise collide with the empty slot marker.
+         return (key != NoKey) ? key : IPv6ZeroPrefixKey;
+      }
+   }
+
+
+   static private InetAddress getIPAddress(final long ipAddressKey)
+   {
+      final byte[] addressBytes;
+      final long addressBits;
+
+      if ((ipAddressKey & (0xFFFFFFFFL << 32)) == IPv4KeyMarker)
+      {
+         addressBytes = new byte[4];
+         addressBits = ipAddressKey;
+      }
+      else
+      {
+         // Only the /64 prefix is known, the interface bits are left as zeroes.
+         addressBytes = new byte[16];
+         addressBits = (ipAddressKey != IPv6ZeroPrefixKey) ? ipAddressKey : NoKey;
+      }
+
+      for (int byteIndex = 0; byteIndex < Math.min(addressBytes.length, 8); byteIndex ++)
+         addressBytes[byteIndex] = (byte) (addressBits >>> (((Math.min(addressBytes.length, 8) - 1) - byteIndex) * 8));
+
+      try
+      {
+         return InetAddress.getByAddress(addressBytes);
+      }
+      catch (final UnknownHostException unknownHostException)
+      {
+         // Not possible when supplying a four or sixteen byte address.
+         throw new RuntimeException(unknownHostException);
+      }
+   }
+
+
+   private long getEmailKey(final long ipAddressKey, final String email)
+   {
+      // FNV-1a over the normalised characters, seeded and then mixed with the IP address key. The email needn't be normalised by the caller.
+      long emailHash = 0xcbf29ce484222325L ^ hashSeed;
+
+      for (int charIndex = 0; charIndex < email.length(); charIndex ++)
+      {
+         emailHash ^= UserAccountUtilities.getNormalisedEmailCharacter(email.charAt(charIndex));
+         emailHash *= 0x100000001b3L;
+      }
+
+      final long emailKey = mix(emailHash ^ mix(ipAddressKey));
+      return (emailKey != NoKey) ? emailKey : 1L;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private boolean handleIsLockedOut(final InetAddress ipAddress, final String email)
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+      final long ipAddressKey = getIPAddressKey(ipAddress);
+
+      final long ipAddressPlacementHash = ipAddressTable.getPlacementHash(ipAddressKey);
+      final CounterSegment ipAddressSegment = ipAddressTable.getSegment(ipAddressPlacementHash);
+
+      synchronized (ipAddressSegment)
+      {
+         final int slot = ipAddressTable.findSlot(ipAddressSegment, ipAddressKey, ipAddressTable.getFirstProbeSlot(ipAddressPlacementHash));
+         if ((slot != -1) && ipAddressTable.isLockedOut(ipAddressSegment, slot, currentTime))
+            return true;
+      }
+
+      final long emailKey = getEmailKey(ipAddressKey, email);
+      final long emailPlacementHash = emailTable.getPlacementHash(emailKey);
+      final CounterSegment emailSegment = emailTable.getSegment(emailPlacementHash);
+
+      synchronized (emailSegment)
+      {
+         final int slot = emailTable.findSlot(emailSegment, emailKey, emailTable.getFirstProbeSlot(emailPlacementHash));
+         return (slot != -1) && emailTable.isLockedOut(emailSegment, slot, currentTime);
+      }
+   }
+
+
+   private boolean handleRecordFailedAuthentication(final InetAddress ipAddress, final String email)
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+      final long ipAddressKey = getIPAddressKey(ipAddress);
+      boolean isLockoutTriggered = false;
+
+      final long ipAddressPlacementHash = ipAddressTable.getPlacementHash(ipAddressKey);
+      final CounterSegment ipAddressSegment = ipAddressTable.getSegment(ipAddressPlacementHash);
+
+      synchronized (ipAddressSegment)
+      {
+         final int slot = ipAddressTable.claimSlot(ipAddressSegment, ipAddressKey, ipAddressTable.getFirstProbeSlot(ipAddressPlacementHash), currentTime);
+         ipAddressTable.incrementCount(ipAddressSegment, slot, currentTime);
+
+         if (ipAddressTable.hasReachedThreshold(ipAddressSegment, slot, ipAddressLockoutThreshold, currentTime))
+         {
+            if (! ipAddressTable.isLockedOut(ipAddressSegment, slot, currentTime))
+               ipAddressSegment.lockoutTimes[slot] = currentTime;
+
+            isLockoutTriggered = true;
+         }
+      }
+
+      final long emailKey = getEmailKey(ipAddressKey, email);
+      final long emailPlacementHash = emailTable.getPlacementHash(emailKey);
+      final CounterSegment emailSegment = emailTable.getSegment(emailPlacementHash);
+
+      synchronized (emailSegment)
+      {
+         final int slot = emailTable.claimSlot(emailSegment, emailKey, emailTable.getFirstProbeSlot(emailPlacementHash), currentTime);
+         emailTable.incrementCount(emailSegment, slot, currentTime);
+         emailSegment.ipAddressKeys[slot] = ipAddressKey;
+
+         if (emailTable.isLockedOut(emailSegment, slot, currentTime))
+            isLockoutTriggered = true;
+      }
+
+      return isLockoutTriggered;
+   }
+
+
+   private void handleClearFailedAuthentications(final InetAddress ipAddress, final String email)
+   {
+      final long emailKey = getEmailKey(getIPAddressKey(ipAddress), email);
+      final long emailPlacementHash = emailTable.getPlacementHash(emailKey);
+      final CounterSegment emailSegment = emailTable.getSegment(emailPlacementHash);
+
+      synchronized (emailSegment)
+      {
+         final int slot = emailTable.findSlot(emailSegment, emailKey, emailTable.getFirstProbeSlot(emailPlacementHash));
+         if (slot != -1)
+            emailTable.releaseSlot(emailSegment, slot);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private TrackerMetrics handleGetMetrics()
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+      int trackedIPAddresses = 0;
+      int lockedOutIPAddresses = 0;
+      int trackedEmails = 0;
+      int lockedOutEmails = 0;
+
+      for (final CounterSegment segment : ipAddressTable.segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < IPAddressSlotsPerSegment; slot ++)
+            {
+               if (ipAddressTable.isLive(segment, slot, currentTime))
+               {
+                  trackedIPAddresses ++;
+
+                  if (ipAddressTable.isLockedOut(segment, slot, currentTime))
+                     lockedOutIPAddresses ++;
+               }
+            }
+         }
+      }
+
+      for (final CounterSegment segment : emailTable.segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < EmailSlotsPerSegment; slot ++)
+            {
+               if (emailTable.isLive(segment, slot, currentTime))
+               {
+                  trackedEmails ++;
+
+                  if (emailTable.isLockedOut(segment, slot, currentTime))
+                     lockedOutEmails ++;
+               }
+            }
+         }
+      }
+
+      return new TrackerMetrics(trackedIPAddresses, lockedOutIPAddresses, trackedEmails, lockedOutEmails,
+                                ipAddressTable.getCapacity() + emailTable.getCapacity(), ipAddressTable.evictions.get() + emailTable.evictions.get());
+   }
+
+
+   private Map<Long, int[]> getEmailCountsByIPAddressKey(final long currentTime)
+   {
+      final Map<Long, int[]> emailCountsByIPAddressKey = new HashMap<>();
+
+      for (final CounterSegment segment : emailTable.segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < EmailSlotsPerSegment; slot ++)
+            {
+               if (emailTable.isLive(segment, slot, currentTime))
+               {
+                  int[] emailCounts = emailCountsByIPAddressKey.get(segment.ipAddressKeys[slot]);
+                  if (emailCounts == null)
+                  {
+                     emailCounts = new int[2];
+                     emailCountsByIPAddressKey.put(segment.ipAddressKeys[slot], emailCounts);
+                  }
+
+                  emailCounts[0] ++;
+
+                  if (emailTable.isLockedOut(segment, slot, currentTime))
+                     emailCounts[1] ++;
+               }
+            }
+         }
+      }
+
+      return emailCountsByIPAddressKey;
+   }
+
+
+   private List<IPAddressStanding> handleGetLockedOutIPAddresses()
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+      final Map<Long, int[]> emailCountsByIPAddressKey = getEmailCountsByIPAddressKey(currentTime);
+      final List<IPAddressStanding> lockedOutIPAddresses = new ArrayList<>();
+
+      for (final CounterSegment segment : ipAddressTable.segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < IPAddressSlotsPerSegment; slot ++)
+            {
+               if (ipAddressTable.isLive(segment, slot, currentTime) && ipAddressTable.isLockedOut(segment, slot, currentTime))
+               {
+                  final int[] emailCounts = emailCountsByIPAddressKey.get(segment.keys[slot]);
+
+                  lockedOutIPAddresses.add(new IPAddressStanding(getIPAddress(segment.keys[slot]), ipAddressTable.getCount(segment, slot, currentTime),
+                                                                 segment.lockoutTimes[slot], true,
+                                                                 (emailCounts != null) ? emailCounts[0] : 0, (emailCounts != null) ? emailCounts[1] : 0));
+               }
+            }
+         }
+      }
+
+      return lockedOutIPAddresses;
+   }
+
+
+   private IPAddressStanding handleGetIPAddressStanding(final InetAddress ipAddress)
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+      final long ipAddressKey = getIPAddressKey(ipAddress);
+      final int[] emailCounts = getEmailCountsByIPAddressKey(currentTime).get(ipAddressKey);
+
+      int failedAuthentications = 0;
+      long lastLockoutTime = 0L;
+      boolean isLockedOut = false;
+
+      final long placementHash = ipAddressTable.getPlacementHash(ipAddressKey);
+      final CounterSegment segment = ipAddressTable.getSegment(placementHash);
+
+      synchronized (segment)
+      {
+         final int slot = ipAddressTable.findSlot(segment, ipAddressKey, ipAddressTable.getFirstProbeSlot(placementHash));
+         if (slot != -1)
+         {
+            failedAuthentications = ipAddressTable.getCount(segment, slot, currentTime);
+            lastLockoutTime = segment.lockoutTimes[slot];
+            isLockedOut = ipAddressTable.isLockedOut(segment, slot, currentTime);
+         }
+      }
+
+      return new IPAddressStanding(ipAddress, failedAuthentications, lastLockoutTime, isLockedOut,
+                                   (emailCounts != null) ? emailCounts[0] : 0, (emailCounts != null) ? emailCounts[1] : 0);
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void writeTable(final CounterTable table, final DataOutputStream dataOutputStream, final long currentTime) throws IOException
+   {
+      for (final CounterSegment segment : table.segments)
+      {
+         synchronized (segment)
+         {
+            for (int slot = 0; slot < table.slotsPerSegment; slot ++)
+            {
+               if (table.isLive(segment, slot, currentTime))
+               {
+                  dataOutputStream.writeBoolean(true);
+                  dataOutputStream.writeLong(segment.keys[slot]);
+                  dataOutputStream.writeInt(segment.windowNumbers[slot]);
+                  dataOutputStream.writeInt(segment.currentCounts[slot]);
+                  dataOutputStream.writeInt(segment.previousCounts[slot]);
+                  dataOutputStream.writeLong(segment.lastEventTimes[slot]);
+                  dataOutputStream.writeLong((segment.lockoutTimes != null) ? segment.lockoutTimes[slot] : segment.ipAddressKeys[slot]);
+               }
+            }
+         }
+      }
+
+      dataOutputStream.writeBoolean(false);
+   }
+
+
+   private void readTable(final CounterTable table, final DataInputStream dataInputStream, final long currentTime) throws IOException
+   {
+      while (dataInputStream.readBoolean())
+      {
+         final long key = dataInputStream.readLong();
+         final long placementHash = table.getPlacementHash(key);
+         final CounterSegment segment = table.getSegment(placementHash);
+
+         synchronized (segment)
+         {
+            final int slot = table.claimSlot(segment, key, table.getFirstProbeSlot(placementHash), currentTime);
+
+            segment.windowNumbers[slot] = dataInputStream.readInt();
+            segment.currentCounts[slot] = dataInputStream.readInt();
+            segment.previousCounts[slot] = dataInputStream.readInt();
+            segment.lastEventTimes[slot] = dataInputStream.readLong();
+
+            if (segment.lockoutTimes != null)
+               segment.lockoutTimes[slot] = dataInputStream.readLong();
+            else
+               segment.ipAddressKeys[slot] = dataInputStream.readLong();
+         }
+      }
+   }
+
+
+   private void handleSaveCheckpoint(final DataOutputStream dataOutputStream) throws IOException
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+
+      // The seed must be restored along with the tables, since it determines both the email keys and the placement of every key.
+      dataOutputStream.writeLong(hashSeed);
+
+      writeTable(ipAddressTable, dataOutputStream, currentTime);
+      writeTable(emailTable, dataOutputStream, currentTime);
+   }
+
+
+   private void handleRestoreFromCheckpoint(final DataInputStream dataInputStream) throws IOException
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+
+      handleClear();
+      hashSeed = dataInputStream.readLong();
+
+      readTable(ipAddressTable, dataInputStream, currentTime);
+      readTable(emailTable, dataInputStream, currentTime);
+   }
+
+
+   /* Carries over the data from a checkpoint saved before the tracker was introduced. Each of the old per IP address and per email totals is placed in
+    * the window of its most recent event; that's a little generous to the totals which had built up over several windows, but only until they age out.
+    * The old IP address records didn't record the time of their most recent failed authentication, so their totals are placed in the current window.
+    */
+   private void handleRestoreFromLegacyCheckpoint(final DataInputStream dataInputStream) throws IOException
+   {
+      final long currentTime = TimeCache.getCurrentTimeMilliseconds();
+
+      handleClear();
+
+      byte inetAddressSize;
+
+      while ((inetAddressSize = dataInputStream.readByte()) != -1)
+      {
+         final byte[] inetAddressBytes = new byte[inetAddressSize];
+         dataInputStream.readFully(inetAddressBytes);
+         final long ipAddressKey = getIPAddressKey(InetAddress.getByAddress(inetAddressBytes));
+
+         final int failedAuthentications = dataInputStream.readInt();
+         final long lastLockoutTime = dataInputStream.readLong();
+
+         restoreLegacyCount(ipAddressTable, ipAddressKey, failedAuthentications, currentTime, lastLockoutTime, currentTime);
+
+         final int numberOfEmails = dataInputStream.readInt();
+
+         for (int emailNumber = 0; emailNumber < numberOfEmails; emailNumber ++)
+         {
+            final String normalisedEmail = dataInputStream.readUTF();
+            final int emailFailedAuthentications = dataInputStream.readInt();
+            final long emailLastEventTime = dataInputStream.readLong();
+
+            restoreLegacyCount(emailTable, getEmailKey(ipAddressKey, normalisedEmail), emailFailedAuthentications, emailLastEventTime, ipAddressKey, currentTime);
+         }
+      }
+   }
+
+
+   private void restoreLegacyCount(final CounterTable table, final long key, final int count, final long eventTime, final long linkedValue, final long currentTime)
+   {
+      if (count == 0)
+         return;
+
+      final long placementHash = table.getPlacementHash(key);
+      final CounterSegment segment = table.getSegment(placementHash);
+
+      synchronized (segment)
+      {
+         final int slot = table.claimSlot(segment, key, table.getFirstProbeSlot(placementHash), currentTime);
+
+         segment.windowNumbers[slot] = table.getWindowNumber(eventTime);
+         segment.currentCounts[slot] = count;
+         segment.lastEventTimes[slot] = eventTime;
+
+         if (segment.lockoutTimes != null)
+            segment.lockoutTimes[slot] = linkedValue;
+         else
+            segment.ipAddressKeys[slot] = linkedValue;
+      }
+   }
+
+
+   private void handleClear()
+   {
+      ipAddressTable.clear();
+      emailTable.clear();
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   final boolean isLockedOut(final InetAddress ipAddress, final String email)
+   {
+      return handleIsLockedOut(ipAddress, email);
+   }
+
+
+   final boolean recordFailedAuthentication(final InetAddress ipAddress, final String email)
+   {
+      return handleRecordFailedAuthentication(ipAddress, email);
+   }
+
+
+   final void clearFailedAuthentications(final InetAddress ipAddress, final String email)
+   {
+      handleClearFailedAuthentications(ipAddress, email);
+   }
+
+
+   final TrackerMetrics getMetrics()
+   {
+      return handleGetMetrics();
+   }
+
+
+   final List<IPAddressStanding> getLockedOutIPAddresses()
+   {
+      return handleGetLockedOutIPAddresses();
+   }
+
+
+   final IPAddressStanding getIPAddressStanding(final InetAddress ipAddress)
+   {
+      return handleGetIPAddressStanding(ipAddress);
+   }
+
+
+   final void saveCheckpoint(final DataOutputStream dataOutputStream) throws IOException
+   {
+      handleSaveCheckpoint(dataOutputStream);
+   }
+
+
+   final void restoreFromCheckpoint(final DataInputStream dataInputStream) throws IOException
+   {
+      handleRestoreFromCheckpoint(dataInputStream);
+   }
+
+
+   final void restoreFromLegacyCheckpoint(final DataInputStream dataInputStream) throws IOException
+   {
+      handleRestoreFromLegacyCheckpoint(dataInputStream);
+   }
+
+
+   final void clear()
+   {
+      handleClear();
+   }
+}
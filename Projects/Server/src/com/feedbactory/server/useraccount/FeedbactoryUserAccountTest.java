@@ -1,14 +1,24 @@
 
+/* Memos:
+ * - From the console, try 'account test' to load the test accounts from the AccountEmails.txt file, which are capped by the user account capacity.
+ *
+ * - For a production sized data set, try 'account test synthetic 1000000' to generate a million activated accounts directly into the account collections,
+ *   bypassing the account capacity. An optional trailing seed can be supplied; the same seed always generates the same accounts, so long as the
+ *   collections were empty beforehand. Follow with 'feedback 0 test synthetic' to generate the feedback, and see CheckpointBenchmark.
+ */
+
 package com.feedbactory.server.useraccount;
 
 
 import com.feedbactory.server.FeedbactoryServer;
 import com.feedbactory.server.network.component.EntityID;
+import com.feedbactory.server.test.TestUtilities;
 import com.feedbactory.shared.useraccount.FeedbactoryUserAccountConstants;
 import com.feedbactory.shared.useraccount.Gender;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,13 +26,20 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 
 final public class FeedbactoryUserAccountTest
 {
    static final private Path TestUserAccountEmailsFilename = Paths.get("Test", "AccountEmails.txt");
 
+   static final private long DefaultSyntheticDataSeed = 1L;
+
+   // The creation times of the synthetic accounts are spread across this many days prior to the generation.
+   static final private int SyntheticAccountCreationPeriodDays = 1500;
+
 
    /****************************************************************************
     *
@@ -32,8 +49,9 @@ final public class FeedbactoryUserAccountTest
    static private void handleCreateTestUserAccounts(final UserAccountManager userAccountManager) throws IOException
    {
       // Check this to be certain that things such as the account mailer won't be triggered when creating the accounts.
-      if (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production)
-         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production profile.");
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
 
       System.out.println("Reading test account emails...");
       final List<String> testAccountEmails = getTestAccountEmails();
@@ -47,7 +65,8 @@ final public class FeedbactoryUserAccountTest
 
       for (final String testAccountEmail : testAccountEmails)
       {
-         addNewUserAccountResult = userAccountManager.addNewAccount(testAccountEmail, getRandomGender(), getRandomDateOfBirth(), true, InetAddress.getLoopbackAddress(), false);
+         addNewUserAccountResult = userAccountManager.addNewAccount(testAccountEmail, getRandomGender(ThreadLocalRandom.current()), getRandomDateOfBirth(ThreadLocalRandom.current()),
+                                                                    true, InetAddress.getLoopbackAddress(), false);
          if (addNewUserAccountResult.status == AddNewUserAccountStatus.Success)
          {
             synchronized (addNewUserAccountResult.account)
@@ -81,27 +100,69 @@ final public class FeedbactoryUserAccountTest
    }
 
 
-   static private Gender getRandomGender()
+   static private Gender getRandomGender(final Random random)
    {
-      return (ThreadLocalRandom.current().nextBoolean() ? Gender.Male : Gender.Female);
+      return (random.nextBoolean() ? Gender.Male : Gender.Female);
    }
 
 
-   static private long getRandomDateOfBirth()
+   static private long getRandomDateOfBirth(final Random random)
    {
       final int startYear = 1900;
       final int endYear = 2001;
 
       final Calendar calendar = Calendar.getInstance();
       calendar.setLenient(false);
-      calendar.set(Calendar.YEAR, ThreadLocalRandom.current().nextInt(startYear, endYear));
+      calendar.set(Calendar.YEAR, startYear + random.nextInt(endYear - startYear));
       calendar.set(Calendar.DAY_OF_YEAR, 1);
-      calendar.add(Calendar.DAY_OF_YEAR, ThreadLocalRandom.current().nextInt(365));
+      calendar.add(Calendar.DAY_OF_YEAR, random.nextInt(365));
 
       return calendar.getTimeInMillis();
    }
 
 
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void handleCreateSyntheticUserAccounts(final UserAccountManager userAccountManager, final int numberOfAccounts, final long seed)
+      throws UnknownHostException
+   {
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
+      else if (numberOfAccounts <= 0)
+         throw new IllegalArgumentException("Invalid number of synthetic accounts: " + numberOfAccounts);
+
+      System.out.format("Generating %,d synthetic accounts using seed %d...%n", numberOfAccounts, seed);
+
+      final Random random = new Random(seed);
+      final long generationTime = System.currentTimeMillis();
+      final long creationPeriodMilliseconds = TimeUnit.DAYS.toMillis(SyntheticAccountCreationPeriodDays);
+      final byte[] ipAddress = new byte[4];
+      final long startTime = System.currentTimeMillis();
+
+      byte[] passwordHash;
+      int accountsAdded = 0;
+
+      for (int accountNumber = 0; accountNumber < numberOfAccounts; accountNumber ++)
+      {
+         passwordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
+         random.nextBytes(passwordHash);
+         random.nextBytes(ipAddress);
+
+         // The account number keeps the emails unique, the random prefix gives them a realistic length.
+         if (userAccountManager.addSyntheticAccount(TestUtilities.createRandomAlphanumericString(random, 4, 16) + '.' + accountNumber + "@example.com",
+                                                    getRandomGender(random), getRandomDateOfBirth(random), passwordHash, InetAddress.getByAddress(ipAddress),
+                                                    generationTime - (long) (random.nextDouble() * creationPeriodMilliseconds)) != null)
+            accountsAdded ++;
+      }
+
+      System.out.format("Generated %,d synthetic accounts in %,d ms.%n", accountsAdded, System.currentTimeMillis() - startTime);
+   }
+
+
    /****************************************************************************
     *
     ***************************************************************************/
@@ -111,4 +172,16 @@ final public class FeedbactoryUserAccountTest
    {
       handleCreateTestUserAccounts(userAccountManager);
    }
+
+
+   static public void createSyntheticUserAccounts(final UserAccountManager userAccountManager, final int numberOfAccounts) throws UnknownHostException
+   {
+      handleCreateSyntheticUserAccounts(userAccountManager, numberOfAccounts, DefaultSyntheticDataSeed);
+   }
+
+
+   static public void createSyntheticUserAccounts(final UserAccountManager userAccountManager, final int numberOfAccounts, final long seed) throws UnknownHostException
+   {
+      handleCreateSyntheticUserAccounts(userAccountManager, numberOfAccounts, seed);
+   }
 }
\ No newline at end of file
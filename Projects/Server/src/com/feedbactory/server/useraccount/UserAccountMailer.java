@@ -1,8 +1,32 @@
 /* Memos:
- * - As with the server controller thread pool, there's no explicit limit on the mailer thread pool's queue size. This means that in theory, the queue of waiting tasks
- *   could be backed up until the JVM runs out of memory. In practice, a huge number of mail tasks would have to be submitted to reach this point, maybe only
- *   conceivable if a malicious client continually pushes mail requests or if the SMTP server itself is having problems. In the former case the spamming client would
- *   fairly quickly be cut off from automated requests by the IP request monitor.
+ * - Emails are placed on a bounded in-memory queue which is drained by a small pool of mailer threads, each of which holds its own persistent SMTP connection.
+ *   Each thread takes whatever has accumulated on the queue, up to MaximumBatchSize emails, and sends the batch over its connection before going back for more,
+ *   so a burst of sign ups costs a handful of SMTP handshakes rather than one per email. A connection is closed once it has been idle for a while, and is
+ *   also recycled after MaximumEmailsPerConnection emails since SMTP relays commonly cap the number of messages per session.
+ *
+ * - When the in-memory queue is full, eg. during a sign up burst or while the SMTP relay is slow or unavailable, further emails are spilled to a spool file
+ *   rather than growing the heap without limit. Once anything has been spilled, new emails are also appended to the spool until it has been drained, so that
+ *   the emails are still (very nearly) sent in the order in which they were requested. The mailer threads move the spooled emails back onto the in-memory
+ *   queue whenever it drains below half capacity.
+ *
+ * - On shutdown each mailer thread finishes the email that it's currently sending, and all unsent emails are written to the spool, which is picked up again
+ *   when the mailer next starts. The spool records how far it has been drained, so that the next start resumes from that point rather than resending the
+ *   emails already moved back onto the queue. Only the emails on the in-memory queue are at risk if the server process is killed outright. The spool isn't forced to disk
+ *   after each write since that would hold up the request threads during exactly the bursts that the spool is there to absorb, so an OS crash may also
+ *   lose the tail of the spool; a partially written record is discarded when the spool is next opened.
+ *
+ * - Request threads hold the read lock of sendLock while they check the shutdown flag and hand over an email, and the shutdown takes the write lock to set
+ *   the flag. So an email is either on the queue or in the spool before the shutdown drains them, or it's rejected and logged; it can never be placed on
+ *   the queue after the drain or appended to the spool after it has been closed.
+ *
+ * - A failed send is retried once over a fresh connection, since the most likely cause is that the relay has dropped the connection. If that also fails,
+ *   or if the relay has rejected the recipient outright, the email is logged and dropped as before.
+ *
+ * - The number of connections may be changed at any time from the console. When the number is reduced the excess mailer threads close their connections
+ *   and retire once they've finished their current batch.
+ *
+ * - The SMTP endpoint and spool file can be overridden by the package, which allows the mailer to be tested against a local SMTP stand-in without touching
+ *   the live mailer or its spool. See UserAccountMailerTest.
  */
 
 package com.feedbactory.server.useraccount;
@@ -10,16 +34,29 @@ package com.feedbactory.server.useraccount;
 
 import com.feedbactory.server.FeedbactoryServer;
 import com.feedbactory.server.FeedbactoryServer.ExecutionProfile;
+import com.feedbactory.server.core.FeedbactoryServerConstants;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -31,6 +68,7 @@ final public class UserAccountMailer
    static final private String SMTPAuthenticationEmail = "<insert SMTP authentication email here>";
    static final private String SMTPCredentials = "<insert SMTP authentication email password here>";
    static final private String SMTPServer = "<insert SMTP server address here>";
+   static final private int SMTPServerPortNumber = 465;
 
    static final private String SenderEmail = "accounts@feedbactory.com";
 
@@ -40,25 +78,77 @@ final public class UserAccountMailer
    static final private String DevelopmentRecipientEmail = DevelopmentTestRecipient + "+development.accounts" + '@' + DevelopmentTestRecipientDomain;
    static final private String TestRecipientEmail = DevelopmentTestRecipient + "+test.accounts" + '@' + DevelopmentTestRecipientDomain;
 
-   final private ThreadPoolExecutor mailerExecutor = createMailerThreadPool();
+   static final private Path SpoolPath = FeedbactoryServerConstants.BaseDataPath.resolve("UserAccountMailerSpool" + FeedbactoryServerConstants.DataFileExtension);
+   static final private int SpoolHeaderLengthBytes = 8;
 
+   static final public int MinimumConnectionPoolSize = 1;
+   static final public int MaximumConnectionPoolSize = 8;
+   static final private int DefaultConnectionPoolSize = 2;
 
-   private ThreadPoolExecutor createMailerThreadPool()
+   static final private int QueueCapacity = 1000;
+   static final private int MaximumBatchSize = 25;
+   static final private int MaximumEmailsPerConnection = 100;
+
+   static final private long QueuePollIntervalMilliseconds = 1000;
+   static final private long IdleConnectionTimeoutMilliseconds = TimeUnit.SECONDS.toMillis(30);
+   static final private int SMTPTimeoutMilliseconds = (int) TimeUnit.SECONDS.toMillis(30);
+
+   final private SMTPEndpoint endpoint;
+   final private Session session;
+
+   final private ArrayBlockingQueue<QueuedEmail> queue = new ArrayBlockingQueue<>(QueueCapacity);
+   final private MailerSpool spool;
+
+   final private MailerThread[] mailerThreads = new MailerThread[MaximumConnectionPoolSize];
+   private int connectionPoolSize = DefaultConnectionPoolSize;
+
+   final private ReadWriteLock sendLock = new ReentrantReadWriteLock();
+   volatile private boolean isShutdown;
+
+   final private AtomicInteger openConnections = new AtomicInteger();
+   final private AtomicLong emailsSent = new AtomicLong();
+   final private AtomicLong emailsFailed = new AtomicLong();
+   final private AtomicLong emailsSpooled = new AtomicLong();
+   final private AtomicLong batchesSent = new AtomicLong();
+   final private AtomicLong totalQueueLatencyMilliseconds = new AtomicLong();
+   final private AtomicLong maximumQueueLatencyMilliseconds = new AtomicLong();
+   final private AtomicLong totalSendTimeMilliseconds = new AtomicLong();
+
+
+   UserAccountMailer()
+   {
+      this(new SMTPEndpoint(SMTPServer, SMTPServerPortNumber, true, SMTPAuthenticationEmail, SMTPCredentials), SpoolPath);
+   }
+
+
+   UserAccountMailer(final SMTPEndpoint endpoint, final Path spoolPath)
    {
-      final RejectedExecutionHandler rejectedExecutionHandler = new RejectedExecutionHandler()
+      this.endpoint = endpoint;
+      session = createSession(endpoint);
+      spool = new MailerSpool(spoolPath);
+
+      synchronized (mailerThreads)
       {
-         @Override
-         final public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor)
-         {
-            handleThreadPoolRejectedExecutionException((MailerTask) runnable);
-         }
-      };
+         startMailerThreads();
+      }
+   }
+
 
-      final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
-                                                                   new LinkedBlockingQueue<>(), rejectedExecutionHandler);
-      threadPool.allowCoreThreadTimeOut(true);
+   static private Session createSession(final SMTPEndpoint endpoint)
+   {
+      final Properties properties = new Properties();
+      properties.put("mail.smtp.auth", Boolean.toString(endpoint.username != null));
+      properties.put("mail.smtp.ssl.enable", Boolean.toString(endpoint.isSecure));
+// Disable STARTTLS for Fastmail.
+//      properties.put("mail.smtp.starttls.enable", "true");
+      properties.put("mail.smtp.host", endpoint.host);
+      properties.put("mail.smtp.port", Integer.toString(endpoint.portNumber));
 
-      return threadPool;
+      // Without these a stalled relay would hold up a mailer thread, and its batch, indefinitely.
+      properties.put("mail.smtp.connectiontimeout", Integer.toString(SMTPTimeoutMilliseconds));
+      properties.put("mail.smtp.timeout", Integer.toString(SMTPTimeoutMilliseconds));
+
+      return Session.getInstance(properties);
    }
 
 
@@ -71,14 +161,43 @@ final public class UserAccountMailer
 
    static final public class UserAccountMailerMetrics
    {
-      final public int mailerThreadPoolQueueSize;
-      final public long mailerThreadPoolTasksCompleted;
+      final public int connectionPoolSize;
+      final public int openConnections;
+
+      final public int queueSize;
+      final public int queueCapacity;
+      final public int spooledEmails;
+
+      final public long emailsSent;
+      final public long emailsFailed;
+      final public long emailsSpooled;
+      final public long batchesSent;
 
+      final public long averageQueueLatencyMilliseconds;
+      final public long maximumQueueLatencyMilliseconds;
+      final public long averageSendTimeMilliseconds;
 
-      private UserAccountMailerMetrics(final int mailerThreadPoolQueueSize, final long mailerThreadPoolTasksCompleted)
+
+      private UserAccountMailerMetrics(final int connectionPoolSize, final int openConnections,
+                                       final int queueSize, final int spooledEmails,
+                                       final long emailsSent, final long emailsFailed, final long emailsSpooled, final long batchesSent,
+                                       final long totalQueueLatencyMilliseconds, final long maximumQueueLatencyMilliseconds, final long totalSendTimeMilliseconds)
       {
-         this.mailerThreadPoolQueueSize = mailerThreadPoolQueueSize;
-         this.mailerThreadPoolTasksCompleted = mailerThreadPoolTasksCompleted;
+         this.connectionPoolSize = connectionPoolSize;
+         this.openConnections = openConnections;
+
+         this.queueSize = queueSize;
+         queueCapacity = QueueCapacity;
+         this.spooledEmails = spooledEmails;
+
+         this.emailsSent = emailsSent;
+         this.emailsFailed = emailsFailed;
+         this.emailsSpooled = emailsSpooled;
+         this.batchesSent = batchesSent;
+
+         averageQueueLatencyMilliseconds = (emailsSent > 0) ? (totalQueueLatencyMilliseconds / emailsSent) : 0;
+         this.maximumQueueLatencyMilliseconds = maximumQueueLatencyMilliseconds;
+         averageSendTimeMilliseconds = (emailsSent > 0) ? (totalSendTimeMilliseconds / emailsSent) : 0;
       }
    }
 
@@ -90,78 +209,440 @@ final public class UserAccountMailer
     ***************************************************************************/
 
 
-   static final private class MailerTask implements Runnable
+   static final class SMTPEndpoint
+   {
+      final private String host;
+      final private int portNumber;
+      final private boolean isSecure;
+      final private String username;
+      final private String password;
+
+
+      // A null username indicates that the endpoint doesn't require authentication.
+      SMTPEndpoint(final String host, final int portNumber, final boolean isSecure, final String username, final String password)
+      {
+         this.host = host;
+         this.portNumber = portNumber;
+         this.isSecure = isSecure;
+         this.username = username;
+         this.password = password;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class QueuedEmail
    {
       final private String recipientEmail;
       final private String subject;
       final private String messageText;
+      final private long queuedTime;
 
 
-      private MailerTask(final String recipientEmail, final String subject, final String messageText)
+      private QueuedEmail(final String recipientEmail, final String subject, final String messageText, final long queuedTime)
       {
          this.recipientEmail = recipientEmail;
          this.subject = subject;
          this.messageText = messageText;
+         this.queuedTime = queuedTime;
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   /* Each spooled email is written as a length prefixed record, so that a partially written record at the end of the file can be detected and discarded
+    * when the spool is opened. The read position advances through the file as emails are moved back onto the in-memory queue, and the file is truncated
+    * once every record has been read.
+    *
+    * The read position is persisted in a header at the start of the file, which is rewritten after each transfer. Otherwise a spool that was only
+    * partly drained at the time of a shutdown or crash would be read again from the start, and every email that had already been sent would be sent
+    * a second time. The header isn't forced to disk either, so after an OS crash the emails of the last transfer or so may still be resent.
+    */
+   final private class MailerSpool
+   {
+      final private RandomAccessFile spoolFile;
+      private long readPosition;
+      volatile private int spooledEmails;
+
+
+      private MailerSpool(final Path spoolPath)
+      {
+         try
+         {
+            spoolFile = new RandomAccessFile(spoolPath.toFile(), "rw");
+            readPosition = readHeader();
+            spooledEmails = countSpooledEmails();
+         }
+         catch (final IOException ioException)
+         {
+            throw new RuntimeException(ioException);
+         }
+      }
+
+
+      private long readHeader() throws IOException
+      {
+         if (spoolFile.length() >= SpoolHeaderLengthBytes)
+         {
+            spoolFile.seek(0);
+            final long headerReadPosition = spoolFile.readLong();
+
+            if ((headerReadPosition >= SpoolHeaderLengthBytes) && (headerReadPosition <= spoolFile.length()))
+               return headerReadPosition;
+
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Discarding mailer spool having an invalid read position: " + headerReadPosition);
+         }
+
+         resetFile();
+
+         return SpoolHeaderLengthBytes;
+      }
+
+
+      private void writeHeader() throws IOException
+      {
+         spoolFile.seek(0);
+         spoolFile.writeLong(readPosition);
+      }
+
+
+      private void resetFile() throws IOException
+      {
+         spoolFile.setLength(0);
+         readPosition = SpoolHeaderLengthBytes;
+         writeHeader();
+      }
+
+
+      private int countSpooledEmails() throws IOException
+      {
+         final long spoolLength = spoolFile.length();
+         long recordPosition = readPosition;
+         int recordCount = 0;
+
+         while ((spoolLength - recordPosition) >= 4)
+         {
+            spoolFile.seek(recordPosition);
+            final int recordLength = spoolFile.readInt();
+
+            if ((recordLength < 0) || ((recordPosition + 4 + recordLength) > spoolLength))
+               break;
+
+            final long nextRecordPosition = recordPosition + 4 + recordLength;
+
+            recordPosition = nextRecordPosition;
+            recordCount ++;
+         }
+
+         if (recordPosition < spoolLength)
+         {
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Discarding partially written record at the end of the mailer spool");
+            spoolFile.setLength(recordPosition);
+         }
+
+         if (recordCount == 0)
+            resetFile();
+
+         return recordCount;
+      }
+
+
+      private boolean hasSpooledEmails()
+      {
+         return (spooledEmails > 0);
+      }
+
+
+      synchronized private void append(final QueuedEmail email) throws IOException
+      {
+         final ByteArrayOutputStream recordByteStream = new ByteArrayOutputStream(512);
+         final DataOutputStream recordStream = new DataOutputStream(recordByteStream);
+
+         recordStream.writeInt(0);
+         recordStream.writeUTF(email.recipientEmail);
+         recordStream.writeUTF(email.subject);
+         recordStream.writeUTF(email.messageText);
+         recordStream.writeLong(email.queuedTime);
+
+         final byte[] record = recordByteStream.toByteArray();
+         final int recordLength = record.length - 4;
+         record[0] = (byte) (recordLength >>> 24);
+         record[1] = (byte) (recordLength >>> 16);
+         record[2] = (byte) (recordLength >>> 8);
+         record[3] = (byte) recordLength;
+
+         spoolFile.seek(spoolFile.length());
+         spoolFile.write(record);
+
+         spooledEmails ++;
+      }
+
+
+      synchronized private void transferTo(final ArrayBlockingQueue<QueuedEmail> targetQueue) throws IOException
+      {
+         byte[] record;
+         QueuedEmail email;
+
+         while ((spooledEmails > 0) && (targetQueue.remainingCapacity() > 0))
+         {
+            spoolFile.seek(readPosition);
+            record = new byte[spoolFile.readInt()];
+            spoolFile.readFully(record);
+
+            final DataInputStream recordStream = new DataInputStream(new ByteArrayInputStream(record));
+            email = new QueuedEmail(recordStream.readUTF(), recordStream.readUTF(), recordStream.readUTF(), recordStream.readLong());
+
+            // Leave the record in the spool if a request thread has taken the last of the queue capacity in the meantime.
+            if (! targetQueue.offer(email))
+               break;
+
+            readPosition += 4 + record.length;
+            spooledEmails --;
+         }
+
+         if (spooledEmails == 0)
+            resetFile();
+         else
+            writeHeader();
+      }
+
+
+      synchronized private void close() throws IOException
+      {
+         spoolFile.close();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   final private class MailerThread extends Thread
+   {
+      final private int threadIndex;
+      final private List<QueuedEmail> batch = new ArrayList<>(MaximumBatchSize);
+
+      private Transport transport;
+      private int connectionEmailsSent;
+      private long connectionLastUsedTime;
+
+
+      private MailerThread(final int threadIndex)
+      {
+         super("User account mailer thread " + (threadIndex + 1));
+
+         this.threadIndex = threadIndex;
+
+         setDaemon(true);
       }
 
 
       @Override
       final public void run()
       {
-         processSendEmail();
+         try
+         {
+            QueuedEmail firstEmail;
+
+            while (! isRetiring())
+            {
+               refillFromSpool();
+
+               firstEmail = queue.poll(QueuePollIntervalMilliseconds, TimeUnit.MILLISECONDS);
+               if (firstEmail != null)
+               {
+                  batch.add(firstEmail);
+                  queue.drainTo(batch, MaximumBatchSize - 1);
+                  sendBatch();
+                  batch.clear();
+               }
+               else if ((transport != null) && ((System.currentTimeMillis() - connectionLastUsedTime) >= IdleConnectionTimeoutMilliseconds))
+                  closeConnection();
+            }
+         }
+         catch (final InterruptedException interruptedException)
+         {
+            // Shutdown has been requested while waiting on the queue.
+         }
+         catch (final Exception anyException)
+         {
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "User account mailer thread failed", anyException);
+         }
+         finally
+         {
+            closeConnection();
+
+            synchronized (mailerThreads)
+            {
+               // The slot will already have been cleared if the thread has retired normally, and may since have been taken by a replacement thread.
+               if (mailerThreads[threadIndex] == this)
+               {
+                  mailerThreads[threadIndex] = null;
+                  mailerThreads.notifyAll();
+               }
+            }
+         }
       }
 
 
-      private void processSendEmail()
+      private boolean isRetiring()
       {
-         final Properties properties = new Properties();
-         properties.put("mail.smtp.auth", "true");
-         properties.put("mail.smtp.ssl.enable", "true");
-// Disable STARTTLS for Fastmail.
-//         properties.put("mail.smtp.starttls.enable", "true");
-         properties.put("mail.smtp.host", SMTPServer);
-         properties.put("mail.smtp.port", "465");
+         synchronized (mailerThreads)
+         {
+            if (isShutdown || (threadIndex >= connectionPoolSize))
+            {
+               mailerThreads[threadIndex] = null;
+               mailerThreads.notifyAll();
+               return true;
+            }
+
+            return false;
+         }
+      }
+
+
+      private void refillFromSpool()
+      {
+         if (spool.hasSpooledEmails() && (queue.size() < (QueueCapacity / 2)))
+         {
+            try
+            {
+               spool.transferTo(queue);
+            }
+            catch (final IOException ioException)
+            {
+               FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Could not read from the mailer spool", ioException);
+            }
+         }
+      }
+
 
-         final Session session = Session.getInstance(properties);
+      private void sendBatch()
+      {
+         for (int emailIndex = 0; emailIndex < batch.size(); emailIndex ++)
+         {
+            if (isShutdown)
+            {
+               // Don't hold up the shutdown for the rest of the batch, it will be sent when the mailer next starts.
+               for (final QueuedEmail unsentEmail : batch.subList(emailIndex, batch.size()))
+                  spoolEmail(unsentEmail);
+
+               break;
+            }
+
+            sendEmail(batch.get(emailIndex));
+         }
+
+         batchesSent.incrementAndGet();
+      }
+
+
+      private void sendEmail(final QueuedEmail email)
+      {
+         final long sendStartTime = System.currentTimeMillis();
 
          try
          {
-            final Message message = new MimeMessage(session);
-            message.setSentDate(new Date());
+            final Message message = createMessage(email);
 
-            final ExecutionProfile executionProfile = FeedbactoryServer.getExecutionProfile();
-            if (executionProfile == ExecutionProfile.Development)
+            try
             {
-               message.setFrom(new InternetAddress(DevelopmentTestSenderEmail));
-               message.setSubject("[Development] " + subject);
-               message.setRecipient(Message.RecipientType.TO, new InternetAddress(DevelopmentRecipientEmail));
-               message.setText(messageText + "\n[Email sent from development profile, for recipient: " + recipientEmail + ']');
+               transmitMessage(message);
             }
-            else if (executionProfile == ExecutionProfile.Test)
+            catch (final SendFailedException sendFailedException)
             {
-               message.setFrom(new InternetAddress(DevelopmentTestSenderEmail));
-               message.setSubject("[Test] " + subject);
-               message.setRecipient(Message.RecipientType.TO, new InternetAddress(TestRecipientEmail));
-               message.setText(messageText + "\n[Email sent from test profile, for recipient: " + recipientEmail + ']');
+               // The relay has rejected the message, there's no point in retrying it.
+               throw sendFailedException;
             }
-            else if (executionProfile == ExecutionProfile.Production)
+            catch (final MessagingException messagingException)
             {
-               message.setFrom(new InternetAddress(SenderEmail));
-               message.setSubject(subject);
-               message.setRecipient(Message.RecipientType.TO, new InternetAddress(recipientEmail));
-               message.setText(messageText);
+               closeConnection();
+               transmitMessage(message);
             }
-            else
-               throw new AssertionError("Unknown or misconfigured execution profile.");
 
-            Transport.send(message, SMTPAuthenticationEmail, SMTPCredentials);
+            final long sendEndTime = System.currentTimeMillis();
+            final long queueLatencyMilliseconds = sendEndTime - email.queuedTime;
+
+            emailsSent.incrementAndGet();
+            totalSendTimeMilliseconds.addAndGet(sendEndTime - sendStartTime);
+            totalQueueLatencyMilliseconds.addAndGet(queueLatencyMilliseconds);
+            updateMaximumQueueLatency(queueLatencyMilliseconds);
          }
          catch (final MessagingException messagingException)
          {
-            final String errorString = "Mailer task failed. Recipient: " + recipientEmail + ", subject: " + subject;
+            emailsFailed.incrementAndGet();
+
+            final String errorString = "Mailer task failed. Recipient: " + email.recipientEmail + ", subject: " + email.subject;
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), errorString, messagingException);
          }
       }
+
+
+      private void transmitMessage(final Message message) throws MessagingException
+      {
+         if (connectionEmailsSent >= MaximumEmailsPerConnection)
+            closeConnection();
+
+         if (transport == null)
+            openConnection();
+
+         transport.sendMessage(message, message.getAllRecipients());
+
+         connectionEmailsSent ++;
+         connectionLastUsedTime = System.currentTimeMillis();
+      }
+
+
+      private void openConnection() throws MessagingException
+      {
+         final Transport newTransport = session.getTransport("smtp");
+
+         if (endpoint.username != null)
+            newTransport.connect(endpoint.host, endpoint.portNumber, endpoint.username, endpoint.password);
+         else
+            newTransport.connect(endpoint.host, endpoint.portNumber, null, null);
+
+         transport = newTransport;
+         connectionEmailsSent = 0;
+         openConnections.incrementAndGet();
+      }
+
+
+      private void closeConnection()
+      {
+         if (transport != null)
+         {
+            try
+            {
+               transport.close();
+            }
+            catch (final MessagingException messagingException)
+            {
+               // The connection is being discarded regardless, and the likely cause is that the relay has already dropped it.
+            }
+            finally
+            {
+               transport = null;
+               openConnections.decrementAndGet();
+            }
+         }
+      }
    }
 
 
@@ -172,10 +653,193 @@ final public class UserAccountMailer
     ***************************************************************************/
 
 
-   private void handleThreadPoolRejectedExecutionException(final MailerTask mailerTask)
+   private Message createMessage(final QueuedEmail email) throws MessagingException
+   {
+      final Message message = new MimeMessage(session);
+      message.setSentDate(new Date());
+
+      final ExecutionProfile executionProfile = FeedbactoryServer.getExecutionProfile();
+      if (executionProfile == ExecutionProfile.Development)
+      {
+         message.setFrom(new InternetAddress(DevelopmentTestSenderEmail));
+         message.setSubject("[Development] " + email.subject);
+         message.setRecipient(Message.RecipientType.TO, new InternetAddress(DevelopmentRecipientEmail));
+         message.setText(email.messageText + "\n[Email sent from development profile, for recipient: " + email.recipientEmail + ']');
+      }
+      else if (executionProfile == ExecutionProfile.Test)
+      {
+         message.setFrom(new InternetAddress(DevelopmentTestSenderEmail));
+         message.setSubject("[Test] " + email.subject);
+         message.setRecipient(Message.RecipientType.TO, new InternetAddress(TestRecipientEmail));
+         message.setText(email.messageText + "\n[Email sent from test profile, for recipient: " + email.recipientEmail + ']');
+      }
+      else if ((executionProfile == ExecutionProfile.Production) || (executionProfile == ExecutionProfile.Standby))
+      {
+         message.setFrom(new InternetAddress(SenderEmail));
+         message.setSubject(email.subject);
+         message.setRecipient(Message.RecipientType.TO, new InternetAddress(email.recipientEmail));
+         message.setText(email.messageText);
+      }
+      else
+         throw new AssertionError("Unknown or misconfigured execution profile.");
+
+      return message;
+   }
+
+
+   private void updateMaximumQueueLatency(final long queueLatencyMilliseconds)
    {
-      final String errorString = "Could not execute mailer task. Recipient: " + mailerTask.recipientEmail + ", subject: " + mailerTask.subject;
-      FeedbactoryLogger.logSystemEvent(SystemLogLevel.OverloadError, getClass(), errorString);
+      long currentMaximum;
+
+      while (queueLatencyMilliseconds > (currentMaximum = maximumQueueLatencyMilliseconds.get()))
+      {
+         if (maximumQueueLatencyMilliseconds.compareAndSet(currentMaximum, queueLatencyMilliseconds))
+            break;
+      }
+   }
+
+
+   private void spoolEmail(final QueuedEmail email)
+   {
+      try
+      {
+         spool.append(email);
+         emailsSpooled.incrementAndGet();
+      }
+      catch (final IOException ioException)
+      {
+         final String errorString = "Could not spool mailer task. Recipient: " + email.recipientEmail + ", subject: " + email.subject;
+         FeedbactoryLogger.logSystemEvent(SystemLogLevel.OverloadError, getClass(), errorString, ioException);
+      }
+   }
+
+
+   // Caller must be sync'd on mailerThreads.
+   private void startMailerThreads()
+   {
+      for (int threadIndex = 0; threadIndex < connectionPoolSize; threadIndex ++)
+      {
+         if (mailerThreads[threadIndex] == null)
+         {
+            mailerThreads[threadIndex] = new MailerThread(threadIndex);
+            mailerThreads[threadIndex].start();
+         }
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   private void handleSendEmail(final String recipientEmail, final String subject, final String messageText)
+   {
+      final QueuedEmail email = new QueuedEmail(recipientEmail, subject, messageText, System.currentTimeMillis());
+
+      sendLock.readLock().lock();
+
+      try
+      {
+         if (isShutdown)
+         {
+            final String errorString = "Could not execute mailer task, the mailer has been shut down. Recipient: " + recipientEmail + ", subject: " + subject;
+            FeedbactoryLogger.logSystemEvent(SystemLogLevel.OverloadError, getClass(), errorString);
+         }
+         else if (spool.hasSpooledEmails() || (! queue.offer(email)))
+            spoolEmail(email);
+      }
+      finally
+      {
+         sendLock.readLock().unlock();
+      }
+   }
+
+
+   private void handleSetConnectionPoolSize(final int connectionPoolSize)
+   {
+      if ((connectionPoolSize < MinimumConnectionPoolSize) || (connectionPoolSize > MaximumConnectionPoolSize))
+         throw new IllegalArgumentException("Invalid mailer connection pool size: " + connectionPoolSize);
+
+      synchronized (mailerThreads)
+      {
+         if (isShutdown)
+            throw new IllegalStateException("The mailer has been shut down.");
+
+         this.connectionPoolSize = connectionPoolSize;
+         startMailerThreads();
+      }
+   }
+
+
+   private UserAccountMailerMetrics handleGetMetrics()
+   {
+      final int metricsConnectionPoolSize;
+
+      synchronized (mailerThreads)
+      {
+         metricsConnectionPoolSize = connectionPoolSize;
+      }
+
+      return new UserAccountMailerMetrics(metricsConnectionPoolSize, openConnections.get(), queue.size(), spool.spooledEmails,
+                                          emailsSent.get(), emailsFailed.get(), emailsSpooled.get(), batchesSent.get(),
+                                          totalQueueLatencyMilliseconds.get(), maximumQueueLatencyMilliseconds.get(), totalSendTimeMilliseconds.get());
+   }
+
+
+   private void handleShutdown() throws InterruptedException
+   {
+      // Wait for any request thread that is part way through handing over an email, and turn away any that follow.
+      sendLock.writeLock().lock();
+
+      try
+      {
+         isShutdown = true;
+      }
+      finally
+      {
+         sendLock.writeLock().unlock();
+      }
+
+      synchronized (mailerThreads)
+      {
+         for (final MailerThread mailerThread : mailerThreads)
+         {
+            if (mailerThread != null)
+               mailerThread.interrupt();
+         }
+
+         while (hasActiveMailerThreads())
+            mailerThreads.wait();
+      }
+
+      final List<QueuedEmail> unsentEmails = new ArrayList<>(queue.size());
+      queue.drainTo(unsentEmails);
+
+      for (final QueuedEmail unsentEmail : unsentEmails)
+         spoolEmail(unsentEmail);
+
+      try
+      {
+         spool.close();
+      }
+      catch (final IOException ioException)
+      {
+         FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "Could not close the mailer spool", ioException);
+      }
+   }
+
+
+   // Caller must be sync'd on mailerThreads.
+   private boolean hasActiveMailerThreads()
+   {
+      for (final MailerThread mailerThread : mailerThreads)
+      {
+         if (mailerThread != null)
+            return true;
+      }
+
+      return false;
    }
 
 
@@ -186,19 +850,24 @@ final public class UserAccountMailer
 
    final void sendEmail(final String recipientEmail, final String subject, final String messageText)
    {
-      mailerExecutor.execute(new MailerTask(recipientEmail, subject, messageText));
+      handleSendEmail(recipientEmail, subject, messageText);
+   }
+
+
+   final void setConnectionPoolSize(final int connectionPoolSize)
+   {
+      handleSetConnectionPoolSize(connectionPoolSize);
    }
 
 
    final UserAccountMailerMetrics getMetrics()
    {
-      return new UserAccountMailerMetrics(mailerExecutor.getQueue().size(), mailerExecutor.getCompletedTaskCount());
+      return handleGetMetrics();
    }
 
 
    final void shutdown() throws InterruptedException
    {
-      mailerExecutor.shutdown();
-      mailerExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      handleShutdown();
    }
-}
\ No newline at end of file
+}
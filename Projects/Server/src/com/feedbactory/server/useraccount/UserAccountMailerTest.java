@@ -0,0 +1,407 @@
+/* Memos:
+ * - From the console, try 'mailer test 5000' to push a burst of emails through a separate mailer instance to a local SMTP stand-in, which accepts and
+ *   discards every message. An optional trailing delay in milliseconds is applied by the stand-in before it accepts each message, to simulate a slow relay;
+ *   eg. 'mailer test 5000 5' will back up the in-memory queue and spill to the test spool.
+ *
+ * - The test mailer has its own spool file, which is deleted once the test has finished. The live mailer and its spool are unaffected.
+ *
+ * - 'mailer test restart 3000' checks that a restarted mailer resumes a partly drained spool without resending anything. The first mailer instance sends
+ *   to a slow stand-in until some of its spool has been moved back onto the queue, and is then shut down. A second instance is started on the same spool
+ *   and sends to a fresh stand-in; between them the two stand-ins must receive exactly the number of emails submitted.
+ *
+ * - The stand-in speaks just enough SMTP for JavaMail: no authentication, no TLS, and every command other than the ones that JavaMail uses to send
+ *   a message is rejected.
+ */
+
+package com.feedbactory.server.useraccount;
+
+
+import com.feedbactory.server.FeedbactoryServer;
+import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.useraccount.UserAccountMailer.UserAccountMailerMetrics;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+final public class UserAccountMailerTest
+{
+   static final private Path TestSpoolPath = FeedbactoryServerConstants.BaseDataPath.resolve("UserAccountMailerTestSpool" + FeedbactoryServerConstants.DataFileExtension);
+
+   static final private long ProgressReportIntervalMilliseconds = TimeUnit.SECONDS.toMillis(2);
+   static final private long StalledTestTimeoutMilliseconds = TimeUnit.SECONDS.toMillis(60);
+
+   static final private int RestartTestResponseDelayMilliseconds = 5;
+   static final private long RestartTestPollIntervalMilliseconds = 50;
+   static final private long RestartTestSettleMilliseconds = TimeUnit.SECONDS.toMillis(2);
+
+
+   private UserAccountMailerTest()
+   {
+   }
+
+
+   /****************************************************************************
+    *
+    *
+    *
+    ***************************************************************************/
+
+
+   static final private class LocalSMTPServer implements Runnable
+   {
+      final private ServerSocket serverSocket;
+      final private int responseDelayMilliseconds;
+
+      final private AtomicInteger sessionsOpened = new AtomicInteger();
+      final private AtomicInteger messagesReceived = new AtomicInteger();
+
+
+      private LocalSMTPServer(final int responseDelayMilliseconds) throws IOException
+      {
+         serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+         this.responseDelayMilliseconds = responseDelayMilliseconds;
+      }
+
+
+      @Override
+      final public void run()
+      {
+         try
+         {
+            while (true)
+            {
+               final Socket clientSocket = serverSocket.accept();
+               sessionsOpened.incrementAndGet();
+
+               final Thread sessionThread = new Thread(new Runnable()
+               {
+                  @Override
+                  final public void run()
+                  {
+                     handleSession(clientSocket);
+                  }
+               }, "Local SMTP stand-in session");
+
+               sessionThread.setDaemon(true);
+               sessionThread.start();
+            }
+         }
+         catch (final IOException ioException)
+         {
+            // The server socket has been closed.
+         }
+      }
+
+
+      private void handleSession(final Socket clientSocket)
+      {
+         try
+         (
+            final Socket socket = clientSocket;
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            final Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+         )
+         {
+            sendReply(writer, "220 localhost SMTP stand-in ready");
+
+            String line;
+            String command;
+
+            while ((line = reader.readLine()) != null)
+            {
+               command = ((line.length() >= 4) ? line.substring(0, 4) : line).toUpperCase();
+
+               switch (command)
+               {
+                  case "EHLO":
+                  case "HELO":
+                     sendReply(writer, "250 localhost");
+                     break;
+
+                  case "MAIL":
+                  case "RCPT":
+                  case "RSET":
+                  case "NOOP":
+                     sendReply(writer, "250 OK");
+                     break;
+
+                  case "DATA":
+                     sendReply(writer, "354 End data with <CR><LF>.<CR><LF>");
+
+                     while (((line = reader.readLine()) != null) && (! line.equals(".")))
+                        ;
+
+                     if (responseDelayMilliseconds > 0)
+                        Thread.sleep(responseDelayMilliseconds);
+
+                     messagesReceived.incrementAndGet();
+                     sendReply(writer, "250 OK");
+                     break;
+
+                  case "QUIT":
+                     sendReply(writer, "221 Bye");
+                     return;
+
+                  default:
+                     sendReply(writer, "502 Command not implemented");
+               }
+            }
+         }
+         catch (final IOException | InterruptedException exception)
+         {
+            // The client has dropped the connection, or the test is over.
+         }
+      }
+
+
+      private void sendReply(final Writer writer, final String reply) throws IOException
+      {
+         writer.write(reply);
+         writer.write("\r\n");
+         writer.flush();
+      }
+
+
+      private void start()
+      {
+         final Thread acceptorThread = new Thread(this, "Local SMTP stand-in");
+         acceptorThread.setDaemon(true);
+         acceptorThread.start();
+      }
+
+
+      private void stop() throws IOException
+      {
+         serverSocket.close();
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static private void reportProgress(final UserAccountMailerMetrics metrics, final LocalSMTPServer server)
+   {
+      System.out.format("Sent: %,d, failed: %,d, queued: %,d, spooled: %,d, connections: %d, received by stand-in: %,d%n", metrics.emailsSent,
+                        metrics.emailsFailed, metrics.queueSize, metrics.spooledEmails, metrics.openConnections, server.messagesReceived.get());
+   }
+
+
+   static private void checkTestExecutionProfile()
+   {
+      // Check this to be certain that the test won't be competing with the live mailer.
+      if ((FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Production) ||
+          (FeedbactoryServer.getExecutionProfile() == FeedbactoryServer.ExecutionProfile.Standby))
+         throw new IllegalStateException("Test cannot be performed when Feedbactory server is using the production or standby profile.");
+   }
+
+
+   static private UserAccountMailer createTestMailer(final LocalSMTPServer server)
+   {
+      return new UserAccountMailer(new UserAccountMailer.SMTPEndpoint(server.serverSocket.getInetAddress().getHostAddress(),
+                                                                      server.serverSocket.getLocalPort(), false, null, null),
+                                   TestSpoolPath);
+   }
+
+
+   static private void submitTestEmails(final UserAccountMailer mailer, final int emailCount)
+   {
+      for (int emailNumber = 1; emailNumber <= emailCount; emailNumber ++)
+         mailer.sendEmail("test" + emailNumber + "@example.com", "Mailer test " + emailNumber, "Mailer test message " + emailNumber + '.');
+   }
+
+
+   static private void handleRunLocalSMTPTest(final int emailCount, final int responseDelayMilliseconds) throws IOException, InterruptedException
+   {
+      checkTestExecutionProfile();
+
+      if (emailCount <= 0)
+         throw new IllegalArgumentException("The number of test emails must be greater than zero.");
+
+      Files.deleteIfExists(TestSpoolPath);
+
+      final LocalSMTPServer server = new LocalSMTPServer(responseDelayMilliseconds);
+      server.start();
+
+      final UserAccountMailer mailer = createTestMailer(server);
+
+      try
+      {
+         final long startTime = System.currentTimeMillis();
+
+         submitTestEmails(mailer, emailCount);
+
+         System.out.format("Submitted %,d emails in %,d ms.%n", emailCount, System.currentTimeMillis() - startTime);
+
+         UserAccountMailerMetrics metrics = mailer.getMetrics();
+         long lastProgressTime = System.currentTimeMillis();
+         long lastEmailsProcessed = 0;
+
+         while ((metrics.emailsSent + metrics.emailsFailed) < emailCount)
+         {
+            Thread.sleep(ProgressReportIntervalMilliseconds);
+
+            metrics = mailer.getMetrics();
+            reportProgress(metrics, server);
+
+            if ((metrics.emailsSent + metrics.emailsFailed) > lastEmailsProcessed)
+            {
+               lastEmailsProcessed = metrics.emailsSent + metrics.emailsFailed;
+               lastProgressTime = System.currentTimeMillis();
+            }
+            else if ((System.currentTimeMillis() - lastProgressTime) >= StalledTestTimeoutMilliseconds)
+            {
+               System.out.println("Test abandoned, the mailer has stopped making progress.");
+               break;
+            }
+         }
+
+         final long durationMilliseconds = Math.max(System.currentTimeMillis() - startTime, 1);
+
+         System.out.println();
+         System.out.format("%-35.35s%,d ms%n", "Duration:", durationMilliseconds);
+         System.out.format("%-35.35s%,d per second%n", "Throughput:", (metrics.emailsSent * 1000L) / durationMilliseconds);
+         System.out.format("%-35.35s%,d%n", "Emails sent:", metrics.emailsSent);
+         System.out.format("%-35.35s%,d%n", "Emails failed:", metrics.emailsFailed);
+         System.out.format("%-35.35s%,d%n", "Emails spooled:", metrics.emailsSpooled);
+         System.out.format("%-35.35s%,d%n", "Batches sent:", metrics.batchesSent);
+         System.out.format("%-35.35s%,d%n", "SMTP sessions opened:", server.sessionsOpened.get());
+         System.out.format("%-35.35s%,d%n", "Messages received by stand-in:", server.messagesReceived.get());
+         System.out.format("%-35.35s%,d ms%n", "Average queue latency:", metrics.averageQueueLatencyMilliseconds);
+         System.out.format("%-35.35s%,d ms%n", "Maximum queue latency:", metrics.maximumQueueLatencyMilliseconds);
+         System.out.format("%-35.35s%,d ms%n", "Average send time:", metrics.averageSendTimeMilliseconds);
+      }
+      finally
+      {
+         mailer.shutdown();
+         server.stop();
+         Files.deleteIfExists(TestSpoolPath);
+      }
+   }
+
+
+   static private void handleRunSpoolRestartTest(final int emailCount) throws IOException, InterruptedException
+   {
+      checkTestExecutionProfile();
+
+      Files.deleteIfExists(TestSpoolPath);
+
+      final LocalSMTPServer firstServer = new LocalSMTPServer(RestartTestResponseDelayMilliseconds);
+      final LocalSMTPServer secondServer = new LocalSMTPServer(0);
+      firstServer.start();
+      secondServer.start();
+
+      UserAccountMailer firstMailer = createTestMailer(firstServer);
+      UserAccountMailer secondMailer = null;
+
+      try
+      {
+         UserAccountMailerMetrics metrics = firstMailer.getMetrics();
+
+         if (emailCount <= metrics.queueCapacity)
+            throw new IllegalArgumentException("The number of test emails must be greater than the mailer queue capacity of " + metrics.queueCapacity + '.');
+
+         submitTestEmails(firstMailer, emailCount);
+
+         // Wait until some, but not all, of the spooled emails have been moved back onto the queue.
+         final long waitStartTime = System.currentTimeMillis();
+
+         do
+         {
+            Thread.sleep(RestartTestPollIntervalMilliseconds);
+            metrics = firstMailer.getMetrics();
+
+            if ((System.currentTimeMillis() - waitStartTime) >= StalledTestTimeoutMilliseconds)
+            {
+               System.out.println("Test abandoned, the spool was not partly drained in time.");
+               return;
+            }
+         }
+         while ((metrics.spooledEmails == 0) || (metrics.spooledEmails >= metrics.emailsSpooled));
+
+         firstMailer.shutdown();
+         final UserAccountMailerMetrics firstMetrics = firstMailer.getMetrics();
+         firstMailer = null;
+
+         final long expectedRemainingEmails = emailCount - firstMetrics.emailsSent - firstMetrics.emailsFailed;
+         System.out.format("First mailer shut down after sending %,d emails, with %,d emails left to send.%n", firstMetrics.emailsSent, expectedRemainingEmails);
+
+         secondMailer = createTestMailer(secondServer);
+         metrics = secondMailer.getMetrics();
+         System.out.format("Second mailer started with %,d spooled emails.%n", metrics.spooledEmails);
+
+         long lastProgressTime = System.currentTimeMillis();
+         long lastEmailsProcessed = 0;
+
+         while ((metrics.emailsSent + metrics.emailsFailed) < expectedRemainingEmails)
+         {
+            Thread.sleep(ProgressReportIntervalMilliseconds);
+
+            metrics = secondMailer.getMetrics();
+            reportProgress(metrics, secondServer);
+
+            if ((metrics.emailsSent + metrics.emailsFailed) > lastEmailsProcessed)
+            {
+               lastEmailsProcessed = metrics.emailsSent + metrics.emailsFailed;
+               lastProgressTime = System.currentTimeMillis();
+            }
+            else if ((System.currentTimeMillis() - lastProgressTime) >= StalledTestTimeoutMilliseconds)
+               break;
+         }
+
+         // Allow any resent emails to show up at the stand-in.
+         Thread.sleep(RestartTestSettleMilliseconds);
+
+         final int totalReceived = firstServer.messagesReceived.get() + secondServer.messagesReceived.get();
+
+         System.out.println();
+         System.out.format("%-35.35s%,d%n", "Emails submitted:", emailCount);
+         System.out.format("%-35.35s%,d%n", "Received before restart:", firstServer.messagesReceived.get());
+         System.out.format("%-35.35s%,d%n", "Received after restart:", secondServer.messagesReceived.get());
+         System.out.format("%-35.35s%,d%n", "Emails failed:", firstMetrics.emailsFailed + secondMailer.getMetrics().emailsFailed);
+         System.out.println((totalReceived == emailCount) ? "Test passed." : "Test FAILED, the stand-ins did not receive exactly the number of emails submitted.");
+      }
+      finally
+      {
+         if (firstMailer != null)
+            firstMailer.shutdown();
+
+         if (secondMailer != null)
+            secondMailer.shutdown();
+
+         firstServer.stop();
+         secondServer.stop();
+         Files.deleteIfExists(TestSpoolPath);
+      }
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public void runSpoolRestartTest(final int emailCount) throws IOException, InterruptedException
+   {
+      handleRunSpoolRestartTest(emailCount);
+   }
+
+
+   static public void runLocalSMTPTest(final int emailCount, final int responseDelayMilliseconds) throws IOException, InterruptedException
+   {
+      handleRunLocalSMTPTest(emailCount, responseDelayMilliseconds);
+   }
+}
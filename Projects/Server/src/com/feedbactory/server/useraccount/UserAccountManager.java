@@ -1,7 +1,8 @@
 /* Memos:
  * - Case is preserved for requested account email addresses, however Feedbactory will only allow one account per case-insensitive match of email address.
  *   The implication is simply that the user accounts collection accountsByEmail is only ever keyed by a 'normalised' version of an account email address,
- *   whether active, pending, or superseded.
+ *   whether active, pending, or superseded. The AccountEmailIndex performs the normalisation itself a character at a time, so the request paths pass the
+ *   emails as supplied rather than allocating a normalised copy for every lookup; the checkpoints and journal still record the normalised keys.
  *
  * - Since the password hash is derived from the active account email, and performed on the client end, it is assumed that the client also does this
  *   using a normalised version of the email, to prevent producing different hashes depending on the email case that the user enters.
@@ -24,6 +25,9 @@
  * - The nature of a persistence operation during active connections is that it is out of date as soon as it's finished running. For a completely consistent snapshot
  *   of the data at shutdown time, the persistence operation must be run a final time -after- all active connections have finished.
  * 
+ * - The persistence task holds each account's lock only while encoding its record into an in-memory buffer; the buffered record is written to the checkpoint
+ *   file after the lock is released, so requests for an account being saved aren't held up by the disk. See CheckpointRecordBuffer.
+ * 
  * - Not providing a password at account sign up protects against leaking email registration information. If I allowed an initial password on sign up, a user could
  *   immediately try to sign in using their provided password to determine whether or not the sign in worked. If they received a SuccessAccountNotActivated, the account
  *   was not already registered. If however they received a Failed response, it did. So, only allow users to provide an initial password at the point of them
@@ -76,6 +80,25 @@
  *   make since depending on how you look at things pulling data from disk could be put in the same boat as an untrusted caller. But I think that the resulting validation
  *   would be quite unwieldy and unnecessary; if the persisted data is compromised and changed, validation of individual accounts is the least of the concerns.
  *
+ * - Every account mutation is journalled as a full snapshot of the account, along with any email key added to or removed from accountsByEmail by the operation,
+ *   using the same serialisation as the checkpoint. The journal record is appended while holding the account lock so that the records for each account are
+ *   in the same order as the changes were applied, and the operations that originate from a client request wait for the record to be durable before
+ *   returning, so that the response is never sent for a change that may not survive a crash. The wait is performed only after the account lock has been
+ *   released, otherwise the checkpoint writers, housekeeping and session tasks locking the same account would be held up for the duration of the group
+ *   commit. Any email carrying a newly generated code is likewise sent only once the change is durable. Callers that mutate an account while holding
+ *   its lock for their own purposes must release it before calling in. The housekeeping expiries
+ *   are journalled but don't wait, since a lost expiry will simply be repeated by the next housekeeping run.
+ *
+ * - The same mutation points flag the account ID and any affected email keys as dirty, so that a delta checkpoint need only write the accounts and keys
+ *   that have changed since the previous checkpoint; accounts and keys that have since been removed are written as tombstones. The dirty flags are cleared
+ *   by the caller immediately before a full checkpoint, which then serves as the base for the following deltas. Sign ins don't journal the updated IP
+ *   address but do flag the account, so that the IP address makes it into the next delta.
+ *
+ * - The housekeeping task doesn't scan the account collections; the pending account, pending email and password reset code expiries are indexed by
+ *   expiry time as they are recorded, so each run only visits the accounts that have an expiry falling due. That's cheap enough to run every minute, so
+ *   expired codes are cleared close to their expiry time rather than lingering for up to a day. The index isn't persisted, it's rebuilt from the
+ *   accounts on restoration. See AccountExpiryIndex.
+ *
  * - The public checkpointing and housekeeping management methods aren't threadsafe, the caller must carefully coordinate calls to them. For example it's
  *   unsafe to overlap calls to startHousekeeping() and shutdownHousekeeping(), or startHousekeeping() and restoreFromCheckpoint().
  *   It's OK though for a checkpoint to be saved (NOT restored), either periodically or manually, while a housekeeping run is active.
@@ -85,9 +108,15 @@
 package com.feedbactory.server.useraccount;
 
 
+import com.feedbactory.server.core.CheckpointFileFormat;
+import com.feedbactory.server.core.CheckpointRecordBuffer;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
+import com.feedbactory.server.core.HousekeepingScheduler;
+import com.feedbactory.server.core.ShardedCheckpointFile;
 import com.feedbactory.server.core.TimeCache;
 import com.feedbactory.server.core.TimestampedMessage;
+import com.feedbactory.server.core.WriteAheadJournal;
+import com.feedbactory.server.core.WriteAheadJournal.JournalTail;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.server.useraccount.FeedbactoryUserAccount.ActivationState;
@@ -97,23 +126,23 @@ import com.feedbactory.shared.Message;
 import com.feedbactory.shared.MessageType;
 import com.feedbactory.shared.useraccount.FeedbactoryUserAccountConstants;
 import com.feedbactory.shared.useraccount.Gender;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -124,14 +153,16 @@ final public class UserAccountManager
 
    static final public int AccountCollectionInitialCapacity = AccountCapacity;
 
-   static final private String AccountDataFilename = "UserAccountData" + FeedbactoryServerConstants.DataFileExtension;
-   static final private String AccountEmailsFilename = "UserAccountEmails" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String AccountDataBaseFilename = "UserAccountData";
+   static final private String AccountEmailsBaseFilename = "UserAccountEmails";
+   static final private String AccountDataDeltaFilename = "UserAccountDataDelta" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String AccountEmailsDeltaFilename = "UserAccountEmailsDelta" + FeedbactoryServerConstants.DataFileExtension;
 
    static final private long PendingAccountExpiryPeriodMilliseconds = TimeUnit.DAYS.toMillis(14);
    static final private long PendingEmailExpiryPeriodMilliseconds = TimeUnit.DAYS.toMillis(14);
    static final private long PasswordResetCodeExpiryPeriodMilliseconds = TimeUnit.DAYS.toMillis(1);
 
-   static final private long HousekeepingTaskFrequencyMilliseconds = TimeUnit.DAYS.toMillis(1);
+   static final private long HousekeepingTaskFrequencyMilliseconds = TimeUnit.MINUTES.toMillis(1);
 
    static final private long EarliestAllowableDateOfBirth;
    static final private long LatestAllowableDateOfBirth;
@@ -155,8 +186,10 @@ final public class UserAccountManager
 
    final private AtomicInteger accountIDCounter = new AtomicInteger();
 
-   final private ConcurrentHashMap<Integer, FeedbactoryUserAccount> accountsByID = new ConcurrentHashMap<>(AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
-   final private ConcurrentHashMap<String, FeedbactoryUserAccount> accountsByEmail = new ConcurrentHashMap<>(AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
+   final private AccountIDTable accountsByID = new AccountIDTable();
+   final private AccountEmailIndex accountsByEmail = new AccountEmailIndex(AccountCollectionInitialCapacity, FeedbactoryServerConstants.ServerConcurrency);
+
+   final private AccountExpiryIndex expiryIndex = new AccountExpiryIndex();
 
    final private HousekeepingTask housekeepingTask = new HousekeepingTask();
 
@@ -164,6 +197,17 @@ final public class UserAccountManager
 
    final private SignUpInterestRegistry signUpInterestRegistry = new SignUpInterestRegistry();
 
+   final private WriteAheadJournal journal;
+
+   final private Set<Integer> dirtyAccountIDs = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>(AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency));
+   final private Set<String> dirtyEmailKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(AccountCollectionInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency));
+
+
+   public UserAccountManager(final WriteAheadJournal journal)
+   {
+      this.journal = journal;
+   }
+
 
    /****************************************************************************
     *
@@ -175,8 +219,13 @@ final public class UserAccountManager
    static final public class UserAccountManagerMetrics
    {
       final public boolean isHousekeepingEnabled;
-      final public int housekeepingFrequencyDays;
+      final public int housekeepingFrequencyMinutes;
       final public long housekeepingLastRunStartTime;
+      final public int indexedExpiries;
+
+      final public int accountTableSegments;
+      final public int accountTableSlotCapacity;
+      final public int accountTableReleasedSegments;
 
       final public int pendingAccountExpiryPeriodDays;
       final public int pendingAccounts;
@@ -189,14 +238,20 @@ final public class UserAccountManager
       final public int activePasswordResetCodes;
 
 
-      private UserAccountManagerMetrics(final boolean isHousekeepingEnabled, final long housekeepingLastRunStartTime,
+      private UserAccountManagerMetrics(final boolean isHousekeepingEnabled, final long housekeepingLastRunStartTime, final int indexedExpiries,
+                                        final int accountTableSegments, final int accountTableSlotCapacity, final int accountTableReleasedSegments,
                                         final int pendingAccounts, final int activatedAccounts,
                                         final int pendingEmails,
                                         final int activePasswordResetCodes)
       {
          this.isHousekeepingEnabled = isHousekeepingEnabled;
-         housekeepingFrequencyDays = (int) TimeUnit.MILLISECONDS.toDays(HousekeepingTaskFrequencyMilliseconds);
+         housekeepingFrequencyMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(HousekeepingTaskFrequencyMilliseconds);
          this.housekeepingLastRunStartTime = housekeepingLastRunStartTime;
+         this.indexedExpiries = indexedExpiries;
+
+         this.accountTableSegments = accountTableSegments;
+         this.accountTableSlotCapacity = accountTableSlotCapacity;
+         this.accountTableReleasedSegments = accountTableReleasedSegments;
 
          pendingAccountExpiryPeriodDays = (int) TimeUnit.MILLISECONDS.toDays(PendingAccountExpiryPeriodMilliseconds);
          this.pendingAccounts = pendingAccounts;
@@ -218,9 +273,10 @@ final public class UserAccountManager
     ***************************************************************************/
 
 
-   final private class HousekeepingTask implements Runnable, ThreadFactory
+   final private class HousekeepingTask implements HousekeepingScheduler.Task
    {
-      private ScheduledThreadPoolExecutor executor;
+      private HousekeepingScheduler housekeepingScheduler;
+      private HousekeepingScheduler.Registration registration;
 
       /* This variable is written by the housekeeping thread, and read by the owner thread of the account manager.
        * At the moment there are no other metrics variables with which the housekeeping start time needs to be written atomically,
@@ -228,44 +284,112 @@ final public class UserAccountManager
        */
       volatile private long lastRunStartTime = FeedbactoryConstants.NoTime;
 
-
-      @Override
-      final public Thread newThread(final Runnable runnable)
-      {
-         final Thread thread = new Thread(runnable, "User account manager housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
+      /* Accounts having a due expiry that wasn't acted upon during the current run, eg. the code was reissued or the clock has stepped backwards.
+       * Their outstanding expiries are reindexed once the run has drained the due entries, since putting them back into the index straight away
+       * could return the same entry to the run's next poll. Housekeeping thread only.
+       */
+      final private List<FeedbactoryUserAccount> unresolvedExpiryAccounts = new ArrayList<>();
 
 
       @Override
-      final public void run()
+      final public boolean runSlice(final boolean isNewRun, final long sliceDeadlineNanoTime)
       {
          try
          {
-            lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
+            if (isNewRun)
+            {
+               lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
+               unresolvedExpiryAccounts.clear();
+            }
 
-            handleExpiredPendingAccounts();
-            handleExpiredPendingEmails();
-            handleExpiredPasswordResetCodes();
+            AccountExpiryIndex.ExpiryEntry dueExpiry;
+
+            // The index itself records the progress of the run, so a run is resumed simply by polling it again.
+            while ((dueExpiry = expiryIndex.pollDueExpiry(lastRunStartTime)) != null)
+            {
+               handleDueExpiry(dueExpiry);
+
+               if (System.nanoTime() >= sliceDeadlineNanoTime)
+                  return false;
+            }
+
+            reindexUnresolvedExpiries();
+
+            // Release any account ID table segments emptied by the expiries, now that the run's removals are done.
+            accountsByID.compact();
          }
          catch (final Exception anyException)
          {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
+            /* Exception handling provided for -any- exception, so that the failure is logged against this task.
+             * The run is treated as finished, and any remaining due expiries will be picked up by the next run.
              */
             FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), "User account manager housekeeping task failed", anyException);
+            reindexUnresolvedExpiries();
          }
+
+         return true;
       }
 
 
-      private void handleExpiredPendingAccounts()
+      private void handleDueExpiry(final AccountExpiryIndex.ExpiryEntry dueExpiry)
       {
-         /* Iterating over the userAccountsByID collection ensures no double handling (or worse) accounts which have had multiple
-          * email addresses associated with them. There is however the very small possibility of still encountering the same email with two different
-          * IDs, due to the non-atomic rollback performed by the handleAddNewAccount() method, ie. two accounts may be inserted into the userAccountsByID
-          * collection, with one almost immediately removed if it turns out that the email has already been registered in the userAccountsByEmail collection.
+         final FeedbactoryUserAccount account = accountsByID.get(dueExpiry.accountID);
+
+         // The account has already expired, or it's a redundant copy that has been rolled back by handleAddNewAccount().
+         if (account == null)
+            return;
+
+         final boolean isExpiryActioned;
+
+         synchronized (account)
+         {
+            switch (dueExpiry.expiryType)
+            {
+               case PendingAccount:
+                  isExpiryActioned = handleExpiredPendingAccount(account);
+                  break;
+
+               case PendingEmail:
+                  isExpiryActioned = handleExpiredPendingEmail(account);
+                  break;
+
+               case PasswordResetCode:
+                  isExpiryActioned = handleExpiredPasswordResetCode(account);
+                  break;
+
+               default:
+                  throw new AssertionError("Unhandled account expiry type: " + dueExpiry.expiryType);
+            }
+         }
+
+         /* Any change made by the handlers has already reindexed the account via recordAccountChange(). Otherwise the entry was stale, or the account
+          * is not yet due by its own timestamps, and reindexing it at the end of the run is a safety net against the expiry being lost from the index.
+          */
+         if (! isExpiryActioned)
+            unresolvedExpiryAccounts.add(account);
+      }
+
+
+      private void reindexUnresolvedExpiries()
+      {
+         for (final FeedbactoryUserAccount account : unresolvedExpiryAccounts)
+         {
+            synchronized (account)
+            {
+               indexAccountExpiries(account);
+            }
+         }
+
+         unresolvedExpiryAccounts.clear();
+      }
+
+
+      // Caller must be sync'd on the account.
+      private boolean handleExpiredPendingAccount(final FeedbactoryUserAccount activationPendingAccount)
+      {
+         /* There is the very small possibility of encountering the same email with two different IDs, due to the non-atomic rollback performed by the
+          * handleAddNewAccount() method, ie. two accounts may be inserted into the userAccountsByID collection, with one almost immediately removed if it
+          * turns out that the email has already been registered in the userAccountsByEmail collection.
           * 
           * What I don't want to do with these redundant accounts is unconditionally remove their associated email from the userAccountsByEmail collection,
           * because although the user account added to userAccountsByID is redundant, the entry in userAccountsByEmail for that email is not!
@@ -277,112 +401,98 @@ final public class UserAccountManager
           * removed, however.
           * 
           * So, as a side effect of purging expired accounts, it turns out that the housekeeping task is also handy for automatically removing those
-          * redundant (orphaned) userAccountsByID entries which may have been momentarily present at the time of persistence. This saves from performing an
-          * additional 'cleaning' operation at the time of restoring the saved user accounts from disk.
+          * redundant (orphaned) userAccountsByID entries which may have been momentarily present at the time of persistence. They are indexed along with
+          * every other pending account when the expiry index is rebuilt during restoration, which saves from performing an additional 'cleaning' operation.
+          *
+          * If the activate user account method hits its sync block first, the user account will be flagged as Activated. If so,
+          * the housekeeping task needs to abort the deregistration of that user account.
           */
-         final Iterator<Entry<Integer, FeedbactoryUserAccount>> entries = accountsByID.entrySet().iterator();
-
-         FeedbactoryUserAccount activationPendingAccount;
-
-         while (entries.hasNext())
+         if ((activationPendingAccount.getActivationState() == ActivationState.NotActivated) &&
+             ((TimeCache.getCurrentTimeMilliseconds() - activationPendingAccount.getEmailConfirmationCodeLastUpdatedTime()) >= PendingAccountExpiryPeriodMilliseconds))
          {
-            activationPendingAccount = entries.next().getValue();
+            accountsByID.remove(activationPendingAccount.getID(), activationPendingAccount);
 
-            synchronized (activationPendingAccount)
-            {
-               /* If the activate user account method hits its sync block first, the user account will be flagged as Activated. If so,
-                * the housekeeping task needs to abort the deregistration of that user account.
-                */
-               if ((activationPendingAccount.getActivationState() == ActivationState.NotActivated) &&
-                   ((TimeCache.getCurrentTimeMilliseconds() - activationPendingAccount.getEmailConfirmationCodeLastUpdatedTime()) >= PendingAccountExpiryPeriodMilliseconds))
-               {
-                  entries.remove();
+            // Here's the conditional removal - very important. See the comments above.
+            accountsByEmail.remove(UserAccountUtilities.getNormalisedEmail(activationPendingAccount.getEmail()), activationPendingAccount);
 
-                  // Here's the conditional removal - very important. See the comments above.
-                  accountsByEmail.remove(UserAccountUtilities.getNormalisedEmail(activationPendingAccount.getEmail()), activationPendingAccount);
+            activationPendingAccount.setActivationState(ActivationState.Expired);
 
-                  activationPendingAccount.setActivationState(ActivationState.Expired);
-               }
-            }
+            // There's no need for the housekeeping changes to wait for the journal write, they will be redone by the next run if lost.
+            recordAccountChange(activationPendingAccount, UserAccountUtilities.getNormalisedEmail(activationPendingAccount.getEmail()), null);
+            return true;
          }
+
+         return false;
       }
 
 
-      private void handleExpiredPendingEmails()
+      // Caller must be sync'd on the account.
+      private boolean handleExpiredPendingEmail(final FeedbactoryUserAccount account)
       {
-         final Iterator<Entry<String, FeedbactoryUserAccount>> entries = accountsByEmail.entrySet().iterator();
-
-         Entry<String, FeedbactoryUserAccount> accountEntry;
-         FeedbactoryUserAccount account;
-
-         while (entries.hasNext())
+         /* The following logic is deceptively tricky due to the properties of the accountsByEmail collection:
+          * - At a minimum, account objects in the accountsByEmail collection are keyed by the active email address.
+          * - Account objects in accountsByEmail are also keyed by all previously confirmed email addresses, if any.
+          * - Account objects in accountsByEmail are also temporarily keyed by a pending email address, if any.
+          * - Only the keys for expiring pending emails should ever be removed; never the active email key nor keys for previous active emails.
+          * - When the expiring pending email data on the account object is cleared, the pending email key must be removed at the same time to ensure that the
+          *   object is in a consistent state. Otherwise the pending key would then effectively be the same as a previously confirmed email key.
+          * - Where a user has attempted to take an email that is already attached to a different account, their account object will be tagged with a non-null
+          *   pending email -however- their account will not be keyed via that pending email in the accountsByEmail collection.
+          *   See the memo notes at the top of the class for more details, also refer to the comments in handleUpdateAccountEmail().
+          *
+          * The result of this is that care needs to be taken when expiring pending emails to ensure that account objects are not temporarily
+          * put in an inconsistent state. Of particular note is the check that the pending email key maps to this account, which ensures
+          * that only the -pending- email key will be removed from accountsByEmail and furthermore this will be done at the same time as the object's pending
+          * email data is cleared; it would not be good to do the latter step for example using the account object's active email key, leaving the
+          * collection with a phantom pending email key.
+          */
+         if ((account.getPendingEmail() != null) &&
+            ((TimeCache.getCurrentTimeMilliseconds() - account.getEmailConfirmationCodeLastUpdatedTime()) >= PendingEmailExpiryPeriodMilliseconds))
          {
-            accountEntry = entries.next();
-            account = accountEntry.getValue();
+            final String normalisedPendingEmail = UserAccountUtilities.getNormalisedEmail(account.getPendingEmail());
 
-            synchronized (account)
+            // Be careful not to remove a key entry for an active (non-pending) email.
+            if (accountsByEmail.get(normalisedPendingEmail) == account)
             {
-               /* The following logic is deceptively tricky due to the properties of the accountsByEmail collection:
-                * - At a minimum, account objects in the accountsByEmail collection are keyed by the active email address.
-                * - Account objects in accountsByEmail are also keyed by all previously confirmed email addresses, if any.
-                * - Account objects in accountsByEmail are also temporarily keyed by a pending email address, if any.
-                * - Only the keys for expiring pending emails should ever be removed; never the active email key nor keys for previous active emails.
-                * - When the expiring pending email data on the account object is cleared, the pending email key must be removed at the same time to ensure that the
-                *   object is in a consistent state. Otherwise the pending key would then effectively be the same as a previously confirmed email key.
-                * - Where a user has attempted to take an email that is already attached to a different account, their account object will be tagged with a non-null
-                *   pending email -however- their account will not be keyed via that pending email in the accountsByEmail collection.
-                *   See the memo notes at the top of the class for more details, also refer to the comments in handleUpdateAccountEmail().
-                *
-                * The result of this is that care needs to be taken when expiring pending emails to ensure that account objects are not temporarily
-                * put in an inconsistent state. Of particular note is the accountEntry.getKey().equals(account.getPendingEmail()) check, which ensures
-                * that only the -pending- email key will be removed from accountsByEmail and furthermore this will be done at the same time as the object's pending
-                * email data is cleared; it would not be good to do the latter step for example using the account object's active email key, leaving the
-                * collection with a phantom pending email key.
+               /* Remove key entry for a pending email which has not been confirmed before the expiry time.
+                * At the same time, clear the account object's pending email data.
                 */
-               if ((account.getPendingEmail() != null) &&
-                  ((TimeCache.getCurrentTimeMilliseconds() - account.getEmailConfirmationCodeLastUpdatedTime()) >= PendingEmailExpiryPeriodMilliseconds))
-               {
-                  // Be careful not to remove a key entry for an active (non-pending) email.
-                  if (accountEntry.getKey().equals(UserAccountUtilities.getNormalisedEmail(account.getPendingEmail())))
-                  {
-                     /* Remove key entry for a pending email which has not been confirmed before the expiry time.
-                      * At the same time, clear the account object's pending email data.
-                      */
-                     account.setPendingEmail(null);
-                     account.setEmailConfirmationCode(null);
-                     entries.remove();
-                  }
-                  else if (! account.hasEmailConfirmationCode())
-                  {
-                     /* If the account has a 'faked' pending email, ie. a pending email which is already attached to a different account (which can't be revealed to the user),
-                      * the account won't be attached to accountsByEmail via that pending email key. Also it won't even have an email confirmation code.
-                      * So, the only work to do is to null the pending email.
-                      */
-                     account.setPendingEmail(null);
-                  }
-               }
+               account.setPendingEmail(null);
+               account.setEmailConfirmationCode(null);
+               accountsByEmail.remove(normalisedPendingEmail, account);
+
+               recordAccountChange(account, normalisedPendingEmail, null);
+               return true;
+            }
+            else if (! account.hasEmailConfirmationCode())
+            {
+               /* If the account has a 'faked' pending email, ie. a pending email which is already attached to a different account (which can't be revealed to the user),
+                * the account won't be attached to accountsByEmail via that pending email key. Also it won't even have an email confirmation code.
+                * So, the only work to do is to null the pending email.
+                */
+               account.setPendingEmail(null);
+
+               recordAccountChange(account, null, null);
+               return true;
             }
          }
+
+         return false;
       }
 
 
-      private void handleExpiredPasswordResetCodes()
+      // Caller must be sync'd on the account.
+      private boolean handleExpiredPasswordResetCode(final FeedbactoryUserAccount account)
       {
-         final Iterator<Entry<Integer, FeedbactoryUserAccount>> entries = accountsByID.entrySet().iterator();
-
-         FeedbactoryUserAccount account;
-
-         while (entries.hasNext())
+         if (account.hasPasswordResetCode() &&
+            ((TimeCache.getCurrentTimeMilliseconds() - account.getPasswordResetCodeLastUpdatedTime()) >= PasswordResetCodeExpiryPeriodMilliseconds))
          {
-            account = entries.next().getValue();
-
-            synchronized (account)
-            {
-               if (account.hasPasswordResetCode() &&
-                  ((TimeCache.getCurrentTimeMilliseconds() - account.getPasswordResetCodeLastUpdatedTime()) >= PasswordResetCodeExpiryPeriodMilliseconds))
-                  account.setPasswordResetCode(null);
-            }
+            account.setPasswordResetCode(null);
+            recordAccountChange(account, null, null);
+            return true;
          }
+
+         return false;
       }
 
 
@@ -393,30 +503,27 @@ final public class UserAccountManager
 
       private boolean isHousekeepingStarted()
       {
-         return (executor != null);
+         return (registration != null);
       }
 
 
-      private void start()
+      private void start(final HousekeepingScheduler housekeepingScheduler)
       {
          if (isHousekeepingStarted())
             throw new IllegalStateException("Housekeeping task has already been started.");
 
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
-
-         executor.scheduleAtFixedRate(this, 0, HousekeepingTaskFrequencyMilliseconds, TimeUnit.MILLISECONDS);
+         this.housekeepingScheduler = housekeepingScheduler;
+         registration = housekeepingScheduler.register("User account expiries", this, 0, HousekeepingTaskFrequencyMilliseconds);
       }
 
 
       private void shutdown() throws InterruptedException
       {
-         if (executor != null)
+         if (registration != null)
          {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
+            housekeepingScheduler.unregister(registration);
+            registration = null;
+            housekeepingScheduler = null;
          }
       }
    }
@@ -429,10 +536,10 @@ final public class UserAccountManager
     ***************************************************************************/
 
 
-   // Caller must be sync'd on the user account, and email parameter already normalised.
-   private boolean isActiveEmailForActivatedAccount(final String normalisedEmail, final FeedbactoryUserAccount account)
+   // Caller must be sync'd on the user account.
+   private boolean isActiveEmailForActivatedAccount(final String email, final FeedbactoryUserAccount account)
    {
-      return (account.getActivationState() == ActivationState.Activated) && UserAccountUtilities.getNormalisedEmail(account.getEmail()).equals(normalisedEmail);
+      return (account.getActivationState() == ActivationState.Activated) && UserAccountUtilities.isEquivalentEmail(account.getEmail(), email);
    }
 
 
@@ -803,7 +910,16 @@ final public class UserAccountManager
              */
             if (existingAccount == null)
             {
-               // Expected case: new account, no previous references to the email address. Send the welcome email, then bail out.
+               // Expected case: new account, no previous references to the email address. Journal the account, send the welcome email, then bail out.
+               final long journalSequenceNumber;
+
+               synchronized (newAccount)
+               {
+                  journalSequenceNumber = recordAccountChange(newAccount, null, normalisedEmail);
+               }
+
+               journal.awaitDurable(journalSequenceNumber);
+
                if (sendEmail)
                   sendNewAccountEmail(email, initialEmailConfirmationCode);
 
@@ -813,6 +929,9 @@ final public class UserAccountManager
                accountsByID.remove(newAccount.getID());
          }
 
+         long journalSequenceNumber = WriteAheadJournal.NoSequenceNumber;
+         String nonActivatedAccountEmailConfirmationCode = null;
+
          // If there is an existing account...
          synchronized (existingAccount)
          {
@@ -844,8 +963,10 @@ final public class UserAccountManager
                existingAccount.setDateOfBirth(dateOfBirth);
                existingAccount.setSendEmailAlerts(sendEmailAlerts);
 
+               journalSequenceNumber = recordAccountChange(existingAccount, null, null);
+
                if (sendEmail)
-                  sendExistingNonActivatedAccountEmail(email, existingAccount.getEmailConfirmationCode());
+                  nonActivatedAccountEmailConfirmationCode = existingAccount.getEmailConfirmationCode();
             }
             else if (sendEmail && (existingAccount.getActivationState() == ActivationState.Activated) && (existingAccount.getPendingEmail() == null))
             {
@@ -853,7 +974,7 @@ final public class UserAccountManager
                 * would probably be confusing; they will have already received an email prompting them to confirm their new email address.
                 * If they missed the first email it's more likely that they'll sign in again and have it resent.
                 */
-               if (UserAccountUtilities.getNormalisedEmail(existingAccount.getEmail()).equals(normalisedEmail))
+               if (UserAccountUtilities.isEquivalentEmail(existingAccount.getEmail(), email))
                {
                   // The most likely case of a new sign up using an already taken, activated, and current email.
                   sendExistingAccountEmail(email);
@@ -868,6 +989,12 @@ final public class UserAccountManager
             }
          }
 
+         // As for the new account case, the journal record is made durable only after releasing the account lock, but before the email is sent.
+         journal.awaitDurable(journalSequenceNumber);
+
+         if (nonActivatedAccountEmailConfirmationCode != null)
+            sendExistingNonActivatedAccountEmail(email, nonActivatedAccountEmailConfirmationCode);
+
          return new AddNewUserAccountResult(AddNewUserAccountStatus.EmailAccountExists, existingAccount);
       }
    }
@@ -875,8 +1002,7 @@ final public class UserAccountManager
 
    private void handleResendAccountActivationCode(final String email)
    {
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
-      final FeedbactoryUserAccount account = getAccountByEmail(normalisedEmail);
+      final FeedbactoryUserAccount account = getAccountByEmail(email);
 
       if (account != null)
       {
@@ -890,7 +1016,7 @@ final public class UserAccountManager
 
                case Activated:
 
-                  if (UserAccountUtilities.getNormalisedEmail(account.getEmail()).equals(normalisedEmail))
+                  if (UserAccountUtilities.isEquivalentEmail(account.getEmail(), email))
                      sendAlreadyActivatedAccountEmail(email);
                   else
                      sendAlreadyActivatedAccountSupersededEmail(email);
@@ -923,11 +1049,13 @@ final public class UserAccountManager
       else if (requestIPAddress == null)
          throw new IllegalArgumentException("Invalid request IP address.");
 
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
-      final FeedbactoryUserAccount account = getAccountByEmail(normalisedEmail);
+      final FeedbactoryUserAccount account = getAccountByEmail(email);
+      FeedbactoryUserAccount activatedAccount = null;
 
       if (account != null)
       {
+         long journalSequenceNumber = WriteAheadJournal.NoSequenceNumber;
+
          synchronized (account)
          {
             /* If our expired pending accounts housekeeping task hits its sync block first, the user account's activation status will be set to Expired,
@@ -952,12 +1080,15 @@ final public class UserAccountManager
 
                account.setActivationState(ActivationState.Activated);
 
-               return account;
+               journalSequenceNumber = recordAccountChange(account, null, null);
+               activatedAccount = account;
             }
          }
+
+         journal.awaitDurable(journalSequenceNumber);
       }
 
-      return null;
+      return activatedAccount;
    }
 
 
@@ -966,8 +1097,7 @@ final public class UserAccountManager
       if (requestIPAddress == null)
          throw new IllegalArgumentException("Invalid request IP address.");
 
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
-      final FeedbactoryUserAccount account = getAccountByEmail(normalisedEmail);
+      final FeedbactoryUserAccount account = getAccountByEmail(email);
 
       if (account != null)
       {
@@ -976,9 +1106,16 @@ final public class UserAccountManager
             /* Since non-activated accounts do not yet have a password set for them, it's not possible for a user to successfully authenticate for
              * a non-activated account, hence the authentication outcome can never be SuccessAccountNotActivated.
              */
-            if (isActiveEmailForActivatedAccount(normalisedEmail, account) && account.authenticatePasswordHash(passwordHash))
+            if (isActiveEmailForActivatedAccount(email, account) && account.authenticatePasswordHash(passwordHash))
             {
+               /* The updated IP address is deliberately not journalled, since it would otherwise force a journal write & wait on every sign in.
+                * Losing it on a crash is harmless; it will be refreshed on the user's next sign in.
+                */
                account.setLastAuthenticatedIPAddress(requestIPAddress);
+
+               // The account still needs to be picked up by the next delta checkpoint.
+               dirtyAccountIDs.add(account.getID());
+
                return account;
             }
          }
@@ -990,16 +1127,18 @@ final public class UserAccountManager
 
    private void handleSendPasswordResetCode(final String email)
    {
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
-      final FeedbactoryUserAccount account = getAccountByEmail(normalisedEmail);
+      final FeedbactoryUserAccount account = getAccountByEmail(email);
 
       if (account != null)
       {
+         long journalSequenceNumber = WriteAheadJournal.NoSequenceNumber;
+         String passwordResetCode = null;
+
          synchronized (account)
          {
             if (account.getActivationState() == ActivationState.Activated)
             {
-               if (UserAccountUtilities.getNormalisedEmail(account.getEmail()).equals(normalisedEmail))
+               if (UserAccountUtilities.isEquivalentEmail(account.getEmail(), email))
                {
                   /* If the account already has a password reset code, don't update it since this would provide a means for malicious parties to
                    * continually change the password reset codes of other accounts.
@@ -1008,11 +1147,12 @@ final public class UserAccountManager
                    */
                   if (! account.hasPasswordResetCode())
                   {
-                     final String passwordResetCode = generateAuthenticationCode(FeedbactoryUserAccountConstants.PasswordResetCodeLength);
-                     account.setPasswordResetCode(passwordResetCode);
+                     account.setPasswordResetCode(generateAuthenticationCode(FeedbactoryUserAccountConstants.PasswordResetCodeLength));
+                     journalSequenceNumber = recordAccountChange(account, null, null);
                   }
 
-                  sendAccountPasswordResetCodeEmail(email, account.getPasswordResetCode());
+                  // The email is sent once the reset code is durable and the account lock has been released.
+                  passwordResetCode = account.getPasswordResetCode();
                }
                else
                {
@@ -1030,6 +1170,11 @@ final public class UserAccountManager
                sendNonExistentAccountPasswordResetEmail(email);
             }
          }
+
+         journal.awaitDurable(journalSequenceNumber);
+
+         if (passwordResetCode != null)
+            sendAccountPasswordResetCodeEmail(email, passwordResetCode);
       }
       else
       {
@@ -1047,38 +1192,48 @@ final public class UserAccountManager
       else if (requestIPAddress == null)
          throw new IllegalArgumentException("Invalid request IP address.");
 
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
-      final FeedbactoryUserAccount account = getAccountByEmail(normalisedEmail);
+      final FeedbactoryUserAccount account = getAccountByEmail(email);
+      FeedbactoryUserAccount resetAccount = null;
 
       if (account != null)
       {
+         long journalSequenceNumber = WriteAheadJournal.NoSequenceNumber;
+
          synchronized (account)
          {
             // At the moment, password reset codes cannot be requested for pending emails.
-            if (isActiveEmailForActivatedAccount(normalisedEmail, account) && account.authenticatePasswordResetCode(passwordResetCode))
+            if (isActiveEmailForActivatedAccount(email, account) && account.authenticatePasswordResetCode(passwordResetCode))
             {
                account.setPasswordResetCode(null);
                account.setPasswordHash(newPasswordHash);
 
                account.setLastAuthenticatedIPAddress(requestIPAddress);
 
-               return account;
+               journalSequenceNumber = recordAccountChange(account, null, null);
+               resetAccount = account;
             }
          }
+
+         journal.awaitDurable(journalSequenceNumber);
       }
 
-      return null;
+      return resetAccount;
    }
 
 
    private void handleUpdateAccountEmail(final FeedbactoryUserAccount account, final String newEmail)
    {
+      long journalSequenceNumber = WriteAheadJournal.NoSequenceNumber;
+      String emailConfirmationCode = null;
+
       synchronized (account)
       {
          if (account.getActivationState() != ActivationState.Activated)
             throw new IllegalStateException("Cannot update email for non-activated account, ID " + account.getID());
 
          final String normalisedNewEmail = UserAccountUtilities.getNormalisedEmail(newEmail);
+         boolean isNewEmailAlreadyPending = false;
+         String removedPendingEmailKey = null;
 
          if (account.getPendingEmail() != null)
          {
@@ -1094,10 +1249,11 @@ final public class UserAccountManager
                   // Validate the case-different new email (just in case..?), and update the pending email on the account.
                   UserAccountUtilities.validateEmail(newEmail);
                   account.setPendingEmail(newEmail);
+
+                  journalSequenceNumber = recordAccountChange(account, null, null);
                }
 
-               // Nothing more needs to be done in this instance.
-               return;
+               isNewEmailAlreadyPending = true;
             }
             else
             {
@@ -1109,10 +1265,16 @@ final public class UserAccountManager
                accountsByEmail.remove(normalisedPendingEmail, account);
                account.setPendingEmail(null);
                account.setEmailConfirmationCode(null);
+
+               removedPendingEmailKey = normalisedPendingEmail;
             }
          }
 
-         if (normalisedNewEmail.equals(UserAccountUtilities.getNormalisedEmail(account.getEmail())))
+         if (isNewEmailAlreadyPending)
+         {
+            // Nothing more needs to be done in this instance.
+         }
+         else if (normalisedNewEmail.equals(UserAccountUtilities.getNormalisedEmail(account.getEmail())))
          {
             /* Similar to the case-insensitive equal pending email check - there is very little or possibly no work to do from here.
              * The account's password hash will be unchanged if the normalised emails are equal.
@@ -1122,6 +1284,8 @@ final public class UserAccountManager
                UserAccountUtilities.validateEmail(newEmail);
                account.setEmail(newEmail);
             }
+
+            journalSequenceNumber = recordAccountChange(account, removedPendingEmailKey, null);
          }
          else
          {
@@ -1143,12 +1307,12 @@ final public class UserAccountManager
                 * hash also needs to be regenerated client side for the updated email. So unfortunately they will be prompted to reconfirm their old email
                 * with both a code and existing password. This case of course should be very rare.
                 */
-               final String emailConfirmationCode = generateAuthenticationCode(FeedbactoryUserAccountConstants.EmailConfirmationCodeLength);
+               emailConfirmationCode = generateAuthenticationCode(FeedbactoryUserAccountConstants.EmailConfirmationCodeLength);
 
                account.setPendingEmail(newEmail);
                account.setEmailConfirmationCode(emailConfirmationCode);
 
-               sendUpdatedAccountEmail(newEmail, emailConfirmationCode);
+               journalSequenceNumber = recordAccountChange(account, removedPendingEmailKey, normalisedNewEmail);
             }
             else
             {
@@ -1159,9 +1323,17 @@ final public class UserAccountManager
                 */
                account.setPendingEmail(newEmail);
                account.setEmailConfirmationCode(null);
+
+               journalSequenceNumber = recordAccountChange(account, removedPendingEmailKey, null);
             }
          }
       }
+
+      // The confirmation code is emailed once the change is durable, and only after the account lock has been released.
+      journal.awaitDurable(journalSequenceNumber);
+
+      if (emailConfirmationCode != null)
+         sendUpdatedAccountEmail(newEmail, emailConfirmationCode);
    }
 
 
@@ -1198,6 +1370,8 @@ final public class UserAccountManager
       if (newEmailPasswordHash.length != FeedbactoryUserAccountConstants.PasswordHashLengthBytes)
          throw new IllegalArgumentException("Invalid password hash length");
 
+      final long journalSequenceNumber;
+
       synchronized (account)
       {
          if (account.getActivationState() != ActivationState.Activated)
@@ -1210,11 +1384,15 @@ final public class UserAccountManager
             account.setPendingEmail(null);
             account.setEmailConfirmationCode(null);
 
-            return true;
+            journalSequenceNumber = recordAccountChange(account, null, null);
          }
          else
             return false;
       }
+
+      journal.awaitDurable(journalSequenceNumber);
+
+      return true;
    }
 
 
@@ -1223,6 +1401,8 @@ final public class UserAccountManager
       if (newPasswordHash.length != FeedbactoryUserAccountConstants.PasswordHashLengthBytes)
          throw new IllegalArgumentException("Invalid password hash length");
 
+      final long journalSequenceNumber;
+
       synchronized (account)
       {
          if (account.getActivationState() != ActivationState.Activated)
@@ -1233,23 +1413,33 @@ final public class UserAccountManager
             account.setPasswordHash(newPasswordHash);
             account.setPasswordResetCode(null);
 
-            return true;
+            journalSequenceNumber = recordAccountChange(account, null, null);
          }
          else
             return false;
       }
+
+      journal.awaitDurable(journalSequenceNumber);
+
+      return true;
    }
 
 
    private void handleUpdateSendEmailAlerts(final FeedbactoryUserAccount account, final boolean sendEmailAlerts)
    {
+      final long journalSequenceNumber;
+
       synchronized (account)
       {
          if (account.getActivationState() != ActivationState.Activated)
             throw new IllegalStateException("Cannot update send email alerts for non-activated account, ID " + account.getID());
 
          account.setSendEmailAlerts(sendEmailAlerts);
+
+         journalSequenceNumber = recordAccountChange(account, null, null);
       }
+
+      journal.awaitDurable(journalSequenceNumber);
    }
 
 
@@ -1278,16 +1468,324 @@ final public class UserAccountManager
 
       if (account != null)
       {
+         final long journalSequenceNumber;
+
          synchronized (account)
          {
             account.setMessage(message);
+
+            journalSequenceNumber = recordAccountChange(account, null, null);
          }
+
+         journal.awaitDurable(journalSequenceNumber);
       }
 
       return account;
    }
 
 
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   // Caller must be sync'd on the user account.
+   private void writeAccount(final FeedbactoryUserAccount account, final DataOutputStream accountDataStream) throws IOException
+   {
+      accountDataStream.writeInt(account.getID().intValue());
+
+      accountDataStream.writeUTF(account.getEmail());
+
+      if (account.getPendingEmail() != null)
+      {
+         accountDataStream.writeBoolean(true);
+         accountDataStream.writeUTF(account.getPendingEmail());
+      }
+      else
+         accountDataStream.writeBoolean(false);
+
+      if (account.hasEmailConfirmationCode())
+      {
+         accountDataStream.writeBoolean(true);
+         accountDataStream.writeUTF(account.getEmailConfirmationCode());
+         accountDataStream.writeLong(account.getEmailConfirmationCodeLastUpdatedTime());
+      }
+      else
+         accountDataStream.writeBoolean(false);
+
+      if (account.hasPasswordHash())
+      {
+         accountDataStream.writeBoolean(true);
+         accountDataStream.write(account.getPasswordHash());
+      }
+      else
+         accountDataStream.writeBoolean(false);
+
+      if (account.hasPasswordResetCode())
+      {
+         accountDataStream.writeBoolean(true);
+         accountDataStream.writeUTF(account.getPasswordResetCode());
+         accountDataStream.writeLong(account.getPasswordResetCodeLastUpdatedTime());
+      }
+      else
+         accountDataStream.writeBoolean(false);
+
+      accountDataStream.writeByte(account.getGender().value);
+      accountDataStream.writeLong(account.getDateOfBirth());
+      accountDataStream.writeBoolean(account.getSendEmailAlerts());
+
+      accountDataStream.writeByte(account.getMessage().message.messageType.value);
+      if (account.getMessage().message.messageType != MessageType.NoMessage)
+      {
+         accountDataStream.writeUTF(account.getMessage().message.message);
+         accountDataStream.writeLong(account.getMessage().messageTime);
+      }
+
+      final byte[] lastAuthenticatedIPAddress = account.getLastAuthenticatedIPAddress().getAddress();
+      // Writing the InetAddress byte length as a single byte, think I can safely assume this (4 bytes for IPv4, 16 for IPv6).
+      accountDataStream.writeByte(lastAuthenticatedIPAddress.length);
+      accountDataStream.write(lastAuthenticatedIPAddress);
+
+      accountDataStream.writeByte(account.getActivationState().value);
+
+      accountDataStream.writeLong(account.getCreationTime());
+   }
+
+
+   private FeedbactoryUserAccount readAccount(final int accountID, final DataInput accountDataStream) throws IOException
+   {
+      final String emailConfirmationCode;
+      final long emailConfirmationCodeLastUpdatedTime;
+      final byte[] passwordHash;
+      final String passwordResetCode;
+      final long passwordResetCodeLastUpdatedTime;
+      final TimestampedMessage timestampedMessage;
+
+      final String email = accountDataStream.readUTF();
+
+      final String pendingEmail = accountDataStream.readBoolean() ? accountDataStream.readUTF() : null;
+
+      if (accountDataStream.readBoolean())
+      {
+         emailConfirmationCode = accountDataStream.readUTF();
+         emailConfirmationCodeLastUpdatedTime = accountDataStream.readLong();
+      }
+      else
+      {
+         emailConfirmationCode = null;
+         emailConfirmationCodeLastUpdatedTime = FeedbactoryConstants.NoTime;
+      }
+
+      if (accountDataStream.readBoolean())
+      {
+         passwordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
+         accountDataStream.readFully(passwordHash);
+      }
+      else
+         passwordHash = null;
+
+      if (accountDataStream.readBoolean())
+      {
+         passwordResetCode = accountDataStream.readUTF();
+         passwordResetCodeLastUpdatedTime = accountDataStream.readLong();
+      }
+      else
+      {
+         passwordResetCode = null;
+         passwordResetCodeLastUpdatedTime = FeedbactoryConstants.NoTime;
+      }
+
+      final byte genderValue = accountDataStream.readByte();
+      final Gender gender = Gender.fromValue(genderValue);
+      if (gender == null)
+         throw new IllegalArgumentException("Invalid gender value: " + genderValue);
+
+      final long dateOfBirth = accountDataStream.readLong();
+
+      final boolean sendAnnouncements = accountDataStream.readBoolean();
+
+      final byte messageTypeValue = accountDataStream.readByte();
+      final MessageType messageType = MessageType.fromValue(messageTypeValue);
+      if (messageType == null)
+         throw new IllegalArgumentException("Invalid message type value: " + messageTypeValue);
+      else if (messageType != MessageType.NoMessage)
+      {
+         final Message message = new Message(messageType, accountDataStream.readUTF());
+         timestampedMessage = new TimestampedMessage(message, accountDataStream.readLong());
+      }
+      else
+         timestampedMessage = TimestampedMessage.NoMessage;
+
+      final byte lastAuthenticatedIPAddressLength = accountDataStream.readByte();
+      final byte[] lastAuthenticatedIPAddress = new byte[lastAuthenticatedIPAddressLength];
+      accountDataStream.readFully(lastAuthenticatedIPAddress);
+
+      final ActivationState activationState = ActivationState.toActivationState(accountDataStream.readByte());
+
+      final long creationTime = accountDataStream.readLong();
+
+      final FeedbactoryUserAccount account = new FeedbactoryUserAccount(accountID, creationTime);
+
+      // Synchronize to ensure the visibility of the initialised non-final fields to subsequent threads.
+      synchronized (account)
+      {
+         account.setEmail(email);
+         account.setPendingEmail(pendingEmail);
+         account.setEmailConfirmationCode(emailConfirmationCode, emailConfirmationCodeLastUpdatedTime);
+         account.setPasswordHash(passwordHash);
+         account.setPasswordResetCode(passwordResetCode, passwordResetCodeLastUpdatedTime);
+         account.setGender(gender);
+         account.setDateOfBirth(dateOfBirth);
+         account.setSendEmailAlerts(sendAnnouncements);
+         account.setMessage(timestampedMessage);
+         account.setLastAuthenticatedIPAddress(InetAddress.getByAddress(lastAuthenticatedIPAddress));
+         account.setActivationState(activationState);
+      }
+
+      return account;
+   }
+
+
+   // Caller must be sync'd on the user account.
+   private void copyAccountState(final FeedbactoryUserAccount sourceAccount, final FeedbactoryUserAccount targetAccount)
+   {
+      targetAccount.setEmail(sourceAccount.getEmail());
+      targetAccount.setPendingEmail(sourceAccount.getPendingEmail());
+      targetAccount.setEmailConfirmationCode(sourceAccount.getEmailConfirmationCode(), sourceAccount.getEmailConfirmationCodeLastUpdatedTime());
+      targetAccount.setPasswordHash(sourceAccount.getPasswordHash());
+      targetAccount.setPasswordResetCode(sourceAccount.getPasswordResetCode(), sourceAccount.getPasswordResetCodeLastUpdatedTime());
+      targetAccount.setGender(sourceAccount.getGender());
+      targetAccount.setDateOfBirth(sourceAccount.getDateOfBirth());
+      targetAccount.setSendEmailAlerts(sourceAccount.getSendEmailAlerts());
+      targetAccount.setMessage(sourceAccount.getMessage());
+      targetAccount.setLastAuthenticatedIPAddress(sourceAccount.getLastAuthenticatedIPAddress());
+      targetAccount.setActivationState(sourceAccount.getActivationState());
+   }
+
+
+   /* Caller must be sync'd on the user account. The email key parameters are the normalised emails that have been removed from or added to
+    * the accountsByEmail collection for this account by the operation being recorded, if any.
+    *
+    * The account and email keys are flagged for the next delta checkpoint before the change is journalled. Both happen under the account lock, so a
+    * delta checkpoint that clears the flag before locking the account will either write the change or leave the flag set for the following delta.
+    */
+   private long recordAccountChange(final FeedbactoryUserAccount account, final String removedEmailKey, final String addedEmailKey)
+   {
+      dirtyAccountIDs.add(account.getID());
+
+      if (removedEmailKey != null)
+         dirtyEmailKeys.add(removedEmailKey);
+
+      if (addedEmailKey != null)
+         dirtyEmailKeys.add(addedEmailKey);
+
+      indexAccountExpiries(account);
+
+      final ByteArrayOutputStream recordByteStream = new ByteArrayOutputStream(256);
+      final DataOutputStream recordStream = new DataOutputStream(recordByteStream);
+
+      try
+      {
+         writeAccount(account, recordStream);
+
+         writeOptionalEmailKey(removedEmailKey, recordStream);
+         writeOptionalEmailKey(addedEmailKey, recordStream);
+      }
+      catch (final IOException ioException)
+      {
+         // Not possible when writing to an in-memory stream.
+         throw new RuntimeException(ioException);
+      }
+
+      return journal.append(WriteAheadJournal.RecordSource.UserAccount, recordByteStream.toByteArray());
+   }
+
+
+   /* Caller must be sync'd on the user account. Every operation that issues or clears a code or pending email, or changes the activation state, is recorded
+    * via recordAccountChange() so this is the one place where the expiry index needs to be maintained. Expiries that have since been cleared are left in
+    * the index, to be discarded by the housekeeping task when they fall due.
+    */
+   private void indexAccountExpiries(final FeedbactoryUserAccount account)
+   {
+      if (account.getActivationState() == ActivationState.NotActivated)
+         expiryIndex.addExpiry(account.getID(), AccountExpiryIndex.ExpiryType.PendingAccount,
+                               account.getEmailConfirmationCodeLastUpdatedTime() + PendingAccountExpiryPeriodMilliseconds);
+
+      if (account.getPendingEmail() != null)
+         expiryIndex.addExpiry(account.getID(), AccountExpiryIndex.ExpiryType.PendingEmail,
+                               account.getEmailConfirmationCodeLastUpdatedTime() + PendingEmailExpiryPeriodMilliseconds);
+
+      if (account.hasPasswordResetCode())
+         expiryIndex.addExpiry(account.getID(), AccountExpiryIndex.ExpiryType.PasswordResetCode,
+                               account.getPasswordResetCodeLastUpdatedTime() + PasswordResetCodeExpiryPeriodMilliseconds);
+   }
+
+
+   private void writeOptionalEmailKey(final String emailKey, final DataOutputStream recordStream) throws IOException
+   {
+      if (emailKey != null)
+      {
+         recordStream.writeBoolean(true);
+         recordStream.writeUTF(emailKey);
+      }
+      else
+         recordStream.writeBoolean(false);
+   }
+
+
+   private void replayJournalledAccount(final DataInputStream recordStream) throws IOException
+   {
+      final int accountID = recordStream.readInt();
+      final FeedbactoryUserAccount account = applyRestoredAccount(readAccount(accountID, recordStream));
+      final String removedEmailKey = recordStream.readBoolean() ? recordStream.readUTF() : null;
+      final String addedEmailKey = recordStream.readBoolean() ? recordStream.readUTF() : null;
+
+      // The same conditional removal as that performed by the live operations.
+      if (removedEmailKey != null)
+         accountsByEmail.remove(removedEmailKey, account);
+
+      if (addedEmailKey != null)
+         accountsByEmail.put(addedEmailKey, account);
+
+      synchronized (account)
+      {
+         indexAccountExpiries(account);
+      }
+   }
+
+
+   /* Applies a full snapshot of an account read from a delta checkpoint or the journal over the restored data, returning the live account object.
+    * The account object must be updated in place if it already exists, since it may be keyed by any number of emails in accountsByEmail.
+    */
+   private FeedbactoryUserAccount applyRestoredAccount(final FeedbactoryUserAccount restoredAccount)
+   {
+      final Integer accountID = restoredAccount.getID();
+      FeedbactoryUserAccount account = accountsByID.get(accountID);
+
+      if (account == null)
+      {
+         account = restoredAccount;
+
+         if (account.getActivationState() != ActivationState.Expired)
+            accountsByID.put(accountID, account);
+      }
+      else
+      {
+         synchronized (account)
+         {
+            copyAccountState(restoredAccount, account);
+         }
+
+         if (account.getActivationState() == ActivationState.Expired)
+            accountsByID.remove(accountID);
+      }
+
+      advanceAccountIDCounter(accountID.intValue());
+
+      return account;
+   }
+
+
    /****************************************************************************
     * 
     ***************************************************************************/
@@ -1298,124 +1796,218 @@ final public class UserAccountManager
     */
    private void handleSaveCheckpoint(final Path checkpointPath) throws IOException
    {
-      final File accountDataFile = checkpointPath.resolve(AccountDataFilename).toFile();
-      final File accountEmailsFile = checkpointPath.resolve(AccountEmailsFilename).toFile();
+      final int shardCount = ShardedCheckpointFile.DefaultShardCount;
 
-      try
-      (
-         final DataOutputStream accountDataStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(accountDataFile)));
-         final DataOutputStream accountEmailsStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(accountEmailsFile)));
-      )
-      {
-         byte[] lastAuthenticatedIPAddress;
+      final List<List<FeedbactoryUserAccount>> accountShards = new ArrayList<>(shardCount);
+      for (int shardNumber = 0; shardNumber < shardCount; shardNumber ++)
+         accountShards.add(new ArrayList<FeedbactoryUserAccount>(accountsByID.size() / shardCount));
+
+      for (final FeedbactoryUserAccount account : accountsByID.values())
+         accountShards.get(ShardedCheckpointFile.getShardNumber(account.getID().intValue(), shardCount)).add(account);
 
-         for (final FeedbactoryUserAccount account : accountsByID.values())
+      new ShardedCheckpointFile(checkpointPath, AccountDataBaseFilename).write(shardCount, new ShardedCheckpointFile.ShardWriter()
+      {
+         @Override
+         final public void writeShard(final int shardNumber, final DataOutputStream accountDataStream) throws IOException
          {
-            synchronized (account)
+            final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+
+            for (final FeedbactoryUserAccount account : accountShards.get(shardNumber))
             {
-               if (account.getActivationState() == ActivationState.Expired)
-                  continue;
+               synchronized (account)
+               {
+                  if (account.getActivationState() == ActivationState.Expired)
+                     continue;
 
-               accountDataStream.writeInt(account.getID().intValue());
+                  writeAccount(account, recordBuffer.startRecord());
+               }
 
-               accountDataStream.writeUTF(account.getEmail());
+               recordBuffer.writeRecord(accountDataStream);
+            }
 
-               if (account.getPendingEmail() != null)
-               {
-                  accountDataStream.writeBoolean(true);
-                  accountDataStream.writeUTF(account.getPendingEmail());
-               }
-               else
-                  accountDataStream.writeBoolean(false);
+            // Finalise the output with a 'null' user account ID.
+            accountDataStream.writeInt(UserAccountConstants.NoAccountID);
+         }
+      });
 
-               if (account.hasEmailConfirmationCode())
-               {
-                  accountDataStream.writeBoolean(true);
-                  accountDataStream.writeUTF(account.getEmailConfirmationCode());
-                  accountDataStream.writeLong(account.getEmailConfirmationCodeLastUpdatedTime());
-               }
-               else
-                  accountDataStream.writeBoolean(false);
+      /* The email shards are partitioned by the ID of the account that they reference, so that each email shard lines up with the account shard of the same number.
+       * As for the accounts, the partitioning is performed up front so that each shard worker has only its own records to iterate over.
+       */
+      final List<Entry<String, FeedbactoryUserAccount>> accountEmailEntries = accountsByEmail.getEntries();
 
-               if (account.hasPasswordHash())
-               {
-                  accountDataStream.writeBoolean(true);
-                  accountDataStream.write(account.getPasswordHash());
-               }
-               else
-                  accountDataStream.writeBoolean(false);
+      final List<List<Entry<String, FeedbactoryUserAccount>>> accountEmailShards = new ArrayList<>(shardCount);
+      for (int shardNumber = 0; shardNumber < shardCount; shardNumber ++)
+         accountEmailShards.add(new ArrayList<Entry<String, FeedbactoryUserAccount>>(accountEmailEntries.size() / shardCount));
 
-               if (account.hasPasswordResetCode())
-               {
-                  accountDataStream.writeBoolean(true);
-                  accountDataStream.writeUTF(account.getPasswordResetCode());
-                  accountDataStream.writeLong(account.getPasswordResetCodeLastUpdatedTime());
-               }
-               else
-                  accountDataStream.writeBoolean(false);
+      for (final Entry<String, FeedbactoryUserAccount> accountsEntry : accountEmailEntries)
+         accountEmailShards.get(ShardedCheckpointFile.getShardNumber(accountsEntry.getValue().getID().intValue(), shardCount)).add(accountsEntry);
 
-               accountDataStream.writeByte(account.getGender().value);
-               accountDataStream.writeLong(account.getDateOfBirth());
-               accountDataStream.writeBoolean(account.getSendEmailAlerts());
+      new ShardedCheckpointFile(checkpointPath, AccountEmailsBaseFilename).write(shardCount, new ShardedCheckpointFile.ShardWriter()
+      {
+         @Override
+         final public void writeShard(final int shardNumber, final DataOutputStream accountEmailsStream) throws IOException
+         {
+            final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+            DataOutputStream recordStream;
 
-               accountDataStream.writeByte(account.getMessage().message.messageType.value);
-               if (account.getMessage().message.messageType != MessageType.NoMessage)
+            for (final Entry<String, FeedbactoryUserAccount> accountsEntry : accountEmailShards.get(shardNumber))
+            {
+               synchronized (accountsEntry.getValue())
                {
-                  accountDataStream.writeUTF(account.getMessage().message.message);
-                  accountDataStream.writeLong(account.getMessage().messageTime);
+                  /* Since the user account emails are written after the attached user accounts, it's possible that:
+                   * 1. The housekeeping task may have expired an account between the user account being written and the attached email being written here.
+                   *    In this case, the user account data above will have been persisted but not the email (there will only be one for a non-activated account,
+                   *    and other account types cannot be expired). On restoration, a record will be created in userAccountsByID but with no corresponding
+                   *    record in userAccountsByEmail. This is not a problem since after restoration, the housekeeping will eventually expire the 'orphaned'
+                   *    user account as it would with any non-activated account. See the note above in handleExpiredPendingUserAccounts().
+                   *
+                   * 2. A new account is added midway through this save process, leading to the reverse of case 1: the account was not added in time
+                   *    to have its data saved in the above loop, but has been created by this point and its email is saved, pointing to a phantom
+                   *    account ID. For this reason, the restoration process needs to perform a check to ensure that each ID attached to an account email
+                   *    actually references an existing account object.
+                   */
+                  if (accountsEntry.getValue().getActivationState() == ActivationState.Expired)
+                     continue;
+
+                  recordStream = recordBuffer.startRecord();
+                  recordStream.writeInt(accountsEntry.getValue().getID().intValue());
+                  // The index holds the emails as they were supplied, the checkpoint holds the normalised keys.
+                  recordStream.writeUTF(UserAccountUtilities.getNormalisedEmail(accountsEntry.getKey()));
                }
 
-               lastAuthenticatedIPAddress = account.getLastAuthenticatedIPAddress().getAddress();
-               // Writing the InetAddress byte length as a single byte, think I can safely assume this (4 bytes for IPv4, 16 for IPv6).
-               accountDataStream.writeByte(lastAuthenticatedIPAddress.length);
-               accountDataStream.write(lastAuthenticatedIPAddress);
+               recordBuffer.writeRecord(accountEmailsStream);
+            }
+
+            // Finalise the output with a 'null' user account ID.
+            accountEmailsStream.writeInt(UserAccountConstants.NoAccountID);
+         }
+      });
+   }
+
+
+   /* Writes only the accounts and email keys that have been flagged as changed since the previous checkpoint, full or delta. Each flag is cleared just before
+    * the record is examined, so a change that races with this process is either written here or remains flagged for the next delta.
+    *
+    * The email keys are written before the accounts, the reverse of the full checkpoint. A new account flags its ID before its email key, so any email key
+    * picked up here will have its account picked up by the later pass through the account IDs, rather than possibly missing the boat and being
+    * dropped as a phantom email on restoration. Accounts that were examined before their email keys were flagged will simply have those keys written
+    * in the following delta.
+    */
+   private void handleSaveDeltaCheckpoint(final Path checkpointPath) throws IOException
+   {
+      final File accountDataDeltaFile = checkpointPath.resolve(AccountDataDeltaFilename).toFile();
+      final File accountEmailsDeltaFile = checkpointPath.resolve(AccountEmailsDeltaFilename).toFile();
+
+      try
+      (
+         final DataOutputStream accountDataStream = CheckpointFileFormat.openOutput(accountDataDeltaFile);
+         final DataOutputStream accountEmailsStream = CheckpointFileFormat.openOutput(accountEmailsDeltaFile);
+      )
+      {
+         final CheckpointRecordBuffer recordBuffer = new CheckpointRecordBuffer();
+         DataOutputStream recordStream;
+
+         final List<String> removedEmailKeys = new ArrayList<>();
+         final Iterator<String> dirtyEmailKeysIterator = dirtyEmailKeys.iterator();
+         String emailKey;
+         FeedbactoryUserAccount account;
+
+         while (dirtyEmailKeysIterator.hasNext())
+         {
+            emailKey = dirtyEmailKeysIterator.next();
+            dirtyEmailKeysIterator.remove();
+
+            account = accountsByEmail.get(emailKey);
+
+            if (account == null)
+            {
+               removedEmailKeys.add(emailKey);
+               continue;
+            }
 
-               accountDataStream.writeByte(account.getActivationState().value);
+            synchronized (account)
+            {
+               if (account.getActivationState() == ActivationState.Expired)
+               {
+                  removedEmailKeys.add(emailKey);
+                  continue;
+               }
 
-               accountDataStream.writeLong(account.getCreationTime());
+               recordStream = recordBuffer.startRecord();
+               recordStream.writeInt(account.getID().intValue());
+               recordStream.writeUTF(emailKey);
             }
+
+            recordBuffer.writeRecord(accountEmailsStream);
          }
 
-         // Finalise the output with a 'null' user account ID.
-         accountDataStream.writeInt(UserAccountConstants.NoAccountID);
+         accountEmailsStream.writeInt(UserAccountConstants.NoAccountID);
+
+         // Email key tombstones.
+         accountEmailsStream.writeInt(removedEmailKeys.size());
+         for (final String removedEmailKey : removedEmailKeys)
+            accountEmailsStream.writeUTF(removedEmailKey);
 
-         for (final Entry<String, FeedbactoryUserAccount> accountsEntry : accountsByEmail.entrySet())
+         final List<Integer> removedAccountIDs = new ArrayList<>();
+         final Iterator<Integer> dirtyAccountIDsIterator = dirtyAccountIDs.iterator();
+         Integer accountID;
+
+         while (dirtyAccountIDsIterator.hasNext())
          {
-            synchronized (accountsEntry.getValue())
+            accountID = dirtyAccountIDsIterator.next();
+            dirtyAccountIDsIterator.remove();
+
+            account = accountsByID.get(accountID);
+
+            if (account == null)
             {
-               /* Since the user account emails are written after the attached user accounts, it's possible that:
-                * 1. The housekeeping task may have expired an account between the user account being written and the attached email being written here.
-                *    In this case, the user account data above will have been persisted but not the email (there will only be one for a non-activated account,
-                *    and other account types cannot be expired). On restoration, a record will be created in userAccountsByID but with no corresponding
-                *    record in userAccountsByEmail. This is not a problem since after restoration, the housekeeping will eventually expire the 'orphaned'
-                *    user account as it would with any non-activated account. See the note above in handleExpiredPendingUserAccounts().
-                *
-                * 2. A new account is added midway through this save process, leading to the reverse of case 1: the account was not added in time
-                *    to have its data saved in the above loop, but has been created by this point and its email is saved, pointing to a phantom
-                *    account ID. For this reason, the restoration process needs to perform a check to ensure that each ID attached to an account email
-                *    actually references an existing account object.
-                */
-               if (accountsEntry.getValue().getActivationState() == ActivationState.Expired)
+               removedAccountIDs.add(accountID);
+               continue;
+            }
+
+            synchronized (account)
+            {
+               if (account.getActivationState() == ActivationState.Expired)
+               {
+                  removedAccountIDs.add(accountID);
                   continue;
+               }
 
-               accountEmailsStream.writeInt(accountsEntry.getValue().getID().intValue());
-               accountEmailsStream.writeUTF(accountsEntry.getKey());
+               writeAccount(account, recordBuffer.startRecord());
             }
+
+            recordBuffer.writeRecord(accountDataStream);
          }
 
-         // Finalise the output with a 'null' user account ID.
-         accountEmailsStream.writeInt(UserAccountConstants.NoAccountID);
+         accountDataStream.writeInt(UserAccountConstants.NoAccountID);
+
+         // Account tombstones.
+         for (final Integer removedAccountID : removedAccountIDs)
+            accountDataStream.writeInt(removedAccountID.intValue());
+
+         accountDataStream.writeInt(UserAccountConstants.NoAccountID);
       }
    }
 
 
+   private void handleResetDeltaTracking()
+   {
+      dirtyAccountIDs.clear();
+      dirtyEmailKeys.clear();
+   }
+
+
    /* Refer to the concurrency memos at the top of the class, within handleAddNewAccount, and within the housekeeper regarding the integrity of the data of both
     * the save and restore methods.
     *
     * From a cold start of the server, this method should be run before both housekeeping and the client connections are active. Also it must be run before other
     * dependent data restoration services in other classes are run, ie. which link to user accounts.
+    *
+    * The first element of the checkpoint chain is a full checkpoint and any following elements are delta checkpoints, in the order that they were saved.
+    * Each delta and then the journal tail, if any, is applied over the full checkpoint data. The delta and journal account records are full snapshots of
+    * the account state, so the restored data for an account is simply overwritten by each of its later records in turn.
     */
-   private void handleRestoreFromCheckpoint(final Path checkpointPath) throws IOException
+   private void handleRestoreFromCheckpoint(final List<Path> checkpointChain, final JournalTail journalTail) throws IOException
    {
       if (isHousekeepingStarted())
          throw new IllegalStateException("Cannot restore from checkpoint while housekeeping task is active.");
@@ -1423,146 +2015,145 @@ final public class UserAccountManager
       accountIDCounter.set(0);
       accountsByID.clear();
       accountsByEmail.clear();
+      expiryIndex.clear();
+      handleResetDeltaTracking();
 
-      final File accountDataFile = checkpointPath.resolve(AccountDataFilename).toFile();
-      final File accountEmailsFile = checkpointPath.resolve(AccountEmailsFilename).toFile();
+      restoreFullCheckpointData(checkpointChain.get(0));
 
-      try
-      (
-         final DataInputStream accountDataStream = new DataInputStream(new BufferedInputStream(new FileInputStream(accountDataFile)));
-         final DataInputStream accountEmailsStream = new DataInputStream(new BufferedInputStream(new FileInputStream(accountEmailsFile)));
-      )
-      {
-         int accountID;
-         int largestAccountID = -1;
-         String email;
-         String pendingEmail;
-         String emailConfirmationCode;
-         long emailConfirmationCodeLastUpdatedTime;
-         byte[] passwordHash;
-         String passwordResetCode;
-         long passwordResetCodeLastUpdatedTime;
-         byte genderValue;
-         Gender gender;
-         long dateOfBirth;
-         boolean sendAnnouncements;
-         byte messageTypeValue;
-         MessageType messageType;
-         Message message;
-         TimestampedMessage timestampedMessage;
-         byte lastAuthenticatedIPAddressLength;
-         byte[] lastAuthenticatedIPAddress;
-         ActivationState activationState;
-         long creationTime;
-         FeedbactoryUserAccount account;
+      for (final Path deltaCheckpointPath : checkpointChain.subList(1, checkpointChain.size()))
+         restoreDeltaCheckpointData(deltaCheckpointPath);
 
-         while ((accountID = accountDataStream.readInt()) != UserAccountConstants.NoAccountID)
+      // The checkpoints don't hold the expiry index, it's rebuilt from the restored accounts. The journal replay indexes each account that it restores.
+      for (final FeedbactoryUserAccount account : accountsByID.values())
+      {
+         synchronized (account)
          {
-            /* Track the largest user account ID, since the primary key counter (accountIDCounter) will have
-             * to be reset to a point beyond it after the restoration so that new unique user account ID's can be generated.
-             */
-            if (accountID > largestAccountID)
-               largestAccountID = accountID;
+            indexAccountExpiries(account);
+         }
+      }
 
-            email = accountDataStream.readUTF();
+      journalTail.replay(WriteAheadJournal.RecordSource.UserAccount, new WriteAheadJournal.JournalRecordReplayer()
+      {
+         @Override
+         final public void replayRecord(final DataInputStream recordStream) throws IOException
+         {
+            replayJournalledAccount(recordStream);
+         }
+      });
+   }
 
-            pendingEmail = accountDataStream.readBoolean() ? accountDataStream.readUTF() : null;
 
-            if (accountDataStream.readBoolean())
-            {
-               emailConfirmationCode = accountDataStream.readUTF();
-               emailConfirmationCodeLastUpdatedTime = accountDataStream.readLong();
-            }
-            else
-            {
-               emailConfirmationCode = null;
-               emailConfirmationCodeLastUpdatedTime = FeedbactoryConstants.NoTime;
-            }
+   /* The shards are decoded concurrently, each into its own staging collection which is then merged into the shared collection in one hit. All of the account
+    * shards are restored before any of the email shards, so the email restoration can resolve the account ID's from any shard.
+    */
+   private void restoreFullCheckpointData(final Path checkpointPath) throws IOException
+   {
+      new ShardedCheckpointFile(checkpointPath, AccountDataBaseFilename).read(new ShardedCheckpointFile.ShardReader()
+      {
+         @Override
+         final public void readShard(final int shardNumber, final DataInput accountDataStream) throws IOException
+         {
+            final List<FeedbactoryUserAccount> stagedAccounts = new ArrayList<>();
+            int accountID;
+            int largestAccountID = UserAccountConstants.NoAccountID;
 
-            if (accountDataStream.readBoolean())
+            while ((accountID = accountDataStream.readInt()) != UserAccountConstants.NoAccountID)
             {
-               passwordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
-               accountDataStream.readFully(passwordHash);
-            }
-            else
-               passwordHash = null;
+               /* Track the largest user account ID, since the primary key counter (accountIDCounter) will have
+                * to be reset to a point beyond it after the restoration so that new unique user account ID's can be generated.
+                */
+               if (accountID > largestAccountID)
+                  largestAccountID = accountID;
 
-            if (accountDataStream.readBoolean())
-            {
-               passwordResetCode = accountDataStream.readUTF();
-               passwordResetCodeLastUpdatedTime = accountDataStream.readLong();
-            }
-            else
-            {
-               passwordResetCode = null;
-               passwordResetCodeLastUpdatedTime = FeedbactoryConstants.NoTime;
+               stagedAccounts.add(readAccount(accountID, accountDataStream));
             }
 
-            genderValue = accountDataStream.readByte();
-            gender = Gender.fromValue(genderValue);
-            if (gender == null)
-               throw new IllegalArgumentException("Invalid gender value: " + genderValue);
+            for (final FeedbactoryUserAccount account : stagedAccounts)
+               accountsByID.put(account.getID(), account);
 
-            dateOfBirth = accountDataStream.readLong();
+            advanceAccountIDCounter(largestAccountID);
+         }
+      });
 
-            sendAnnouncements = accountDataStream.readBoolean();
+      new ShardedCheckpointFile(checkpointPath, AccountEmailsBaseFilename).read(new ShardedCheckpointFile.ShardReader()
+      {
+         @Override
+         final public void readShard(final int shardNumber, final DataInput accountEmailsStream) throws IOException
+         {
+            int accountID;
+            String email;
+            FeedbactoryUserAccount account;
 
-            messageTypeValue = accountDataStream.readByte();
-            messageType = MessageType.fromValue(messageTypeValue);
-            if (messageType == null)
-               throw new IllegalArgumentException("Invalid message type value: " + messageTypeValue);
-            else if (messageType != MessageType.NoMessage)
+            while ((accountID = accountEmailsStream.readInt()) != UserAccountConstants.NoAccountID)
             {
-               message = new Message(messageType, accountDataStream.readUTF());
-               timestampedMessage = new TimestampedMessage(message, accountDataStream.readLong());
+               email = accountEmailsStream.readUTF();
+               account = accountsByID.get(accountID);
+
+               /* Due to the concurrency at the time of persisting the data, the email may have been referencing a new account ID that
+                * had 'missed the boat' during the earlier part of the save process. See the comments in the save method.
+                * For this reason, the restoration process must check for emails referencing phantom account IDs.
+                */
+               if (account != null)
+                  accountsByEmail.put(email, account);
             }
-            else
-               timestampedMessage = TimestampedMessage.NoMessage;
+         }
+      });
+   }
 
-            lastAuthenticatedIPAddressLength = accountDataStream.readByte();
-            lastAuthenticatedIPAddress = new byte[lastAuthenticatedIPAddressLength];
-            accountDataStream.readFully(lastAuthenticatedIPAddress);
 
-            activationState = ActivationState.toActivationState(accountDataStream.readByte());
+   // Moves the account primary key counter beyond the restored account ID, if it isn't already.
+   private void advanceAccountIDCounter(final int restoredAccountID)
+   {
+      int accountIDCounterValue;
 
-            creationTime = accountDataStream.readLong();
+      do
+      {
+         accountIDCounterValue = accountIDCounter.get();
 
-            account = new FeedbactoryUserAccount(accountID, creationTime);
+         if (restoredAccountID < accountIDCounterValue)
+            return;
+      }
+      while (! accountIDCounter.compareAndSet(accountIDCounterValue, restoredAccountID + 1));
+   }
 
-            // Synchronize to ensure the visibility of the initialised non-final fields to subsequent threads.
-            synchronized (account)
-            {
-               account.setEmail(email);
-               account.setPendingEmail(pendingEmail);
-               account.setEmailConfirmationCode(emailConfirmationCode, emailConfirmationCodeLastUpdatedTime);
-               account.setPasswordHash(passwordHash);
-               account.setPasswordResetCode(passwordResetCode, passwordResetCodeLastUpdatedTime);
-               account.setGender(gender);
-               account.setDateOfBirth(dateOfBirth);
-               account.setSendEmailAlerts(sendAnnouncements);
-               account.setMessage(timestampedMessage);
-               account.setLastAuthenticatedIPAddress(InetAddress.getByAddress(lastAuthenticatedIPAddress));
-               account.setActivationState(activationState);
-            }
 
-            accountsByID.put(accountID, account);
-         }
+   private void restoreDeltaCheckpointData(final Path checkpointPath) throws IOException
+   {
+      final File accountDataDeltaFile = checkpointPath.resolve(AccountDataDeltaFilename).toFile();
+      final File accountEmailsDeltaFile = checkpointPath.resolve(AccountEmailsDeltaFilename).toFile();
+
+      try
+      (
+         final DataInputStream accountDataStream = CheckpointFileFormat.openInput(accountDataDeltaFile);
+         final DataInputStream accountEmailsStream = CheckpointFileFormat.openInput(accountEmailsDeltaFile);
+      )
+      {
+         int accountID;
+         FeedbactoryUserAccount account;
+
+         while ((accountID = accountDataStream.readInt()) != UserAccountConstants.NoAccountID)
+            applyRestoredAccount(readAccount(accountID, accountDataStream));
+
+         while ((accountID = accountDataStream.readInt()) != UserAccountConstants.NoAccountID)
+            accountsByID.remove(accountID);
 
-         // Reset the account primary key counter, ready to grab the next user account ID.
-         accountIDCounter.set(largestAccountID + 1);
+         String emailKey;
 
          while ((accountID = accountEmailsStream.readInt()) != UserAccountConstants.NoAccountID)
          {
-            email = accountEmailsStream.readUTF();
+            emailKey = accountEmailsStream.readUTF();
             account = accountsByID.get(accountID);
 
-            /* Due to the concurrency at the time of persisting the data, the email may have been referencing a new account ID that
-             * had 'missed the boat' during the earlier part of the save process. See the comments in the save method.
-             * For this reason, the restoration process must check for emails referencing phantom account IDs.
-             */
+            // As with the full checkpoint, drop any email referencing a phantom account ID rather than leaving the key attached to an earlier account.
             if (account != null)
-               accountsByEmail.put(email, account);
+               accountsByEmail.put(emailKey, account);
+            else
+               accountsByEmail.remove(emailKey);
          }
+
+         final int removedEmailKeys = accountEmailsStream.readInt();
+         for (int removedEmailKeyIndex = 0; removedEmailKeyIndex < removedEmailKeys; removedEmailKeyIndex ++)
+            accountsByEmail.remove(accountEmailsStream.readUTF());
       }
    }
 
@@ -1581,7 +2172,7 @@ final public class UserAccountManager
 
    private FeedbactoryUserAccountView handleGetAccountView(final String email)
    {
-      final FeedbactoryUserAccount feedbactoryUserAccount = accountsByEmail.get(UserAccountUtilities.getNormalisedEmail(email));
+      final FeedbactoryUserAccount feedbactoryUserAccount = accountsByEmail.get(email);
       return (feedbactoryUserAccount != null) ? getAccountView(feedbactoryUserAccount) : null;
    }
 
@@ -1627,7 +2218,40 @@ final public class UserAccountManager
          }
       }
 
-      return new UserAccountManagerMetrics(isHousekeepingStarted(), housekeepingTask.lastRunStartTime, pendingAccounts, activatedAccounts, pendingEmails, activePasswordResetCodes);
+      return new UserAccountManagerMetrics(isHousekeepingStarted(), housekeepingTask.lastRunStartTime, expiryIndex.getIndexedExpiries(),
+                                           accountsByID.getAllocatedSegments(), accountsByID.getSlotCapacity(), accountsByID.getReleasedSegments(), pendingAccounts, activatedAccounts, pendingEmails, activePasswordResetCodes);
+   }
+
+
+   /* Test data generation only. The activated account is inserted directly as for a checkpoint restore, bypassing the account capacity, the sign up
+    * process and the journal, so that production sized data sets can be generated in reasonable time. Returns null if the email is already taken.
+    */
+   private FeedbactoryUserAccount handleAddSyntheticAccount(final String email, final Gender gender, final long dateOfBirth, final byte[] passwordHash,
+                                                            final InetAddress lastAuthenticatedIPAddress, final long creationTime)
+   {
+      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
+      final FeedbactoryUserAccount account = new FeedbactoryUserAccount(accountIDCounter.getAndIncrement(), creationTime);
+
+      synchronized (account)
+      {
+         account.setEmail(email);
+         account.setEmailConfirmationCode(null);
+         account.setPasswordHash(passwordHash);
+         account.setPasswordResetCode(null, FeedbactoryConstants.NoTime);
+         account.setGender(gender);
+         account.setDateOfBirth(dateOfBirth);
+         account.setSendEmailAlerts(false);
+         account.setMessage(TimestampedMessage.NoMessage);
+         account.setLastAuthenticatedIPAddress(lastAuthenticatedIPAddress);
+         account.setActivationState(ActivationState.Activated);
+      }
+
+      if (accountsByEmail.putIfAbsent(normalisedEmail, account) != null)
+         return null;
+
+      accountsByID.put(account.getID(), account);
+
+      return account;
    }
 
 
@@ -1642,9 +2266,16 @@ final public class UserAccountManager
    }
 
 
-   final public FeedbactoryUserAccount getAccountByEmail(final String normalisedEmail)
+   final public FeedbactoryUserAccount getAccountByEmail(final String email)
    {
-      return accountsByEmail.get(normalisedEmail);
+      return accountsByEmail.get(email);
+   }
+
+
+   final FeedbactoryUserAccount addSyntheticAccount(final String email, final Gender gender, final long dateOfBirth, final byte[] passwordHash,
+                                                    final InetAddress lastAuthenticatedIPAddress, final long creationTime)
+   {
+      return handleAddSyntheticAccount(email, gender, dateOfBirth, passwordHash, lastAuthenticatedIPAddress, creationTime);
    }
 
 
@@ -1744,9 +2375,28 @@ final public class UserAccountManager
    }
 
 
-   final public void restoreFromCheckpoint(final Path checkpointPath) throws IOException
+   final public void saveDeltaCheckpoint(final Path checkpointPath) throws IOException
+   {
+      handleSaveDeltaCheckpoint(checkpointPath);
+   }
+
+
+   final public void resetDeltaTracking()
+   {
+      handleResetDeltaTracking();
+   }
+
+
+   final public void restoreFromCheckpoint(final List<Path> checkpointChain, final JournalTail journalTail) throws IOException
    {
-      handleRestoreFromCheckpoint(checkpointPath);
+      handleRestoreFromCheckpoint(checkpointChain, journalTail);
+   }
+
+
+   // Applies a journal record streamed from the primary server to a standby.
+   final public void replayJournalRecord(final DataInputStream recordStream) throws IOException
+   {
+      replayJournalledAccount(recordStream);
    }
 
 
@@ -1756,9 +2406,9 @@ final public class UserAccountManager
    }
 
 
-   final public void startHousekeeping()
+   final public void startHousekeeping(final HousekeepingScheduler housekeepingScheduler)
    {
-      housekeepingTask.start();
+      housekeepingTask.start(housekeepingScheduler);
    }
 
 
@@ -1808,4 +2458,10 @@ final public class UserAccountManager
    {
       return mailer.getMetrics();
    }
+
+
+   final public void setMailerConnectionPoolSize(final int connectionPoolSize)
+   {
+      mailer.setConnectionPoolSize(connectionPoolSize);
+   }
 }
\ No newline at end of file
@@ -10,21 +10,20 @@
  *   now I see little point in defending against this type of attack.
  *
  * - The tracking of unsuccessful sign ins works differently on a per email and per IP address basis. For unsuccessful email sign ins (from an IP address),
- *   a long-ish period of time is monitored. Each unsuccessful sign in accrues a strike against the IP address for that email address, with the time of the
- *   last unsuccessful sign in being recorded. If a threshold is passed, the IP is barred from further sign ins for that email for a minimum amount of time. The
- *   accumulation method is fairly crude - there's no historical digest of sign in attempts and times, only the most recent one. Given this, it's entirely possible
- *   for an IP to be barred from signing into an email if it was to spread out its attempts over a long period of time, say, each attempt slightly less than
- *   EmailLockoutPeriodMilliseconds after the last. It may seem a little harsh, but it saves from having to store EVERY sign in attempt as a separate node, and it
- *   does achieve the purpose: an IP will only be barred from signing into an email if it has made a number of unsuccessful attempts within a relatively short time
- *   frame. And, after the EmailLockoutPeriodMilliseconds has passed, its standing is completely reinstated.
+ *   a long-ish period of time is monitored: if the number of unsuccessful sign ins for the email from the IP address within the last
+ *   EmailLockoutPeriodMilliseconds reaches the threshold, the IP is barred from further sign ins for that email until enough of those attempts have aged out of
+ *   the window. The window slides rather than being reset at fixed intervals, so an IP will only be barred from signing into an email if it has made a number of
+ *   unsuccessful attempts within a relatively short time frame, and its standing is progressively reinstated afterwards.
  *
  * - Lockouts per IP address (for ANY unsuccessful email sign in) operate differently, and understanding the lockout process for these is easiest if you consider the
  *   attempts-per-IP and attempts-per-IP-per-email as being unrelated. More of the attempts-per-IP are allowed before imposing a temporary ban, however the monitor
  *   period is much shorter to detect the more likely form of attack: automated (ie. rapid-fire) requests using the same password for different emails, originating
- *   from the one IP address. As with the monitoring per email, once the threshold has passed, the IP is barred for a long-ish period yet completely reinstated
- *   afterwards. If the IP's unsuccessful sign ins don't push it across the lockout threshold within a monitor period, the counts are reset. Again the intended target for
- *   this type of attack is an automated one. If instead accumulated counts of unsuccessful sign ins for each IP -across- monitor periods were kept (ie. tracking last
- *   unsuccessful sign in time as with the per-email), I would likely run into trouble with larger networks with many PCs sitting behind NAT and sharing the same IP.
+ *   from the one IP address. Once the threshold has been reached within a monitor period, the IP is barred for a long-ish period yet completely reinstated
+ *   afterwards. Again the intended target for this type of attack is an automated one. If instead accumulated counts of unsuccessful sign ins for each IP -across-
+ *   monitor periods were kept, I would likely run into trouble with larger networks with many PCs sitting behind NAT and sharing the same IP.
+ *
+ * - The counts are held by a FailedAuthenticationTracker, which has a fixed memory footprint and ages out its own entries, so there's no housekeeping task.
+ *   See the memos in that class for the details, including the relaxed ordering between the lockout checks and the recording of failed authentications.
  * 
  * - I may wish to consider the merits of blacklisting repeat offenders via the IPAddressRequestMonitor.
  *
@@ -34,19 +33,17 @@
  *
  * - It may also be worthwhile considering an auxilliary anti-spam system for any requests which result in sending emails.
  *
- * - The public checkpointing and housekeeping management methods aren't threadsafe, the caller must carefully coordinate calls to them. For example it's
- *   unsafe to overlap calls to startHousekeeping() and shutdownHousekeeping(), or startHousekeeping() and restoreFromCheckpoint().
- *   It's OK though for a checkpoint to be saved (NOT restored), either periodically or manually, while a housekeeping run is active.
+ * - The public checkpointing methods aren't threadsafe, the caller must carefully coordinate calls to them. It's OK though for a checkpoint to be saved (NOT
+ *   restored) while the server is processing requests.
  */
 
 package com.feedbactory.server.useraccount;
 
 
+import com.feedbactory.server.core.CheckpointFileFormat;
 import com.feedbactory.server.core.FeedbactoryServerConstants;
-import com.feedbactory.server.core.TimeCache;
 import com.feedbactory.server.core.log.FeedbactoryLogger;
 import com.feedbactory.server.core.log.SecurityLogLevel;
-import com.feedbactory.server.core.log.SystemLogLevel;
 import com.feedbactory.server.network.application.NetworkToApplicationGateway.SessionManagerInterface;
 import com.feedbactory.server.network.application.ProcessedOperationStatus;
 import com.feedbactory.server.network.application.RequestUserSession;
@@ -62,36 +59,23 @@ import com.feedbactory.shared.network.BasicOperationStatus;
 import com.feedbactory.shared.useraccount.AccountOperationType;
 import com.feedbactory.shared.useraccount.FeedbactoryUserAccountConstants;
 import com.feedbactory.shared.useraccount.Gender;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 
 final public class UserAccountNetworkGateway
 {
-   static final private String UnsuccessfulSignInAttemptsFilename = "IPAddressFailedAuthentications" + FeedbactoryServerConstants.DataFileExtension;
+   static final private String FailedAuthenticationsFilename = "FailedAuthentications" + FeedbactoryServerConstants.DataFileExtension;
 
-   static final private int FailedAuthenticationMapInitialCapacity = 5000;
+   // The file used by the checkpoints which were saved before the introduction of the FailedAuthenticationTracker.
+   static final private String LegacyFailedAuthenticationsFilename = "IPAddressFailedAuthentications" + FeedbactoryServerConstants.DataFileExtension;
 
    static final private long EmailLockoutPeriodMilliseconds = TimeUnit.MINUTES.toMillis(62);
    static final private long IPAddressLockoutPeriodMilliseconds = TimeUnit.MINUTES.toMillis(62);
@@ -99,22 +83,22 @@ final public class UserAccountNetworkGateway
    // Number of failed email authenticarions from an IP address permitted per EmailLockoutPeriodMilliseconds.
    static final private int EmailLockoutThreshold = 8;
 
-   /* Number of IP address failed authentications (for any email) permitted per HousekeepingTaskFrequencyMinutes (note: NOT per IPAddressLockoutPeriodMilliseconds).
+   /* Number of IP address failed authentications (for any email) permitted per IPAddressMonitorPeriodMilliseconds (note: NOT per IPAddressLockoutPeriodMilliseconds).
     * If I was to impose a figure per IPAddressLockoutPeriodMilliseconds, it would have to be much higher, allowing many more sign in attempts before triggering a ban.
     * By monitoring a smaller time frame I can more effectively target the type of attack most likely to target many user accounts, ie. spammy, eg. trying the same password
     * for different emails in automated requests.
     */
    static final private int IPAddressLockoutThreshold = 34;
 
-   static final private int HousekeepingTaskFrequencyMinutes = 5;
+   static final private long IPAddressMonitorPeriodMilliseconds = TimeUnit.MINUTES.toMillis(5);
 
    final private UserAccountManager accountManager;
 
    final private SessionManagerInterface sessionManagerInterface;
 
-   final private ConcurrentHashMap<InetAddress, IPAddressAuthentication> failedAuthenticationByIPAddress = new ConcurrentHashMap<>(FailedAuthenticationMapInitialCapacity, 0.75f, FeedbactoryServerConstants.ServerConcurrency);
-
-   final private HousekeepingTask housekeepingTask = new HousekeepingTask();
+   final private FailedAuthenticationTracker failedAuthenticationTracker = new FailedAuthenticationTracker(IPAddressMonitorPeriodMilliseconds, IPAddressLockoutThreshold,
+                                                                                                           IPAddressLockoutPeriodMilliseconds,
+                                                                                                           EmailLockoutPeriodMilliseconds, EmailLockoutThreshold);
 
 
    public UserAccountNetworkGateway(final UserAccountManager accountManager, final SessionManagerInterface sessionManagerInterface)
@@ -133,11 +117,10 @@ final public class UserAccountNetworkGateway
 
    static final public class IPAuthenticationMetrics
    {
-      final public boolean isHousekeepingEnabled;
-      final public int housekeepingFrequencyMinutes;
-      final public long housekeepingLastRunStartTime;
+      final public int ipAddressMonitorPeriodMinutes;
 
       final public int numberOfIPAddressesTracking;
+      final public int numberOfEmailsTracking;
 
       final public int emailLockoutThreshold;
       final public int emailLockoutPeriodMinutes;
@@ -147,23 +130,27 @@ final public class UserAccountNetworkGateway
       final public int ipAddressLockoutPeriodMinutes;
       final public int numberOfIPAddressLockouts;
 
+      final public int trackerCapacity;
+      final public long trackerEvictions;
+
 
-      private IPAuthenticationMetrics(final boolean isHousekeepingEnabled, final long housekeepingLastRunStartTime,
-                                      final int numberOfIPAddressesTracking, final int numberOfEmailLockouts, final int numberOfIPAddressLockouts)
+      private IPAuthenticationMetrics(final FailedAuthenticationTracker.TrackerMetrics trackerMetrics)
       {
-         this.isHousekeepingEnabled = isHousekeepingEnabled;
-         this.housekeepingFrequencyMinutes = HousekeepingTaskFrequencyMinutes;
-         this.housekeepingLastRunStartTime = housekeepingLastRunStartTime;
+         this.ipAddressMonitorPeriodMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(IPAddressMonitorPeriodMilliseconds);
 
-         this.numberOfIPAddressesTracking = numberOfIPAddressesTracking;
+         this.numberOfIPAddressesTracking = trackerMetrics.trackedIPAddresses;
+         this.numberOfEmailsTracking = trackerMetrics.trackedEmails;
 
          this.emailLockoutThreshold = EmailLockoutThreshold;
          this.emailLockoutPeriodMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(EmailLockoutPeriodMilliseconds);
-         this.numberOfEmailLockouts = numberOfEmailLockouts;
+         this.numberOfEmailLockouts = trackerMetrics.lockedOutEmails;
 
          this.ipAddressLockoutThreshold = IPAddressLockoutThreshold;
          this.ipAddressLockoutPeriodMinutes = (int) TimeUnit.MILLISECONDS.toMinutes(IPAddressLockoutPeriodMilliseconds);
-         this.numberOfIPAddressLockouts = numberOfIPAddressLockouts;
+         this.numberOfIPAddressLockouts = trackerMetrics.lockedOutIPAddresses;
+
+         this.trackerCapacity = trackerMetrics.slotCapacity;
+         this.trackerEvictions = trackerMetrics.evictions;
       }
    }
 
@@ -198,310 +185,26 @@ final public class UserAccountNetworkGateway
     ***************************************************************************/
 
 
+   /* The tracker holds only hashes of the emails, so unlike the IP address lockouts the individual emails can't be listed; the number of them being tracked
+    * for the IP address, and the number of those which are locked out, are provided instead.
+    */
    static final public class IPAddressFailedAuthenticationMetrics
    {
-      static final private IPAddressFailedAuthenticationMetrics NoFailedAuthentications = new IPAddressFailedAuthenticationMetrics(false, FeedbactoryConstants.NoTime,
-                                                                                                                                   Collections.<EmailFailedAuthenticationMetrics>emptyList());
-
       final public boolean isIPAddressLockedOut;
       final public long lastLockoutTime;
-      final public Collection<EmailFailedAuthenticationMetrics> emailFailedAuthentications;
+      final public int failedAuthentications;
+      final public int numberOfEmailsTracking;
+      final public int numberOfEmailLockouts;
 
 
-      private IPAddressFailedAuthenticationMetrics(final boolean isIPAddressLockedOut, final long lastLockoutTime,
-                                                   final Collection<EmailFailedAuthenticationMetrics> emailFailedAuthentications)
+      private IPAddressFailedAuthenticationMetrics(final boolean isIPAddressLockedOut, final long lastLockoutTime, final int failedAuthentications,
+                                                   final int numberOfEmailsTracking, final int numberOfEmailLockouts)
       {
          this.isIPAddressLockedOut = isIPAddressLockedOut;
          this.lastLockoutTime = lastLockoutTime;
-         this.emailFailedAuthentications = emailFailedAuthentications;
-      }
-   }
-
-
-   /****************************************************************************
-    *
-    *
-    *
-    ***************************************************************************/
-
-
-   static final public class EmailFailedAuthenticationMetrics
-   {
-      final public String email;
-      final public int failedAuthentications;
-      final public long lastFailedAuthenticationTime;
-
-
-      private EmailFailedAuthenticationMetrics(final String email, final int failedAuthentications, final long lastFailedAuthenticationTime)
-      {
-         this.email = email;
          this.failedAuthentications = failedAuthentications;
-         this.lastFailedAuthenticationTime = lastFailedAuthenticationTime;
-      }
-   }
-
-
-   /****************************************************************************
-    *
-    *
-    *
-    ***************************************************************************/
-
-
-   static final private class IPAddressAuthentication
-   {
-      // "In addition, the visible values for any other object or array referenced by those final fields will be at least as up-to-date as the final fields."
-      final private Map<String, FailedEmailAuthentication> attemptsByEmail;
-
-      private int failedAuthentications;
-
-      /* Operationally using the default value of 0L to indicate FeedbactoryConstants.NoTime, to save from having to execute an extra
-       * synchronization block upon initialisation.
-       */
-      private long lastLockoutTime;
-      private boolean isDeleted;
-
-
-      // Operational constructor.
-      private IPAddressAuthentication()
-      {
-         attemptsByEmail = new HashMap<>(1);
-      }
-
-
-      // Restoration constructor.
-      private IPAddressAuthentication(final Map<String, FailedEmailAuthentication> attemptsByEmail)
-      {
-         this.attemptsByEmail = attemptsByEmail;
-      }
-
-
-      private void incrementFailedAuthentications()
-      {
-         failedAuthentications ++;
-      }
-
-
-      private void setFailedAuthentications(final int failedAuthentications)
-      {
-         this.failedAuthentications = failedAuthentications;
-      }
-
-
-      private void resetFailedAuthentications()
-      {
-         failedAuthentications = 0;
-      }
-
-
-      private void markLockoutTime()
-      {
-         lastLockoutTime = TimeCache.getCurrentTimeMilliseconds();
-      }
-
-
-      private void setLastLockoutTime(final long lastLockoutTime)
-      {
-         this.lastLockoutTime = lastLockoutTime;
-      }
-
-
-      private FailedEmailAuthentication putIfAbsentEmailFailedAuthentication(final String normalisedEmail)
-      {
-         FailedEmailAuthentication emailSignInAttempt = attemptsByEmail.get(normalisedEmail);
-
-         if (emailSignInAttempt == null)
-         {
-            emailSignInAttempt = new FailedEmailAuthentication();
-            attemptsByEmail.put(normalisedEmail, emailSignInAttempt);
-         }
-
-         return emailSignInAttempt;
-      }
-
-
-      private void clearEmailFailedAuthentications(final String normalisedEmail)
-      {
-         attemptsByEmail.remove(normalisedEmail);
-      }
-
-
-      private void markAsDeleted()
-      {
-         isDeleted = true;
-      }
-   }
-
-
-   /****************************************************************************
-    * 
-    * 
-    * 
-    ***************************************************************************/
-
-
-   static final private class FailedEmailAuthentication
-   {
-      private int failedAuthentications;
-      private long lastEventTime;
-
-
-      // Restored data constructor.
-      private FailedEmailAuthentication(final int failedAuthentications, final long lastMarkedEventTime)
-      {
-         this.failedAuthentications = failedAuthentications;
-         this.lastEventTime = lastMarkedEventTime;
-      }
-
-
-      // Operational constructor.
-      private FailedEmailAuthentication()
-      {
-         markEventTime();
-      }
-
-
-      private void incrementFailedAuthentications()
-      {
-         failedAuthentications ++;
-      }
-
-
-      private void markEventTime()
-      {
-         lastEventTime = TimeCache.getCurrentTimeMilliseconds();
-      }
-   }
-
-
-   /****************************************************************************
-    * 
-    * 
-    * 
-    ***************************************************************************/
-
-
-   final private class HousekeepingTask implements Runnable, ThreadFactory
-   {
-      private ScheduledThreadPoolExecutor executor;
-
-      /* This variable is written by the housekeeping thread, and read by the owner thread of this class instance.
-       * At the moment there are no other metrics variables with which the housekeeping start time needs to be written atomically,
-       * so marking it as volatile rather than using locking is fine.
-       */
-      volatile private long lastRunStartTime = FeedbactoryConstants.NoTime;
-
-
-      @Override
-      final public Thread newThread(final Runnable runnable)
-      {
-         final Thread thread = new Thread(runnable, "User account network gateway housekeeping task");
-         thread.setDaemon(true);
-         return thread;
-      }
-
-
-      @Override
-      final public void run()
-      {
-         try
-         {
-            updateIPAddressAuthenticationStatuses();
-         }
-         catch (final Exception anyException)
-         {
-            /* Exception handling provided for -any- exception, since any exceptions will otherwise be captured
-             * by the enclosing FutureTask that is generated when this Runnable is submitted to ScheduledExecutorService.scheduleAtFixedRate().
-             * Unhandled exceptions would also prevent further scheduleAtFixedRate() invocations from running.
-             */
-            final String message = "User account network gateway housekeeping task failed";
-            FeedbactoryLogger.logSystemEvent(SystemLogLevel.ApplicationError, getClass(), message, anyException);
-         }
-      }
-
-
-      final public void updateIPAddressAuthenticationStatuses()
-      {
-         lastRunStartTime = TimeCache.getCurrentTimeMilliseconds();
-
-         final Iterator<Entry<InetAddress, IPAddressAuthentication>> entries = failedAuthenticationByIPAddress.entrySet().iterator();
-
-         IPAddressAuthentication ipAddressAuthentications;
-         Iterator<Entry<String, FailedEmailAuthentication>> emailFailedAuthenticationsIterator;
-         FailedEmailAuthentication emailFailedAuthentications;
-
-         while (entries.hasNext())
-         {
-            ipAddressAuthentications = entries.next().getValue();
-
-            synchronized (ipAddressAuthentications)
-            {
-               emailFailedAuthenticationsIterator = ipAddressAuthentications.attemptsByEmail.entrySet().iterator();
-
-               while (emailFailedAuthenticationsIterator.hasNext())
-               {
-                  emailFailedAuthentications = emailFailedAuthenticationsIterator.next().getValue();
-
-                  // See memos in the class header for more details.
-                  if ((TimeCache.getCurrentTimeMilliseconds() - emailFailedAuthentications.lastEventTime) >= EmailLockoutPeriodMilliseconds)
-                     emailFailedAuthenticationsIterator.remove();
-               }
-
-               /* See memos in the class header for more details of the lockout logic.
-                * Note that lastLockoutTime of 0L is used to represent FeedbactoryConstants.NoTime here, for the convenience and efficiency of not having to
-                * synchronize and explicitly initialise it to a default value of FeedbactoryConstants.NoTime within the IPAddressAuthentication constructor.
-                */
-               if ((ipAddressAuthentications.lastLockoutTime == 0L) ||
-                   ((TimeCache.getCurrentTimeMilliseconds() - ipAddressAuthentications.lastLockoutTime) >= IPAddressLockoutPeriodMilliseconds))
-               {
-                  if ((ipAddressAuthentications.failedAuthentications == 0) && ipAddressAuthentications.attemptsByEmail.isEmpty())
-                  {
-                     ipAddressAuthentications.markAsDeleted();
-                     entries.remove();
-                  }
-                  else
-                     ipAddressAuthentications.resetFailedAuthentications();
-               }
-            }
-         }
-      }
-
-
-      /****************************************************************************
-       * 
-       ***************************************************************************/
-
-
-      private boolean isStarted()
-      {
-         return (executor != null);
-      }
-
-
-      private void start()
-      {
-         if (isStarted())
-            throw new IllegalStateException("Housekeeping task has already been started.");
-
-         executor = new ScheduledThreadPoolExecutor(1, this);
-         executor.setKeepAliveTime(10, TimeUnit.SECONDS);
-         executor.allowCoreThreadTimeOut(true);
-
-         /* Kicking off the task immediately ensures that any items persisted between runs of the server can be immediately cleaned up
-          * if enough time has passed.
-          */
-         executor.scheduleAtFixedRate(this, 0, HousekeepingTaskFrequencyMinutes, TimeUnit.MINUTES);
-      }
-
-
-      private void shutdown() throws InterruptedException
-      {
-         if (executor != null)
-         {
-            executor.shutdown();
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-            executor = null;
-         }
+         this.numberOfEmailsTracking = numberOfEmailsTracking;
+         this.numberOfEmailLockouts = numberOfEmailLockouts;
       }
    }
 
@@ -513,72 +216,11 @@ final public class UserAccountNetworkGateway
     ***************************************************************************/
 
 
-   private IPAddressAuthentication putIfAbsentIPAddressAuthentication(final InetAddress ipAddress)
-   {
-      IPAddressAuthentication ipAddressAuthentication = failedAuthenticationByIPAddress.get(ipAddress);
-      if (ipAddressAuthentication == null)
-      {
-         ipAddressAuthentication = new IPAddressAuthentication();
-         final IPAddressAuthentication existingIPAddressFailedAuthentications = failedAuthenticationByIPAddress.putIfAbsent(ipAddress, ipAddressAuthentication);
-         if (existingIPAddressFailedAuthentications != null)
-            ipAddressAuthentication = existingIPAddressFailedAuthentications;
-      }
-
-      return ipAddressAuthentication;
-   }
-
-
-   private boolean hasHadTooManyFailedAuthentications(final IPAddressAuthentication ipAddressAuthentications, final String normalisedEmail)
-   {
-      if (ipAddressAuthentications.failedAuthentications >= IPAddressLockoutThreshold)
-         return true;
-      else
-      {
-         final FailedEmailAuthentication emailFailedAuthentications = ipAddressAuthentications.attemptsByEmail.get(normalisedEmail);
-
-         if (emailFailedAuthentications != null)
-            return (emailFailedAuthentications.failedAuthentications >= EmailLockoutThreshold);
-      }
-
-      return false;
-   }
-
-
-   private boolean incrementFailedAuthentications(final IPAddressAuthentication ipAddressFailedAuthentications, final String normalisedEmail)
-   {
-      boolean triggerLockout = false;
-
-      ipAddressFailedAuthentications.incrementFailedAuthentications();
-
-      if (ipAddressFailedAuthentications.failedAuthentications >= IPAddressLockoutThreshold)
-      {
-         ipAddressFailedAuthentications.markLockoutTime();
-         triggerLockout = true;
-      }
-
-      final FailedEmailAuthentication emailFailedAuthentications = ipAddressFailedAuthentications.putIfAbsentEmailFailedAuthentication(normalisedEmail);
-
-      emailFailedAuthentications.incrementFailedAuthentications();
-      emailFailedAuthentications.markEventTime();
-
-      if (emailFailedAuthentications.failedAuthentications >= EmailLockoutThreshold)
-         triggerLockout = true;
-
-      return triggerLockout;
-   }
-
-
-   private void clearEmailFailedAuthentications(final IPAddressAuthentication ipAddressFailedAuthentications, final String normalisedEmail)
+   private SessionAuthentication processFailedAuthentication(final ClientIO clientIO, final String email)
    {
-      ipAddressFailedAuthentications.clearEmailFailedAuthentications(normalisedEmail);
-   }
-
-
-   private SessionAuthentication processFailedAuthentication(final ClientIO clientIO, final IPAddressAuthentication ipAddressFailedAuthentications, final String normalisedEmail)
-   {
-      if (incrementFailedAuthentications(ipAddressFailedAuthentications, normalisedEmail))
+      if (failedAuthenticationTracker.recordFailedAuthentication(clientIO.networkID.inetSocketAddress.getAddress(), email))
       {
-         FeedbactoryLogger.logSecurityEvent(SecurityLogLevel.Low, getClass(), "Too many authentication attempts by the IP address for the email: " + normalisedEmail, clientIO);
+         FeedbactoryLogger.logSecurityEvent(SecurityLogLevel.Low, getClass(), "Too many authentication attempts by the IP address for the email: " + email, clientIO);
 
          return SessionAuthentication.FailedTooManyAttempts;
       }
@@ -610,132 +252,93 @@ final public class UserAccountNetworkGateway
    private SessionAuthentication handleProcessAccountActivationRequest(final ClientIO clientIO, final ReadableByteBuffer buffer)
    {
       final String email = buffer.getUTF8EncodedString();
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
       final String activationCode = buffer.getUTF8EncodedString();
       final byte[] passwordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
       buffer.get(passwordHash);
 
-      /* Loop to handle the very unlikely but possible case where the housekeeping task has marked the IPAddressAuthentication object as deleted
-       * between this method retrieving (or creating) the object and grabbing the lock on it.
-       */
-      for (;;)
-      {
-         IPAddressAuthentication ipAddressAuthentication = putIfAbsentIPAddressAuthentication(clientIO.networkID.inetSocketAddress.getAddress());
-
-         synchronized (ipAddressAuthentication)
-         {
-            if (ipAddressAuthentication.isDeleted)
-               continue;
+      final InetAddress ipAddress = clientIO.networkID.inetSocketAddress.getAddress();
 
-            if (hasHadTooManyFailedAuthentications(ipAddressAuthentication, normalisedEmail))
-               return SessionAuthentication.FailedTooManyAttempts;
+      if (failedAuthenticationTracker.isLockedOut(ipAddress, email))
+         return SessionAuthentication.FailedTooManyAttempts;
 
-            /* In keeping with our policy of not inadvertently revealing email registration information to prying parties, repeated activation attempts upon accounts which are
-             * already activated will behave as if there is no such email (rather than eg. returning an AccountAlreadyActivated).
-             */
-            final FeedbactoryUserAccount account = accountManager.activateAccount(email, activationCode, passwordHash, clientIO.networkID.inetSocketAddress.getAddress());
+      /* In keeping with our policy of not inadvertently revealing email registration information to prying parties, repeated activation attempts upon accounts which are
+       * already activated will behave as if there is no such email (rather than eg. returning an AccountAlreadyActivated).
+       */
+      final FeedbactoryUserAccount account = accountManager.activateAccount(email, activationCode, passwordHash, ipAddress);
 
-            if (account != null)
-            {
-               // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
-               clearEmailFailedAuthentications(ipAddressAuthentication, normalisedEmail);
+      if (account != null)
+      {
+         // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
+         failedAuthenticationTracker.clearFailedAuthentications(ipAddress, email);
 
-               return new SessionAuthentication(AuthenticationStatus.Success, account);
-            }
-            else
-               return processFailedAuthentication(clientIO, ipAddressAuthentication, normalisedEmail);
-         }
+         return new SessionAuthentication(AuthenticationStatus.Success, account);
       }
+      else
+         return processFailedAuthentication(clientIO, email);
    }
 
 
    private SessionAuthentication handleProcessSignInRequest(final ClientIO clientIO, final ReadableByteBuffer buffer)
    {
       final String email = buffer.getUTF8EncodedString();
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
       final byte[] passwordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
       buffer.get(passwordHash);
 
-      /* Loop to handle the very unlikely but possible case where the housekeeping task has marked the IPAddressAuthentication object as deleted
-       * between this method retrieving (or creating) the object and grabbing the lock on it.
-       */
-      for (;;)
-      {
-         IPAddressAuthentication ipAddressAuthentication = putIfAbsentIPAddressAuthentication(clientIO.networkID.inetSocketAddress.getAddress());
+      final InetAddress ipAddress = clientIO.networkID.inetSocketAddress.getAddress();
 
-         synchronized (ipAddressAuthentication)
-         {
-            if (ipAddressAuthentication.isDeleted)
-               continue;
-
-            if (hasHadTooManyFailedAuthentications(ipAddressAuthentication, normalisedEmail))
-               return SessionAuthentication.FailedTooManyAttempts;
+      if (failedAuthenticationTracker.isLockedOut(ipAddress, email))
+         return SessionAuthentication.FailedTooManyAttempts;
 
-            final FeedbactoryUserAccount account = accountManager.authenticateAccountSignIn(email, passwordHash, clientIO.networkID.inetSocketAddress.getAddress());
+      final FeedbactoryUserAccount account = accountManager.authenticateAccountSignIn(email, passwordHash, ipAddress);
 
-            /* Since non-activated accounts do not yet have a password set for them, it's not possible for a user to successfully authenticate for
-             * a non-activated account, hence our returned result can never be SuccessAccountNotActivated.
-             */
-            if (account != null)
-            {
-               // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
-               clearEmailFailedAuthentications(ipAddressAuthentication, normalisedEmail);
+      /* Since non-activated accounts do not yet have a password set for them, it's not possible for a user to successfully authenticate for
+       * a non-activated account, hence our returned result can never be SuccessAccountNotActivated.
+       */
+      if (account != null)
+      {
+         // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
+         failedAuthenticationTracker.clearFailedAuthentications(ipAddress, email);
 
-               return new SessionAuthentication(AuthenticationStatus.Success, account);
-            }
-            else
-               return processFailedAuthentication(clientIO, ipAddressAuthentication, normalisedEmail);
-         }
+         return new SessionAuthentication(AuthenticationStatus.Success, account);
       }
+      else
+         return processFailedAuthentication(clientIO, email);
    }
 
 
    private SessionAuthentication handleProcessPasswordResetRequest(final ClientIO clientIO, final ReadableByteBuffer buffer)
    {
       final String email = buffer.getUTF8EncodedString();
-      final String normalisedEmail = UserAccountUtilities.getNormalisedEmail(email);
       final String passwordResetCode = buffer.getUTF8EncodedString();
       final byte[] newPasswordHash = new byte[FeedbactoryUserAccountConstants.PasswordHashLengthBytes];
       buffer.get(newPasswordHash);
 
-      /* Loop to handle the very unlikely but possible case where the housekeeping task has marked the IPAddressAuthentication object as deleted
-       * between this method retrieving (or creating) the object and grabbing the lock on it.
-       */
-      for (;;)
-      {
-         IPAddressAuthentication ipAddressAuthentication = putIfAbsentIPAddressAuthentication(clientIO.networkID.inetSocketAddress.getAddress());
-
-         synchronized (ipAddressAuthentication)
-         {
-            if (ipAddressAuthentication.isDeleted)
-               continue;
+      final InetAddress ipAddress = clientIO.networkID.inetSocketAddress.getAddress();
 
-            if (hasHadTooManyFailedAuthentications(ipAddressAuthentication, normalisedEmail))
-               return SessionAuthentication.FailedTooManyAttempts;
+      if (failedAuthenticationTracker.isLockedOut(ipAddress, email))
+         return SessionAuthentication.FailedTooManyAttempts;
 
-            /* In keeping with our policy of not inadvertently revealing email registration information to prying parties, failed password reset attempts against any email
-             * string, whether the account exists or not or does or doesn't have a password reset code, will count as a strike towards an IP address being temp banned or
-             * blacklisted.
-             */
-            final FeedbactoryUserAccount account = accountManager.resetPassword(email, passwordResetCode, newPasswordHash, clientIO.networkID.inetSocketAddress.getAddress());
+      /* In keeping with our policy of not inadvertently revealing email registration information to prying parties, failed password reset attempts against any email
+       * string, whether the account exists or not or does or doesn't have a password reset code, will count as a strike towards an IP address being temp banned or
+       * blacklisted.
+       */
+      final FeedbactoryUserAccount account = accountManager.resetPassword(email, passwordResetCode, newPasswordHash, ipAddress);
 
-            if (account != null)
-            {
-               // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
-               clearEmailFailedAuthentications(ipAddressAuthentication, normalisedEmail);
+      if (account != null)
+      {
+         // On successful authentication, we should reset the count of unsuccessful authentications for the IP address.
+         failedAuthenticationTracker.clearFailedAuthentications(ipAddress, email);
 
-               /* The user's password has been updated. As a security measure it's a good idea to disable all of their
-                * persistent sessions (eg. auto sign ins from different machines). The session that will be created as a result
-                * of returning from this method (processPasswordResetRequest) will be unaffected.
-                */
-               sessionManagerInterface.clearAccountSessions(account);
+         /* The user's password has been updated. As a security measure it's a good idea to disable all of their
+          * persistent sessions (eg. auto sign ins from different machines). The session that will be created as a result
+          * of returning from this method (processPasswordResetRequest) will be unaffected.
+          */
+         sessionManagerInterface.clearAccountSessions(account);
 
-               return new SessionAuthentication(AuthenticationStatus.Success, account);
-            }
-            else
-               return processFailedAuthentication(clientIO, ipAddressAuthentication, normalisedEmail);
-         }
+         return new SessionAuthentication(AuthenticationStatus.Success, account);
       }
+      else
+         return processFailedAuthentication(clientIO, email);
    }
 
 
@@ -863,17 +466,15 @@ final public class UserAccountNetworkGateway
 
       final FeedbactoryUserAccount account = userSession.account;
 
-      synchronized (account)
-      {
-         accountManager.updateAccountEmail(account, newEmail);
+      // The account manager waits for the change to be durable, so the account lock must not be held across the call.
+      accountManager.updateAccountEmail(account, newEmail);
 
-         userSession.responseBuffer.put(BasicOperationStatus.OK.value);
+      userSession.responseBuffer.put(BasicOperationStatus.OK.value);
 
-         /* The user may be reclaiming a previous email; the client can't know the new values of email & pending email for sure,
-          * so we need to provide them in the response.
-          */
-         populateBufferWithEmail(account, userSession.responseBuffer);
-      }
+      /* The user may be reclaiming a previous email; the client can't know the new values of email & pending email for sure,
+       * so we need to provide them in the response.
+       */
+      populateBufferWithEmail(account, userSession.responseBuffer);
 
       return ProcessedOperationStatus.OK;
    }
@@ -902,16 +503,13 @@ final public class UserAccountNetworkGateway
 
       final FeedbactoryUserAccount account = userSession.account;
 
-      synchronized (account)
+      if (accountManager.confirmNewEmail(account, emailConfirmationCode, existingPasswordHash, newEmailPasswordHash))
       {
-         if (accountManager.confirmNewEmail(account, emailConfirmationCode, existingPasswordHash, newEmailPasswordHash))
-         {
-            userSession.responseBuffer.put(AuthenticationStatus.Success.value);
-            populateBufferWithEmail(account, userSession.responseBuffer);
-         }
-         else
-            userSession.responseBuffer.put(AuthenticationStatus.FailedAuthentication.value);
+         userSession.responseBuffer.put(AuthenticationStatus.Success.value);
+         populateBufferWithEmail(account, userSession.responseBuffer);
       }
+      else
+         userSession.responseBuffer.put(AuthenticationStatus.FailedAuthentication.value);
 
       return ProcessedOperationStatus.OK;
    }
@@ -927,21 +525,18 @@ final public class UserAccountNetworkGateway
 
       final FeedbactoryUserAccount account = userSession.account;
 
-      synchronized (account)
+      if (accountManager.updateAccountPasswordHash(account, existingPasswordHash, newPasswordHash))
       {
-         if (accountManager.updateAccountPasswordHash(account, existingPasswordHash, newPasswordHash))
-         {
-            /* The user's password has been updated. As a safety precaution it's a good idea to disable all of their
-             * persistent sessions (eg. auto sign ins from different machines), except for the session that is attached to the
-             * current request..
-             */
-            sessionManagerInterface.clearAccountSessions(account, userSession.sessionID);
+         /* The user's password has been updated. As a safety precaution it's a good idea to disable all of their
+          * persistent sessions (eg. auto sign ins from different machines), except for the session that is attached to the
+          * current request..
+          */
+         sessionManagerInterface.clearAccountSessions(account, userSession.sessionID);
 
-            userSession.responseBuffer.put(AuthenticationStatus.Success.value);
-         }
-         else
-            userSession.responseBuffer.put(AuthenticationStatus.FailedAuthentication.value);
+         userSession.responseBuffer.put(AuthenticationStatus.Success.value);
       }
+      else
+         userSession.responseBuffer.put(AuthenticationStatus.FailedAuthentication.value);
 
       return ProcessedOperationStatus.OK;
    }
@@ -952,11 +547,8 @@ final public class UserAccountNetworkGateway
       final boolean sendEmailAlerts = userSession.requestBuffer.getBoolean();
       final FeedbactoryUserAccount account = userSession.account;
 
-      synchronized (account)
-      {
-         accountManager.updateSendEmailAlerts(account, sendEmailAlerts);
-         userSession.responseBuffer.put(BasicOperationStatus.OK.value);
-      }
+      accountManager.updateSendEmailAlerts(account, sendEmailAlerts);
+      userSession.responseBuffer.put(BasicOperationStatus.OK.value);
 
       return ProcessedOperationStatus.OK;
    }
@@ -1015,115 +607,48 @@ final public class UserAccountNetworkGateway
 
    private void handleSaveCheckpoint(final Path checkpointPath) throws IOException
    {
-      final File file = checkpointPath.resolve(UnsuccessfulSignInAttemptsFilename).toFile();
+      final File file = checkpointPath.resolve(FailedAuthenticationsFilename).toFile();
 
       try
       (
-         // We could also make use of Files.newOutputStream().. but do we really need thread-safe streams?
-         final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         final DataOutputStream dataOutputStream = CheckpointFileFormat.openOutput(file);
       )
       {
-         IPAddressAuthentication ipAddressAuthentication;
-         byte[] inetAddressBytes;
-
-         for (final Entry<InetAddress, IPAddressAuthentication> signInAttempts : failedAuthenticationByIPAddress.entrySet())
-         {
-            ipAddressAuthentication = signInAttempts.getValue();
-
-            synchronized (signInAttempts.getValue())
-            {
-               if (ipAddressAuthentication.isDeleted)
-                  continue;
-
-               inetAddressBytes = signInAttempts.getKey().getAddress();
-
-               dataOutputStream.writeByte(inetAddressBytes.length);
-               dataOutputStream.write(inetAddressBytes);
-               dataOutputStream.writeInt(ipAddressAuthentication.failedAuthentications);
-               dataOutputStream.writeLong(ipAddressAuthentication.lastLockoutTime);
-
-               dataOutputStream.writeInt(ipAddressAuthentication.attemptsByEmail.size());
-
-               for (final Entry<String, FailedEmailAuthentication> signInAttemptsByEmail : ipAddressAuthentication.attemptsByEmail.entrySet())
-               {
-                  dataOutputStream.writeUTF(signInAttemptsByEmail.getKey());
-                  dataOutputStream.writeInt(signInAttemptsByEmail.getValue().failedAuthentications);
-                  dataOutputStream.writeLong(signInAttemptsByEmail.getValue().lastEventTime);
-               }
-            }
-         }
-
-         // Finalise the output with a -1 for the EOF.
-         dataOutputStream.writeByte(-1);
+         failedAuthenticationTracker.saveCheckpoint(dataOutputStream);
       }
    }
 
 
    private void handleRestoreFromCheckpoint(final Path checkpointPath) throws IOException
    {
-      if (isHousekeepingStarted())
-         throw new IllegalStateException("Cannot restore from checkpoint while housekeeping task is active.");
-
-      failedAuthenticationByIPAddress.clear();
+      final File file = checkpointPath.resolve(FailedAuthenticationsFilename).toFile();
 
-      final File file = checkpointPath.resolve(UnsuccessfulSignInAttemptsFilename).toFile();
-
-      try
-      (
-         // We could also make use of Files.newOutputStream().. but do we really need thread-safe streams?
-         final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-      )
+      if (file.exists())
       {
-         byte inetAddressSize;
-         byte[] inetAddressBytes;
-         InetAddress inetAddress;
-
-         int totalFailedAuthentications;
-         long lastLockoutTime;
-
-         int numberOfEmailsFlaggedForThisInetAddress;
-         Map<String, FailedEmailAuthentication> emailFailedAuthentications;
-
-         String email;
-         int emailTotalUnsuccessfulSignInAttempts;
-         long emailLastEventTime;
-
-         IPAddressAuthentication ipAddressFailedAuthentication;
-
-         while ((inetAddressSize = dataInputStream.readByte()) != -1)
+         try
+         (
+            final DataInputStream dataInputStream = CheckpointFileFormat.openInput(file);
+         )
          {
-            inetAddressBytes = new byte[inetAddressSize];
-            dataInputStream.readFully(inetAddressBytes);
-            inetAddress = InetAddress.getByAddress(inetAddressBytes);
-
-            totalFailedAuthentications = dataInputStream.readInt();
-            lastLockoutTime = dataInputStream.readLong();
-
-            numberOfEmailsFlaggedForThisInetAddress = dataInputStream.readInt();
-            emailFailedAuthentications = new HashMap<>(numberOfEmailsFlaggedForThisInetAddress);
-
-            for (int emailNumber = 0; emailNumber < numberOfEmailsFlaggedForThisInetAddress; emailNumber ++)
-            {
-               email = dataInputStream.readUTF();
-               emailTotalUnsuccessfulSignInAttempts = dataInputStream.readInt();
-               emailLastEventTime = dataInputStream.readLong();
-
-               emailFailedAuthentications.put(email, new FailedEmailAuthentication(emailTotalUnsuccessfulSignInAttempts, emailLastEventTime));
-            }
-
-            ipAddressFailedAuthentication = new IPAddressAuthentication(emailFailedAuthentications);
+            failedAuthenticationTracker.restoreFromCheckpoint(dataInputStream);
+         }
+      }
+      else
+      {
+         final File legacyFile = checkpointPath.resolve(LegacyFailedAuthenticationsFilename).toFile();
 
-            /* Ensure that the non-final IP authentication fields are visible to subsequent threads.
-             * The final field HashMap and its sub-fields/objects are guaranteed to have been completely initialised and visible.
-             */
-            synchronized (ipAddressFailedAuthentication)
+         if (legacyFile.exists())
+         {
+            try
+            (
+               final DataInputStream dataInputStream = CheckpointFileFormat.openInput(legacyFile);
+            )
             {
-               ipAddressFailedAuthentication.setFailedAuthentications(totalFailedAuthentications);
-               ipAddressFailedAuthentication.setLastLockoutTime(lastLockoutTime);
+               failedAuthenticationTracker.restoreFromLegacyCheckpoint(dataInputStream);
             }
-
-            failedAuthenticationByIPAddress.put(inetAddress, ipAddressFailedAuthentication);
          }
+         else
+            failedAuthenticationTracker.clear();
       }
    }
 
@@ -1135,83 +660,31 @@ final public class UserAccountNetworkGateway
 
    private IPAuthenticationMetrics handleGetNetworkFailedAuthenticationMetrics()
    {
-      int numberOfIPAddressesTracking = 0;
-      int numberOfAccountLockouts = 0;
-      int numberOfIPAddressLockouts = 0;
-
-      for (final IPAddressAuthentication ipAddressFailedAuthentications : failedAuthenticationByIPAddress.values())
-      {
-         numberOfIPAddressesTracking ++;
-
-         synchronized (ipAddressFailedAuthentications)
-         {
-            if (ipAddressFailedAuthentications.failedAuthentications >= IPAddressLockoutThreshold)
-               numberOfIPAddressLockouts ++;
-
-            for (final FailedEmailAuthentication accountFailedAuthentications : ipAddressFailedAuthentications.attemptsByEmail.values())
-            {
-               if (accountFailedAuthentications.failedAuthentications >= EmailLockoutThreshold)
-                  numberOfAccountLockouts ++;
-            }
-         }
-      }
-
-      return new IPAuthenticationMetrics(isHousekeepingStarted(), housekeepingTask.lastRunStartTime,
-                                         numberOfIPAddressesTracking, numberOfAccountLockouts, numberOfIPAddressLockouts);
+      return new IPAuthenticationMetrics(failedAuthenticationTracker.getMetrics());
    }
 
 
    private List<EmailBlockedIPAddressMetrics> handleGetLockedOutIPAddressMetrics()
    {
-      final List<EmailBlockedIPAddressMetrics> lockedOutIPAddresses = new LinkedList<>();
-
-      IPAddressAuthentication ipAddressFailedAuthentications;
-
-      for (final Entry<InetAddress, IPAddressAuthentication> ipAddressFailedAuthenticationsEntry : failedAuthenticationByIPAddress.entrySet())
-      {
-         ipAddressFailedAuthentications = ipAddressFailedAuthenticationsEntry.getValue();
+      final List<FailedAuthenticationTracker.IPAddressStanding> lockedOutIPAddresses = failedAuthenticationTracker.getLockedOutIPAddresses();
+      final List<EmailBlockedIPAddressMetrics> lockedOutIPAddressMetrics = new ArrayList<>(lockedOutIPAddresses.size());
 
-         synchronized (ipAddressFailedAuthentications)
-         {
-            if (ipAddressFailedAuthentications.failedAuthentications >= IPAddressLockoutThreshold)
-            {
-               // lastLockoutTime doesn't need to be converted to FeedbactoryConstants.NoTime here if it's 0L, since it won't be under this condition.
-               lockedOutIPAddresses.add(new EmailBlockedIPAddressMetrics(ipAddressFailedAuthenticationsEntry.getKey(), ipAddressFailedAuthentications.attemptsByEmail.size(),
-                                                                         ipAddressFailedAuthentications.lastLockoutTime));
-            }
-         }
-      }
+      for (final FailedAuthenticationTracker.IPAddressStanding lockedOutIPAddress : lockedOutIPAddresses)
+         lockedOutIPAddressMetrics.add(new EmailBlockedIPAddressMetrics(lockedOutIPAddress.ipAddress, lockedOutIPAddress.trackedEmails, lockedOutIPAddress.lastLockoutTime));
 
-      return lockedOutIPAddresses;
+      return lockedOutIPAddressMetrics;
    }
 
 
    private IPAddressFailedAuthenticationMetrics handleGetIPAddressAuthenticationMetrics(final InetAddress inetAddress)
    {
-      final IPAddressAuthentication failedAuthentications = failedAuthenticationByIPAddress.get(inetAddress);
-      FailedEmailAuthentication emailFailedAuthentications;
+      final FailedAuthenticationTracker.IPAddressStanding standing = failedAuthenticationTracker.getIPAddressStanding(inetAddress);
 
-      if (failedAuthentications != null)
-      {
-         synchronized (failedAuthentications)
-         {
-            final Collection<EmailFailedAuthenticationMetrics> emails = new ArrayList<>(failedAuthentications.attemptsByEmail.size());
-
-            for (final Entry<String, FailedEmailAuthentication> emailFailedAuthenticationsEntry : failedAuthentications.attemptsByEmail.entrySet())
-            {
-               emailFailedAuthentications = emailFailedAuthenticationsEntry.getValue();
-
-               emails.add(new EmailFailedAuthenticationMetrics(emailFailedAuthenticationsEntry.getKey(), emailFailedAuthentications.failedAuthentications,
-                                                               emailFailedAuthentications.lastEventTime));
-            }
+      // Convert the default value of lastLockoutTime (0L) to FeedbactoryConstants.NoTime so that it can be displayed correctly by the metrics handler.
+      final long lastLockoutTime = (standing.lastLockoutTime == 0L) ? FeedbactoryConstants.NoTime : standing.lastLockoutTime;
 
-            // Convert the default value of lastLockoutTime (0L) to FeedbactoryConstants.NoTime so that it can be displayed correctly by the metrics handler.
-            final long lastLockoutTime = (failedAuthentications.lastLockoutTime == 0L) ? FeedbactoryConstants.NoTime : failedAuthentications.lastLockoutTime;
-            return new IPAddressFailedAuthenticationMetrics(failedAuthentications.failedAuthentications >= IPAddressLockoutThreshold, lastLockoutTime, emails);
-         }
-      }
-      else
-         return IPAddressFailedAuthenticationMetrics.NoFailedAuthentications;
+      return new IPAddressFailedAuthenticationMetrics(standing.isLockedOut, lastLockoutTime, standing.failedAuthentications, standing.trackedEmails,
+                                                      standing.lockedOutEmails);
    }
 
 
@@ -1291,24 +764,6 @@ final public class UserAccountNetworkGateway
    }
 
 
-   final public boolean isHousekeepingStarted()
-   {
-      return housekeepingTask.isStarted();
-   }
-
-
-   final public void startHousekeeping()
-   {
-      housekeepingTask.start();
-   }
-
-
-   final public void shutdownHousekeeping() throws InterruptedException
-   {
-      housekeepingTask.shutdown();
-   }
-
-
    /****************************************************************************
     *
     ***************************************************************************/
@@ -53,4 +53,29 @@ abstract class UserAccountUtilities
       // Server Locale is English.
       return (email != null) ? email.toLowerCase() : null;
    }
+
+
+   /* The character by character equivalent of getNormalisedEmail(), for comparing and hashing emails without creating a lower cased copy.
+    * The two only differ for the handful of characters that lower case differently in context or to more than one character, none of which can
+    * appear in a validated email address.
+    */
+   static char getNormalisedEmailCharacter(final char emailCharacter)
+   {
+      return Character.toLowerCase(emailCharacter);
+   }
+
+
+   static boolean isEquivalentEmail(final String email, final String otherEmail)
+   {
+      if (email.length() != otherEmail.length())
+         return false;
+
+      for (int charIndex = 0; charIndex < email.length(); charIndex ++)
+      {
+         if (getNormalisedEmailCharacter(email.charAt(charIndex)) != getNormalisedEmailCharacter(otherEmail.charAt(charIndex)))
+            return false;
+      }
+
+      return true;
+   }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.feedbactory.shared.feedback.personal;
+
+
+public enum PersonalFeedbackRatingTrendGranularity
+{
+   Hourly((byte) 0, 60L * 60L * 1000L, 24 * 7),
+   Daily((byte) 1, 24L * 60L * 60L * 1000L, 90);
+
+   final public byte value;
+   final public long bucketDurationMilliseconds;
+   final public int maximumBuckets;
+
+
+   private PersonalFeedbackRatingTrendGranularity(final byte value, final long bucketDurationMilliseconds, final int maximumBuckets)
+   {
+      this.value = value;
+      this.bucketDurationMilliseconds = bucketDurationMilliseconds;
+      this.maximumBuckets = maximumBuckets;
+   }
+
+
+   /****************************************************************************
+    *
+    ***************************************************************************/
+
+
+   static public PersonalFeedbackRatingTrendGranularity fromValue(final byte value)
+   {
+      switch (value)
+      {
+         case 0:
+            return Hourly;
+         case 1:
+            return Daily;
+
+         // No exception thrown here - let the caller decide how to react to a null value.
+         default:
+            return null;
+      }
+   }
+}
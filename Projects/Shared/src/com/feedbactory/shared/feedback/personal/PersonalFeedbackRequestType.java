@@ -6,7 +6,8 @@ public enum PersonalFeedbackRequestType
 {
    GetPersonDetailedFeedbackSummary((byte) 0),
    GetNewFeedbackItemsSample((byte) 1),
-   GetHotFeedbackItemsSample((byte) 2);
+   GetHotFeedbackItemsSample((byte) 2),
+   GetPersonRatingTrend((byte) 3);
 
    final public byte value;
 
@@ -32,6 +33,8 @@ public enum PersonalFeedbackRequestType
             return GetNewFeedbackItemsSample;
          case 2:
             return GetHotFeedbackItemsSample;
+         case 3:
+            return GetPersonRatingTrend;
 
          /* No exception thrown here - let the caller decide how to react to a null value, eg. throwing a security exception at
           * encountering an unknown request type on the server.